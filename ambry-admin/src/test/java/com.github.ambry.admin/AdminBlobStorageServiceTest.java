@@ -58,6 +58,7 @@ import java.lang.reflect.Method;
 import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -1369,6 +1370,15 @@ class AdminTestRouter implements Router {
     return completeOperation(result, callback, OpType.GetBlob);
   }
 
+  @Override
+  public List<Future<GetBlobResult>> getBlobs(List<String> blobIds, GetBlobOptions options) {
+    List<Future<GetBlobResult>> futures = new ArrayList<>(blobIds.size());
+    for (String blobId : blobIds) {
+      futures.add(getBlob(blobId, options));
+    }
+    return futures;
+  }
+
   @Override
   public Future<String> putBlob(BlobProperties blobProperties, byte[] usermetadata, ReadableStreamChannel channel) {
     return putBlob(blobProperties, usermetadata, channel, null);
@@ -1390,6 +1400,15 @@ class AdminTestRouter implements Router {
     return completeOperation(null, callback, OpType.DeleteBlob);
   }
 
+  @Override
+  public List<Future<Void>> deleteBlobs(List<String> blobIds) {
+    List<Future<Void>> futures = new ArrayList<>(blobIds.size());
+    for (String blobId : blobIds) {
+      futures.add(deleteBlob(blobId));
+    }
+    return futures;
+  }
+
   @Override
   public void close() {
     isOpen = false;
@@ -14,6 +14,7 @@
 package com.github.ambry.config;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 
@@ -57,6 +58,101 @@ public class FrontendConfig {
   @Default("8192")
   public final Integer frontendChunkedGetResponseThresholdInBytes;
 
+  /**
+   * The memory budget in bytes of the cache of blob content in the frontend. Small blobs that are requested frequently
+   * are served from this cache instead of the router. The cache is disabled if this is 0.
+   */
+  @Config("frontend.content.cache.size.in.bytes")
+  @Default("0")
+  public final long frontendContentCacheSizeInBytes;
+
+  /**
+   * The size in bytes of the largest blob that can be cached in the content cache.
+   */
+  @Config("frontend.content.cache.max.blob.size.in.bytes")
+  @Default("65536")
+  public final long frontendContentCacheMaxBlobSizeInBytes;
+
+  /**
+   * The number of recent requests for a blob after which it is admitted into the content cache. This keeps blobs that
+   * are requested only once from evicting the frequently requested ones.
+   */
+  @Config("frontend.content.cache.admission.frequency")
+  @Default("2")
+  public final int frontendContentCacheAdmissionFrequency;
+
+  /**
+   * If true, concurrent GET and HEAD requests for the same blob (and range) share a single router operation.
+   */
+  @Config("frontend.get.coalescing.enabled")
+  @Default("false")
+  public final boolean frontendGetCoalescingEnabled;
+
+  /**
+   * The maximum number of ID conversions cached by the frontend. The cache is disabled if this is 0 (conversions are
+   * still batched if the ID converter is a {@link com.github.ambry.rest.BatchIdConverter}).
+   * <p/>
+   * Conversions are cached by method and input ID only, and are shared across requests. The cache must only be enabled
+   * if the output of the ID converter depends on nothing else in the request (such as its headers).
+   */
+  @Config("frontend.id.converter.cache.size")
+  @Default("0")
+  public final int frontendIdConverterCacheSize;
+
+  /**
+   * The time for which an ID conversion is cached.
+   */
+  @Config("frontend.id.converter.cache.ttl.ms")
+  @Default("60000")
+  public final long frontendIdConverterCacheTtlMs;
+
+  /**
+   * The time for which an ID conversion that failed because the ID does not exist or is invalid is cached.
+   */
+  @Config("frontend.id.converter.cache.negative.ttl.ms")
+  @Default("5000")
+  public final long frontendIdConverterCacheNegativeTtlMs;
+
+  /**
+   * The maximum number of IDs converted in a single call if the ID converter is a
+   * {@link com.github.ambry.rest.BatchIdConverter}.
+   */
+  @Config("frontend.id.converter.max.batch.size")
+  @Default("100")
+  public final int frontendIdConverterMaxBatchSize;
+
+  /**
+   * The maximum number of request validations by the security service cached by the frontend. The cache is disabled if
+   * this is 0. If it is enabled, frontend.security.service.cache.key.headers has to be set.
+   */
+  @Config("frontend.security.service.cache.size")
+  @Default("0")
+  public final int frontendSecurityServiceCacheSize;
+
+  /**
+   * The time for which a successful request validation is cached.
+   */
+  @Config("frontend.security.service.cache.ttl.ms")
+  @Default("60000")
+  public final long frontendSecurityServiceCacheTtlMs;
+
+  /**
+   * The time for which a failed request validation is cached.
+   */
+  @Config("frontend.security.service.cache.negative.ttl.ms")
+  @Default("5000")
+  public final long frontendSecurityServiceCacheNegativeTtlMs;
+
+  /**
+   * The request headers (in addition to the method, URI and SSL peer principal) that identify a cached request
+   * validation. Has to include every header that the validations of the security service depend on, and cannot be
+   * empty if the cache is enabled. Requests served from the cache are not seen by the security service, so its
+   * request validations must not have per request side effects.
+   */
+  @Config("frontend.security.service.cache.key.headers")
+  @Default("")
+  public final List<String> frontendSecurityServiceCacheKeyHeaders;
+
   public FrontendConfig(VerifiableProperties verifiableProperties) {
     frontendCacheValiditySeconds = verifiableProperties.getLong("frontend.cache.validity.seconds", 365 * 24 * 60 * 60);
     frontendIdConverterFactory = verifiableProperties.getString("frontend.id.converter.factory",
@@ -67,5 +163,31 @@ public class FrontendConfig {
         Arrays.asList(verifiableProperties.getString("frontend.path.prefixes.to.remove", "").split(","));
     frontendChunkedGetResponseThresholdInBytes =
         verifiableProperties.getInt("frontend.chunked.get.response.threshold.in.bytes", 8192);
+    frontendContentCacheSizeInBytes =
+        verifiableProperties.getLongInRange("frontend.content.cache.size.in.bytes", 0, 0, Long.MAX_VALUE);
+    frontendContentCacheMaxBlobSizeInBytes =
+        verifiableProperties.getLongInRange("frontend.content.cache.max.blob.size.in.bytes", 65536, 0,
+            Integer.MAX_VALUE);
+    frontendContentCacheAdmissionFrequency =
+        verifiableProperties.getIntInRange("frontend.content.cache.admission.frequency", 2, 1, 15);
+    frontendGetCoalescingEnabled = verifiableProperties.getBoolean("frontend.get.coalescing.enabled", false);
+    frontendIdConverterCacheSize =
+        verifiableProperties.getIntInRange("frontend.id.converter.cache.size", 0, 0, Integer.MAX_VALUE);
+    frontendIdConverterCacheTtlMs =
+        verifiableProperties.getLongInRange("frontend.id.converter.cache.ttl.ms", 60000, 0, Long.MAX_VALUE);
+    frontendIdConverterCacheNegativeTtlMs =
+        verifiableProperties.getLongInRange("frontend.id.converter.cache.negative.ttl.ms", 5000, 0, Long.MAX_VALUE);
+    frontendIdConverterMaxBatchSize =
+        verifiableProperties.getIntInRange("frontend.id.converter.max.batch.size", 100, 1, Integer.MAX_VALUE);
+    frontendSecurityServiceCacheSize =
+        verifiableProperties.getIntInRange("frontend.security.service.cache.size", 0, 0, Integer.MAX_VALUE);
+    frontendSecurityServiceCacheTtlMs =
+        verifiableProperties.getLongInRange("frontend.security.service.cache.ttl.ms", 60000, 0, Long.MAX_VALUE);
+    frontendSecurityServiceCacheNegativeTtlMs =
+        verifiableProperties.getLongInRange("frontend.security.service.cache.negative.ttl.ms", 5000, 0,
+            Long.MAX_VALUE);
+    String keyHeaders = verifiableProperties.getString("frontend.security.service.cache.key.headers", "");
+    frontendSecurityServiceCacheKeyHeaders =
+        keyHeaders.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(keyHeaders.split(","));
   }
 }
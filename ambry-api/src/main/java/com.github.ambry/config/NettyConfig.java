@@ -97,6 +97,94 @@ public class NettyConfig {
   @Default("32 * 1024 * 1024")
   public final int nettyServerRequestBufferWatermark;
 
+  /**
+   * If true, the Linux native epoll transport is used if it is available. The NIO transport is used otherwise.
+   */
+  @Config("netty.server.native.transport.enabled")
+  @Default("false")
+  public final boolean nettyServerNativeTransportEnabled;
+
+  /**
+   * If true (and the native transport is in use), every boss thread binds its own listening socket to each port with
+   * SO_REUSEPORT so that the kernel spreads incoming connections across them and they can be accepted in parallel.
+   */
+  @Config("netty.server.so.reuseport")
+  @Default("false")
+  public final boolean nettyServerSoReuseport;
+
+  /**
+   * If true, the native transport uses edge-triggered epoll. Level-triggered epoll is used otherwise.
+   */
+  @Config("netty.server.epoll.edge.triggered")
+  @Default("true")
+  public final boolean nettyServerEpollEdgeTriggered;
+
+  /**
+   * If true, TCP_NODELAY is set on accepted connections.
+   */
+  @Config("netty.server.tcp.nodelay")
+  @Default("true")
+  public final boolean nettyServerTcpNodelay;
+
+  /**
+   * The length of the queue of pending TCP Fast Open requests on listening sockets. 0 disables TCP Fast Open. Only
+   * used with the native transport.
+   */
+  @Config("netty.server.tcp.fastopen.queue.length")
+  @Default("0")
+  public final int nettyServerTcpFastopenQueueLength;
+
+  /**
+   * If true, TCP_QUICKACK is set on accepted connections. Only used with the native transport.
+   */
+  @Config("netty.server.tcp.quickack")
+  @Default("false")
+  public final boolean nettyServerTcpQuickack;
+
+  /**
+   * The number of threads in the pool that runs request processing (including digest computation over request
+   * content). If this is 0, requests are processed on the worker (I/O) threads.
+   * <p/>
+   * The content of a request has to be processed in order, so every connection is processed by one of these threads.
+   * A slow request holds up only the connections that share its thread, so there should be enough threads for the
+   * expected number of concurrently slow requests.
+   */
+  @Config("netty.server.processor.thread.count")
+  @Default("0")
+  public final int nettyServerProcessorThreadCount;
+
+  /**
+   * If true, HTTP/2 is served alongside HTTP/1.1. Cleartext connections can use HTTP/2 with prior knowledge and SSL
+   * connections advertise h2 through ALPN. If SSL is enabled too, the server requires a JDK that supports ALPN (Java 9
+   * and above, or Java 8u252 and above) and fails to start on older ones.
+   */
+  @Config("netty.server.http2.enabled")
+  @Default("false")
+  public final boolean nettyServerHttp2Enabled;
+
+  /**
+   * The fraction of requests (between 0 and 1) for which a trace of the time spent in every stage of the request is
+   * recorded. Tracing is disabled if this is 0.
+   */
+  @Config("netty.server.request.trace.sample.rate")
+  @Default("0")
+  public final double nettyServerRequestTraceSampleRate;
+
+  /**
+   * The number of most recent request traces that are kept in memory. They are exposed through the
+   * RecentRequestTraces gauge of NettyServer.
+   */
+  @Config("netty.server.request.trace.buffer.size")
+  @Default("1000")
+  public final int nettyServerRequestTraceBufferSize;
+
+  /**
+   * The minimum time taken by a traced request for its trace to be written to the RequestTraceLogger log.
+   */
+  @Config("netty.server.request.trace.log.threshold.ms")
+  @Default("0")
+  public final long nettyServerRequestTraceLogThresholdMs;
+
   public NettyConfig(VerifiableProperties verifiableProperties) {
     nettyServerBossThreadCount = verifiableProperties.getInt("netty.server.boss.thread.count", 1);
     nettyServerIdleTimeSeconds = verifiableProperties.getInt("netty.server.idle.time.seconds", 60);
@@ -111,5 +199,22 @@ public class NettyConfig {
     nettyServerRequestBufferWatermark =
         verifiableProperties.getIntInRange("netty.server.request.buffer.watermark", 32 * 1024 * 1024, 1,
             Integer.MAX_VALUE);
+    nettyServerNativeTransportEnabled =
+        verifiableProperties.getBoolean("netty.server.native.transport.enabled", false);
+    nettyServerSoReuseport = verifiableProperties.getBoolean("netty.server.so.reuseport", false);
+    nettyServerEpollEdgeTriggered = verifiableProperties.getBoolean("netty.server.epoll.edge.triggered", true);
+    nettyServerTcpNodelay = verifiableProperties.getBoolean("netty.server.tcp.nodelay", true);
+    nettyServerTcpFastopenQueueLength =
+        verifiableProperties.getIntInRange("netty.server.tcp.fastopen.queue.length", 0, 0, Integer.MAX_VALUE);
+    nettyServerTcpQuickack = verifiableProperties.getBoolean("netty.server.tcp.quickack", false);
+    nettyServerProcessorThreadCount =
+        verifiableProperties.getIntInRange("netty.server.processor.thread.count", 0, 0, Integer.MAX_VALUE);
+    nettyServerHttp2Enabled = verifiableProperties.getBoolean("netty.server.http2.enabled", false);
+    nettyServerRequestTraceSampleRate =
+        verifiableProperties.getDoubleInRange("netty.server.request.trace.sample.rate", 0.0, 0.0, 1.0);
+    nettyServerRequestTraceBufferSize =
+        verifiableProperties.getIntInRange("netty.server.request.trace.buffer.size", 1000, 0, Integer.MAX_VALUE);
+    nettyServerRequestTraceLogThresholdMs =
+        verifiableProperties.getLongInRange("netty.server.request.trace.log.threshold.ms", 0, 0, Long.MAX_VALUE);
   }
 }
@@ -91,6 +91,134 @@ public class ReplicationConfig {
   @Default("false")
   public final boolean replicationValidateMessageStream;
 
+  /**
+   * The number of consecutive metadata batches that are replicated from a remote node every time a replica thread
+   * visits it. When greater than 1, the metadata request for the next batch is sent (over a separate connection) while
+   * the missing messages of the previous batch are being fetched and written, so that the round trips overlap. A value
+   * of 1 replicates a single batch per visit with no overlap
+   */
+  @Config("replication.pipeline.depth")
+  @Default("1")
+  public final int replicationPipelineDepth;
+
+  /**
+   * The approximate limit on the total size of the metadata responses that have been received ahead of time from a
+   * remote node and are waiting to be processed. No more metadata requests are sent ahead while this is exceeded
+   */
+  @Config("replication.pipeline.max.prefetched.bytes")
+  @Default("8388608")
+  public final long replicationPipelineMaxPrefetchedBytes;
+
+  /**
+   * Whether the remote replicas are assigned to the replica threads dynamically. If enabled, the replicas of every
+   * remote node are divided into work units that the replica threads of a datacenter pick up as they become free, the
+   * most lagging ones first. If disabled, the remote nodes are divided between the replica threads at startup
+   */
+  @Config("replication.dynamic.assignment.enabled")
+  @Default("false")
+  public final boolean replicationDynamicAssignmentEnabled;
+
+  /**
+   * The maximum number of remote replicas (of a single remote node) in a work unit when the replicas are assigned to
+   * the replica threads dynamically
+   */
+  @Config("replication.max.replicas.per.work.unit")
+  @Default("16")
+  public final int replicationMaxReplicasPerWorkUnit;
+
+  /**
+   * Whether the replica threads that replicate from remote datacenters ask for the metadata and the messages to be
+   * compressed. Remote nodes that support compression send LZ4 compressed responses, which trades CPU on both ends for
+   * inter datacenter bandwidth. Enable only once all the nodes in the cluster understand the compressed requests
+   */
+  @Config("replication.inter.colo.compression.enabled")
+  @Default("false")
+  public final boolean replicationInterColoCompressionEnabled;
+
+  /**
+   * Whether the replica threads ask for the metadata responses in the compact format, which sends the keys without
+   * their partition and varint encodes the sizes and expiration times. Remote nodes that do not support the compact
+   * format ignore this and respond in the format they support
+   */
+  @Config("replication.compact.metadata.response.enabled")
+  @Default("true")
+  public final boolean replicationCompactMetadataResponseEnabled;
+
+  /**
+   * Whether the replica tokens are persisted incrementally. If enabled, the periodic token flush appends only the
+   * tokens that changed since the last flush to a journal next to the replica token file, instead of rewriting the
+   * whole file. The file is rewritten once the journal grows too large and on shutdown
+   */
+  @Config("replication.token.journal.enabled")
+  @Default("false")
+  public final boolean replicationTokenJournalEnabled;
+
+  /**
+   * The size of the replica token journal of a mount path beyond which the next token flush rewrites the replica
+   * token file and empties the journal
+   */
+  @Config("replication.token.journal.max.size.in.bytes")
+  @Default("1048576")
+  public final long replicationTokenJournalMaxSizeInBytes;
+
+  /**
+   * The maximum rate in bytes/sec at which messages are fetched from the replicas in a datacenter, as a comma separated
+   * list of datacenter:rate pairs (for e.g. "DC2:10485760,DC3:5242880"). Datacenters that are not listed are not
+   * throttled
+   */
+  @Config("replication.fetch.bandwidth.per.datacenter")
+  @Default("")
+  public final String replicationFetchBandwidthPerDatacenter;
+
+  /**
+   * The maximum rate in bytes/sec at which messages are fetched from all the datacenters together. 0 means no limit
+   */
+  @Config("replication.fetch.bandwidth.total.bytes.per.sec")
+  @Default("0")
+  public final long replicationFetchBandwidthTotalBytesPerSec;
+
+  /**
+   * The maximum rate in bytes/sec at which replicated messages are written to the stores on a single mount path. 0
+   * means no limit
+   */
+  @Config("replication.write.bandwidth.per.disk.bytes.per.sec")
+  @Default("0")
+  public final long replicationWriteBandwidthPerDiskBytesPerSec;
+
+  /**
+   * The 95th percentile latency of the gets served by the stores on a mount path above which the rate at which
+   * replicated messages are written to the mount path is halved, down to a tenth of
+   * replication.write.bandwidth.per.disk.bytes.per.sec. The rate recovers gradually once the latency drops below this.
+   * 0 means that the rate is not adjusted
+   */
+  @Config("replication.write.bandwidth.foreground.latency.threshold.ms")
+  @Default("0")
+  public final long replicationWriteBandwidthForegroundLatencyThresholdMs;
+
+  /**
+   * The interval at which the write rate of every mount path is adjusted based on the latency of its gets
+   */
+  @Config("replication.write.bandwidth.adjustment.interval.seconds")
+  @Default("10")
+  public final int replicationWriteBandwidthAdjustmentIntervalSeconds;
+
+  /**
+   * Whether the stores that are empty when replication starts are bootstrapped by copying the sealed log segments and
+   * their index segments from a peer replica, before replicating the rest of the partition from that peer. The stores
+   * are bootstrapped in the background, with one thread per mount path, and are not served or replicated into
+   * until their bootstrap is done.
+   */
+  @Config("replication.bootstrap.from.peer.enabled")
+  @Default("false")
+  public final boolean replicationBootstrapFromPeerEnabled;
+
+  /**
+   * The size of the chunks in which the files are downloaded from the peer when bootstrapping a store
+   */
+  @Config("replication.bootstrap.chunk.size.bytes")
+  @Default("4194304")
+  public final int replicationBootstrapChunkSizeBytes;
+
   public ReplicationConfig(VerifiableProperties verifiableProperties) {
 
     replicationTokenFactory =
@@ -112,5 +240,36 @@ public class ReplicationConfig {
     replicationMaxLagForWaitTimeInBytes =
         verifiableProperties.getLongInRange("replication.max.lag.for.wait.time.in.bytes", 5242880, 0, 104857600);
     replicationValidateMessageStream = verifiableProperties.getBoolean("replication.validate.message.stream", false);
+    replicationPipelineDepth = verifiableProperties.getIntInRange("replication.pipeline.depth", 1, 1, 64);
+    replicationPipelineMaxPrefetchedBytes =
+        verifiableProperties.getLongInRange("replication.pipeline.max.prefetched.bytes", 8388608, 0, Long.MAX_VALUE);
+    replicationDynamicAssignmentEnabled =
+        verifiableProperties.getBoolean("replication.dynamic.assignment.enabled", false);
+    replicationMaxReplicasPerWorkUnit =
+        verifiableProperties.getIntInRange("replication.max.replicas.per.work.unit", 16, 1, Integer.MAX_VALUE);
+    replicationInterColoCompressionEnabled =
+        verifiableProperties.getBoolean("replication.inter.colo.compression.enabled", false);
+    replicationCompactMetadataResponseEnabled =
+        verifiableProperties.getBoolean("replication.compact.metadata.response.enabled", true);
+    replicationTokenJournalEnabled = verifiableProperties.getBoolean("replication.token.journal.enabled", false);
+    replicationTokenJournalMaxSizeInBytes =
+        verifiableProperties.getLongInRange("replication.token.journal.max.size.in.bytes", 1048576, 0, Long.MAX_VALUE);
+    replicationFetchBandwidthPerDatacenter =
+        verifiableProperties.getString("replication.fetch.bandwidth.per.datacenter", "");
+    replicationFetchBandwidthTotalBytesPerSec =
+        verifiableProperties.getLongInRange("replication.fetch.bandwidth.total.bytes.per.sec", 0, 0, Long.MAX_VALUE);
+    replicationWriteBandwidthPerDiskBytesPerSec =
+        verifiableProperties.getLongInRange("replication.write.bandwidth.per.disk.bytes.per.sec", 0, 0, Long.MAX_VALUE);
+    replicationWriteBandwidthForegroundLatencyThresholdMs =
+        verifiableProperties.getLongInRange("replication.write.bandwidth.foreground.latency.threshold.ms", 0, 0,
+            Long.MAX_VALUE);
+    replicationWriteBandwidthAdjustmentIntervalSeconds =
+        verifiableProperties.getIntInRange("replication.write.bandwidth.adjustment.interval.seconds", 10, 1,
+            Integer.MAX_VALUE);
+    replicationBootstrapFromPeerEnabled =
+        verifiableProperties.getBoolean("replication.bootstrap.from.peer.enabled", false);
+    replicationBootstrapChunkSizeBytes =
+        verifiableProperties.getIntInRange("replication.bootstrap.chunk.size.bytes", 4 * 1024 * 1024, 1,
+            Integer.MAX_VALUE);
   }
 }
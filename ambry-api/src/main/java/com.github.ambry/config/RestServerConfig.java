@@ -84,6 +84,22 @@ public class RestServerConfig {
   @Default("Location,x-ambry-blob-size")
   public final String restServerPublicAccessLogResponseHeaders;
 
+  /**
+   * The number of public access log entries that can be pending write by the background writer. If 0, entries are
+   * written synchronously on the Netty event loops.
+   */
+  @Config("rest.server.public.access.log.async.buffer.size")
+  @Default("0")
+  public final int restServerPublicAccessLogAsyncBufferSize;
+
+  /**
+   * If true, public access log entries are dropped when the async buffer is full. If false, they are written on the
+   * Netty event loops instead.
+   */
+  @Config("rest.server.public.access.log.drop.when.full")
+  @Default("true")
+  public final boolean restServerPublicAccessLogDropWhenFull;
+
   /**
    * Health check URI for load balancers (VIPs)
    */
@@ -91,6 +107,22 @@ public class RestServerConfig {
   @Default("/healthCheck")
   public final String restServerHealthCheckUri;
 
+  /**
+   * The maximum number of requests that can be queued at each request handling scaling unit. Requests that arrive when
+   * the queue is full are rejected with a 503 (Service Unavailable) instead of being queued.
+   */
+  @Config("rest.server.request.handler.queue.capacity")
+  @Default("2147483647")
+  public final int restServerRequestHandlerQueueCapacity;
+
+  /**
+   * If true, request handling scaling units that have run out of requests take queued requests from the busiest of
+   * the other scaling units instead of idling while requests wait behind a slow one.
+   */
+  @Config("rest.server.request.handler.work.stealing.enabled")
+  @Default("false")
+  public final boolean restServerRequestHandlerWorkStealingEnabled;
+
   public RestServerConfig(VerifiableProperties verifiableProperties) {
     restServerBlobStorageServiceFactory = verifiableProperties.getString("rest.server.blob.storage.service.factory");
     restServerNioServerFactory =
@@ -110,6 +142,15 @@ public class RestServerConfig {
             "Host,Referer,User-Agent,Content-Length,x-ambry-content-type,x-ambry-owner-id,x-ambry-ttl,x-ambry-private,x-ambry-service-id,X-Forwarded-For");
     restServerPublicAccessLogResponseHeaders =
         verifiableProperties.getString("rest.server.public.access.log.response.headers", "Location,x-ambry-blob-size");
+    restServerPublicAccessLogAsyncBufferSize =
+        verifiableProperties.getIntInRange("rest.server.public.access.log.async.buffer.size", 0, 0, Integer.MAX_VALUE);
+    restServerPublicAccessLogDropWhenFull =
+        verifiableProperties.getBoolean("rest.server.public.access.log.drop.when.full", true);
     restServerHealthCheckUri = verifiableProperties.getString("rest.server.health.check.uri", "/healthCheck");
+    restServerRequestHandlerQueueCapacity =
+        verifiableProperties.getIntInRange("rest.server.request.handler.queue.capacity", Integer.MAX_VALUE, 1,
+            Integer.MAX_VALUE);
+    restServerRequestHandlerWorkStealingEnabled =
+        verifiableProperties.getBoolean("rest.server.request.handler.work.stealing.enabled", false);
   }
 }
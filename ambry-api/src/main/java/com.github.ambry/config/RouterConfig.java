@@ -28,6 +28,18 @@ public class RouterConfig {
   @Default("1")
   public final int routerScalingUnitCount;
 
+  /**
+   * If {@code true}, operations on blobs are routed to scaling units by the partition of the blob, so that a scaling
+   * unit only talks to the data nodes hosting its share of the partitions. Otherwise, every operation is handled by
+   * a randomly picked scaling unit.
+   * <p/>
+   * Puts, and the data chunks of composite blobs (which are fetched by the scaling unit that handles the get of the
+   * metadata blob), are not routed by partition, so scaling units may still talk to the data nodes of other partitions.
+   */
+  @Config("router.scaling.unit.partition.affinity.enabled")
+  @Default("false")
+  public final boolean routerScalingUnitPartitionAffinityEnabled;
+
   /**
    * The hostname of the node upon which the router runs.
    */
@@ -96,6 +108,31 @@ public class RouterConfig {
   @Default("1")
   public final int routerMaxSlippedPutAttempts;
 
+  /**
+   * If {@code true}, a chunk whose put has not reached the success target within
+   * {@code router.put.speculative.slipped.put.threshold.ms} is also put to another partition, without waiting for the
+   * first attempt to fail. Whichever attempt succeeds first is used and the other blob is deleted. Speculative
+   * attempts count towards {@code router.max.slipped.put.attempts}.
+   */
+  @Config("router.put.speculative.slipped.put.enabled")
+  @Default("false")
+  public final boolean routerPutSpeculativeSlippedPutEnabled;
+
+  /**
+   * The time after which a speculative slipped put is started for a chunk whose put is still in progress.
+   */
+  @Config("router.put.speculative.slipped.put.threshold.ms")
+  @Default("500")
+  public final int routerPutSpeculativeSlippedPutThresholdMs;
+
+  /**
+   * The maximum number of chunks of a put operation that are held in memory at a time. The chunk filler can fill new
+   * chunks while this many chunks are being put, so a larger value allows more chunks of a large blob to be in flight.
+   */
+  @Config("router.put.max.in.mem.chunks")
+  @Default("4")
+  public final int routerPutMaxInMemChunks;
+
   /**
    * The maximum number of parallel requests allowed for a delete operation.
    */
@@ -131,12 +168,28 @@ public class RouterConfig {
   @Default("true")
   public final boolean routerGetCrossDcEnabled;
 
+  /**
+   * The maximum number of blobs of a partition that are fetched through a single request by a multi-blob get.
+   */
+  @Config("router.get.batch.max.blob.count")
+  @Default("32")
+  public final int routerGetBatchMaxBlobCount;
+
+  /**
+   * The maximum number of blobs of a partition that are deleted through a single request by a multi-blob delete.
+   */
+  @Config("router.delete.batch.max.blob.count")
+  @Default("32")
+  public final int routerDeleteBatchMaxBlobCount;
+
   /**
    * Create a RouterConfig instance.
    * @param verifiableProperties the properties map to refer to.
    */
   public RouterConfig(VerifiableProperties verifiableProperties) {
     routerScalingUnitCount = verifiableProperties.getIntInRange("router.scaling.unit.count", 1, 1, Integer.MAX_VALUE);
+    routerScalingUnitPartitionAffinityEnabled =
+        verifiableProperties.getBoolean("router.scaling.unit.partition.affinity.enabled", false);
     routerHostname = verifiableProperties.getString("router.hostname");
     routerDatacenterName = verifiableProperties.getString("router.datacenter.name");
     routerScalingUnitMaxConnectionsPerPortPlainText =
@@ -150,10 +203,20 @@ public class RouterConfig {
     routerPutRequestParallelism = verifiableProperties.getInt("router.put.request.parallelism", 3);
     routerPutSuccessTarget = verifiableProperties.getInt("router.put.success.target", 2);
     routerMaxSlippedPutAttempts = verifiableProperties.getInt("router.max.slipped.put.attempts", 1);
+    routerPutSpeculativeSlippedPutEnabled =
+        verifiableProperties.getBoolean("router.put.speculative.slipped.put.enabled", false);
+    routerPutSpeculativeSlippedPutThresholdMs =
+        verifiableProperties.getIntInRange("router.put.speculative.slipped.put.threshold.ms", 500, 0,
+            Integer.MAX_VALUE);
+    routerPutMaxInMemChunks = verifiableProperties.getIntInRange("router.put.max.in.mem.chunks", 4, 1, 1024);
     routerDeleteRequestParallelism = verifiableProperties.getInt("router.delete.request.parallelism", 3);
     routerDeleteSuccessTarget = verifiableProperties.getInt("router.delete.success.target", 2);
     routerGetRequestParallelism = verifiableProperties.getInt("router.get.request.parallelism", 2);
     routerGetSuccessTarget = verifiableProperties.getInt("router.get.success.target", 1);
     routerGetCrossDcEnabled = verifiableProperties.getBoolean("router.get.cross.dc.enabled", true);
+    routerGetBatchMaxBlobCount =
+        verifiableProperties.getIntInRange("router.get.batch.max.blob.count", 32, 1, Integer.MAX_VALUE);
+    routerDeleteBatchMaxBlobCount =
+        verifiableProperties.getIntInRange("router.delete.batch.max.blob.count", 32, 1, Integer.MAX_VALUE);
   }
 }
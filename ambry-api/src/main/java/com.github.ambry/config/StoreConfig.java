@@ -61,6 +61,16 @@ public class StoreConfig {
   @Default("5000")
   public final int storeMaxNumberOfEntriesToReturnFromJournal;
 
+  /**
+   * The max number of the most recent puts and deletes that are kept in memory, along with their sizes, expiration
+   * times and delete states, so that requests for the entries since an offset within them are served without looking
+   * up the index segments. Replicas that lag by up to this many entries are served from memory. If 0, no entries are
+   * kept and such requests fall back to the journal and the index segments
+   */
+  @Config("store.changelog.max.number.of.entries")
+  @Default("0")
+  public final int storeChangelogMaxNumberOfEntries;
+
   /**
    * The max probability of a false positive for the index bloom filter
    */
@@ -107,6 +117,8 @@ public class StoreConfig {
         verifiableProperties.getDoubleInRange("store.index.bloom.max.false.positive.probability", 0.01, 0.0, 1.0);
     storeMaxNumberOfEntriesToReturnFromJournal =
         verifiableProperties.getIntInRange("store.max.number.of.entries.to.return.from.journal", 5000, 1, 10000);
+    storeChangelogMaxNumberOfEntries =
+        verifiableProperties.getIntInRange("store.changelog.max.number.of.entries", 0, 0, Integer.MAX_VALUE);
     storeDeletedMessageRetentionDays = verifiableProperties.getInt("store.deleted.message.retention.days", 7);
     storeHardDeleteBytesPerSec = verifiableProperties.getInt("store.hard.delete.bytes.per.sec", 1 * 1024 * 1024);
     storeEnableHardDelete = verifiableProperties.getBoolean("store.enable.hard.delete", false);
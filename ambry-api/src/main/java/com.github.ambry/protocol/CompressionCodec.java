@@ -0,0 +1,27 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.protocol;
+
+/**
+ * The list of codecs with which the payload of a response can be compressed.
+ */
+public enum CompressionCodec {
+  /**
+   * This is the default. The payload is not compressed
+   */
+  None, /**
+   * The payload is compressed as a single LZ4 block
+   */
+  Lz4_Block
+}
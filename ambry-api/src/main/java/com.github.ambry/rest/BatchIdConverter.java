@@ -0,0 +1,37 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.rest;
+
+import com.github.ambry.router.Callback;
+import java.util.List;
+import java.util.concurrent.Future;
+
+
+/**
+ * An {@link IdConverter} that can convert many IDs in a single call. Useful when converting an ID involves a round
+ * trip to another service, since the IDs of concurrent requests can be converted together.
+ */
+public interface BatchIdConverter extends IdConverter {
+
+  /**
+   * Converts many IDs.
+   * @param restRequests the {@link RestRequest}s representing the requests, one for every ID in {@code inputs}.
+   * @param inputs the IDs that need to be converted.
+   * @param callback the {@link Callback} to invoke once the converted IDs are available. Can be null.
+   * @return a {@link Future} that will eventually contain the converted IDs, in the same order as {@code inputs}. The
+   *         entry of an ID that does not exist is null. An exception fails the conversion of all the IDs.
+   */
+  public Future<List<String>> convert(List<RestRequest> restRequests, List<String> inputs,
+      Callback<List<String>> callback);
+}
@@ -64,7 +64,10 @@ public enum ResponseStatus {
   /**
    * 500 - Internal server failure resulted in request not being honored.
    */
-  InternalServerError;
+  InternalServerError, /**
+   * 503 - Service is temporarily unable to handle the request.
+   */
+  ServiceUnavailable;
 
   /**
    * Gets the ResponseStatus that corresponds to the {@code restServiceErrorCode}.
@@ -92,6 +95,8 @@ public enum ResponseStatus {
         return ResponseStatus.ProxyAuthenticationRequired;
       case RangeNotSatisfiable:
         return ResponseStatus.RangeNotSatisfiable;
+      case ServiceOverloaded:
+        return ResponseStatus.ServiceUnavailable;
       case IdConverterServiceError:
       case InternalServerError:
       case RequestChannelClosed:
@@ -14,6 +14,7 @@
 package com.github.ambry.rest;
 
 import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.utils.RequestTrace;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -37,6 +38,9 @@ import java.util.concurrent.atomic.AtomicLong;
  *    request.
  * 5. When the response for the request is complete and the request is "closed", the metrics that are stored are
  *    updated in the metrics object (injected or default).
+ * <p/>
+ * The tracker also carries the {@link RequestTrace} of the request, if the request is traced, so that every layer can
+ * record the time it spent on the request.
  */
 public class RestRequestMetricsTracker {
   protected static final String DEFAULT_REQUEST_TYPE = "Unknown";
@@ -55,6 +59,7 @@ public class RestRequestMetricsTracker {
   private final AtomicBoolean metricsRecorded = new AtomicBoolean(false);
   private RestRequestMetrics metrics = defaultMetrics;
   private boolean failed = false;
+  private volatile RequestTrace trace = RequestTrace.DISABLED;
 
   /**
    * Tracker for updating NIO related metrics.
@@ -176,6 +181,25 @@ public class RestRequestMetricsTracker {
     }
   }
 
+  /**
+   * @return the {@link RequestTrace} of the request. {@link RequestTrace#DISABLED} if the request is not traced.
+   */
+  public RequestTrace getTrace() {
+    return trace;
+  }
+
+  /**
+   * Sets the {@link RequestTrace} of the request.
+   * @param trace the {@link RequestTrace} of the request.
+   */
+  public void setTrace(RequestTrace trace) {
+    if (trace != null) {
+      this.trace = trace;
+    } else {
+      throw new IllegalArgumentException("RequestTrace provided cannot be null");
+    }
+  }
+
   /**
    * Marks that the request is failed so that metrics can be tracked.
    */
@@ -101,6 +101,9 @@ public enum RestServiceErrorCode {
    * Indicates that an internal service is unavailable either because it is not started, is shutdown or has crashed.
    */
   ServiceUnavailable, /**
+   * Indicates that the service is too busy to accept the request right now. The request can be retried later.
+   */
+  ServiceOverloaded, /**
    * Indicates a {@link RestMethod} is not supported (May also indicate a bug where behaviour for a new
    * {@link RestMethod} has not been defined in the implementation).
    */
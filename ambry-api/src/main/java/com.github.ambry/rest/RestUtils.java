@@ -20,6 +20,7 @@ import com.github.ambry.router.GetBlobOptions;
 import com.github.ambry.router.GetBlobOptionsBuilder;
 import com.github.ambry.utils.Crc32;
 import com.github.ambry.utils.Pair;
+import com.github.ambry.utils.RequestTrace;
 import com.github.ambry.utils.Utils;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
@@ -376,6 +377,21 @@ public class RestUtils {
    */
   public static GetBlobOptions buildGetBlobOptions(Map<String, Object> args, SubResource subResource,
       GetOption getOption) throws RestServiceException {
+    return buildGetBlobOptions(args, subResource, getOption, RequestTrace.DISABLED);
+  }
+
+  /**
+   * Build a {@link GetBlobOptions} object from an argument map for a certain sub-resource.
+   * @param args the arguments associated with the request. This is typically a map of header names and query string
+   *             arguments to values.
+   * @param subResource the {@link SubResource} for the request, or {@code null} if no sub-resource is requested.
+   * @param getOption the {@link GetOption} required.
+   * @param trace the {@link RequestTrace} of the request.
+   * @return a populated {@link GetBlobOptions} object.
+   * @throws RestServiceException if the {@link GetBlobOptions} could not be constructed.
+   */
+  public static GetBlobOptions buildGetBlobOptions(Map<String, Object> args, SubResource subResource,
+      GetOption getOption, RequestTrace trace) throws RestServiceException {
     String rangeHeaderValue = getHeader(args, Headers.RANGE, false);
     if (subResource != null && rangeHeaderValue != null) {
       throw new RestServiceException("Ranges not supported for sub-resources.", RestServiceErrorCode.InvalidArgs);
@@ -384,6 +400,7 @@ public class RestUtils {
         subResource == null ? GetBlobOptions.OperationType.All : GetBlobOptions.OperationType.BlobInfo)
         .getOption(getOption)
         .range(rangeHeaderValue != null ? RestUtils.buildByteRange(rangeHeaderValue) : null)
+        .trace(trace)
         .build();
   }
 
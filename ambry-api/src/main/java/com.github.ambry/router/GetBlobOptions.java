@@ -15,6 +15,7 @@
 package com.github.ambry.router;
 
 import com.github.ambry.protocol.GetOption;
+import com.github.ambry.utils.RequestTrace;
 
 
 /**
@@ -26,6 +27,7 @@ public class GetBlobOptions {
   private final OperationType operationType;
   private final GetOption getOption;
   private final ByteRange range;
+  private final RequestTrace trace;
 
   /**
    * Construct a {@link GetBlobOptions} object that represents any options associated with a getBlob request.
@@ -34,12 +36,24 @@ public class GetBlobOptions {
    * @param range a {@link ByteRange} for this get request. This can be null, if the entire blob is desired.
    */
   GetBlobOptions(OperationType operationType, GetOption getOption, ByteRange range) {
-    if (operationType == null || getOption == null) {
-      throw new IllegalArgumentException("operationType and getOption must be defined");
+    this(operationType, getOption, range, RequestTrace.DISABLED);
+  }
+
+  /**
+   * Construct a {@link GetBlobOptions} object that represents any options associated with a getBlob request.
+   * @param operationType the {@link OperationType} for this request. This must be non-null.
+   * @param getOption the {@link GetOption} associated with the request.
+   * @param range a {@link ByteRange} for this get request. This can be null, if the entire blob is desired.
+   * @param trace the {@link RequestTrace} to record the requests to the storage nodes on. This must be non-null.
+   */
+  GetBlobOptions(OperationType operationType, GetOption getOption, ByteRange range, RequestTrace trace) {
+    if (operationType == null || getOption == null || trace == null) {
+      throw new IllegalArgumentException("operationType, getOption and trace must be defined");
     }
     this.operationType = operationType;
     this.getOption = getOption;
     this.range = range;
+    this.trace = trace;
   }
 
   /**
@@ -63,6 +77,14 @@ public class GetBlobOptions {
     return range;
   }
 
+  /**
+   * @return the {@link RequestTrace} of the request. This is not a part of the identity of the options, so it is
+   *         ignored by {@link #equals(Object)} and {@link #hashCode()}.
+   */
+  public RequestTrace getTrace() {
+    return trace;
+  }
+
   @Override
   public String toString() {
     return "GetBlobOptions{operationType=" + operationType + ", getOption=" + getOption + ", range=" + range + '}';
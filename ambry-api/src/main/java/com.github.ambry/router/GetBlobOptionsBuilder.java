@@ -15,6 +15,7 @@
 package com.github.ambry.router;
 
 import com.github.ambry.protocol.GetOption;
+import com.github.ambry.utils.RequestTrace;
 
 
 /**
@@ -25,6 +26,7 @@ public class GetBlobOptionsBuilder {
   private GetBlobOptions.OperationType operationType = GetBlobOptions.OperationType.All;
   private GetOption getOption = GetOption.None;
   private ByteRange range = null;
+  private RequestTrace trace = RequestTrace.DISABLED;
 
   /**
    * @param operationType the {@link GetBlobOptions.OperationType} for this request.
@@ -53,10 +55,19 @@ public class GetBlobOptionsBuilder {
     return this;
   }
 
+  /**
+   * @param trace the {@link RequestTrace} to record the requests to the storage nodes on.
+   * @return this builder
+   */
+  public GetBlobOptionsBuilder trace(RequestTrace trace) {
+    this.trace = trace;
+    return this;
+  }
+
   /**
    * @return the {@link GetBlobOptions} built.
    */
   public GetBlobOptions build() {
-    return new GetBlobOptions(operationType, getOption, range);
+    return new GetBlobOptions(operationType, getOption, range, trace);
   }
 }
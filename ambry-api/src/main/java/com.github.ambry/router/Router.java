@@ -17,6 +17,7 @@ import com.github.ambry.messageformat.BlobInfo;
 import com.github.ambry.messageformat.BlobProperties;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.Future;
 
 
@@ -46,6 +47,17 @@ public interface Router extends Closeable {
    */
   public Future<GetBlobResult> getBlob(String blobId, GetBlobOptions options, Callback<GetBlobResult> callback);
 
+  /**
+   * Requests for multiple blobs (info, data, or both) asynchronously with the same user-set {@link GetBlobOptions}.
+   * Implementations may fetch blobs that reside together with a single request, but the result for every blob is
+   * delivered through its own future.
+   * @param blobIds The IDs of the blobs for which blob data is requested.
+   * @param options The options associated with the request. These apply to every one of the blobs.
+   * @return A list of futures, one for each of the {@code blobIds} and in the same order. Each of them would eventually
+   *         contain the {@link GetBlobResult} of the corresponding blob.
+   */
+  public List<Future<GetBlobResult>> getBlobs(List<String> blobIds, GetBlobOptions options);
+
   /**
    * Requests for a new blob to be put asynchronously and returns a future that will eventually contain the BlobId of
    * the new blob on a successful response.
@@ -85,6 +97,15 @@ public interface Router extends Closeable {
    */
   public Future<Void> deleteBlob(String blobId, Callback<Void> callback);
 
+  /**
+   * Requests for multiple blobs to be deleted asynchronously. Implementations may delete blobs that reside together
+   * with a single request, but the result for every blob is delivered through its own future.
+   * @param blobIds The IDs of the blobs that need to be deleted.
+   * @return A list of futures, one for each of the {@code blobIds} and in the same order. Each of them would contain
+   *         information about whether the deletion of the corresponding blob succeeded or not, eventually.
+   */
+  public List<Future<Void>> deleteBlobs(List<String> blobIds);
+
   /**
    * Closes the router and releases any resources held by the router. If the router is already closed, then this
    * method has no effect.
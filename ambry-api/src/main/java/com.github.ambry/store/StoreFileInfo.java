@@ -0,0 +1,60 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.store;
+
+/**
+ * The name, the size and the checksum of one of the files that a {@link Store} keeps its data in.
+ */
+public class StoreFileInfo {
+  private final String fileName;
+  private final long sizeInBytes;
+  private final long crc;
+
+  /**
+   * @param fileName the name of the file, relative to the directory of the store.
+   * @param sizeInBytes the number of bytes of the file that are valid.
+   * @param crc the crc of the bytes of the file that are valid.
+   */
+  public StoreFileInfo(String fileName, long sizeInBytes, long crc) {
+    this.fileName = fileName;
+    this.sizeInBytes = sizeInBytes;
+    this.crc = crc;
+  }
+
+  /**
+   * @return the name of the file, relative to the directory of the store.
+   */
+  public String getFileName() {
+    return fileName;
+  }
+
+  /**
+   * @return the number of bytes of the file that are valid.
+   */
+  public long getSizeInBytes() {
+    return sizeInBytes;
+  }
+
+  /**
+   * @return the crc of the bytes of the file that are valid.
+   */
+  public long getCrc() {
+    return crc;
+  }
+
+  @Override
+  public String toString() {
+    return "[FileName=" + fileName + ", SizeInBytes=" + sizeInBytes + ", Crc=" + crc + "]";
+  }
+}
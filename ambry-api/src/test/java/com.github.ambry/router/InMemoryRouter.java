@@ -20,7 +20,9 @@ import com.github.ambry.notification.NotificationSystem;
 import com.github.ambry.protocol.GetOption;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -178,6 +180,15 @@ public class InMemoryRouter implements Router {
     return futureResult;
   }
 
+  @Override
+  public List<Future<GetBlobResult>> getBlobs(List<String> blobIds, GetBlobOptions options) {
+    List<Future<GetBlobResult>> futures = new ArrayList<>(blobIds.size());
+    for (String blobId : blobIds) {
+      futures.add(getBlob(blobId, options));
+    }
+    return futures;
+  }
+
   @Override
   public Future<String> putBlob(BlobProperties blobProperties, byte[] usermetadata, ReadableStreamChannel channel) {
     return putBlob(blobProperties, usermetadata, channel, null);
@@ -225,6 +236,15 @@ public class InMemoryRouter implements Router {
     return futureResult;
   }
 
+  @Override
+  public List<Future<Void>> deleteBlobs(List<String> blobIds) {
+    List<Future<Void>> futures = new ArrayList<>(blobIds.size());
+    for (String blobId : blobIds) {
+      futures.add(deleteBlob(blobId));
+    }
+    return futures;
+  }
+
   @Override
   public void close() throws IOException {
     try {
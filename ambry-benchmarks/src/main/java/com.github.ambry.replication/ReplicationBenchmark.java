@@ -0,0 +1,296 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.github.ambry.clustermap.DataNodeId;
+import com.github.ambry.clustermap.MockClusterMap;
+import com.github.ambry.clustermap.PartitionId;
+import com.github.ambry.clustermap.ReplicaId;
+import com.github.ambry.commons.BlobIdFactory;
+import com.github.ambry.commons.ResponseHandler;
+import com.github.ambry.config.ReplicationConfig;
+import com.github.ambry.config.StoreConfig;
+import com.github.ambry.config.VerifiableProperties;
+import com.github.ambry.messageformat.BlobStoreHardDelete;
+import com.github.ambry.messageformat.BlobStoreRecovery;
+import com.github.ambry.store.StorageManager;
+import com.github.ambry.store.StoreKeyFactory;
+import com.github.ambry.utils.SystemTime;
+import com.github.ambry.utils.Utils;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * JMH benchmark for replication catch-up. A real {@link ReplicaThread} replicates into real stores on temporary
+ * directories from simulated remote replicas (see {@link SimulatedConnectionPool}), which serve pre-generated logs of
+ * a configurable number of blobs (the lag), blob size range and delete ratio after a simulated round trip time. Every
+ * operation starts from empty local stores and ends when the tokens of all the remote replicas are at the end of their
+ * logs.
+ * <p/>
+ * Besides the catch-ups per second, the rates of replicated bytes and blobs, and of metadata exchanges, are reported
+ * as secondary results. The latency of the batched store writes and the heap allocated by the replica thread per
+ * replicated MB are printed at the end of every trial. Replication configs can be overridden with the
+ * {@code replicationProperties} parameter, as comma separated key=value pairs, to compare tunings:
+ * <pre>
+ *   ./gradlew :ambry-benchmarks:jmh \
+ *     -PjmhArgs="ReplicationBenchmark -p replicationProperties=replication.fetch.size.in.bytes=4194304"
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class ReplicationBenchmark {
+  private static final int REMOTE_NODE_COUNT = 2;
+  private static final long TOKEN_PERSIST_INTERVAL_MS = 60 * SystemTime.MsPerSec;
+  private static final long CATCH_UP_POLL_INTERVAL_MS = 1;
+
+  /**
+   * State with the simulated remote replicas and the local stores that are replicated into. The local stores are
+   * recreated empty before every catch-up.
+   */
+  @State(Scope.Thread)
+  public static class ReplicationState {
+    @Param({"2000"})
+    public int lagInBlobs;
+
+    @Param({"1024"})
+    public int minBlobSize;
+
+    @Param({"65536"})
+    public int maxBlobSize;
+
+    @Param({"0", "0.1"})
+    public double deleteRatio;
+
+    @Param({"0", "1"})
+    public long roundTripTimeMs;
+
+    @Param({"4"})
+    public int partitionCount;
+
+    @Param({""})
+    public String replicationProperties;
+
+    MockClusterMap clusterMap;
+    DataNodeId localNode;
+    List<ReplicaId> localReplicas;
+    Map<PartitionId, SimulatedReplicaLog> logs;
+    SimulatedConnectionPool connectionPool;
+    ReplicationConfig replicationConfig;
+    StoreConfig storeConfig;
+    StoreKeyFactory storeKeyFactory;
+    ScheduledExecutorService scheduler;
+    MetricRegistry metricRegistry;
+    ReplicationMetrics replicationMetrics;
+    long replicatedBytes = 0;
+    long replicaThreadAllocatedBytes = 0;
+    int catchUpCount = 0;
+
+    StorageManager storageManager;
+    Map<DataNodeId, List<RemoteReplicaInfo>> replicasToReplicate;
+    ReplicaThread replicaThread;
+
+    @Setup(Level.Trial)
+    public void setUpRemoteReplicas() throws Exception {
+      // all the nodes are in the same datacenter, and every partition has a replica on every node.
+      clusterMap = new MockClusterMap(false, REMOTE_NODE_COUNT + 1, 1, partitionCount);
+      localNode = clusterMap.getDataNodeIds().get(0);
+      localReplicas = clusterMap.getReplicaIds(localNode);
+      logs = new HashMap<>();
+      Random random = new Random();
+      for (ReplicaId replicaId : localReplicas) {
+        PartitionId partitionId = replicaId.getPartitionId();
+        logs.put(partitionId,
+            new SimulatedReplicaLog(partitionId, lagInBlobs, minBlobSize, maxBlobSize, deleteRatio, random));
+      }
+      connectionPool = new SimulatedConnectionPool(logs, roundTripTimeMs);
+      Properties properties = new Properties();
+      // replication would otherwise pause between replicas once it is close to catching up.
+      properties.setProperty("replication.wait.time.between.replicas.ms", "0");
+      for (String property : Utils.splitString(replicationProperties, ",")) {
+        if (!property.isEmpty()) {
+          String[] keyAndValue = property.split("=", 2);
+          properties.setProperty(keyAndValue[0].trim(), keyAndValue[1].trim());
+        }
+      }
+      VerifiableProperties verifiableProperties = new VerifiableProperties(properties);
+      replicationConfig = new ReplicationConfig(verifiableProperties);
+      storeConfig = new StoreConfig(verifiableProperties);
+      storeKeyFactory = new BlobIdFactory(clusterMap);
+      scheduler = Utils.newScheduler(1, false);
+      metricRegistry = new MetricRegistry();
+      replicationMetrics = new ReplicationMetrics(metricRegistry, localReplicas);
+      replicationMetrics.populatePerColoMetrics(Collections.singleton(localNode.getDatacenterName()));
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpLocalStores() throws Exception {
+      for (ReplicaId replicaId : localReplicas) {
+        deleteDirectory(new File(replicaId.getReplicaPath()));
+      }
+      storageManager = new StorageManager(storeConfig, scheduler, new MetricRegistry(), localReplicas, storeKeyFactory,
+          new BlobStoreRecovery(), new BlobStoreHardDelete(), SystemTime.getInstance());
+      storageManager.start();
+      replicasToReplicate = new HashMap<>();
+      for (ReplicaId replicaId : localReplicas) {
+        for (ReplicaId peerReplicaId : replicaId.getPeerReplicaIds()) {
+          RemoteReplicaInfo remoteReplicaInfo =
+              new RemoteReplicaInfo(peerReplicaId, replicaId, storageManager.getStore(replicaId.getPartitionId()),
+                  new SimulatedFindToken(0, 0), TOKEN_PERSIST_INTERVAL_MS, SystemTime.getInstance(),
+                  peerReplicaId.getDataNodeId().getPortToConnectTo());
+          replicationMetrics.createRemoteReplicaErrorMetrics(remoteReplicaInfo);
+          List<RemoteReplicaInfo> remoteReplicaInfos = replicasToReplicate.get(peerReplicaId.getDataNodeId());
+          if (remoteReplicaInfos == null) {
+            remoteReplicaInfos = new ArrayList<>();
+            replicasToReplicate.put(peerReplicaId.getDataNodeId(), remoteReplicaInfos);
+          }
+          remoteReplicaInfos.add(remoteReplicaInfo);
+        }
+      }
+      replicaThread =
+          new ReplicaThread("ReplicationBenchmark", replicasToReplicate, new SimulatedFindTokenFactory(), clusterMap,
+              new AtomicInteger(0), localNode, connectionPool, replicationConfig, replicationMetrics, null,
+              storeKeyFactory, replicationConfig.replicationValidateMessageStream, metricRegistry, false,
+              localNode.getDatacenterName(), new ResponseHandler(clusterMap), null);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownLocalStores() throws Exception {
+      replicaThread.shutdown();
+      storageManager.shutdown();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownRemoteReplicas() throws Exception {
+      Snapshot storeWriteTime = replicationMetrics.intraColoBatchStoreWriteTime.getSnapshot();
+      double replicatedMB = replicatedBytes / (1024.0 * 1024.0);
+      System.out.println(String.format(
+          "%n%d catch-ups, %.1f MB replicated. Batch store write time (ms): mean %.1f, p50 %.1f, p99 %.1f, max %d. "
+              + "Allocated by the replica thread: %.1f MB per replicated MB", catchUpCount, replicatedMB,
+          storeWriteTime.getMean(), storeWriteTime.getMedian(), storeWriteTime.get99thPercentile(),
+          storeWriteTime.getMax(),
+          replicatedMB == 0 ? 0 : replicaThreadAllocatedBytes / (1024.0 * 1024.0) / replicatedMB));
+      scheduler.shutdown();
+      scheduler.awaitTermination(1, TimeUnit.MINUTES);
+      clusterMap.cleanup();
+    }
+
+    /**
+     * @return {@code true} if the tokens of all the remote replicas are at the end of their logs.
+     */
+    boolean isCaughtUp() {
+      for (List<RemoteReplicaInfo> remoteReplicaInfos : replicasToReplicate.values()) {
+        for (RemoteReplicaInfo remoteReplicaInfo : remoteReplicaInfos) {
+          SimulatedFindToken token = (SimulatedFindToken) remoteReplicaInfo.getToken();
+          if (token.getIndex() < logs.get(remoteReplicaInfo.getReplicaId().getPartitionId()).getEntryCount()) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Deletes the given directory and the files in it, if it exists.
+     * @param dir the directory to delete.
+     */
+    private static void deleteDirectory(File dir) {
+      File[] files = dir.listFiles();
+      if (files != null) {
+        for (File file : files) {
+          file.delete();
+        }
+      }
+      dir.delete();
+    }
+  }
+
+  /**
+   * Counters that are reported as rates along with the catch-ups per second.
+   */
+  @State(Scope.Thread)
+  @AuxCounters
+  public static class ReplicationCounters {
+    public long replicatedBytes;
+    public long replicatedBlobs;
+    public long metadataExchanges;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      replicatedBytes = 0;
+      replicatedBlobs = 0;
+      metadataExchanges = 0;
+    }
+  }
+
+  /**
+   * Benchmark for catching up with the simulated remote replicas from empty local stores.
+   * @param state the {@link ReplicationState} to use.
+   * @param counters the {@link ReplicationCounters} to update.
+   * @return the number of bytes replicated.
+   * @throws InterruptedException if interrupted while waiting for the catch-up.
+   */
+  @Benchmark
+  public long catchUp(ReplicationState state, ReplicationCounters counters) throws InterruptedException {
+    long bytesBefore = state.replicationMetrics.intraColoReplicationBytesRate.getCount();
+    long blobsBefore = state.replicationMetrics.intraColoBlobsReplicatedCount.getCount();
+    long metadataExchangesBefore = state.connectionPool.getMetadataExchangeCount();
+    com.sun.management.ThreadMXBean threadMXBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    Thread thread = Utils.newThread(state.replicaThread.getName(), state.replicaThread, false);
+    thread.start();
+    while (!state.isCaughtUp()) {
+      Thread.sleep(CATCH_UP_POLL_INTERVAL_MS);
+    }
+    // the replica thread is new for every catch-up, so all that it has allocated so far is for this catch-up.
+    long allocatedBytes = threadMXBean.getThreadAllocatedBytes(thread.getId());
+    long replicatedBytes = state.replicationMetrics.intraColoReplicationBytesRate.getCount() - bytesBefore;
+    counters.replicatedBytes += replicatedBytes;
+    counters.replicatedBlobs += state.replicationMetrics.intraColoBlobsReplicatedCount.getCount() - blobsBefore;
+    counters.metadataExchanges += state.connectionPool.getMetadataExchangeCount() - metadataExchangesBefore;
+    state.replicatedBytes += replicatedBytes;
+    state.replicaThreadAllocatedBytes += Math.max(allocatedBytes, 0);
+    state.catchUpCount++;
+    return replicatedBytes;
+  }
+}
@@ -0,0 +1,262 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import com.github.ambry.clustermap.PartitionId;
+import com.github.ambry.commons.ServerErrorCode;
+import com.github.ambry.network.ChannelOutput;
+import com.github.ambry.network.ConnectedChannel;
+import com.github.ambry.network.ConnectionPool;
+import com.github.ambry.network.Port;
+import com.github.ambry.network.Send;
+import com.github.ambry.protocol.GetRequest;
+import com.github.ambry.protocol.GetResponse;
+import com.github.ambry.protocol.PartitionRequestInfo;
+import com.github.ambry.protocol.PartitionResponseInfo;
+import com.github.ambry.protocol.ReplicaMetadataRequest;
+import com.github.ambry.protocol.ReplicaMetadataRequestInfo;
+import com.github.ambry.protocol.ReplicaMetadataResponse;
+import com.github.ambry.protocol.ReplicaMetadataResponseInfo;
+import com.github.ambry.protocol.Response;
+import com.github.ambry.store.MessageInfo;
+import com.github.ambry.store.StoreKey;
+import com.github.ambry.utils.ByteBufferInputStream;
+import com.github.ambry.utils.ByteBufferOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A {@link ConnectionPool} of connections to simulated remote replicas. The connections serve the metadata and get
+ * requests of replication from {@link SimulatedReplicaLog}s after a simulated round trip time, without any network
+ * I/O. Every remote node has the same log for a partition.
+ */
+class SimulatedConnectionPool implements ConnectionPool {
+  private final Map<PartitionId, SimulatedReplicaLog> logs;
+  private final long roundTripTimeMs;
+  private final AtomicLong metadataExchangeCount = new AtomicLong(0);
+
+  /**
+   * @param logs the logs of the partitions on the remote nodes.
+   * @param roundTripTimeMs the time for which every request waits before its response is returned.
+   */
+  SimulatedConnectionPool(Map<PartitionId, SimulatedReplicaLog> logs, long roundTripTimeMs) {
+    this.logs = logs;
+    this.roundTripTimeMs = roundTripTimeMs;
+  }
+
+  /**
+   * @return the number of metadata requests that have been served.
+   */
+  long getMetadataExchangeCount() {
+    return metadataExchangeCount.get();
+  }
+
+  @Override
+  public void start() {
+  }
+
+  @Override
+  public void shutdown() {
+  }
+
+  @Override
+  public ConnectedChannel checkOutConnection(String host, Port port, long timeout) {
+    return new SimulatedConnection(host, port.getPort());
+  }
+
+  @Override
+  public void checkInConnection(ConnectedChannel connectedChannel) {
+  }
+
+  @Override
+  public void destroyConnection(ConnectedChannel connectedChannel) {
+  }
+
+  /**
+   * A connection to a simulated remote node. The responses are serialized into a buffer that is reused across the
+   * requests on the connection, so that the simulation itself allocates as little as possible.
+   */
+  private class SimulatedConnection implements ConnectedChannel {
+    private final String host;
+    private final int port;
+    private Send request = null;
+    private ByteBuffer responseBuffer = ByteBuffer.allocate(0);
+
+    SimulatedConnection(String host, int port) {
+      this.host = host;
+      this.port = port;
+    }
+
+    @Override
+    public void send(Send request) {
+      this.request = request;
+    }
+
+    @Override
+    public ChannelOutput receive() throws IOException {
+      Response response;
+      if (request instanceof ReplicaMetadataRequest) {
+        response = getMetadataResponse((ReplicaMetadataRequest) request);
+        metadataExchangeCount.incrementAndGet();
+      } else if (request instanceof GetRequest) {
+        response = getGetResponse((GetRequest) request);
+      } else {
+        throw new IOException("Unexpected request " + request);
+      }
+      request = null;
+      if (roundTripTimeMs > 0) {
+        try {
+          Thread.sleep(roundTripTimeMs);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while waiting for the response", e);
+        }
+      }
+      int size = (int) response.sizeInBytes();
+      if (responseBuffer.capacity() < size) {
+        responseBuffer = ByteBuffer.allocate(size);
+      }
+      responseBuffer.clear();
+      responseBuffer.limit(size);
+      WritableByteChannel channel = Channels.newChannel(new ByteBufferOutputStream(responseBuffer));
+      while (!response.isSendComplete()) {
+        response.writeTo(channel);
+      }
+      responseBuffer.flip();
+      // the size is read by the channel before the response is returned.
+      responseBuffer.getLong();
+      return new ChannelOutput(new ByteBufferInputStream(responseBuffer), responseBuffer.remaining());
+    }
+
+    @Override
+    public String getRemoteHost() {
+      return host;
+    }
+
+    @Override
+    public int getRemotePort() {
+      return port;
+    }
+
+    /**
+     * Returns the entries of the logs after the tokens in the request, up to the size limit of the request. Like the
+     * index, a key is returned at most once in a response, so the delete record of a blob whose put is in the same
+     * response is not returned separately.
+     * @param request the {@link ReplicaMetadataRequest} to serve.
+     * @return the {@link ReplicaMetadataResponse}.
+     */
+    private ReplicaMetadataResponse getMetadataResponse(ReplicaMetadataRequest request) {
+      short responseVersion = ReplicaMetadataResponse.getResponseVersion(request);
+      List<ReplicaMetadataResponseInfo> responseInfos = new ArrayList<>();
+      for (ReplicaMetadataRequestInfo requestInfo : request.getReplicaMetadataRequestInfoList()) {
+        SimulatedReplicaLog log = logs.get(requestInfo.getPartitionId());
+        int index = ((SimulatedFindToken) requestInfo.getToken()).getIndex();
+        List<MessageInfo> messageInfos = new ArrayList<>();
+        Set<StoreKey> keysInResponse = new HashSet<>();
+        long totalSize = 0;
+        while (index < log.getEntryCount() && totalSize < request.getMaxTotalSizeOfEntriesInBytes()) {
+          MessageInfo messageInfo = log.getMessageInfo(index);
+          if (keysInResponse.add(messageInfo.getStoreKey())) {
+            messageInfos.add(messageInfo);
+          }
+          totalSize += messageInfo.getSize();
+          index++;
+        }
+        long bytesRead = log.getStartOffset(index);
+        responseInfos.add(
+            new ReplicaMetadataResponseInfo(log.getPartitionId(), new SimulatedFindToken(index, bytesRead),
+                messageInfos, log.getSizeInBytes() - bytesRead, responseVersion));
+      }
+      return new ReplicaMetadataResponse(request.getCorrelationId(), request.getClientId(), ServerErrorCode.No_Error,
+          responseInfos, request.getAcceptedCompressionCodec(), responseVersion);
+    }
+
+    /**
+     * Returns the put records of the blobs in the request.
+     * @param request the {@link GetRequest} to serve.
+     * @return the {@link GetResponse}.
+     * @throws IOException if the response could not be compressed.
+     */
+    private GetResponse getGetResponse(GetRequest request) throws IOException {
+      List<PartitionResponseInfo> partitionResponseInfos = new ArrayList<>();
+      List<ByteBuffer> messages = new ArrayList<>();
+      for (PartitionRequestInfo partitionRequestInfo : request.getPartitionInfoList()) {
+        SimulatedReplicaLog log = logs.get(partitionRequestInfo.getPartition());
+        List<MessageInfo> messageInfos = new ArrayList<>();
+        for (StoreKey key : partitionRequestInfo.getBlobIds()) {
+          Integer index = log.getPutIndex(key);
+          if (index != null) {
+            MessageInfo messageInfo = log.getMessageInfo(index);
+            messageInfos.add(new MessageInfo(key, messageInfo.getSize()));
+            messages.add(log.getMessage(index));
+          }
+        }
+        partitionResponseInfos.add(new PartitionResponseInfo(log.getPartitionId(), messageInfos));
+      }
+      return new GetResponse(request.getCorrelationId(), request.getClientId(), partitionResponseInfos,
+          new MessagesSend(messages), ServerErrorCode.No_Error, request.getAcceptedCompressionCodec());
+    }
+  }
+
+  /**
+   * A {@link Send} of a sequence of records.
+   */
+  private static class MessagesSend implements Send {
+    private final List<ByteBuffer> messages;
+    private final long sizeInBytes;
+    private int currentIndex = 0;
+
+    MessagesSend(List<ByteBuffer> messages) {
+      this.messages = messages;
+      long size = 0;
+      for (ByteBuffer message : messages) {
+        size += message.remaining();
+      }
+      sizeInBytes = size;
+    }
+
+    @Override
+    public long writeTo(WritableByteChannel channel) throws IOException {
+      long written = 0;
+      while (currentIndex < messages.size()) {
+        ByteBuffer message = messages.get(currentIndex);
+        written += channel.write(message);
+        if (message.hasRemaining()) {
+          break;
+        }
+        currentIndex++;
+      }
+      return written;
+    }
+
+    @Override
+    public boolean isSendComplete() {
+      return currentIndex == messages.size();
+    }
+
+    @Override
+    public long sizeInBytes() {
+      return sizeInBytes;
+    }
+  }
+}
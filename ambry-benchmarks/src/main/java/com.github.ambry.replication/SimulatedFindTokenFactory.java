@@ -0,0 +1,76 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import com.github.ambry.store.FindToken;
+import com.github.ambry.store.FindTokenFactory;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+
+/**
+ * Factory for {@link SimulatedFindToken}s.
+ */
+public class SimulatedFindTokenFactory implements FindTokenFactory {
+
+  @Override
+  public FindToken getFindToken(DataInputStream stream) throws IOException {
+    return new SimulatedFindToken(stream.readInt(), stream.readLong());
+  }
+
+  @Override
+  public FindToken getNewFindToken() {
+    return new SimulatedFindToken(0, 0);
+  }
+}
+
+/**
+ * The token of a {@link SimulatedReplicaLog}. It is the index of the next entry to be returned and the number of bytes
+ * before that entry.
+ */
+class SimulatedFindToken implements FindToken {
+  private final int index;
+  private final long bytesRead;
+
+  SimulatedFindToken(int index, long bytesRead) {
+    this.index = index;
+    this.bytesRead = bytesRead;
+  }
+
+  /**
+   * @return the index of the next entry to be returned.
+   */
+  int getIndex() {
+    return index;
+  }
+
+  @Override
+  public long getBytesRead() {
+    return bytesRead;
+  }
+
+  @Override
+  public byte[] toBytes() {
+    ByteBuffer buffer = ByteBuffer.allocate(12);
+    buffer.putInt(index);
+    buffer.putLong(bytesRead);
+    return buffer.array();
+  }
+
+  @Override
+  public String toString() {
+    return "SimulatedFindToken[index=" + index + ", bytesRead=" + bytesRead + "]";
+  }
+}
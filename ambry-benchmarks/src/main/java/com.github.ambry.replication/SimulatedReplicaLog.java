@@ -0,0 +1,192 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import com.github.ambry.clustermap.PartitionId;
+import com.github.ambry.commons.BlobId;
+import com.github.ambry.messageformat.BlobProperties;
+import com.github.ambry.messageformat.DeleteMessageFormatInputStream;
+import com.github.ambry.messageformat.MessageFormatException;
+import com.github.ambry.messageformat.MessageFormatInputStream;
+import com.github.ambry.messageformat.PutMessageFormatInputStream;
+import com.github.ambry.store.MessageInfo;
+import com.github.ambry.store.StoreKey;
+import com.github.ambry.utils.ByteBufferInputStream;
+import com.github.ambry.utils.Utils;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+
+/**
+ * The log of a partition on a simulated remote replica: a sequence of put and delete records in the message format,
+ * along with the {@link MessageInfo}s that the index of the replica would return for them. As with a real index, the
+ * {@link MessageInfo} of a put of a blob that is deleted later in the log says that the blob is deleted.
+ */
+class SimulatedReplicaLog {
+  private static final int USER_METADATA_SIZE = 100;
+
+  private final PartitionId partitionId;
+  private final List<MessageInfo> messageInfos = new ArrayList<>();
+  private final List<ByteBuffer> messages = new ArrayList<>();
+  // the number of bytes in the log before each entry, and the total number of bytes at the end.
+  private final List<Long> startOffsets = new ArrayList<>();
+  private final Map<StoreKey, Integer> putIndexes = new HashMap<>();
+  private long sizeInBytes = 0;
+
+  /**
+   * Generates the log of a partition.
+   * @param partitionId the partition of the log.
+   * @param blobCount the number of blobs that are put in the log.
+   * @param minBlobSize the minimum size of a blob. The size of every blob is picked uniformly between the minimum and
+   *                    the maximum.
+   * @param maxBlobSize the maximum size of a blob.
+   * @param deleteRatio the fraction of the blobs that are deleted. Every delete is at a random position after the put
+   *                    of its blob.
+   * @param random the {@link Random} to generate the log with.
+   * @throws MessageFormatException if a record could not be created.
+   * @throws IOException if a record could not be read.
+   */
+  SimulatedReplicaLog(PartitionId partitionId, int blobCount, int minBlobSize, int maxBlobSize, double deleteRatio,
+      Random random) throws MessageFormatException, IOException {
+    this.partitionId = partitionId;
+    byte[] content = new byte[maxBlobSize];
+    random.nextBytes(content);
+    byte[] userMetadata = new byte[USER_METADATA_SIZE];
+    random.nextBytes(userMetadata);
+    // the deletes that are due at or before an index of the puts.
+    TreeMap<Integer, List<BlobId>> pendingDeletes = new TreeMap<>();
+    List<BlobId> deletedIds = new ArrayList<>();
+    for (int i = 0; i < blobCount; i++) {
+      BlobId id = new BlobId(partitionId);
+      int blobSize = minBlobSize + random.nextInt(maxBlobSize - minBlobSize + 1);
+      MessageFormatInputStream stream =
+          new PutMessageFormatInputStream(id, new BlobProperties(blobSize, "ReplicationBenchmark"),
+              ByteBuffer.wrap(userMetadata), new ByteBufferInputStream(ByteBuffer.wrap(content, 0, blobSize)),
+              blobSize);
+      putIndexes.put(id, messageInfos.size());
+      append(new MessageInfo(id, stream.getSize()), stream);
+      if (random.nextDouble() < deleteRatio) {
+        int deleteIndex = i + 1 + random.nextInt(blobCount);
+        List<BlobId> ids = pendingDeletes.get(deleteIndex);
+        if (ids == null) {
+          ids = new ArrayList<>();
+          pendingDeletes.put(deleteIndex, ids);
+        }
+        ids.add(id);
+        deletedIds.add(id);
+      }
+      Iterator<Map.Entry<Integer, List<BlobId>>> iterator = pendingDeletes.headMap(i, true).entrySet().iterator();
+      while (iterator.hasNext()) {
+        appendDeletes(iterator.next().getValue());
+        iterator.remove();
+      }
+    }
+    for (List<BlobId> ids : pendingDeletes.values()) {
+      appendDeletes(ids);
+    }
+    // the index returns the latest state of a blob, which is deleted for the puts of the deleted blobs.
+    for (BlobId id : deletedIds) {
+      int index = putIndexes.get(id);
+      messageInfos.set(index, new MessageInfo(id, messageInfos.get(index).getSize(), true));
+    }
+  }
+
+  /**
+   * @return the partition of the log.
+   */
+  PartitionId getPartitionId() {
+    return partitionId;
+  }
+
+  /**
+   * @return the number of entries in the log.
+   */
+  int getEntryCount() {
+    return messageInfos.size();
+  }
+
+  /**
+   * @return the size of the log in bytes.
+   */
+  long getSizeInBytes() {
+    return sizeInBytes;
+  }
+
+  /**
+   * @param index the index of an entry, or the number of entries for the end of the log.
+   * @return the number of bytes in the log before the entry.
+   */
+  long getStartOffset(int index) {
+    return index == messageInfos.size() ? sizeInBytes : startOffsets.get(index);
+  }
+
+  /**
+   * @param index the index of an entry.
+   * @return the {@link MessageInfo} of the entry.
+   */
+  MessageInfo getMessageInfo(int index) {
+    return messageInfos.get(index);
+  }
+
+  /**
+   * @param key the key of a blob in the log.
+   * @return the index of the put of the blob, or {@code null} if the blob is not in the log.
+   */
+  Integer getPutIndex(StoreKey key) {
+    return putIndexes.get(key);
+  }
+
+  /**
+   * @param index the index of an entry.
+   * @return the record of the entry in the message format. The returned buffer is independent of the log.
+   */
+  ByteBuffer getMessage(int index) {
+    return messages.get(index).duplicate();
+  }
+
+  /**
+   * Appends delete records for the given blobs.
+   * @param ids the ids of the blobs to delete.
+   * @throws MessageFormatException if a record could not be created.
+   * @throws IOException if a record could not be read.
+   */
+  private void appendDeletes(List<BlobId> ids) throws MessageFormatException, IOException {
+    for (BlobId id : ids) {
+      MessageFormatInputStream stream = new DeleteMessageFormatInputStream(id);
+      append(new MessageInfo(id, stream.getSize(), true), stream);
+    }
+  }
+
+  /**
+   * Appends a record to the log.
+   * @param messageInfo the {@link MessageInfo} of the record.
+   * @param stream the record in the message format.
+   * @throws IOException if the record could not be read.
+   */
+  private void append(MessageInfo messageInfo, MessageFormatInputStream stream) throws IOException {
+    ByteBuffer message = ByteBuffer.allocate((int) stream.getSize());
+    Utils.readBytesFromStream(stream, message.array(), 0, message.capacity());
+    startOffsets.add(sizeInBytes);
+    messageInfos.add(messageInfo);
+    messages.add(message);
+    sizeInBytes += message.capacity();
+  }
+}
@@ -0,0 +1,285 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.router;
+
+import com.github.ambry.clustermap.MockClusterMap;
+import com.github.ambry.commons.ByteBufferReadableStreamChannel;
+import com.github.ambry.commons.LoggingNotificationSystem;
+import com.github.ambry.config.RouterConfig;
+import com.github.ambry.config.VerifiableProperties;
+import com.github.ambry.messageformat.BlobProperties;
+import com.github.ambry.utils.SystemTime;
+import com.github.ambry.utils.Utils;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * JMH benchmarks for the operations of the {@link NonBlockingRouter}. The router talks to in-process
+ * {@link MockServer}s through {@link MockSelector}s, so the benchmarks measure the router itself (chunking, request
+ * creation, response handling and the hand-offs between threads) without any network or disk I/O.
+ * <p/>
+ * Every benchmark is run for simple and composite blobs by varying the blob and chunk sizes, and reports both the
+ * throughput and the sampled latency (with percentiles) of an operation. Allocation rates are reported when run with
+ * the GC profiler, which the {@code jmh} task of this module does by default:
+ * <pre>
+ *   ./gradlew :ambry-benchmarks:jmh -PjmhArgs="RouterBenchmark.getBlob -p blobSize=1024"
+ * </pre>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class RouterBenchmark {
+  private static final int MAX_PORTS_PLAIN_TEXT = 3;
+  private static final int MAX_PORTS_SSL = 3;
+  private static final int CHECKOUT_TIMEOUT_MS = 1000;
+  private static final int BLOB_COUNT_FOR_GETS = 16;
+
+  /**
+   * State that holds a {@link NonBlockingRouter} backed by {@link MockServer}s and the content of the blobs to put.
+   */
+  @State(Scope.Benchmark)
+  public static class RouterState {
+    @Param({"1024", "4194304", "16777216"})
+    public int blobSize;
+
+    @Param({"1048576", "4194304"})
+    public int chunkSize;
+
+    @Param({"1"})
+    public int scalingUnitCount;
+
+    MockClusterMap clusterMap;
+    MockServerLayout serverLayout;
+    NonBlockingRouter router;
+    BlobProperties blobProperties;
+    byte[] userMetadata;
+    byte[] content;
+
+    @Setup(Level.Trial)
+    public void setUpRouter() throws IOException {
+      Properties properties = new Properties();
+      properties.setProperty("router.hostname", "localhost");
+      properties.setProperty("router.datacenter.name", "DC1");
+      properties.setProperty("router.max.put.chunk.size.bytes", Integer.toString(chunkSize));
+      properties.setProperty("router.scaling.unit.count", Integer.toString(scalingUnitCount));
+      VerifiableProperties verifiableProperties = new VerifiableProperties(properties);
+      clusterMap = new MockClusterMap();
+      serverLayout = new MockServerLayout(clusterMap);
+      router = new NonBlockingRouter(new RouterConfig(verifiableProperties), new NonBlockingRouterMetrics(clusterMap),
+          new MockNetworkClientFactory(verifiableProperties, null, MAX_PORTS_PLAIN_TEXT, MAX_PORTS_SSL,
+              CHECKOUT_TIMEOUT_MS, serverLayout, SystemTime.getInstance()), new LoggingNotificationSystem(), clusterMap,
+          SystemTime.getInstance());
+      blobProperties = new BlobProperties(blobSize, "serviceId", "ownerId", "contentType", false, Utils.Infinite_Time);
+      Random random = new Random();
+      userMetadata = new byte[100];
+      random.nextBytes(userMetadata);
+      content = new byte[blobSize];
+      random.nextBytes(content);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownRouter() throws IOException {
+      router.close();
+      clusterMap.cleanup();
+    }
+
+    /**
+     * Puts a blob with the content of this state.
+     * @return the id of the blob.
+     * @throws Exception if the put fails.
+     */
+    String putBlob() throws Exception {
+      return router.putBlob(blobProperties, userMetadata,
+          new ByteBufferReadableStreamChannel(ByteBuffer.wrap(content))).get();
+    }
+
+    /**
+     * Removes all the blobs from the {@link MockServer}s, so that they do not accumulate across operations.
+     */
+    void clearServers() {
+      for (MockServer server : serverLayout.getMockServers()) {
+        server.getBlobs().clear();
+      }
+    }
+  }
+
+  /**
+   * State for puts. The put blobs are removed from the servers after every put so that memory does not grow over the
+   * run.
+   */
+  @State(Scope.Benchmark)
+  public static class PutState extends RouterState {
+    @TearDown(Level.Invocation)
+    public void clearPutBlobs() {
+      clearServers();
+    }
+  }
+
+  /**
+   * State for gets, with a fixed set of blobs that are fetched in a round robin fashion.
+   */
+  @State(Scope.Benchmark)
+  public static class GetState extends RouterState {
+    final List<String> blobIds = new ArrayList<>();
+    final AtomicInteger nextBlobIndex = new AtomicInteger(0);
+
+    @Setup(Level.Trial)
+    public void putBlobsForGets() throws Exception {
+      for (int i = 0; i < BLOB_COUNT_FOR_GETS; i++) {
+        blobIds.add(putBlob());
+      }
+    }
+
+    /**
+     * @return the id of the next blob to get.
+     */
+    String nextBlobId() {
+      return blobIds.get((nextBlobIndex.getAndIncrement() & Integer.MAX_VALUE) % blobIds.size());
+    }
+  }
+
+  /**
+   * State for deletes. Every delete is of a blob that is put just before it, outside of the measurement.
+   */
+  @State(Scope.Benchmark)
+  public static class DeleteState extends RouterState {
+    String blobIdToDelete;
+
+    @Setup(Level.Invocation)
+    public void putBlobToDelete() throws Exception {
+      clearServers();
+      blobIdToDelete = putBlob();
+    }
+  }
+
+  /**
+   * Benchmark for putting a blob.
+   * @param state the {@link PutState} to use.
+   * @return the id of the put blob.
+   * @throws Exception if the put fails.
+   */
+  @Benchmark
+  public String putBlob(PutState state) throws Exception {
+    return state.putBlob();
+  }
+
+  /**
+   * Benchmark for getting a blob along with its info, and reading all of its content.
+   * @param state the {@link GetState} to use.
+   * @return the number of bytes read.
+   * @throws Exception if the get fails.
+   */
+  @Benchmark
+  public long getBlob(GetState state) throws Exception {
+    return readBlob(state.router.getBlob(state.nextBlobId(), new GetBlobOptionsBuilder().build()).get());
+  }
+
+  /**
+   * Benchmark for getting the middle half of a blob.
+   * @param state the {@link GetState} to use.
+   * @return the number of bytes read.
+   * @throws Exception if the get fails.
+   */
+  @Benchmark
+  public long getBlobRange(GetState state) throws Exception {
+    long startOffset = state.blobSize / 4;
+    ByteRange range = ByteRange.fromOffsetRange(startOffset, startOffset + state.blobSize / 2 - 1);
+    return readBlob(
+        state.router.getBlob(state.nextBlobId(), new GetBlobOptionsBuilder().range(range).build()).get());
+  }
+
+  /**
+   * Benchmark for getting the info of a blob.
+   * @param state the {@link GetState} to use.
+   * @return the size of the blob.
+   * @throws Exception if the get fails.
+   */
+  @Benchmark
+  public long getBlobInfo(GetState state) throws Exception {
+    GetBlobOptions options = new GetBlobOptionsBuilder().operationType(GetBlobOptions.OperationType.BlobInfo).build();
+    return state.router.getBlob(state.nextBlobId(), options).get().getBlobInfo().getBlobProperties().getBlobSize();
+  }
+
+  /**
+   * Benchmark for deleting a blob.
+   * @param state the {@link DeleteState} to use.
+   * @throws Exception if the delete fails.
+   */
+  @Benchmark
+  public void deleteBlob(DeleteState state) throws Exception {
+    state.router.deleteBlob(state.blobIdToDelete).get();
+  }
+
+  /**
+   * Reads out and discards the content of a blob.
+   * @param result the {@link GetBlobResult} of the blob.
+   * @return the number of bytes read.
+   * @throws Exception if the read fails.
+   */
+  private static long readBlob(GetBlobResult result) throws Exception {
+    return result.getBlobDataChannel().readInto(new DiscardingAsyncWritableChannel(), null).get();
+  }
+
+  /**
+   * An {@link AsyncWritableChannel} that discards everything written to it.
+   */
+  private static class DiscardingAsyncWritableChannel implements AsyncWritableChannel {
+    private volatile boolean isOpen = true;
+
+    @Override
+    public Future<Long> write(ByteBuffer src, Callback<Long> callback) {
+      long bytesWritten = src.remaining();
+      src.position(src.limit());
+      FutureResult<Long> futureResult = new FutureResult<>();
+      futureResult.done(bytesWritten, null);
+      if (callback != null) {
+        callback.onCompletion(bytesWritten, null);
+      }
+      return futureResult;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return isOpen;
+    }
+
+    @Override
+    public void close() {
+      isOpen = false;
+    }
+  }
+}
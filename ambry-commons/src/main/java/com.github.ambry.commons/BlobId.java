@@ -48,6 +48,20 @@ public class BlobId extends StoreKey {
     this.uuid = UUID.randomUUID().toString();
   }
 
+  /**
+   * Re-constructs an existing blobId from the partition and the uuid it was created with.
+   *
+   * @param partitionId of Partition in which the blob is stored.
+   * @param uuid the uuid of the blob id, as returned by {@link #getUuid()}.
+   */
+  public BlobId(PartitionId partitionId, String uuid) {
+    if (partitionId == null || uuid == null) {
+      throw new IllegalArgumentException("Partition ID and UUID cannot be null");
+    }
+    this.partitionId = partitionId;
+    this.uuid = uuid;
+  }
+
   /**
    * Re-constructs existing blobId by deserializing from BlobId "string"
    *
@@ -104,6 +118,13 @@ public class BlobId extends StoreKey {
     return partitionId;
   }
 
+  /**
+   * @return the uuid that, along with the partition, identifies the blob.
+   */
+  public String getUuid() {
+    return uuid;
+  }
+
   @Override
   public byte[] toBytes() {
     ByteBuffer idBuf = ByteBuffer.allocate(sizeInBytes());
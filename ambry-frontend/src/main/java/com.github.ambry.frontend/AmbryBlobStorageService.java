@@ -19,6 +19,7 @@ import com.github.ambry.config.FrontendConfig;
 import com.github.ambry.messageformat.BlobInfo;
 import com.github.ambry.messageformat.BlobProperties;
 import com.github.ambry.protocol.GetOption;
+import com.github.ambry.rest.BatchIdConverter;
 import com.github.ambry.rest.BlobStorageService;
 import com.github.ambry.rest.IdConverter;
 import com.github.ambry.rest.IdConverterFactory;
@@ -40,6 +41,7 @@ import com.github.ambry.router.GetBlobResult;
 import com.github.ambry.router.ReadableStreamChannel;
 import com.github.ambry.router.Router;
 import com.github.ambry.router.RouterException;
+import com.github.ambry.utils.SystemTime;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.GregorianCalendar;
@@ -72,6 +74,8 @@ class AmbryBlobStorageService implements BlobStorageService {
   private final IdConverterFactory idConverterFactory;
   private final SecurityServiceFactory securityServiceFactory;
   private final FrontendConfig frontendConfig;
+  private final BlobContentCache contentCache;
+  private final GetRequestCoalescer getRequestCoalescer;
   private final Logger logger = LoggerFactory.getLogger(AmbryBlobStorageService.class);
 
   private IdConverter idConverter = null;
@@ -98,6 +102,13 @@ class AmbryBlobStorageService implements BlobStorageService {
     this.router = router;
     this.idConverterFactory = idConverterFactory;
     this.securityServiceFactory = securityServiceFactory;
+    contentCache = frontendConfig.frontendContentCacheSizeInBytes > 0 ? new BlobContentCache(
+        frontendConfig.frontendContentCacheSizeInBytes, frontendConfig.frontendContentCacheMaxBlobSizeInBytes,
+        frontendConfig.frontendContentCacheAdmissionFrequency,
+        frontendConfig.frontendCacheValiditySeconds * SystemTime.MsPerSec, frontendMetrics, SystemTime.getInstance())
+        : null;
+    getRequestCoalescer =
+        frontendConfig.frontendGetCoalescingEnabled ? new GetRequestCoalescer(router, frontendMetrics) : null;
     logger.trace("Instantiated AmbryBlobStorageService");
   }
 
@@ -105,7 +116,18 @@ class AmbryBlobStorageService implements BlobStorageService {
   public void start() throws InstantiationException {
     long startupBeginTime = System.currentTimeMillis();
     idConverter = idConverterFactory.getIdConverter();
+    if (frontendConfig.frontendIdConverterCacheSize > 0 || idConverter instanceof BatchIdConverter) {
+      idConverter = new CachingIdConverter(idConverter, frontendConfig.frontendIdConverterCacheSize,
+          frontendConfig.frontendIdConverterCacheTtlMs, frontendConfig.frontendIdConverterCacheNegativeTtlMs,
+          frontendConfig.frontendIdConverterMaxBatchSize, frontendMetrics, SystemTime.getInstance());
+    }
     securityService = securityServiceFactory.getSecurityService();
+    if (frontendConfig.frontendSecurityServiceCacheSize > 0) {
+      securityService = new CachingSecurityService(securityService,
+          frontendConfig.frontendSecurityServiceCacheKeyHeaders, frontendConfig.frontendSecurityServiceCacheSize,
+          frontendConfig.frontendSecurityServiceCacheTtlMs, frontendConfig.frontendSecurityServiceCacheNegativeTtlMs,
+          frontendMetrics, SystemTime.getInstance());
+    }
     isUp = true;
     logger.info("AmbryBlobStorageService has started");
     frontendMetrics.blobStorageServiceStartupTimeInMs.update(System.currentTimeMillis() - startupBeginTime);
@@ -154,7 +176,8 @@ class AmbryBlobStorageService implements BlobStorageService {
         }
       }
       restRequest.getMetricsTracker().injectMetrics(requestMetrics);
-      GetBlobOptions options = RestUtils.buildGetBlobOptions(restRequest.getArgs(), subresource, GetOption.None);
+      GetBlobOptions options = RestUtils.buildGetBlobOptions(restRequest.getArgs(), subresource, GetOption.None,
+          restRequest.getMetricsTracker().getTrace());
       GetCallback routerCallback = new GetCallback(restRequest, restResponseChannel, subresource, options);
       preProcessingTime = System.currentTimeMillis() - processingStartTime;
       SecurityProcessRequestCallback securityCallback =
@@ -302,6 +325,21 @@ class AmbryBlobStorageService implements BlobStorageService {
     }
   }
 
+  /**
+   * Gets a blob from the {@link Router}, sharing the router operation with concurrent requests for the same blob if
+   * GET coalescing is enabled.
+   * @param blobId the ID of the blob.
+   * @param options the {@link GetBlobOptions} of the request.
+   * @param callback the {@link Callback} to invoke with the result.
+   */
+  private void getBlobFromRouter(String blobId, GetBlobOptions options, Callback<GetBlobResult> callback) {
+    if (getRequestCoalescer != null) {
+      getRequestCoalescer.getBlob(blobId, options, callback);
+    } else {
+      router.getBlob(blobId, options, callback);
+    }
+  }
+
   /**
    * Callback for {@link IdConverter} that is used when inbound IDs are converted.
    */
@@ -356,18 +394,16 @@ class AmbryBlobStorageService implements BlobStorageService {
           logger.trace("Forwarding {} of {} to the router", restMethod, result);
           switch (restMethod) {
             case GET:
-              getCallback.markStartTime();
-              router.getBlob(result, getCallback.options, getCallback);
+              getCallback.getBlob(result);
               break;
             case HEAD:
               headCallback.markStartTime();
-              router.getBlob(result,
+              getBlobFromRouter(result,
                   new GetBlobOptionsBuilder().operationType(GetBlobOptions.OperationType.BlobInfo).build(),
                   headCallback);
               break;
             case DELETE:
-              deleteCallback.markStartTime();
-              router.deleteBlob(result, deleteCallback);
+              deleteCallback.deleteBlob(result);
               break;
             default:
               exception = new IllegalStateException("Unrecognized RestMethod: " + restMethod);
@@ -545,6 +581,7 @@ class AmbryBlobStorageService implements BlobStorageService {
       processingStartTime = System.currentTimeMillis();
       long operationTime = processingStartTime - operationStartTime;
       operationTimeTracker.update(operationTime);
+      restRequest.getMetricsTracker().getTrace().addSpan(operationType, operationStartTime, processingStartTime);
     }
 
     /**
@@ -566,6 +603,8 @@ class AmbryBlobStorageService implements BlobStorageService {
     private final RestUtils.SubResource subResource;
     private final GetBlobOptions options;
     private final CallbackTracker callbackTracker;
+    private String blobIdToCache = null;
+    private long cacheInvalidationMarker;
 
     /**
      * Create a GET callback.
@@ -631,6 +670,10 @@ class AmbryBlobStorageService implements BlobStorageService {
                         }
                       } else if (!blobNotModified) {
                         response = routerResult.getBlobDataChannel();
+                        if (blobIdToCache != null) {
+                          response = contentCache.cacheOnRead(blobIdToCache, routerResult.getBlobInfo(), response,
+                              cacheInvalidationMarker);
+                        }
                       } else {
                         // If the blob was not modified, we need to close the channel, as it will not be submitted to
                         // the RestResponseHandler
@@ -641,6 +684,10 @@ class AmbryBlobStorageService implements BlobStorageService {
                     frontendMetrics.getSecurityResponseCallbackProcessingError.inc();
                     securityException = e;
                   } finally {
+                    if (securityException != null && response == null) {
+                      // submitted so that the blob data channel is released.
+                      response = routerResult.getBlobDataChannel();
+                    }
                     submitResponse(restRequest, restResponseChannel, response, securityException);
                     securityCallbackTracker.markCallbackProcessingEnd();
                   }
@@ -660,10 +707,26 @@ class AmbryBlobStorageService implements BlobStorageService {
     }
 
     /**
-     * Marks the start time of the operation.
+     * Gets the blob from the content cache if it is cached there, or from the {@link Router} otherwise. This callback
+     * is invoked with the result in both cases.
+     * @param blobId the ID of the blob to get.
      */
-    void markStartTime() {
+    void getBlob(String blobId) {
       callbackTracker.markOperationStart();
+      GetBlobResult cachedResult = null;
+      if (contentCache != null && options.getRange() == null) {
+        cachedResult = contentCache.get(blobId, options.getOperationType());
+        if (cachedResult == null && options.getOperationType() == GetBlobOptions.OperationType.All) {
+          blobIdToCache = blobId;
+          cacheInvalidationMarker = contentCache.getInvalidationMarker();
+        }
+      }
+      if (cachedResult != null) {
+        logger.trace("Serving {} from the content cache", blobId);
+        onCompletion(cachedResult, null);
+      } else {
+        getBlobFromRouter(blobId, options, this);
+      }
     }
 
     /**
@@ -787,6 +850,7 @@ class AmbryBlobStorageService implements BlobStorageService {
     private final RestResponseChannel restResponseChannel;
     private final CallbackTracker callbackTracker;
     private final Logger logger = LoggerFactory.getLogger(getClass());
+    private String blobId = null;
 
     /**
      * Create a DELETE callback.
@@ -810,6 +874,10 @@ class AmbryBlobStorageService implements BlobStorageService {
     @Override
     public void onCompletion(Void routerResult, Exception routerException) {
       callbackTracker.markOperationEnd();
+      if (contentCache != null) {
+        // invalidated irrespective of the result, since the blob may have been deleted even if the operation failed.
+        contentCache.invalidate(blobId);
+      }
       try {
         if (routerException == null) {
           restResponseChannel.setHeader(RestUtils.Headers.DATE, new GregorianCalendar().getTime());
@@ -826,10 +894,13 @@ class AmbryBlobStorageService implements BlobStorageService {
     }
 
     /**
-     * Marks the start time of the operation.
+     * Deletes the blob through the {@link Router}. This callback is invoked with the result.
+     * @param blobId the ID of the blob to delete.
      */
-    void markStartTime() {
+    void deleteBlob(String blobId) {
+      this.blobId = blobId;
       callbackTracker.markOperationStart();
+      router.deleteBlob(blobId, this);
     }
   }
 
@@ -0,0 +1,217 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.frontend;
+
+import com.codahale.metrics.Counter;
+import com.github.ambry.rest.RestServiceErrorCode;
+import com.github.ambry.rest.RestServiceException;
+import com.github.ambry.router.Callback;
+import com.github.ambry.utils.Time;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A cache of the results of asynchronous operations, such as calls to a remote service, keyed by the input of the
+ * operation.
+ * <p/>
+ * At most a fixed number of results are cached, and the least recently used ones are evicted beyond that. Results are
+ * served for a limited time. Failures that will not go away if the operation is retried right away (such as a
+ * {@link RestServiceErrorCode#NotFound}) are cached as well, usually for a shorter time, so that repeated requests for
+ * something that does not exist do not all go to the remote service. Concurrent requests for a result that is not
+ * cached share a single operation.
+ * @param <K> the type of the key.
+ * @param <V> the type of the result.
+ */
+class AsyncResultCache<K, V> {
+  private final int capacity;
+  private final long ttlInMs;
+  private final long negativeTtlInMs;
+  private final Time time;
+  private final Counter hitCount;
+  private final Counter negativeHitCount;
+  private final Counter missCount;
+  private final Counter coalescedCount;
+  private final LinkedHashMap<K, CachedResult<V>> cachedResults = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<K, InFlightOperation> inFlightOperations = new HashMap<>();
+
+  /**
+   * An asynchronous operation whose result can be cached.
+   * @param <V> the type of the result.
+   */
+  interface Operation<V> {
+
+    /**
+     * Starts the operation.
+     * @param callback the {@link Callback} to invoke once the operation completes.
+     */
+    void start(Callback<V> callback);
+  }
+
+  /**
+   * @param capacity the maximum number of results that are cached.
+   * @param ttlInMs the time for which a successful result is served.
+   * @param negativeTtlInMs the time for which a failure is served.
+   * @param time the {@link Time} instance to use.
+   * @param hitCount the {@link Counter} of requests served a cached successful result.
+   * @param negativeHitCount the {@link Counter} of requests served a cached failure.
+   * @param missCount the {@link Counter} of requests that started an operation.
+   * @param coalescedCount the {@link Counter} of requests that joined an operation in flight.
+   */
+  AsyncResultCache(int capacity, long ttlInMs, long negativeTtlInMs, Time time, Counter hitCount,
+      Counter negativeHitCount, Counter missCount, Counter coalescedCount) {
+    this.capacity = capacity;
+    this.ttlInMs = ttlInMs;
+    this.negativeTtlInMs = negativeTtlInMs;
+    this.time = time;
+    this.hitCount = hitCount;
+    this.negativeHitCount = negativeHitCount;
+    this.missCount = missCount;
+    this.coalescedCount = coalescedCount;
+  }
+
+  /**
+   * Gets the result for the given key, from the cache if it is there. Otherwise, joins the operation for the key that
+   * is in flight, if there is one, or starts {@code operation}.
+   * @param key the key.
+   * @param operation the {@link Operation} that produces the result for the key.
+   * @param callback the {@link Callback} to invoke with the result.
+   */
+  void get(K key, Operation<V> operation, Callback<V> callback) {
+    CachedResult<V> cachedResult;
+    InFlightOperation inFlightOperation = null;
+    boolean startOperation = false;
+    synchronized (this) {
+      cachedResult = cachedResults.get(key);
+      if (cachedResult != null && time.milliseconds() >= cachedResult.expiresAtMs) {
+        cachedResults.remove(key);
+        cachedResult = null;
+      }
+      if (cachedResult == null) {
+        inFlightOperation = inFlightOperations.get(key);
+        if (inFlightOperation == null) {
+          inFlightOperation = new InFlightOperation(key);
+          inFlightOperations.put(key, inFlightOperation);
+          startOperation = true;
+        }
+        inFlightOperation.callbacks.add(callback);
+      }
+    }
+    if (cachedResult != null) {
+      (cachedResult.exception == null ? hitCount : negativeHitCount).inc();
+      callback.onCompletion(cachedResult.result, cachedResult.exception);
+    } else if (startOperation) {
+      missCount.inc();
+      try {
+        operation.start(inFlightOperation);
+      } catch (RuntimeException e) {
+        inFlightOperation.onCompletion(null, e);
+      }
+    } else {
+      coalescedCount.inc();
+    }
+  }
+
+  /**
+   * @return the number of cached results.
+   */
+  synchronized int size() {
+    return cachedResults.size();
+  }
+
+  /**
+   * @param exception the exception that an operation failed with.
+   * @return {@code true} if the failure can be cached.
+   */
+  private static boolean isCacheableFailure(Exception exception) {
+    if (exception instanceof RestServiceException) {
+      switch (((RestServiceException) exception).getErrorCode()) {
+        case BadRequest:
+        case Deleted:
+        case NotFound:
+        case Unauthorized:
+          return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Caches the result of an operation, if it can be cached, and removes the operation from the ones in flight.
+   * @param inFlightOperation the {@link InFlightOperation} that completed.
+   * @param result the result of the operation.
+   * @param exception the exception that the operation failed with, if any.
+   * @return the callbacks of the requests that are waiting for the operation. Empty if the operation had already
+   *         completed.
+   */
+  private synchronized List<Callback<V>> complete(InFlightOperation inFlightOperation, V result,
+      Exception exception) {
+    if (inFlightOperations.get(inFlightOperation.key) != inFlightOperation) {
+      return Collections.emptyList();
+    }
+    inFlightOperations.remove(inFlightOperation.key);
+    long cacheTimeInMs = exception == null ? ttlInMs : isCacheableFailure(exception) ? negativeTtlInMs : 0;
+    if (capacity > 0 && cacheTimeInMs > 0) {
+      cachedResults.put(inFlightOperation.key,
+          new CachedResult<V>(result, exception, time.milliseconds() + cacheTimeInMs));
+      Iterator<Map.Entry<K, CachedResult<V>>> iterator = cachedResults.entrySet().iterator();
+      while (cachedResults.size() > capacity && iterator.hasNext()) {
+        iterator.next();
+        iterator.remove();
+      }
+    }
+    return inFlightOperation.callbacks;
+  }
+
+  /**
+   * A result in the cache.
+   * @param <V> the type of the result.
+   */
+  private static class CachedResult<V> {
+    final V result;
+    final Exception exception;
+    final long expiresAtMs;
+
+    CachedResult(V result, Exception exception, long expiresAtMs) {
+      this.result = result;
+      this.exception = exception;
+      this.expiresAtMs = expiresAtMs;
+    }
+  }
+
+  /**
+   * An operation in flight and the callbacks of the requests that are waiting for it. Callbacks are added only while
+   * holding the lock of the cache.
+   */
+  private class InFlightOperation implements Callback<V> {
+    final K key;
+    final List<Callback<V>> callbacks = new ArrayList<>();
+
+    InFlightOperation(K key) {
+      this.key = key;
+    }
+
+    @Override
+    public void onCompletion(V result, Exception exception) {
+      for (Callback<V> callback : complete(this, result, exception)) {
+        callback.onCompletion(result, exception);
+      }
+    }
+  }
+}
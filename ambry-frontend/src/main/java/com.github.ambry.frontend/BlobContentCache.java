@@ -0,0 +1,428 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.frontend;
+
+import com.github.ambry.commons.ByteBufferReadableStreamChannel;
+import com.github.ambry.messageformat.BlobInfo;
+import com.github.ambry.messageformat.BlobProperties;
+import com.github.ambry.router.AsyncWritableChannel;
+import com.github.ambry.router.Callback;
+import com.github.ambry.router.GetBlobOptions;
+import com.github.ambry.router.GetBlobResult;
+import com.github.ambry.router.ReadableStreamChannel;
+import com.github.ambry.utils.Time;
+import com.github.ambry.utils.Utils;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+
+/**
+ * A cache of the content of small blobs that are requested frequently, so that they can be served by the frontend
+ * without going to the router.
+ * <p/>
+ * The content is held off-heap, within a memory budget, and the least recently used blobs are evicted when the budget
+ * is exceeded. The buffers of blobs that are being cached count against the budget too, and a blob is not cached if
+ * there is no room for its buffer even after evicting all the cached blobs. A blob is admitted only once it has been
+ * requested a configurable number of times recently (as estimated by a {@link FrequencySketch}), so that blobs
+ * requested once do not evict the hot ones. Blobs are cached as they are streamed to the client the first time, so
+ * caching does not delay the response.
+ * <p/>
+ * Cached blobs are served for at most {@link com.github.ambry.config.FrontendConfig#frontendCacheValiditySeconds}
+ * and never after they expire. Deletes through this frontend invalidate the cached blob. A blob that is being cached
+ * while an invalidation happens is not cached, since the content being read may predate the invalidation.
+ */
+class BlobContentCache {
+  private final long capacityInBytes;
+  private final long maxBlobSizeInBytes;
+  private final int admissionFrequency;
+  private final long maxEntryAgeInMs;
+  private final FrontendMetrics frontendMetrics;
+  private final Time time;
+  private final FrequencySketch frequencySketch;
+  private final LinkedHashMap<String, CachedBlob> cachedBlobs = new LinkedHashMap<>(16, 0.75f, true);
+  private long sizeInBytes = 0;
+  // the size of the buffers of the blobs that are being cached.
+  private long reservedSizeInBytes = 0;
+  private long invalidationCount = 0;
+
+  /**
+   * @param capacityInBytes the memory budget for the content of the cached blobs.
+   * @param maxBlobSizeInBytes the size of the largest blob that can be cached.
+   * @param admissionFrequency the number of recent requests for a blob after which it can be cached.
+   * @param maxEntryAgeInMs the time after which a cached blob is no longer served.
+   * @param frontendMetrics the {@link FrontendMetrics} to use.
+   * @param time the {@link Time} instance to use.
+   */
+  BlobContentCache(long capacityInBytes, long maxBlobSizeInBytes, int admissionFrequency, long maxEntryAgeInMs,
+      FrontendMetrics frontendMetrics, Time time) {
+    this.capacityInBytes = capacityInBytes;
+    this.maxBlobSizeInBytes = Math.min(maxBlobSizeInBytes, capacityInBytes);
+    this.admissionFrequency = admissionFrequency;
+    this.maxEntryAgeInMs = maxEntryAgeInMs;
+    this.frontendMetrics = frontendMetrics;
+    this.time = time;
+    // enough counters to tell apart the blobs that fit in the cache and many more that compete to get in.
+    long expectedBlobCount = capacityInBytes / Math.max(this.maxBlobSizeInBytes / 4, 1);
+    frequencySketch =
+        new FrequencySketch((int) Math.min(Math.max(expectedBlobCount * 4, 1024), FrequencySketch.MAX_WIDTH));
+  }
+
+  /**
+   * Returns the cached blob with the given ID, if there is one, and records the request for admission.
+   * @param blobId the ID of the blob.
+   * @param operationType the {@link GetBlobOptions.OperationType} of the request. Only
+   *                      {@link GetBlobOptions.OperationType#All} and {@link GetBlobOptions.OperationType#BlobInfo}
+   *                      can be served from the cache.
+   * @return a {@link GetBlobResult} of the cached blob for the request, or {@code null} if the blob is not cached.
+   */
+  GetBlobResult get(String blobId, GetBlobOptions.OperationType operationType) {
+    CachedBlob cachedBlob;
+    synchronized (this) {
+      frequencySketch.increment(blobId);
+      cachedBlob = cachedBlobs.get(blobId);
+      if (cachedBlob != null && time.milliseconds() >= cachedBlob.expiresAtMs) {
+        remove(blobId);
+        cachedBlob = null;
+      }
+    }
+    if (cachedBlob == null) {
+      frontendMetrics.contentCacheMissCount.inc();
+      return null;
+    }
+    frontendMetrics.contentCacheHitCount.inc();
+    ReadableStreamChannel blobDataChannel = null;
+    if (operationType == GetBlobOptions.OperationType.All) {
+      blobDataChannel = new ByteBufferReadableStreamChannel(cachedBlob.content.duplicate());
+    }
+    return new GetBlobResult(cachedBlob.blobInfo, blobDataChannel);
+  }
+
+  /**
+   * @return a marker that has to be obtained before a blob is fetched from the router and passed to
+   *         {@link #cacheOnRead(String, BlobInfo, ReadableStreamChannel, long)}, so that blobs fetched before an
+   *         invalidation are not cached.
+   */
+  synchronized long getInvalidationMarker() {
+    return invalidationCount;
+  }
+
+  /**
+   * If the blob can be cached, returns a channel that caches the content of the blob as it is read from the given
+   * channel. Otherwise, returns the given channel itself.
+   * @param blobId the ID of the blob.
+   * @param blobInfo the {@link BlobInfo} of the blob.
+   * @param blobDataChannel the {@link ReadableStreamChannel} with the content of the blob.
+   * @param invalidationMarker the value of {@link #getInvalidationMarker()} before the blob was fetched.
+   * @return the {@link ReadableStreamChannel} to read the content of the blob from.
+   */
+  ReadableStreamChannel cacheOnRead(String blobId, BlobInfo blobInfo, ReadableStreamChannel blobDataChannel,
+      long invalidationMarker) {
+    long blobSize = blobInfo.getBlobProperties().getBlobSize();
+    if (blobSize > maxBlobSizeInBytes || blobDataChannel.getSize() != blobSize) {
+      return blobDataChannel;
+    }
+    synchronized (this) {
+      if (invalidationMarker != invalidationCount || cachedBlobs.containsKey(blobId)
+          || frequencySketch.frequency(blobId) < admissionFrequency) {
+        return blobDataChannel;
+      }
+    }
+    return new CachingReadableStreamChannel(blobId, blobInfo, blobDataChannel, invalidationMarker);
+  }
+
+  /**
+   * Removes the blob with the given ID from the cache, if it is cached, and prevents blobs that are being read from
+   * being cached.
+   * @param blobId the ID of the blob.
+   */
+  synchronized void invalidate(String blobId) {
+    invalidationCount++;
+    if (remove(blobId)) {
+      frontendMetrics.contentCacheInvalidationCount.inc();
+    }
+  }
+
+  /**
+   * @return the total size of the content of the cached blobs.
+   */
+  synchronized long getSizeInBytes() {
+    return sizeInBytes;
+  }
+
+  /**
+   * Reserves room in the memory budget for the buffer of a blob that is going to be cached, evicting the least recently
+   * used blobs if required.
+   * @param size the size of the buffer.
+   * @return {@code true} if the room was reserved, {@code false} if the buffers of other blobs that are being cached
+   *         leave no room for it.
+   */
+  private synchronized boolean reserve(long size) {
+    if (reservedSizeInBytes + size > capacityInBytes) {
+      return false;
+    }
+    reservedSizeInBytes += size;
+    evictIfRequired();
+    return true;
+  }
+
+  /**
+   * Releases room reserved by {@link #reserve(long)} and adds the blob to the cache, if it has been read successfully.
+   * @param blobId the ID of the blob.
+   * @param blobInfo the {@link BlobInfo} of the blob.
+   * @param reservedSize the size that was reserved for the buffer of the blob.
+   * @param content the content of the blob, or {@code null} if the blob could not be read.
+   * @param invalidationMarker the value of {@link #getInvalidationMarker()} before the blob was fetched.
+   */
+  private synchronized void release(String blobId, BlobInfo blobInfo, long reservedSize, ByteBuffer content,
+      long invalidationMarker) {
+    reservedSizeInBytes -= reservedSize;
+    if (content == null || invalidationMarker != invalidationCount || cachedBlobs.containsKey(blobId)) {
+      return;
+    }
+    long now = time.milliseconds();
+    long expiresAtMs = now + maxEntryAgeInMs;
+    BlobProperties blobProperties = blobInfo.getBlobProperties();
+    long blobExpiresAtMs =
+        Utils.addSecondsToEpochTime(blobProperties.getCreationTimeInMs(), blobProperties.getTimeToLiveInSeconds());
+    if (blobExpiresAtMs != Utils.Infinite_Time) {
+      expiresAtMs = Math.min(expiresAtMs, blobExpiresAtMs);
+    }
+    if (expiresAtMs <= now) {
+      return;
+    }
+    cachedBlobs.put(blobId, new CachedBlob(blobInfo, content, expiresAtMs));
+    sizeInBytes += content.remaining();
+    frontendMetrics.contentCacheAdmissionCount.inc();
+    evictIfRequired();
+  }
+
+  /**
+   * Evicts the least recently used blobs until the cached blobs and the reserved buffers fit in the memory budget.
+   */
+  private void evictIfRequired() {
+    Iterator<Map.Entry<String, CachedBlob>> iterator = cachedBlobs.entrySet().iterator();
+    while (sizeInBytes + reservedSizeInBytes > capacityInBytes && iterator.hasNext()) {
+      sizeInBytes -= iterator.next().getValue().content.remaining();
+      iterator.remove();
+      frontendMetrics.contentCacheEvictionCount.inc();
+    }
+  }
+
+  /**
+   * Removes the blob with the given ID from the cache.
+   * @param blobId the ID of the blob.
+   * @return {@code true} if the blob was cached.
+   */
+  private boolean remove(String blobId) {
+    CachedBlob cachedBlob = cachedBlobs.remove(blobId);
+    if (cachedBlob != null) {
+      sizeInBytes -= cachedBlob.content.remaining();
+    }
+    return cachedBlob != null;
+  }
+
+  /**
+   * A blob in the cache.
+   */
+  private static class CachedBlob {
+    final BlobInfo blobInfo;
+    final ByteBuffer content;
+    final long expiresAtMs;
+
+    CachedBlob(BlobInfo blobInfo, ByteBuffer content, long expiresAtMs) {
+      this.blobInfo = blobInfo;
+      this.content = content;
+      this.expiresAtMs = expiresAtMs;
+    }
+  }
+
+  /**
+   * A {@link ReadableStreamChannel} that copies the content of a blob into an off-heap buffer as it is read from
+   * another channel, and caches the blob once all of it has been read successfully. The buffer is allocated only if
+   * room for it can be reserved in the memory budget. Otherwise the blob is read without being cached.
+   */
+  private class CachingReadableStreamChannel implements ReadableStreamChannel {
+    private final String blobId;
+    private final BlobInfo blobInfo;
+    private final ReadableStreamChannel blobDataChannel;
+    private final long invalidationMarker;
+
+    CachingReadableStreamChannel(String blobId, BlobInfo blobInfo, ReadableStreamChannel blobDataChannel,
+        long invalidationMarker) {
+      this.blobId = blobId;
+      this.blobInfo = blobInfo;
+      this.blobDataChannel = blobDataChannel;
+      this.invalidationMarker = invalidationMarker;
+    }
+
+    @Override
+    public long getSize() {
+      return blobDataChannel.getSize();
+    }
+
+    @Override
+    public Future<Long> readInto(final AsyncWritableChannel asyncWritableChannel, final Callback<Long> callback) {
+      final long size = blobDataChannel.getSize();
+      if (!reserve(size)) {
+        return blobDataChannel.readInto(asyncWritableChannel, callback);
+      }
+      final ByteBuffer content = ByteBuffer.allocateDirect((int) size);
+      AsyncWritableChannel copyingChannel = new AsyncWritableChannel() {
+        @Override
+        public Future<Long> write(ByteBuffer src, Callback<Long> callback) {
+          ByteBuffer data = src.duplicate();
+          if (data.remaining() <= content.remaining()) {
+            content.put(data);
+          } else {
+            // more data than the size of the blob. The blob will not be cached.
+            content.position(content.limit());
+          }
+          return asyncWritableChannel.write(src, callback);
+        }
+
+        @Override
+        public boolean isOpen() {
+          return asyncWritableChannel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+          asyncWritableChannel.close();
+        }
+      };
+      return blobDataChannel.readInto(copyingChannel, new Callback<Long>() {
+        @Override
+        public void onCompletion(Long result, Exception exception) {
+          ByteBuffer readContent = null;
+          if (exception == null && result != null && result == content.capacity() && content.position() == result) {
+            content.flip();
+            readContent = content.asReadOnlyBuffer();
+          }
+          release(blobId, blobInfo, size, readContent, invalidationMarker);
+          if (callback != null) {
+            callback.onCompletion(result, exception);
+          }
+        }
+      });
+    }
+
+    @Override
+    public boolean isOpen() {
+      return blobDataChannel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+      blobDataChannel.close();
+    }
+  }
+
+  /**
+   * Estimates how often keys have been seen recently, using a count-min sketch with small saturating counters. All
+   * the counters are halved periodically, so that keys that were popular a while ago are forgotten. Not thread safe.
+   * <p/>
+   * The counters are 4 bits wide and packed sixteen to a long, so a sketch of the maximum width takes 2 MB.
+   */
+  static class FrequencySketch {
+    static final int MAX_WIDTH = 1 << 20;
+    private static final int MAX_COUNT = 15;
+    private static final int COUNTERS_PER_WORD = 16;
+    // clears the bit that is shifted into every counter from the one above it when a word is halved.
+    private static final long HALVING_MASK = 0x7777777777777777L;
+    private static final int[] SEEDS = {0x97cb3127, 0x0a8c1b3f, 0x5c3e1b49, 0x2f6d9e5b};
+    private final long[][] counters;
+    private final int mask;
+    private final int resetInterval;
+    private int incrementsSinceReset = 0;
+
+    /**
+     * @param width the number of counters in every row of the sketch. Rounded up to a power of two, and capped at
+     *              {@link #MAX_WIDTH}.
+     */
+    FrequencySketch(int width) {
+      width = Math.min(Math.max(width, COUNTERS_PER_WORD), MAX_WIDTH);
+      int roundedWidth = Integer.highestOneBit(width - 1) << 1;
+      counters = new long[SEEDS.length][roundedWidth / COUNTERS_PER_WORD];
+      mask = roundedWidth - 1;
+      resetInterval = roundedWidth * 10;
+    }
+
+    /**
+     * Records an occurrence of the given key.
+     * @param key the key.
+     */
+    void increment(Object key) {
+      int hash = key.hashCode();
+      for (int i = 0; i < SEEDS.length; i++) {
+        int index = indexOf(hash, i);
+        if (getCount(counters[i], index) < MAX_COUNT) {
+          counters[i][index / COUNTERS_PER_WORD] += 1L << shiftOf(index);
+        }
+      }
+      if (++incrementsSinceReset >= resetInterval) {
+        for (long[] row : counters) {
+          for (int j = 0; j < row.length; j++) {
+            row[j] = (row[j] >>> 1) & HALVING_MASK;
+          }
+        }
+        incrementsSinceReset /= 2;
+      }
+    }
+
+    /**
+     * @param key the key.
+     * @return the estimated number of recent occurrences of the key. Collisions can make it higher than the actual
+     *         number.
+     */
+    int frequency(Object key) {
+      int hash = key.hashCode();
+      int frequency = MAX_COUNT;
+      for (int i = 0; i < SEEDS.length; i++) {
+        frequency = Math.min(frequency, getCount(counters[i], indexOf(hash, i)));
+      }
+      return frequency;
+    }
+
+    /**
+     * @param row the counters of a row of the sketch.
+     * @param index the index of the counter in the row.
+     * @return the value of the counter.
+     */
+    private int getCount(long[] row, int index) {
+      return (int) ((row[index / COUNTERS_PER_WORD] >>> shiftOf(index)) & MAX_COUNT);
+    }
+
+    /**
+     * @param index the index of a counter in a row.
+     * @return the position of the lowest bit of the counter in its word.
+     */
+    private int shiftOf(int index) {
+      return (index % COUNTERS_PER_WORD) * 4;
+    }
+
+    /**
+     * @param hash the hash code of the key.
+     * @param row the row of the sketch.
+     * @return the index of the counter of the key in the given row.
+     */
+    private int indexOf(int hash, int row) {
+      int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+      return (h ^ (h >>> 16)) & mask;
+    }
+  }
+}
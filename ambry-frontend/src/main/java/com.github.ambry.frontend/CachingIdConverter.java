@@ -0,0 +1,243 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.frontend;
+
+import com.github.ambry.rest.BatchIdConverter;
+import com.github.ambry.rest.IdConverter;
+import com.github.ambry.rest.RestMethod;
+import com.github.ambry.rest.RestRequest;
+import com.github.ambry.rest.RestServiceErrorCode;
+import com.github.ambry.rest.RestServiceException;
+import com.github.ambry.router.Callback;
+import com.github.ambry.router.FutureResult;
+import com.github.ambry.utils.Time;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+
+/**
+ * An {@link IdConverter} that caches the conversions of another {@link IdConverter} and, if that is a
+ * {@link BatchIdConverter}, converts the IDs that are not cached in batches.
+ * <p/>
+ * Conversions are cached by {@link RestMethod} and input ID. Conversions on {@link RestMethod#POST} are of newly
+ * created blobs that will not be converted again, so they are neither cached nor batched.
+ * <p/>
+ * A cached conversion is shared by all the requests with the same method and input ID, and the wrapped
+ * {@link IdConverter} is not called for requests that are served from the cache or coalesced with a conversion in
+ * flight. So this must only wrap an {@link IdConverter} whose output depends on nothing else in the
+ * {@link RestRequest} (such as its headers or SSL session), and that has no per request side effects.
+ * <p/>
+ * A batch is sent as soon as no other batch is in flight or enough IDs to fill a batch are waiting, so IDs wait only
+ * while the previous batch is being converted.
+ */
+class CachingIdConverter implements IdConverter {
+  private final IdConverter idConverter;
+  private final BatchIdConverter batchIdConverter;
+  private final int maxBatchSize;
+  private final FrontendMetrics frontendMetrics;
+  private final AsyncResultCache<ConversionKey, String> cache;
+  private final List<PendingConversion> pendingConversions = new ArrayList<>();
+  private int batchesInFlight = 0;
+
+  /**
+   * @param idConverter the {@link IdConverter} whose conversions have to be cached.
+   * @param capacity the maximum number of conversions that are cached.
+   * @param ttlInMs the time for which a conversion is cached.
+   * @param negativeTtlInMs the time for which a failed conversion is cached.
+   * @param maxBatchSize the maximum number of IDs converted in a batch if {@code idConverter} is a
+   *                     {@link BatchIdConverter}.
+   * @param frontendMetrics the {@link FrontendMetrics} to use.
+   * @param time the {@link Time} instance to use.
+   */
+  CachingIdConverter(IdConverter idConverter, int capacity, long ttlInMs, long negativeTtlInMs, int maxBatchSize,
+      FrontendMetrics frontendMetrics, Time time) {
+    this.idConverter = idConverter;
+    batchIdConverter = idConverter instanceof BatchIdConverter ? (BatchIdConverter) idConverter : null;
+    this.maxBatchSize = maxBatchSize;
+    this.frontendMetrics = frontendMetrics;
+    cache = new AsyncResultCache<>(capacity, ttlInMs, negativeTtlInMs, time, frontendMetrics.idConverterCacheHitCount,
+        frontendMetrics.idConverterCacheNegativeHitCount, frontendMetrics.idConverterCacheMissCount,
+        frontendMetrics.idConverterCacheCoalescedCount);
+  }
+
+  @Override
+  public Future<String> convert(final RestRequest restRequest, final String input, final Callback<String> callback) {
+    if (restRequest.getRestMethod().equals(RestMethod.POST)) {
+      return idConverter.convert(restRequest, input, callback);
+    }
+    final FutureResult<String> futureResult = new FutureResult<String>();
+    cache.get(new ConversionKey(restRequest.getRestMethod(), input), new AsyncResultCache.Operation<String>() {
+      @Override
+      public void start(Callback<String> conversionCallback) {
+        if (batchIdConverter != null) {
+          submit(new PendingConversion(restRequest, input, conversionCallback));
+        } else {
+          idConverter.convert(restRequest, input, conversionCallback);
+        }
+      }
+    }, new Callback<String>() {
+      @Override
+      public void onCompletion(String result, Exception exception) {
+        futureResult.done(result, exception);
+        if (callback != null) {
+          callback.onCompletion(result, exception);
+        }
+      }
+    });
+    return futureResult;
+  }
+
+  @Override
+  public void close() throws IOException {
+    idConverter.close();
+  }
+
+  /**
+   * Queues a conversion for the next batch and sends a batch if one can be sent.
+   * @param pendingConversion the {@link PendingConversion} to queue.
+   */
+  private void submit(PendingConversion pendingConversion) {
+    List<PendingConversion> batch = null;
+    synchronized (this) {
+      pendingConversions.add(pendingConversion);
+      if (batchesInFlight == 0 || pendingConversions.size() >= maxBatchSize) {
+        batch = takeBatch();
+      }
+    }
+    if (batch != null) {
+      sendBatch(batch);
+    }
+  }
+
+  /**
+   * Takes the conversions for the next batch from the pending ones. Has to be called while holding the lock.
+   * @return the conversions for the next batch.
+   */
+  private List<PendingConversion> takeBatch() {
+    int batchSize = Math.min(pendingConversions.size(), maxBatchSize);
+    List<PendingConversion> batch = new ArrayList<>(pendingConversions.subList(0, batchSize));
+    pendingConversions.subList(0, batchSize).clear();
+    batchesInFlight++;
+    return batch;
+  }
+
+  /**
+   * Converts a batch of IDs and sends the next batch, if there are pending conversions, once done.
+   * @param batch the conversions in the batch.
+   */
+  private void sendBatch(final List<PendingConversion> batch) {
+    frontendMetrics.idConverterBatchSize.update(batch.size());
+    List<RestRequest> restRequests = new ArrayList<>(batch.size());
+    List<String> inputs = new ArrayList<>(batch.size());
+    for (PendingConversion pendingConversion : batch) {
+      restRequests.add(pendingConversion.restRequest);
+      inputs.add(pendingConversion.input);
+    }
+    Callback<List<String>> batchCallback = new Callback<List<String>>() {
+      private boolean completed = false;
+
+      @Override
+      public void onCompletion(List<String> result, Exception exception) {
+        synchronized (this) {
+          if (completed) {
+            return;
+          }
+          completed = true;
+        }
+        if (exception == null && (result == null || result.size() != batch.size())) {
+          exception = new RestServiceException("Batch conversion of " + batch.size() + " IDs returned " + (
+              result == null ? "no" : result.size()) + " IDs", RestServiceErrorCode.InternalServerError);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+          String convertedId = exception == null ? result.get(i) : null;
+          Exception conversionException = exception;
+          if (exception == null && convertedId == null) {
+            conversionException = new RestServiceException("ID " + batch.get(i).input + " could not be converted",
+                RestServiceErrorCode.NotFound);
+          }
+          batch.get(i).callback.onCompletion(convertedId, conversionException);
+        }
+        onBatchComplete();
+      }
+    };
+    try {
+      batchIdConverter.convert(restRequests, inputs, batchCallback);
+    } catch (RuntimeException e) {
+      batchCallback.onCompletion(null, e);
+    }
+  }
+
+  /**
+   * Sends the next batch, if there are pending conversions.
+   */
+  private void onBatchComplete() {
+    List<PendingConversion> batch = null;
+    synchronized (this) {
+      batchesInFlight--;
+      if (pendingConversions.size() > 0) {
+        batch = takeBatch();
+      }
+    }
+    if (batch != null) {
+      sendBatch(batch);
+    }
+  }
+
+  /**
+   * The key of a cached conversion.
+   */
+  private static class ConversionKey {
+    final RestMethod restMethod;
+    final String input;
+
+    ConversionKey(RestMethod restMethod, String input) {
+      this.restMethod = restMethod;
+      this.input = input;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      ConversionKey that = (ConversionKey) o;
+      return restMethod == that.restMethod && input.equals(that.input);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * restMethod.hashCode() + input.hashCode();
+    }
+  }
+
+  /**
+   * A conversion that is waiting to be sent in a batch.
+   */
+  private static class PendingConversion {
+    final RestRequest restRequest;
+    final String input;
+    final Callback<String> callback;
+
+    PendingConversion(RestRequest restRequest, String input, Callback<String> callback) {
+      this.restRequest = restRequest;
+      this.input = input;
+      this.callback = callback;
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.frontend;
+
+import com.github.ambry.messageformat.BlobInfo;
+import com.github.ambry.rest.RestRequest;
+import com.github.ambry.rest.RestResponseChannel;
+import com.github.ambry.rest.SecurityService;
+import com.github.ambry.router.Callback;
+import com.github.ambry.router.FutureResult;
+import com.github.ambry.utils.Time;
+import java.io.IOException;
+import java.security.Principal;
+import java.util.List;
+import java.util.concurrent.Future;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+
+
+/**
+ * A {@link SecurityService} that caches the outcome of {@link SecurityService#processRequest(RestRequest, Callback)}
+ * of another {@link SecurityService}.
+ * <p/>
+ * Outcomes are cached by the method and URI of the request, the principal of the SSL peer (if any) and the values of a
+ * configured set of headers, which have to include every header that the validations of the other
+ * {@link SecurityService} depend on (such as credentials). At least one key header is required.
+ * <p/>
+ * {@link SecurityService#processRequest(RestRequest, Callback)} of the other {@link SecurityService} is not called for
+ * requests that are served from the cache or that are coalesced with a validation in flight, so it must not have any
+ * per request side effects (such as setting arguments on the request or auditing it).
+ * {@link SecurityService#processResponse(RestRequest, RestResponseChannel, BlobInfo, Callback)} sets headers on the
+ * response, so it is never cached.
+ */
+class CachingSecurityService implements SecurityService {
+  private final SecurityService securityService;
+  private final List<String> keyHeaders;
+  private final AsyncResultCache<String, Void> cache;
+
+  /**
+   * @param securityService the {@link SecurityService} whose request validations have to be cached.
+   * @param keyHeaders the headers whose values are part of the key of a cached outcome. Cannot be empty.
+   * @param capacity the maximum number of outcomes that are cached.
+   * @param ttlInMs the time for which a successful validation is cached.
+   * @param negativeTtlInMs the time for which a failed validation is cached.
+   * @param frontendMetrics the {@link FrontendMetrics} to use.
+   * @param time the {@link Time} instance to use.
+   * @throws IllegalArgumentException if {@code keyHeaders} is empty.
+   */
+  CachingSecurityService(SecurityService securityService, List<String> keyHeaders, int capacity, long ttlInMs,
+      long negativeTtlInMs, FrontendMetrics frontendMetrics, Time time) {
+    if (keyHeaders.isEmpty()) {
+      // without them, a validation would be shared by every request for a URI irrespective of its credentials.
+      throw new IllegalArgumentException("Validations cannot be cached without any key headers");
+    }
+    this.securityService = securityService;
+    this.keyHeaders = keyHeaders;
+    cache = new AsyncResultCache<>(capacity, ttlInMs, negativeTtlInMs, time,
+        frontendMetrics.securityServiceCacheHitCount, frontendMetrics.securityServiceCacheNegativeHitCount,
+        frontendMetrics.securityServiceCacheMissCount, frontendMetrics.securityServiceCacheCoalescedCount);
+  }
+
+  @Override
+  public Future<Void> processRequest(final RestRequest restRequest, final Callback<Void> callback) {
+    final FutureResult<Void> futureResult = new FutureResult<Void>();
+    cache.get(getKey(restRequest), new AsyncResultCache.Operation<Void>() {
+      @Override
+      public void start(Callback<Void> processRequestCallback) {
+        securityService.processRequest(restRequest, processRequestCallback);
+      }
+    }, new Callback<Void>() {
+      @Override
+      public void onCompletion(Void result, Exception exception) {
+        futureResult.done(result, exception);
+        if (callback != null) {
+          callback.onCompletion(result, exception);
+        }
+      }
+    });
+    return futureResult;
+  }
+
+  @Override
+  public Future<Void> processResponse(RestRequest restRequest, RestResponseChannel responseChannel, BlobInfo blobInfo,
+      Callback<Void> callback) {
+    return securityService.processResponse(restRequest, responseChannel, blobInfo, callback);
+  }
+
+  @Override
+  public void close() throws IOException {
+    securityService.close();
+  }
+
+  /**
+   * @param restRequest the {@link RestRequest} being validated.
+   * @return the key of the cached outcome of the validation of {@code restRequest}.
+   */
+  private String getKey(RestRequest restRequest) {
+    StringBuilder key =
+        new StringBuilder().append(restRequest.getRestMethod()).append(' ').append(restRequest.getUri());
+    appendKeyPart(key, getPeerPrincipalName(restRequest));
+    for (String header : keyHeaders) {
+      Object value = restRequest.getArgs().get(header);
+      appendKeyPart(key, value == null ? null : value.toString());
+    }
+    return key.toString();
+  }
+
+  /**
+   * Appends a part to a key.
+   * @param key the key being built.
+   * @param part the part to append. Can be {@code null}.
+   */
+  private static void appendKeyPart(StringBuilder key, String part) {
+    // the length of the part keeps parts that contain the separator from colliding with other parts.
+    key.append('\n');
+    if (part == null) {
+      key.append('-');
+    } else {
+      key.append(part.length()).append(':').append(part);
+    }
+  }
+
+  /**
+   * @param restRequest the {@link RestRequest} being validated.
+   * @return the name of the authenticated SSL peer of {@code restRequest}, or {@code null} if there is none.
+   */
+  private static String getPeerPrincipalName(RestRequest restRequest) {
+    SSLSession sslSession = restRequest.getSSLSession();
+    if (sslSession == null) {
+      return null;
+    }
+    try {
+      Principal principal = sslSession.getPeerPrincipal();
+      return principal == null ? null : principal.getName();
+    } catch (SSLPeerUnverifiedException e) {
+      // the peer did not authenticate itself.
+      return null;
+    }
+  }
+}
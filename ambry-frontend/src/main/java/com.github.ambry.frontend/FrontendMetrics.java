@@ -46,6 +46,30 @@ class FrontendMetrics {
   // AmbryIdConverter
   public final Meter idConverterRequestRate;
 
+  // Content cache
+  public final Counter contentCacheHitCount;
+  public final Counter contentCacheMissCount;
+  public final Counter contentCacheAdmissionCount;
+  public final Counter contentCacheEvictionCount;
+  public final Counter contentCacheInvalidationCount;
+
+  // GET coalescing
+  public final Counter getCoalescedRequestCount;
+  public final Histogram getCoalescedGroupSize;
+
+  // ID converter cache
+  public final Counter idConverterCacheHitCount;
+  public final Counter idConverterCacheNegativeHitCount;
+  public final Counter idConverterCacheMissCount;
+  public final Counter idConverterCacheCoalescedCount;
+  public final Histogram idConverterBatchSize;
+
+  // Security service cache
+  public final Counter securityServiceCacheHitCount;
+  public final Counter securityServiceCacheNegativeHitCount;
+  public final Counter securityServiceCacheMissCount;
+  public final Counter securityServiceCacheCoalescedCount;
+
   // Latencies
   // AmbryBlobStorageService
   // DELETE
@@ -142,6 +166,38 @@ class FrontendMetrics {
     // AmbryIdConverter
     idConverterRequestRate = metricRegistry.meter(MetricRegistry.name(AmbryIdConverterFactory.class, "RequestRate"));
 
+    // Content cache
+    contentCacheHitCount = metricRegistry.counter(MetricRegistry.name(BlobContentCache.class, "HitCount"));
+    contentCacheMissCount = metricRegistry.counter(MetricRegistry.name(BlobContentCache.class, "MissCount"));
+    contentCacheAdmissionCount = metricRegistry.counter(MetricRegistry.name(BlobContentCache.class, "AdmissionCount"));
+    contentCacheEvictionCount = metricRegistry.counter(MetricRegistry.name(BlobContentCache.class, "EvictionCount"));
+    contentCacheInvalidationCount =
+        metricRegistry.counter(MetricRegistry.name(BlobContentCache.class, "InvalidationCount"));
+
+    // GET coalescing
+    getCoalescedRequestCount =
+        metricRegistry.counter(MetricRegistry.name(GetRequestCoalescer.class, "CoalescedRequestCount"));
+    getCoalescedGroupSize = metricRegistry.histogram(MetricRegistry.name(GetRequestCoalescer.class, "GroupSize"));
+
+    // ID converter cache
+    idConverterCacheHitCount = metricRegistry.counter(MetricRegistry.name(CachingIdConverter.class, "HitCount"));
+    idConverterCacheNegativeHitCount =
+        metricRegistry.counter(MetricRegistry.name(CachingIdConverter.class, "NegativeHitCount"));
+    idConverterCacheMissCount = metricRegistry.counter(MetricRegistry.name(CachingIdConverter.class, "MissCount"));
+    idConverterCacheCoalescedCount =
+        metricRegistry.counter(MetricRegistry.name(CachingIdConverter.class, "CoalescedCount"));
+    idConverterBatchSize = metricRegistry.histogram(MetricRegistry.name(CachingIdConverter.class, "BatchSize"));
+
+    // Security service cache
+    securityServiceCacheHitCount =
+        metricRegistry.counter(MetricRegistry.name(CachingSecurityService.class, "HitCount"));
+    securityServiceCacheNegativeHitCount =
+        metricRegistry.counter(MetricRegistry.name(CachingSecurityService.class, "NegativeHitCount"));
+    securityServiceCacheMissCount =
+        metricRegistry.counter(MetricRegistry.name(CachingSecurityService.class, "MissCount"));
+    securityServiceCacheCoalescedCount =
+        metricRegistry.counter(MetricRegistry.name(CachingSecurityService.class, "CoalescedCount"));
+
     // Latencies
     // AmbryBlobStorageService
     // DELETE
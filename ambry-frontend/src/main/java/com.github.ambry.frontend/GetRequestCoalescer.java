@@ -0,0 +1,464 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.frontend;
+
+import com.github.ambry.router.AsyncWritableChannel;
+import com.github.ambry.router.Callback;
+import com.github.ambry.router.FutureResult;
+import com.github.ambry.router.GetBlobOptions;
+import com.github.ambry.router.GetBlobResult;
+import com.github.ambry.router.ReadableStreamChannel;
+import com.github.ambry.router.Router;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Coalesces concurrent requests to get the same blob with the same {@link GetBlobOptions} into a single
+ * {@link Router#getBlob(String, GetBlobOptions, Callback)} call, so that a blob that is requested by many clients at
+ * the same time is fetched from the storage nodes only once.
+ * <p/>
+ * A request joins the router operation for the blob that is in flight, if there is one, and starts a new one
+ * otherwise. Once the operation completes, every request gets the same {@link com.github.ambry.messageformat.BlobInfo}
+ * and its own {@link ReadableStreamChannel} for the data. The data is read from the router once and every chunk is
+ * written to all the channels that are being read. A chunk is acknowledged to the router only once it has been
+ * written to all of them, so the data of a blob is held in memory no longer than it would be for a single request.
+ * Every channel that is handed out has to be either read or closed, since the router operation cannot progress
+ * otherwise.
+ */
+class GetRequestCoalescer {
+  private final Router router;
+  private final FrontendMetrics frontendMetrics;
+  private final ConcurrentHashMap<RequestKey, InFlightGet> inFlightGets = new ConcurrentHashMap<>();
+  private final Logger logger = LoggerFactory.getLogger(GetRequestCoalescer.class);
+
+  /**
+   * @param router the {@link Router} to get blobs from.
+   * @param frontendMetrics the {@link FrontendMetrics} to use.
+   */
+  GetRequestCoalescer(Router router, FrontendMetrics frontendMetrics) {
+    this.router = router;
+    this.frontendMetrics = frontendMetrics;
+  }
+
+  /**
+   * Gets a blob, joining the router operation for the same blob and options if there is one in flight.
+   * @param blobId the ID of the blob.
+   * @param options the {@link GetBlobOptions} of the request.
+   * @param callback the {@link Callback} to invoke with the result.
+   */
+  void getBlob(String blobId, GetBlobOptions options, Callback<GetBlobResult> callback) {
+    RequestKey key = new RequestKey(blobId, options);
+    while (true) {
+      InFlightGet inFlightGet = inFlightGets.get(key);
+      if (inFlightGet == null) {
+        inFlightGet = new InFlightGet(key, callback);
+        if (inFlightGets.putIfAbsent(key, inFlightGet) == null) {
+          try {
+            router.getBlob(blobId, options, inFlightGet);
+          } catch (RuntimeException e) {
+            // the caller that started the operation gets the exception. The ones that joined it are notified.
+            inFlightGet.fail(e);
+            throw e;
+          }
+          return;
+        }
+      } else if (inFlightGet.join(callback)) {
+        frontendMetrics.getCoalescedRequestCount.inc();
+        logger.trace("Coalesced GET of {} with the one in flight", blobId);
+        return;
+      }
+      // the operation in flight completed concurrently. Try again.
+    }
+  }
+
+  /**
+   * The key of the requests that can be coalesced.
+   */
+  private static class RequestKey {
+    final String blobId;
+    final GetBlobOptions options;
+
+    RequestKey(String blobId, GetBlobOptions options) {
+      this.blobId = blobId;
+      this.options = options;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      RequestKey that = (RequestKey) o;
+      return blobId.equals(that.blobId) && options.equals(that.options);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * blobId.hashCode() + options.hashCode();
+    }
+  }
+
+  /**
+   * A router operation in flight and the callbacks of the requests that are waiting for it.
+   */
+  private class InFlightGet implements Callback<GetBlobResult> {
+    private final RequestKey key;
+    private final List<Callback<GetBlobResult>> callbacks = new ArrayList<>();
+    private boolean completed = false;
+
+    InFlightGet(RequestKey key, Callback<GetBlobResult> callback) {
+      this.key = key;
+      callbacks.add(callback);
+    }
+
+    /**
+     * Adds a request to this operation.
+     * @param callback the {@link Callback} of the request.
+     * @return {@code true} if the request was added. {@code false} if the operation has already completed.
+     */
+    synchronized boolean join(Callback<GetBlobResult> callback) {
+      if (!completed) {
+        callbacks.add(callback);
+      }
+      return !completed;
+    }
+
+    /**
+     * Hands out the result of the router operation to all the requests waiting for it.
+     * @param result the {@link GetBlobResult} of the router operation.
+     * @param exception the exception that occurred in the router operation, if any.
+     */
+    @Override
+    public void onCompletion(GetBlobResult result, Exception exception) {
+      List<Callback<GetBlobResult>> callbacksToInvoke = complete();
+      frontendMetrics.getCoalescedGroupSize.update(callbacksToInvoke.size());
+      if (exception != null || result == null || result.getBlobDataChannel() == null
+          || callbacksToInvoke.size() == 1) {
+        for (Callback<GetBlobResult> callback : callbacksToInvoke) {
+          callback.onCompletion(result, exception);
+        }
+      } else {
+        FanOutChannel fanOutChannel = new FanOutChannel(result.getBlobDataChannel(), callbacksToInvoke.size());
+        for (int i = 0; i < callbacksToInvoke.size(); i++) {
+          callbacksToInvoke.get(i)
+              .onCompletion(new GetBlobResult(result.getBlobInfo(), fanOutChannel.getSubscriber(i)), null);
+        }
+      }
+    }
+
+    /**
+     * Fails the requests that joined this operation if the operation could not be started.
+     * @param exception the exception that occurred when the operation was started.
+     */
+    void fail(Exception exception) {
+      List<Callback<GetBlobResult>> callbacksToInvoke = complete();
+      for (Callback<GetBlobResult> callback : callbacksToInvoke.subList(1, callbacksToInvoke.size())) {
+        callback.onCompletion(null, exception);
+      }
+    }
+
+    /**
+     * Marks this operation as complete so that no more requests can join it.
+     * @return the callbacks of the requests that are waiting for the operation.
+     */
+    private List<Callback<GetBlobResult>> complete() {
+      inFlightGets.remove(key, this);
+      synchronized (this) {
+        completed = true;
+        return callbacks;
+      }
+    }
+  }
+
+  /**
+   * Reads the data of a blob from the router once and writes it to a fixed number of subscribers, each of which is a
+   * {@link ReadableStreamChannel}. The data is read once the first subscriber is read, and every chunk is acknowledged
+   * to the router once it has been written to (or given up by) all the subscribers.
+   */
+  private static class FanOutChannel {
+    private final ReadableStreamChannel source;
+    private final Subscriber[] subscribers;
+    private int openSubscriberCount;
+    private boolean sourceReadStarted = false;
+    private boolean sourceReadComplete = false;
+    private long sourceBytesRead = 0;
+    private Exception sourceReadException = null;
+
+    FanOutChannel(ReadableStreamChannel source, int subscriberCount) {
+      this.source = source;
+      subscribers = new Subscriber[subscriberCount];
+      for (int i = 0; i < subscriberCount; i++) {
+        subscribers[i] = new Subscriber();
+      }
+      openSubscriberCount = subscriberCount;
+    }
+
+    /**
+     * @param index the index of the subscriber.
+     * @return the subscriber at the given index.
+     */
+    ReadableStreamChannel getSubscriber(int index) {
+      return subscribers[index];
+    }
+
+    /**
+     * Writes a chunk from the router to all the subscribers that are being read, and queues it for the ones that are
+     * yet to be read.
+     * @param chunk the {@link Chunk} to write.
+     */
+    private synchronized void onChunk(Chunk chunk) {
+      for (Subscriber subscriber : subscribers) {
+        subscriber.offer(chunk);
+      }
+      // a chunk that no subscriber needs is acknowledged right away.
+      chunk.release();
+    }
+
+    /**
+     * Completes the read of all the subscribers that are being read once all the data has been read from the router.
+     * @param bytesRead the number of bytes read from the router.
+     * @param exception the exception that occurred in the read, if any.
+     */
+    private synchronized void onSourceReadComplete(long bytesRead, Exception exception) {
+      sourceReadComplete = true;
+      sourceBytesRead = bytesRead;
+      sourceReadException = exception;
+      for (Subscriber subscriber : subscribers) {
+        subscriber.completeRead(bytesRead, exception);
+      }
+    }
+
+    /**
+     * Starts reading from the router if this is the first subscriber that is read.
+     */
+    private void startSourceReadIfRequired() {
+      synchronized (this) {
+        if (sourceReadStarted) {
+          return;
+        }
+        sourceReadStarted = true;
+      }
+      source.readInto(new AsyncWritableChannel() {
+        @Override
+        public Future<Long> write(ByteBuffer src, Callback<Long> callback) {
+          Chunk chunk = new Chunk(src, callback);
+          onChunk(chunk);
+          return chunk.future;
+        }
+
+        @Override
+        public boolean isOpen() {
+          return true;
+        }
+
+        @Override
+        public void close() {
+        }
+      }, new Callback<Long>() {
+        @Override
+        public void onCompletion(Long result, Exception exception) {
+          onSourceReadComplete(result == null ? 0 : result, exception);
+        }
+      });
+    }
+
+    /**
+     * Closes the router channel once all the subscribers are closed.
+     */
+    private void onSubscriberClosed() {
+      synchronized (this) {
+        if (--openSubscriberCount > 0) {
+          return;
+        }
+      }
+      try {
+        source.close();
+      } catch (IOException e) {
+        LoggerFactory.getLogger(GetRequestCoalescer.class).error("Could not close the blob data channel", e);
+      }
+    }
+
+    /**
+     * A chunk of data from the router that is acknowledged once all the subscribers have released it.
+     */
+    private static class Chunk {
+      final ByteBuffer buffer;
+      final Callback<Long> callback;
+      final FutureResult<Long> future = new FutureResult<>();
+      final long size;
+      // one reference for the fan out itself, which is released once the chunk has been offered to all subscribers.
+      final AtomicInteger references = new AtomicInteger(1);
+
+      Chunk(ByteBuffer buffer, Callback<Long> callback) {
+        this.buffer = buffer;
+        this.callback = callback;
+        size = buffer.remaining();
+      }
+
+      /**
+       * Releases a reference to this chunk, and acknowledges it to the router if it was the last one. Failures to
+       * write the chunk to a subscriber fail only the read of that subscriber, so they are not reported to the router.
+       */
+      void release() {
+        if (references.decrementAndGet() == 0) {
+          buffer.position(buffer.limit());
+          future.done(size, null);
+          if (callback != null) {
+            callback.onCompletion(size, null);
+          }
+        }
+      }
+    }
+
+    /**
+     * A subscriber to the data of the blob.
+     */
+    private class Subscriber implements ReadableStreamChannel {
+      private final Queue<Chunk> pendingChunks = new LinkedList<>();
+      private AsyncWritableChannel target = null;
+      private Callback<Long> readCallback = null;
+      private FutureResult<Long> readFuture = null;
+      private boolean open = true;
+      private boolean readComplete = false;
+      private Exception writeException = null;
+
+      @Override
+      public long getSize() {
+        return source.getSize();
+      }
+
+      @Override
+      public Future<Long> readInto(AsyncWritableChannel asyncWritableChannel, Callback<Long> callback) {
+        FutureResult<Long> future = new FutureResult<>();
+        synchronized (FanOutChannel.this) {
+          if (target != null) {
+            throw new IllegalStateException("ReadableStreamChannel cannot be read more than once");
+          }
+          if (open) {
+            target = asyncWritableChannel;
+            readCallback = callback;
+            readFuture = future;
+            Chunk chunk;
+            while ((chunk = pendingChunks.poll()) != null) {
+              write(chunk);
+            }
+            if (sourceReadComplete) {
+              completeRead(sourceBytesRead, sourceReadException);
+            }
+          }
+        }
+        if (target == null) {
+          ClosedChannelException exception = new ClosedChannelException();
+          future.done(0L, exception);
+          if (callback != null) {
+            callback.onCompletion(0L, exception);
+          }
+        } else {
+          startSourceReadIfRequired();
+        }
+        return future;
+      }
+
+      @Override
+      public boolean isOpen() {
+        synchronized (FanOutChannel.this) {
+          return open;
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        synchronized (FanOutChannel.this) {
+          if (!open) {
+            return;
+          }
+          open = false;
+          Chunk chunk;
+          while ((chunk = pendingChunks.poll()) != null) {
+            chunk.release();
+          }
+        }
+        onSubscriberClosed();
+      }
+
+      /**
+       * Writes the chunk to this subscriber if it is being read, or queues it if it is yet to be read. Called with the
+       * lock of the {@link FanOutChannel} held.
+       * @param chunk the {@link Chunk} to write.
+       */
+      void offer(Chunk chunk) {
+        if (open && writeException == null) {
+          chunk.references.incrementAndGet();
+          if (target != null) {
+            write(chunk);
+          } else {
+            pendingChunks.add(chunk);
+          }
+        }
+      }
+
+      /**
+       * Completes the read of this subscriber, if it is being read. Called with the lock of the {@link FanOutChannel}
+       * held.
+       * @param bytesRead the number of bytes read from the router.
+       * @param exception the exception that occurred in the read from the router, if any.
+       */
+      void completeRead(long bytesRead, Exception exception) {
+        if (target != null && !readComplete) {
+          readComplete = true;
+          if (exception == null) {
+            exception = writeException;
+          }
+          readFuture.done(bytesRead, exception);
+          if (readCallback != null) {
+            readCallback.onCompletion(bytesRead, exception);
+          }
+        }
+      }
+
+      /**
+       * Writes a chunk to the channel that this subscriber is being read into.
+       * @param chunk the {@link Chunk} to write.
+       */
+      private void write(final Chunk chunk) {
+        target.write(chunk.buffer.duplicate(), new Callback<Long>() {
+          @Override
+          public void onCompletion(Long result, Exception exception) {
+            if (exception != null) {
+              synchronized (FanOutChannel.this) {
+                // the rest of the data is not written to this subscriber, whose read fails once the data is read.
+                writeException = exception;
+              }
+            }
+            chunk.release();
+          }
+        });
+      }
+    }
+  }
+}
@@ -367,6 +367,96 @@ public class AmbryBlobStorageServiceTest {
     verifyOperationsAfterDelete(blobId);
   }
 
+  /**
+   * Tests that small blobs that are requested frequently are served from the content cache, and that the cache is
+   * invalidated when the blob is deleted.
+   * @throws Exception
+   */
+  @Test
+  public void contentCacheTest() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("frontend.content.cache.size.in.bytes", "1048576");
+    properties.setProperty("frontend.content.cache.max.blob.size.in.bytes", "2048");
+    properties.setProperty("frontend.content.cache.admission.frequency", "2");
+    ambryBlobStorageService.shutdown();
+    ambryBlobStorageService =
+        new AmbryBlobStorageService(new FrontendConfig(new VerifiableProperties(properties)), frontendMetrics,
+            responseHandler, router, idConverterFactory, securityServiceFactory);
+    ambryBlobStorageService.start();
+
+    ByteBuffer content = ByteBuffer.wrap(TestUtils.getRandomBytes(1024));
+    JSONObject headers = new JSONObject();
+    setAmbryHeaders(headers, content.capacity(), 7200, false, "contentCacheServiceID", "application/octet-stream",
+        "contentCacheOwnerID");
+    String blobId = postBlobAndVerify(headers, content);
+    ByteBuffer largeContent = ByteBuffer.wrap(TestUtils.getRandomBytes(4096));
+    JSONObject largeBlobHeaders = new JSONObject();
+    setAmbryHeaders(largeBlobHeaders, largeContent.capacity(), 7200, false, "contentCacheServiceID",
+        "application/octet-stream", "contentCacheOwnerID");
+    String largeBlobId = postBlobAndVerify(largeBlobHeaders, largeContent);
+
+    // the first request is not enough for admission. The second one is, and caches the blob as it is read.
+    getBlobAndVerify(blobId, null, headers, content);
+    assertEquals("Blob should not have been cached", 0, frontendMetrics.contentCacheAdmissionCount.getCount());
+    getBlobAndVerify(blobId, null, headers, content);
+    assertEquals("Blob should have been cached", 1, frontendMetrics.contentCacheAdmissionCount.getCount());
+    assertEquals("Blob should not have been served from the cache", 0,
+        frontendMetrics.contentCacheHitCount.getCount());
+    for (int i = 1; i <= 3; i++) {
+      getBlobAndVerify(blobId, null, headers, content);
+      assertEquals("Blob should have been served from the cache", i, frontendMetrics.contentCacheHitCount.getCount());
+    }
+    getBlobInfoAndVerify(blobId, headers);
+    getNotModifiedBlobAndVerify(blobId);
+    assertEquals("Blob info should have been served from the cache", 5,
+        frontendMetrics.contentCacheHitCount.getCount());
+    // ranges are served by the router.
+    ByteRange range = ByteRange.fromOffsetRange(10, 100);
+    getBlobAndVerify(blobId, range, headers, content);
+    assertEquals("Range should not have been served from the cache", 5,
+        frontendMetrics.contentCacheHitCount.getCount());
+
+    // blobs larger than the threshold are never cached.
+    for (int i = 0; i < 3; i++) {
+      getBlobAndVerify(largeBlobId, null, largeBlobHeaders, largeContent);
+    }
+    assertEquals("Large blob should not have been cached", 1, frontendMetrics.contentCacheAdmissionCount.getCount());
+
+    deleteBlobAndVerify(blobId);
+    assertEquals("Cached blob should have been invalidated", 1,
+        frontendMetrics.contentCacheInvalidationCount.getCount());
+    verifyOperationsAfterDelete(blobId);
+  }
+
+  /**
+   * Tests that GET and HEAD requests work as usual when they go through the {@link GetRequestCoalescer}.
+   * @throws Exception
+   */
+  @Test
+  public void getCoalescingTest() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("frontend.get.coalescing.enabled", "true");
+    ambryBlobStorageService.shutdown();
+    ambryBlobStorageService =
+        new AmbryBlobStorageService(new FrontendConfig(new VerifiableProperties(properties)), frontendMetrics,
+            responseHandler, router, idConverterFactory, securityServiceFactory);
+    ambryBlobStorageService.start();
+
+    ByteBuffer content = ByteBuffer.wrap(TestUtils.getRandomBytes(1024));
+    JSONObject headers = new JSONObject();
+    setAmbryHeaders(headers, content.capacity(), 7200, false, "getCoalescingServiceID", "application/octet-stream",
+        "getCoalescingOwnerID");
+    String blobId = postBlobAndVerify(headers, content);
+    getBlobAndVerify(blobId, null, headers, content);
+    getBlobAndVerify(blobId, ByteRange.fromOffsetRange(10, 100), headers, content);
+    getNotModifiedBlobAndVerify(blobId);
+    getUserMetadataAndVerify(blobId, headers);
+    getBlobInfoAndVerify(blobId, headers);
+    getHeadAndVerify(blobId, null, headers);
+    deleteBlobAndVerify(blobId);
+    verifyOperationsAfterDelete(blobId);
+  }
+
   /**
    * Tests how metadata that has not been POSTed in the form of headers is returned.
    * @throws Exception
@@ -1413,6 +1503,15 @@ class FrontendTestRouter implements Router {
     return completeOperation(result, callback, OpType.GetBlob);
   }
 
+  @Override
+  public List<Future<GetBlobResult>> getBlobs(List<String> blobIds, GetBlobOptions options) {
+    List<Future<GetBlobResult>> futures = new ArrayList<>(blobIds.size());
+    for (String blobId : blobIds) {
+      futures.add(getBlob(blobId, options));
+    }
+    return futures;
+  }
+
   @Override
   public Future<String> putBlob(BlobProperties blobProperties, byte[] usermetadata, ReadableStreamChannel channel) {
     return putBlob(blobProperties, usermetadata, channel, null);
@@ -1434,6 +1533,15 @@ class FrontendTestRouter implements Router {
     return completeOperation(null, callback, OpType.DeleteBlob);
   }
 
+  @Override
+  public List<Future<Void>> deleteBlobs(List<String> blobIds) {
+    List<Future<Void>> futures = new ArrayList<>(blobIds.size());
+    for (String blobId : blobIds) {
+      futures.add(deleteBlob(blobId));
+    }
+    return futures;
+  }
+
   @Override
   public void close() {
     isOpen = false;
@@ -0,0 +1,292 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.frontend;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.commons.ByteBufferAsyncWritableChannel;
+import com.github.ambry.commons.ByteBufferReadableStreamChannel;
+import com.github.ambry.messageformat.BlobInfo;
+import com.github.ambry.messageformat.BlobProperties;
+import com.github.ambry.router.GetBlobOptions;
+import com.github.ambry.router.GetBlobResult;
+import com.github.ambry.router.ReadableStreamChannel;
+import com.github.ambry.utils.MockTime;
+import com.github.ambry.utils.TestUtils;
+import com.github.ambry.utils.Utils;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for {@link BlobContentCache}.
+ */
+public class BlobContentCacheTest {
+  private static final int BLOB_SIZE = 100;
+  private static final long MAX_ENTRY_AGE_MS = 10000;
+
+  private final FrontendMetrics frontendMetrics = new FrontendMetrics(new MetricRegistry());
+  private final MockTime time = new MockTime();
+
+  /**
+   * Tests that blobs are admitted only after they are requested frequently, and that they are served from the cache
+   * after that.
+   * @throws Exception
+   */
+  @Test
+  public void admissionTest() throws Exception {
+    BlobContentCache cache =
+        new BlobContentCache(10 * BLOB_SIZE, BLOB_SIZE, 3, MAX_ENTRY_AGE_MS, frontendMetrics, time);
+    byte[] content = TestUtils.getRandomBytes(BLOB_SIZE);
+    for (int i = 0; i < 2; i++) {
+      assertFalse("Blob should not have been cached", readAndCache(cache, "blob", content, Utils.Infinite_Time));
+    }
+    assertTrue("Blob should have been cached", readAndCache(cache, "blob", content, Utils.Infinite_Time));
+    assertEquals("Unexpected cache size", BLOB_SIZE, cache.getSizeInBytes());
+    verifyCached(cache, "blob", content);
+    GetBlobResult result = cache.get("blob", GetBlobOptions.OperationType.BlobInfo);
+    assertNull("There should be no data for a blob info request", result.getBlobDataChannel());
+    assertEquals("Unexpected blob size", BLOB_SIZE, result.getBlobInfo().getBlobProperties().getBlobSize());
+
+    // blobs that are too large are not cached irrespective of the number of requests.
+    byte[] largeContent = TestUtils.getRandomBytes(BLOB_SIZE + 1);
+    for (int i = 0; i < 5; i++) {
+      assertFalse("Blob should not have been cached", readAndCache(cache, "large", largeContent, Utils.Infinite_Time));
+    }
+  }
+
+  /**
+   * Tests that the least recently used blobs are evicted when the memory budget is exceeded.
+   * @throws Exception
+   */
+  @Test
+  public void evictionTest() throws Exception {
+    BlobContentCache cache =
+        new BlobContentCache(2 * BLOB_SIZE, BLOB_SIZE, 1, MAX_ENTRY_AGE_MS, frontendMetrics, time);
+    byte[][] contents = new byte[3][];
+    for (int i = 0; i < contents.length; i++) {
+      contents[i] = TestUtils.getRandomBytes(BLOB_SIZE);
+    }
+    assertTrue("Blob should have been cached", readAndCache(cache, "blob0", contents[0], Utils.Infinite_Time));
+    assertTrue("Blob should have been cached", readAndCache(cache, "blob1", contents[1], Utils.Infinite_Time));
+    // blob0 becomes the most recently used, so blob1 is evicted.
+    verifyCached(cache, "blob0", contents[0]);
+    assertTrue("Blob should have been cached", readAndCache(cache, "blob2", contents[2], Utils.Infinite_Time));
+    assertEquals("Unexpected cache size", 2 * BLOB_SIZE, cache.getSizeInBytes());
+    assertEquals("Unexpected eviction count", 1, frontendMetrics.contentCacheEvictionCount.getCount());
+    verifyCached(cache, "blob0", contents[0]);
+    verifyCached(cache, "blob2", contents[2]);
+    assertNull("Blob should have been evicted", cache.get("blob1", GetBlobOptions.OperationType.All));
+  }
+
+  /**
+   * Tests that the buffers of blobs that are being cached count against the memory budget, and that blobs are read
+   * without being cached when there is no room for their buffers.
+   * @throws Exception
+   */
+  @Test
+  public void concurrentCachingTest() throws Exception {
+    BlobContentCache cache =
+        new BlobContentCache(2 * BLOB_SIZE, BLOB_SIZE, 1, MAX_ENTRY_AGE_MS, frontendMetrics, time);
+    byte[][] contents = new byte[4][];
+    for (int i = 0; i < contents.length; i++) {
+      contents[i] = TestUtils.getRandomBytes(BLOB_SIZE);
+    }
+    assertTrue("Blob should have been cached", readAndCache(cache, "blob0", contents[0], Utils.Infinite_Time));
+    // start reading the other blobs without completing the reads.
+    ByteBufferAsyncWritableChannel[] writableChannels = new ByteBufferAsyncWritableChannel[3];
+    for (int i = 0; i < writableChannels.length; i++) {
+      String blobId = "blob" + (i + 1);
+      assertNull("Blob should not have been cached yet", cache.get(blobId, GetBlobOptions.OperationType.All));
+      ReadableStreamChannel channel =
+          cache.cacheOnRead(blobId, getBlobInfo(BLOB_SIZE, Utils.Infinite_Time), getChannel(contents[i + 1]),
+              cache.getInvalidationMarker());
+      writableChannels[i] = new ByteBufferAsyncWritableChannel();
+      channel.readInto(writableChannels[i], null);
+    }
+    // the buffers of the first two reads take up the whole budget, so the cached blob is evicted.
+    assertEquals("Unexpected cache size", 0, cache.getSizeInBytes());
+    assertEquals("Unexpected eviction count", 1, frontendMetrics.contentCacheEvictionCount.getCount());
+    for (int i = 0; i < writableChannels.length; i++) {
+      byte[] readContent = new byte[BLOB_SIZE];
+      writableChannels[i].getNextChunk(1000).get(readContent);
+      assertArrayEquals("Unexpected content", contents[i + 1], readContent);
+      writableChannels[i].resolveOldestChunk(null);
+    }
+    assertEquals("Unexpected cache size", 2 * BLOB_SIZE, cache.getSizeInBytes());
+    verifyCached(cache, "blob1", contents[1]);
+    verifyCached(cache, "blob2", contents[2]);
+    // there was no room for the buffer of the last read.
+    assertNull("Blob should not have been cached", cache.get("blob3", GetBlobOptions.OperationType.All));
+
+    // a blob can be cached once the reads complete.
+    assertTrue("Blob should have been cached", readAndCache(cache, "blob3", contents[3], Utils.Infinite_Time));
+    assertEquals("Unexpected cache size", 2 * BLOB_SIZE, cache.getSizeInBytes());
+  }
+
+  /**
+   * Tests that blobs are not served once they are older than the maximum age, or once they expire.
+   * @throws Exception
+   */
+  @Test
+  public void expiryTest() throws Exception {
+    BlobContentCache cache =
+        new BlobContentCache(10 * BLOB_SIZE, BLOB_SIZE, 1, MAX_ENTRY_AGE_MS, frontendMetrics, time);
+    byte[] content = TestUtils.getRandomBytes(BLOB_SIZE);
+    assertTrue("Blob should have been cached", readAndCache(cache, "blob", content, Utils.Infinite_Time));
+    time.sleep(MAX_ENTRY_AGE_MS - 1);
+    verifyCached(cache, "blob", content);
+    time.sleep(1);
+    assertNull("Blob should not be served after the maximum age", cache.get("blob", GetBlobOptions.OperationType.All));
+    assertEquals("Unexpected cache size", 0, cache.getSizeInBytes());
+
+    // a blob with a TTL is not served after it expires.
+    long ttlInSecs = TimeUnit.MILLISECONDS.toSeconds(MAX_ENTRY_AGE_MS) / 2;
+    assertTrue("Blob should have been cached", readAndCache(cache, "ttlBlob", content, ttlInSecs));
+    time.sleep(TimeUnit.SECONDS.toMillis(ttlInSecs) - 1);
+    verifyCached(cache, "ttlBlob", content);
+    time.sleep(1);
+    assertNull("Blob should not be served after it expires", cache.get("ttlBlob", GetBlobOptions.OperationType.All));
+  }
+
+  /**
+   * Tests that invalidated blobs are removed and that blobs that are being read during an invalidation are not cached.
+   * @throws Exception
+   */
+  @Test
+  public void invalidationTest() throws Exception {
+    BlobContentCache cache =
+        new BlobContentCache(10 * BLOB_SIZE, BLOB_SIZE, 1, MAX_ENTRY_AGE_MS, frontendMetrics, time);
+    byte[] content = TestUtils.getRandomBytes(BLOB_SIZE);
+    assertTrue("Blob should have been cached", readAndCache(cache, "blob", content, Utils.Infinite_Time));
+    cache.invalidate("blob");
+    assertEquals("Unexpected invalidation count", 1, frontendMetrics.contentCacheInvalidationCount.getCount());
+    assertNull("Blob should have been invalidated", cache.get("blob", GetBlobOptions.OperationType.All));
+
+    // a read that starts before an invalidation does not cache the blob.
+    long invalidationMarker = cache.getInvalidationMarker();
+    cache.invalidate("blob");
+    ReadableStreamChannel channel =
+        cache.cacheOnRead("blob", getBlobInfo(BLOB_SIZE, Utils.Infinite_Time), getChannel(content), invalidationMarker);
+    readFully(channel, content);
+    assertNull("Blob should not have been cached", cache.get("blob", GetBlobOptions.OperationType.All));
+  }
+
+  /**
+   * Tests that {@link BlobContentCache.FrequencySketch} counts keys and forgets them over time.
+   */
+  @Test
+  public void frequencySketchTest() {
+    BlobContentCache.FrequencySketch sketch = new BlobContentCache.FrequencySketch(1024);
+    for (int i = 0; i < 5; i++) {
+      sketch.increment("hot");
+    }
+    assertTrue("Frequency should not be underestimated", sketch.frequency("hot") >= 5);
+    for (int i = 0; i < 20; i++) {
+      sketch.increment("hot");
+    }
+    assertEquals("Frequency should saturate", 15, sketch.frequency("hot"));
+    // enough increments of another key halve the counters three times.
+    for (int i = 0; i < 1024 * 10 * 2; i++) {
+      sketch.increment("other");
+    }
+    assertTrue("Frequency should have decayed", sketch.frequency("hot") < 5);
+    assertTrue("Frequency should have been halved rather than cleared", sketch.frequency("hot") >= 1);
+    // the counters of many keys are packed together, and must not spill into each other.
+    sketch = new BlobContentCache.FrequencySketch(16);
+    for (int i = 0; i < 16; i++) {
+      for (int j = 0; j <= i; j++) {
+        sketch.increment("key" + i);
+      }
+    }
+    for (int i = 0; i < 16; i++) {
+      assertTrue("Frequency should not be underestimated", sketch.frequency("key" + i) >= Math.min(i + 1, 15));
+    }
+  }
+
+  // helpers
+
+  /**
+   * Requests a blob that is not cached and reads it through the cache, as if it came from the router.
+   * @param cache the {@link BlobContentCache} to use.
+   * @param blobId the ID of the blob.
+   * @param content the content of the blob.
+   * @param ttlInSecs the TTL of the blob.
+   * @return {@code true} if the blob was cached by the read.
+   * @throws Exception
+   */
+  private boolean readAndCache(BlobContentCache cache, String blobId, byte[] content, long ttlInSecs)
+      throws Exception {
+    assertNull("Blob should not have been cached yet", cache.get(blobId, GetBlobOptions.OperationType.All));
+    long admissionCount = frontendMetrics.contentCacheAdmissionCount.getCount();
+    long invalidationMarker = cache.getInvalidationMarker();
+    ReadableStreamChannel channel =
+        cache.cacheOnRead(blobId, getBlobInfo(content.length, ttlInSecs), getChannel(content), invalidationMarker);
+    readFully(channel, content);
+    return frontendMetrics.contentCacheAdmissionCount.getCount() == admissionCount + 1;
+  }
+
+  /**
+   * Verifies that the blob is served from the cache with the right content.
+   * @param cache the {@link BlobContentCache} to use.
+   * @param blobId the ID of the blob.
+   * @param content the expected content of the blob.
+   * @throws Exception
+   */
+  private void verifyCached(BlobContentCache cache, String blobId, byte[] content) throws Exception {
+    GetBlobResult result = cache.get(blobId, GetBlobOptions.OperationType.All);
+    assertNotNull("Blob should have been cached", result);
+    readFully(result.getBlobDataChannel(), content);
+  }
+
+  /**
+   * Reads the channel and verifies that the content is as expected.
+   * @param channel the {@link ReadableStreamChannel} to read.
+   * @param expectedContent the expected content.
+   * @throws Exception
+   */
+  private void readFully(ReadableStreamChannel channel, byte[] expectedContent) throws Exception {
+    ByteBufferAsyncWritableChannel writableChannel = new ByteBufferAsyncWritableChannel();
+    channel.readInto(writableChannel, null);
+    ByteBuffer actualContent = ByteBuffer.allocate(expectedContent.length);
+    while (actualContent.hasRemaining()) {
+      ByteBuffer chunk = writableChannel.getNextChunk(1000);
+      assertNotNull("Did not receive all the content", chunk);
+      actualContent.put(chunk);
+      writableChannel.resolveOldestChunk(null);
+    }
+    assertArrayEquals("Unexpected content", expectedContent, actualContent.array());
+  }
+
+  /**
+   * @param content the content of the channel.
+   * @return a {@link ReadableStreamChannel} with the content.
+   */
+  private ReadableStreamChannel getChannel(byte[] content) {
+    return new ByteBufferReadableStreamChannel(ByteBuffer.wrap(content));
+  }
+
+  /**
+   * @param blobSize the size of the blob.
+   * @param ttlInSecs the TTL of the blob.
+   * @return a {@link BlobInfo} for a blob created now.
+   */
+  private BlobInfo getBlobInfo(long blobSize, long ttlInSecs) {
+    return new BlobInfo(
+        new BlobProperties(blobSize, "serviceId", "ownerId", "application/octet-stream", false, ttlInSecs,
+            time.milliseconds()), new byte[0]);
+  }
+}
@@ -0,0 +1,268 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.frontend;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.rest.BatchIdConverter;
+import com.github.ambry.rest.IdConverter;
+import com.github.ambry.rest.MockRestRequest;
+import com.github.ambry.rest.RestMethod;
+import com.github.ambry.rest.RestRequest;
+import com.github.ambry.rest.RestServiceErrorCode;
+import com.github.ambry.rest.RestServiceException;
+import com.github.ambry.router.Callback;
+import com.github.ambry.router.FutureResult;
+import com.github.ambry.utils.MockTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for {@link CachingIdConverter}.
+ */
+public class CachingIdConverterTest {
+  private static final long TTL_MS = 1000;
+  private static final long NEGATIVE_TTL_MS = 100;
+
+  private final FrontendMetrics frontendMetrics = new FrontendMetrics(new MetricRegistry());
+  private final MockTime time = new MockTime();
+  private final PendingIdConverter pendingIdConverter = new PendingIdConverter();
+
+  /**
+   * Tests that conversions are cached for the TTL, that concurrent conversions of the same ID share one call and that
+   * conversions on POST are not cached.
+   * @throws Exception
+   */
+  @Test
+  public void cacheTest() throws Exception {
+    CachingIdConverter idConverter = getIdConverter(pendingIdConverter, 10);
+    Future<String> first = idConverter.convert(createRestRequest(RestMethod.GET), "id", null);
+    Future<String> second = idConverter.convert(createRestRequest(RestMethod.GET), "id", null);
+    assertEquals("There should be one conversion in flight", 1, pendingIdConverter.pendingCallbacks.size());
+    assertEquals("Unexpected coalesced count", 1, frontendMetrics.idConverterCacheCoalescedCount.getCount());
+    pendingIdConverter.completeNext("converted", null);
+    assertEquals("Unexpected conversion", "converted", first.get(1, TimeUnit.SECONDS));
+    assertEquals("Unexpected conversion", "converted", second.get(1, TimeUnit.SECONDS));
+
+    // served from the cache.
+    assertEquals("Unexpected conversion", "converted",
+        idConverter.convert(createRestRequest(RestMethod.GET), "id", null).get(1, TimeUnit.SECONDS));
+    assertEquals("Unexpected hit count", 1, frontendMetrics.idConverterCacheHitCount.getCount());
+    // a different method is a different conversion.
+    idConverter.convert(createRestRequest(RestMethod.DELETE), "id", null);
+    assertEquals("Conversion on another method should not be served from the cache", 1,
+        pendingIdConverter.pendingCallbacks.size());
+    pendingIdConverter.completeNext("convertedForDelete", null);
+    // POST is not cached.
+    idConverter.convert(createRestRequest(RestMethod.POST), "id", null);
+    idConverter.convert(createRestRequest(RestMethod.POST), "id", null);
+    assertEquals("Conversions on POST should not be cached or coalesced", 2,
+        pendingIdConverter.pendingCallbacks.size());
+    pendingIdConverter.completeNext("/id", null);
+    pendingIdConverter.completeNext("/id", null);
+
+    // expired.
+    time.currentMilliseconds += TTL_MS;
+    Future<String> afterExpiry = idConverter.convert(createRestRequest(RestMethod.GET), "id", null);
+    assertEquals("Expired conversion should not be served from the cache", 1,
+        pendingIdConverter.pendingCallbacks.size());
+    pendingIdConverter.completeNext("reconverted", null);
+    assertEquals("Unexpected conversion", "reconverted", afterExpiry.get(1, TimeUnit.SECONDS));
+  }
+
+  /**
+   * Tests that failures because of the ID are cached for the negative TTL and other failures are not cached.
+   * @throws Exception
+   */
+  @Test
+  public void negativeCacheTest() throws Exception {
+    CachingIdConverter idConverter = getIdConverter(pendingIdConverter, 10);
+    idConverter.convert(createRestRequest(RestMethod.GET), "missing", null);
+    pendingIdConverter.completeNext(null, new RestServiceException("missing", RestServiceErrorCode.NotFound));
+    verifyFailure(idConverter.convert(createRestRequest(RestMethod.GET), "missing", null),
+        RestServiceErrorCode.NotFound);
+    assertEquals("Unexpected negative hit count", 1, frontendMetrics.idConverterCacheNegativeHitCount.getCount());
+    time.currentMilliseconds += NEGATIVE_TTL_MS;
+    idConverter.convert(createRestRequest(RestMethod.GET), "missing", null);
+    assertEquals("Expired failure should not be served from the cache", 1, pendingIdConverter.pendingCallbacks.size());
+
+    pendingIdConverter.completeNext(null,
+        new RestServiceException("unavailable", RestServiceErrorCode.ServiceUnavailable));
+    idConverter.convert(createRestRequest(RestMethod.GET), "missing", null);
+    assertEquals("Transient failure should not be cached", 1, pendingIdConverter.pendingCallbacks.size());
+  }
+
+  /**
+   * Tests that the least recently used conversions are evicted beyond the capacity.
+   * @throws Exception
+   */
+  @Test
+  public void evictionTest() throws Exception {
+    CachingIdConverter idConverter = getIdConverter(pendingIdConverter, 2);
+    for (String id : new String[]{"a", "b", "a", "c"}) {
+      idConverter.convert(createRestRequest(RestMethod.GET), id, null);
+      if (pendingIdConverter.pendingCallbacks.size() > 0) {
+        pendingIdConverter.completeNext(id, null);
+      }
+    }
+    idConverter.convert(createRestRequest(RestMethod.GET), "a", null);
+    assertEquals("Recently used conversion should be cached", 0, pendingIdConverter.pendingCallbacks.size());
+    idConverter.convert(createRestRequest(RestMethod.GET), "b", null);
+    assertEquals("Least recently used conversion should have been evicted", 1,
+        pendingIdConverter.pendingCallbacks.size());
+  }
+
+  /**
+   * Tests that conversions of different IDs are batched while a batch is in flight and that a batch is sent when it is
+   * full.
+   * @throws Exception
+   */
+  @Test
+  public void batchTest() throws Exception {
+    PendingBatchIdConverter batchIdConverter = new PendingBatchIdConverter();
+    CachingIdConverter idConverter = getIdConverter(batchIdConverter, 10);
+    List<Future<String>> futures = new ArrayList<>();
+    for (String id : new String[]{"a", "b", "c", "e"}) {
+      futures.add(idConverter.convert(createRestRequest(RestMethod.GET), id, null));
+    }
+    // "a" goes right away, "b" and "c" fill a batch, "e" waits.
+    assertEquals("Unexpected batches", Arrays.asList(Arrays.asList("a"), Arrays.asList("b", "c")),
+        batchIdConverter.batches);
+    batchIdConverter.completeBatch(0, null);
+    assertEquals("Waiting IDs should be sent once a batch completes", Arrays.asList("e"),
+        batchIdConverter.batches.get(2));
+    batchIdConverter.completeBatch(1, null);
+    batchIdConverter.completeBatch(2, null);
+    assertEquals("Unexpected conversion", "a-converted", futures.get(0).get(1, TimeUnit.SECONDS));
+    assertEquals("Unexpected conversion", "c-converted", futures.get(2).get(1, TimeUnit.SECONDS));
+    verifyFailure(futures.get(3), RestServiceErrorCode.NotFound);
+    assertEquals("Unexpected batch count", 3, frontendMetrics.idConverterBatchSize.getCount());
+
+    // a failed batch fails all of its conversions.
+    Future<String> failed = idConverter.convert(createRestRequest(RestMethod.GET), "f", null);
+    batchIdConverter.completeBatch(3, new RestServiceException("failed", RestServiceErrorCode.InternalServerError));
+    verifyFailure(failed, RestServiceErrorCode.InternalServerError);
+  }
+
+  /**
+   * @param idConverter the {@link IdConverter} to cache the conversions of.
+   * @param capacity the capacity of the cache.
+   * @return a {@link CachingIdConverter} with a max batch size of 2.
+   */
+  private CachingIdConverter getIdConverter(IdConverter idConverter, int capacity) {
+    return new CachingIdConverter(idConverter, capacity, TTL_MS, NEGATIVE_TTL_MS, 2, frontendMetrics, time);
+  }
+
+  /**
+   * @param restMethod the {@link RestMethod} of the request.
+   * @return a {@link RestRequest} with the given method.
+   * @throws Exception
+   */
+  private RestRequest createRestRequest(RestMethod restMethod) throws Exception {
+    JSONObject request = new JSONObject();
+    request.put(MockRestRequest.REST_METHOD_KEY, restMethod);
+    request.put(MockRestRequest.URI_KEY, "/");
+    return new MockRestRequest(request, null);
+  }
+
+  /**
+   * Verifies that a conversion failed with the given error code.
+   * @param future the {@link Future} of the conversion.
+   * @param errorCode the expected {@link RestServiceErrorCode}.
+   * @throws Exception
+   */
+  private void verifyFailure(Future<String> future, RestServiceErrorCode errorCode) throws Exception {
+    try {
+      future.get(1, TimeUnit.SECONDS);
+      fail("Conversion should have failed");
+    } catch (ExecutionException e) {
+      assertEquals("Unexpected error code", errorCode, ((RestServiceException) e.getCause()).getErrorCode());
+    }
+  }
+
+  /**
+   * An {@link IdConverter} that completes conversions only when asked to.
+   */
+  private static class PendingIdConverter implements IdConverter {
+    final List<Callback<String>> pendingCallbacks = new ArrayList<>();
+
+    @Override
+    public Future<String> convert(RestRequest restRequest, String input, final Callback<String> callback) {
+      final FutureResult<String> futureResult = new FutureResult<>();
+      pendingCallbacks.add(new Callback<String>() {
+        @Override
+        public void onCompletion(String result, Exception exception) {
+          futureResult.done(result, exception);
+          if (callback != null) {
+            callback.onCompletion(result, exception);
+          }
+        }
+      });
+      return futureResult;
+    }
+
+    /**
+     * Completes the oldest pending conversion.
+     * @param result the converted ID.
+     * @param exception the exception to fail the conversion with, if any.
+     */
+    void completeNext(String result, Exception exception) {
+      pendingCallbacks.remove(0).onCompletion(result, exception);
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  /**
+   * A {@link BatchIdConverter} that completes batches only when asked to. IDs "e" and beyond do not exist.
+   */
+  private static class PendingBatchIdConverter extends PendingIdConverter implements BatchIdConverter {
+    final List<List<String>> batches = new ArrayList<>();
+    final List<Callback<List<String>>> batchCallbacks = new ArrayList<>();
+
+    @Override
+    public Future<List<String>> convert(List<RestRequest> restRequests, List<String> inputs,
+        Callback<List<String>> callback) {
+      batches.add(new ArrayList<>(inputs));
+      batchCallbacks.add(callback);
+      return new FutureResult<>();
+    }
+
+    /**
+     * Completes a batch.
+     * @param index the index of the batch.
+     * @param exception the exception to fail the batch with, if any.
+     */
+    void completeBatch(int index, Exception exception) {
+      List<String> result = null;
+      if (exception == null) {
+        result = new ArrayList<>();
+        for (String input : batches.get(index)) {
+          result.add(input.compareTo("e") < 0 ? input + "-converted" : null);
+        }
+      }
+      batchCallbacks.get(index).onCompletion(result, exception);
+    }
+  }
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.frontend;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.messageformat.BlobInfo;
+import com.github.ambry.rest.MockRestRequest;
+import com.github.ambry.rest.MockRestResponseChannel;
+import com.github.ambry.rest.RestMethod;
+import com.github.ambry.rest.RestRequest;
+import com.github.ambry.rest.RestResponseChannel;
+import com.github.ambry.rest.RestServiceErrorCode;
+import com.github.ambry.rest.RestServiceException;
+import com.github.ambry.rest.SecurityService;
+import com.github.ambry.router.Callback;
+import com.github.ambry.router.FutureResult;
+import com.github.ambry.utils.MockTime;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for {@link CachingSecurityService}.
+ */
+public class CachingSecurityServiceTest {
+  private static final String KEY_HEADER = "x-test-credentials";
+
+  private final FrontendMetrics frontendMetrics = new FrontendMetrics(new MetricRegistry());
+  private final PendingSecurityService pendingSecurityService = new PendingSecurityService();
+  private final CachingSecurityService securityService =
+      new CachingSecurityService(pendingSecurityService, Collections.singletonList(KEY_HEADER), 10, 1000, 100,
+          frontendMetrics, new MockTime());
+
+  /**
+   * Tests that validations are cached by method, URI and key headers, and that failed validations are cached.
+   * @throws Exception
+   */
+  @Test
+  public void processRequestTest() throws Exception {
+    Future<Void> first = securityService.processRequest(createRestRequest(RestMethod.GET, "/blob", "user1"), null);
+    Future<Void> second = securityService.processRequest(createRestRequest(RestMethod.GET, "/blob", "user1"), null);
+    assertEquals("There should be one validation in flight", 1, pendingSecurityService.pendingCallbacks.size());
+    pendingSecurityService.completeNext(null);
+    first.get(1, TimeUnit.SECONDS);
+    second.get(1, TimeUnit.SECONDS);
+    securityService.processRequest(createRestRequest(RestMethod.GET, "/blob", "user1"), null).get(1, TimeUnit.SECONDS);
+    assertEquals("Unexpected hit count", 1, frontendMetrics.securityServiceCacheHitCount.getCount());
+
+    // different credentials, URI or method are validated again.
+    securityService.processRequest(createRestRequest(RestMethod.GET, "/blob", "user2"), null);
+    securityService.processRequest(createRestRequest(RestMethod.GET, "/blob", null), null);
+    securityService.processRequest(createRestRequest(RestMethod.GET, "/other", "user1"), null);
+    securityService.processRequest(createRestRequest(RestMethod.HEAD, "/blob", "user1"), null);
+    assertEquals("Validations with different keys should not be served from the cache", 4,
+        pendingSecurityService.pendingCallbacks.size());
+
+    pendingSecurityService.completeNext(new RestServiceException("denied", RestServiceErrorCode.Unauthorized));
+    try {
+      securityService.processRequest(createRestRequest(RestMethod.GET, "/blob", "user2"), null)
+          .get(1, TimeUnit.SECONDS);
+      fail("Cached failure should have been returned");
+    } catch (ExecutionException e) {
+      assertEquals("Unexpected error code", RestServiceErrorCode.Unauthorized,
+          ((RestServiceException) e.getCause()).getErrorCode());
+    }
+    assertEquals("Unexpected negative hit count", 1, frontendMetrics.securityServiceCacheNegativeHitCount.getCount());
+  }
+
+  /**
+   * Tests that validations of requests from different SSL peers are not shared.
+   * @throws Exception
+   */
+  @Test
+  public void sslPeerTest() throws Exception {
+    Future<Void> first =
+        securityService.processRequest(createRestRequest(RestMethod.GET, "/blob", "user1", "CN=peer1"), null);
+    securityService.processRequest(createRestRequest(RestMethod.GET, "/blob", "user1", "CN=peer1"), null);
+    assertEquals("There should be one validation in flight", 1, pendingSecurityService.pendingCallbacks.size());
+    securityService.processRequest(createRestRequest(RestMethod.GET, "/blob", "user1", "CN=peer2"), null);
+    // an SSL session whose peer is not authenticated is keyed like a request without an SSL session.
+    securityService.processRequest(createRestRequest(RestMethod.GET, "/blob", "user1", null), null);
+    securityService.processRequest(createRestRequest(RestMethod.GET, "/blob", "user1"), null);
+    assertEquals("Validations for different peers should not be shared", 3,
+        pendingSecurityService.pendingCallbacks.size());
+    pendingSecurityService.completeNext(null);
+    first.get(1, TimeUnit.SECONDS);
+    securityService.processRequest(createRestRequest(RestMethod.GET, "/blob", "user1", "CN=peer1"), null)
+        .get(1, TimeUnit.SECONDS);
+    assertEquals("Unexpected hit count", 1, frontendMetrics.securityServiceCacheHitCount.getCount());
+  }
+
+  /**
+   * Tests that validations cannot be cached without key headers.
+   */
+  @Test
+  public void noKeyHeadersTest() {
+    try {
+      new CachingSecurityService(pendingSecurityService, Collections.<String>emptyList(), 10, 1000, 100,
+          frontendMetrics, new MockTime());
+      fail("Caching validations without key headers should have failed");
+    } catch (IllegalArgumentException e) {
+      // expected. Nothing to do.
+    }
+  }
+
+  /**
+   * Tests that response processing is never cached.
+   * @throws Exception
+   */
+  @Test
+  public void processResponseTest() throws Exception {
+    for (int i = 0; i < 2; i++) {
+      securityService.processResponse(createRestRequest(RestMethod.GET, "/blob", "user1"),
+          new MockRestResponseChannel(), null, null);
+    }
+    assertEquals("Every response should be processed", 2, pendingSecurityService.processResponseCount);
+  }
+
+  /**
+   * @param restMethod the {@link RestMethod} of the request.
+   * @param uri the URI of the request.
+   * @param credentials the value of the key header. Not set if {@code null}.
+   * @return a {@link RestRequest} with the given details.
+   * @throws Exception
+   */
+  private RestRequest createRestRequest(RestMethod restMethod, String uri, String credentials) throws Exception {
+    JSONObject request = new JSONObject();
+    request.put(MockRestRequest.REST_METHOD_KEY, restMethod);
+    request.put(MockRestRequest.URI_KEY, uri);
+    if (credentials != null) {
+      JSONObject headers = new JSONObject();
+      headers.put(KEY_HEADER, credentials);
+      request.put(MockRestRequest.HEADERS_KEY, headers);
+    }
+    return new MockRestRequest(request, null);
+  }
+
+  /**
+   * @param restMethod the {@link RestMethod} of the request.
+   * @param uri the URI of the request.
+   * @param credentials the value of the key header. Not set if {@code null}.
+   * @param peerName the name of the principal of the SSL peer of the request. The peer is not authenticated if
+   *                 {@code null}.
+   * @return a {@link RestRequest} over SSL with the given details.
+   * @throws Exception
+   */
+  private RestRequest createRestRequest(RestMethod restMethod, String uri, String credentials, final String peerName)
+      throws Exception {
+    final RestRequest restRequest = createRestRequest(restMethod, uri, credentials);
+    final SSLSession sslSession = (SSLSession) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[]{SSLSession.class}, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!method.getName().equals("getPeerPrincipal")) {
+              throw new UnsupportedOperationException(method.getName() + " is not supported");
+            } else if (peerName == null) {
+              throw new SSLPeerUnverifiedException("Peer is not authenticated");
+            }
+            return new Principal() {
+              @Override
+              public String getName() {
+                return peerName;
+              }
+            };
+          }
+        });
+    return (RestRequest) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{RestRequest.class},
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            return method.getName().equals("getSSLSession") ? sslSession : method.invoke(restRequest, args);
+          }
+        });
+  }
+
+  /**
+   * A {@link SecurityService} that completes request validations only when asked to.
+   */
+  private static class PendingSecurityService implements SecurityService {
+    final List<Callback<Void>> pendingCallbacks = new ArrayList<>();
+    int processResponseCount = 0;
+
+    @Override
+    public Future<Void> processRequest(RestRequest restRequest, Callback<Void> callback) {
+      pendingCallbacks.add(callback);
+      return new FutureResult<>();
+    }
+
+    @Override
+    public Future<Void> processResponse(RestRequest restRequest, RestResponseChannel responseChannel,
+        BlobInfo blobInfo, Callback<Void> callback) {
+      processResponseCount++;
+      return new FutureResult<>();
+    }
+
+    /**
+     * Completes the oldest pending validation.
+     * @param exception the exception to fail the validation with, if any.
+     */
+    void completeNext(Exception exception) {
+      pendingCallbacks.remove(0).onCompletion(null, exception);
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
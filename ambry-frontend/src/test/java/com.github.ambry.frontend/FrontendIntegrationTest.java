@@ -22,6 +22,7 @@ import com.github.ambry.config.FrontendConfig;
 import com.github.ambry.config.SSLConfig;
 import com.github.ambry.config.VerifiableProperties;
 import com.github.ambry.messageformat.BlobProperties;
+import com.github.ambry.rest.Http2Client;
 import com.github.ambry.rest.NettyClient;
 import com.github.ambry.rest.RestServer;
 import com.github.ambry.rest.RestServiceException;
@@ -37,6 +38,7 @@ import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.DefaultFullHttpRequest;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaders;
@@ -67,7 +69,9 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Queue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -108,6 +112,7 @@ public class FrontendIntegrationTest {
   private static NettyClient sslNettyClient = null;
 
   private final NettyClient nettyClient;
+  private final boolean useSSL;
 
   /**
    * Running it many times so that keep-alive bugs are caught.
@@ -159,6 +164,7 @@ public class FrontendIntegrationTest {
    */
   public FrontendIntegrationTest(boolean useSSL) {
     nettyClient = useSSL ? sslNettyClient : plaintextNettyClient;
+    this.useSSL = useSSL;
   }
 
   /**
@@ -201,9 +207,111 @@ public class FrontendIntegrationTest {
     assertEquals("GET content does not match original content", expectedResponseBody, new String(content.array()));
   }
 
+  /**
+   * Tests that blobs can be fetched concurrently over a single HTTP/2 connection (with prior knowledge on the plaintext
+   * port and through ALPN on the SSL port).
+   * @throws Exception
+   */
+  @Test
+  public void http2GetTest() throws Exception {
+    int[] contentSizes = {0, FRONTEND_CONFIG.frontendChunkedGetResponseThresholdInBytes - 1,
+        FRONTEND_CONFIG.frontendChunkedGetResponseThresholdInBytes * 3};
+    String[] blobIds = new String[contentSizes.length];
+    ByteBuffer[] contents = new ByteBuffer[contentSizes.length];
+    for (int i = 0; i < contentSizes.length; i++) {
+      contents[i] = ByteBuffer.wrap(TestUtils.getRandomBytes(contentSizes[i]));
+      HttpHeaders headers = new DefaultHttpHeaders();
+      setAmbryHeaders(headers, contentSizes[i], 7200, false, "http2GetServiceID", "application/octet-stream", null);
+      headers.set(HttpHeaderNames.CONTENT_LENGTH, contentSizes[i]);
+      blobIds[i] = postBlobAndVerify(headers, contents[i]);
+    }
+    Http2Client http2Client = createHttp2Client();
+    try {
+      List<Future<FullHttpResponse>> responseFutures = new ArrayList<>();
+      for (String blobId : blobIds) {
+        responseFutures.add(http2Client.sendRequest(buildRequest(HttpMethod.GET, blobId, null, null)));
+      }
+      Future<FullHttpResponse> healthCheckFuture =
+          http2Client.sendRequest(buildRequest(HttpMethod.GET, "/healthCheck", null, null));
+      for (int i = 0; i < blobIds.length; i++) {
+        FullHttpResponse response = responseFutures.get(i).get(10, TimeUnit.SECONDS);
+        try {
+          assertEquals("Unexpected response status", HttpResponseStatus.OK, response.status());
+          byte[] responseContent = new byte[response.content().readableBytes()];
+          response.content().readBytes(responseContent);
+          assertArrayEquals("GET content does not match original content", contents[i].array(), responseContent);
+        } finally {
+          response.release();
+        }
+      }
+      FullHttpResponse response = healthCheckFuture.get(10, TimeUnit.SECONDS);
+      try {
+        assertEquals("Unexpected response status", HttpResponseStatus.OK, response.status());
+        assertEquals("Unexpected health check response", "GOOD",
+            response.content().toString(Charset.defaultCharset()));
+      } finally {
+        response.release();
+      }
+    } finally {
+      http2Client.close();
+    }
+  }
+
+  /**
+   * Tests blob POST over HTTP/2. The request buffer watermark of the server is set so that the content of the POSTs
+   * applies back-pressure on the streams.
+   * @throws Exception
+   */
+  @Test
+  public void http2PostTest() throws Exception {
+    int[] contentSizes = {1, FRONTEND_CONFIG.frontendChunkedGetResponseThresholdInBytes * 3, 1024 * 1024};
+    HttpHeaders[] headers = new HttpHeaders[contentSizes.length];
+    ByteBuffer[] contents = new ByteBuffer[contentSizes.length];
+    String[] blobIds = new String[contentSizes.length];
+    Http2Client http2Client = createHttp2Client();
+    try {
+      List<Future<FullHttpResponse>> responseFutures = new ArrayList<>();
+      for (int i = 0; i < contentSizes.length; i++) {
+        contents[i] = ByteBuffer.wrap(TestUtils.getRandomBytes(contentSizes[i]));
+        headers[i] = new DefaultHttpHeaders();
+        setAmbryHeaders(headers[i], contentSizes[i], 7200, false, "http2PostServiceID", "application/octet-stream",
+            null);
+        headers[i].set(HttpHeaderNames.CONTENT_LENGTH, contentSizes[i]);
+        // the streams of the POSTs are in flight together.
+        responseFutures.add(http2Client.sendRequest(buildRequest(HttpMethod.POST, "/", headers[i], contents[i])));
+      }
+      for (int i = 0; i < contentSizes.length; i++) {
+        FullHttpResponse response = responseFutures.get(i).get(10, TimeUnit.SECONDS);
+        try {
+          assertEquals("Unexpected response status", HttpResponseStatus.CREATED, response.status());
+          blobIds[i] = response.headers().get(HttpHeaderNames.LOCATION, null);
+          assertNotNull("POST did not return a blob ID", blobIds[i]);
+        } finally {
+          response.release();
+        }
+      }
+    } finally {
+      http2Client.close();
+    }
+    for (int i = 0; i < contentSizes.length; i++) {
+      getBlobAndVerify(blobIds[i], null, headers[i], contents[i]);
+    }
+  }
+
   // helpers
   // general
 
+  /**
+   * @return a {@link Http2Client} connected to the SSL port of the server if {@link #useSSL} is {@code true}, or the
+   *         plaintext port otherwise.
+   * @throws Exception
+   */
+  private Http2Client createHttp2Client() throws Exception {
+    return useSSL ? new Http2Client("localhost", SSL_SERVER_PORT,
+        new SSLFactory(new SSLConfig(SSL_CLIENT_VERIFIABLE_PROPS))) : new Http2Client("localhost",
+        PLAINTEXT_SERVER_PORT, null);
+  }
+
   /**
    * Method to easily create a request.
    * @param httpMethod the {@link HttpMethod} desired.
@@ -298,6 +406,15 @@ public class FrontendIntegrationTest {
     properties.put("netty.server.enable.ssl", "true");
     // to test that backpressure does not impede correct operation.
     properties.put("netty.server.request.buffer.watermark", "1");
+    // to test that request processing works off the event loops.
+    properties.put("netty.server.processor.thread.count", "2");
+    properties.put("netty.server.http2.enabled", "true");
+    properties.put("rest.server.public.access.log.async.buffer.size", "1024");
+    properties.put("frontend.id.converter.cache.size", "100");
+    properties.put("frontend.security.service.cache.size", "100");
+    properties.put("frontend.security.service.cache.key.headers", RestUtils.Headers.SERVICE_ID);
+    // to test that tracing every request does not impede correct operation.
+    properties.put("netty.server.request.trace.sample.rate", "1");
     TestSSLUtils.addSSLProperties(properties, "", SSLFactory.Mode.SERVER, trustStoreFile, "frontend");
     return new VerifiableProperties(properties);
   }
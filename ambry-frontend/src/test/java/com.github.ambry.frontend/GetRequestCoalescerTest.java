@@ -0,0 +1,302 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.frontend;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.commons.ByteBufferAsyncWritableChannel;
+import com.github.ambry.commons.ByteBufferReadableStreamChannel;
+import com.github.ambry.messageformat.BlobInfo;
+import com.github.ambry.messageformat.BlobProperties;
+import com.github.ambry.router.ByteRange;
+import com.github.ambry.router.Callback;
+import com.github.ambry.router.FutureResult;
+import com.github.ambry.router.GetBlobOptions;
+import com.github.ambry.router.GetBlobOptionsBuilder;
+import com.github.ambry.router.GetBlobResult;
+import com.github.ambry.router.ReadableStreamChannel;
+import com.github.ambry.router.Router;
+import com.github.ambry.router.RouterErrorCode;
+import com.github.ambry.router.RouterException;
+import com.github.ambry.utils.TestUtils;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for {@link GetRequestCoalescer}.
+ */
+public class GetRequestCoalescerTest {
+  private static final int BLOB_SIZE = 1024;
+  private static final GetBlobOptions ALL_OPTIONS = new GetBlobOptionsBuilder().build();
+
+  private final FrontendMetrics frontendMetrics = new FrontendMetrics(new MetricRegistry());
+  private final PendingGetRouter router = new PendingGetRouter();
+  private final GetRequestCoalescer coalescer = new GetRequestCoalescer(router, frontendMetrics);
+
+  /**
+   * Tests that concurrent requests for the same blob share one router operation and all get the whole blob.
+   * @throws Exception
+   */
+  @Test
+  public void coalesceTest() throws Exception {
+    List<FutureResult<GetBlobResult>> results = getBlob("blob", ALL_OPTIONS, 3);
+    assertEquals("There should be one router operation", 1, router.pendingGets.size());
+    assertEquals("Unexpected coalesced request count", 2, frontendMetrics.getCoalescedRequestCount.getCount());
+
+    byte[] content = TestUtils.getRandomBytes(BLOB_SIZE);
+    ByteBufferReadableStreamChannel source = new ByteBufferReadableStreamChannel(ByteBuffer.wrap(content));
+    router.completeNext(new GetBlobResult(getBlobInfo(), source), null);
+    List<ReadableStreamChannel> channels = new ArrayList<>();
+    for (FutureResult<GetBlobResult> result : results) {
+      GetBlobResult getBlobResult = result.get(1, TimeUnit.SECONDS);
+      assertEquals("Unexpected blob size", BLOB_SIZE, getBlobResult.getBlobInfo().getBlobProperties().getBlobSize());
+      channels.add(getBlobResult.getBlobDataChannel());
+    }
+    readAndVerify(channels, content);
+    for (ReadableStreamChannel channel : channels) {
+      assertTrue("Router channel should not be closed before all the channels are closed", source.isOpen());
+      channel.close();
+    }
+    assertFalse("Router channel should have been closed", source.isOpen());
+
+    // requests after the operation completes start a new one.
+    getBlob("blob", ALL_OPTIONS, 1);
+    assertEquals("There should be a new router operation", 1, router.pendingGets.size());
+  }
+
+  /**
+   * Tests that requests for different blobs, or with different options, are not coalesced.
+   * @throws Exception
+   */
+  @Test
+  public void differentRequestsTest() throws Exception {
+    getBlob("blob1", ALL_OPTIONS, 1);
+    getBlob("blob2", ALL_OPTIONS, 1);
+    getBlob("blob1", new GetBlobOptionsBuilder().operationType(GetBlobOptions.OperationType.BlobInfo).build(), 1);
+    getBlob("blob1", new GetBlobOptionsBuilder().range(ByteRange.fromStartOffset(10)).build(), 1);
+    assertEquals("Every request should have its own router operation", 4, router.pendingGets.size());
+    assertEquals("No request should have been coalesced", 0, frontendMetrics.getCoalescedRequestCount.getCount());
+  }
+
+  /**
+   * Tests that all the coalesced requests get the exception if the router operation fails, and the result if there is
+   * no data.
+   * @throws Exception
+   */
+  @Test
+  public void failureAndBlobInfoTest() throws Exception {
+    List<FutureResult<GetBlobResult>> results = getBlob("blob", ALL_OPTIONS, 3);
+    RouterException exception = new RouterException("Blob deleted", RouterErrorCode.BlobDeleted);
+    router.completeNext(null, exception);
+    for (FutureResult<GetBlobResult> result : results) {
+      assertTrue("Request should be done", result.isDone());
+      assertEquals("Unexpected exception", exception, result.error());
+    }
+
+    GetBlobOptions blobInfoOptions =
+        new GetBlobOptionsBuilder().operationType(GetBlobOptions.OperationType.BlobInfo).build();
+    results = getBlob("blob", blobInfoOptions, 2);
+    BlobInfo blobInfo = getBlobInfo();
+    router.completeNext(new GetBlobResult(blobInfo, null), null);
+    for (FutureResult<GetBlobResult> result : results) {
+      assertEquals("Unexpected blob info", blobInfo, result.get(1, TimeUnit.SECONDS).getBlobInfo());
+      assertNull("There should be no data", result.get(1, TimeUnit.SECONDS).getBlobDataChannel());
+    }
+  }
+
+  /**
+   * Tests that requests whose channels are closed without being read do not hold up the others.
+   * @throws Exception
+   */
+  @Test
+  public void closeWithoutReadTest() throws Exception {
+    List<FutureResult<GetBlobResult>> results = getBlob("blob", ALL_OPTIONS, 3);
+    byte[] content = TestUtils.getRandomBytes(BLOB_SIZE);
+    ByteBufferReadableStreamChannel source = new ByteBufferReadableStreamChannel(ByteBuffer.wrap(content));
+    router.completeNext(new GetBlobResult(getBlobInfo(), source), null);
+    ReadableStreamChannel closedChannel = results.get(0).get(1, TimeUnit.SECONDS).getBlobDataChannel();
+    closedChannel.close();
+    List<ReadableStreamChannel> channels = new ArrayList<>();
+    for (FutureResult<GetBlobResult> result : results.subList(1, results.size())) {
+      channels.add(result.get(1, TimeUnit.SECONDS).getBlobDataChannel());
+    }
+    readAndVerify(channels, content);
+    try {
+      closedChannel.readInto(new ByteBufferAsyncWritableChannel(), null).get(1, TimeUnit.SECONDS);
+      fail("Read of a closed channel should have failed");
+    } catch (Exception e) {
+      // expected.
+    }
+    for (ReadableStreamChannel channel : channels) {
+      channel.close();
+    }
+    assertFalse("Router channel should have been closed", source.isOpen());
+  }
+
+  /**
+   * Tests that an exception thrown when the router operation is started reaches the caller, and does not prevent
+   * later requests.
+   */
+  @Test
+  public void routerExceptionTest() {
+    router.exceptionToThrow = new IllegalStateException("Router closed");
+    try {
+      getBlob("blob", ALL_OPTIONS, 1);
+      fail("Router exception should have been thrown");
+    } catch (IllegalStateException e) {
+      assertEquals("Unexpected exception", router.exceptionToThrow, e);
+    }
+    router.exceptionToThrow = null;
+    getBlob("blob", ALL_OPTIONS, 1);
+    assertEquals("There should be a router operation", 1, router.pendingGets.size());
+  }
+
+  // helpers
+
+  /**
+   * Gets a blob through the coalescer a number of times.
+   * @param blobId the ID of the blob.
+   * @param options the {@link GetBlobOptions} to use.
+   * @param count the number of requests.
+   * @return the results of the requests.
+   */
+  private List<FutureResult<GetBlobResult>> getBlob(String blobId, GetBlobOptions options, int count) {
+    List<FutureResult<GetBlobResult>> results = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      final FutureResult<GetBlobResult> result = new FutureResult<>();
+      coalescer.getBlob(blobId, options, new Callback<GetBlobResult>() {
+        @Override
+        public void onCompletion(GetBlobResult getBlobResult, Exception exception) {
+          result.done(getBlobResult, exception);
+        }
+      });
+      results.add(result);
+    }
+    return results;
+  }
+
+  /**
+   * Reads all the channels, starting the reads one after another before any data is consumed, and verifies their
+   * content.
+   * @param channels the channels to read.
+   * @param content the expected content.
+   * @throws Exception
+   */
+  private void readAndVerify(List<ReadableStreamChannel> channels, byte[] content) throws Exception {
+    List<ByteBufferAsyncWritableChannel> writableChannels = new ArrayList<>();
+    List<Future<Long>> readFutures = new ArrayList<>();
+    for (ReadableStreamChannel channel : channels) {
+      assertEquals("Unexpected size", BLOB_SIZE, channel.getSize());
+      ByteBufferAsyncWritableChannel writableChannel = new ByteBufferAsyncWritableChannel();
+      readFutures.add(channel.readInto(writableChannel, null));
+      writableChannels.add(writableChannel);
+    }
+    for (int i = 0; i < channels.size(); i++) {
+      ByteBuffer actualContent = ByteBuffer.allocate(BLOB_SIZE);
+      while (actualContent.hasRemaining()) {
+        ByteBuffer chunk = writableChannels.get(i).getNextChunk(1000);
+        assertNotNull("Did not receive all the content", chunk);
+        actualContent.put(chunk);
+        writableChannels.get(i).resolveOldestChunk(null);
+      }
+      assertArrayEquals("Unexpected content", content, actualContent.array());
+      if (i < channels.size() - 1) {
+        assertFalse("Reads should complete only when all the channels have consumed the data",
+            readFutures.get(i).isDone());
+      }
+    }
+    for (Future<Long> readFuture : readFutures) {
+      assertEquals("Unexpected bytes read", BLOB_SIZE, readFuture.get(1, TimeUnit.SECONDS).longValue());
+    }
+  }
+
+  /**
+   * @return a {@link BlobInfo} for a blob of size {@link #BLOB_SIZE}.
+   */
+  private BlobInfo getBlobInfo() {
+    return new BlobInfo(new BlobProperties(BLOB_SIZE, "serviceId"), new byte[0]);
+  }
+
+  /**
+   * A {@link Router} that holds on to GET requests until they are completed by the test.
+   */
+  private static class PendingGetRouter implements Router {
+    final List<Callback<GetBlobResult>> pendingGets = new ArrayList<>();
+    RuntimeException exceptionToThrow = null;
+
+    /**
+     * Completes the oldest pending GET.
+     * @param result the result of the GET.
+     * @param exception the exception of the GET.
+     */
+    void completeNext(GetBlobResult result, Exception exception) {
+      pendingGets.remove(0).onCompletion(result, exception);
+    }
+
+    @Override
+    public Future<GetBlobResult> getBlob(String blobId, GetBlobOptions options) {
+      return getBlob(blobId, options, null);
+    }
+
+    @Override
+    public Future<GetBlobResult> getBlob(String blobId, GetBlobOptions options, Callback<GetBlobResult> callback) {
+      if (exceptionToThrow != null) {
+        throw exceptionToThrow;
+      }
+      pendingGets.add(callback);
+      return new FutureResult<>();
+    }
+
+    @Override
+    public List<Future<GetBlobResult>> getBlobs(List<String> blobIds, GetBlobOptions options) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Future<String> putBlob(BlobProperties blobProperties, byte[] usermetadata, ReadableStreamChannel channel) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Future<String> putBlob(BlobProperties blobProperties, byte[] usermetadata, ReadableStreamChannel channel,
+        Callback<String> callback) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Future<Void> deleteBlob(String blobId) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Future<Void> deleteBlob(String blobId, Callback<Void> callback) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<Future<Void>> deleteBlobs(List<String> blobIds) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
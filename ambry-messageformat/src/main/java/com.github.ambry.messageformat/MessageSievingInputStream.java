@@ -16,12 +16,10 @@ package com.github.ambry.messageformat;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import com.github.ambry.store.MessageInfo;
-import com.github.ambry.store.StoreKey;
 import com.github.ambry.store.StoreKeyFactory;
 import com.github.ambry.utils.SystemTime;
 import com.github.ambry.utils.Utils;
 import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -64,6 +62,7 @@ public class MessageSievingInputStream extends InputStream {
     validSize = 0;
     hasInvalidMessages = false;
     validMessageInfoList = new ArrayList<MessageInfo>();
+    MessageValidator messageValidator = new MessageValidator(storeKeyFactory, messageFormatValidationTime);
 
     // check for empty list
     if (messageInfoList.size() == 0) {
@@ -86,7 +85,7 @@ public class MessageSievingInputStream extends InputStream {
       Utils.readBytesFromStream(stream, data, offset, msgSize);
       logger.trace("Read stream for message info " + msgInfo + "  into memory");
       ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(data, offset, msgSize);
-      if (checkForMessageValidity(byteArrayInputStream, offset, msgSize, storeKeyFactory, msgInfo)) {
+      if (messageValidator.checkForMessageValidity(byteArrayInputStream, offset, msgSize, msgInfo)) {
         offset += msgSize;
         validMessageInfoList.add(msgInfo);
       } else {
@@ -153,80 +152,4 @@ public class MessageSievingInputStream extends InputStream {
   public List<MessageInfo> getValidMessageInfoList() {
     return validMessageInfoList;
   }
-
-  /**
-   * Ensures blob validity in the given input stream. For now, blobs are checked for message corruption
-   * @param byteArrayInputStream stream against which validation has to be done
-   * @param size total size of the message expected
-   * @param currentOffset Current offset at which the data has to be read from the given byte array
-   * @param storeKeyFactory StoreKeyFactory used to get store key
-   * @return true if message is valid and false otherwise
-   * @throws IOException
-   */
-  private boolean checkForMessageValidity(ByteArrayInputStream byteArrayInputStream, int currentOffset, long size,
-      StoreKeyFactory storeKeyFactory, MessageInfo msgInfo) throws IOException {
-    boolean isValid = false;
-    BlobProperties props = null;
-    ByteBuffer metadata = null;
-    BlobData blobData = null;
-    long startTime = SystemTime.getInstance().milliseconds();
-    try {
-      int availableBeforeParsing = byteArrayInputStream.available();
-      byte[] headerVersionInBytes = new byte[MessageFormatRecord.Version_Field_Size_In_Bytes];
-      byteArrayInputStream.read(headerVersionInBytes, 0, MessageFormatRecord.Version_Field_Size_In_Bytes);
-      ByteBuffer headerVersion = ByteBuffer.wrap(headerVersionInBytes);
-      short version = headerVersion.getShort();
-      if (version == 1) {
-        ByteBuffer headerBuffer = ByteBuffer.allocate(MessageFormatRecord.MessageHeader_Format_V1.getHeaderSize());
-        headerBuffer.putShort(version);
-        byteArrayInputStream.read(headerBuffer.array(), 2, headerBuffer.capacity() - 2);
-        headerBuffer.position(headerBuffer.capacity());
-        headerBuffer.flip();
-        MessageFormatRecord.MessageHeader_Format_V1 header =
-            new MessageFormatRecord.MessageHeader_Format_V1(headerBuffer);
-        StoreKey storeKey = storeKeyFactory.getStoreKey(new DataInputStream(byteArrayInputStream));
-
-        if (header.getBlobPropertiesRecordRelativeOffset()
-            != MessageFormatRecord.Message_Header_Invalid_Relative_Offset) {
-          props = MessageFormatRecord.deserializeBlobProperties(byteArrayInputStream);
-          metadata = MessageFormatRecord.deserializeUserMetadata(byteArrayInputStream);
-          blobData = MessageFormatRecord.deserializeBlob(byteArrayInputStream);
-        } else {
-          throw new IllegalStateException("Message cannot be a deleted record ");
-        }
-        if (byteArrayInputStream.available() != 0) {
-          logger.error("Parsed message size " + (availableBeforeParsing + byteArrayInputStream.available())
-              + " is not equivalent to the size in message info " + availableBeforeParsing);
-        } else {
-          if (logger.isTraceEnabled()) {
-            logger.trace("Message Successfully read");
-            logger.trace(
-                "Header - version {} Message Size {} Starting offset of the blob {} BlobPropertiesRelativeOffset {}"
-                    + " UserMetadataRelativeOffset {} DataRelativeOffset {} DeleteRecordRelativeOffset {} Crc {}",
-                header.getVersion(), header.getMessageSize(), currentOffset,
-                header.getBlobPropertiesRecordRelativeOffset(), header.getUserMetadataRecordRelativeOffset(),
-                header.getBlobRecordRelativeOffset(), header.getDeleteRecordRelativeOffset(), header.getCrc());
-            logger.trace("Id {} Blob Properties - blobSize {} Metadata - size {} Blob - size {} ", storeKey.getID(),
-                props.getBlobSize(), metadata.capacity(), blobData.getSize());
-          }
-          if (msgInfo.getStoreKey().equals(storeKey)) {
-            isValid = true;
-          } else {
-            logger.error(
-                "StoreKey in log " + storeKey + " failed to match store key from Index " + msgInfo.getStoreKey());
-          }
-        }
-      } else {
-        throw new MessageFormatException("Header version not supported " + version,
-            MessageFormatErrorCodes.Data_Corrupt);
-      }
-    } catch (MessageFormatException e) {
-      logger.error(
-          "MessageFormat exception thrown for a blob starting at offset " + currentOffset + " with exception: ", e);
-    } finally {
-      messageFormatValidationTime.update(SystemTime.getInstance().milliseconds() - startTime);
-    }
-    return isValid;
-  }
 }
-
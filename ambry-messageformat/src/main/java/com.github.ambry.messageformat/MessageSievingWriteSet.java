@@ -0,0 +1,171 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.messageformat;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.store.MessageInfo;
+import com.github.ambry.store.MessageWriteSet;
+import com.github.ambry.store.StoreKeyFactory;
+import com.github.ambry.store.Write;
+import com.github.ambry.utils.SystemTime;
+import com.github.ambry.utils.Utils;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A message write set that validates the messages in a stream one at a time as they are written, and skips the
+ * invalid ones. Unlike {@link MessageSievingInputStream}, which reads the whole stream into memory before it can be
+ * written, only a single message is held in memory at any time, in a buffer that is allocated once with the size of
+ * the largest message and reused for all of them.
+ * <p/>
+ * Before {@link #writeTo(Write)} is called, {@link #getMessageSetInfo()} returns all the messages in the stream. Once
+ * the messages are written, it returns only the valid ones, which are the ones that were actually written. If the
+ * write set is not written (or the write fails), {@link #skipRemainingMessages()} has to be called so that the stream
+ * is positioned after the messages of this write set.
+ */
+public class MessageSievingWriteSet implements MessageWriteSet {
+  private final InputStream stream;
+  private final List<MessageInfo> messageInfoList;
+  private final List<MessageInfo> validMessageInfoList = new ArrayList<>();
+  private final MessageValidator messageValidator;
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  // the index of the next message to read from the stream.
+  private int nextMessageIndex = 0;
+  private boolean hasInvalidMessages = false;
+  private boolean written = false;
+  private byte[] messageBuffer = null;
+
+  //metrics
+  public final Histogram messageFormatValidationTime;
+  public final Histogram messageFormatBatchValidationTime;
+
+  /**
+   * @param stream The stream from which the messages need to be read. If the underlying stream is SocketInputStream,
+   *               it needs to be blocking
+   * @param messageInfoList List of MessageInfo which contains details about the messages in the stream
+   * @param storeKeyFactory factory which is used to read the key from the stream
+   * @param metricRegistry Metric register to register metrics
+   */
+  public MessageSievingWriteSet(InputStream stream, List<MessageInfo> messageInfoList, StoreKeyFactory storeKeyFactory,
+      MetricRegistry metricRegistry) {
+    this.stream = stream;
+    this.messageInfoList = messageInfoList;
+    messageFormatValidationTime =
+        metricRegistry.histogram(MetricRegistry.name(MessageSievingWriteSet.class, "MessageFormatValidationTime"));
+    messageFormatBatchValidationTime =
+        metricRegistry.histogram(MetricRegistry.name(MessageSievingWriteSet.class, "MessageFormatBatchValidationTime"));
+    messageValidator = new MessageValidator(storeKeyFactory, messageFormatValidationTime);
+  }
+
+  /**
+   * Validates the messages in the stream one at a time and writes the valid ones to the given write interface.
+   * @param writeChannel The write interface to write the messages to
+   * @return The size in bytes that was written to the write interface
+   * @throws IOException if the stream could not be read or the messages could not be written.
+   */
+  @Override
+  public long writeTo(Write writeChannel) throws IOException {
+    written = true;
+    return sieve(writeChannel);
+  }
+
+  /**
+   * Reads (and validates) the messages of this write set that have not been read from the stream yet, without writing
+   * them. This positions the stream after the messages of this write set.
+   * @throws IOException if the stream could not be read.
+   */
+  public void skipRemainingMessages() throws IOException {
+    sieve(null);
+  }
+
+  /**
+   * @return the messages in the stream before this write set is written, and only the valid ones after.
+   */
+  @Override
+  public List<MessageInfo> getMessageSetInfo() {
+    return written ? validMessageInfoList : messageInfoList;
+  }
+
+  /**
+   * Whether the stream has invalid messages or not. This is known only once all the messages have been read.
+   * @return true if any of the messages read so far were invalid.
+   */
+  public boolean hasInvalidMessages() {
+    return hasInvalidMessages;
+  }
+
+  /**
+   * @return the valid messages among those read from the stream so far.
+   */
+  public List<MessageInfo> getValidMessageInfoList() {
+    return validMessageInfoList;
+  }
+
+  /**
+   * Reads the messages not read so far from the stream, one at a time, and writes the valid ones to the given write
+   * interface.
+   * @param writeChannel the write interface to write the valid messages to. If {@code null}, the messages are only
+   *                     validated.
+   * @return the number of bytes written.
+   * @throws IOException if the stream could not be read or the messages could not be written.
+   */
+  private long sieve(Write writeChannel) throws IOException {
+    long bytesWritten = 0;
+    long startTime = SystemTime.getInstance().milliseconds();
+    if (messageBuffer == null && nextMessageIndex < messageInfoList.size()) {
+      long maxMessageSize = 0;
+      for (MessageInfo msgInfo : messageInfoList) {
+        maxMessageSize = Math.max(maxMessageSize, msgInfo.getSize());
+      }
+      messageBuffer = new byte[(int) maxMessageSize];
+    }
+    while (nextMessageIndex < messageInfoList.size()) {
+      MessageInfo msgInfo = messageInfoList.get(nextMessageIndex);
+      int msgSize = (int) msgInfo.getSize();
+      // the message is consumed from the stream irrespective of whether it turns out to be valid or not.
+      nextMessageIndex++;
+      Utils.readBytesFromStream(stream, messageBuffer, 0, msgSize);
+      boolean isValid;
+      try {
+        isValid = messageValidator.checkForMessageValidity(new ByteArrayInputStream(messageBuffer, 0, msgSize), 0,
+            msgSize, msgInfo);
+      } catch (IllegalStateException e) {
+        // a delete record cannot be replicated as a put. Messages before it may have already been written, so skip it
+        // rather than failing the whole write set.
+        logger.error("Message with messageInfo " + msgInfo + " is not a put record", e);
+        isValid = false;
+      }
+      if (isValid) {
+        validMessageInfoList.add(msgInfo);
+        if (writeChannel != null) {
+          // every message is appended on its own so that it is not split across log segments.
+          bytesWritten += writeChannel.appendFrom(ByteBuffer.wrap(messageBuffer, 0, msgSize));
+        }
+      } else {
+        logger.error("Error reading the message with messageInfo " + msgInfo + " and hence skipping the message");
+        hasInvalidMessages = true;
+      }
+    }
+    messageFormatBatchValidationTime.update(SystemTime.getInstance().milliseconds() - startTime);
+    return bytesWritten;
+  }
+}
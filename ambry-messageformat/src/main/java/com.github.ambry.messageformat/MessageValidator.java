@@ -0,0 +1,121 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.messageformat;
+
+import com.codahale.metrics.Histogram;
+import com.github.ambry.store.MessageInfo;
+import com.github.ambry.store.StoreKey;
+import com.github.ambry.store.StoreKeyFactory;
+import com.github.ambry.utils.SystemTime;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Validates messages in the message format, one message at a time.
+ */
+class MessageValidator {
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private final StoreKeyFactory storeKeyFactory;
+  private final Histogram messageFormatValidationTime;
+
+  /**
+   * @param storeKeyFactory factory which is used to read the key from the messages
+   * @param messageFormatValidationTime the histogram to update with the time taken to validate every message
+   */
+  MessageValidator(StoreKeyFactory storeKeyFactory, Histogram messageFormatValidationTime) {
+    this.storeKeyFactory = storeKeyFactory;
+    this.messageFormatValidationTime = messageFormatValidationTime;
+  }
+
+  /**
+   * Ensures blob validity in the given input stream. For now, blobs are checked for message corruption. A stream that
+   * contains a delete record instead of a put record results in an {@link IllegalStateException}
+   * @param byteArrayInputStream stream against which validation has to be done
+   * @param size total size of the message expected
+   * @param currentOffset Current offset at which the data has to be read from the given byte array
+   * @param msgInfo the {@link MessageInfo} of the message, against which the message is checked
+   * @return true if message is valid and false otherwise
+   * @throws IOException
+   */
+  boolean checkForMessageValidity(ByteArrayInputStream byteArrayInputStream, int currentOffset, long size,
+      MessageInfo msgInfo) throws IOException {
+    boolean isValid = false;
+    BlobProperties props = null;
+    ByteBuffer metadata = null;
+    BlobData blobData = null;
+    long startTime = SystemTime.getInstance().milliseconds();
+    try {
+      int availableBeforeParsing = byteArrayInputStream.available();
+      byte[] headerVersionInBytes = new byte[MessageFormatRecord.Version_Field_Size_In_Bytes];
+      byteArrayInputStream.read(headerVersionInBytes, 0, MessageFormatRecord.Version_Field_Size_In_Bytes);
+      ByteBuffer headerVersion = ByteBuffer.wrap(headerVersionInBytes);
+      short version = headerVersion.getShort();
+      if (version == 1) {
+        ByteBuffer headerBuffer = ByteBuffer.allocate(MessageFormatRecord.MessageHeader_Format_V1.getHeaderSize());
+        headerBuffer.putShort(version);
+        byteArrayInputStream.read(headerBuffer.array(), 2, headerBuffer.capacity() - 2);
+        headerBuffer.position(headerBuffer.capacity());
+        headerBuffer.flip();
+        MessageFormatRecord.MessageHeader_Format_V1 header =
+            new MessageFormatRecord.MessageHeader_Format_V1(headerBuffer);
+        StoreKey storeKey = storeKeyFactory.getStoreKey(new DataInputStream(byteArrayInputStream));
+
+        if (header.getBlobPropertiesRecordRelativeOffset()
+            != MessageFormatRecord.Message_Header_Invalid_Relative_Offset) {
+          props = MessageFormatRecord.deserializeBlobProperties(byteArrayInputStream);
+          metadata = MessageFormatRecord.deserializeUserMetadata(byteArrayInputStream);
+          blobData = MessageFormatRecord.deserializeBlob(byteArrayInputStream);
+        } else {
+          throw new IllegalStateException("Message cannot be a deleted record ");
+        }
+        if (byteArrayInputStream.available() != 0) {
+          logger.error("Parsed message size " + (availableBeforeParsing + byteArrayInputStream.available())
+              + " is not equivalent to the size in message info " + availableBeforeParsing);
+        } else {
+          if (logger.isTraceEnabled()) {
+            logger.trace("Message Successfully read");
+            logger.trace(
+                "Header - version {} Message Size {} Starting offset of the blob {} BlobPropertiesRelativeOffset {}"
+                    + " UserMetadataRelativeOffset {} DataRelativeOffset {} DeleteRecordRelativeOffset {} Crc {}",
+                header.getVersion(), header.getMessageSize(), currentOffset,
+                header.getBlobPropertiesRecordRelativeOffset(), header.getUserMetadataRecordRelativeOffset(),
+                header.getBlobRecordRelativeOffset(), header.getDeleteRecordRelativeOffset(), header.getCrc());
+            logger.trace("Id {} Blob Properties - blobSize {} Metadata - size {} Blob - size {} ", storeKey.getID(),
+                props.getBlobSize(), metadata.capacity(), blobData.getSize());
+          }
+          if (msgInfo.getStoreKey().equals(storeKey)) {
+            isValid = true;
+          } else {
+            logger.error(
+                "StoreKey in log " + storeKey + " failed to match store key from Index " + msgInfo.getStoreKey());
+          }
+        }
+      } else {
+        throw new MessageFormatException("Header version not supported " + version,
+            MessageFormatErrorCodes.Data_Corrupt);
+      }
+    } catch (MessageFormatException e) {
+      logger.error(
+          "MessageFormat exception thrown for a blob starting at offset " + currentOffset + " with exception: ", e);
+    } finally {
+      messageFormatValidationTime.update(SystemTime.getInstance().milliseconds() - startTime);
+    }
+    return isValid;
+  }
+}
@@ -0,0 +1,264 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.messageformat;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.store.MessageInfo;
+import com.github.ambry.store.StoreKey;
+import com.github.ambry.store.Write;
+import com.github.ambry.utils.ByteBufferInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class MessageSievingWriteSetTest {
+  private static final int MESSAGE_COUNT = 3;
+  private static final int TRAILING_BYTES_SIZE = 100;
+
+  private final Random random = new Random();
+  private final List<MessageInfo> messageInfoList = new ArrayList<>();
+  private final List<byte[]> messages = new ArrayList<>();
+  private final byte[] trailingBytes = new byte[TRAILING_BYTES_SIZE];
+
+  public MessageSievingWriteSetTest() throws IOException, MessageFormatException {
+    for (int i = 0; i < MESSAGE_COUNT; i++) {
+      StoreKey key = new MockId("id" + i);
+      byte[] usermetadata = new byte[1000];
+      random.nextBytes(usermetadata);
+      byte[] data = new byte[2000];
+      random.nextBytes(data);
+      MessageFormatInputStream messageFormatStream =
+          new PutMessageFormatInputStream(key, new BlobProperties(data.length, "servid" + i),
+              ByteBuffer.wrap(usermetadata), new ByteBufferInputStream(ByteBuffer.wrap(data)), data.length,
+              BlobType.DataBlob);
+      byte[] message = new byte[(int) messageFormatStream.getSize()];
+      messageFormatStream.read(message, 0, message.length);
+      messages.add(message);
+      messageInfoList.add(new MessageInfo(key, message.length, false, -1));
+    }
+    random.nextBytes(trailingBytes);
+  }
+
+  /**
+   * Tests that all the messages are written when none of them are corrupt.
+   * @throws IOException
+   */
+  @Test
+  public void validMessagesTest() throws IOException {
+    InputStream stream = getStream();
+    MessageSievingWriteSet writeSet =
+        new MessageSievingWriteSet(stream, messageInfoList, new MockIdFactory(), new MetricRegistry());
+    Assert.assertEquals("Message set info before write is not as expected", messageInfoList,
+        writeSet.getMessageSetInfo());
+    MockWrite write = new MockWrite();
+    long written = writeSet.writeTo(write);
+    Assert.assertFalse("There should be no invalid messages", writeSet.hasInvalidMessages());
+    Assert.assertEquals("Message set info after write is not as expected", messageInfoList,
+        writeSet.getMessageSetInfo());
+    verifyWritten(write, written, messages);
+    verifyTrailingBytes(stream);
+  }
+
+  /**
+   * Tests that corrupt messages are skipped and the valid ones are written.
+   * @throws IOException
+   */
+  @Test
+  public void invalidMessagesTest() throws IOException {
+    // corrupt a byte in the blob record of the second message.
+    byte[] corrupted = messages.get(1);
+    corrupted[corrupted.length - 10] = (byte) ~corrupted[corrupted.length - 10];
+    InputStream stream = getStream();
+    MessageSievingWriteSet writeSet =
+        new MessageSievingWriteSet(stream, messageInfoList, new MockIdFactory(), new MetricRegistry());
+    MockWrite write = new MockWrite();
+    long written = writeSet.writeTo(write);
+    Assert.assertTrue("There should be invalid messages", writeSet.hasInvalidMessages());
+    List<MessageInfo> expectedInfos = Arrays.asList(messageInfoList.get(0), messageInfoList.get(2));
+    Assert.assertEquals("Valid message infos are not as expected", expectedInfos, writeSet.getValidMessageInfoList());
+    Assert.assertEquals("Message set info after write is not as expected", expectedInfos,
+        writeSet.getMessageSetInfo());
+    verifyWritten(write, written, Arrays.asList(messages.get(0), messages.get(2)));
+    verifyTrailingBytes(stream);
+  }
+
+  /**
+   * Tests that every valid message is appended before the next one is read off the stream, and that all the messages
+   * are read into the same buffer, so that only one message is held in memory at a time.
+   * @throws IOException
+   */
+  @Test
+  public void oneMessageAtATimeTest() throws IOException {
+    // corrupt a byte in the blob record of the first message.
+    byte[] corrupted = messages.get(0);
+    corrupted[corrupted.length - 10] = (byte) ~corrupted[corrupted.length - 10];
+    final CountingInputStream stream = new CountingInputStream(getStream());
+    MessageSievingWriteSet writeSet =
+        new MessageSievingWriteSet(stream, messageInfoList, new MockIdFactory(), new MetricRegistry());
+    final List<Long> bytesReadAtAppends = new ArrayList<>();
+    final Set<byte[]> appendedArrays = Collections.newSetFromMap(new IdentityHashMap<byte[], Boolean>());
+    MockWrite write = new MockWrite() {
+      @Override
+      public int appendFrom(ByteBuffer buffer) throws IOException {
+        bytesReadAtAppends.add(stream.getBytesRead());
+        appendedArrays.add(buffer.array());
+        return super.appendFrom(buffer);
+      }
+    };
+    long written = writeSet.writeTo(write);
+    verifyWritten(write, written, Arrays.asList(messages.get(1), messages.get(2)));
+    Assert.assertEquals("Every valid message should have been appended on its own", 2, bytesReadAtAppends.size());
+    long messagesSize = 0;
+    for (int i = 0; i < 2; i++) {
+      messagesSize += messages.get(i).length;
+    }
+    Assert.assertEquals("Second message should have been appended before the third was read", messagesSize,
+        (long) bytesReadAtAppends.get(0));
+    Assert.assertEquals("Messages should have been read into the same buffer", 1, appendedArrays.size());
+    verifyTrailingBytes(stream);
+  }
+
+  /**
+   * Tests that {@link MessageSievingWriteSet#skipRemainingMessages()} reads the messages off the stream without
+   * writing them, and that it is a no-op after a write.
+   * @throws IOException
+   */
+  @Test
+  public void skipRemainingMessagesTest() throws IOException {
+    InputStream stream = getStream();
+    MessageSievingWriteSet writeSet =
+        new MessageSievingWriteSet(stream, messageInfoList, new MockIdFactory(), new MetricRegistry());
+    writeSet.skipRemainingMessages();
+    Assert.assertEquals("All messages should have been validated", messageInfoList,
+        writeSet.getValidMessageInfoList());
+    verifyTrailingBytes(stream);
+
+    stream = getStream();
+    writeSet = new MessageSievingWriteSet(stream, messageInfoList, new MockIdFactory(), new MetricRegistry());
+    MockWrite write = new MockWrite();
+    long written = writeSet.writeTo(write);
+    writeSet.skipRemainingMessages();
+    verifyWritten(write, written, messages);
+    verifyTrailingBytes(stream);
+  }
+
+  /**
+   * @return a stream with all the messages followed by some trailing bytes that do not belong to the write set.
+   */
+  private InputStream getStream() {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    for (byte[] message : messages) {
+      outputStream.write(message, 0, message.length);
+    }
+    outputStream.write(trailingBytes, 0, trailingBytes.length);
+    return new ByteBufferInputStream(ByteBuffer.wrap(outputStream.toByteArray()));
+  }
+
+  /**
+   * Verifies that exactly the given messages were written.
+   * @param write the {@link MockWrite} that the messages were written to.
+   * @param written the number of bytes reported as written.
+   * @param expectedMessages the messages that are expected to have been written, in order.
+   */
+  private void verifyWritten(MockWrite write, long written, List<byte[]> expectedMessages) {
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    for (byte[] message : expectedMessages) {
+      expected.write(message, 0, message.length);
+    }
+    Assert.assertEquals("Bytes written is not as expected", expected.size(), written);
+    Assert.assertArrayEquals("Content written is not as expected", expected.toByteArray(), write.getContent());
+  }
+
+  /**
+   * Verifies that the stream is positioned right after the messages of the write set.
+   * @param stream the stream that the write set read from.
+   * @throws IOException
+   */
+  private void verifyTrailingBytes(InputStream stream) throws IOException {
+    byte[] remaining = new byte[TRAILING_BYTES_SIZE];
+    Assert.assertEquals("Stream is not positioned as expected", TRAILING_BYTES_SIZE, stream.read(remaining));
+    Assert.assertArrayEquals("Trailing bytes are not as expected", trailingBytes, remaining);
+  }
+
+  /**
+   * An {@link InputStream} that counts the bytes read from the stream it wraps.
+   */
+  private static class CountingInputStream extends FilterInputStream {
+    private long bytesRead = 0;
+
+    CountingInputStream(InputStream stream) {
+      super(stream);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int value = super.read();
+      if (value != -1) {
+        bytesRead++;
+      }
+      return value;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+      int count = super.read(bytes, offset, length);
+      if (count > 0) {
+        bytesRead += count;
+      }
+      return count;
+    }
+
+    long getBytesRead() {
+      return bytesRead;
+    }
+  }
+
+  /**
+   * A {@link Write} that collects everything written to it.
+   */
+  private static class MockWrite implements Write {
+    private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+    @Override
+    public int appendFrom(ByteBuffer buffer) throws IOException {
+      int toWrite = buffer.remaining();
+      byte[] bytes = new byte[toWrite];
+      buffer.get(bytes);
+      content.write(bytes, 0, toWrite);
+      return toWrite;
+    }
+
+    @Override
+    public void appendFrom(ReadableByteChannel channel, long size) throws IOException {
+      throw new UnsupportedOperationException("Only writes from buffers are expected");
+    }
+
+    byte[] getContent() {
+      return content.toByteArray();
+    }
+  }
+}
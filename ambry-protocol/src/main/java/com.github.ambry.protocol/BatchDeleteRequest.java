@@ -0,0 +1,135 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.protocol;
+
+import com.github.ambry.clustermap.ClusterMap;
+import com.github.ambry.clustermap.PartitionId;
+import com.github.ambry.commons.BlobId;
+import com.github.ambry.utils.Utils;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Delete request to delete a number of blobs that belong to the same partition. The server applies all the deletes to
+ * the store as a single write and responds with a {@link BatchDeleteResponse} that carries a result for every blob.
+ */
+public class BatchDeleteRequest extends RequestOrResponse {
+  private final List<BlobId> blobIds;
+  private final PartitionId partitionId;
+  private final long blobIdsSizeInBytes;
+  private int sizeSent;
+  private static final short Batch_Delete_Request_Version_V1 = 1;
+  private static final int Blob_Id_Count_Size_In_Bytes = 4;
+
+  /**
+   * Create a BatchDeleteRequest.
+   * @param correlationId the correlation id of the request.
+   * @param clientId the id of the client sending the request.
+   * @param blobIds the {@link BlobId}s to delete. All of them must belong to the same partition.
+   * @throws IllegalArgumentException if {@code blobIds} is empty or the ids belong to different partitions.
+   */
+  public BatchDeleteRequest(int correlationId, String clientId, List<BlobId> blobIds) {
+    super(RequestOrResponseType.BatchDeleteRequest, Batch_Delete_Request_Version_V1, correlationId, clientId);
+    if (blobIds == null || blobIds.isEmpty()) {
+      throw new IllegalArgumentException("No blob ids provided for the batch delete");
+    }
+    partitionId = blobIds.get(0).getPartition();
+    long size = 0;
+    for (BlobId blobId : blobIds) {
+      if (!partitionId.equals(blobId.getPartition())) {
+        throw new IllegalArgumentException(
+            "Blob id " + blobId + " does not belong to partition " + partitionId + " of the batch delete");
+      }
+      size += blobId.sizeInBytes();
+    }
+    this.blobIds = Collections.unmodifiableList(new ArrayList<BlobId>(blobIds));
+    blobIdsSizeInBytes = size;
+    sizeSent = 0;
+  }
+
+  public static BatchDeleteRequest readFrom(DataInputStream stream, ClusterMap map) throws IOException {
+    RequestOrResponseType type = RequestOrResponseType.BatchDeleteRequest;
+    Short versionId = stream.readShort();
+    int correlationId = stream.readInt();
+    String clientId = Utils.readIntString(stream);
+    int blobIdCount = stream.readInt();
+    List<BlobId> blobIds = new ArrayList<BlobId>(blobIdCount);
+    for (int i = 0; i < blobIdCount; i++) {
+      blobIds.add(new BlobId(stream, map));
+    }
+    // ignore version for now
+    return new BatchDeleteRequest(correlationId, clientId, blobIds);
+  }
+
+  /**
+   * @return the {@link BlobId}s to be deleted, in the order in which results are expected in the response.
+   */
+  public List<BlobId> getBlobIds() {
+    return blobIds;
+  }
+
+  /**
+   * @return the {@link PartitionId} that all the blobs in this request belong to.
+   */
+  public PartitionId getPartitionId() {
+    return partitionId;
+  }
+
+  @Override
+  public long writeTo(WritableByteChannel channel) throws IOException {
+    long written = 0;
+    if (bufferToSend == null) {
+      bufferToSend = ByteBuffer.allocate((int) sizeInBytes());
+      writeHeader();
+      bufferToSend.putInt(blobIds.size());
+      for (BlobId blobId : blobIds) {
+        bufferToSend.put(blobId.toBytes());
+      }
+      bufferToSend.flip();
+    }
+    if (bufferToSend.remaining() > 0) {
+      written = channel.write(bufferToSend);
+      sizeSent += written;
+    }
+    return written;
+  }
+
+  @Override
+  public boolean isSendComplete() {
+    return sizeSent == sizeInBytes();
+  }
+
+  @Override
+  public long sizeInBytes() {
+    // header + blob id count + blobIds
+    return super.sizeInBytes() + Blob_Id_Count_Size_In_Bytes + blobIdsSizeInBytes;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("BatchDeleteRequest[");
+    sb.append("BlobIDs=").append(blobIds);
+    sb.append(", ").append("ClientId=").append(clientId);
+    sb.append(", ").append("CorrelationId=").append(correlationId);
+    sb.append("]");
+    return sb.toString();
+  }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.protocol;
+
+import com.github.ambry.commons.ServerErrorCode;
+import com.github.ambry.utils.Utils;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Response to a {@link BatchDeleteRequest}. In addition to the overall error, it carries one {@link ServerErrorCode}
+ * per blob, in the same order as the blob ids in the request. The per blob errors are only meaningful if the overall
+ * error is {@link ServerErrorCode#No_Error}.
+ */
+public class BatchDeleteResponse extends Response {
+  private final List<ServerErrorCode> blobErrors;
+  private static final short Batch_Delete_Response_Version_V1 = 1;
+  private static final int Blob_Error_Count_Size_In_Bytes = 4;
+  private static final int Blob_Error_Size_In_Bytes = 2;
+
+  /**
+   * Create a BatchDeleteResponse with per blob results.
+   * @param correlationId the correlation id of the request this is a response to.
+   * @param clientId the id of the client that sent the request.
+   * @param error the overall {@link ServerErrorCode}.
+   * @param blobErrors the {@link ServerErrorCode} for each blob, in the same order as the request.
+   */
+  public BatchDeleteResponse(int correlationId, String clientId, ServerErrorCode error,
+      List<ServerErrorCode> blobErrors) {
+    super(RequestOrResponseType.BatchDeleteResponse, Batch_Delete_Response_Version_V1, correlationId, clientId, error);
+    this.blobErrors = Collections.unmodifiableList(new ArrayList<ServerErrorCode>(blobErrors));
+  }
+
+  /**
+   * Create a BatchDeleteResponse that carries only an overall error.
+   * @param correlationId the correlation id of the request this is a response to.
+   * @param clientId the id of the client that sent the request.
+   * @param error the overall {@link ServerErrorCode}.
+   */
+  public BatchDeleteResponse(int correlationId, String clientId, ServerErrorCode error) {
+    this(correlationId, clientId, error, Collections.<ServerErrorCode>emptyList());
+  }
+
+  public static BatchDeleteResponse readFrom(DataInputStream stream) throws IOException {
+    RequestOrResponseType type = RequestOrResponseType.values()[stream.readShort()];
+    if (type != RequestOrResponseType.BatchDeleteResponse) {
+      throw new IllegalArgumentException("The type of request response is not compatible");
+    }
+    Short versionId = stream.readShort();
+    int correlationId = stream.readInt();
+    String clientId = Utils.readIntString(stream);
+    ServerErrorCode error = ServerErrorCode.values()[stream.readShort()];
+    int blobErrorCount = stream.readInt();
+    List<ServerErrorCode> blobErrors = new ArrayList<ServerErrorCode>(blobErrorCount);
+    for (int i = 0; i < blobErrorCount; i++) {
+      blobErrors.add(ServerErrorCode.values()[stream.readShort()]);
+    }
+    // ignore version for now
+    return new BatchDeleteResponse(correlationId, clientId, error, blobErrors);
+  }
+
+  /**
+   * @return the {@link ServerErrorCode} for each blob, in the same order as the blob ids in the request.
+   */
+  public List<ServerErrorCode> getBlobErrors() {
+    return blobErrors;
+  }
+
+  @Override
+  public long writeTo(WritableByteChannel channel) throws IOException {
+    if (bufferToSend == null) {
+      bufferToSend = ByteBuffer.allocate((int) sizeInBytes());
+      writeHeader();
+      bufferToSend.putInt(blobErrors.size());
+      for (ServerErrorCode blobError : blobErrors) {
+        bufferToSend.putShort((short) blobError.ordinal());
+      }
+      bufferToSend.flip();
+    }
+    return bufferToSend.remaining() > 0 ? channel.write(bufferToSend) : 0;
+  }
+
+  @Override
+  public boolean isSendComplete() {
+    return bufferToSend != null && bufferToSend.remaining() == 0;
+  }
+
+  @Override
+  public long sizeInBytes() {
+    // header + error + blob error count + blob errors
+    return super.sizeInBytes() + Blob_Error_Count_Size_In_Bytes + blobErrors.size() * Blob_Error_Size_In_Bytes;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("BatchDeleteResponse[");
+    sb.append("ServerErrorCode=").append(getError());
+    sb.append(", ").append("BlobErrors=").append(blobErrors);
+    sb.append("]");
+    return sb.toString();
+  }
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.protocol;
+
+import com.github.ambry.utils.Lz4BlockCodec;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+
+/**
+ * The compressed form of a serialized payload, as sent in compressed responses. It is serialized as
+ * <pre>
+ *   - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+ *  |  codec  | uncompressed size | payload size |  payload  |
+ *  | 2 bytes |      4 bytes      |    4 bytes   |    ...    |
+ *   - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+ * </pre>
+ * A payload that does not get smaller when compressed is sent as is with the codec {@link CompressionCodec#None}.
+ */
+public class CompressedPayload {
+  private static final int Codec_Size_In_Bytes = 2;
+  private static final int Uncompressed_Size_In_Bytes = 4;
+  private static final int Payload_Size_In_Bytes = 4;
+
+  // the compressor keeps a large hash table, so it is reused across the payloads compressed by a thread.
+  private static final ThreadLocal<Lz4BlockCodec> lz4BlockCodec = new ThreadLocal<Lz4BlockCodec>() {
+    @Override
+    protected Lz4BlockCodec initialValue() {
+      return new Lz4BlockCodec();
+    }
+  };
+
+  private final CompressionCodec codec;
+  private final int uncompressedSizeInBytes;
+  private final ByteBuffer payload;
+  private final ByteBuffer uncompressedPayload;
+  private final long processingTimeInNanos;
+
+  private CompressedPayload(CompressionCodec codec, int uncompressedSizeInBytes, ByteBuffer payload,
+      ByteBuffer uncompressedPayload, long processingTimeInNanos) {
+    this.codec = codec;
+    this.uncompressedSizeInBytes = uncompressedSizeInBytes;
+    this.payload = payload;
+    this.uncompressedPayload = uncompressedPayload;
+    this.processingTimeInNanos = processingTimeInNanos;
+  }
+
+  /**
+   * Compresses the remaining bytes of {@code uncompressedPayload} with the given codec.
+   * @param uncompressedPayload the payload to compress. It has to be backed by an array.
+   * @param codec the {@link CompressionCodec} to compress with.
+   * @return the {@link CompressedPayload}.
+   */
+  public static CompressedPayload compress(ByteBuffer uncompressedPayload, CompressionCodec codec) {
+    long startTimeInNanos = System.nanoTime();
+    int uncompressedSize = uncompressedPayload.remaining();
+    ByteBuffer payload = uncompressedPayload.duplicate();
+    if (codec == CompressionCodec.Lz4_Block) {
+      byte[] compressed = new byte[Lz4BlockCodec.maxCompressedLength(uncompressedSize)];
+      int compressedSize = lz4BlockCodec.get()
+          .compress(uncompressedPayload.array(), uncompressedPayload.arrayOffset() + uncompressedPayload.position(),
+              uncompressedSize, compressed, 0);
+      if (compressedSize < uncompressedSize) {
+        payload = ByteBuffer.wrap(compressed, 0, compressedSize);
+      } else {
+        codec = CompressionCodec.None;
+      }
+    } else if (codec != CompressionCodec.None) {
+      throw new IllegalArgumentException("Unknown compression codec " + codec);
+    }
+    return new CompressedPayload(codec, uncompressedSize, payload, uncompressedPayload.duplicate(),
+        System.nanoTime() - startTimeInNanos);
+  }
+
+  /**
+   * Reads a {@link CompressedPayload} from the given stream and decompresses it.
+   * @param stream the stream to read from.
+   * @return the {@link CompressedPayload}.
+   * @throws IOException if the payload could not be read or is malformed.
+   */
+  public static CompressedPayload readFrom(DataInputStream stream) throws IOException {
+    short codecOrdinal = stream.readShort();
+    if (codecOrdinal < 0 || codecOrdinal >= CompressionCodec.values().length) {
+      throw new IOException("Unknown compression codec " + codecOrdinal);
+    }
+    CompressionCodec codec = CompressionCodec.values()[codecOrdinal];
+    int uncompressedSize = stream.readInt();
+    int payloadSize = stream.readInt();
+    if (uncompressedSize < 0 || payloadSize < 0) {
+      throw new IOException(
+          "Invalid uncompressed size " + uncompressedSize + " or payload size " + payloadSize + " of payload");
+    }
+    byte[] payload = new byte[payloadSize];
+    stream.readFully(payload);
+    long startTimeInNanos = System.nanoTime();
+    ByteBuffer uncompressedPayload;
+    if (codec == CompressionCodec.Lz4_Block) {
+      byte[] uncompressed = new byte[uncompressedSize];
+      int decompressedSize;
+      try {
+        decompressedSize = Lz4BlockCodec.decompress(payload, 0, payloadSize, uncompressed, 0, uncompressedSize);
+      } catch (IllegalArgumentException e) {
+        throw new IOException("Compressed payload is corrupt", e);
+      }
+      if (decompressedSize != uncompressedSize) {
+        throw new IOException(
+            "Compressed payload decompressed to " + decompressedSize + " bytes instead of " + uncompressedSize);
+      }
+      uncompressedPayload = ByteBuffer.wrap(uncompressed);
+    } else if (payloadSize == uncompressedSize) {
+      uncompressedPayload = ByteBuffer.wrap(payload);
+    } else {
+      throw new IOException("Uncompressed payload of size " + payloadSize + " is expected to be " + uncompressedSize);
+    }
+    return new CompressedPayload(codec, uncompressedSize, ByteBuffer.wrap(payload), uncompressedPayload,
+        System.nanoTime() - startTimeInNanos);
+  }
+
+  /**
+   * Writes the serialized form of this payload into the given buffer.
+   * @param buffer the buffer to write to.
+   */
+  public void writeTo(ByteBuffer buffer) {
+    buffer.putShort((short) codec.ordinal());
+    buffer.putInt(uncompressedSizeInBytes);
+    buffer.putInt(payload.remaining());
+    buffer.put(payload.duplicate());
+  }
+
+  /**
+   * @return the size of the serialized form of this payload.
+   */
+  public long sizeInBytes() {
+    return Codec_Size_In_Bytes + Uncompressed_Size_In_Bytes + Payload_Size_In_Bytes + payload.remaining();
+  }
+
+  /**
+   * @return the {@link CompressionCodec} the payload is compressed with.
+   */
+  public CompressionCodec getCodec() {
+    return codec;
+  }
+
+  /**
+   * @return the size of the payload before compression.
+   */
+  public int getUncompressedSizeInBytes() {
+    return uncompressedSizeInBytes;
+  }
+
+  /**
+   * @return the size of the payload after compression.
+   */
+  public int getCompressedSizeInBytes() {
+    return payload.remaining();
+  }
+
+  /**
+   * @return the uncompressed payload.
+   */
+  public ByteBuffer getUncompressedPayload() {
+    return uncompressedPayload.duplicate();
+  }
+
+  /**
+   * @return the time spent compressing the payload if it was created by {@link #compress(ByteBuffer,
+   * CompressionCodec)}, or decompressing it if it was created by {@link #readFrom(DataInputStream)}.
+   */
+  public long getProcessingTimeInNanos() {
+    return processingTimeInNanos;
+  }
+}
@@ -31,21 +31,44 @@ public class GetRequest extends RequestOrResponse {
 
   private MessageFormatFlags flags;
   private GetOption getOption;
+  private CompressionCodec acceptedCompressionCodec;
   private List<PartitionRequestInfo> partitionRequestInfoList;
   private int sizeSent;
   private int totalPartitionRequestInfoListSize;
 
   private static final int MessageFormat_Size_In_Bytes = 2;
   private static final int GetOption_Size_In_Bytes = 2;
+  private static final int Compression_Codec_Size_In_Bytes = 2;
   private static final int Partition_Request_Info_List_Size = 4;
   private static final short Get_Request_Version_V2 = 2;
+  // V3 adds the compression codec the client accepts for the response.
+  private static final short Get_Request_Version_V3 = 3;
 
   public GetRequest(int correlationId, String clientId, MessageFormatFlags flags,
       List<PartitionRequestInfo> partitionRequestInfoList, GetOption getOption) {
-    super(RequestOrResponseType.GetRequest, Get_Request_Version_V2, correlationId, clientId);
+    this(correlationId, clientId, flags, partitionRequestInfoList, getOption, CompressionCodec.None);
+  }
+
+  /**
+   * Creates a GetRequest that asks for the response to be compressed. Requests that do not accept compression are
+   * sent as V2 so that they are understood by servers that do not support compression.
+   * @param correlationId the correlation id of the request.
+   * @param clientId the id of the client sending the request.
+   * @param flags the {@link MessageFormatFlags} of the request.
+   * @param partitionRequestInfoList the partitions and the blob ids to get.
+   * @param getOption the {@link GetOption} of the request.
+   * @param acceptedCompressionCodec the {@link CompressionCodec} with which the response can be compressed.
+   */
+  public GetRequest(int correlationId, String clientId, MessageFormatFlags flags,
+      List<PartitionRequestInfo> partitionRequestInfoList, GetOption getOption,
+      CompressionCodec acceptedCompressionCodec) {
+    super(RequestOrResponseType.GetRequest,
+        acceptedCompressionCodec == CompressionCodec.None ? Get_Request_Version_V2 : Get_Request_Version_V3,
+        correlationId, clientId);
 
     this.flags = flags;
     this.getOption = getOption;
+    this.acceptedCompressionCodec = acceptedCompressionCodec;
     if (partitionRequestInfoList == null) {
       throw new IllegalArgumentException("No partition info specified in GetRequest");
     }
@@ -68,6 +91,13 @@ public class GetRequest extends RequestOrResponse {
     return getOption;
   }
 
+  /**
+   * @return the {@link CompressionCodec} with which the response to this request can be compressed.
+   */
+  public CompressionCodec getAcceptedCompressionCodec() {
+    return acceptedCompressionCodec;
+  }
+
   public static GetRequest readFrom(DataInputStream stream, ClusterMap clusterMap) throws IOException {
     RequestOrResponseType type = RequestOrResponseType.GetRequest;
     Short versionId = stream.readShort();
@@ -82,11 +112,15 @@ public class GetRequest extends RequestOrResponse {
       partitionRequestInfoList.add(partitionRequestInfo);
     }
     GetOption getOption = GetOption.None;
-    if (versionId == Get_Request_Version_V2) {
+    if (versionId == Get_Request_Version_V2 || versionId == Get_Request_Version_V3) {
       getOption = GetOption.values()[stream.readShort()];
     }
-    // ignore version for now
-    return new GetRequest(correlationId, clientId, messageType, partitionRequestInfoList, getOption);
+    CompressionCodec acceptedCompressionCodec = CompressionCodec.None;
+    if (versionId == Get_Request_Version_V3) {
+      acceptedCompressionCodec = CompressionCodec.values()[stream.readShort()];
+    }
+    return new GetRequest(correlationId, clientId, messageType, partitionRequestInfoList, getOption,
+        acceptedCompressionCodec);
   }
 
   @Override
@@ -101,6 +135,9 @@ public class GetRequest extends RequestOrResponse {
         partitionRequestInfo.writeTo(bufferToSend);
       }
       bufferToSend.putShort((short) getOption.ordinal());
+      if (versionId == Get_Request_Version_V3) {
+        bufferToSend.putShort((short) acceptedCompressionCodec.ordinal());
+      }
       bufferToSend.flip();
     }
     if (bufferToSend.remaining() > 0) {
@@ -119,7 +156,8 @@ public class GetRequest extends RequestOrResponse {
   public long sizeInBytes() {
     // header + message format size + partition request info size + total partition request info list size
     return super.sizeInBytes() + MessageFormat_Size_In_Bytes + Partition_Request_Info_List_Size
-        + totalPartitionRequestInfoListSize + GetOption_Size_In_Bytes;
+        + totalPartitionRequestInfoListSize + GetOption_Size_In_Bytes + (versionId == Get_Request_Version_V3
+        ? Compression_Codec_Size_In_Bytes : 0);
   }
 
   @Override
@@ -133,6 +171,9 @@ public class GetRequest extends RequestOrResponse {
     sb.append(", ").append("CorrelationId=").append(correlationId);
     sb.append(", ").append("MessageFormatFlags=").append(flags);
     sb.append(", ").append("GetOption=").append(getOption);
+    if (acceptedCompressionCodec != CompressionCodec.None) {
+      sb.append(", ").append("AcceptedCompressionCodec=").append(acceptedCompressionCodec);
+    }
     sb.append("]");
     return sb.toString();
   }
@@ -16,6 +16,8 @@ package com.github.ambry.protocol;
 import com.github.ambry.clustermap.ClusterMap;
 import com.github.ambry.commons.ServerErrorCode;
 import com.github.ambry.network.Send;
+import com.github.ambry.utils.ByteBufferChannel;
+import com.github.ambry.utils.ByteBufferInputStream;
 import com.github.ambry.utils.Utils;
 import java.io.DataInputStream;
 import java.io.IOException;
@@ -35,10 +37,16 @@ public class GetResponse extends Response {
   private InputStream stream = null;
   private final List<PartitionResponseInfo> partitionResponseInfoList;
   private int partitionResponseInfoSize;
+  private CompressedPayload compressedPayload = null;
+  private short compressedPayloadVersion;
 
   private static int Partition_Response_Info_List_Size = 4;
+  private static final int Compressed_Payload_Version_Size = 2;
   static final short Get_Response_Version_V1 = 1;
   static final short Get_Response_Version_V2 = 2;
+  // V3 is a compressed envelope of a response of an older version. The header is followed by the version of the
+  // enclosed response and a CompressedPayload with everything that follows the header in the enclosed response.
+  static final short Get_Response_Version_V3 = 3;
 
   // @todo change this to V2 once all cluster nodes understand V2.
   private static final short currentVersion = Get_Response_Version_V1;
@@ -54,6 +62,46 @@ public class GetResponse extends Response {
     this.toSend = send;
   }
 
+  /**
+   * Creates a GetResponse whose partition response infos and messages are compressed with the given codec. The
+   * messages are read from {@code send} into memory when the response is created. If the codec is
+   * {@link CompressionCodec#None}, the response is the same as one that is not compressed.
+   * @param correlationId the correlation id of the request.
+   * @param clientId the id of the client that sent the request.
+   * @param partitionResponseInfoList the {@link PartitionResponseInfo}s of the response.
+   * @param send the {@link Send} with the messages of the response.
+   * @param error the {@link ServerErrorCode} of the response.
+   * @param compressionCodec the {@link CompressionCodec} to compress the response with.
+   * @throws IOException if the messages could not be read from {@code send}.
+   */
+  public GetResponse(int correlationId, String clientId, List<PartitionResponseInfo> partitionResponseInfoList,
+      Send send, ServerErrorCode error, CompressionCodec compressionCodec) throws IOException {
+    this(correlationId, clientId, partitionResponseInfoList, send, error);
+    if (compressionCodec != CompressionCodec.None) {
+      long payloadSize =
+          Partition_Response_Info_List_Size + partitionResponseInfoSize + (send == null ? 0 : send.sizeInBytes());
+      if (payloadSize > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("GetResponse of size " + payloadSize + " is too large to compress");
+      }
+      ByteBuffer payload = ByteBuffer.allocate((int) payloadSize);
+      writePartitionResponseInfoList(payload);
+      if (send != null) {
+        ByteBufferChannel channel = new ByteBufferChannel(payload);
+        while (!send.isSendComplete() && payload.hasRemaining()) {
+          send.writeTo(channel);
+        }
+        if (!send.isSendComplete()) {
+          throw new IllegalStateException("Messages to send are larger than the size of the send");
+        }
+      }
+      payload.flip();
+      compressedPayload = CompressedPayload.compress(payload, compressionCodec);
+      compressedPayloadVersion = versionId;
+      versionId = Get_Response_Version_V3;
+      toSend = null;
+    }
+  }
+
   public GetResponse(int correlationId, String clientId, List<PartitionResponseInfo> partitionResponseInfoList,
       InputStream stream, ServerErrorCode error) {
     super(RequestOrResponseType.GetResponse, currentVersion, correlationId, clientId, error);
@@ -79,6 +127,13 @@ public class GetResponse extends Response {
     return partitionResponseInfoList;
   }
 
+  /**
+   * @return the {@link CompressedPayload} of this response, or {@code null} if the response is not compressed.
+   */
+  public CompressedPayload getCompressedPayload() {
+    return compressedPayload;
+  }
+
   public static GetResponse readFrom(DataInputStream stream, ClusterMap map) throws IOException {
     short typeval = stream.readShort();
     RequestOrResponseType type = RequestOrResponseType.values()[typeval];
@@ -94,6 +149,12 @@ public class GetResponse extends Response {
     if (error != ServerErrorCode.No_Error) {
       return new GetResponse(correlationId, clientId, error);
     } else {
+      CompressedPayload compressedPayload = null;
+      if (versionId == Get_Response_Version_V3) {
+        versionId = stream.readShort();
+        compressedPayload = CompressedPayload.readFrom(stream);
+        stream = new DataInputStream(new ByteBufferInputStream(compressedPayload.getUncompressedPayload()));
+      }
       int partitionResponseInfoCount = stream.readInt();
       ArrayList<PartitionResponseInfo> partitionResponseInfoList =
           new ArrayList<PartitionResponseInfo>(partitionResponseInfoCount);
@@ -101,7 +162,9 @@ public class GetResponse extends Response {
         PartitionResponseInfo partitionResponseInfo = PartitionResponseInfo.readFrom(stream, map, versionId);
         partitionResponseInfoList.add(partitionResponseInfo);
       }
-      return new GetResponse(correlationId, clientId, partitionResponseInfoList, stream, error);
+      GetResponse getResponse = new GetResponse(correlationId, clientId, partitionResponseInfoList, stream, error);
+      getResponse.compressedPayload = compressedPayload;
+      return getResponse;
     }
   }
 
@@ -109,14 +172,14 @@ public class GetResponse extends Response {
   public long writeTo(WritableByteChannel channel) throws IOException {
     long written = 0;
     if (bufferToSend == null) {
-      bufferToSend = ByteBuffer.allocate(
-          (int) super.sizeInBytes() + (Partition_Response_Info_List_Size + partitionResponseInfoSize));
+      // the messages that are not compressed are written directly from toSend.
+      bufferToSend = ByteBuffer.allocate((int) (sizeInBytes() - (toSend == null ? 0 : toSend.sizeInBytes())));
       writeHeader();
-      if (partitionResponseInfoList != null) {
-        bufferToSend.putInt(partitionResponseInfoList.size());
-        for (PartitionResponseInfo partitionResponseInfo : partitionResponseInfoList) {
-          partitionResponseInfo.writeTo(bufferToSend);
-        }
+      if (compressedPayload != null) {
+        bufferToSend.putShort(compressedPayloadVersion);
+        compressedPayload.writeTo(bufferToSend);
+      } else {
+        writePartitionResponseInfoList(bufferToSend);
       }
       bufferToSend.flip();
     }
@@ -129,6 +192,19 @@ public class GetResponse extends Response {
     return written;
   }
 
+  /**
+   * Writes the partition response infos of this response into the given buffer.
+   * @param buffer the buffer to write to.
+   */
+  private void writePartitionResponseInfoList(ByteBuffer buffer) {
+    if (partitionResponseInfoList != null) {
+      buffer.putInt(partitionResponseInfoList.size());
+      for (PartitionResponseInfo partitionResponseInfo : partitionResponseInfoList) {
+        partitionResponseInfo.writeTo(buffer);
+      }
+    }
+  }
+
   @Override
   public boolean isSendComplete() {
     return (super.isSendComplete()) && (toSend == null || toSend.isSendComplete());
@@ -136,6 +212,9 @@ public class GetResponse extends Response {
 
   @Override
   public long sizeInBytes() {
+    if (compressedPayload != null) {
+      return super.sizeInBytes() + Compressed_Payload_Version_Size + compressedPayload.sizeInBytes();
+    }
     return super.sizeInBytes() + (Partition_Response_Info_List_Size + partitionResponseInfoSize) + ((toSend == null) ? 0
         : toSend.sizeInBytes());
   }
@@ -148,6 +227,11 @@ public class GetResponse extends Response {
       sb.append("SizeToSend=").append(toSend.sizeInBytes());
     }
     sb.append(" ServerErrorCode=").append(getError());
+    if (compressedPayload != null) {
+      sb.append(" CompressionCodec=").append(compressedPayload.getCodec());
+      sb.append(" UncompressedSize=").append(compressedPayload.getUncompressedSizeInBytes());
+      sb.append(" CompressedSize=").append(compressedPayload.getCompressedSizeInBytes());
+    }
     if (partitionResponseInfoList != null) {
       sb.append(" PartitionResponseInfoList=").append(partitionResponseInfoList);
     }
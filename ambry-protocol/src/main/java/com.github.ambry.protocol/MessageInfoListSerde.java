@@ -14,32 +14,75 @@
 package com.github.ambry.protocol;
 
 import com.github.ambry.clustermap.ClusterMap;
+import com.github.ambry.clustermap.PartitionId;
 import com.github.ambry.commons.BlobId;
 import com.github.ambry.store.MessageInfo;
+import com.github.ambry.store.StoreKey;
+import com.github.ambry.utils.Utils;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 
 /**
  * A serde for serializing and deserializing list of message info
+ * <p/>
+ * V3 is a compact format for lists in which all the keys belong to one partition, which has to be known to both ends.
+ * Every message info starts with a byte of flags. The keys that belong to the partition and have a uuid in the
+ * canonical form are sent as the 16 bytes of the uuid, others as the full blob id. Sizes and crcs are sent as varints,
+ * and expiration times as zigzag varints of the difference from the expiration time of the previous message info that
+ * has one.
  */
 class MessageInfoListSerde {
 
   private final List<MessageInfo> messageInfoList;
   static final short MessageInfoListVersion_V1 = 1;
   static final short MessageInfoListVersion_V2 = 2;
+  static final short MessageInfoListVersion_V3 = 3;
 
   private final short version;
+  private final PartitionId partitionId;
+  // for V3, the uuids of the keys that are sent in the compact form, and null for the others.
+  private final UUID[] compactUuids;
 
   private static final byte CRC_PRESENT = (byte) 1;
   private static final byte DELETED = (byte) 1;
 
+  // the flags of a message info in V3.
+  private static final byte DELETED_FLAG = 1;
+  private static final byte CRC_PRESENT_FLAG = 1 << 1;
+  private static final byte COMPACT_KEY_FLAG = 1 << 2;
+  private static final byte EXPIRATION_PRESENT_FLAG = 1 << 3;
+  private static final int UUID_Size_In_Bytes = 16;
+
   MessageInfoListSerde(List<MessageInfo> messageInfoList, short version) {
+    this(messageInfoList, version, null);
+  }
+
+  /**
+   * @param messageInfoList the list of message infos to serialize.
+   * @param version the version to serialize in.
+   * @param partitionId the partition that the keys in the list belong to. Required for
+   *                    {@link #MessageInfoListVersion_V3}.
+   */
+  MessageInfoListSerde(List<MessageInfo> messageInfoList, short version, PartitionId partitionId) {
     this.messageInfoList = messageInfoList;
     this.version = version;
+    this.partitionId = partitionId;
+    if (version == MessageInfoListVersion_V3) {
+      if (partitionId == null) {
+        throw new IllegalArgumentException("Partition is required to serialize a message info list in V3");
+      }
+      compactUuids = new UUID[messageInfoList == null ? 0 : messageInfoList.size()];
+      for (int i = 0; i < compactUuids.length; i++) {
+        compactUuids[i] = getCompactUuid(messageInfoList.get(i).getStoreKey());
+      }
+    } else {
+      compactUuids = null;
+    }
   }
 
   int getMessageInfoListSize() {
@@ -47,6 +90,9 @@ class MessageInfoListSerde {
     if (messageInfoList == null) {
       return listcountSize;
     }
+    if (version == MessageInfoListVersion_V3) {
+      return listcountSize + getCompactMessageInfoListSize();
+    }
     int size = 0;
     int longfieldSize = 8;
     size += listcountSize;
@@ -72,7 +118,9 @@ class MessageInfoListSerde {
 
   void serializeMessageInfoList(ByteBuffer outputBuffer) {
     outputBuffer.putInt(messageInfoList == null ? 0 : messageInfoList.size());
-    if (messageInfoList != null) {
+    if (messageInfoList != null && version == MessageInfoListVersion_V3) {
+      serializeCompactMessageInfoList(outputBuffer);
+    } else if (messageInfoList != null) {
       for (MessageInfo messageInfo : messageInfoList) {
         outputBuffer.put(messageInfo.getStoreKey().toBytes());
         outputBuffer.putLong(messageInfo.getSize());
@@ -93,6 +141,27 @@ class MessageInfoListSerde {
 
   static List<MessageInfo> deserializeMessageInfoList(DataInputStream stream, ClusterMap map,
       short versionToDeserializeIn) throws IOException {
+    return deserializeMessageInfoList(stream, map, versionToDeserializeIn, null);
+  }
+
+  /**
+   * Deserializes a list of message infos.
+   * @param stream the stream to deserialize from.
+   * @param map the {@link ClusterMap} to deserialize the keys with.
+   * @param versionToDeserializeIn the version of the serialized list.
+   * @param partitionId the partition that the keys in the list belong to. Required for
+   *                    {@link #MessageInfoListVersion_V3}.
+   * @return the list of message infos.
+   * @throws IOException if the list could not be read.
+   */
+  static List<MessageInfo> deserializeMessageInfoList(DataInputStream stream, ClusterMap map,
+      short versionToDeserializeIn, PartitionId partitionId) throws IOException {
+    if (versionToDeserializeIn == MessageInfoListVersion_V3) {
+      if (partitionId == null) {
+        throw new IllegalArgumentException("Partition is required to deserialize a message info list in V3");
+      }
+      return deserializeCompactMessageInfoList(stream, map, partitionId);
+    }
     int messageInfoListCount = stream.readInt();
     ArrayList<MessageInfo> messageListInfo = new ArrayList<MessageInfo>(messageInfoListCount);
     for (int i = 0; i < messageInfoListCount; i++) {
@@ -112,4 +181,149 @@ class MessageInfoListSerde {
   List<MessageInfo> getMessageInfoList() {
     return messageInfoList;
   }
+
+  /**
+   * @return the size of the message infos in V3, excluding the count.
+   */
+  private int getCompactMessageInfoListSize() {
+    int size = 0;
+    long previousExpirationTimeInMs = 0;
+    for (int i = 0; i < messageInfoList.size(); i++) {
+      MessageInfo messageInfo = messageInfoList.get(i);
+      // flags
+      size += 1;
+      size += compactUuids[i] != null ? UUID_Size_In_Bytes : messageInfo.getStoreKey().sizeInBytes();
+      size += getVarLongSize(messageInfo.getSize());
+      if (messageInfo.getExpirationTimeInMs() != Utils.Infinite_Time) {
+        size += getVarLongSize(zigZag(messageInfo.getExpirationTimeInMs() - previousExpirationTimeInMs));
+        previousExpirationTimeInMs = messageInfo.getExpirationTimeInMs();
+      }
+      if (messageInfo.getCrc() != null) {
+        size += getVarLongSize(messageInfo.getCrc());
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Serializes the message infos in V3, excluding the count.
+   * @param outputBuffer the buffer to serialize into.
+   */
+  private void serializeCompactMessageInfoList(ByteBuffer outputBuffer) {
+    long previousExpirationTimeInMs = 0;
+    for (int i = 0; i < messageInfoList.size(); i++) {
+      MessageInfo messageInfo = messageInfoList.get(i);
+      boolean hasExpirationTime = messageInfo.getExpirationTimeInMs() != Utils.Infinite_Time;
+      byte flags = 0;
+      flags |= messageInfo.isDeleted() ? DELETED_FLAG : 0;
+      flags |= messageInfo.getCrc() != null ? CRC_PRESENT_FLAG : 0;
+      flags |= compactUuids[i] != null ? COMPACT_KEY_FLAG : 0;
+      flags |= hasExpirationTime ? EXPIRATION_PRESENT_FLAG : 0;
+      outputBuffer.put(flags);
+      if (compactUuids[i] != null) {
+        outputBuffer.putLong(compactUuids[i].getMostSignificantBits());
+        outputBuffer.putLong(compactUuids[i].getLeastSignificantBits());
+      } else {
+        outputBuffer.put(messageInfo.getStoreKey().toBytes());
+      }
+      putVarLong(outputBuffer, messageInfo.getSize());
+      if (hasExpirationTime) {
+        putVarLong(outputBuffer, zigZag(messageInfo.getExpirationTimeInMs() - previousExpirationTimeInMs));
+        previousExpirationTimeInMs = messageInfo.getExpirationTimeInMs();
+      }
+      if (messageInfo.getCrc() != null) {
+        putVarLong(outputBuffer, messageInfo.getCrc());
+      }
+    }
+  }
+
+  /**
+   * Deserializes a list of message infos serialized in V3.
+   * @param stream the stream to deserialize from.
+   * @param map the {@link ClusterMap} to deserialize the keys that are not in the compact form with.
+   * @param partitionId the partition of the keys that are in the compact form.
+   * @return the list of message infos.
+   * @throws IOException if the list could not be read.
+   */
+  private static List<MessageInfo> deserializeCompactMessageInfoList(DataInputStream stream, ClusterMap map,
+      PartitionId partitionId) throws IOException {
+    int messageInfoListCount = stream.readInt();
+    ArrayList<MessageInfo> messageListInfo = new ArrayList<MessageInfo>(messageInfoListCount);
+    long previousExpirationTimeInMs = 0;
+    for (int i = 0; i < messageInfoListCount; i++) {
+      byte flags = stream.readByte();
+      BlobId id;
+      if ((flags & COMPACT_KEY_FLAG) != 0) {
+        id = new BlobId(partitionId, new UUID(stream.readLong(), stream.readLong()).toString());
+      } else {
+        id = new BlobId(stream, map);
+      }
+      long size = readVarLong(stream);
+      long expirationTimeInMs = Utils.Infinite_Time;
+      if ((flags & EXPIRATION_PRESENT_FLAG) != 0) {
+        expirationTimeInMs = previousExpirationTimeInMs + unZigZag(readVarLong(stream));
+        previousExpirationTimeInMs = expirationTimeInMs;
+      }
+      Long crc = (flags & CRC_PRESENT_FLAG) != 0 ? readVarLong(stream) : null;
+      messageListInfo.add(new MessageInfo(id, size, (flags & DELETED_FLAG) != 0, expirationTimeInMs, crc));
+    }
+    return messageListInfo;
+  }
+
+  /**
+   * @param key the key to send.
+   * @return the uuid of the key if it can be sent in the compact form, {@code null} otherwise.
+   */
+  private UUID getCompactUuid(StoreKey key) {
+    if (key instanceof BlobId && ((BlobId) key).getPartition().equals(partitionId)) {
+      String uuidString = ((BlobId) key).getUuid();
+      try {
+        UUID uuid = UUID.fromString(uuidString);
+        // only uuids that are in the canonical form can be reconstructed from their bits.
+        if (uuid.toString().equals(uuidString)) {
+          return uuid;
+        }
+      } catch (IllegalArgumentException e) {
+        // not a uuid, so the key is sent as is.
+      }
+    }
+    return null;
+  }
+
+  private static long zigZag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unZigZag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static int getVarLongSize(long value) {
+    int size = 1;
+    while ((value & ~0x7FL) != 0) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
+  private static void putVarLong(ByteBuffer buffer, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  private static long readVarLong(DataInputStream stream) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = stream.readByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint in message info list");
+  }
 }
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.protocol;
+
+import com.github.ambry.clustermap.ClusterMap;
+import com.github.ambry.clustermap.PartitionId;
+import com.github.ambry.utils.Utils;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+
+/**
+ * Request for a range of bytes of one of the files listed in a {@link ReplicaSnapshotResponse}.
+ */
+public class ReplicaFileChunkRequest extends RequestOrResponse {
+  private final PartitionId partitionId;
+  private final String fileName;
+  private final long offset;
+  private final long chunkSizeInBytes;
+
+  private static final int File_Name_Size_In_Bytes = 4;
+  private static final int Offset_Size_In_Bytes = 8;
+  private static final int Chunk_Size_Size_In_Bytes = 8;
+  private static final short Replica_File_Chunk_Request_Version_V1 = 1;
+
+  public ReplicaFileChunkRequest(int correlationId, String clientId, PartitionId partitionId, String fileName,
+      long offset, long chunkSizeInBytes) {
+    super(RequestOrResponseType.ReplicaFileChunkRequest, Replica_File_Chunk_Request_Version_V1, correlationId,
+        clientId);
+    if (partitionId == null || fileName == null) {
+      throw new IllegalArgumentException(
+          "A parameter in the file chunk request is null: [Partition: " + partitionId + ", fileName: " + fileName
+              + "]");
+    }
+    this.partitionId = partitionId;
+    this.fileName = fileName;
+    this.offset = offset;
+    this.chunkSizeInBytes = chunkSizeInBytes;
+  }
+
+  public static ReplicaFileChunkRequest readFrom(DataInputStream stream, ClusterMap clusterMap) throws IOException {
+    Short versionId = stream.readShort();
+    int correlationId = stream.readInt();
+    String clientId = Utils.readIntString(stream);
+    PartitionId partitionId = clusterMap.getPartitionIdFromStream(stream);
+    String fileName = Utils.readIntString(stream);
+    long offset = stream.readLong();
+    long chunkSizeInBytes = stream.readLong();
+    return new ReplicaFileChunkRequest(correlationId, clientId, partitionId, fileName, offset, chunkSizeInBytes);
+  }
+
+  public PartitionId getPartitionId() {
+    return partitionId;
+  }
+
+  public String getFileName() {
+    return fileName;
+  }
+
+  public long getOffset() {
+    return offset;
+  }
+
+  public long getChunkSizeInBytes() {
+    return chunkSizeInBytes;
+  }
+
+  @Override
+  public long writeTo(WritableByteChannel channel) throws IOException {
+    if (bufferToSend == null) {
+      bufferToSend = ByteBuffer.allocate((int) sizeInBytes());
+      writeHeader();
+      bufferToSend.put(partitionId.getBytes());
+      bufferToSend.putInt(fileName.getBytes().length);
+      bufferToSend.put(fileName.getBytes());
+      bufferToSend.putLong(offset);
+      bufferToSend.putLong(chunkSizeInBytes);
+      bufferToSend.flip();
+    }
+    return bufferToSend.remaining() > 0 ? channel.write(bufferToSend) : 0;
+  }
+
+  @Override
+  public boolean isSendComplete() {
+    return bufferToSend != null && bufferToSend.remaining() == 0;
+  }
+
+  @Override
+  public long sizeInBytes() {
+    return super.sizeInBytes() + partitionId.getBytes().length + File_Name_Size_In_Bytes + fileName.getBytes().length
+        + Offset_Size_In_Bytes + Chunk_Size_Size_In_Bytes;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("ReplicaFileChunkRequest[");
+    sb.append("PartitionId=").append(partitionId);
+    sb.append(", ").append("FileName=").append(fileName);
+    sb.append(", ").append("Offset=").append(offset);
+    sb.append(", ").append("ChunkSizeInBytes=").append(chunkSizeInBytes);
+    sb.append(", ").append("ClientId=").append(clientId);
+    sb.append(", ").append("CorrelationId=").append(correlationId);
+    sb.append("]");
+    return sb.toString();
+  }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.protocol;
+
+import com.github.ambry.commons.ServerErrorCode;
+import com.github.ambry.network.Send;
+import com.github.ambry.utils.Utils;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+
+/**
+ * The response for a {@link ReplicaFileChunkRequest}. The header is followed by the bytes of the chunk, which are
+ * written directly from the {@link Send} of the chunk.
+ */
+public class ReplicaFileChunkResponse extends Response {
+  private final Send chunk;
+  private final InputStream stream;
+  private final long chunkSizeInBytes;
+
+  private static final int Chunk_Size_Size_In_Bytes = 8;
+  private static final short Replica_File_Chunk_Response_Version_V1 = 1;
+
+  public ReplicaFileChunkResponse(int correlationId, String clientId, ServerErrorCode error, Send chunk) {
+    super(RequestOrResponseType.ReplicaFileChunkResponse, Replica_File_Chunk_Response_Version_V1, correlationId,
+        clientId, error);
+    this.chunk = chunk;
+    this.stream = null;
+    this.chunkSizeInBytes = chunk == null ? 0 : chunk.sizeInBytes();
+  }
+
+  public ReplicaFileChunkResponse(int correlationId, String clientId, ServerErrorCode error) {
+    this(correlationId, clientId, error, null);
+  }
+
+  private ReplicaFileChunkResponse(int correlationId, String clientId, ServerErrorCode error, InputStream stream,
+      long chunkSizeInBytes) {
+    super(RequestOrResponseType.ReplicaFileChunkResponse, Replica_File_Chunk_Response_Version_V1, correlationId,
+        clientId, error);
+    this.chunk = null;
+    this.stream = stream;
+    this.chunkSizeInBytes = chunkSizeInBytes;
+  }
+
+  public static ReplicaFileChunkResponse readFrom(DataInputStream stream) throws IOException {
+    RequestOrResponseType type = RequestOrResponseType.values()[stream.readShort()];
+    if (type != RequestOrResponseType.ReplicaFileChunkResponse) {
+      throw new IllegalArgumentException("The type of request response is not compatible");
+    }
+    Short versionId = stream.readShort();
+    int correlationId = stream.readInt();
+    String clientId = Utils.readIntString(stream);
+    ServerErrorCode error = ServerErrorCode.values()[stream.readShort()];
+    long chunkSizeInBytes = stream.readLong();
+    return new ReplicaFileChunkResponse(correlationId, clientId, error, stream, chunkSizeInBytes);
+  }
+
+  /**
+   * @return the stream to read the bytes of the chunk from. This is available only on responses that are read.
+   */
+  public InputStream getInputStream() {
+    return stream;
+  }
+
+  /**
+   * @return the number of bytes in the chunk.
+   */
+  public long getChunkSizeInBytes() {
+    return chunkSizeInBytes;
+  }
+
+  @Override
+  public long writeTo(WritableByteChannel channel) throws IOException {
+    long written = 0;
+    if (bufferToSend == null) {
+      bufferToSend = ByteBuffer.allocate((int) (sizeInBytes() - chunkSizeInBytes));
+      writeHeader();
+      bufferToSend.putLong(chunkSizeInBytes);
+      bufferToSend.flip();
+    }
+    if (bufferToSend.remaining() > 0) {
+      written = channel.write(bufferToSend);
+    }
+    if (bufferToSend.remaining() == 0 && chunk != null && !chunk.isSendComplete()) {
+      written += chunk.writeTo(channel);
+    }
+    return written;
+  }
+
+  @Override
+  public boolean isSendComplete() {
+    return super.isSendComplete() && (chunk == null || chunk.isSendComplete());
+  }
+
+  @Override
+  public long sizeInBytes() {
+    return super.sizeInBytes() + Chunk_Size_Size_In_Bytes + chunkSizeInBytes;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("ReplicaFileChunkResponse[");
+    sb.append("ServerErrorCode=").append(getError());
+    sb.append(", ").append("ChunkSizeInBytes=").append(chunkSizeInBytes);
+    sb.append("]");
+    return sb.toString();
+  }
+}
@@ -31,19 +31,48 @@ public class ReplicaMetadataRequest extends RequestOrResponse {
   private List<ReplicaMetadataRequestInfo> replicaMetadataRequestInfoList;
   private long maxTotalSizeOfEntriesInBytes;
   private long replicaMetadataRequestInfoListSizeInBytes;
+  private CompressionCodec acceptedCompressionCodec;
+  private boolean compactResponseAccepted;
 
   private static final int Max_Entries_Size_In_Bytes = 8;
   private static final int Replica_Metadata_Request_Info_List_Size_In_Bytes = 4;
+  private static final int Compression_Codec_Size_In_Bytes = 2;
   private static final short Replica_Metadata_Request_Version_V1 = 1;
+  // V2 adds the compression codec the client accepts for the response.
+  private static final short Replica_Metadata_Request_Version_V2 = 2;
+  // V3 also tells the server that the client accepts responses with the compact message info list format.
+  private static final short Replica_Metadata_Request_Version_V3 = 3;
 
   public ReplicaMetadataRequest(int correlationId, String clientId,
       List<ReplicaMetadataRequestInfo> replicaMetadataRequestInfoList, long maxTotalSizeOfEntriesInBytes) {
-    super(RequestOrResponseType.ReplicaMetadataRequest, Replica_Metadata_Request_Version_V1, correlationId, clientId);
+    this(correlationId, clientId, replicaMetadataRequestInfoList, maxTotalSizeOfEntriesInBytes,
+        CompressionCodec.None, false);
+  }
+
+  /**
+   * Creates a ReplicaMetadataRequest that can ask for the response to be compressed or to be in the compact format.
+   * The fields for these are appended to the V1 request, so servers that do not understand them ignore them and respond
+   * in the format they support. Requests that ask for neither are sent as V1.
+   * @param correlationId the correlation id of the request.
+   * @param clientId the id of the client sending the request.
+   * @param replicaMetadataRequestInfoList the replicas and the tokens to find new entries from.
+   * @param maxTotalSizeOfEntriesInBytes the maximum total size of the entries to return.
+   * @param acceptedCompressionCodec the {@link CompressionCodec} with which the response can be compressed.
+   * @param compactResponseAccepted {@code true} if the response can be in the compact message info list format.
+   */
+  public ReplicaMetadataRequest(int correlationId, String clientId,
+      List<ReplicaMetadataRequestInfo> replicaMetadataRequestInfoList, long maxTotalSizeOfEntriesInBytes,
+      CompressionCodec acceptedCompressionCodec, boolean compactResponseAccepted) {
+    super(RequestOrResponseType.ReplicaMetadataRequest, compactResponseAccepted ? Replica_Metadata_Request_Version_V3
+        : acceptedCompressionCodec == CompressionCodec.None ? Replica_Metadata_Request_Version_V1
+            : Replica_Metadata_Request_Version_V2, correlationId, clientId);
     if (replicaMetadataRequestInfoList == null) {
       throw new IllegalArgumentException("replicaMetadataRequestInfoList cannot be null");
     }
     this.replicaMetadataRequestInfoList = replicaMetadataRequestInfoList;
     this.maxTotalSizeOfEntriesInBytes = maxTotalSizeOfEntriesInBytes;
+    this.acceptedCompressionCodec = acceptedCompressionCodec;
+    this.compactResponseAccepted = compactResponseAccepted;
     this.replicaMetadataRequestInfoListSizeInBytes = 0;
     for (ReplicaMetadataRequestInfo replicaMetadataRequestInfo : replicaMetadataRequestInfoList) {
       this.replicaMetadataRequestInfoListSizeInBytes += replicaMetadataRequestInfo.sizeInBytes();
@@ -65,8 +94,12 @@ public class ReplicaMetadataRequest extends RequestOrResponse {
       replicaMetadataRequestInfoList.add(replicaMetadataRequestInfo);
     }
     long maxTotalSizeOfEntries = stream.readLong();
-    // ignore version for now
-    return new ReplicaMetadataRequest(correlationId, clientId, replicaMetadataRequestInfoList, maxTotalSizeOfEntries);
+    CompressionCodec acceptedCompressionCodec = CompressionCodec.None;
+    if (versionId == Replica_Metadata_Request_Version_V2 || versionId == Replica_Metadata_Request_Version_V3) {
+      acceptedCompressionCodec = CompressionCodec.values()[stream.readShort()];
+    }
+    return new ReplicaMetadataRequest(correlationId, clientId, replicaMetadataRequestInfoList, maxTotalSizeOfEntries,
+        acceptedCompressionCodec, versionId == Replica_Metadata_Request_Version_V3);
   }
 
   public List<ReplicaMetadataRequestInfo> getReplicaMetadataRequestInfoList() {
@@ -77,6 +110,20 @@ public class ReplicaMetadataRequest extends RequestOrResponse {
     return maxTotalSizeOfEntriesInBytes;
   }
 
+  /**
+   * @return the {@link CompressionCodec} with which the response to this request can be compressed.
+   */
+  public CompressionCodec getAcceptedCompressionCodec() {
+    return acceptedCompressionCodec;
+  }
+
+  /**
+   * @return {@code true} if the response to this request can be in the compact message info list format.
+   */
+  public boolean isCompactResponseAccepted() {
+    return compactResponseAccepted;
+  }
+
   @Override
   public long writeTo(WritableByteChannel channel) throws IOException {
     if (bufferToSend == null) {
@@ -87,6 +134,9 @@ public class ReplicaMetadataRequest extends RequestOrResponse {
         replicaMetadataRequestInfo.writeTo(bufferToSend);
       }
       bufferToSend.putLong(maxTotalSizeOfEntriesInBytes);
+      if (versionId != Replica_Metadata_Request_Version_V1) {
+        bufferToSend.putShort((short) acceptedCompressionCodec.ordinal());
+      }
       bufferToSend.flip();
     }
     return bufferToSend.remaining() > 0 ? channel.write(bufferToSend) : 0;
@@ -100,7 +150,8 @@ public class ReplicaMetadataRequest extends RequestOrResponse {
   @Override
   public long sizeInBytes() {
     return super.sizeInBytes() + Replica_Metadata_Request_Info_List_Size_In_Bytes
-        + replicaMetadataRequestInfoListSizeInBytes + Max_Entries_Size_In_Bytes;
+        + replicaMetadataRequestInfoListSizeInBytes + Max_Entries_Size_In_Bytes + (
+        versionId != Replica_Metadata_Request_Version_V1 ? Compression_Codec_Size_In_Bytes : 0);
   }
 
   @Override
@@ -111,6 +162,12 @@ public class ReplicaMetadataRequest extends RequestOrResponse {
       sb.append(replicaMetadataRequestInfo.toString());
     }
     sb.append(", ").append("maxTotalSizeOfEntriesInBytes=").append(maxTotalSizeOfEntriesInBytes);
+    if (acceptedCompressionCodec != CompressionCodec.None) {
+      sb.append(", ").append("AcceptedCompressionCodec=").append(acceptedCompressionCodec);
+    }
+    if (compactResponseAccepted) {
+      sb.append(", ").append("CompactResponseAccepted=true");
+    }
     sb.append(", ").append("ClientId=").append(clientId);
     sb.append(", ").append("CorrelationId=").append(correlationId);
     sb.append("]");
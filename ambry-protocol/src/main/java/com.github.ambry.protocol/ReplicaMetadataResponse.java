@@ -16,6 +16,7 @@ package com.github.ambry.protocol;
 import com.github.ambry.clustermap.ClusterMap;
 import com.github.ambry.commons.ServerErrorCode;
 import com.github.ambry.store.FindTokenFactory;
+import com.github.ambry.utils.ByteBufferInputStream;
 import com.github.ambry.utils.Utils;
 import java.io.DataInputStream;
 import java.io.IOException;
@@ -33,24 +34,70 @@ public class ReplicaMetadataResponse extends Response {
 
   private List<ReplicaMetadataResponseInfo> replicaMetadataResponseInfoList;
   private int replicaMetadataResponseInfoListSizeInBytes;
+  private CompressedPayload compressedPayload = null;
+  private short compressedPayloadVersion;
 
   private static int Replica_Metadata_Response_Info_List_Size_In_Bytes = 4;
+  private static final int Compressed_Payload_Version_Size = 2;
 
   static final short Replica_Metadata_Response_Version_V1 = 1;
   static final short Replica_Metadata_Response_Version_V2 = 2;
+  // V3 is a compressed envelope of a response of an older version. The header is followed by the version of the
+  // enclosed response and a CompressedPayload with everything that follows the header in the enclosed response.
+  static final short Replica_Metadata_Response_Version_V3 = 3;
+  // V4 serializes the message infos in the compact MessageInfoListSerde V3 format.
+  static final short Replica_Metadata_Response_Version_V4 = 4;
 
   // @todo change this to V2 once all cluster nodes understand V2.
   private static final short currentVersion = Replica_Metadata_Response_Version_V1;
 
   public ReplicaMetadataResponse(int correlationId, String clientId, ServerErrorCode error,
       List<ReplicaMetadataResponseInfo> replicaMetadataResponseInfoList) {
-    super(RequestOrResponseType.ReplicaMetadataResponse, currentVersion, correlationId, clientId,
-        error);
+    this(correlationId, clientId, error, replicaMetadataResponseInfoList, CompressionCodec.None, currentVersion);
+  }
+
+  /**
+   * Creates a ReplicaMetadataResponse whose response infos are compressed with the given codec. If the codec is
+   * {@link CompressionCodec#None}, the response is the same as one that is not compressed.
+   * @param correlationId the correlation id of the request.
+   * @param clientId the id of the client that sent the request.
+   * @param error the {@link ServerErrorCode} of the response.
+   * @param replicaMetadataResponseInfoList the {@link ReplicaMetadataResponseInfo}s of the response.
+   * @param compressionCodec the {@link CompressionCodec} to compress the response with.
+   */
+  public ReplicaMetadataResponse(int correlationId, String clientId, ServerErrorCode error,
+      List<ReplicaMetadataResponseInfo> replicaMetadataResponseInfoList, CompressionCodec compressionCodec) {
+    this(correlationId, clientId, error, replicaMetadataResponseInfoList, compressionCodec, currentVersion);
+  }
+
+  /**
+   * Creates a ReplicaMetadataResponse of the given version whose response infos are compressed with the given codec.
+   * @param correlationId the correlation id of the request.
+   * @param clientId the id of the client that sent the request.
+   * @param error the {@link ServerErrorCode} of the response.
+   * @param replicaMetadataResponseInfoList the {@link ReplicaMetadataResponseInfo}s of the response. They have to be
+   *                                        created for {@code version}.
+   * @param compressionCodec the {@link CompressionCodec} to compress the response with.
+   * @param version the version of the response, as returned by {@link #getResponseVersion(ReplicaMetadataRequest)}.
+   */
+  public ReplicaMetadataResponse(int correlationId, String clientId, ServerErrorCode error,
+      List<ReplicaMetadataResponseInfo> replicaMetadataResponseInfoList, CompressionCodec compressionCodec,
+      short version) {
+    super(RequestOrResponseType.ReplicaMetadataResponse, version, correlationId, clientId, error);
     this.replicaMetadataResponseInfoList = replicaMetadataResponseInfoList;
     this.replicaMetadataResponseInfoListSizeInBytes = 0;
     for (ReplicaMetadataResponseInfo replicaMetadataResponseInfo : replicaMetadataResponseInfoList) {
       this.replicaMetadataResponseInfoListSizeInBytes += replicaMetadataResponseInfo.sizeInBytes();
     }
+    if (compressionCodec != CompressionCodec.None) {
+      ByteBuffer payload = ByteBuffer.allocate(
+          Replica_Metadata_Response_Info_List_Size_In_Bytes + replicaMetadataResponseInfoListSizeInBytes);
+      writeReplicaMetadataResponseInfoList(payload);
+      payload.flip();
+      compressedPayload = CompressedPayload.compress(payload, compressionCodec);
+      compressedPayloadVersion = versionId;
+      versionId = Replica_Metadata_Response_Version_V3;
+    }
   }
 
   public ReplicaMetadataResponse(int correlationId, String clientId, ServerErrorCode error) {
@@ -64,6 +111,13 @@ public class ReplicaMetadataResponse extends Response {
     return replicaMetadataResponseInfoList;
   }
 
+  /**
+   * @return the {@link CompressedPayload} of this response, or {@code null} if the response is not compressed.
+   */
+  public CompressedPayload getCompressedPayload() {
+    return compressedPayload;
+  }
+
   public static ReplicaMetadataResponse readFrom(DataInputStream stream, FindTokenFactory factory,
       ClusterMap clusterMap) throws IOException {
     RequestOrResponseType type = RequestOrResponseType.values()[stream.readShort()];
@@ -74,6 +128,12 @@ public class ReplicaMetadataResponse extends Response {
     int correlationId = stream.readInt();
     String clientId = Utils.readIntString(stream);
     ServerErrorCode error = ServerErrorCode.values()[stream.readShort()];
+    CompressedPayload compressedPayload = null;
+    if (versionId == Replica_Metadata_Response_Version_V3) {
+      versionId = stream.readShort();
+      compressedPayload = CompressedPayload.readFrom(stream);
+      stream = new DataInputStream(new ByteBufferInputStream(compressedPayload.getUncompressedPayload()));
+    }
     int replicaMetadataResponseInfoListCount = stream.readInt();
     ArrayList<ReplicaMetadataResponseInfo> replicaMetadataResponseInfoList =
         new ArrayList<ReplicaMetadataResponseInfo>(replicaMetadataResponseInfoListCount);
@@ -85,8 +145,11 @@ public class ReplicaMetadataResponse extends Response {
     if (error != ServerErrorCode.No_Error) {
       return new ReplicaMetadataResponse(correlationId, clientId, error);
     } else {
-      // ignore version for now
-      return new ReplicaMetadataResponse(correlationId, clientId, error, replicaMetadataResponseInfoList);
+      ReplicaMetadataResponse response =
+          new ReplicaMetadataResponse(correlationId, clientId, error, replicaMetadataResponseInfoList,
+              CompressionCodec.None, versionId);
+      response.compressedPayload = compressedPayload;
+      return response;
     }
   }
 
@@ -95,19 +158,32 @@ public class ReplicaMetadataResponse extends Response {
     if (bufferToSend == null) {
       bufferToSend = ByteBuffer.allocate((int) sizeInBytes());
       writeHeader();
-      if (replicaMetadataResponseInfoList != null) {
-        bufferToSend.putInt(replicaMetadataResponseInfoList.size());
-        for (ReplicaMetadataResponseInfo replicaMetadataResponseInfo : replicaMetadataResponseInfoList) {
-          replicaMetadataResponseInfo.writeTo(bufferToSend);
-        }
+      if (compressedPayload != null) {
+        bufferToSend.putShort(compressedPayloadVersion);
+        compressedPayload.writeTo(bufferToSend);
       } else {
-        bufferToSend.putInt(0);
+        writeReplicaMetadataResponseInfoList(bufferToSend);
       }
       bufferToSend.flip();
     }
     return bufferToSend.remaining() > 0 ? channel.write(bufferToSend) : 0;
   }
 
+  /**
+   * Writes the response infos of this response into the given buffer.
+   * @param buffer the buffer to write to.
+   */
+  private void writeReplicaMetadataResponseInfoList(ByteBuffer buffer) {
+    if (replicaMetadataResponseInfoList != null) {
+      buffer.putInt(replicaMetadataResponseInfoList.size());
+      for (ReplicaMetadataResponseInfo replicaMetadataResponseInfo : replicaMetadataResponseInfoList) {
+        replicaMetadataResponseInfo.writeTo(buffer);
+      }
+    } else {
+      buffer.putInt(0);
+    }
+  }
+
   @Override
   public boolean isSendComplete() {
     return bufferToSend != null && bufferToSend.remaining() == 0;
@@ -115,6 +191,9 @@ public class ReplicaMetadataResponse extends Response {
 
   @Override
   public long sizeInBytes() {
+    if (compressedPayload != null) {
+      return super.sizeInBytes() + Compressed_Payload_Version_Size + compressedPayload.sizeInBytes();
+    }
     return super.sizeInBytes() + Replica_Metadata_Response_Info_List_Size_In_Bytes
         + replicaMetadataResponseInfoListSizeInBytes;
   }
@@ -124,6 +203,11 @@ public class ReplicaMetadataResponse extends Response {
     StringBuilder sb = new StringBuilder();
     sb.append("ReplicaMetadataResponse[");
     sb.append("ServerErrorCode=").append(getError());
+    if (compressedPayload != null) {
+      sb.append(" CompressionCodec=").append(compressedPayload.getCodec());
+      sb.append(" UncompressedSize=").append(compressedPayload.getUncompressedSizeInBytes());
+      sb.append(" CompressedSize=").append(compressedPayload.getCompressedSizeInBytes());
+    }
     if (replicaMetadataResponseInfoList != null) {
       sb.append(" ReplicaMetadataResponseInfo ");
       for (ReplicaMetadataResponseInfo replicaMetadataResponseInfo : replicaMetadataResponseInfoList) {
@@ -134,6 +218,14 @@ public class ReplicaMetadataResponse extends Response {
     return sb.toString();
   }
 
+  /**
+   * @param request the {@link ReplicaMetadataRequest} to respond to.
+   * @return the version in which the response to the given request has to be created.
+   */
+  public static short getResponseVersion(ReplicaMetadataRequest request) {
+    return request.isCompactResponseAccepted() ? Replica_Metadata_Response_Version_V4 : currentVersion;
+  }
+
   /**
    * @return the current version in which new ReplicaMetadataResponse objects are created.
    */
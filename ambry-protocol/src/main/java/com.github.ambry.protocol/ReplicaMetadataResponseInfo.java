@@ -40,7 +40,15 @@ public class ReplicaMetadataResponseInfo {
   private static final int Error_Size_InBytes = 2;
   private static final int Remote_Replica_Lag_Size_In_Bytes = 8;
 
-  private ReplicaMetadataResponseInfo(PartitionId partitionId, FindToken findToken, List<MessageInfo> messageInfoList,
+  /**
+   * Creates a ReplicaMetadataResponseInfo to be sent in a {@link ReplicaMetadataResponse} of the given version.
+   * @param partitionId the partition of the replica.
+   * @param findToken the token to find the entries after the ones in this response.
+   * @param messageInfoList the entries found.
+   * @param remoteReplicaLagInBytes the lag of the replica that sent the request.
+   * @param replicaMetadataResponseVersion the version of the {@link ReplicaMetadataResponse} this is sent in.
+   */
+  public ReplicaMetadataResponseInfo(PartitionId partitionId, FindToken findToken, List<MessageInfo> messageInfoList,
       long remoteReplicaLagInBytes, short replicaMetadataResponseVersion) {
     if (partitionId == null || findToken == null || messageInfoList == null) {
       throw new IllegalArgumentException(
@@ -49,7 +57,8 @@ public class ReplicaMetadataResponseInfo {
     this.partitionId = partitionId;
     this.remoteReplicaLagInBytes = remoteReplicaLagInBytes;
     messageInfoListSerDe =
-        new MessageInfoListSerde(messageInfoList, getMessageInfoListVersion(replicaMetadataResponseVersion));
+        new MessageInfoListSerde(messageInfoList, getMessageInfoListVersion(replicaMetadataResponseVersion),
+            partitionId);
     messageInfoListSize = messageInfoListSerDe.getMessageInfoListSize();
     this.token = findToken;
     this.errorCode = ServerErrorCode.No_Error;
@@ -101,7 +110,7 @@ public class ReplicaMetadataResponseInfo {
     } else {
       FindToken token = factory.getFindToken(stream);
       List<MessageInfo> messageInfoList = MessageInfoListSerde.deserializeMessageInfoList(stream, clusterMap,
-          getMessageInfoListVersion(replicaMetadataResponseVersion));
+          getMessageInfoListVersion(replicaMetadataResponseVersion), partitionId);
       long remoteReplicaLag = stream.readLong();
       return new ReplicaMetadataResponseInfo(partitionId, token, messageInfoList, remoteReplicaLag,
           replicaMetadataResponseVersion);
@@ -147,6 +156,8 @@ public class ReplicaMetadataResponseInfo {
         return MessageInfoListSerde.MessageInfoListVersion_V1;
       case ReplicaMetadataResponse.Replica_Metadata_Response_Version_V2:
         return MessageInfoListSerde.MessageInfoListVersion_V2;
+      case ReplicaMetadataResponse.Replica_Metadata_Response_Version_V4:
+        return MessageInfoListSerde.MessageInfoListVersion_V3;
       default:
         throw new IllegalArgumentException(
             "Unknown ReplicaMetadataResponse version encountered: " + replicaMetadataResponseVersion);
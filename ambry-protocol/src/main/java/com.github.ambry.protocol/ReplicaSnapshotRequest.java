@@ -0,0 +1,85 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.protocol;
+
+import com.github.ambry.clustermap.ClusterMap;
+import com.github.ambry.clustermap.PartitionId;
+import com.github.ambry.utils.Utils;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+
+/**
+ * Request for the list of files of the snapshot of a replica, which a new replica of the partition can be bootstrapped
+ * from.
+ */
+public class ReplicaSnapshotRequest extends RequestOrResponse {
+  private final PartitionId partitionId;
+
+  private static final short Replica_Snapshot_Request_Version_V1 = 1;
+
+  public ReplicaSnapshotRequest(int correlationId, String clientId, PartitionId partitionId) {
+    super(RequestOrResponseType.ReplicaSnapshotRequest, Replica_Snapshot_Request_Version_V1, correlationId, clientId);
+    if (partitionId == null) {
+      throw new IllegalArgumentException("partitionId cannot be null");
+    }
+    this.partitionId = partitionId;
+  }
+
+  public static ReplicaSnapshotRequest readFrom(DataInputStream stream, ClusterMap clusterMap) throws IOException {
+    Short versionId = stream.readShort();
+    int correlationId = stream.readInt();
+    String clientId = Utils.readIntString(stream);
+    PartitionId partitionId = clusterMap.getPartitionIdFromStream(stream);
+    return new ReplicaSnapshotRequest(correlationId, clientId, partitionId);
+  }
+
+  public PartitionId getPartitionId() {
+    return partitionId;
+  }
+
+  @Override
+  public long writeTo(WritableByteChannel channel) throws IOException {
+    if (bufferToSend == null) {
+      bufferToSend = ByteBuffer.allocate((int) sizeInBytes());
+      writeHeader();
+      bufferToSend.put(partitionId.getBytes());
+      bufferToSend.flip();
+    }
+    return bufferToSend.remaining() > 0 ? channel.write(bufferToSend) : 0;
+  }
+
+  @Override
+  public boolean isSendComplete() {
+    return bufferToSend != null && bufferToSend.remaining() == 0;
+  }
+
+  @Override
+  public long sizeInBytes() {
+    return super.sizeInBytes() + partitionId.getBytes().length;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("ReplicaSnapshotRequest[");
+    sb.append("PartitionId=").append(partitionId);
+    sb.append(", ").append("ClientId=").append(clientId);
+    sb.append(", ").append("CorrelationId=").append(correlationId);
+    sb.append("]");
+    return sb.toString();
+  }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.protocol;
+
+import com.github.ambry.commons.ServerErrorCode;
+import com.github.ambry.store.FindToken;
+import com.github.ambry.store.FindTokenFactory;
+import com.github.ambry.store.StoreFileInfo;
+import com.github.ambry.utils.Utils;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * The response for a {@link ReplicaSnapshotRequest}. It has the names, sizes and checksums of the files of the
+ * snapshot, and the token from which the replica that downloads them can continue replicating from the replica that
+ * sent them. A snapshot with no files has no token.
+ */
+public class ReplicaSnapshotResponse extends Response {
+  private final List<StoreFileInfo> files;
+  private final FindToken findToken;
+  private final int filesSizeInBytes;
+
+  private static final int File_Count_Size_In_Bytes = 4;
+  private static final int File_Name_Size_In_Bytes = 4;
+  private static final int File_Size_Size_In_Bytes = 8;
+  private static final int File_Crc_Size_In_Bytes = 8;
+  private static final short Replica_Snapshot_Response_Version_V1 = 1;
+
+  public ReplicaSnapshotResponse(int correlationId, String clientId, ServerErrorCode error, List<StoreFileInfo> files,
+      FindToken findToken) {
+    super(RequestOrResponseType.ReplicaSnapshotResponse, Replica_Snapshot_Response_Version_V1, correlationId, clientId,
+        error);
+    if ((files.size() > 0) != (findToken != null)) {
+      throw new IllegalArgumentException("A snapshot has a token if and only if it has files");
+    }
+    this.files = files;
+    this.findToken = findToken;
+    int size = 0;
+    for (StoreFileInfo file : files) {
+      size += File_Name_Size_In_Bytes + file.getFileName().getBytes().length + File_Size_Size_In_Bytes
+          + File_Crc_Size_In_Bytes;
+    }
+    this.filesSizeInBytes = size;
+  }
+
+  public ReplicaSnapshotResponse(int correlationId, String clientId, ServerErrorCode error) {
+    this(correlationId, clientId, error, Collections.<StoreFileInfo>emptyList(), null);
+  }
+
+  public static ReplicaSnapshotResponse readFrom(DataInputStream stream, FindTokenFactory factory) throws IOException {
+    RequestOrResponseType type = RequestOrResponseType.values()[stream.readShort()];
+    if (type != RequestOrResponseType.ReplicaSnapshotResponse) {
+      throw new IllegalArgumentException("The type of request response is not compatible");
+    }
+    Short versionId = stream.readShort();
+    int correlationId = stream.readInt();
+    String clientId = Utils.readIntString(stream);
+    ServerErrorCode error = ServerErrorCode.values()[stream.readShort()];
+    int fileCount = stream.readInt();
+    List<StoreFileInfo> files = new ArrayList<>(fileCount);
+    for (int i = 0; i < fileCount; i++) {
+      String fileName = Utils.readIntString(stream);
+      long sizeInBytes = stream.readLong();
+      files.add(new StoreFileInfo(fileName, sizeInBytes, stream.readLong()));
+    }
+    FindToken findToken = fileCount > 0 ? factory.getFindToken(stream) : null;
+    return new ReplicaSnapshotResponse(correlationId, clientId, error, files, findToken);
+  }
+
+  /**
+   * @return the {@link StoreFileInfo}s of the files of the snapshot.
+   */
+  public List<StoreFileInfo> getFiles() {
+    return files;
+  }
+
+  /**
+   * @return the {@link FindToken} to continue replicating from once the files are downloaded, or {@code null} if the
+   * snapshot has no files.
+   */
+  public FindToken getFindToken() {
+    return findToken;
+  }
+
+  @Override
+  public long writeTo(WritableByteChannel channel) throws IOException {
+    if (bufferToSend == null) {
+      bufferToSend = ByteBuffer.allocate((int) sizeInBytes());
+      writeHeader();
+      bufferToSend.putInt(files.size());
+      for (StoreFileInfo file : files) {
+        bufferToSend.putInt(file.getFileName().getBytes().length);
+        bufferToSend.put(file.getFileName().getBytes());
+        bufferToSend.putLong(file.getSizeInBytes());
+        bufferToSend.putLong(file.getCrc());
+      }
+      if (findToken != null) {
+        bufferToSend.put(findToken.toBytes());
+      }
+      bufferToSend.flip();
+    }
+    return bufferToSend.remaining() > 0 ? channel.write(bufferToSend) : 0;
+  }
+
+  @Override
+  public long sizeInBytes() {
+    return super.sizeInBytes() + File_Count_Size_In_Bytes + filesSizeInBytes + (findToken == null ? 0
+        : findToken.toBytes().length);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("ReplicaSnapshotResponse[");
+    sb.append("ServerErrorCode=").append(getError());
+    sb.append(", ").append("FileCount=").append(files.size());
+    if (findToken != null) {
+      sb.append(", ").append("Token=").append(findToken);
+    }
+    sb.append("]");
+    return sb.toString();
+  }
+}
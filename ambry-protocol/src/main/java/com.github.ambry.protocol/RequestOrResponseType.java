@@ -20,5 +20,6 @@ package com.github.ambry.protocol;
 public enum RequestOrResponseType {
   PutRequest, PutResponse, GetRequest, GetResponse, DeleteRequest, DeleteResponse, TTLRequest, // Unsupported
   TTLResponse, // Unsupported
-  ReplicaMetadataRequest, ReplicaMetadataResponse
+  ReplicaMetadataRequest, ReplicaMetadataResponse, BatchDeleteRequest, BatchDeleteResponse,
+  ReplicaSnapshotRequest, ReplicaSnapshotResponse, ReplicaFileChunkRequest, ReplicaFileChunkResponse
 }
\ No newline at end of file
@@ -15,14 +15,17 @@ package com.github.ambry.protocol;
 
 import com.github.ambry.clustermap.MockClusterMap;
 import com.github.ambry.clustermap.MockPartitionId;
+import com.github.ambry.clustermap.PartitionId;
 import com.github.ambry.commons.BlobId;
 import com.github.ambry.commons.ServerErrorCode;
 import com.github.ambry.messageformat.BlobProperties;
 import com.github.ambry.messageformat.BlobType;
 import com.github.ambry.messageformat.MessageFormatFlags;
+import com.github.ambry.network.Send;
 import com.github.ambry.store.FindToken;
 import com.github.ambry.store.FindTokenFactory;
 import com.github.ambry.store.MessageInfo;
+import com.github.ambry.store.StoreFileInfo;
 import com.github.ambry.utils.ByteBufferChannel;
 import com.github.ambry.utils.ByteBufferInputStream;
 import com.github.ambry.utils.ByteBufferOutputStream;
@@ -35,6 +38,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 import org.junit.Assert;
@@ -278,6 +282,120 @@ public class RequestResponseTest {
         .getExpirationTimeInMs(), 1000);
   }
 
+  /**
+   * Tests that a GetRequest that accepts compression is serialized as V3 and that a compressed GetResponse is
+   * decompressed correctly.
+   * @throws IOException
+   */
+  @Test
+  public void compressedGetRequestResponseTest() throws IOException {
+    MockClusterMap clusterMap = new MockClusterMap();
+    BlobId id1 = new BlobId(clusterMap.getWritablePartitionIds().get(0));
+    ArrayList<BlobId> blobIdList = new ArrayList<BlobId>();
+    blobIdList.add(id1);
+    ArrayList<PartitionRequestInfo> partitionRequestInfoList = new ArrayList<PartitionRequestInfo>();
+    partitionRequestInfoList.add(new PartitionRequestInfo(new MockPartitionId(), blobIdList));
+    GetRequest getRequest =
+        new GetRequest(1234, "clientId", MessageFormatFlags.All, partitionRequestInfoList, GetOption.Include_All,
+            CompressionCodec.Lz4_Block);
+    Assert.assertEquals("Unexpected request version", 3, getRequest.getVersionId());
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    WritableByteChannel writableByteChannel = Channels.newChannel(outputStream);
+    do {
+      getRequest.writeTo(writableByteChannel);
+    } while (!getRequest.isSendComplete());
+    Assert.assertEquals("Unexpected request size", getRequest.sizeInBytes(), outputStream.size());
+    DataInputStream requestStream = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+    requestStream.readLong(); // read length
+    requestStream.readShort(); // read type
+    GetRequest deserializedGetRequest = GetRequest.readFrom(requestStream, clusterMap);
+    Assert.assertEquals(GetOption.Include_All, deserializedGetRequest.getGetOption());
+    Assert.assertEquals(CompressionCodec.Lz4_Block, deserializedGetRequest.getAcceptedCompressionCodec());
+    Assert.assertEquals(deserializedGetRequest.getPartitionInfoList().get(0).getBlobIds().get(0), id1);
+
+    // compressible messages
+    byte[] messages = new byte[10000];
+    for (int i = 0; i < messages.length; i++) {
+      messages[i] = (byte) (i % 100);
+    }
+    MessageInfo messageInfo = new MessageInfo(id1, messages.length, 1000);
+    ArrayList<MessageInfo> messageInfoList = new ArrayList<MessageInfo>();
+    messageInfoList.add(messageInfo);
+    List<PartitionResponseInfo> partitionResponseInfoList = new ArrayList<PartitionResponseInfo>();
+    partitionResponseInfoList.add(
+        new PartitionResponseInfo(clusterMap.getWritablePartitionIds().get(0), messageInfoList));
+    GetResponse response =
+        new GetResponse(1234, "clientId", partitionResponseInfoList, new ByteArraySend(messages),
+            ServerErrorCode.No_Error, deserializedGetRequest.getAcceptedCompressionCodec());
+    CompressedPayload compressedPayload = response.getCompressedPayload();
+    Assert.assertNotNull("Response should be compressed", compressedPayload);
+    Assert.assertEquals(CompressionCodec.Lz4_Block, compressedPayload.getCodec());
+    Assert.assertTrue("Payload should have been compressed",
+        compressedPayload.getCompressedSizeInBytes() < compressedPayload.getUncompressedSizeInBytes());
+    outputStream.reset();
+    do {
+      response.writeTo(writableByteChannel);
+    } while (!response.isSendComplete());
+    Assert.assertEquals("Unexpected response size", response.sizeInBytes(), outputStream.size());
+    requestStream = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+    requestStream.readLong(); // read size
+    GetResponse deserializedGetResponse = GetResponse.readFrom(requestStream, clusterMap);
+    Assert.assertEquals(deserializedGetResponse.getCorrelationId(), 1234);
+    Assert.assertEquals(deserializedGetResponse.getError(), ServerErrorCode.No_Error);
+    Assert.assertEquals(compressedPayload.getUncompressedSizeInBytes(),
+        deserializedGetResponse.getCompressedPayload().getUncompressedSizeInBytes());
+    MessageInfo deserializedMessageInfo =
+        deserializedGetResponse.getPartitionResponseInfoList().get(0).getMessageInfoList().get(0);
+    Assert.assertEquals(id1, deserializedMessageInfo.getStoreKey());
+    Assert.assertEquals(messages.length, deserializedMessageInfo.getSize());
+    byte[] deserializedMessages = new byte[messages.length];
+    new DataInputStream(deserializedGetResponse.getInputStream()).readFully(deserializedMessages);
+    Assert.assertArrayEquals("Messages do not match", messages, deserializedMessages);
+    Assert.assertEquals("There should be no bytes after the messages", -1,
+        deserializedGetResponse.getInputStream().read());
+
+    // a response that does not accept compression is the same as before
+    response = new GetResponse(1234, "clientId", partitionResponseInfoList, new ByteArraySend(messages),
+        ServerErrorCode.No_Error, CompressionCodec.None);
+    Assert.assertNull("Response should not be compressed", response.getCompressedPayload());
+    Assert.assertEquals(GetResponse.getCurrentVersion(), response.getVersionId());
+  }
+
+  /**
+   * Tests that {@link CompressedPayload#readFrom(DataInputStream)} fails with an {@link IOException} on a payload with
+   * a corrupt envelope.
+   * @throws IOException
+   */
+  @Test
+  public void corruptCompressedPayloadTest() throws IOException {
+    byte[] bytes = new byte[1000];
+    new Random().nextBytes(bytes);
+    CompressedPayload compressedPayload = CompressedPayload.compress(ByteBuffer.wrap(bytes), CompressionCodec.None);
+    ByteBuffer serialized = ByteBuffer.allocate((int) compressedPayload.sizeInBytes());
+    compressedPayload.writeTo(serialized);
+    CompressedPayload deserialized =
+        CompressedPayload.readFrom(new DataInputStream(new ByteArrayInputStream(serialized.array())));
+    Assert.assertEquals("Unexpected payload", ByteBuffer.wrap(bytes), deserialized.getUncompressedPayload());
+
+    // unknown codecs, negative sizes and a mismatched uncompressed size.
+    short[] codecs = {(short) CompressionCodec.values().length, -1, (short) CompressionCodec.Lz4_Block.ordinal(),
+        (short) CompressionCodec.None.ordinal(), (short) CompressionCodec.None.ordinal()};
+    int[] uncompressedSizes = {bytes.length, bytes.length, -1, bytes.length, bytes.length + 1};
+    int[] payloadSizes = {bytes.length, bytes.length, bytes.length, -1, bytes.length};
+    for (int i = 0; i < codecs.length; i++) {
+      serialized.clear();
+      serialized.putShort(codecs[i]);
+      serialized.putInt(uncompressedSizes[i]);
+      serialized.putInt(payloadSizes[i]);
+      try {
+        CompressedPayload.readFrom(new DataInputStream(new ByteArrayInputStream(serialized.array())));
+        Assert.fail("Reading a corrupt payload should have failed");
+      } catch (IOException e) {
+        // expected. Nothing to do.
+      }
+    }
+  }
+
   @Test
   public void deleteRequestResponseTest() throws IOException {
     MockClusterMap clusterMap = new MockClusterMap();
@@ -306,6 +424,72 @@ public class RequestResponseTest {
     Assert.assertEquals(deserializedDeleteResponse.getError(), ServerErrorCode.No_Error);
   }
 
+  @Test
+  public void batchDeleteRequestResponseTest() throws IOException {
+    MockClusterMap clusterMap = new MockClusterMap();
+    PartitionId partitionId = clusterMap.getWritablePartitionIds().get(0);
+    List<BlobId> blobIds = new ArrayList<BlobId>();
+    for (int i = 0; i < 5; i++) {
+      blobIds.add(new BlobId(partitionId));
+    }
+    BatchDeleteRequest batchDeleteRequest = new BatchDeleteRequest(1234, "client", blobIds);
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    WritableByteChannel writableByteChannel = Channels.newChannel(outputStream);
+    do {
+      batchDeleteRequest.writeTo(writableByteChannel);
+    } while (!batchDeleteRequest.isSendComplete());
+    Assert.assertEquals(batchDeleteRequest.sizeInBytes(), outputStream.size());
+    DataInputStream requestStream = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+    requestStream.readLong(); // read length
+    Assert.assertEquals(RequestOrResponseType.BatchDeleteRequest,
+        RequestOrResponseType.values()[requestStream.readShort()]);
+    BatchDeleteRequest deserializedBatchDeleteRequest = BatchDeleteRequest.readFrom(requestStream, clusterMap);
+    Assert.assertEquals(deserializedBatchDeleteRequest.getClientId(), "client");
+    Assert.assertEquals(deserializedBatchDeleteRequest.getCorrelationId(), 1234);
+    Assert.assertEquals(deserializedBatchDeleteRequest.getBlobIds(), blobIds);
+    Assert.assertEquals(deserializedBatchDeleteRequest.getPartitionId(), partitionId);
+
+    List<ServerErrorCode> blobErrors = new ArrayList<ServerErrorCode>();
+    blobErrors.add(ServerErrorCode.No_Error);
+    blobErrors.add(ServerErrorCode.Blob_Not_Found);
+    blobErrors.add(ServerErrorCode.Blob_Deleted);
+    blobErrors.add(ServerErrorCode.No_Error);
+    blobErrors.add(ServerErrorCode.Blob_Expired);
+    BatchDeleteResponse response = new BatchDeleteResponse(1234, "client", ServerErrorCode.No_Error, blobErrors);
+    outputStream.reset();
+    do {
+      response.writeTo(writableByteChannel);
+    } while (!response.isSendComplete());
+    Assert.assertEquals(response.sizeInBytes(), outputStream.size());
+    requestStream = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+    requestStream.readLong(); // read size
+    BatchDeleteResponse deserializedBatchDeleteResponse = BatchDeleteResponse.readFrom(requestStream);
+    Assert.assertEquals(deserializedBatchDeleteResponse.getCorrelationId(), 1234);
+    Assert.assertEquals(deserializedBatchDeleteResponse.getError(), ServerErrorCode.No_Error);
+    Assert.assertEquals(deserializedBatchDeleteResponse.getBlobErrors(), blobErrors);
+
+    // a response with only an overall error.
+    response = new BatchDeleteResponse(1234, "client", ServerErrorCode.Disk_Unavailable);
+    outputStream.reset();
+    do {
+      response.writeTo(writableByteChannel);
+    } while (!response.isSendComplete());
+    requestStream = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+    requestStream.readLong(); // read size
+    deserializedBatchDeleteResponse = BatchDeleteResponse.readFrom(requestStream);
+    Assert.assertEquals(deserializedBatchDeleteResponse.getError(), ServerErrorCode.Disk_Unavailable);
+    Assert.assertEquals(0, deserializedBatchDeleteResponse.getBlobErrors().size());
+
+    // blob ids from different partitions are not allowed in the same request.
+    blobIds.add(new BlobId(clusterMap.getWritablePartitionIds().get(1)));
+    try {
+      new BatchDeleteRequest(1234, "client", blobIds);
+      Assert.fail("Request with blob ids from different partitions should have failed");
+    } catch (IllegalArgumentException e) {
+      // expected. Nothing to do.
+    }
+  }
+
   @Test
   public void replicaMetadataRequestTest() throws IOException {
     MockClusterMap clusterMap = new MockClusterMap();
@@ -369,4 +553,289 @@ public class RequestResponseTest {
     Assert.assertEquals(deserializedDeleteResponse.getCorrelationId(), 1234);
     Assert.assertEquals(deserializedDeleteResponse.getError(), ServerErrorCode.No_Error);
   }
+
+  /**
+   * Tests that a ReplicaMetadataRequest that accepts compression is serialized as V2 and that a compressed
+   * ReplicaMetadataResponse is decompressed correctly.
+   * @throws IOException
+   */
+  @Test
+  public void compressedReplicaMetadataRequestResponseTest() throws IOException {
+    MockClusterMap clusterMap = new MockClusterMap();
+    List<ReplicaMetadataRequestInfo> replicaMetadataRequestInfoList = new ArrayList<ReplicaMetadataRequestInfo>();
+    replicaMetadataRequestInfoList.add(
+        new ReplicaMetadataRequestInfo(new MockPartitionId(), new MockFindToken(0, 1000), "localhost", "path"));
+    ReplicaMetadataRequest request =
+        new ReplicaMetadataRequest(1, "id", replicaMetadataRequestInfoList, 1000, CompressionCodec.Lz4_Block, false);
+    ByteBuffer buffer = ByteBuffer.allocate((int) request.sizeInBytes());
+    ByteBufferOutputStream byteBufferOutputStream = new ByteBufferOutputStream(buffer);
+    do {
+      request.writeTo(Channels.newChannel(byteBufferOutputStream));
+    } while (!request.isSendComplete());
+    buffer.flip();
+    buffer.getLong();
+    buffer.getShort();
+    ReplicaMetadataRequest replicaMetadataRequestFromBytes =
+        ReplicaMetadataRequest.readFrom(new DataInputStream(new ByteBufferInputStream(buffer)), clusterMap,
+            new MockFindTokenFactory());
+    Assert.assertEquals(1000, replicaMetadataRequestFromBytes.getMaxTotalSizeOfEntriesInBytes());
+    Assert.assertEquals(CompressionCodec.Lz4_Block, replicaMetadataRequestFromBytes.getAcceptedCompressionCodec());
+
+    List<MessageInfo> messageInfoList = new ArrayList<MessageInfo>();
+    for (int i = 0; i < 50; i++) {
+      messageInfoList.add(new MessageInfo(new BlobId(clusterMap.getWritablePartitionIds().get(0)), 1000));
+    }
+    List<ReplicaMetadataResponseInfo> replicaMetadataResponseInfoList = new ArrayList<ReplicaMetadataResponseInfo>();
+    replicaMetadataResponseInfoList.add(
+        new ReplicaMetadataResponseInfo(clusterMap.getWritablePartitionIds().get(0), new MockFindToken(0, 1000),
+            messageInfoList, 1000));
+    ReplicaMetadataResponse response =
+        new ReplicaMetadataResponse(1234, "clientId", ServerErrorCode.No_Error, replicaMetadataResponseInfoList,
+            replicaMetadataRequestFromBytes.getAcceptedCompressionCodec());
+    Assert.assertNotNull("Response should be compressed", response.getCompressedPayload());
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    WritableByteChannel writableByteChannel = Channels.newChannel(outputStream);
+    do {
+      response.writeTo(writableByteChannel);
+    } while (!response.isSendComplete());
+    Assert.assertEquals("Unexpected response size", response.sizeInBytes(), outputStream.size());
+    DataInputStream responseStream = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+    responseStream.readLong(); // read size
+    ReplicaMetadataResponse deserializedResponse =
+        ReplicaMetadataResponse.readFrom(responseStream, new MockFindTokenFactory(), clusterMap);
+    Assert.assertEquals(1234, deserializedResponse.getCorrelationId());
+    Assert.assertEquals(ServerErrorCode.No_Error, deserializedResponse.getError());
+    Assert.assertNotNull("Response should be compressed", deserializedResponse.getCompressedPayload());
+    ReplicaMetadataResponseInfo deserializedResponseInfo =
+        deserializedResponse.getReplicaMetadataResponseInfoList().get(0);
+    Assert.assertEquals(1000, deserializedResponseInfo.getRemoteReplicaLagInBytes());
+    Assert.assertEquals(messageInfoList.size(), deserializedResponseInfo.getMessageInfoList().size());
+    for (int i = 0; i < messageInfoList.size(); i++) {
+      Assert.assertEquals(messageInfoList.get(i).getStoreKey(),
+          deserializedResponseInfo.getMessageInfoList().get(i).getStoreKey());
+    }
+  }
+
+  /**
+   * Tests that a ReplicaMetadataRequest that accepts the compact format is serialized as V3 and that the message infos
+   * of a compact ReplicaMetadataResponse are deserialized correctly.
+   * @throws IOException
+   */
+  @Test
+  public void compactReplicaMetadataRequestResponseTest() throws IOException {
+    MockClusterMap clusterMap = new MockClusterMap();
+    PartitionId partitionId = clusterMap.getWritablePartitionIds().get(0);
+    List<ReplicaMetadataRequestInfo> replicaMetadataRequestInfoList = new ArrayList<ReplicaMetadataRequestInfo>();
+    replicaMetadataRequestInfoList.add(
+        new ReplicaMetadataRequestInfo(partitionId, new MockFindToken(0, 1000), "localhost", "path"));
+    ReplicaMetadataRequest request =
+        new ReplicaMetadataRequest(1, "id", replicaMetadataRequestInfoList, 1000, CompressionCodec.None, true);
+    Assert.assertEquals("Unexpected request version", 3, request.getVersionId());
+    ByteBuffer buffer = ByteBuffer.allocate((int) request.sizeInBytes());
+    ByteBufferOutputStream byteBufferOutputStream = new ByteBufferOutputStream(buffer);
+    do {
+      request.writeTo(Channels.newChannel(byteBufferOutputStream));
+    } while (!request.isSendComplete());
+    buffer.flip();
+    buffer.getLong();
+    buffer.getShort();
+    ReplicaMetadataRequest requestFromBytes =
+        ReplicaMetadataRequest.readFrom(new DataInputStream(new ByteBufferInputStream(buffer)), clusterMap,
+            new MockFindTokenFactory());
+    Assert.assertTrue("Compact response should be accepted", requestFromBytes.isCompactResponseAccepted());
+    Assert.assertEquals(CompressionCodec.None, requestFromBytes.getAcceptedCompressionCodec());
+    Assert.assertEquals(1000, requestFromBytes.getMaxTotalSizeOfEntriesInBytes());
+
+    long expirationTimeInMs = System.currentTimeMillis();
+    List<MessageInfo> messageInfoList = new ArrayList<MessageInfo>();
+    for (int i = 0; i < 20; i++) {
+      long expiration = i % 3 == 0 ? Utils.Infinite_Time : expirationTimeInMs + (i % 2 == 0 ? i : -i) * 1000;
+      Long crc = i % 4 == 0 ? null : (long) i * 1000003;
+      messageInfoList.add(new MessageInfo(new BlobId(partitionId), i * 100000, i % 5 == 0, expiration, crc));
+    }
+    // keys that cannot be sent in the compact form.
+    messageInfoList.add(new MessageInfo(new BlobId(clusterMap.getWritablePartitionIds().get(1)), 1000));
+    messageInfoList.add(new MessageInfo(new BlobId(partitionId, "not-a-uuid"), 1000));
+    messageInfoList.add(new MessageInfo(new BlobId(partitionId, "0-0-0-0-0"), 1000));
+
+    short responseVersion = ReplicaMetadataResponse.getResponseVersion(requestFromBytes);
+    List<ReplicaMetadataResponseInfo> replicaMetadataResponseInfoList = new ArrayList<ReplicaMetadataResponseInfo>();
+    replicaMetadataResponseInfoList.add(
+        new ReplicaMetadataResponseInfo(partitionId, new MockFindToken(0, 1000), messageInfoList, 1000,
+            responseVersion));
+    replicaMetadataResponseInfoList.add(
+        new ReplicaMetadataResponseInfo(clusterMap.getWritablePartitionIds().get(1), ServerErrorCode.Disk_Unavailable));
+    ReplicaMetadataResponse response =
+        new ReplicaMetadataResponse(1234, "clientId", ServerErrorCode.No_Error, replicaMetadataResponseInfoList,
+            requestFromBytes.getAcceptedCompressionCodec(), responseVersion);
+    Assert.assertNull("Response should not be compressed", response.getCompressedPayload());
+    ReplicaMetadataResponse uncompactResponse =
+        new ReplicaMetadataResponse(1234, "clientId", ServerErrorCode.No_Error,
+            Collections.singletonList(new ReplicaMetadataResponseInfo(partitionId, new MockFindToken(0, 1000),
+                messageInfoList, 1000)));
+    Assert.assertTrue("Compact response should be smaller",
+        response.sizeInBytes() < uncompactResponse.sizeInBytes());
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    WritableByteChannel writableByteChannel = Channels.newChannel(outputStream);
+    do {
+      response.writeTo(writableByteChannel);
+    } while (!response.isSendComplete());
+    Assert.assertEquals("Unexpected response size", response.sizeInBytes(), outputStream.size());
+    DataInputStream responseStream = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+    responseStream.readLong(); // read size
+    ReplicaMetadataResponse deserializedResponse =
+        ReplicaMetadataResponse.readFrom(responseStream, new MockFindTokenFactory(), clusterMap);
+    Assert.assertEquals(responseVersion, deserializedResponse.getVersionId());
+    Assert.assertEquals(2, deserializedResponse.getReplicaMetadataResponseInfoList().size());
+    Assert.assertEquals(ServerErrorCode.Disk_Unavailable,
+        deserializedResponse.getReplicaMetadataResponseInfoList().get(1).getError());
+    ReplicaMetadataResponseInfo deserializedResponseInfo =
+        deserializedResponse.getReplicaMetadataResponseInfoList().get(0);
+    Assert.assertEquals(1000, deserializedResponseInfo.getRemoteReplicaLagInBytes());
+    List<MessageInfo> deserializedMessageInfoList = deserializedResponseInfo.getMessageInfoList();
+    Assert.assertEquals(messageInfoList.size(), deserializedMessageInfoList.size());
+    for (int i = 0; i < messageInfoList.size(); i++) {
+      MessageInfo expected = messageInfoList.get(i);
+      MessageInfo actual = deserializedMessageInfoList.get(i);
+      Assert.assertEquals("Key mismatch", expected.getStoreKey(), actual.getStoreKey());
+      Assert.assertEquals("Size mismatch", expected.getSize(), actual.getSize());
+      Assert.assertEquals("Deleted mismatch", expected.isDeleted(), actual.isDeleted());
+      Assert.assertEquals("Expiration time mismatch", expected.getExpirationTimeInMs(),
+          actual.getExpirationTimeInMs());
+      Assert.assertEquals("Crc mismatch", expected.getCrc(), actual.getCrc());
+    }
+  }
+
+  /**
+   * Tests serialization and deserialization of {@link ReplicaSnapshotRequest} and {@link ReplicaSnapshotResponse}.
+   * @throws IOException
+   */
+  @Test
+  public void replicaSnapshotRequestResponseTest() throws IOException {
+    MockClusterMap clusterMap = new MockClusterMap();
+    PartitionId partitionId = clusterMap.getWritablePartitionIds().get(0);
+    ReplicaSnapshotRequest request = new ReplicaSnapshotRequest(1, "client", partitionId);
+    DataInputStream requestStream = serialize(request);
+    Assert.assertEquals(RequestOrResponseType.ReplicaSnapshotRequest,
+        RequestOrResponseType.values()[requestStream.readShort()]);
+    ReplicaSnapshotRequest deserializedRequest = ReplicaSnapshotRequest.readFrom(requestStream, clusterMap);
+    Assert.assertEquals(1, deserializedRequest.getCorrelationId());
+    Assert.assertEquals("client", deserializedRequest.getClientId());
+    Assert.assertEquals(partitionId, deserializedRequest.getPartitionId());
+
+    List<StoreFileInfo> files = new ArrayList<StoreFileInfo>();
+    files.add(new StoreFileInfo("0_index", 1000, 1));
+    files.add(new StoreFileInfo("0_bloom", 100, 2));
+    files.add(new StoreFileInfo("0_0_log", 10000, 3));
+    ReplicaSnapshotResponse response =
+        new ReplicaSnapshotResponse(1234, "client", ServerErrorCode.No_Error, files, new MockFindToken(1, 10000));
+    ReplicaSnapshotResponse deserializedResponse =
+        ReplicaSnapshotResponse.readFrom(serialize(response), new MockFindTokenFactory());
+    Assert.assertEquals(1234, deserializedResponse.getCorrelationId());
+    Assert.assertEquals(ServerErrorCode.No_Error, deserializedResponse.getError());
+    Assert.assertEquals(files.size(), deserializedResponse.getFiles().size());
+    for (int i = 0; i < files.size(); i++) {
+      Assert.assertEquals("File name mismatch", files.get(i).getFileName(),
+          deserializedResponse.getFiles().get(i).getFileName());
+      Assert.assertEquals("File size mismatch", files.get(i).getSizeInBytes(),
+          deserializedResponse.getFiles().get(i).getSizeInBytes());
+      Assert.assertEquals("File crc mismatch", files.get(i).getCrc(), deserializedResponse.getFiles().get(i).getCrc());
+    }
+    MockFindToken token = (MockFindToken) deserializedResponse.getFindToken();
+    Assert.assertEquals(1, token.getIndex());
+    Assert.assertEquals(10000, token.getBytesRead());
+
+    // a response without files has no token.
+    response = new ReplicaSnapshotResponse(1234, "client", ServerErrorCode.Partition_Unknown);
+    deserializedResponse = ReplicaSnapshotResponse.readFrom(serialize(response), new MockFindTokenFactory());
+    Assert.assertEquals(ServerErrorCode.Partition_Unknown, deserializedResponse.getError());
+    Assert.assertEquals(0, deserializedResponse.getFiles().size());
+    Assert.assertNull(deserializedResponse.getFindToken());
+    try {
+      new ReplicaSnapshotResponse(1234, "client", ServerErrorCode.No_Error, files, null);
+      Assert.fail("Response with files but no token should have failed");
+    } catch (IllegalArgumentException e) {
+      // expected. Nothing to do.
+    }
+  }
+
+  /**
+   * Tests serialization and deserialization of {@link ReplicaFileChunkRequest} and {@link ReplicaFileChunkResponse}.
+   * @throws IOException
+   */
+  @Test
+  public void replicaFileChunkRequestResponseTest() throws IOException {
+    MockClusterMap clusterMap = new MockClusterMap();
+    PartitionId partitionId = clusterMap.getWritablePartitionIds().get(0);
+    ReplicaFileChunkRequest request = new ReplicaFileChunkRequest(1, "client", partitionId, "0_0_log", 4096, 1024);
+    DataInputStream requestStream = serialize(request);
+    Assert.assertEquals(RequestOrResponseType.ReplicaFileChunkRequest,
+        RequestOrResponseType.values()[requestStream.readShort()]);
+    ReplicaFileChunkRequest deserializedRequest = ReplicaFileChunkRequest.readFrom(requestStream, clusterMap);
+    Assert.assertEquals(partitionId, deserializedRequest.getPartitionId());
+    Assert.assertEquals("0_0_log", deserializedRequest.getFileName());
+    Assert.assertEquals(4096, deserializedRequest.getOffset());
+    Assert.assertEquals(1024, deserializedRequest.getChunkSizeInBytes());
+
+    byte[] chunk = new byte[1024];
+    random.nextBytes(chunk);
+    ReplicaFileChunkResponse response =
+        new ReplicaFileChunkResponse(1234, "client", ServerErrorCode.No_Error, new ByteArraySend(chunk));
+    ReplicaFileChunkResponse deserializedResponse = ReplicaFileChunkResponse.readFrom(serialize(response));
+    Assert.assertEquals(1234, deserializedResponse.getCorrelationId());
+    Assert.assertEquals(ServerErrorCode.No_Error, deserializedResponse.getError());
+    Assert.assertEquals(chunk.length, deserializedResponse.getChunkSizeInBytes());
+    byte[] chunkRead = new byte[chunk.length];
+    new DataInputStream(deserializedResponse.getInputStream()).readFully(chunkRead);
+    Assert.assertArrayEquals(chunk, chunkRead);
+
+    response = new ReplicaFileChunkResponse(1234, "client", ServerErrorCode.Blob_Not_Found);
+    deserializedResponse = ReplicaFileChunkResponse.readFrom(serialize(response));
+    Assert.assertEquals(ServerErrorCode.Blob_Not_Found, deserializedResponse.getError());
+    Assert.assertEquals(0, deserializedResponse.getChunkSizeInBytes());
+  }
+
+  /**
+   * Serializes the given {@link Send} and returns a stream of the serialized bytes after the size.
+   * @param send the {@link Send} to serialize.
+   * @return a stream positioned after the size of the serialized {@link Send}.
+   * @throws IOException
+   */
+  private DataInputStream serialize(Send send) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    WritableByteChannel writableByteChannel = Channels.newChannel(outputStream);
+    do {
+      send.writeTo(writableByteChannel);
+    } while (!send.isSendComplete());
+    DataInputStream stream = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+    Assert.assertEquals("Size mismatch", send.sizeInBytes(), stream.readLong());
+    return stream;
+  }
+
+  /**
+   * A {@link Send} that sends the bytes of an array.
+   */
+  private static class ByteArraySend implements Send {
+    private final ByteBuffer buffer;
+
+    ByteArraySend(byte[] bytes) {
+      buffer = ByteBuffer.wrap(bytes);
+    }
+
+    @Override
+    public long writeTo(WritableByteChannel channel) throws IOException {
+      return channel.write(buffer);
+    }
+
+    @Override
+    public boolean isSendComplete() {
+      return !buffer.hasRemaining();
+    }
+
+    @Override
+    public long sizeInBytes() {
+      return buffer.capacity();
+    }
+  }
 }
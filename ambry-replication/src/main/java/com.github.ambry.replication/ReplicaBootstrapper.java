@@ -0,0 +1,333 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import com.github.ambry.clustermap.DataNodeId;
+import com.github.ambry.clustermap.PartitionId;
+import com.github.ambry.commons.ServerErrorCode;
+import com.github.ambry.config.ReplicationConfig;
+import com.github.ambry.network.ChannelOutput;
+import com.github.ambry.network.ConnectedChannel;
+import com.github.ambry.network.ConnectionPool;
+import com.github.ambry.network.ConnectionPoolTimeoutException;
+import com.github.ambry.protocol.ReplicaFileChunkRequest;
+import com.github.ambry.protocol.ReplicaFileChunkResponse;
+import com.github.ambry.protocol.ReplicaSnapshotRequest;
+import com.github.ambry.protocol.ReplicaSnapshotResponse;
+import com.github.ambry.store.FindTokenFactory;
+import com.github.ambry.store.StorageManager;
+import com.github.ambry.store.StoreException;
+import com.github.ambry.store.StoreFileInfo;
+import com.github.ambry.utils.ByteBufferInputStream;
+import com.github.ambry.utils.SystemTime;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Bootstraps empty stores from one of their peer replicas. Instead of replicating the blobs of the peer one at a time,
+ * the sealed log segments of the peer and the index segments that refer to them are downloaded in chunks, which the
+ * peer sends directly from its files. Once the files are verified and the store is restarted with them, the token of
+ * the peer is set to the end of the downloaded segments so that replication from the peer continues from there. Other
+ * peers continue from their existing tokens, and the blobs that were downloaded are skipped when they are replicated
+ * from them again.
+ * <p/>
+ * An empty store is taken out of serving and replication into it is paused by {@link #prepare(PartitionInfo)} before
+ * the replica threads start. {@link #bootstrap(PartitionInfo)} then runs in the background and puts the store
+ * back into serving and resumes replication into it once it is done, whether the bootstrap succeeded or not. The
+ * bootstraps of stores on different mount paths may run concurrently.
+ */
+class ReplicaBootstrapper {
+  private static final String Bootstrap_Dir_Name = "bootstrap";
+  private static final int Copy_Buffer_Size = 64 * 1024;
+
+  private final ReplicationConfig replicationConfig;
+  private final StorageManager storageManager;
+  private final ConnectionPool connectionPool;
+  private final FindTokenFactory findTokenFactory;
+  private final DataNodeId dataNodeId;
+  private final ReplicationMetrics replicationMetrics;
+  private final ReplicationBandwidthController bandwidthController;
+  private final AtomicInteger correlationIdGenerator;
+  private final String clientId;
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  ReplicaBootstrapper(ReplicationConfig replicationConfig, StorageManager storageManager, ConnectionPool connectionPool,
+      FindTokenFactory findTokenFactory, DataNodeId dataNodeId, ReplicationMetrics replicationMetrics,
+      ReplicationBandwidthController bandwidthController, AtomicInteger correlationIdGenerator) {
+    this.replicationConfig = replicationConfig;
+    this.storageManager = storageManager;
+    this.connectionPool = connectionPool;
+    this.findTokenFactory = findTokenFactory;
+    this.dataNodeId = dataNodeId;
+    this.replicationMetrics = replicationMetrics;
+    this.bandwidthController = bandwidthController;
+    this.correlationIdGenerator = correlationIdGenerator;
+    this.clientId = "replication-bootstrap-" + dataNodeId.getHostname();
+  }
+
+  /**
+   * Prepares the store of the given partition to be bootstrapped if it is empty: the store is taken out of serving and
+   * replication into it from its remote replicas is paused until {@link #bootstrap(PartitionInfo)} or
+   * {@link #finish(PartitionInfo)} is called.
+   * @param partitionInfo the partition whose store may need to be bootstrapped.
+   * @return {@code true} if the store is empty and was prepared to be bootstrapped.
+   */
+  boolean prepare(PartitionInfo partitionInfo) {
+    PartitionId partitionId = partitionInfo.getPartitionId();
+    try {
+      if (!storageManager.startBootstrapIfEmpty(partitionId)) {
+        return false;
+      }
+    } catch (StoreException e) {
+      logger.error("Could not determine whether the store of partition {} is empty", partitionId, e);
+      return false;
+    }
+    for (RemoteReplicaInfo remoteReplicaInfo : partitionInfo.getRemoteReplicaInfos()) {
+      remoteReplicaInfo.setLocalStoreBootstrapping(true);
+    }
+    return true;
+  }
+
+  /**
+   * Bootstraps the store of the given partition, which has to have been prepared by {@link #prepare(PartitionInfo)}.
+   * The remote
+   * replicas that are up are tried one after the other, those in the local datacenter first, until one of them has
+   * sealed log segments to bootstrap from. The store is put back into serving and replication into it is resumed
+   * afterwards, even if none of the remote replicas could be bootstrapped from, in which case the store is replicated
+   * as usual.
+   * @param partitionInfo the partition whose store needs to be bootstrapped.
+   * @return {@code true} if the store was bootstrapped.
+   * @throws InterruptedException if the thread was interrupted while the download was throttled.
+   */
+  boolean bootstrap(PartitionInfo partitionInfo) throws InterruptedException {
+    PartitionId partitionId = partitionInfo.getPartitionId();
+    try {
+      List<RemoteReplicaInfo> candidates = new ArrayList<RemoteReplicaInfo>();
+      List<RemoteReplicaInfo> remoteColoCandidates = new ArrayList<RemoteReplicaInfo>();
+      for (RemoteReplicaInfo remoteReplicaInfo : partitionInfo.getRemoteReplicaInfos()) {
+        if (!remoteReplicaInfo.getReplicaId().isDown()) {
+          if (remoteReplicaInfo.getReplicaId()
+              .getDataNodeId()
+              .getDatacenterName()
+              .equals(dataNodeId.getDatacenterName())) {
+            candidates.add(remoteReplicaInfo);
+          } else {
+            remoteColoCandidates.add(remoteReplicaInfo);
+          }
+        }
+      }
+      candidates.addAll(remoteColoCandidates);
+      for (RemoteReplicaInfo remoteReplicaInfo : candidates) {
+        try {
+          if (bootstrapFrom(partitionInfo, remoteReplicaInfo)) {
+            return true;
+          }
+        } catch (IOException | StoreException | ReplicationException | ConnectionPoolTimeoutException e) {
+          replicationMetrics.storeBootstrapErrorCount.inc();
+          logger.error("Could not bootstrap partition {} from remote replica {}", partitionId, remoteReplicaInfo, e);
+        }
+      }
+      return false;
+    } finally {
+      finish(partitionInfo);
+    }
+  }
+
+  /**
+   * Puts the store of the given partition, which was prepared by {@link #prepare(PartitionInfo)}, back into serving
+   * and resumes replication into it, whether it was bootstrapped or not.
+   * @param partitionInfo the partition whose store was prepared to be bootstrapped.
+   */
+  void finish(PartitionInfo partitionInfo) {
+    storageManager.endBootstrap(partitionInfo.getPartitionId());
+    for (RemoteReplicaInfo remoteReplicaInfo : partitionInfo.getRemoteReplicaInfos()) {
+      remoteReplicaInfo.setLocalStoreBootstrapping(false);
+    }
+  }
+
+  /**
+   * Bootstraps the store of the given partition from the snapshot of the given remote replica.
+   * @param partitionInfo the partition whose store needs to be bootstrapped.
+   * @param remoteReplicaInfo the remote replica to bootstrap from.
+   * @return {@code true} if the store was bootstrapped. {@code false} if the remote replica has no sealed log segments.
+   * @throws IOException if the files could not be downloaded.
+   * @throws ConnectionPoolTimeoutException if a connection to the remote replica could not be checked out in time.
+   * @throws StoreException if the store could not be bootstrapped with the downloaded files.
+   * @throws ReplicationException if the remote replica returned an error.
+   * @throws InterruptedException if the thread was interrupted while the download was throttled.
+   */
+  private boolean bootstrapFrom(PartitionInfo partitionInfo, RemoteReplicaInfo remoteReplicaInfo)
+      throws IOException, ConnectionPoolTimeoutException, StoreException, ReplicationException, InterruptedException {
+    long startTimeInMs = SystemTime.getInstance().milliseconds();
+    PartitionId partitionId = partitionInfo.getPartitionId();
+    DataNodeId remoteNode = remoteReplicaInfo.getReplicaId().getDataNodeId();
+    File snapshotDir = new File(partitionInfo.getLocalReplicaId().getReplicaPath(), Bootstrap_Dir_Name);
+    // the stores on different mount paths are bootstrapped concurrently, so each bootstrap has its own buffer.
+    byte[] copyBuffer = new byte[Copy_Buffer_Size];
+    ConnectedChannel connectedChannel =
+        connectionPool.checkOutConnection(remoteNode.getHostname(), remoteReplicaInfo.getPort(),
+            replicationConfig.replicationConnectionPoolCheckoutTimeoutMs);
+    try {
+      connectedChannel.send(
+          new ReplicaSnapshotRequest(correlationIdGenerator.incrementAndGet(), clientId, partitionId));
+      ChannelOutput channelOutput = connectedChannel.receive();
+      ByteBufferInputStream byteBufferInputStream =
+          new ByteBufferInputStream(channelOutput.getInputStream(), (int) channelOutput.getStreamSize());
+      ReplicaSnapshotResponse response =
+          ReplicaSnapshotResponse.readFrom(new DataInputStream(byteBufferInputStream), findTokenFactory);
+      if (response.getError() != ServerErrorCode.No_Error) {
+        throw new ReplicationException("Replica snapshot response error " + response.getError());
+      }
+      if (response.getFiles().isEmpty()) {
+        logger.info("Remote replica {} of partition {} has no sealed log segments to bootstrap from", remoteReplicaInfo,
+            partitionId);
+        return false;
+      }
+      logger.info("Bootstrapping partition {} from remote replica {} with files {}", partitionId, remoteReplicaInfo,
+          response.getFiles());
+      deleteDirectory(snapshotDir);
+      if (!snapshotDir.mkdirs()) {
+        throw new IOException("Could not create the bootstrap directory " + snapshotDir.getAbsolutePath());
+      }
+      long bytesDownloaded = 0;
+      for (StoreFileInfo fileInfo : response.getFiles()) {
+        bytesDownloaded +=
+            downloadFile(connectedChannel, partitionInfo, remoteNode.getDatacenterName(), fileInfo, snapshotDir,
+                copyBuffer);
+      }
+      storageManager.bootstrapStore(partitionId, snapshotDir, response.getFiles());
+      remoteReplicaInfo.initializeTokens(response.getFindToken());
+      replicationMetrics.storeBootstrapCount.inc();
+      replicationMetrics.storeBootstrapBytes.inc(bytesDownloaded);
+      replicationMetrics.storeBootstrapTime.update(SystemTime.getInstance().milliseconds() - startTimeInMs);
+      logger.info("Bootstrapped partition {} with {} bytes from remote replica {}, token {}", partitionId,
+          bytesDownloaded, remoteReplicaInfo, response.getFindToken());
+      return true;
+    } catch (Exception e) {
+      // the response may not have been read completely, so the connection cannot be reused.
+      connectionPool.destroyConnection(connectedChannel);
+      connectedChannel = null;
+      throw e;
+    } finally {
+      if (connectedChannel != null) {
+        connectionPool.checkInConnection(connectedChannel);
+      }
+      try {
+        deleteDirectory(snapshotDir);
+      } catch (IOException e) {
+        logger.warn("Could not delete the bootstrap directory {}", snapshotDir.getAbsolutePath(), e);
+      }
+    }
+  }
+
+  /**
+   * Downloads a file of the snapshot of a remote replica in chunks of
+   * {@link ReplicationConfig#replicationBootstrapChunkSizeBytes} and writes it to the given directory. The chunks are
+   * streamed to the file as they are received.
+   * @param connectedChannel the channel to the remote replica.
+   * @param partitionInfo the partition that is being bootstrapped.
+   * @param datacenterName the datacenter of the remote replica.
+   * @param fileInfo the file to download.
+   * @param snapshotDir the directory to write the file to.
+   * @param copyBuffer the buffer to copy the chunks to the file with.
+   * @return the number of bytes downloaded.
+   * @throws IOException if the file could not be downloaded or written.
+   * @throws ReplicationException if the remote replica returned an error.
+   * @throws InterruptedException if the thread was interrupted while the download was throttled.
+   */
+  private long downloadFile(ConnectedChannel connectedChannel, PartitionInfo partitionInfo, String datacenterName,
+      StoreFileInfo fileInfo, File snapshotDir, byte[] copyBuffer)
+      throws IOException, ReplicationException, InterruptedException {
+    String mountPath = partitionInfo.getLocalReplicaId().getMountPath();
+    long offset = 0;
+    try (FileOutputStream outputStream = new FileOutputStream(new File(snapshotDir, fileInfo.getFileName()))) {
+      while (offset < fileInfo.getSizeInBytes()) {
+        long chunkSizeInBytes =
+            Math.min(replicationConfig.replicationBootstrapChunkSizeBytes, fileInfo.getSizeInBytes() - offset);
+        connectedChannel.send(
+            new ReplicaFileChunkRequest(correlationIdGenerator.incrementAndGet(), clientId,
+                partitionInfo.getPartitionId(), fileInfo.getFileName(), offset, chunkSizeInBytes));
+        ChannelOutput channelOutput = connectedChannel.receive();
+        ReplicaFileChunkResponse response =
+            ReplicaFileChunkResponse.readFrom(new DataInputStream(channelOutput.getInputStream()));
+        if (response.getError() != ServerErrorCode.No_Error) {
+          throw new ReplicationException("Replica file chunk response error " + response.getError() + " for file "
+              + fileInfo.getFileName() + " at offset " + offset);
+        }
+        if (response.getChunkSizeInBytes() != chunkSizeInBytes) {
+          throw new ReplicationException(
+              "Replica file chunk response has " + response.getChunkSizeInBytes() + " bytes instead of "
+                  + chunkSizeInBytes + " for file " + fileInfo.getFileName() + " at offset " + offset);
+        }
+        copy(response.getInputStream(), outputStream, chunkSizeInBytes, copyBuffer);
+        offset += chunkSizeInBytes;
+        bandwidthController.throttleFetch(datacenterName, chunkSizeInBytes);
+        bandwidthController.throttleWrite(mountPath, chunkSizeInBytes);
+      }
+      // the token of the remote replica is persisted as soon as the store is bootstrapped, so the files must be on
+      // disk by then.
+      outputStream.getChannel().force(true);
+    }
+    return offset;
+  }
+
+  /**
+   * Copies exactly the given number of bytes from the input stream to the output stream.
+   * @param inputStream the stream to read from.
+   * @param outputStream the stream to write to.
+   * @param sizeInBytes the number of bytes to copy.
+   * @param copyBuffer the buffer to copy the bytes with.
+   * @throws IOException if the bytes could not be read or written.
+   */
+  private void copy(InputStream inputStream, FileOutputStream outputStream, long sizeInBytes, byte[] copyBuffer)
+      throws IOException {
+    long remaining = sizeInBytes;
+    while (remaining > 0) {
+      int read = inputStream.read(copyBuffer, 0, (int) Math.min(copyBuffer.length, remaining));
+      if (read < 0) {
+        throw new IOException("Stream ended with " + remaining + " bytes of the chunk remaining");
+      }
+      outputStream.write(copyBuffer, 0, read);
+      remaining -= read;
+    }
+  }
+
+  /**
+   * Deletes the given directory and the files in it, if it exists.
+   * @param dir the directory to delete.
+   * @throws IOException if the directory or one of its files could not be deleted.
+   */
+  private void deleteDirectory(File dir) throws IOException {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (!file.delete()) {
+          throw new IOException("Could not delete " + file.getAbsolutePath());
+        }
+      }
+    }
+    if (dir.exists() && !dir.delete()) {
+      throw new IOException("Could not delete " + dir.getAbsolutePath());
+    }
+  }
+}
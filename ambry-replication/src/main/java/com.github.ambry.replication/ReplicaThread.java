@@ -26,12 +26,14 @@ import com.github.ambry.messageformat.MessageFormatException;
 import com.github.ambry.messageformat.MessageFormatFlags;
 import com.github.ambry.messageformat.MessageFormatInputStream;
 import com.github.ambry.messageformat.MessageFormatWriteSet;
-import com.github.ambry.messageformat.MessageSievingInputStream;
+import com.github.ambry.messageformat.MessageSievingWriteSet;
 import com.github.ambry.network.ChannelOutput;
 import com.github.ambry.network.ConnectedChannel;
 import com.github.ambry.network.ConnectionPool;
+import com.github.ambry.network.ConnectionPoolTimeoutException;
 import com.github.ambry.notification.BlobReplicaSourceType;
 import com.github.ambry.notification.NotificationSystem;
+import com.github.ambry.protocol.CompressionCodec;
 import com.github.ambry.protocol.GetOption;
 import com.github.ambry.protocol.GetRequest;
 import com.github.ambry.protocol.GetResponse;
@@ -50,15 +52,27 @@ import com.github.ambry.store.StoreKey;
 import com.github.ambry.store.StoreKeyFactory;
 import com.github.ambry.utils.ByteBufferInputStream;
 import com.github.ambry.utils.SystemTime;
+import com.github.ambry.utils.Utils;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -87,17 +101,57 @@ class ReplicaThread implements Runnable {
   private final MetricRegistry metricRegistry;
   private final ResponseHandler responseHandler;
   private final boolean replicatingFromRemoteColo;
+  // the codec with which the remote node is asked to compress the responses.
+  private final CompressionCodec acceptedCompressionCodec;
   private final boolean replicatingOverSsl;
   private final String datacenterName;
+  // sends the metadata requests that are pipelined ahead of the fetch of missing messages. Null if pipelining is off.
+  private final ExecutorService metadataPrefetcher;
+  // hands out the replicas to replicate from if they are assigned dynamically. Null if they are assigned statically.
+  private final ReplicationScheduler scheduler;
+  // the total time spent waiting for replicas to replicate from.
+  private final AtomicLong idleTimeInMs = new AtomicLong(0);
+  // limits the rate at which messages are fetched and written. Null if replication is not throttled.
+  private final ReplicationBandwidthController bandwidthController;
 
   ReplicaThread(String threadName, Map<DataNodeId, List<RemoteReplicaInfo>> replicasToReplicateGroupedByNode,
       FindTokenFactory findTokenFactory, ClusterMap clusterMap, AtomicInteger correlationIdGenerator,
       DataNodeId dataNodeId, ConnectionPool connectionPool, ReplicationConfig replicationConfig,
       ReplicationMetrics replicationMetrics, NotificationSystem notification, StoreKeyFactory storeKeyFactory,
       boolean validateMessageStream, MetricRegistry metricRegistry, boolean replicatingOverSsl, String datacenterName,
-      ResponseHandler responseHandler) {
+      ResponseHandler responseHandler, ReplicationBandwidthController bandwidthController) {
+    this(threadName, replicasToReplicateGroupedByNode, null, findTokenFactory, clusterMap, correlationIdGenerator,
+        dataNodeId, connectionPool, replicationConfig, replicationMetrics, notification, storeKeyFactory,
+        validateMessageStream, metricRegistry, replicatingOverSsl, datacenterName, responseHandler,
+        bandwidthController);
+  }
+
+  /**
+   * Creates a replica thread that gets the replicas to replicate from the given {@link ReplicationScheduler}, one work
+   * unit at a time.
+   */
+  ReplicaThread(String threadName, ReplicationScheduler scheduler, FindTokenFactory findTokenFactory,
+      ClusterMap clusterMap, AtomicInteger correlationIdGenerator, DataNodeId dataNodeId, ConnectionPool connectionPool,
+      ReplicationConfig replicationConfig, ReplicationMetrics replicationMetrics, NotificationSystem notification,
+      StoreKeyFactory storeKeyFactory, boolean validateMessageStream, MetricRegistry metricRegistry,
+      boolean replicatingOverSsl, String datacenterName, ResponseHandler responseHandler,
+      ReplicationBandwidthController bandwidthController) {
+    this(threadName, Collections.<DataNodeId, List<RemoteReplicaInfo>>emptyMap(), scheduler, findTokenFactory,
+        clusterMap, correlationIdGenerator, dataNodeId, connectionPool, replicationConfig, replicationMetrics,
+        notification, storeKeyFactory, validateMessageStream, metricRegistry, replicatingOverSsl, datacenterName,
+        responseHandler, bandwidthController);
+  }
+
+  private ReplicaThread(String threadName, Map<DataNodeId, List<RemoteReplicaInfo>> replicasToReplicateGroupedByNode,
+      ReplicationScheduler scheduler, FindTokenFactory findTokenFactory, ClusterMap clusterMap,
+      AtomicInteger correlationIdGenerator, DataNodeId dataNodeId, ConnectionPool connectionPool,
+      ReplicationConfig replicationConfig, ReplicationMetrics replicationMetrics, NotificationSystem notification,
+      StoreKeyFactory storeKeyFactory, boolean validateMessageStream, MetricRegistry metricRegistry,
+      boolean replicatingOverSsl, String datacenterName, ResponseHandler responseHandler,
+      ReplicationBandwidthController bandwidthController) {
     this.threadName = threadName;
     this.replicasToReplicateGroupedByNode = replicasToReplicateGroupedByNode;
+    this.scheduler = scheduler;
     this.running = true;
     this.findTokenFactory = findTokenFactory;
     this.clusterMap = clusterMap;
@@ -111,145 +165,202 @@ class ReplicaThread implements Runnable {
     this.validateMessageStream = validateMessageStream;
     this.metricRegistry = metricRegistry;
     this.responseHandler = responseHandler;
+    this.bandwidthController = bandwidthController;
     this.replicatingFromRemoteColo = !(dataNodeId.getDatacenterName().equals(datacenterName));
     this.waitEnabled = !replicatingFromRemoteColo;
+    this.acceptedCompressionCodec =
+        replicatingFromRemoteColo && replicationConfig.replicationInterColoCompressionEnabled
+            ? CompressionCodec.Lz4_Block : CompressionCodec.None;
     this.replicatingOverSsl = replicatingOverSsl;
     this.datacenterName = datacenterName;
+    if (replicationConfig.replicationPipelineDepth > 1) {
+      metadataPrefetcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          return Utils.newThread(ReplicaThread.this.threadName + "-metadata-prefetcher", runnable, true);
+        }
+      });
+    } else {
+      metadataPrefetcher = null;
+    }
   }
 
   String getName() {
     return threadName;
   }
 
+  /**
+   * @return the total time in ms that this thread has spent waiting for replicas to replicate from.
+   */
+  long getIdleTimeInMs() {
+    return idleTimeInMs.get();
+  }
+
   @Override
   public void run() {
     try {
       logger.trace("Starting replica thread on Local node: " + dataNodeId + " Thread name: " + threadName);
-      List<List<RemoteReplicaInfo>> replicasToReplicate =
-          new ArrayList<List<RemoteReplicaInfo>>(replicasToReplicateGroupedByNode.size());
-      for (Map.Entry<DataNodeId, List<RemoteReplicaInfo>> replicasToReplicateEntry : replicasToReplicateGroupedByNode.entrySet()) {
-        logger.info("Remote node: " + replicasToReplicateEntry.getKey() + " Thread name: " + threadName
-            + " ReplicasToReplicate: " + replicasToReplicateEntry.getValue());
-        replicasToReplicate.add(replicasToReplicateEntry.getValue());
-      }
-      logger.info("Begin iteration for thread " + threadName);
-      while (running) {
-        // shuffle the nodes
-        Collections.shuffle(replicasToReplicate);
-        for (List<RemoteReplicaInfo> replicasToReplicatePerNode : replicasToReplicate) {
-          if (!running) {
+      if (scheduler != null) {
+        logger.info("Begin iteration for thread " + threadName + " with dynamically assigned replicas");
+        while (running) {
+          long waitStartTimeInMs = SystemTime.getInstance().milliseconds();
+          ReplicationScheduler.WorkUnit workUnit = scheduler.acquire();
+          idleTimeInMs.addAndGet(SystemTime.getInstance().milliseconds() - waitStartTimeInMs);
+          if (workUnit == null) {
             break;
           }
-          DataNodeId remoteNode = replicasToReplicatePerNode.get(0).getReplicaId().getDataNodeId();
-          logger.trace("Remote node: {} Thread name: {} Remote replicas: {}", remoteNode, threadName,
-              replicasToReplicatePerNode);
-          Timer.Context context = null;
-          Timer.Context portTypeBasedContext = null;
-          if (replicatingFromRemoteColo) {
-            context = replicationMetrics.interColoReplicationLatency.get(remoteNode.getDatacenterName()).time();
-            if (replicatingOverSsl) {
-              portTypeBasedContext =
-                  replicationMetrics.sslInterColoReplicationLatency.get(remoteNode.getDatacenterName()).time();
-            } else {
-              portTypeBasedContext =
-                  replicationMetrics.plainTextInterColoReplicationLatency.get(remoteNode.getDatacenterName()).time();
-            }
-          } else {
-            context = replicationMetrics.intraColoReplicationLatency.time();
-            if (replicatingOverSsl) {
-              portTypeBasedContext = replicationMetrics.sslIntraColoReplicationLatency.time();
-            } else {
-              portTypeBasedContext = replicationMetrics.plainTextIntraColoReplicationLatency.time();
-            }
-          }
-          ConnectedChannel connectedChannel = null;
-          long checkoutConnectionTimeInMs = -1;
-          long exchangeMetadataTimeInMs = -1;
-          long fixMissingStoreKeysTimeInMs = -1;
-          long replicationStartTimeInMs = SystemTime.getInstance().milliseconds();
-          long startTimeInMs = replicationStartTimeInMs;
-
-          List<RemoteReplicaInfo> activeReplicasPerNode = new ArrayList<RemoteReplicaInfo>();
-          for (RemoteReplicaInfo remoteReplicaInfo : replicasToReplicatePerNode) {
-            if (!remoteReplicaInfo.getReplicaId().isDown()) {
-              activeReplicasPerNode.add(remoteReplicaInfo);
-            }
+          try {
+            replicate(workUnit.getRemoteReplicaInfos());
+          } finally {
+            scheduler.release(workUnit);
           }
-          if (activeReplicasPerNode.size() > 0) {
-            try {
-              connectedChannel = connectionPool.checkOutConnection(remoteNode.getHostname(),
-                  activeReplicasPerNode.get(0).getPort(),
-                  replicationConfig.replicationConnectionPoolCheckoutTimeoutMs);
-              checkoutConnectionTimeInMs = SystemTime.getInstance().milliseconds() - startTimeInMs;
-              startTimeInMs = SystemTime.getInstance().milliseconds();
-              List<ExchangeMetadataResponse> exchangeMetadataResponseList =
-                  exchangeMetadata(connectedChannel, activeReplicasPerNode);
-              exchangeMetadataTimeInMs = SystemTime.getInstance().milliseconds() - startTimeInMs;
-
-              startTimeInMs = SystemTime.getInstance().milliseconds();
-              fixMissingStoreKeys(connectedChannel, activeReplicasPerNode, exchangeMetadataResponseList);
-              fixMissingStoreKeysTimeInMs = SystemTime.getInstance().milliseconds() - startTimeInMs;
-            } catch (Exception e) {
-              if (checkoutConnectionTimeInMs == -1) {
-                // exception happened in checkout connection phase
-                checkoutConnectionTimeInMs = SystemTime.getInstance().milliseconds() - startTimeInMs;
-                // recording an exception for any replica on a node will record a node timeout failure
-                responseHandler.onEvent(activeReplicasPerNode.get(0).getReplicaId(), e);
-              } else if (exchangeMetadataTimeInMs == -1) {
-                // exception happened in exchange metadata phase
-                exchangeMetadataTimeInMs = SystemTime.getInstance().milliseconds() - startTimeInMs;
-              } else if (fixMissingStoreKeysTimeInMs == -1) {
-                // exception happened in fix missing store phase
-                fixMissingStoreKeysTimeInMs = SystemTime.getInstance().milliseconds() - startTimeInMs;
-              }
-              StringBuilder strBuilder = new StringBuilder();
-              strBuilder.append("Remote node: ").append(remoteNode);
-              strBuilder.append(" Thread name: ").append(threadName);
-              strBuilder.append(" Remote replicas: ").append(replicasToReplicatePerNode);
-              strBuilder.append(" Active remote replicas: ").append(activeReplicasPerNode);
-              strBuilder.append(" Error while replicating with remote replica ");
-              strBuilder.append(" Checkout connection time: ").append(checkoutConnectionTimeInMs);
-              strBuilder.append(" Exchange metadata time: ").append(exchangeMetadataTimeInMs);
-              strBuilder.append(" Fix missing store key time: ").append(fixMissingStoreKeysTimeInMs);
-
-              if (logger.isTraceEnabled()) {
-                logger.trace(strBuilder.toString(), e);
-              } else {
-                logger.error(strBuilder.toString() + e);
-              }
-              replicationMetrics.incrementReplicationErrors(replicatingOverSsl);
-              if (connectedChannel != null) {
-                connectionPool.destroyConnection(connectedChannel);
-                connectedChannel = null;
-              }
-            } catch (Throwable e) {
-              logger.error("Remote node: " + remoteNode + " Thread name: " + threadName + " Remote replicas: "
-                  + replicasToReplicatePerNode + " Active remote replicas: " + activeReplicasPerNode
-                  + " Throwable exception while replicating with remote replica ", e);
-              replicationMetrics.incrementReplicationErrors(replicatingOverSsl);
-              if (connectedChannel != null) {
-                connectionPool.destroyConnection(connectedChannel);
-                connectedChannel = null;
-              }
-            } finally {
-              long totalReplicationTime = SystemTime.getInstance().milliseconds() - replicationStartTimeInMs;
-              replicationMetrics.updateTotalReplicationTime(totalReplicationTime, replicatingFromRemoteColo,
-                  replicatingOverSsl, datacenterName);
-              if (connectedChannel != null) {
-                connectionPool.checkInConnection(connectedChannel);
-              }
-              context.stop();
-              portTypeBasedContext.stop();
+        }
+      } else {
+        List<List<RemoteReplicaInfo>> replicasToReplicate =
+            new ArrayList<List<RemoteReplicaInfo>>(replicasToReplicateGroupedByNode.size());
+        for (Map.Entry<DataNodeId, List<RemoteReplicaInfo>> replicasToReplicateEntry :
+            replicasToReplicateGroupedByNode.entrySet()) {
+          logger.info("Remote node: " + replicasToReplicateEntry.getKey() + " Thread name: " + threadName
+              + " ReplicasToReplicate: " + replicasToReplicateEntry.getValue());
+          replicasToReplicate.add(replicasToReplicateEntry.getValue());
+        }
+        logger.info("Begin iteration for thread " + threadName);
+        while (running) {
+          // shuffle the nodes
+          Collections.shuffle(replicasToReplicate);
+          for (List<RemoteReplicaInfo> replicasToReplicatePerNode : replicasToReplicate) {
+            if (!running) {
+              break;
             }
+            replicate(replicasToReplicatePerNode);
           }
         }
       }
+    } catch (InterruptedException e) {
+      logger.error("Thread name: " + threadName + " Interrupted while waiting for replicas to replicate", e);
     } finally {
+      if (metadataPrefetcher != null) {
+        metadataPrefetcher.shutdownNow();
+      }
       running = false;
       shutdownLatch.countDown();
     }
   }
 
+  /**
+   * Replicates from a set of remote replicas on a single remote node.
+   * @param replicasToReplicatePerNode The remote replicas to replicate from. All of them are on the same node
+   */
+  private void replicate(List<RemoteReplicaInfo> replicasToReplicatePerNode) {
+    DataNodeId remoteNode = replicasToReplicatePerNode.get(0).getReplicaId().getDataNodeId();
+    logger.trace("Remote node: {} Thread name: {} Remote replicas: {}", remoteNode, threadName,
+        replicasToReplicatePerNode);
+    Timer.Context context = null;
+    Timer.Context portTypeBasedContext = null;
+    if (replicatingFromRemoteColo) {
+      context = replicationMetrics.interColoReplicationLatency.get(remoteNode.getDatacenterName()).time();
+      if (replicatingOverSsl) {
+        portTypeBasedContext =
+            replicationMetrics.sslInterColoReplicationLatency.get(remoteNode.getDatacenterName()).time();
+      } else {
+        portTypeBasedContext =
+            replicationMetrics.plainTextInterColoReplicationLatency.get(remoteNode.getDatacenterName()).time();
+      }
+    } else {
+      context = replicationMetrics.intraColoReplicationLatency.time();
+      if (replicatingOverSsl) {
+        portTypeBasedContext = replicationMetrics.sslIntraColoReplicationLatency.time();
+      } else {
+        portTypeBasedContext = replicationMetrics.plainTextIntraColoReplicationLatency.time();
+      }
+    }
+    ConnectedChannel connectedChannel = null;
+    long checkoutConnectionTimeInMs = -1;
+    long exchangeMetadataTimeInMs = -1;
+    long fixMissingStoreKeysTimeInMs = -1;
+    long replicationStartTimeInMs = SystemTime.getInstance().milliseconds();
+    long startTimeInMs = replicationStartTimeInMs;
+
+    List<RemoteReplicaInfo> activeReplicasPerNode = new ArrayList<RemoteReplicaInfo>();
+    for (RemoteReplicaInfo remoteReplicaInfo : replicasToReplicatePerNode) {
+      // the local stores that are being bootstrapped from a peer are not replicated into until that is done.
+      if (!remoteReplicaInfo.getReplicaId().isDown() && !remoteReplicaInfo.isLocalStoreBootstrapping()) {
+        activeReplicasPerNode.add(remoteReplicaInfo);
+      }
+    }
+    if (activeReplicasPerNode.size() > 0) {
+      try {
+        connectedChannel = connectionPool.checkOutConnection(remoteNode.getHostname(),
+            activeReplicasPerNode.get(0).getPort(),
+            replicationConfig.replicationConnectionPoolCheckoutTimeoutMs);
+        checkoutConnectionTimeInMs = SystemTime.getInstance().milliseconds() - startTimeInMs;
+        startTimeInMs = SystemTime.getInstance().milliseconds();
+        List<ExchangeMetadataResponse> exchangeMetadataResponseList =
+            exchangeMetadata(connectedChannel, activeReplicasPerNode);
+        exchangeMetadataTimeInMs = SystemTime.getInstance().milliseconds() - startTimeInMs;
+
+        startTimeInMs = SystemTime.getInstance().milliseconds();
+        if (metadataPrefetcher != null) {
+          replicatePipelined(connectedChannel, activeReplicasPerNode, exchangeMetadataResponseList);
+        } else {
+          fixMissingStoreKeys(connectedChannel, activeReplicasPerNode, exchangeMetadataResponseList);
+        }
+        fixMissingStoreKeysTimeInMs = SystemTime.getInstance().milliseconds() - startTimeInMs;
+      } catch (Exception e) {
+        if (checkoutConnectionTimeInMs == -1) {
+          // exception happened in checkout connection phase
+          checkoutConnectionTimeInMs = SystemTime.getInstance().milliseconds() - startTimeInMs;
+          // recording an exception for any replica on a node will record a node timeout failure
+          responseHandler.onEvent(activeReplicasPerNode.get(0).getReplicaId(), e);
+        } else if (exchangeMetadataTimeInMs == -1) {
+          // exception happened in exchange metadata phase
+          exchangeMetadataTimeInMs = SystemTime.getInstance().milliseconds() - startTimeInMs;
+        } else if (fixMissingStoreKeysTimeInMs == -1) {
+          // exception happened in fix missing store phase
+          fixMissingStoreKeysTimeInMs = SystemTime.getInstance().milliseconds() - startTimeInMs;
+        }
+        StringBuilder strBuilder = new StringBuilder();
+        strBuilder.append("Remote node: ").append(remoteNode);
+        strBuilder.append(" Thread name: ").append(threadName);
+        strBuilder.append(" Remote replicas: ").append(replicasToReplicatePerNode);
+        strBuilder.append(" Active remote replicas: ").append(activeReplicasPerNode);
+        strBuilder.append(" Error while replicating with remote replica ");
+        strBuilder.append(" Checkout connection time: ").append(checkoutConnectionTimeInMs);
+        strBuilder.append(" Exchange metadata time: ").append(exchangeMetadataTimeInMs);
+        strBuilder.append(" Fix missing store key time: ").append(fixMissingStoreKeysTimeInMs);
+
+        if (logger.isTraceEnabled()) {
+          logger.trace(strBuilder.toString(), e);
+        } else {
+          logger.error(strBuilder.toString() + e);
+        }
+        replicationMetrics.incrementReplicationErrors(replicatingOverSsl);
+        if (connectedChannel != null) {
+          connectionPool.destroyConnection(connectedChannel);
+          connectedChannel = null;
+        }
+      } catch (Throwable e) {
+        logger.error("Remote node: " + remoteNode + " Thread name: " + threadName + " Remote replicas: "
+            + replicasToReplicatePerNode + " Active remote replicas: " + activeReplicasPerNode
+            + " Throwable exception while replicating with remote replica ", e);
+        replicationMetrics.incrementReplicationErrors(replicatingOverSsl);
+        if (connectedChannel != null) {
+          connectionPool.destroyConnection(connectedChannel);
+          connectedChannel = null;
+        }
+      } finally {
+        long totalReplicationTime = SystemTime.getInstance().milliseconds() - replicationStartTimeInMs;
+        replicationMetrics.updateTotalReplicationTime(totalReplicationTime, replicatingFromRemoteColo,
+            replicatingOverSsl, datacenterName);
+        if (connectedChannel != null) {
+          connectionPool.checkInConnection(connectedChannel);
+        }
+        context.stop();
+        portTypeBasedContext.stop();
+      }
+    }
+  }
+
   /**
    * Gets all the metadata about messages from the remote replicas since last token. Checks the messages with the local
    * store and finds all the messages that are missing. For the messages that are not missing, updates the delete
@@ -273,53 +384,13 @@ class ReplicaThread implements Runnable {
     if (replicasToReplicatePerNode.size() > 0) {
       try {
         DataNodeId remoteNode = replicasToReplicatePerNode.get(0).getReplicaId().getDataNodeId();
-        ReplicaMetadataResponse response =
-            getReplicaMetadataResponse(replicasToReplicatePerNode, connectedChannel, remoteNode);
-        long startTimeInMs = SystemTime.getInstance().milliseconds();
-        waitEnabled = !replicatingFromRemoteColo;
-        for (int i = 0; i < response.getReplicaMetadataResponseInfoList().size(); i++) {
-          RemoteReplicaInfo remoteReplicaInfo = replicasToReplicatePerNode.get(i);
-          ReplicaMetadataResponseInfo replicaMetadataResponseInfo =
-              response.getReplicaMetadataResponseInfoList().get(i);
-          responseHandler.onEvent(remoteReplicaInfo.getReplicaId(), replicaMetadataResponseInfo.getError());
-          if (replicaMetadataResponseInfo.getError() == ServerErrorCode.No_Error) {
-            try {
-              logger.trace("Remote node: {} Thread name: {} Remote replica: {} Token from remote: {} Replica lag: {} ",
-                  remoteNode, threadName, remoteReplicaInfo.getReplicaId(), replicaMetadataResponseInfo.getFindToken(),
-                  replicaMetadataResponseInfo.getRemoteReplicaLagInBytes());
-              if (waitEnabled) {
-                waitIfRequired(replicaMetadataResponseInfo, remoteNode, remoteReplicaInfo);
-              }
-              Set<StoreKey> missingStoreKeys =
-                  getMissingStoreKeys(replicaMetadataResponseInfo, remoteNode, remoteReplicaInfo);
-              processReplicaMetadataResponse(missingStoreKeys, replicaMetadataResponseInfo, remoteReplicaInfo,
-                  remoteNode);
-              ExchangeMetadataResponse exchangeMetadataResponse =
-                  new ExchangeMetadataResponse(missingStoreKeys, replicaMetadataResponseInfo.getFindToken(),
-                      replicaMetadataResponseInfo.getRemoteReplicaLagInBytes());
-              exchangeMetadataResponseList.add(exchangeMetadataResponse);
-            } catch (Exception e) {
-              replicationMetrics.updateLocalStoreError(remoteReplicaInfo.getReplicaId());
-              logger.error(
-                  "Remote node: " + remoteNode + " Thread name: " + threadName + " Remote replica: " + remoteReplicaInfo
-                      .getReplicaId(), e);
-              responseHandler.onEvent(remoteReplicaInfo.getReplicaId(), e);
-              ExchangeMetadataResponse exchangeMetadataResponse =
-                  new ExchangeMetadataResponse(ServerErrorCode.Unknown_Error);
-              exchangeMetadataResponseList.add(exchangeMetadataResponse);
-            }
-          } else {
-            replicationMetrics.updateMetadataRequestError(remoteReplicaInfo.getReplicaId());
-            logger.error("Remote node: {} Thread name: {} Remote replica: {} Server error: {}", remoteNode, threadName,
-                remoteReplicaInfo.getReplicaId(), replicaMetadataResponseInfo.getError());
-            ExchangeMetadataResponse exchangeMetadataResponse =
-                new ExchangeMetadataResponse(replicaMetadataResponseInfo.getError());
-            exchangeMetadataResponseList.add(exchangeMetadataResponse);
-          }
+        List<FindToken> tokens = new ArrayList<FindToken>(replicasToReplicatePerNode.size());
+        for (RemoteReplicaInfo remoteReplicaInfo : replicasToReplicatePerNode) {
+          tokens.add(remoteReplicaInfo.getToken());
         }
-        long processMetadataResponseTimeInMs = SystemTime.getInstance().milliseconds() - startTimeInMs;
-        logger.trace("Remote node: {} Thread name: {} processMetadataResponseTime: {}", remoteNode, threadName,
-            processMetadataResponseTimeInMs);
+        ReplicaMetadataResponse response =
+            getReplicaMetadataResponse(replicasToReplicatePerNode, tokens, connectedChannel, remoteNode);
+        exchangeMetadataResponseList = handleReplicaMetadataResponse(response, replicasToReplicatePerNode, remoteNode);
       } finally {
         long exchangeMetadataTime = SystemTime.getInstance().milliseconds() - exchangeMetadataStartTimeInMs;
         replicationMetrics.updateExchangeMetadataTime(exchangeMetadataTime, replicatingFromRemoteColo,
@@ -329,6 +400,65 @@ class ReplicaThread implements Runnable {
     return exchangeMetadataResponseList;
   }
 
+  /**
+   * Processes the metadata received from a remote node. Checks the messages with the local store and finds all the
+   * messages that are missing. For the messages that are not missing, updates the delete and ttl state.
+   * @param response The replica metadata response from the remote node
+   * @param replicasToReplicatePerNode The information about the replicas that is being replicated
+   * @param remoteNode The remote node from which replication needs to happen
+   * @return - List of ExchangeMetadataResponse that contains the set of store keys that are missing from the local
+   *           store and are present in the remote replicas and also the new token from the remote replicas
+   * @throws InterruptedException
+   */
+  private List<ExchangeMetadataResponse> handleReplicaMetadataResponse(ReplicaMetadataResponse response,
+      List<RemoteReplicaInfo> replicasToReplicatePerNode, DataNodeId remoteNode) throws InterruptedException {
+    List<ExchangeMetadataResponse> exchangeMetadataResponseList = new ArrayList<ExchangeMetadataResponse>();
+    long startTimeInMs = SystemTime.getInstance().milliseconds();
+    waitEnabled = !replicatingFromRemoteColo;
+    for (int i = 0; i < response.getReplicaMetadataResponseInfoList().size(); i++) {
+      RemoteReplicaInfo remoteReplicaInfo = replicasToReplicatePerNode.get(i);
+      ReplicaMetadataResponseInfo replicaMetadataResponseInfo = response.getReplicaMetadataResponseInfoList().get(i);
+      responseHandler.onEvent(remoteReplicaInfo.getReplicaId(), replicaMetadataResponseInfo.getError());
+      if (replicaMetadataResponseInfo.getError() == ServerErrorCode.No_Error) {
+        try {
+          logger.trace("Remote node: {} Thread name: {} Remote replica: {} Token from remote: {} Replica lag: {} ",
+              remoteNode, threadName, remoteReplicaInfo.getReplicaId(), replicaMetadataResponseInfo.getFindToken(),
+              replicaMetadataResponseInfo.getRemoteReplicaLagInBytes());
+          if (waitEnabled) {
+            waitIfRequired(replicaMetadataResponseInfo, remoteNode, remoteReplicaInfo);
+          }
+          Set<StoreKey> missingStoreKeys =
+              getMissingStoreKeys(replicaMetadataResponseInfo, remoteNode, remoteReplicaInfo);
+          processReplicaMetadataResponse(missingStoreKeys, replicaMetadataResponseInfo, remoteReplicaInfo, remoteNode);
+          ExchangeMetadataResponse exchangeMetadataResponse =
+              new ExchangeMetadataResponse(missingStoreKeys, replicaMetadataResponseInfo.getFindToken(),
+                  replicaMetadataResponseInfo.getRemoteReplicaLagInBytes());
+          exchangeMetadataResponseList.add(exchangeMetadataResponse);
+        } catch (Exception e) {
+          replicationMetrics.updateLocalStoreError(remoteReplicaInfo.getReplicaId());
+          logger.error(
+              "Remote node: " + remoteNode + " Thread name: " + threadName + " Remote replica: " + remoteReplicaInfo
+                  .getReplicaId(), e);
+          responseHandler.onEvent(remoteReplicaInfo.getReplicaId(), e);
+          ExchangeMetadataResponse exchangeMetadataResponse =
+              new ExchangeMetadataResponse(ServerErrorCode.Unknown_Error);
+          exchangeMetadataResponseList.add(exchangeMetadataResponse);
+        }
+      } else {
+        replicationMetrics.updateMetadataRequestError(remoteReplicaInfo.getReplicaId());
+        logger.error("Remote node: {} Thread name: {} Remote replica: {} Server error: {}", remoteNode, threadName,
+            remoteReplicaInfo.getReplicaId(), replicaMetadataResponseInfo.getError());
+        ExchangeMetadataResponse exchangeMetadataResponse =
+            new ExchangeMetadataResponse(replicaMetadataResponseInfo.getError());
+        exchangeMetadataResponseList.add(exchangeMetadataResponse);
+      }
+    }
+    long processMetadataResponseTimeInMs = SystemTime.getInstance().milliseconds() - startTimeInMs;
+    logger.trace("Remote node: {} Thread name: {} processMetadataResponseTime: {}", remoteNode, threadName,
+        processMetadataResponseTimeInMs);
+    return exchangeMetadataResponseList;
+  }
+
   /**
    * Gets all the messages from the remote node for the missing keys and writes them to the local store
    * @param connectedChannel The connected channel that represents a connection to the remote replica
@@ -339,10 +469,11 @@ class ReplicaThread implements Runnable {
    * @throws StoreException
    * @throws MessageFormatException
    * @throws ReplicationException
+   * @throws InterruptedException
    */
   void fixMissingStoreKeys(ConnectedChannel connectedChannel, List<RemoteReplicaInfo> replicasToReplicatePerNode,
       List<ExchangeMetadataResponse> exchangeMetadataResponseList)
-      throws IOException, StoreException, MessageFormatException, ReplicationException {
+      throws IOException, StoreException, MessageFormatException, ReplicationException, InterruptedException {
     long fixMissingStoreKeysStartTimeInMs = SystemTime.getInstance().milliseconds();
     try {
       if (exchangeMetadataResponseList.size() != replicasToReplicatePerNode.size()
@@ -352,9 +483,17 @@ class ReplicaThread implements Runnable {
             + " should be the same and greater than zero");
       }
       DataNodeId remoteNode = replicasToReplicatePerNode.get(0).getReplicaId().getDataNodeId();
-      GetResponse getResponse =
-          getMessagesForMissingKeys(connectedChannel, exchangeMetadataResponseList, replicasToReplicatePerNode,
-              remoteNode);
+      boolean hasMissingStoreKeys = false;
+      for (ExchangeMetadataResponse exchangeMetadataResponse : exchangeMetadataResponseList) {
+        if (exchangeMetadataResponse.serverErrorCode == ServerErrorCode.No_Error
+            && exchangeMetadataResponse.missingStoreKeys.size() > 0) {
+          hasMissingStoreKeys = true;
+          break;
+        }
+      }
+      // there is no need for a round trip to the remote node if there is nothing to fetch. The tokens still advance.
+      GetResponse getResponse = hasMissingStoreKeys ? getMessagesForMissingKeys(connectedChannel,
+          exchangeMetadataResponseList, replicasToReplicatePerNode, remoteNode) : null;
       writeMessagesToLocalStore(exchangeMetadataResponseList, getResponse, replicasToReplicatePerNode, remoteNode);
     } finally {
       long fixMissingStoreKeysTime = SystemTime.getInstance().milliseconds() - fixMissingStoreKeysStartTimeInMs;
@@ -363,9 +502,153 @@ class ReplicaThread implements Runnable {
     }
   }
 
+  /**
+   * Replicates up to {@link ReplicationConfig#replicationPipelineDepth} consecutive batches from a remote node. The
+   * metadata requests for the later batches are sent over a separate connection, each with the tokens returned for the
+   * batch before it, while the missing messages of the earlier batches are fetched and written over the given
+   * connection. A metadata response received ahead of time is processed only once the batch before it has been
+   * written, so that the local store reflects all the earlier messages when the missing keys are found. It is
+   * discarded if the tokens of the replicas did not advance as the request assumed (for e.g. if a write failed).
+   * @param connectedChannel The connected channel that represents a connection to the remote replica
+   * @param replicasToReplicatePerNode The information about the replicas that is being replicated
+   * @param exchangeMetadataResponseList The metadata exchanged for the first batch
+   * @throws IOException
+   * @throws StoreException
+   * @throws MessageFormatException
+   * @throws ReplicationException
+   * @throws InterruptedException
+   * @throws ConnectionPoolTimeoutException
+   */
+  void replicatePipelined(ConnectedChannel connectedChannel, List<RemoteReplicaInfo> replicasToReplicatePerNode,
+      List<ExchangeMetadataResponse> exchangeMetadataResponseList)
+      throws IOException, StoreException, MessageFormatException, ReplicationException, InterruptedException,
+      ConnectionPoolTimeoutException {
+    DataNodeId remoteNode = replicasToReplicatePerNode.get(0).getReplicaId().getDataNodeId();
+    // the tokens that the replicas are expected to have once the first batch is written.
+    List<FindToken> tokensAfterFirstBatch = new ArrayList<FindToken>(replicasToReplicatePerNode.size());
+    for (int i = 0; i < replicasToReplicatePerNode.size(); i++) {
+      ExchangeMetadataResponse exchangeMetadataResponse = exchangeMetadataResponseList.get(i);
+      tokensAfterFirstBatch.add(exchangeMetadataResponse.serverErrorCode == ServerErrorCode.No_Error
+          ? exchangeMetadataResponse.remoteToken : replicasToReplicatePerNode.get(i).getToken());
+    }
+    Deque<Future<PrefetchedMetadata>> pendingPrefetches = new ArrayDeque<Future<PrefetchedMetadata>>();
+    Future<PrefetchedMetadata> lastPrefetch = null;
+    AtomicBoolean abandoned = new AtomicBoolean(false);
+    ConnectedChannel metadataChannel = null;
+    boolean metadataChannelHealthy = true;
+    int batchesRequested = 1;
+    try {
+      while (true) {
+        while (running && batchesRequested < replicationConfig.replicationPipelineDepth
+            && getPrefetchedBytes(pendingPrefetches) <= replicationConfig.replicationPipelineMaxPrefetchedBytes) {
+          if (metadataChannel == null) {
+            metadataChannel = connectionPool.checkOutConnection(remoteNode.getHostname(),
+                replicasToReplicatePerNode.get(0).getPort(),
+                replicationConfig.replicationConnectionPoolCheckoutTimeoutMs);
+          }
+          lastPrefetch = metadataPrefetcher.submit(
+              new MetadataPrefetch(metadataChannel, replicasToReplicatePerNode, remoteNode, lastPrefetch,
+                  tokensAfterFirstBatch, abandoned));
+          pendingPrefetches.add(lastPrefetch);
+          batchesRequested++;
+        }
+        fixMissingStoreKeys(connectedChannel, replicasToReplicatePerNode, exchangeMetadataResponseList);
+        Future<PrefetchedMetadata> nextPrefetch = pendingPrefetches.poll();
+        if (nextPrefetch == null) {
+          break;
+        }
+        long exchangeMetadataStartTimeInMs = SystemTime.getInstance().milliseconds();
+        PrefetchedMetadata prefetchedMetadata;
+        try {
+          prefetchedMetadata = nextPrefetch.get();
+        } catch (ExecutionException e) {
+          metadataChannelHealthy = false;
+          if (e.getCause() instanceof IOException) {
+            throw (IOException) e.getCause();
+          }
+          throw new ReplicationException("Pipelined metadata request failed", e.getCause());
+        }
+        if (prefetchedMetadata.response == null) {
+          // the remote replicas did not have anything new in the previous batch, so the request was not sent.
+          break;
+        }
+        for (int i = 0; i < replicasToReplicatePerNode.size(); i++) {
+          if (prefetchedMetadata.requestTokens.get(i) != replicasToReplicatePerNode.get(i).getToken()) {
+            logger.trace("Remote node: {} Thread name: {} Remote replica: {} Token did not advance as expected, "
+                + "discarding pipelined metadata", remoteNode, threadName, replicasToReplicatePerNode.get(i));
+            replicationMetrics.replicationPipelineFlushCount.inc();
+            return;
+          }
+        }
+        try {
+          exchangeMetadataResponseList =
+              handleReplicaMetadataResponse(prefetchedMetadata.response, replicasToReplicatePerNode, remoteNode);
+        } finally {
+          replicationMetrics.updateExchangeMetadataTime(
+              SystemTime.getInstance().milliseconds() - exchangeMetadataStartTimeInMs, replicatingFromRemoteColo,
+              replicatingOverSsl, datacenterName);
+        }
+        replicationMetrics.replicationPipelinedMetadataExchangeCount.inc();
+      }
+    } finally {
+      if (metadataChannel != null) {
+        metadataChannelHealthy &= abandonPrefetches(pendingPrefetches, abandoned);
+        if (metadataChannelHealthy) {
+          connectionPool.checkInConnection(metadataChannel);
+        } else {
+          connectionPool.destroyConnection(metadataChannel);
+        }
+      }
+    }
+  }
+
+  /**
+   * Abandons the metadata requests that were issued ahead of time and have not been consumed, and waits for them to
+   * finish so that the connection they use is no longer in use. The requests that have not been sent yet are not sent.
+   * @param pendingPrefetches the metadata requests that have not been consumed.
+   * @param abandoned the flag that the requests check before they are sent.
+   * @return {@code true} if none of the requests failed, {@code false} otherwise.
+   * @throws InterruptedException
+   */
+  private boolean abandonPrefetches(Deque<Future<PrefetchedMetadata>> pendingPrefetches, AtomicBoolean abandoned)
+      throws InterruptedException {
+    boolean succeeded = true;
+    abandoned.set(true);
+    if (!pendingPrefetches.isEmpty()) {
+      replicationMetrics.replicationPipelineFlushCount.inc();
+      for (Future<PrefetchedMetadata> prefetch : pendingPrefetches) {
+        try {
+          prefetch.get();
+        } catch (ExecutionException e) {
+          succeeded = false;
+        }
+      }
+    }
+    return succeeded;
+  }
+
+  /**
+   * @param pendingPrefetches the metadata requests that have been issued ahead of time and have not been consumed.
+   * @return the total size of the responses that have been received for the given requests.
+   */
+  private long getPrefetchedBytes(Deque<Future<PrefetchedMetadata>> pendingPrefetches) {
+    long prefetchedBytes = 0;
+    for (Future<PrefetchedMetadata> prefetch : pendingPrefetches) {
+      if (prefetch.isDone()) {
+        try {
+          prefetchedBytes += prefetch.get().sizeInBytes;
+        } catch (Exception e) {
+          // the failure is surfaced when the response is consumed.
+        }
+      }
+    }
+    return prefetchedBytes;
+  }
+
   /**
    * Gets the replica metadata response for a list of remote replicas on a given remote data node
    * @param replicasToReplicatePerNode The list of remote replicas for a node
+   * @param tokens The tokens to send to the remote replicas, in the same order as the replicas
    * @param connectedChannel The connection channel to the node
    * @param remoteNode The remote node from which replication needs to happen
    * @return ReplicaMetadataResponse, the response from replica metadata request to remote node
@@ -373,23 +656,25 @@ class ReplicaThread implements Runnable {
    * @throws IOException
    */
   private ReplicaMetadataResponse getReplicaMetadataResponse(List<RemoteReplicaInfo> replicasToReplicatePerNode,
-      ConnectedChannel connectedChannel, DataNodeId remoteNode) throws ReplicationException, IOException {
+      List<FindToken> tokens, ConnectedChannel connectedChannel, DataNodeId remoteNode)
+      throws ReplicationException, IOException {
     long replicaMetadataRequestStartTime = SystemTime.getInstance().milliseconds();
     List<ReplicaMetadataRequestInfo> replicaMetadataRequestInfoList = new ArrayList<ReplicaMetadataRequestInfo>();
-    for (RemoteReplicaInfo remoteReplicaInfo : replicasToReplicatePerNode) {
+    for (int i = 0; i < replicasToReplicatePerNode.size(); i++) {
+      RemoteReplicaInfo remoteReplicaInfo = replicasToReplicatePerNode.get(i);
       ReplicaMetadataRequestInfo replicaMetadataRequestInfo =
-          new ReplicaMetadataRequestInfo(remoteReplicaInfo.getReplicaId().getPartitionId(),
-              remoteReplicaInfo.getToken(), dataNodeId.getHostname(),
-              remoteReplicaInfo.getLocalReplicaId().getReplicaPath());
+          new ReplicaMetadataRequestInfo(remoteReplicaInfo.getReplicaId().getPartitionId(), tokens.get(i),
+              dataNodeId.getHostname(), remoteReplicaInfo.getLocalReplicaId().getReplicaPath());
       replicaMetadataRequestInfoList.add(replicaMetadataRequestInfo);
       logger.trace("Remote node: {} Thread name: {} Remote replica: {} Token going to be sent to remote: {} ",
-          remoteNode, threadName, remoteReplicaInfo.getReplicaId(), remoteReplicaInfo.getToken());
+          remoteNode, threadName, remoteReplicaInfo.getReplicaId(), tokens.get(i));
     }
 
     try {
       ReplicaMetadataRequest request = new ReplicaMetadataRequest(correlationIdGenerator.incrementAndGet(),
           "replication-metadata-" + dataNodeId.getHostname(), replicaMetadataRequestInfoList,
-          replicationConfig.replicationFetchSizeInBytes);
+          replicationConfig.replicationFetchSizeInBytes, acceptedCompressionCodec,
+          replicationConfig.replicationCompactMetadataResponseEnabled);
       connectedChannel.send(request);
       ChannelOutput channelOutput = connectedChannel.receive();
       ByteBufferInputStream byteBufferInputStream =
@@ -398,6 +683,7 @@ class ReplicaThread implements Runnable {
           remoteNode, threadName, replicasToReplicatePerNode, byteBufferInputStream.available());
       ReplicaMetadataResponse response =
           ReplicaMetadataResponse.readFrom(new DataInputStream(byteBufferInputStream), findTokenFactory, clusterMap);
+      replicationMetrics.updateInterColoResponseCompressionMetrics(response.getCompressedPayload());
 
       long metadataRequestTime = SystemTime.getInstance().milliseconds() - replicaMetadataRequestStartTime;
       replicationMetrics.updateMetadataRequestTime(metadataRequestTime, replicatingFromRemoteColo, replicatingOverSsl,
@@ -575,10 +861,11 @@ class ReplicaThread implements Runnable {
    * @return The response that contains the missing messages
    * @throws ReplicationException
    * @throws IOException
+   * @throws InterruptedException
    */
   private GetResponse getMessagesForMissingKeys(ConnectedChannel connectedChannel,
       List<ExchangeMetadataResponse> exchangeMetadataResponseList, List<RemoteReplicaInfo> replicasToReplicatePerNode,
-      DataNodeId remoteNode) throws ReplicationException, IOException {
+      DataNodeId remoteNode) throws ReplicationException, IOException, InterruptedException {
     List<PartitionRequestInfo> partitionRequestInfoList = new ArrayList<PartitionRequestInfo>();
     for (int i = 0; i < exchangeMetadataResponseList.size(); i++) {
       ExchangeMetadataResponse exchangeMetadataResponse = exchangeMetadataResponseList.get(i);
@@ -598,15 +885,20 @@ class ReplicaThread implements Runnable {
     }
     GetRequest getRequest =
         new GetRequest(correlationIdGenerator.incrementAndGet(), "replication-fetch-" + dataNodeId.getHostname(),
-            MessageFormatFlags.All, partitionRequestInfoList, GetOption.None);
+            MessageFormatFlags.All, partitionRequestInfoList, GetOption.None, acceptedCompressionCodec);
     long startTime = SystemTime.getInstance().milliseconds();
     try {
       connectedChannel.send(getRequest);
       ChannelOutput channelOutput = connectedChannel.receive();
       GetResponse getResponse = GetResponse.readFrom(new DataInputStream(channelOutput.getInputStream()), clusterMap);
+      replicationMetrics.updateInterColoResponseCompressionMetrics(getResponse.getCompressedPayload());
       long getRequestTime = SystemTime.getInstance().milliseconds() - startTime;
       replicationMetrics.updateGetRequestTime(getRequestTime, replicatingFromRemoteColo, replicatingOverSsl,
           datacenterName);
+      if (bandwidthController != null) {
+        long throttleTime = bandwidthController.throttleFetch(datacenterName, channelOutput.getStreamSize());
+        replicationMetrics.updateFetchThrottleTime(throttleTime, replicatingFromRemoteColo, datacenterName);
+      }
       if (getResponse.getError() != ServerErrorCode.No_Error) {
         logger.error("Remote node: " + remoteNode + " Thread name: " + threadName + " Remote replicas: "
             + replicasToReplicatePerNode + " GetResponse from replication: " + getResponse.getError());
@@ -623,16 +915,19 @@ class ReplicaThread implements Runnable {
   /**
    * Writes the messages to the local stores from the remote stores for the missing keys
    * @param exchangeMetadataResponseList The list of metadata response from the remote node
-   * @param getResponse The getResponse that contains the messages
+   * @param getResponse The getResponse that contains the messages. Can be {@code null} if no keys are missing
    * @param replicasToReplicatePerNode The list of remote replicas for the remote node
    * @param remoteNode The remote node from which replication needs to happen
+   * @throws IOException
+   * @throws InterruptedException
    */
   private void writeMessagesToLocalStore(List<ExchangeMetadataResponse> exchangeMetadataResponseList,
       GetResponse getResponse, List<RemoteReplicaInfo> replicasToReplicatePerNode, DataNodeId remoteNode)
-      throws IOException {
+      throws IOException, InterruptedException {
     int partitionResponseInfoIndex = 0;
     long totalBytesFixed = 0;
     long totalBlobsFixed = 0;
+    Map<String, Long> bytesFixedPerMountPath = new HashMap<String, Long>();
     long startTime = SystemTime.getInstance().milliseconds();
     for (int i = 0; i < exchangeMetadataResponseList.size(); i++) {
       ExchangeMetadataResponse exchangeMetadataResponse = exchangeMetadataResponseList.get(i);
@@ -657,31 +952,38 @@ class ReplicaThread implements Runnable {
                   exchangeMetadataResponse.missingStoreKeys, remoteReplicaInfo.getReplicaId().getPartitionId(),
                   remoteReplicaInfo.getLocalReplicaId().getMountPath());
 
-              MessageFormatWriteSet writeset = null;
               if (validateMessageStream) {
-                MessageSievingInputStream validMessageDetectionInputStream =
-                    new MessageSievingInputStream(getResponse.getInputStream(), messageInfoList, storeKeyFactory,
+                // the messages are validated one at a time as they are written to the store, so that only one message
+                // is held in memory. The store learns which ones were valid from the write set once it has written it.
+                MessageSievingWriteSet sievingWriteSet =
+                    new MessageSievingWriteSet(getResponse.getInputStream(), messageInfoList, storeKeyFactory,
                         metricRegistry);
-                if (validMessageDetectionInputStream.hasInvalidMessages()) {
+                try {
+                  remoteReplicaInfo.getLocalStore().put(sievingWriteSet);
+                } finally {
+                  // the store may not have written the messages (for e.g. if they already exist). They still have to
+                  // be read off the stream since the messages of the other partitions follow them.
+                  sievingWriteSet.skipRemainingMessages();
+                }
+                if (sievingWriteSet.hasInvalidMessages()) {
                   replicationMetrics.incrementInvalidMessageError(partitionResponseInfo.getPartition());
                   logger.error("Out of " + (messageInfoList.size()) + " messages, " + (messageInfoList.size()
-                      - validMessageDetectionInputStream.getValidMessageInfoList().size())
+                      - sievingWriteSet.getValidMessageInfoList().size())
                       + " invalid messages were found in message stream from " + remoteReplicaInfo.getReplicaId());
                 }
-                messageInfoList = validMessageDetectionInputStream.getValidMessageInfoList();
+                messageInfoList = sievingWriteSet.getValidMessageInfoList();
                 if (messageInfoList.size() == 0) {
                   logger.error("MessageInfoList is of size 0 as all messages are invalidated ");
-                } else {
-                  writeset = new MessageFormatWriteSet(validMessageDetectionInputStream, messageInfoList, false);
-                  remoteReplicaInfo.getLocalStore().put(writeset);
                 }
               } else {
-                writeset = new MessageFormatWriteSet(getResponse.getInputStream(), messageInfoList, true);
+                MessageFormatWriteSet writeset =
+                    new MessageFormatWriteSet(getResponse.getInputStream(), messageInfoList, true);
                 remoteReplicaInfo.getLocalStore().put(writeset);
               }
 
+              long bytesFixed = 0;
               for (MessageInfo messageInfo : messageInfoList) {
-                totalBytesFixed += messageInfo.getSize();
+                bytesFixed += messageInfo.getSize();
                 logger.trace("Remote node: {} Thread name: {} Remote replica: {} Message replicated: {} Partition: {} "
                         + "Local mount path: {} Message size: {}", remoteNode, threadName, remoteReplicaInfo.getReplicaId(),
                     messageInfo.getStoreKey(), remoteReplicaInfo.getReplicaId().getPartitionId(),
@@ -691,7 +993,12 @@ class ReplicaThread implements Runnable {
                       messageInfo.getStoreKey().getID(), BlobReplicaSourceType.REPAIRED);
                 }
               }
+              totalBytesFixed += bytesFixed;
               totalBlobsFixed += messageInfoList.size();
+              String mountPath = remoteReplicaInfo.getLocalReplicaId().getMountPath();
+              Long bytesFixedInMountPath = bytesFixedPerMountPath.get(mountPath);
+              bytesFixedPerMountPath.put(mountPath,
+                  bytesFixedInMountPath == null ? bytesFixed : bytesFixedInMountPath + bytesFixed);
               remoteReplicaInfo.setToken(exchangeMetadataResponse.remoteToken);
               remoteReplicaInfo.setLocalLagFromRemoteInBytes(exchangeMetadataResponse.localLagFromRemoteInBytes);
               logger.trace("Remote node: {} Thread name: {} Remote replica: {} Token after speaking to remote node: {}",
@@ -720,6 +1027,12 @@ class ReplicaThread implements Runnable {
     long batchStoreWriteTime = SystemTime.getInstance().milliseconds() - startTime;
     replicationMetrics.updateBatchStoreWriteTime(batchStoreWriteTime, totalBytesFixed, totalBlobsFixed,
         replicatingFromRemoteColo, replicatingOverSsl, datacenterName);
+    if (bandwidthController != null) {
+      for (Map.Entry<String, Long> entry : bytesFixedPerMountPath.entrySet()) {
+        replicationMetrics.storeWriteThrottleTime.update(
+            bandwidthController.throttleWrite(entry.getKey(), entry.getValue()));
+      }
+    }
   }
 
   static class ExchangeMetadataResponse {
@@ -743,6 +1056,85 @@ class ReplicaThread implements Runnable {
     }
   }
 
+  /**
+   * The response to a metadata request that was sent ahead of the fetch of the batch before it.
+   */
+  private static class PrefetchedMetadata {
+    // the tokens that were sent in the request.
+    final List<FindToken> requestTokens;
+    // null if the request was not sent, as there was nothing new in the batch before or the pipeline was abandoned.
+    final ReplicaMetadataResponse response;
+    final long sizeInBytes;
+
+    PrefetchedMetadata(List<FindToken> requestTokens, ReplicaMetadataResponse response) {
+      this.requestTokens = requestTokens;
+      this.response = response;
+      this.sizeInBytes = response == null ? 0 : response.sizeInBytes();
+    }
+  }
+
+  /**
+   * Sends a metadata request with the tokens returned in the response to the previous request. Runs on the
+   * metadata prefetcher, which runs one request at a time in the order they were submitted.
+   */
+  private class MetadataPrefetch implements Callable<PrefetchedMetadata> {
+    private final ConnectedChannel metadataChannel;
+    private final List<RemoteReplicaInfo> replicasToReplicatePerNode;
+    private final DataNodeId remoteNode;
+    private final Future<PrefetchedMetadata> previousPrefetch;
+    private final List<FindToken> tokensAfterFirstBatch;
+    private final AtomicBoolean abandoned;
+
+    /**
+     * @param metadataChannel the connection to send the request over.
+     * @param replicasToReplicatePerNode the replicas that are being replicated.
+     * @param remoteNode the remote node from which replication needs to happen.
+     * @param previousPrefetch the request before this one. If {@code null}, this request follows the first batch.
+     * @param tokensAfterFirstBatch the tokens to use if this request follows the first batch.
+     * @param abandoned if set, the request is not sent as its response will not be used.
+     */
+    MetadataPrefetch(ConnectedChannel metadataChannel, List<RemoteReplicaInfo> replicasToReplicatePerNode,
+        DataNodeId remoteNode, Future<PrefetchedMetadata> previousPrefetch, List<FindToken> tokensAfterFirstBatch,
+        AtomicBoolean abandoned) {
+      this.metadataChannel = metadataChannel;
+      this.replicasToReplicatePerNode = replicasToReplicatePerNode;
+      this.remoteNode = remoteNode;
+      this.previousPrefetch = previousPrefetch;
+      this.tokensAfterFirstBatch = tokensAfterFirstBatch;
+      this.abandoned = abandoned;
+    }
+
+    @Override
+    public PrefetchedMetadata call() throws Exception {
+      List<FindToken> tokens = tokensAfterFirstBatch;
+      if (abandoned.get()) {
+        return new PrefetchedMetadata(tokens, null);
+      }
+      if (previousPrefetch != null) {
+        PrefetchedMetadata previous = previousPrefetch.get();
+        if (previous.response == null) {
+          return previous;
+        }
+        tokens = new ArrayList<FindToken>(replicasToReplicatePerNode.size());
+        boolean hasNewMessages = false;
+        for (int i = 0; i < replicasToReplicatePerNode.size(); i++) {
+          ReplicaMetadataResponseInfo responseInfo = previous.response.getReplicaMetadataResponseInfoList().get(i);
+          if (responseInfo.getError() == ServerErrorCode.No_Error) {
+            tokens.add(responseInfo.getFindToken());
+            hasNewMessages |= responseInfo.getMessageInfoList().size() > 0;
+          } else {
+            tokens.add(previous.requestTokens.get(i));
+          }
+        }
+        if (!hasNewMessages) {
+          return new PrefetchedMetadata(tokens, null);
+        }
+      }
+      return new PrefetchedMetadata(tokens,
+          getReplicaMetadataResponse(replicasToReplicatePerNode, tokens, metadataChannel, remoteNode));
+    }
+  }
+
   boolean isThreadUp() {
     return running;
   }
@@ -0,0 +1,221 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import com.github.ambry.utils.Crc32;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * An append-only journal of replica token records that is kept alongside a replica token file. Only the tokens that
+ * changed since they were last persisted are appended to the journal, and the journal is reset whenever the full
+ * token file is rewritten, so the records in the journal always apply on top of the token file.
+ * <p/>
+ * Records are buffered by {@link #append(byte[])} and written out with a single fsync by {@link #flush()}. Every
+ * record is framed as [int size][record][long crc] so that a record that was torn by a crash is detected and, along
+ * with anything after it, ignored by {@link #readRecords()}.
+ */
+class ReplicaTokenJournal implements Closeable {
+  static final short Journal_Version_V1 = 1;
+  private static final int Version_Size = 2;
+  private static final int Record_Overhead = 4 + 8;
+
+  private final File file;
+  private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+  private final DataOutputStream pendingWriter = new DataOutputStream(pending);
+  private final Crc32 crc = new Crc32();
+  private RandomAccessFile randomAccessFile = null;
+  private FileChannel channel = null;
+  // the size of the journal up to the end of the last record that was completely written.
+  private long validSize = 0;
+  private int pendingRecordCount = 0;
+
+  /**
+   * @param file the file of the journal. It is created on the first flush if it does not exist.
+   */
+  ReplicaTokenJournal(File file) {
+    this.file = file;
+  }
+
+  /**
+   * @return the file of this journal.
+   */
+  File getFile() {
+    return file;
+  }
+
+  /**
+   * Reads all the records in the journal, in the order they were appended. Reading stops at the first record that is
+   * incomplete or fails the crc check.
+   * @return the records in the journal. Empty if the journal file does not exist.
+   * @throws IOException if the journal could not be read or has an unknown version.
+   */
+  List<byte[]> readRecords() throws IOException {
+    List<byte[]> records = new ArrayList<byte[]>();
+    if (!file.exists()) {
+      return records;
+    }
+    RandomAccessFile reader = new RandomAccessFile(file, "r");
+    try {
+      long fileSize = reader.length();
+      if (fileSize < Version_Size) {
+        return records;
+      }
+      short version = reader.readShort();
+      if (version != Journal_Version_V1) {
+        throw new IOException("Invalid version " + version + " in replica token journal " + file);
+      }
+      long position = Version_Size;
+      while (fileSize - position >= Record_Overhead) {
+        int recordSize = reader.readInt();
+        // records are never empty, and an empty record with a zero crc is what a zero filled tail looks like.
+        if (recordSize <= 0 || fileSize - position - Record_Overhead < recordSize) {
+          break;
+        }
+        byte[] record = new byte[recordSize];
+        reader.readFully(record);
+        crc.reset();
+        crc.update(record, 0, recordSize);
+        if (crc.getValue() != reader.readLong()) {
+          break;
+        }
+        records.add(record);
+        position += Record_Overhead + recordSize;
+      }
+      return records;
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Buffers a record to be written to the journal on the next {@link #flush()}.
+   * @param record the record to append. Cannot be empty.
+   */
+  void append(byte[] record) {
+    if (record.length == 0) {
+      throw new IllegalArgumentException("Cannot append an empty record to the replica token journal " + file);
+    }
+    try {
+      crc.reset();
+      crc.update(record, 0, record.length);
+      pendingWriter.writeInt(record.length);
+      pendingWriter.write(record);
+      pendingWriter.writeLong(crc.getValue());
+      pendingRecordCount++;
+    } catch (IOException e) {
+      // writes to a ByteArrayOutputStream do not fail.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @return the number of records that have been appended but not flushed yet.
+   */
+  int getPendingRecordCount() {
+    return pendingRecordCount;
+  }
+
+  /**
+   * Writes the buffered records to the end of the journal and syncs the journal to disk once for all of them.
+   * @return the number of bytes written. Nothing is written or synced if no records are buffered.
+   * @throws IOException if the records could not be written or synced.
+   */
+  long flush() throws IOException {
+    if (pendingRecordCount == 0) {
+      return 0;
+    }
+    FileChannel fileChannel = getChannel();
+    ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+    long bytesWritten = buffer.remaining();
+    if (fileChannel.size() != validSize) {
+      // drop whatever was left behind by a flush that failed midway.
+      fileChannel.truncate(validSize);
+    }
+    fileChannel.position(validSize);
+    while (buffer.hasRemaining()) {
+      fileChannel.write(buffer);
+    }
+    fileChannel.force(false);
+    validSize += bytesWritten;
+    pending.reset();
+    pendingRecordCount = 0;
+    return bytesWritten;
+  }
+
+  /**
+   * Removes all the records from the journal, including the ones that have not been flushed yet, and syncs the
+   * empty journal to disk.
+   * @throws IOException if the journal could not be truncated or synced.
+   */
+  void reset() throws IOException {
+    pending.reset();
+    pendingRecordCount = 0;
+    FileChannel fileChannel = getChannel();
+    fileChannel.truncate(Version_Size);
+    fileChannel.force(false);
+    validSize = Version_Size;
+  }
+
+  /**
+   * @return the size of the journal on disk in bytes, excluding the records that have not been flushed yet.
+   * @throws IOException if the size could not be determined.
+   */
+  long getSizeInBytes() throws IOException {
+    return channel != null ? channel.size() : file.length();
+  }
+
+  /**
+   * Closes the journal file. Records that have not been flushed are dropped. The journal is reopened if it is used
+   * again.
+   * @throws IOException if the journal file could not be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    if (randomAccessFile != null) {
+      randomAccessFile.close();
+      randomAccessFile = null;
+      channel = null;
+    }
+  }
+
+  /**
+   * @return the channel of the journal file, opening the file (and writing its header if it is new) if required.
+   * @throws IOException if the file could not be opened.
+   */
+  private FileChannel getChannel() throws IOException {
+    if (channel == null) {
+      randomAccessFile = new RandomAccessFile(file, "rw");
+      channel = randomAccessFile.getChannel();
+      if (channel.size() < Version_Size) {
+        ByteBuffer header = ByteBuffer.allocate(Version_Size);
+        header.putShort(Journal_Version_V1);
+        header.flip();
+        channel.truncate(0);
+        channel.write(header, 0);
+      }
+      validSize = channel.size();
+    }
+    return channel;
+  }
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import com.codahale.metrics.Timer;
+import com.github.ambry.config.ReplicationConfig;
+import com.github.ambry.utils.Throttler;
+import com.github.ambry.utils.Time;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Limits the bandwidth used by replication. The rate at which messages are fetched is limited per remote datacenter
+ * and in total, and the rate at which replicated messages are written is limited per local mount path. Every limit is
+ * enforced by a {@link Throttler}, which makes the replica thread that exceeds it sleep off the excess.
+ * <p/>
+ * When run, the write rate of every mount path is adjusted based on the latency of the gets served by the stores on it.
+ * The rate is halved while the 95th percentile latency of any of the stores is above the configured threshold, and
+ * is raised back towards the configured rate a step at a time otherwise.
+ */
+class ReplicationBandwidthController implements Runnable {
+  static final long Throttler_Check_Interval_Ms = 100;
+  static final double Min_Write_Rate_Fraction = 0.1;
+  static final double Write_Rate_Increase_Fraction = 0.1;
+
+  private final Throttler totalFetchThrottler;
+  private final Map<String, Throttler> fetchThrottlers = new HashMap<String, Throttler>();
+  private final Map<String, Throttler> writeThrottlers = new HashMap<String, Throttler>();
+  private final Map<String, List<Timer>> foregroundLatencyTimers;
+  private final long writeBandwidthPerDiskBytesPerSec;
+  private final long foregroundLatencyThresholdMs;
+  private final ReplicationMetrics replicationMetrics;
+  private final Time time;
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  /**
+   * @param replicationConfig the {@link ReplicationConfig} that has the limits.
+   * @param foregroundLatencyTimers the {@link Timer}s that track the latency of the gets served by the stores, grouped
+   *                                by the mount path of the stores. A write throttler is created for every mount path.
+   * @param replicationMetrics the {@link ReplicationMetrics} to use.
+   * @param time the {@link Time} instance to use.
+   * @throws IllegalArgumentException if the per datacenter limits are not in the datacenter:rate format.
+   */
+  ReplicationBandwidthController(ReplicationConfig replicationConfig, Map<String, List<Timer>> foregroundLatencyTimers,
+      ReplicationMetrics replicationMetrics, Time time) {
+    this.foregroundLatencyTimers = foregroundLatencyTimers;
+    this.writeBandwidthPerDiskBytesPerSec = replicationConfig.replicationWriteBandwidthPerDiskBytesPerSec;
+    this.foregroundLatencyThresholdMs = replicationConfig.replicationWriteBandwidthForegroundLatencyThresholdMs;
+    this.replicationMetrics = replicationMetrics;
+    this.time = time;
+    totalFetchThrottler = createThrottler(replicationConfig.replicationFetchBandwidthTotalBytesPerSec);
+    for (String datacenterLimit : replicationConfig.replicationFetchBandwidthPerDatacenter.split(",")) {
+      datacenterLimit = datacenterLimit.trim();
+      if (datacenterLimit.isEmpty()) {
+        continue;
+      }
+      int separatorIndex = datacenterLimit.lastIndexOf(':');
+      long bytesPerSec;
+      try {
+        bytesPerSec = separatorIndex > 0 ? Long.parseLong(datacenterLimit.substring(separatorIndex + 1).trim()) : -1;
+      } catch (NumberFormatException e) {
+        bytesPerSec = -1;
+      }
+      if (bytesPerSec < 0) {
+        throw new IllegalArgumentException("Invalid fetch bandwidth limit for datacenter: " + datacenterLimit);
+      }
+      Throttler throttler = createThrottler(bytesPerSec);
+      if (throttler != null) {
+        fetchThrottlers.put(datacenterLimit.substring(0, separatorIndex).trim(), throttler);
+      }
+    }
+    for (String mountPath : foregroundLatencyTimers.keySet()) {
+      Throttler throttler = createThrottler(writeBandwidthPerDiskBytesPerSec);
+      if (throttler != null) {
+        writeThrottlers.put(mountPath, throttler);
+      }
+    }
+  }
+
+  /**
+   * Accounts for messages fetched from a datacenter, and waits if the rate at which messages are fetched from the
+   * datacenter or in total is above its limit.
+   * @param datacenterName the datacenter that the messages were fetched from.
+   * @param bytesFetched the number of bytes fetched.
+   * @return the time in ms spent waiting.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  long throttleFetch(String datacenterName, long bytesFetched) throws InterruptedException {
+    long startTimeInMs = time.milliseconds();
+    Throttler throttler = fetchThrottlers.get(datacenterName);
+    if (throttler != null) {
+      throttler.maybeThrottle(bytesFetched);
+    }
+    if (totalFetchThrottler != null) {
+      totalFetchThrottler.maybeThrottle(bytesFetched);
+    }
+    return time.milliseconds() - startTimeInMs;
+  }
+
+  /**
+   * Accounts for messages written to the stores on a mount path, and waits if the rate at which messages are written
+   * to the mount path is above its limit.
+   * @param mountPath the mount path of the stores that the messages were written to.
+   * @param bytesWritten the number of bytes written.
+   * @return the time in ms spent waiting.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  long throttleWrite(String mountPath, long bytesWritten) throws InterruptedException {
+    long startTimeInMs = time.milliseconds();
+    Throttler throttler = writeThrottlers.get(mountPath);
+    if (throttler != null) {
+      throttler.maybeThrottle(bytesWritten);
+    }
+    return time.milliseconds() - startTimeInMs;
+  }
+
+  /**
+   * @return {@code true} if the write rates need to be adjusted periodically by running this controller.
+   */
+  boolean isAdjustmentEnabled() {
+    return foregroundLatencyThresholdMs > 0 && !writeThrottlers.isEmpty();
+  }
+
+  /**
+   * @param mountPath the mount path whose write rate is required.
+   * @return the current write rate limit in bytes/sec of the given mount path, or -1 if it is not limited.
+   */
+  double getWriteRate(String mountPath) {
+    Throttler throttler = writeThrottlers.get(mountPath);
+    return throttler == null ? -1 : throttler.getDesiredRatePerSec();
+  }
+
+  /**
+   * Adjusts the write rate of every mount path based on the latency of the gets served by the stores on it.
+   */
+  @Override
+  public void run() {
+    try {
+      for (Map.Entry<String, Throttler> entry : writeThrottlers.entrySet()) {
+        String mountPath = entry.getKey();
+        Throttler throttler = entry.getValue();
+        double latencyMs = 0;
+        for (Timer timer : foregroundLatencyTimers.get(mountPath)) {
+          latencyMs = Math.max(latencyMs, timer.getSnapshot().get95thPercentile() / Time.NsPerMs);
+        }
+        double currentRate = throttler.getDesiredRatePerSec();
+        double newRate;
+        if (latencyMs > foregroundLatencyThresholdMs) {
+          newRate = Math.max(currentRate / 2, writeBandwidthPerDiskBytesPerSec * Min_Write_Rate_Fraction);
+          if (newRate < currentRate) {
+            replicationMetrics.replicationDiskBandwidthReductionCount.inc();
+            logger.info("Reducing replication write rate of mount path {} to {} bytes/sec as get latency is {} ms",
+                mountPath, newRate, latencyMs);
+          }
+        } else {
+          newRate = Math.min(currentRate + writeBandwidthPerDiskBytesPerSec * Write_Rate_Increase_Fraction,
+              writeBandwidthPerDiskBytesPerSec);
+        }
+        throttler.setDesiredRatePerSec(newRate);
+      }
+    } catch (Exception e) {
+      logger.error("Error while adjusting the replication write rates", e);
+    }
+  }
+
+  /**
+   * Closes all the throttlers, waking up the threads that are waiting on them. No thread waits after this.
+   */
+  void close() {
+    if (totalFetchThrottler != null) {
+      totalFetchThrottler.close();
+    }
+    for (Throttler throttler : fetchThrottlers.values()) {
+      throttler.close();
+    }
+    for (Throttler throttler : writeThrottlers.values()) {
+      throttler.close();
+    }
+  }
+
+  /**
+   * @param bytesPerSec the limit in bytes/sec.
+   * @return a {@link Throttler} for the given limit, or {@code null} if the limit is 0, i.e. there is no limit.
+   */
+  private Throttler createThrottler(long bytesPerSec) {
+    return bytesPerSec > 0 ? new Throttler(bytesPerSec, Throttler_Check_Interval_Ms, true, time) : null;
+  }
+}
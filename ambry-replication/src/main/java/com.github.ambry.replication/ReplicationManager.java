@@ -14,6 +14,7 @@
 package com.github.ambry.replication;
 
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.github.ambry.clustermap.ClusterMap;
 import com.github.ambry.clustermap.DataNodeId;
 import com.github.ambry.clustermap.PartitionId;
@@ -30,11 +31,15 @@ import com.github.ambry.store.FindTokenFactory;
 import com.github.ambry.store.StorageManager;
 import com.github.ambry.store.Store;
 import com.github.ambry.store.StoreKeyFactory;
+import com.github.ambry.store.StoreMetrics;
 import com.github.ambry.utils.CrcInputStream;
 import com.github.ambry.utils.CrcOutputStream;
+import com.github.ambry.utils.Pair;
 import com.github.ambry.utils.SystemTime;
 import com.github.ambry.utils.Time;
 import com.github.ambry.utils.Utils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
@@ -48,7 +53,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
@@ -74,7 +82,9 @@ final class RemoteReplicaInfo {
   // The token that is known to be safe to persist.
   private FindToken tokenSafeToPersist = null;
   private long totalBytesReadFromLocalStore;
-  private long localLagFromRemoteStore = -1;
+  private volatile long localLagFromRemoteStore = -1;
+  // true while the local store is being bootstrapped from a peer, during which nothing is replicated into it.
+  private volatile boolean localStoreBootstrapping = false;
 
   RemoteReplicaInfo(ReplicaId replicaId, ReplicaId localReplicaId, Store localStore, FindToken token,
       long tokenPersistIntervalInMs, Time time, Port port) {
@@ -130,6 +140,14 @@ final class RemoteReplicaInfo {
     this.localLagFromRemoteStore = localLagFromRemoteStore;
   }
 
+  boolean isLocalStoreBootstrapping() {
+    return localStoreBootstrapping;
+  }
+
+  void setLocalStoreBootstrapping(boolean localStoreBootstrapping) {
+    this.localStoreBootstrapping = localStoreBootstrapping;
+  }
+
   long getTotalBytesReadFromLocalStore() {
     return this.totalBytesReadFromLocalStore;
   }
@@ -266,9 +284,16 @@ public final class ReplicationManager {
   private final MetricRegistry metricRegistry;
   private final ArrayList<String> sslEnabledDatacenters;
   private final Map<String, ArrayList<ReplicaThread>> replicaThreadPools;
+  private final List<ReplicationScheduler> replicationSchedulers;
   private final Map<String, Integer> numberOfReplicaThreads;
+  private final ReplicationBandwidthController bandwidthController;
+  // bootstraps the empty stores from their peers. Null if bootstrapping from peers is disabled.
+  private final ReplicaBootstrapper replicaBootstrapper;
+  // runs the bootstraps of the empty stores, one mount path per thread. Null if bootstrapping from peers is disabled.
+  private final ExecutorService bootstrapExecutor;
 
   private static final String replicaTokenFileName = "replicaTokens";
+  private static final String replicaTokenJournalFileName = replicaTokenFileName + ".journal";
   private static final short Crc_Size = 8;
   private static final short Replication_Delay_Multiplier = 5;
 
@@ -282,6 +307,7 @@ public final class ReplicationManager {
       this.storeKeyFactory = storeKeyFactory;
       this.factory = Utils.getObj(replicationConfig.replicationTokenFactory, storeKeyFactory);
       this.replicaThreadPools = new HashMap<String, ArrayList<ReplicaThread>>();
+      this.replicationSchedulers = new ArrayList<ReplicationScheduler>();
       this.replicationMetrics = new ReplicationMetrics(metricRegistry, clusterMap.getReplicaIds(dataNode));
       this.partitionGroupedByMountPath = new HashMap<String, List<PartitionInfo>>();
       this.partitionsToReplicate = new HashMap<PartitionId, PartitionInfo>();
@@ -297,6 +323,7 @@ public final class ReplicationManager {
       this.dataNodeRemoteReplicaInfosPerDC = new HashMap<String, DataNodeRemoteReplicaInfos>();
       this.sslEnabledDatacenters = Utils.splitString(clusterMapConfig.clusterMapSslEnabledDatacenters, ",");
       this.numberOfReplicaThreads = new HashMap<String, Integer>();
+      Map<String, List<Timer>> foregroundLatencyTimers = new HashMap<String, List<Timer>>();
 
       // initialize all partitions
       for (ReplicaId replicaId : replicaIds) {
@@ -315,6 +342,7 @@ public final class ReplicationManager {
                       storeConfig.storeDataFlushIntervalSeconds * SystemTime.MsPerSec * Replication_Delay_Multiplier,
                       SystemTime.getInstance(), remoteReplica.getDataNodeId().getPortToConnectTo());
               replicationMetrics.addRemoteReplicaToLagMetrics(remoteReplicaInfo);
+              replicationMetrics.addLocalReplicaLagMetrics(remoteReplicaInfo);
               replicationMetrics.createRemoteReplicaErrorMetrics(remoteReplicaInfo);
               remoteReplicas.add(remoteReplicaInfo);
               updateReplicasToReplicate(remoteReplica.getDataNodeId().getDatacenterName(), remoteReplicaInfo);
@@ -327,6 +355,13 @@ public final class ReplicationManager {
             }
             partitionInfos.add(partitionInfo);
             partitionGroupedByMountPath.put(replicaId.getMountPath(), partitionInfos);
+            List<Timer> timers = foregroundLatencyTimers.get(replicaId.getMountPath());
+            if (timers == null) {
+              timers = new ArrayList<>();
+              foregroundLatencyTimers.put(replicaId.getMountPath(), timers);
+            }
+            // the stores are named after their partitions by the storage manager.
+            timers.add(metricRegistry.timer(StoreMetrics.getGetResponseMetricName(partition.toString())));
           }
         } else {
           logger.error(
@@ -334,6 +369,22 @@ public final class ReplicationManager {
         }
       }
       replicationMetrics.populatePerColoMetrics(numberOfReplicaThreads.keySet());
+      this.bandwidthController =
+          new ReplicationBandwidthController(replicationConfig, foregroundLatencyTimers, replicationMetrics,
+              SystemTime.getInstance());
+      this.replicaBootstrapper = replicationConfig.replicationBootstrapFromPeerEnabled ? new ReplicaBootstrapper(
+          replicationConfig, storageManager, connectionPool, factory, dataNodeId, replicationMetrics,
+          bandwidthController, correlationIdGenerator) : null;
+      this.bootstrapExecutor =
+          replicaBootstrapper != null && !partitionGroupedByMountPath.isEmpty() ? Executors.newFixedThreadPool(
+              partitionGroupedByMountPath.size(), new ThreadFactory() {
+                private final AtomicInteger threadCount = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                  return Utils.newThread("replica-bootstrap-" + threadCount.getAndIncrement(), runnable, true);
+                }
+              }) : null;
     } catch (Exception e) {
       logger.error("Error on starting replication manager", e);
       throw new ReplicationException("Error on starting replication manager");
@@ -348,6 +399,9 @@ public final class ReplicationManager {
       for (String mountPath : partitionGroupedByMountPath.keySet()) {
         readFromFileAndPersistIfNecessary(mountPath);
       }
+      if (bootstrapExecutor != null) {
+        bootstrapEmptyStores();
+      }
       if (dataNodeRemoteReplicaInfosPerDC.size() == 0) {
         logger.warn("Number of Datacenters to replicate from is 0, not starting any replica threads");
         return;
@@ -361,6 +415,7 @@ public final class ReplicationManager {
       // start all replica threads
       for (List<ReplicaThread> replicaThreads : replicaThreadPools.values()) {
         for (ReplicaThread thread : replicaThreads) {
+          replicationMetrics.trackReplicaThreadUtilization(thread);
           Thread replicaThread = Utils.newThread(thread.getName(), thread, false);
           logger.info("Starting replica thread " + thread.getName());
           replicaThread.start();
@@ -371,11 +426,70 @@ public final class ReplicationManager {
       // start scheduler thread to persist index in the background
       this.scheduler.scheduleAtFixedRate(persistor, replicationConfig.replicationTokenFlushDelaySeconds,
           replicationConfig.replicationTokenFlushIntervalSeconds, TimeUnit.SECONDS);
+      if (bandwidthController.isAdjustmentEnabled()) {
+        // adjust the replication write rates to the latency of the gets served by the stores.
+        this.scheduler.scheduleAtFixedRate(bandwidthController,
+            replicationConfig.replicationWriteBandwidthAdjustmentIntervalSeconds,
+            replicationConfig.replicationWriteBandwidthAdjustmentIntervalSeconds, TimeUnit.SECONDS);
+      }
     } catch (IOException e) {
       logger.error("IO error while starting replication");
     }
   }
 
+  /**
+   * Takes the stores that are empty out of serving and pauses replication into them, and then bootstraps them from
+   * their peers in the background, one mount path per thread. Each store is put back into serving and replicated into
+   * as soon as its own bootstrap is done. The tokens of the peers that the stores were bootstrapped from are persisted
+   * right away, so that replication from them continues after the bootstrapped data even if the server restarts.
+   */
+  private void bootstrapEmptyStores() {
+    for (Map.Entry<String, List<PartitionInfo>> entry : partitionGroupedByMountPath.entrySet()) {
+      final String mountPath = entry.getKey();
+      final List<PartitionInfo> partitionsToBootstrap = new ArrayList<PartitionInfo>();
+      for (PartitionInfo partitionInfo : entry.getValue()) {
+        if (replicaBootstrapper.prepare(partitionInfo)) {
+          partitionsToBootstrap.add(partitionInfo);
+        }
+      }
+      if (partitionsToBootstrap.isEmpty()) {
+        continue;
+      }
+      bootstrapExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          bootstrapEmptyStores(mountPath, partitionsToBootstrap);
+        }
+      });
+    }
+  }
+
+  /**
+   * Bootstraps the given stores of a mount path one after the other. Stores that were not bootstrapped yet when the
+   * thread is interrupted are put back into serving and replicated as usual.
+   * @param mountPath the mount path of the stores.
+   * @param partitionsToBootstrap the partitions of the stores that were prepared to be bootstrapped.
+   */
+  private void bootstrapEmptyStores(String mountPath, List<PartitionInfo> partitionsToBootstrap) {
+    for (PartitionInfo partitionInfo : partitionsToBootstrap) {
+      try {
+        if (Thread.currentThread().isInterrupted()) {
+          throw new InterruptedException();
+        }
+        if (replicaBootstrapper.bootstrap(partitionInfo)) {
+          persistor.write(mountPath, false);
+        }
+      } catch (InterruptedException e) {
+        logger.info("Interrupted while bootstrapping partition {}", partitionInfo.getPartitionId());
+        Thread.currentThread().interrupt();
+        replicaBootstrapper.finish(partitionInfo);
+      } catch (Exception e) {
+        logger.error("Could not persist the replica tokens of mount path {} after bootstrapping partition {}",
+            mountPath, partitionInfo.getPartitionId(), e);
+      }
+    }
+  }
+
   /**
    * Updates the total bytes read by a remote replica from local store
    * @param partitionId PartitionId to which the replica belongs to
@@ -439,6 +553,19 @@ public final class ReplicationManager {
    */
   public void shutdown() throws ReplicationException {
     try {
+      // wake up the replica threads that are waiting for work, so that they can stop
+      for (ReplicationScheduler replicationScheduler : replicationSchedulers) {
+        replicationScheduler.close();
+      }
+      // wake up the replica threads and the bootstraps that are throttled
+      bandwidthController.close();
+      if (bootstrapExecutor != null) {
+        bootstrapExecutor.shutdownNow();
+        if (!bootstrapExecutor.awaitTermination(replicationConfig.replicationConnectionPoolCheckoutTimeoutMs,
+            TimeUnit.MILLISECONDS)) {
+          logger.error("Store bootstraps did not stop in time");
+        }
+      }
       // stop all replica threads
       for (Map.Entry<String, ArrayList<ReplicaThread>> replicaThreads : replicaThreadPools.entrySet()) {
         if (replicaThreads.getKey().equals(dataNodeId.getDatacenterName())) {
@@ -519,6 +646,11 @@ public final class ReplicationManager {
       }
 
       ResponseHandler responseHandler = new ResponseHandler(clusterMap);
+      if (replicationConfig.replicationDynamicAssignmentEnabled) {
+        assignReplicasToThreadPoolDynamically(datacenter, dataNodeRemoteReplicaInfos, replicaThreadCount,
+            responseHandler);
+        continue;
+      }
 
       int numberOfNodesPerThread = dataNodesCount / replicaThreadCount;
       int remainingNodes = dataNodesCount % replicaThreadCount;
@@ -551,7 +683,7 @@ public final class ReplicationManager {
             new ReplicaThread(threadIdentity, replicasForThread, factory, clusterMap, correlationIdGenerator,
                 dataNodeId, connectionPool, replicationConfig, replicationMetrics, notification, storeKeyFactory,
                 replicationConfig.replicationValidateMessageStream, metricRegistry, replicatingOverSsl, datacenter,
-                responseHandler);
+                responseHandler, bandwidthController);
         if (replicaThreadPools.containsKey(datacenter)) {
           replicaThreadPools.get(datacenter).add(replicaThread);
         } else {
@@ -562,7 +694,47 @@ public final class ReplicationManager {
   }
 
   /**
-   * Reads the replica tokens from the file and populates the Remote replica info
+   * Creates the replica threads for the given DC, which get the replicas to replicate from a
+   * {@link ReplicationScheduler} that hands out the replicas of the DC as the threads become free.
+   * @param datacenter the DC to replicate from.
+   * @param dataNodeRemoteReplicaInfos the remote replicas in the DC.
+   * @param replicaThreadCount the number of replica threads to create.
+   * @param responseHandler the {@link ResponseHandler} for the replica threads.
+   */
+  private void assignReplicasToThreadPoolDynamically(String datacenter,
+      DataNodeRemoteReplicaInfos dataNodeRemoteReplicaInfos, int replicaThreadCount, ResponseHandler responseHandler) {
+    Map<DataNodeId, List<RemoteReplicaInfo>> replicasGroupedByNode = new HashMap<DataNodeId, List<RemoteReplicaInfo>>();
+    for (DataNodeId dataNodeToReplicate : dataNodeRemoteReplicaInfos.getDataNodeIds()) {
+      replicasGroupedByNode.put(dataNodeToReplicate,
+          dataNodeRemoteReplicaInfos.getRemoteReplicaListForDataNode(dataNodeToReplicate));
+    }
+    ReplicationScheduler replicationScheduler =
+        new ReplicationScheduler(replicasGroupedByNode, replicationConfig.replicationMaxReplicasPerWorkUnit,
+            replicationConfig.replicationMaxLagForWaitTimeInBytes);
+    replicationSchedulers.add(replicationScheduler);
+    int workUnitCount = replicationScheduler.getWorkUnits().size();
+    if (workUnitCount < replicaThreadCount) {
+      logger.warn("Number of replica threads: {} is more than the number of work units to replicate: {}",
+          replicaThreadCount, workUnitCount);
+      replicaThreadCount = workUnitCount;
+    }
+    boolean replicatingOverSsl = sslEnabledDatacenters.contains(datacenter);
+    ArrayList<ReplicaThread> replicaThreads = new ArrayList<ReplicaThread>(replicaThreadCount);
+    for (int i = 0; i < replicaThreadCount; i++) {
+      String threadIdentity =
+          "Replica Thread-" + (dataNodeId.getDatacenterName().equals(datacenter) ? "Intra-" : "Inter") + i
+              + datacenter;
+      replicaThreads.add(
+          new ReplicaThread(threadIdentity, replicationScheduler, factory, clusterMap, correlationIdGenerator,
+              dataNodeId, connectionPool, replicationConfig, replicationMetrics, notification, storeKeyFactory,
+              replicationConfig.replicationValidateMessageStream, metricRegistry, replicatingOverSsl, datacenter,
+              responseHandler, bandwidthController));
+    }
+    replicaThreadPools.put(datacenter, replicaThreads);
+  }
+
+  /**
+   * Reads the replica tokens from the file and the journal (if any) and populates the Remote replica info
    * and persists the token file if necessary.
    * @param mountPath The mount path where the replica tokens are stored
    * @throws ReplicationException
@@ -572,6 +744,7 @@ public final class ReplicationManager {
     logger.info("Reading replica tokens for mount path {}", mountPath);
     long readStartTimeMs = SystemTime.getInstance().milliseconds();
     File replicaTokenFile = new File(mountPath, replicaTokenFileName);
+    File replicaTokenJournalFile = new File(mountPath, replicaTokenJournalFileName);
     boolean tokenWasReset = false;
     if (replicaTokenFile.exists()) {
       CrcInputStream crcStream = new CrcInputStream(new FileInputStream(replicaTokenFile));
@@ -581,55 +754,7 @@ public final class ReplicationManager {
         switch (version) {
           case 0:
             while (stream.available() > Crc_Size) {
-              // read partition id
-              PartitionId partitionId = clusterMap.getPartitionIdFromStream(stream);
-              // read remote node host name
-              String hostname = Utils.readIntString(stream);
-              // read remote replica path
-              String replicaPath = Utils.readIntString(stream);
-              // read remote port
-              int port = stream.readInt();
-              // read total bytes read from local store
-              long totalBytesReadFromLocalStore = stream.readLong();
-              // read replica token
-              FindToken token = factory.getFindToken(stream);
-              // update token
-              PartitionInfo partitionInfo = partitionsToReplicate.get(partitionId);
-              if (partitionInfo != null) {
-                boolean updatedToken = false;
-                for (RemoteReplicaInfo remoteReplicaInfo : partitionInfo.getRemoteReplicaInfos()) {
-                  if (remoteReplicaInfo.getReplicaId().getDataNodeId().getHostname().equalsIgnoreCase(hostname)
-                      && remoteReplicaInfo.getReplicaId().getDataNodeId().getPort() == port
-                      && remoteReplicaInfo.getReplicaId().getReplicaPath().equals(replicaPath)) {
-                    logger.info("Read token for partition {} remote host {} port {} token {}", partitionId, hostname,
-                        port, token);
-                    if (partitionInfo.getStore().getSizeInBytes() > 0) {
-                      remoteReplicaInfo.initializeTokens(token);
-                      remoteReplicaInfo.setTotalBytesReadFromLocalStore(totalBytesReadFromLocalStore);
-                    } else {
-                      // if the local replica is empty, it could have been newly created. In this case, the offset in
-                      // every peer replica which the local replica lags from should be set to 0, so that the local
-                      // replica starts fetching from the beginning of the peer. The totalBytes the peer read from the
-                      // local replica should also be set to 0. During initialization these values are already set to 0,
-                      // so we let them be.
-                      tokenWasReset = true;
-                      logTokenReset(partitionId, hostname, port, token);
-                    }
-                    updatedToken = true;
-                    break;
-                  }
-                }
-                if (!updatedToken) {
-                  logger.warn("Persisted remote replica host {} and port {} not present in new cluster ", hostname,
-                      port);
-                }
-              } else {
-                // If this partition was not found in partitionsToReplicate, it means that the local store corresponding
-                // to this partition could not be started. In such a case, the tokens for its remote replicas should be
-                // reset.
-                tokenWasReset = true;
-                logTokenReset(partitionId, hostname, port, token);
-              }
+              tokenWasReset |= restoreToken(stream);
             }
             long crc = crcStream.getValue();
             if (crc != stream.readLong()) {
@@ -644,19 +769,96 @@ public final class ReplicationManager {
         throw new ReplicationException("IO error while reading from replica token file " + e);
       } finally {
         stream.close();
-        replicationMetrics.remoteReplicaTokensRestoreTime.update(
-            SystemTime.getInstance().milliseconds() - readStartTimeMs);
       }
     }
+    boolean journalExists = replicaTokenJournalFile.exists();
+    if (journalExists) {
+      // the records in the journal were appended after the token file was written, so they override its tokens. The
+      // journal is read even if it is disabled now, so that the tokens journaled before it was disabled are not lost.
+      try {
+        List<byte[]> records = new ReplicaTokenJournal(replicaTokenJournalFile).readRecords();
+        logger.info("Read {} records from the replica token journal for mount path {}", records.size(), mountPath);
+        for (byte[] record : records) {
+          tokenWasReset |= restoreToken(new DataInputStream(new ByteArrayInputStream(record)));
+        }
+      } catch (IOException e) {
+        throw new ReplicationException("IO error while reading from replica token journal " + e);
+      }
+    }
+    if (replicaTokenFile.exists() || journalExists) {
+      replicationMetrics.remoteReplicaTokensRestoreTime.update(
+          SystemTime.getInstance().milliseconds() - readStartTimeMs);
+    }
 
-    if (tokenWasReset) {
+    if (tokenWasReset || journalExists) {
       // We must ensure that the the token file is persisted if any of the tokens in the file got reset. We need to do
       // this before an associated store takes any writes, to avoid the case where a store takes writes and persists it,
-      // before the replica token file is persisted after the reset.
+      // before the replica token file is persisted after the reset. The journal is folded into the token file as well,
+      // which also drops any record torn by a crash at its end.
       persistor.write(mountPath, false);
     }
   }
 
+  /**
+   * Reads a single replica token record (as written by the {@link ReplicaTokenPersistor}) from the stream and
+   * initializes the token of the remote replica it belongs to.
+   * @param stream the stream to read the record from.
+   * @return {@code true} if the token had to be reset instead.
+   * @throws IOException if the record could not be read.
+   */
+  private boolean restoreToken(DataInputStream stream) throws IOException {
+    boolean tokenWasReset = false;
+    // read partition id
+    PartitionId partitionId = clusterMap.getPartitionIdFromStream(stream);
+    // read remote node host name
+    String hostname = Utils.readIntString(stream);
+    // read remote replica path
+    String replicaPath = Utils.readIntString(stream);
+    // read remote port
+    int port = stream.readInt();
+    // read total bytes read from local store
+    long totalBytesReadFromLocalStore = stream.readLong();
+    // read replica token
+    FindToken token = factory.getFindToken(stream);
+    // update token
+    PartitionInfo partitionInfo = partitionsToReplicate.get(partitionId);
+    if (partitionInfo != null) {
+      boolean updatedToken = false;
+      for (RemoteReplicaInfo remoteReplicaInfo : partitionInfo.getRemoteReplicaInfos()) {
+        if (remoteReplicaInfo.getReplicaId().getDataNodeId().getHostname().equalsIgnoreCase(hostname)
+            && remoteReplicaInfo.getReplicaId().getDataNodeId().getPort() == port
+            && remoteReplicaInfo.getReplicaId().getReplicaPath().equals(replicaPath)) {
+          logger.info("Read token for partition {} remote host {} port {} token {}", partitionId, hostname, port,
+              token);
+          if (partitionInfo.getStore().getSizeInBytes() > 0) {
+            remoteReplicaInfo.initializeTokens(token);
+            remoteReplicaInfo.setTotalBytesReadFromLocalStore(totalBytesReadFromLocalStore);
+          } else {
+            // if the local replica is empty, it could have been newly created. In this case, the offset in
+            // every peer replica which the local replica lags from should be set to 0, so that the local
+            // replica starts fetching from the beginning of the peer. The totalBytes the peer read from the
+            // local replica should also be set to 0. During initialization these values are already set to 0,
+            // so we let them be.
+            tokenWasReset = true;
+            logTokenReset(partitionId, hostname, port, token);
+          }
+          updatedToken = true;
+          break;
+        }
+      }
+      if (!updatedToken) {
+        logger.warn("Persisted remote replica host {} and port {} not present in new cluster ", hostname, port);
+      }
+    } else {
+      // If this partition was not found in partitionsToReplicate, it means that the local store corresponding
+      // to this partition could not be started. In such a case, the tokens for its remote replicas should be
+      // reset.
+      tokenWasReset = true;
+      logTokenReset(partitionId, hostname, port, token);
+    }
+    return tokenWasReset;
+  }
+
   /**
    * Update metrics and print a log message when a replica token is reset.
    * @param partitionId The replica's partition.
@@ -670,15 +872,31 @@ public final class ReplicationManager {
         port, token);
   }
 
+  /**
+   * Persists the replica tokens of every mount path. The tokens are written to the replica token file of the mount
+   * path, which is rewritten in full every time. If the token journal is enabled, the periodic writes instead append
+   * only the tokens that changed since they were last persisted to the {@link ReplicaTokenJournal} of the mount path,
+   * with a single sync for all of them. The token file is rewritten (and the journal emptied) once the journal grows
+   * past a threshold and on shutdown.
+   */
   class ReplicaTokenPersistor implements Runnable {
 
     private Logger logger = LoggerFactory.getLogger(getClass());
     private final short version = 0;
+    private final Map<String, ReplicaTokenJournal> journals = new HashMap<String, ReplicaTokenJournal>();
+    // the token and the total bytes read from the local store that were last persisted for a remote replica
+    private final Map<RemoteReplicaInfo, Pair<FindToken, Long>> persistedTokens =
+        new HashMap<RemoteReplicaInfo, Pair<FindToken, Long>>();
 
-    private void write(String mountPath, boolean shuttingDown) throws IOException, ReplicationException {
+    private synchronized void write(String mountPath, boolean shuttingDown) throws IOException, ReplicationException {
       long writeStartTimeMs = SystemTime.getInstance().milliseconds();
       File temp = new File(mountPath, replicaTokenFileName + ".tmp");
       File actual = new File(mountPath, replicaTokenFileName);
+      if (replicationConfig.replicationTokenJournalEnabled) {
+        // the journal is emptied before the token file is replaced, so that a crash in between can only take the
+        // tokens back to the ones in the old token file, and never replay the journal over a newer token file.
+        getJournal(mountPath).reset();
+      }
       FileOutputStream fileStream = new FileOutputStream(temp);
       CrcOutputStream crc = new CrcOutputStream(fileStream);
       DataOutputStream writer = new DataOutputStream(crc);
@@ -690,14 +908,10 @@ public final class ReplicationManager {
           for (RemoteReplicaInfo remoteReplica : info.getRemoteReplicaInfos()) {
             FindToken tokenToPersist = remoteReplica.getTokenToPersist();
             if (tokenToPersist != null) {
-              writer.write(info.getPartitionId().getBytes());
-              writer.writeInt(remoteReplica.getReplicaId().getDataNodeId().getHostname().getBytes().length);
-              writer.write(remoteReplica.getReplicaId().getDataNodeId().getHostname().getBytes());
-              writer.writeInt(remoteReplica.getReplicaId().getReplicaPath().getBytes().length);
-              writer.write(remoteReplica.getReplicaId().getReplicaPath().getBytes());
-              writer.writeInt(remoteReplica.getReplicaId().getDataNodeId().getPort());
-              writer.writeLong(remoteReplica.getTotalBytesReadFromLocalStore());
-              writer.write(tokenToPersist.toBytes());
+              long totalBytesReadFromLocalStore = remoteReplica.getTotalBytesReadFromLocalStore();
+              writeToken(writer, info, remoteReplica, tokenToPersist, totalBytesReadFromLocalStore);
+              persistedTokens.put(remoteReplica,
+                  new Pair<FindToken, Long>(tokenToPersist, totalBytesReadFromLocalStore));
               remoteReplica.onTokenPersisted();
               if (shuttingDown) {
                 logger.info("Persisting token {}", tokenToPersist);
@@ -710,8 +924,17 @@ public final class ReplicationManager {
 
         // flush and overwrite old file
         fileStream.getChannel().force(true);
+        replicationMetrics.remoteReplicaTokensPersistedBytes.update(fileStream.getChannel().size());
         // swap temp file with the original file
         temp.renameTo(actual);
+        if (!replicationConfig.replicationTokenJournalEnabled) {
+          // a journal left behind from when it was enabled has been folded into the token file.
+          File journalFile = new File(mountPath, replicaTokenJournalFileName);
+          if (journalFile.exists() && !journalFile.delete()) {
+            logger.error("Could not delete the replica token journal {}", journalFile.getAbsolutePath());
+          }
+        }
+        replicationMetrics.remoteReplicaTokensCheckpointCount.inc();
       } catch (IOException e) {
         logger.error("IO error while persisting tokens to disk {}", temp.getAbsoluteFile());
         throw new ReplicationException("IO error while persisting replica tokens to disk ");
@@ -723,15 +946,115 @@ public final class ReplicationManager {
       logger.debug("Completed writing replica tokens to file {}", actual.getAbsolutePath());
     }
 
+    /**
+     * Appends the tokens of the mount path that changed since they were last persisted to the journal of the mount
+     * path, and syncs the journal once for all of them. Rewrites the token file instead if the journal has grown past
+     * the configured size.
+     * @param mountPath the mount path to persist the tokens of.
+     */
+    private synchronized void writeToJournal(String mountPath) throws IOException, ReplicationException {
+      ReplicaTokenJournal journal = getJournal(mountPath);
+      if (journal.getSizeInBytes() >= replicationConfig.replicationTokenJournalMaxSizeInBytes) {
+        write(mountPath, false);
+        return;
+      }
+      long writeStartTimeMs = SystemTime.getInstance().milliseconds();
+      List<RemoteReplicaInfo> remoteReplicasWithTokens = new ArrayList<RemoteReplicaInfo>();
+      Map<RemoteReplicaInfo, Pair<FindToken, Long>> changedTokens =
+          new HashMap<RemoteReplicaInfo, Pair<FindToken, Long>>();
+      ByteArrayOutputStream recordStream = new ByteArrayOutputStream();
+      DataOutputStream writer = new DataOutputStream(recordStream);
+      try {
+        for (PartitionInfo info : partitionGroupedByMountPath.get(mountPath)) {
+          for (RemoteReplicaInfo remoteReplica : info.getRemoteReplicaInfos()) {
+            FindToken tokenToPersist = remoteReplica.getTokenToPersist();
+            if (tokenToPersist != null) {
+              remoteReplicasWithTokens.add(remoteReplica);
+              long totalBytesReadFromLocalStore = remoteReplica.getTotalBytesReadFromLocalStore();
+              Pair<FindToken, Long> persistedToken = persistedTokens.get(remoteReplica);
+              // a new token is always a new object, so the tokens need not be compared by value.
+              if (persistedToken == null || persistedToken.getFirst() != tokenToPersist
+                  || persistedToken.getSecond() != totalBytesReadFromLocalStore) {
+                recordStream.reset();
+                writeToken(writer, info, remoteReplica, tokenToPersist, totalBytesReadFromLocalStore);
+                journal.append(recordStream.toByteArray());
+                changedTokens.put(remoteReplica,
+                    new Pair<FindToken, Long>(tokenToPersist, totalBytesReadFromLocalStore));
+              }
+            }
+          }
+        }
+        long bytesWritten = journal.flush();
+        persistedTokens.putAll(changedTokens);
+        for (RemoteReplicaInfo remoteReplica : remoteReplicasWithTokens) {
+          remoteReplica.onTokenPersisted();
+        }
+        replicationMetrics.remoteReplicaTokensJournalRecordCount.inc(changedTokens.size());
+        replicationMetrics.remoteReplicaTokensPersistedBytes.update(bytesWritten);
+      } catch (IOException e) {
+        logger.error("IO error while appending tokens to the replica token journal {}",
+            journal.getFile().getAbsoluteFile());
+        throw new ReplicationException("IO error while persisting replica tokens to disk ");
+      } finally {
+        replicationMetrics.remoteReplicaTokensJournalWriteTime.update(
+            SystemTime.getInstance().milliseconds() - writeStartTimeMs);
+      }
+      logger.debug("Appended {} replica tokens to journal {}", changedTokens.size(),
+          journal.getFile().getAbsolutePath());
+    }
+
+    /**
+     * Writes the record of a replica token.
+     * @param writer the stream to write the record to.
+     * @param info the {@link PartitionInfo} of the partition the remote replica belongs to.
+     * @param remoteReplica the remote replica whose token is written.
+     * @param token the token to write.
+     * @param totalBytesReadFromLocalStore the total bytes read by the remote replica from the local store.
+     */
+    private void writeToken(DataOutputStream writer, PartitionInfo info, RemoteReplicaInfo remoteReplica,
+        FindToken token, long totalBytesReadFromLocalStore) throws IOException {
+      writer.write(info.getPartitionId().getBytes());
+      writer.writeInt(remoteReplica.getReplicaId().getDataNodeId().getHostname().getBytes().length);
+      writer.write(remoteReplica.getReplicaId().getDataNodeId().getHostname().getBytes());
+      writer.writeInt(remoteReplica.getReplicaId().getReplicaPath().getBytes().length);
+      writer.write(remoteReplica.getReplicaId().getReplicaPath().getBytes());
+      writer.writeInt(remoteReplica.getReplicaId().getDataNodeId().getPort());
+      writer.writeLong(totalBytesReadFromLocalStore);
+      writer.write(token.toBytes());
+    }
+
+    /**
+     * @param mountPath the mount path to get the journal of.
+     * @return the {@link ReplicaTokenJournal} of the mount path.
+     */
+    private ReplicaTokenJournal getJournal(String mountPath) {
+      ReplicaTokenJournal journal = journals.get(mountPath);
+      if (journal == null) {
+        journal = new ReplicaTokenJournal(new File(mountPath, replicaTokenJournalFileName));
+        journals.put(mountPath, journal);
+      }
+      return journal;
+    }
+
     /**
      * Iterates through each mount path and persists all the replica tokens for the partitions on the mount
-     * path to a file. The file is saved on the corresponding mount path
+     * path to a file. The file is saved on the corresponding mount path. If the token journal is enabled, only the
+     * tokens that changed are appended to the journal of the mount path unless shutting down.
      * @param shuttingDown indicates whether this is being called as part of shut down
      */
 
-    private void write(boolean shuttingDown) throws IOException, ReplicationException {
+    private synchronized void write(boolean shuttingDown) throws IOException, ReplicationException {
       for (String mountPath : partitionGroupedByMountPath.keySet()) {
-        write(mountPath, shuttingDown);
+        if (replicationConfig.replicationTokenJournalEnabled && !shuttingDown) {
+          writeToJournal(mountPath);
+        } else {
+          write(mountPath, shuttingDown);
+        }
+      }
+      if (shuttingDown) {
+        for (ReplicaTokenJournal journal : journals.values()) {
+          journal.close();
+        }
       }
     }
 
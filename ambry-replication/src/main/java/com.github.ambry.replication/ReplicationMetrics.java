@@ -22,6 +22,8 @@ import com.codahale.metrics.Timer;
 import com.github.ambry.clustermap.DataNodeId;
 import com.github.ambry.clustermap.PartitionId;
 import com.github.ambry.clustermap.ReplicaId;
+import com.github.ambry.protocol.CompressedPayload;
+import com.github.ambry.utils.SystemTime;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -58,6 +60,13 @@ public class ReplicationMetrics {
   public final Counter sslReplicationErrors;
   public final Counter replicationTokenResetCount;
   public final Counter replicationInvalidMessageStreamErrorCount;
+  public final Counter replicationPipelinedMetadataExchangeCount;
+  public final Counter replicationPipelineFlushCount;
+  public final Counter interColoCompressedResponseCount;
+  public final Counter interColoResponseUncompressedBytes;
+  public final Counter interColoResponseCompressedBytes;
+  public final Histogram interColoResponseCompressionRatioInPercent;
+  public final Histogram interColoResponseDecompressionTimeInUs;
   public final Map<String, Timer> interColoReplicationLatency = new HashMap<String, Timer>();
   public final Timer intraColoReplicationLatency;
   public final Map<String, Timer> plainTextInterColoReplicationLatency = new HashMap<String, Timer>();
@@ -66,6 +75,18 @@ public class ReplicationMetrics {
   public final Timer sslIntraColoReplicationLatency;
   public final Histogram remoteReplicaTokensPersistTime;
   public final Histogram remoteReplicaTokensRestoreTime;
+  public final Histogram remoteReplicaTokensJournalWriteTime;
+  public final Histogram remoteReplicaTokensPersistedBytes;
+  public final Counter remoteReplicaTokensJournalRecordCount;
+  public final Counter remoteReplicaTokensCheckpointCount;
+  public final Map<String, Histogram> interColoFetchThrottleTime = new HashMap<String, Histogram>();
+  public final Histogram intraColoFetchThrottleTime;
+  public final Histogram storeWriteThrottleTime;
+  public final Counter replicationDiskBandwidthReductionCount;
+  public final Counter storeBootstrapCount;
+  public final Counter storeBootstrapErrorCount;
+  public final Counter storeBootstrapBytes;
+  public final Histogram storeBootstrapTime;
   public final Map<String, Histogram> interColoExchangeMetadataTime = new HashMap<String, Histogram>();
   public final Histogram intraColoExchangeMetadataTime;
   public final Map<String, Histogram> plainTextInterColoExchangeMetadataTime = new HashMap<String, Histogram>();
@@ -149,6 +170,20 @@ public class ReplicationMetrics {
         registry.counter(MetricRegistry.name(ReplicaThread.class, "ReplicationTokenResetCount"));
     replicationInvalidMessageStreamErrorCount =
         registry.counter(MetricRegistry.name(ReplicaThread.class, "ReplicationInvalidMessageStreamErrorCount"));
+    replicationPipelinedMetadataExchangeCount =
+        registry.counter(MetricRegistry.name(ReplicaThread.class, "ReplicationPipelinedMetadataExchangeCount"));
+    replicationPipelineFlushCount =
+        registry.counter(MetricRegistry.name(ReplicaThread.class, "ReplicationPipelineFlushCount"));
+    interColoCompressedResponseCount =
+        registry.counter(MetricRegistry.name(ReplicaThread.class, "InterColoCompressedResponseCount"));
+    interColoResponseUncompressedBytes =
+        registry.counter(MetricRegistry.name(ReplicaThread.class, "InterColoResponseUncompressedBytes"));
+    interColoResponseCompressedBytes =
+        registry.counter(MetricRegistry.name(ReplicaThread.class, "InterColoResponseCompressedBytes"));
+    interColoResponseCompressionRatioInPercent =
+        registry.histogram(MetricRegistry.name(ReplicaThread.class, "InterColoResponseCompressionRatioInPercent"));
+    interColoResponseDecompressionTimeInUs =
+        registry.histogram(MetricRegistry.name(ReplicaThread.class, "InterColoResponseDecompressionTimeInUs"));
     intraColoReplicationLatency =
         registry.timer(MetricRegistry.name(ReplicaThread.class, "IntraColoReplicationLatency"));
     plainTextIntraColoReplicationLatency =
@@ -159,6 +194,24 @@ public class ReplicationMetrics {
         registry.histogram(MetricRegistry.name(ReplicaThread.class, "RemoteReplicaTokensPersistTime"));
     remoteReplicaTokensRestoreTime =
         registry.histogram(MetricRegistry.name(ReplicaThread.class, "RemoteReplicaTokensRestoreTime"));
+    remoteReplicaTokensJournalWriteTime =
+        registry.histogram(MetricRegistry.name(ReplicaThread.class, "RemoteReplicaTokensJournalWriteTime"));
+    remoteReplicaTokensPersistedBytes =
+        registry.histogram(MetricRegistry.name(ReplicaThread.class, "RemoteReplicaTokensPersistedBytes"));
+    remoteReplicaTokensJournalRecordCount =
+        registry.counter(MetricRegistry.name(ReplicaThread.class, "RemoteReplicaTokensJournalRecordCount"));
+    remoteReplicaTokensCheckpointCount =
+        registry.counter(MetricRegistry.name(ReplicaThread.class, "RemoteReplicaTokensCheckpointCount"));
+    intraColoFetchThrottleTime =
+        registry.histogram(MetricRegistry.name(ReplicaThread.class, "IntraColoFetchThrottleTime"));
+    storeWriteThrottleTime = registry.histogram(MetricRegistry.name(ReplicaThread.class, "StoreWriteThrottleTime"));
+    replicationDiskBandwidthReductionCount =
+        registry.counter(MetricRegistry.name(ReplicaThread.class, "ReplicationDiskBandwidthReductionCount"));
+    storeBootstrapCount = registry.counter(MetricRegistry.name(ReplicaBootstrapper.class, "StoreBootstrapCount"));
+    storeBootstrapErrorCount =
+        registry.counter(MetricRegistry.name(ReplicaBootstrapper.class, "StoreBootstrapErrorCount"));
+    storeBootstrapBytes = registry.counter(MetricRegistry.name(ReplicaBootstrapper.class, "StoreBootstrapBytes"));
+    storeBootstrapTime = registry.histogram(MetricRegistry.name(ReplicaBootstrapper.class, "StoreBootstrapTime"));
     intraColoExchangeMetadataTime =
         registry.histogram(MetricRegistry.name(ReplicaThread.class, "IntraColoExchangeMetadataTime"));
     plainTextIntraColoExchangeMetadataTime =
@@ -284,6 +337,9 @@ public class ReplicationMetrics {
       Histogram interColoGetRequestTimePerDC =
           registry.histogram(MetricRegistry.name(ReplicaThread.class, "Inter-" + datacenter + "-GetRequestTime"));
       interColoGetRequestTime.put(datacenter, interColoGetRequestTimePerDC);
+      Histogram interColoFetchThrottleTimePerDC =
+          registry.histogram(MetricRegistry.name(ReplicaThread.class, "Inter-" + datacenter + "-FetchThrottleTime"));
+      interColoFetchThrottleTime.put(datacenter, interColoFetchThrottleTimePerDC);
       Histogram plainTextInterColoGetRequestTimePerDC = registry.histogram(
           MetricRegistry.name(ReplicaThread.class, "PlainTextInter-" + datacenter + "-GetRequestTime"));
       plainTextInterColoGetRequestTime.put(datacenter, plainTextInterColoGetRequestTimePerDC);
@@ -361,6 +417,50 @@ public class ReplicationMetrics {
     replicaLagInBytes.add(replicaLag);
   }
 
+  /**
+   * Tracks the lag of the local replica from the given remote replica, i.e. how far behind the remote the local replica
+   * is.
+   * @param remoteReplicaInfo the remote replica to track.
+   */
+  public void addLocalReplicaLagMetrics(final RemoteReplicaInfo remoteReplicaInfo) {
+    ReplicaId replicaId = remoteReplicaInfo.getReplicaId();
+    DataNodeId dataNodeId = replicaId.getDataNodeId();
+    final String metricName = dataNodeId.getHostname() + "-" + dataNodeId.getPort() + "-" + replicaId.getPartitionId()
+        + "-localLagFromRemoteInBytes";
+    Gauge<Long> localLag = new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return remoteReplicaInfo.getLocalLagFromRemoteInBytes();
+      }
+    };
+    registry.register(MetricRegistry.name(ReplicationMetrics.class, metricName), localLag);
+  }
+
+  /**
+   * Tracks the utilization of a replica thread, which is the fraction of the time that it spent replicating (as
+   * opposed to waiting for replicas to replicate from) since the last time the metric was read.
+   * @param replicaThread the replica thread to track.
+   */
+  void trackReplicaThreadUtilization(final ReplicaThread replicaThread) {
+    Gauge<Double> utilization = new Gauge<Double>() {
+      private long lastReadTimeInMs = SystemTime.getInstance().milliseconds();
+      private long lastIdleTimeInMs = 0;
+
+      @Override
+      public synchronized Double getValue() {
+        long currentTimeInMs = SystemTime.getInstance().milliseconds();
+        long idleTimeInMs = replicaThread.getIdleTimeInMs();
+        long elapsedTimeInMs = currentTimeInMs - lastReadTimeInMs;
+        double value = elapsedTimeInMs <= 0 ? 1.0
+            : Math.max(0.0, 1.0 - (double) (idleTimeInMs - lastIdleTimeInMs) / elapsedTimeInMs);
+        lastReadTimeInMs = currentTimeInMs;
+        lastIdleTimeInMs = idleTimeInMs;
+        return value;
+      }
+    };
+    registry.register(MetricRegistry.name(ReplicaThread.class, replicaThread.getName() + "-Utilization"), utilization);
+  }
+
   public void populateInvalidMessageMetricForReplicas(List<ReplicaId> replicaIds) {
     for (ReplicaId replicaId : replicaIds) {
       PartitionId partitionId = replicaId.getPartitionId();
@@ -401,6 +501,24 @@ public class ReplicationMetrics {
     localStoreErrorMap.put(localStoreErrorMetricName, localStoreError);
   }
 
+  /**
+   * Updates the compression metrics with the payload of a response received from a remote datacenter.
+   * @param compressedPayload the {@link CompressedPayload} of the response. Can be {@code null} if the response is not
+   *                          compressed, in which case nothing is updated.
+   */
+  public void updateInterColoResponseCompressionMetrics(CompressedPayload compressedPayload) {
+    if (compressedPayload != null) {
+      interColoCompressedResponseCount.inc();
+      interColoResponseUncompressedBytes.inc(compressedPayload.getUncompressedSizeInBytes());
+      interColoResponseCompressedBytes.inc(compressedPayload.getCompressedSizeInBytes());
+      if (compressedPayload.getUncompressedSizeInBytes() > 0) {
+        interColoResponseCompressionRatioInPercent.update(
+            100L * compressedPayload.getCompressedSizeInBytes() / compressedPayload.getUncompressedSizeInBytes());
+      }
+      interColoResponseDecompressionTimeInUs.update(compressedPayload.getProcessingTimeInNanos() / 1000);
+    }
+  }
+
   public void updateMetadataRequestError(ReplicaId remoteReplica) {
     String metadataRequestErrorMetricName =
         remoteReplica.getDataNodeId().getHostname() + "-" + remoteReplica.getDataNodeId().getPort() + "-"
@@ -483,6 +601,14 @@ public class ReplicationMetrics {
     }
   }
 
+  public void updateFetchThrottleTime(long fetchThrottleTime, boolean remoteColo, String datacenterName) {
+    if (remoteColo) {
+      interColoFetchThrottleTime.get(datacenterName).update(fetchThrottleTime);
+    } else {
+      intraColoFetchThrottleTime.update(fetchThrottleTime);
+    }
+  }
+
   public void updateFixMissingStoreKeysTime(long fixMissingStoreKeysTime, boolean remoteColo, boolean sslEnabled,
       String datacenter) {
     if (remoteColo) {
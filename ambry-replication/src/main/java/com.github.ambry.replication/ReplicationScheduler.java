@@ -0,0 +1,181 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import com.github.ambry.clustermap.DataNodeId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Hands out the remote replicas of a datacenter to the replica threads replicating from that datacenter, as they
+ * become free. The remote replicas are divided into work units, each of which holds up to a fixed number of the
+ * replicas on a single remote node, so that a heavily lagging node is spread across threads rather than holding up
+ * one of them.
+ * <p/>
+ * Work units are handed out in rounds. Every unit is handed out once per round, the ones with the highest lag first.
+ * When all the units that have not been handed out in the round are being worked on, a free thread gets the most
+ * lagging of the units that were already handed out in the round (if it is lagging by more than a threshold), so
+ * spare capacity goes to the replicas that are furthest behind. A unit is never worked on by two threads at once.
+ */
+class ReplicationScheduler {
+  private final List<WorkUnit> workUnits = new ArrayList<WorkUnit>();
+  private final long laggingThresholdInBytes;
+  private boolean closed = false;
+
+  /**
+   * @param replicasGroupedByNode the remote replicas to replicate from, grouped by the node they are on.
+   * @param maxReplicasPerWorkUnit the maximum number of replicas in a work unit.
+   * @param laggingThresholdInBytes the lag above which a work unit can be handed out more than once in a round.
+   */
+  ReplicationScheduler(Map<DataNodeId, List<RemoteReplicaInfo>> replicasGroupedByNode, int maxReplicasPerWorkUnit,
+      long laggingThresholdInBytes) {
+    this.laggingThresholdInBytes = laggingThresholdInBytes;
+    for (Map.Entry<DataNodeId, List<RemoteReplicaInfo>> entry : replicasGroupedByNode.entrySet()) {
+      List<RemoteReplicaInfo> replicas = entry.getValue();
+      for (int start = 0; start < replicas.size(); start += maxReplicasPerWorkUnit) {
+        int end = Math.min(start + maxReplicasPerWorkUnit, replicas.size());
+        workUnits.add(new WorkUnit(entry.getKey(), new ArrayList<RemoteReplicaInfo>(replicas.subList(start, end))));
+      }
+    }
+  }
+
+  /**
+   * @return all the work units of this scheduler.
+   */
+  List<WorkUnit> getWorkUnits() {
+    return Collections.unmodifiableList(workUnits);
+  }
+
+  /**
+   * Gets the next work unit to replicate. Blocks until a unit is available. The unit has to be released through
+   * {@link #release(WorkUnit)} once it has been replicated.
+   * @return the work unit to replicate, or {@code null} if the scheduler has been closed.
+   * @throws InterruptedException if the thread is interrupted while waiting.
+   */
+  synchronized WorkUnit acquire() throws InterruptedException {
+    while (!closed) {
+      WorkUnit workUnit = getNextWorkUnit();
+      if (workUnit != null) {
+        workUnit.inProgress = true;
+        workUnit.visitedInRound = true;
+        return workUnit;
+      }
+      wait();
+    }
+    return null;
+  }
+
+  /**
+   * Releases a work unit that was acquired through {@link #acquire()}, so that it can be handed out again.
+   * @param workUnit the work unit to release.
+   */
+  synchronized void release(WorkUnit workUnit) {
+    workUnit.inProgress = false;
+    notifyAll();
+  }
+
+  /**
+   * Closes the scheduler. Threads that are waiting for a work unit, and any that ask for one later, get {@code null}.
+   */
+  synchronized void close() {
+    closed = true;
+    notifyAll();
+  }
+
+  /**
+   * @return the work unit that should be replicated next, or {@code null} if all the units that can be handed out are
+   * being worked on.
+   */
+  private WorkUnit getNextWorkUnit() {
+    WorkUnit workUnit = getMostLagging(false);
+    if (workUnit == null) {
+      boolean roundComplete = true;
+      for (WorkUnit unit : workUnits) {
+        roundComplete &= unit.visitedInRound;
+      }
+      if (roundComplete) {
+        for (WorkUnit unit : workUnits) {
+          unit.visitedInRound = false;
+        }
+        workUnit = getMostLagging(false);
+      }
+    }
+    if (workUnit == null) {
+      WorkUnit mostLagging = getMostLagging(true);
+      if (mostLagging != null && mostLagging.getLocalLagFromRemoteInBytes() > laggingThresholdInBytes) {
+        workUnit = mostLagging;
+      }
+    }
+    return workUnit;
+  }
+
+  /**
+   * @param visitedInRound whether to look at the units that have been handed out in this round or those that have not.
+   * @return the free work unit with the highest lag among those asked for, or {@code null} if there are none.
+   */
+  private WorkUnit getMostLagging(boolean visitedInRound) {
+    WorkUnit mostLagging = null;
+    for (WorkUnit workUnit : workUnits) {
+      if (!workUnit.inProgress && workUnit.visitedInRound == visitedInRound && (mostLagging == null
+          || workUnit.getLocalLagFromRemoteInBytes() > mostLagging.getLocalLagFromRemoteInBytes())) {
+        mostLagging = workUnit;
+      }
+    }
+    return mostLagging;
+  }
+
+  /**
+   * A set of remote replicas on a single node that are replicated together.
+   */
+  static class WorkUnit {
+    private final DataNodeId dataNodeId;
+    private final List<RemoteReplicaInfo> remoteReplicaInfos;
+    // guarded by the scheduler.
+    private boolean inProgress = false;
+    private boolean visitedInRound = false;
+
+    WorkUnit(DataNodeId dataNodeId, List<RemoteReplicaInfo> remoteReplicaInfos) {
+      this.dataNodeId = dataNodeId;
+      this.remoteReplicaInfos = remoteReplicaInfos;
+    }
+
+    DataNodeId getDataNodeId() {
+      return dataNodeId;
+    }
+
+    List<RemoteReplicaInfo> getRemoteReplicaInfos() {
+      return remoteReplicaInfos;
+    }
+
+    /**
+     * @return the total number of bytes by which the local replicas lag the remote replicas of this unit. Replicas
+     * whose lag is not known yet do not count.
+     */
+    long getLocalLagFromRemoteInBytes() {
+      long lag = 0;
+      for (RemoteReplicaInfo remoteReplicaInfo : remoteReplicaInfos) {
+        lag += Math.max(remoteReplicaInfo.getLocalLagFromRemoteInBytes(), 0);
+      }
+      return lag;
+    }
+
+    @Override
+    public String toString() {
+      return dataNodeId + " " + remoteReplicaInfos;
+    }
+  }
+}
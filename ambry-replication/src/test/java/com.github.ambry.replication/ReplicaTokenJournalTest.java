@@ -0,0 +1,191 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * Tests for {@link ReplicaTokenJournal}.
+ */
+public class ReplicaTokenJournalTest {
+  private final File journalFile;
+  private final Random random = new Random();
+
+  public ReplicaTokenJournalTest() throws IOException {
+    journalFile = File.createTempFile("replicaTokens", ".journal");
+    journalFile.delete();
+  }
+
+  @After
+  public void cleanup() {
+    journalFile.delete();
+  }
+
+  /**
+   * Tests that the records are read back in the order they were appended, across flushes and reopens, and that only
+   * flushed records make it to the journal.
+   * @throws IOException
+   */
+  @Test
+  public void appendAndReadTest() throws IOException {
+    ReplicaTokenJournal journal = new ReplicaTokenJournal(journalFile);
+    Assert.assertEquals("Journal should be empty", 0, journal.readRecords().size());
+    Assert.assertEquals("Nothing should be written if there are no records", 0, journal.flush());
+    Assert.assertFalse("Journal file should not have been created", journalFile.exists());
+
+    List<byte[]> records = new ArrayList<byte[]>();
+    for (int i = 0; i < 3; i++) {
+      records.add(appendRecord(journal));
+    }
+    Assert.assertEquals("Unexpected pending record count", 3, journal.getPendingRecordCount());
+    Assert.assertEquals("Records should not be visible before they are flushed", 0, journal.readRecords().size());
+    long bytesWritten = journal.flush();
+    Assert.assertEquals("Unexpected pending record count", 0, journal.getPendingRecordCount());
+    Assert.assertEquals("Unexpected journal size", 2 + bytesWritten, journal.getSizeInBytes());
+    verifyRecords(records, journal.readRecords());
+
+    records.add(appendRecord(journal));
+    journal.flush();
+    verifyRecords(records, journal.readRecords());
+
+    // records appended after the journal is reopened go after the existing ones.
+    journal.close();
+    journal = new ReplicaTokenJournal(journalFile);
+    records.add(appendRecord(journal));
+    journal.flush();
+    verifyRecords(records, journal.readRecords());
+
+    // records that are not flushed are dropped on close.
+    appendRecord(journal);
+    journal.close();
+    verifyRecords(records, new ReplicaTokenJournal(journalFile).readRecords());
+  }
+
+  /**
+   * Tests that a reset removes all the records, flushed or not, and that the journal can be appended to afterwards.
+   * @throws IOException
+   */
+  @Test
+  public void resetTest() throws IOException {
+    ReplicaTokenJournal journal = new ReplicaTokenJournal(journalFile);
+    appendRecord(journal);
+    journal.flush();
+    appendRecord(journal);
+    journal.reset();
+    Assert.assertEquals("Unexpected pending record count", 0, journal.getPendingRecordCount());
+    Assert.assertEquals("Journal should be empty", 0, journal.readRecords().size());
+    Assert.assertEquals("Unexpected journal size", 2, journal.getSizeInBytes());
+    try {
+      journal.append(new byte[0]);
+      Assert.fail("Appending an empty record should have failed");
+    } catch (IllegalArgumentException e) {
+      // expected. Nothing to do.
+    }
+    List<byte[]> records = new ArrayList<byte[]>();
+    records.add(appendRecord(journal));
+    journal.flush();
+    verifyRecords(records, journal.readRecords());
+    journal.close();
+  }
+
+  /**
+   * Tests that a record torn by a crash, or one that fails the crc check, and everything after it are ignored.
+   * @throws IOException
+   */
+  @Test
+  public void tornAndCorruptRecordsTest() throws IOException {
+    ReplicaTokenJournal journal = new ReplicaTokenJournal(journalFile);
+    List<byte[]> records = new ArrayList<byte[]>();
+    records.add(appendRecord(journal));
+    records.add(appendRecord(journal));
+    journal.flush();
+    long validSize = journal.getSizeInBytes();
+    appendRecord(journal);
+    journal.flush();
+    journal.close();
+
+    RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+    try {
+      // a record cut off anywhere in the middle is ignored.
+      for (long size = file.length() - 1; size > validSize; size--) {
+        file.setLength(size);
+        verifyRecords(records, new ReplicaTokenJournal(journalFile).readRecords());
+      }
+      // a zero filled tail is ignored.
+      file.setLength(validSize + 100);
+      verifyRecords(records, new ReplicaTokenJournal(journalFile).readRecords());
+      // a record with a corrupt byte is ignored, as is the valid record after it.
+      file.setLength(validSize);
+      journal = new ReplicaTokenJournal(journalFile);
+      appendRecord(journal);
+      appendRecord(journal);
+      journal.flush();
+      journal.close();
+      file.seek(validSize + 4);
+      byte corruptByte = (byte) (file.readByte() ^ 0xFF);
+      file.seek(validSize + 4);
+      file.writeByte(corruptByte);
+      verifyRecords(records, new ReplicaTokenJournal(journalFile).readRecords());
+      // a record with a garbage size is ignored.
+      file.seek(validSize);
+      file.writeInt(-1);
+      verifyRecords(records, new ReplicaTokenJournal(journalFile).readRecords());
+      // a journal with an unknown version cannot be read.
+      file.seek(0);
+      file.writeShort(ReplicaTokenJournal.Journal_Version_V1 + 1);
+    } finally {
+      file.close();
+    }
+    try {
+      new ReplicaTokenJournal(journalFile).readRecords();
+      Assert.fail("Reading a journal with an unknown version should have failed");
+    } catch (IOException e) {
+      // expected. Nothing to do.
+    }
+  }
+
+  /**
+   * Appends a record with random content to the journal.
+   * @param journal the journal to append to.
+   * @return the record appended.
+   */
+  private byte[] appendRecord(ReplicaTokenJournal journal) {
+    byte[] record = new byte[10 + random.nextInt(100)];
+    random.nextBytes(record);
+    journal.append(record);
+    return record;
+  }
+
+  /**
+   * Verifies that the records read are the expected ones.
+   * @param expected the records expected.
+   * @param actual the records read.
+   */
+  private void verifyRecords(List<byte[]> expected, List<byte[]> actual) {
+    Assert.assertEquals("Unexpected number of records", expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Assert.assertTrue("Record " + i + " does not match", Arrays.equals(expected.get(i), actual.get(i)));
+    }
+  }
+}
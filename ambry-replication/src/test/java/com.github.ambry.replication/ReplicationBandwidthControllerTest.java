@@ -0,0 +1,171 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SlidingWindowReservoir;
+import com.codahale.metrics.Timer;
+import com.github.ambry.clustermap.ReplicaId;
+import com.github.ambry.config.ReplicationConfig;
+import com.github.ambry.config.VerifiableProperties;
+import com.github.ambry.utils.MockTime;
+import com.github.ambry.utils.Time;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * Tests for {@link ReplicationBandwidthController}.
+ */
+public class ReplicationBandwidthControllerTest {
+  private static final String MOUNT_PATH = "/mnt0";
+  private static final long DISK_BYTES_PER_SEC = 1000;
+  private static final long LATENCY_THRESHOLD_MS = 10;
+
+  private final MockTime time = new MockTime();
+  private final ReplicationMetrics replicationMetrics =
+      new ReplicationMetrics(new MetricRegistry(), Collections.<ReplicaId>emptyList());
+  // remembers only the latest get latency.
+  private final Timer getLatencyTimer = new Timer(new SlidingWindowReservoir(1));
+
+  /**
+   * Tests that fetches are throttled per datacenter and in total, and that writes are throttled per mount path.
+   * @throws InterruptedException
+   */
+  @Test
+  public void throttleTest() throws InterruptedException {
+    Properties properties = new Properties();
+    properties.setProperty("replication.fetch.bandwidth.per.datacenter", "DC1:1000, DC2:0");
+    properties.setProperty("replication.write.bandwidth.per.disk.bytes.per.sec", Long.toString(DISK_BYTES_PER_SEC));
+    ReplicationBandwidthController controller = createController(properties);
+    Assert.assertEquals("No time should have been spent waiting", 0, controller.throttleFetch("DC1", 1000));
+    Assert.assertEquals("No time should have been spent waiting", 0, controller.throttleWrite(MOUNT_PATH, 1000));
+    advanceTime(200);
+    // 2000 bytes in 200 ms has to be stretched to 2000 ms at 1000 bytes/sec.
+    Assert.assertEquals("Unexpected time spent waiting", 1800, controller.throttleFetch("DC1", 1000));
+    Assert.assertEquals("Unexpected time spent waiting", 1800, controller.throttleWrite(MOUNT_PATH, 1000));
+    // datacenters and mount paths without a limit are never throttled.
+    Assert.assertEquals("No time should have been spent waiting", 0, controller.throttleFetch("DC2", 1000000));
+    Assert.assertEquals("No time should have been spent waiting", 0, controller.throttleFetch("DC3", 1000000));
+    Assert.assertEquals("No time should have been spent waiting", 0, controller.throttleWrite("/mnt1", 1000000));
+    Assert.assertEquals("Mount path should not be limited", -1, controller.getWriteRate("/mnt1"), 0);
+    Assert.assertFalse("Adjustment should not be enabled without a latency threshold",
+        controller.isAdjustmentEnabled());
+
+    // the total limit applies across datacenters.
+    properties = new Properties();
+    properties.setProperty("replication.fetch.bandwidth.total.bytes.per.sec", "1000");
+    controller = createController(properties);
+    Assert.assertEquals("No time should have been spent waiting", 0, controller.throttleFetch("DC1", 1000));
+    advanceTime(200);
+    Assert.assertEquals("Unexpected time spent waiting", 1800, controller.throttleFetch("DC2", 1000));
+    Assert.assertEquals("No time should have been spent waiting", 0, controller.throttleWrite(MOUNT_PATH, 1000000));
+
+    // no thread waits once the controller is closed.
+    controller.close();
+    advanceTime(200);
+    Assert.assertEquals("No time should have been spent waiting", 0, controller.throttleFetch("DC1", 1000000));
+  }
+
+  /**
+   * Tests that the write rate of a mount path is reduced while the latency of its gets is above the threshold and
+   * recovers once it drops below.
+   * @throws InterruptedException
+   */
+  @Test
+  public void writeRateAdjustmentTest() throws InterruptedException {
+    Properties properties = new Properties();
+    properties.setProperty("replication.write.bandwidth.per.disk.bytes.per.sec", Long.toString(DISK_BYTES_PER_SEC));
+    properties.setProperty("replication.write.bandwidth.foreground.latency.threshold.ms",
+        Long.toString(LATENCY_THRESHOLD_MS));
+    ReplicationBandwidthController controller = createController(properties);
+    Assert.assertTrue("Adjustment should be enabled", controller.isAdjustmentEnabled());
+    getLatencyTimer.update(LATENCY_THRESHOLD_MS, TimeUnit.MILLISECONDS);
+    controller.run();
+    Assert.assertEquals("Rate should not change", DISK_BYTES_PER_SEC, controller.getWriteRate(MOUNT_PATH), 0);
+
+    getLatencyTimer.update(LATENCY_THRESHOLD_MS + 1, TimeUnit.MILLISECONDS);
+    double expectedRate = DISK_BYTES_PER_SEC;
+    for (int i = 0; i < 5; i++) {
+      expectedRate = Math.max(expectedRate / 2,
+          DISK_BYTES_PER_SEC * ReplicationBandwidthController.Min_Write_Rate_Fraction);
+      controller.run();
+      Assert.assertEquals("Rate should have been reduced", expectedRate, controller.getWriteRate(MOUNT_PATH), 0.001);
+    }
+    Assert.assertEquals("Rate should not go below the minimum",
+        DISK_BYTES_PER_SEC * ReplicationBandwidthController.Min_Write_Rate_Fraction,
+        controller.getWriteRate(MOUNT_PATH), 0.001);
+    Assert.assertEquals("Unexpected number of reductions", 4,
+        replicationMetrics.replicationDiskBandwidthReductionCount.getCount());
+
+    // the throttler uses the reduced rate.
+    controller.throttleWrite(MOUNT_PATH, 100);
+    advanceTime(200);
+    Assert.assertEquals("Unexpected time spent waiting", 1800, controller.throttleWrite(MOUNT_PATH, 100));
+
+    getLatencyTimer.update(1, TimeUnit.MILLISECONDS);
+    for (int i = 0; i < 20; i++) {
+      expectedRate =
+          Math.min(expectedRate + DISK_BYTES_PER_SEC * ReplicationBandwidthController.Write_Rate_Increase_Fraction,
+              DISK_BYTES_PER_SEC);
+      controller.run();
+      Assert.assertEquals("Rate should have been increased", expectedRate, controller.getWriteRate(MOUNT_PATH), 0.001);
+    }
+    Assert.assertEquals("Rate should not go above the configured rate", DISK_BYTES_PER_SEC,
+        controller.getWriteRate(MOUNT_PATH), 0.001);
+  }
+
+  /**
+   * Tests that per datacenter limits that are not in the datacenter:rate format are rejected.
+   */
+  @Test
+  public void badDatacenterLimitsTest() {
+    for (String limits : new String[]{"DC1", "DC1:", ":1000", "DC1:abc", "DC1:-1", "DC1:1000,DC2"}) {
+      Properties properties = new Properties();
+      properties.setProperty("replication.fetch.bandwidth.per.datacenter", limits);
+      try {
+        createController(properties);
+        Assert.fail("Limits should have been rejected: " + limits);
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  /**
+   * @param properties the replication properties to use.
+   * @return a {@link ReplicationBandwidthController} for a single mount path, with the given properties.
+   */
+  private ReplicationBandwidthController createController(Properties properties) {
+    Map<String, List<Timer>> foregroundLatencyTimers = new HashMap<String, List<Timer>>();
+    foregroundLatencyTimers.put(MOUNT_PATH, Collections.singletonList(getLatencyTimer));
+    return new ReplicationBandwidthController(new ReplicationConfig(new VerifiableProperties(properties)),
+        foregroundLatencyTimers, replicationMetrics, time);
+  }
+
+  /**
+   * Advances the mock time by the given amount.
+   * @param ms the time to advance by in ms.
+   */
+  private void advanceTime(long ms) {
+    time.currentMilliseconds += ms;
+    time.currentNanoSeconds += ms * Time.NsPerMs;
+  }
+}
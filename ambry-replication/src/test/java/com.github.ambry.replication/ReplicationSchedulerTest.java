@@ -0,0 +1,184 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import com.github.ambry.clustermap.DataNodeId;
+import com.github.ambry.clustermap.MockClusterMap;
+import com.github.ambry.clustermap.ReplicaId;
+import com.github.ambry.network.Port;
+import com.github.ambry.network.PortType;
+import com.github.ambry.utils.SystemTime;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * Tests for {@link ReplicationScheduler}.
+ */
+public class ReplicationSchedulerTest {
+  private static final long LAGGING_THRESHOLD_IN_BYTES = 1000;
+
+  private final MockClusterMap clusterMap;
+  private final Map<DataNodeId, List<RemoteReplicaInfo>> replicasGroupedByNode =
+      new HashMap<DataNodeId, List<RemoteReplicaInfo>>();
+  private final List<RemoteReplicaInfo> allReplicas = new ArrayList<RemoteReplicaInfo>();
+
+  public ReplicationSchedulerTest() throws IOException {
+    clusterMap = new MockClusterMap();
+    DataNodeId localNode = clusterMap.getDataNodeIds().get(0);
+    for (ReplicaId replicaId : clusterMap.getReplicaIds(localNode)) {
+      for (ReplicaId peerReplicaId : replicaId.getPeerReplicaIds()) {
+        RemoteReplicaInfo remoteReplicaInfo =
+            new RemoteReplicaInfo(peerReplicaId, replicaId, null, new MockFindToken(0, 0), 1000000,
+                SystemTime.getInstance(), new Port(peerReplicaId.getDataNodeId().getPort(), PortType.PLAINTEXT));
+        List<RemoteReplicaInfo> replicas = replicasGroupedByNode.get(peerReplicaId.getDataNodeId());
+        if (replicas == null) {
+          replicas = new ArrayList<RemoteReplicaInfo>();
+          replicasGroupedByNode.put(peerReplicaId.getDataNodeId(), replicas);
+        }
+        replicas.add(remoteReplicaInfo);
+        allReplicas.add(remoteReplicaInfo);
+      }
+    }
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    clusterMap.cleanup();
+  }
+
+  /**
+   * Tests that the replicas are divided into work units of the right size, each of which has replicas of a single node.
+   */
+  @Test
+  public void workUnitsTest() {
+    int maxReplicasPerWorkUnit = 2;
+    ReplicationScheduler scheduler =
+        new ReplicationScheduler(replicasGroupedByNode, maxReplicasPerWorkUnit, LAGGING_THRESHOLD_IN_BYTES);
+    int expectedWorkUnitCount = 0;
+    for (List<RemoteReplicaInfo> replicas : replicasGroupedByNode.values()) {
+      expectedWorkUnitCount += (replicas.size() + maxReplicasPerWorkUnit - 1) / maxReplicasPerWorkUnit;
+    }
+    Assert.assertEquals("Unexpected number of work units", expectedWorkUnitCount, scheduler.getWorkUnits().size());
+    Set<RemoteReplicaInfo> replicasInWorkUnits = new HashSet<RemoteReplicaInfo>();
+    for (ReplicationScheduler.WorkUnit workUnit : scheduler.getWorkUnits()) {
+      Assert.assertTrue("Work unit is too big", workUnit.getRemoteReplicaInfos().size() <= maxReplicasPerWorkUnit);
+      for (RemoteReplicaInfo remoteReplicaInfo : workUnit.getRemoteReplicaInfos()) {
+        Assert.assertEquals("Work unit has replicas of another node", workUnit.getDataNodeId(),
+            remoteReplicaInfo.getReplicaId().getDataNodeId());
+        replicasInWorkUnits.add(remoteReplicaInfo);
+      }
+    }
+    Assert.assertEquals("All replicas should be in work units", new HashSet<RemoteReplicaInfo>(allReplicas),
+        replicasInWorkUnits);
+  }
+
+  /**
+   * Tests that every work unit is handed out once in a round, in the order of lag, and that lagging units are handed
+   * out again once all the units of the round are in progress.
+   * @throws InterruptedException
+   */
+  @Test
+  public void acquireOrderTest() throws InterruptedException {
+    ReplicationScheduler scheduler = new ReplicationScheduler(replicasGroupedByNode, 1, LAGGING_THRESHOLD_IN_BYTES);
+    List<ReplicationScheduler.WorkUnit> workUnits = scheduler.getWorkUnits();
+    Assert.assertTrue("There should be at least 3 work units", workUnits.size() >= 3);
+    // make one unit lag a lot and another lag a little.
+    ReplicationScheduler.WorkUnit mostLagging = workUnits.get(workUnits.size() - 1);
+    ReplicationScheduler.WorkUnit lagging = workUnits.get(workUnits.size() - 2);
+    mostLagging.getRemoteReplicaInfos().get(0).setLocalLagFromRemoteInBytes(LAGGING_THRESHOLD_IN_BYTES * 10);
+    lagging.getRemoteReplicaInfos().get(0).setLocalLagFromRemoteInBytes(LAGGING_THRESHOLD_IN_BYTES / 10);
+
+    Assert.assertEquals("Most lagging unit should be handed out first", mostLagging, scheduler.acquire());
+    Assert.assertEquals("Lagging unit should be handed out next", lagging, scheduler.acquire());
+    scheduler.release(mostLagging);
+    scheduler.release(lagging);
+    // the rest of the round is handed out before anything is handed out again.
+    Set<ReplicationScheduler.WorkUnit> acquired = new HashSet<ReplicationScheduler.WorkUnit>();
+    for (int i = 0; i < workUnits.size() - 2; i++) {
+      ReplicationScheduler.WorkUnit workUnit = scheduler.acquire();
+      Assert.assertFalse("Unit handed out twice in a round",
+          workUnit == mostLagging || workUnit == lagging || !acquired.add(workUnit));
+    }
+    // the round is complete, so a new one starts with the free units, the most lagging first.
+    Assert.assertEquals("New round should start with the most lagging unit", mostLagging, scheduler.acquire());
+    scheduler.release(mostLagging);
+    Assert.assertEquals("Unit not handed out in the round should be next", lagging, scheduler.acquire());
+    // all the units not handed out in the round are in progress, so the most lagging unit is handed out again.
+    Assert.assertEquals("Most lagging unit should be handed out again", mostLagging, scheduler.acquire());
+  }
+
+  /**
+   * Tests that a thread waiting for a unit gets one once it is released, and gets {@code null} once the scheduler is
+   * closed.
+   * @throws Exception
+   */
+  @Test
+  public void waitAndCloseTest() throws Exception {
+    Map<DataNodeId, List<RemoteReplicaInfo>> singleNode = new HashMap<DataNodeId, List<RemoteReplicaInfo>>();
+    Map.Entry<DataNodeId, List<RemoteReplicaInfo>> entry = replicasGroupedByNode.entrySet().iterator().next();
+    singleNode.put(entry.getKey(), entry.getValue());
+    ReplicationScheduler scheduler =
+        new ReplicationScheduler(singleNode, Integer.MAX_VALUE, LAGGING_THRESHOLD_IN_BYTES);
+    ReplicationScheduler.WorkUnit workUnit = scheduler.acquire();
+    Assert.assertNotNull("Should have got a work unit", workUnit);
+
+    AtomicReference<ReplicationScheduler.WorkUnit> acquired = new AtomicReference<ReplicationScheduler.WorkUnit>();
+    CountDownLatch acquireDone = acquireInThread(scheduler, acquired);
+    Assert.assertFalse("Should not get a unit while it is in progress", acquireDone.await(100, TimeUnit.MILLISECONDS));
+    scheduler.release(workUnit);
+    Assert.assertTrue("Waiting thread should have got a unit", acquireDone.await(1, TimeUnit.SECONDS));
+    Assert.assertEquals("Waiting thread should get the released unit", workUnit, acquired.get());
+
+    acquired.set(workUnit);
+    acquireDone = acquireInThread(scheduler, acquired);
+    scheduler.close();
+    Assert.assertTrue("Waiting thread should have returned on close", acquireDone.await(1, TimeUnit.SECONDS));
+    Assert.assertNull("Should not get a unit after close", acquired.get());
+  }
+
+  /**
+   * Calls {@link ReplicationScheduler#acquire()} in a separate thread.
+   * @param scheduler the {@link ReplicationScheduler} to acquire from.
+   * @param acquired the reference to set the acquired work unit in.
+   * @return a {@link CountDownLatch} that counts down when the call returns.
+   */
+  private CountDownLatch acquireInThread(final ReplicationScheduler scheduler,
+      final AtomicReference<ReplicationScheduler.WorkUnit> acquired) {
+    final CountDownLatch acquireDone = new CountDownLatch(1);
+    new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          acquired.set(scheduler.acquire());
+          acquireDone.countDown();
+        } catch (InterruptedException e) {
+          // the latch does not count down and the test fails.
+        }
+      }
+    }).start();
+    return acquireDone;
+  }
+}
@@ -134,9 +134,13 @@ public class ReplicationTest {
 
       @Override
       public int appendFrom(ByteBuffer buffer) throws IOException {
-        buflist.get(index).put(buffer);
+        // a write set may skip messages, so the buffer is sized by what is actually written.
+        int size = buffer.remaining();
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.put(buffer);
+        buflist.set(index, buf);
         index++;
-        return buffer.capacity();
+        return size;
       }
 
       @Override
@@ -219,7 +223,9 @@ public class ReplicationTest {
       } catch (IOException e) {
 
       }
-      for (ByteBuffer buf : buffersToWrite) {
+      // the write set may have skipped some of the messages (for e.g. invalid ones) while writing.
+      messageInfoListTemp = messageSetToWrite.getMessageSetInfo();
+      for (ByteBuffer buf : buffersToWrite.subList(0, messageInfoListTemp.size())) {
         buf.flip();
         log.appendData(buf);
       }
@@ -389,6 +395,7 @@ public class ReplicationTest {
       if (metadataRequest != null) {
         List<ReplicaMetadataResponseInfo> replicaMetadataResponseInfoList =
             new ArrayList<ReplicaMetadataResponseInfo>();
+        short responseVersion = ReplicaMetadataResponse.getResponseVersion(metadataRequest);
         for (ReplicaMetadataRequestInfo replicaMetadataRequestInfo : metadataRequest.getReplicaMetadataRequestInfoList()) {
           List<MessageInfo> messageInfoToReturn = new ArrayList<MessageInfo>();
           int startIndex = ((MockFindToken) (replicaMetadataRequestInfo.getToken())).getIndex();
@@ -402,11 +409,11 @@ public class ReplicationTest {
           ReplicaMetadataResponseInfo replicaMetadataResponseInfo =
               new ReplicaMetadataResponseInfo(replicaMetadataRequestInfo.getPartitionId(),
                   new MockFindToken(indexRequested, replicaMetadataRequestInfo.getToken().getBytesRead()),
-                  messageInfoToReturn, 0);
+                  messageInfoToReturn, 0, responseVersion);
           replicaMetadataResponseInfoList.add(replicaMetadataResponseInfo);
         }
         response = new ReplicaMetadataResponse(1, "replicametadata", ServerErrorCode.No_Error,
-            replicaMetadataResponseInfoList);
+            replicaMetadataResponseInfoList, metadataRequest.getAcceptedCompressionCodec(), responseVersion);
         metadataRequest = null;
       } else {
         List<PartitionResponseInfo> partitionResponseInfoList = new ArrayList<PartitionResponseInfo>();
@@ -467,8 +474,8 @@ public class ReplicationTest {
     @Override
     public ConnectedChannel checkOutConnection(String host, Port port, long timeout)
         throws IOException, InterruptedException, ConnectionPoolTimeoutException {
-      return new MockConnection(host, port.getPort(), messageInfoList.get(host + port), byteBufferList.get(host + port),
-          maxEntriesToReturn);
+      return new MockConnection(host, port.getPort(), messageInfoList.get(host + port.getPort()),
+          byteBufferList.get(host + port.getPort()), maxEntriesToReturn);
     }
 
     @Override
@@ -586,7 +593,7 @@ public class ReplicationTest {
               new AtomicInteger(0), clusterMap.getDataNodeId("localhost", dataNode1.getPort()),
               new MockConnectionPool(replicaStores, replicaBuffers, 3), config, replicationMetrics, null,
               storeKeyFactory, true, clusterMap.getMetricRegistry(), false, "localhost",
-              new ResponseHandler(clusterMap));
+              new ResponseHandler(clusterMap), null);
       List<ReplicaThread.ExchangeMetadataResponse> response = replicaThread.exchangeMetadata(
           new MockConnection("localhost", dataNode2.getPort(), replicaStores.get("localhost" + dataNode2.getPort()),
               replicaBuffers.get("localhost" + dataNode2.getPort()), 5), replicasToReplicate.get(dataNodeId));
@@ -680,6 +687,155 @@ public class ReplicationTest {
     }
   }
 
+  @Test
+  public void replicaThreadPipelineTest() throws InterruptedException, IOException {
+    try {
+      Random random = new Random();
+      MockClusterMap clusterMap = new MockClusterMap();
+      DataNodeId dataNode1 = clusterMap.getDataNodeIds().get(0);
+      DataNodeId dataNode2 = clusterMap.getDataNodeIds().get(1);
+
+      List<ReplicaId> replicaIds = clusterMap.getReplicaIds(clusterMap.getDataNodeId("localhost", dataNode1.getPort()));
+
+      Map<String, Map<PartitionId, List<MessageInfo>>> replicaStores =
+          new HashMap<String, Map<PartitionId, List<MessageInfo>>>();
+      Map<String, Map<PartitionId, List<ByteBuffer>>> replicaBuffers =
+          new HashMap<String, Map<PartitionId, List<ByteBuffer>>>();
+
+      List<PartitionId> partitionIds = clusterMap.getWritablePartitionIds();
+      Map<PartitionId, List<MessageInfo>> messageInfoNode1 = new HashMap<PartitionId, List<MessageInfo>>();
+      Map<PartitionId, List<MessageInfo>> messageInfoNode2 = new HashMap<PartitionId, List<MessageInfo>>();
+      Map<PartitionId, List<ByteBuffer>> bufferListNode1 = new HashMap<PartitionId, List<ByteBuffer>>();
+      Map<PartitionId, List<ByteBuffer>> bufferListNode2 = new HashMap<PartitionId, List<ByteBuffer>>();
+      for (int i = 0; i < partitionIds.size(); i++) {
+        List<MessageInfo> messageInfoListLocalReplica = new ArrayList<MessageInfo>();
+        List<ByteBuffer> messageBufferListLocalReplica = new ArrayList<ByteBuffer>();
+
+        List<MessageInfo> messageInfoListRemoteReplica2 = new ArrayList<MessageInfo>();
+        List<ByteBuffer> messageBufferListLocalReplica2 = new ArrayList<ByteBuffer>();
+
+        for (int j = 0; j < 10; j++) {
+          BlobId id = new BlobId(partitionIds.get(i));
+          ByteBuffer byteBuffer = constructTestBlobInMessageFormat(id, 1000, random);
+          long streamSize = byteBuffer.limit();
+          messageInfoListLocalReplica.add(new MessageInfo(id, streamSize));
+          messageInfoListRemoteReplica2.add(new MessageInfo(id, streamSize));
+          messageBufferListLocalReplica.add(byteBuffer);
+          messageBufferListLocalReplica2.add(byteBuffer);
+        }
+
+        // add additional messages to replica 2
+        for (int j = 10; j < 15; j++) {
+          BlobId id = new BlobId(partitionIds.get(i));
+          ByteBuffer byteBuffer = constructTestBlobInMessageFormat(id, 1000, random);
+          long streamSize = byteBuffer.limit();
+          messageInfoListRemoteReplica2.add(new MessageInfo(id, streamSize));
+          messageBufferListLocalReplica2.add(byteBuffer);
+        }
+
+        // add an expired message to replica 2
+        BlobId idExpired = new BlobId(partitionIds.get(i));
+        ByteBuffer byteBuffer = constructTestBlobInMessageFormat(idExpired, 1000, random);
+        long streamSize = byteBuffer.limit();
+        messageInfoListRemoteReplica2.add(new MessageInfo(idExpired, streamSize, 1));
+        messageBufferListLocalReplica2.add(byteBuffer);
+        messageInfoNode1.put(partitionIds.get(i), messageInfoListLocalReplica);
+        bufferListNode1.put(partitionIds.get(i), messageBufferListLocalReplica);
+        messageInfoNode2.put(partitionIds.get(i), messageInfoListRemoteReplica2);
+        bufferListNode2.put(partitionIds.get(i), messageBufferListLocalReplica2);
+      }
+      replicaStores.put("localhost" + dataNode2.getPort(), messageInfoNode2);
+      replicaBuffers.put("localhost" + dataNode2.getPort(), bufferListNode2);
+
+      List<RemoteReplicaInfo> remoteReplicas = new ArrayList<RemoteReplicaInfo>();
+      for (ReplicaId replicaId : replicaIds) {
+        for (ReplicaId peerReplicaId : replicaId.getPeerReplicaIds()) {
+          RemoteReplicaInfo remoteReplicaInfo = new RemoteReplicaInfo(peerReplicaId, replicaId,
+              new MockStore(messageInfoNode1.get(replicaId.getPartitionId()),
+                  bufferListNode1.get(replicaId.getPartitionId())), new MockFindToken(0, 0), 1000000,
+              SystemTime.getInstance(), new Port(peerReplicaId.getDataNodeId().getPort(), PortType.PLAINTEXT));
+          remoteReplicas.add(remoteReplicaInfo);
+        }
+      }
+
+      Map<DataNodeId, List<RemoteReplicaInfo>> replicasToReplicate = new HashMap<DataNodeId, List<RemoteReplicaInfo>>();
+      DataNodeId dataNodeId = null;
+      for (RemoteReplicaInfo remoteReplicaInfo : remoteReplicas) {
+        if (remoteReplicaInfo.getReplicaId().getDataNodeId().getPort() == dataNode2.getPort()) {
+          dataNodeId = remoteReplicaInfo.getReplicaId().getDataNodeId();
+          List<RemoteReplicaInfo> remoteReplicaInfoList =
+              replicasToReplicate.get(remoteReplicaInfo.getReplicaId().getDataNodeId());
+          if (remoteReplicaInfoList != null) {
+            remoteReplicaInfoList.add(remoteReplicaInfo);
+          } else {
+            remoteReplicaInfoList = new ArrayList<RemoteReplicaInfo>();
+            remoteReplicaInfoList.add(remoteReplicaInfo);
+            replicasToReplicate.put(remoteReplicaInfo.getReplicaId().getDataNodeId(), remoteReplicaInfoList);
+          }
+        }
+      }
+      Properties properties = new Properties();
+      properties.setProperty("replication.pipeline.depth", "4");
+      properties.setProperty("replication.wait.time.between.replicas.ms", "0");
+      ReplicationConfig config = new ReplicationConfig(new VerifiableProperties(properties));
+
+      Map<String, ArrayList<ReplicaThread>> replicaThreadMap = new HashMap<String, ArrayList<ReplicaThread>>();
+      replicaThreadMap.put("localhost", new ArrayList<ReplicaThread>());
+      ReplicationMetrics replicationMetrics = new ReplicationMetrics(new MetricRegistry(), replicaIds);
+      replicationMetrics.populatePerColoMetrics(new HashSet<String>(Arrays.asList("localhost")));
+      StoreKeyFactory storeKeyFactory = null;
+      try {
+        storeKeyFactory = Utils.getObj("com.github.ambry.commons.BlobIdFactory", clusterMap);
+      } catch (Exception e) {
+        System.out.println("Error creating StoreKeyFactory ");
+        throw new IOException("Error creating StoreKeyFactory " + e);
+      }
+
+      ReplicaThread replicaThread =
+          new ReplicaThread("threadtest", replicasToReplicate, new MockFindTokenFactory(), clusterMap,
+              new AtomicInteger(0), clusterMap.getDataNodeId("localhost", dataNode1.getPort()),
+              new MockConnectionPool(replicaStores, replicaBuffers, 4), config, replicationMetrics, null,
+              storeKeyFactory, true, clusterMap.getMetricRegistry(), false, "localhost",
+              new ResponseHandler(clusterMap), null);
+
+      // every visit replicates 4 batches of (at most) 4 messages, with the metadata of the later batches fetched over a
+      // connection from the pool.
+      for (int visit = 1; visit <= 2; visit++) {
+        MockConnection connection =
+            new MockConnection("localhost", dataNode2.getPort(), replicaStores.get("localhost" + dataNode2.getPort()),
+                replicaBuffers.get("localhost" + dataNode2.getPort()), 4);
+        List<ReplicaThread.ExchangeMetadataResponse> response =
+            replicaThread.exchangeMetadata(connection, replicasToReplicate.get(dataNodeId));
+        replicaThread.replicatePipelined(connection, replicasToReplicate.get(dataNodeId), response);
+      }
+      for (RemoteReplicaInfo remoteReplicaInfo : replicasToReplicate.get(dataNodeId)) {
+        Assert.assertEquals("Token not advanced to the end of the remote replica", 15,
+            ((MockFindToken) remoteReplicaInfo.getToken()).getIndex());
+      }
+
+      //check replica1 store is the same as replica 2 store in messageinfo and byte buffers
+      for (Map.Entry<PartitionId, List<MessageInfo>> entry : messageInfoNode2.entrySet()) {
+        for (MessageInfo messageInfo : entry.getValue()) {
+          boolean found = false;
+          for (MessageInfo messageInfo1 : messageInfoNode1.get(entry.getKey())) {
+            if (messageInfo.getStoreKey().equals(messageInfo1.getStoreKey())) {
+              found = true;
+              break;
+            }
+          }
+          if (!found) {
+            Assert.assertTrue(messageInfo.isExpired());
+          }
+        }
+      }
+      Assert.assertEquals("Pipelined metadata exchanges not as expected", 6,
+          replicationMetrics.replicationPipelinedMetadataExchangeCount.getCount());
+    } catch (Exception e) {
+      e.printStackTrace();
+      Assert.assertTrue(false);
+    }
+  }
+
   @Test
   public void replicaTokenTest() throws InterruptedException {
     final long tokenPersistInterval = 100;
@@ -839,7 +995,7 @@ public class ReplicationTest {
               new AtomicInteger(0), clusterMap.getDataNodeId("localhost", dataNode1.getPort()),
               new MockConnectionPool(replicaStores, replicaBuffers, 3), config, replicationMetrics, null,
               storeKeyFactory, true, clusterMap.getMetricRegistry(), false, "localhost",
-              new ResponseHandler(clusterMap));
+              new ResponseHandler(clusterMap), null);
       List<ReplicaThread.ExchangeMetadataResponse> response = replicaThread.exchangeMetadata(
           new MockConnection("localhost", dataNode2.getPort(), replicaStores.get("localhost" + dataNode2.getPort()),
               replicaBuffers.get("localhost" + dataNode2.getPort()), 5), replicasToReplicate.get(dataNodeId));
@@ -1068,7 +1224,7 @@ public class ReplicationTest {
               new AtomicInteger(0), clusterMap.getDataNodeId("localhost", dataNode1.getPort()),
               new MockConnectionPool(replicaStores, replicaBuffers, 3), config, replicationMetrics, null,
               storeKeyFactory, true, clusterMap.getMetricRegistry(), false, "localhost",
-              new ResponseHandler(clusterMap));
+              new ResponseHandler(clusterMap), null);
       List<ReplicaThread.ExchangeMetadataResponse> response = replicaThread.exchangeMetadata(
           new MockConnection("localhost", dataNode2.getPort(), replicaStores.get("localhost" + dataNode2.getPort()),
               replicaBuffers.get("localhost" + dataNode2.getPort()), 5), replicasToReplicate.get(dataNodeId));
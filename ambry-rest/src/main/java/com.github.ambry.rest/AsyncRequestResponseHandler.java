@@ -23,8 +23,9 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -44,6 +45,10 @@ import org.slf4j.LoggerFactory;
  * Requests are queued on submission and handed off to the {@link BlobStorageService} when they are dequeued. Responses
  * are sent to the client via the appropriate {@link RestResponseChannel} and callbacks/errors are handled.
  * <p/>
+ * The request queue of each worker is bounded and requests that arrive at a full queue are rejected. If work stealing
+ * is enabled, workers that run out of requests take requests queued at the busiest of the other workers so that
+ * requests do not wait behind a slow request while other workers are idle.
+ * <p/>
  * These are the scaling units of the server and can be scaled up and down independently of any other component.
  */
 class AsyncRequestResponseHandler implements RestRequestHandler, RestResponseHandler {
@@ -56,6 +61,8 @@ class AsyncRequestResponseHandler implements RestRequestHandler, RestResponseHan
   private AsyncResponseHandler asyncResponseHandler = null;
   private BlobStorageService blobStorageService = null;
   private int requestWorkersCount = 0;
+  private int requestQueueCapacity = Integer.MAX_VALUE;
+  private boolean workStealingEnabled = false;
   private volatile boolean isRunning = false;
 
   /**
@@ -76,10 +83,17 @@ class AsyncRequestResponseHandler implements RestRequestHandler, RestResponseHan
     long startupBeginTime = System.currentTimeMillis();
     try {
       if (!isRunning()) {
-        logger.info("Starting AsyncRequestResponseHandler with {} request workers", requestWorkersCount);
+        logger.info("Starting AsyncRequestResponseHandler with {} request workers (work stealing enabled: {})",
+            requestWorkersCount, workStealingEnabled);
+        // all the workers are created before any of them starts so that they can see each other for work stealing.
+        List<AsyncRequestWorker> workers = new ArrayList<>(requestWorkersCount);
+        for (int i = 0; i < requestWorkersCount; i++) {
+          workers.add(new AsyncRequestWorker(metrics, blobStorageService, requestQueueCapacity,
+              workStealingEnabled ? workers : null));
+        }
         for (int i = 0; i < requestWorkersCount; i++) {
           long workerStartupBeginTime = System.currentTimeMillis();
-          AsyncRequestWorker asyncRequestWorker = new AsyncRequestWorker(metrics, blobStorageService);
+          AsyncRequestWorker asyncRequestWorker = workers.get(i);
           asyncRequestWorkers.add(asyncRequestWorker);
           Utils.newThread("RequestWorker-" + i, asyncRequestWorker, false).start();
           long workerStartupTime = System.currentTimeMillis() - workerStartupBeginTime;
@@ -138,7 +152,8 @@ class AsyncRequestResponseHandler implements RestRequestHandler, RestResponseHan
    * @param restRequest the {@link RestRequest} that needs to be handled.
    * @param restResponseChannel the {@link RestResponseChannel} on which a response to the request may be sent.
    * @throws IllegalArgumentException if either of {@code restRequest} or {@code restResponseChannel} is null.
-   * @throws RestServiceException if there is a problem queuing the request.
+   * @throws RestServiceException if there is a problem queuing the request or if the request queue is full (with
+   *                              {@link RestServiceErrorCode#ServiceOverloaded}).
    */
   @Override
   public void handleRequest(RestRequest restRequest, RestResponseChannel restResponseChannel)
@@ -194,15 +209,35 @@ class AsyncRequestResponseHandler implements RestRequestHandler, RestResponseHan
    * @throws IllegalStateException if {@link #start()} has already been called before a call to this function.
    */
   protected void setupRequestHandling(int workerCount, BlobStorageService blobStorageService) {
+    setupRequestHandling(workerCount, blobStorageService, Integer.MAX_VALUE, false);
+  }
+
+  /**
+   * Sets the number of request handling units, the {@link BlobStorageService} that will be used in
+   * {@link AsyncRequestWorker} instances and how requests are queued at them.
+   * @param workerCount the required number of request handling units.
+   * @param blobStorageService the {@link BlobStorageService} instance to be used to process requests.
+   * @param queueCapacity the maximum number of requests that can be queued at each request handling unit.
+   * @param workStealingEnabled if {@code true}, idle request handling units take requests queued at busy ones.
+   * @throws IllegalArgumentException if {@code workerCount} < 0, if {@code workerCount} > 0 but
+   *                                  {@code blobStorageService} is null or if {@code queueCapacity} <= 0.
+   * @throws IllegalStateException if {@link #start()} has already been called before a call to this function.
+   */
+  protected void setupRequestHandling(int workerCount, BlobStorageService blobStorageService, int queueCapacity,
+      boolean workStealingEnabled) {
     if (isRunning()) {
       throw new IllegalStateException("Cannot modify scaling unit count after the service has started");
     } else if (workerCount < 0) {
       throw new IllegalArgumentException("Request worker workerCount has to be >= 0");
     } else if (workerCount > 0 && blobStorageService == null) {
       throw new IllegalArgumentException("BlobStorageService cannot be null");
+    } else if (queueCapacity <= 0) {
+      throw new IllegalArgumentException("Request queue capacity has to be > 0");
     }
     requestWorkersCount = workerCount;
     this.blobStorageService = blobStorageService;
+    requestQueueCapacity = queueCapacity;
+    this.workStealingEnabled = workStealingEnabled;
     logger.trace("Request handling units count set to {}", requestWorkersCount);
   }
 
@@ -270,11 +305,24 @@ class AsyncRequestResponseHandler implements RestRequestHandler, RestResponseHan
 
 /**
  * Thread that handles the queuing and processing of requests.
+ * <p/>
+ * Requests are queued in a lock-free queue. The number of requests that can be taken from the queue is tracked by a
+ * {@link Semaphore} on which the worker waits when it has nothing to do. If the worker has peers, it takes requests
+ * queued at the busiest of them when its own queue is empty.
  */
 class AsyncRequestWorker implements Runnable {
+  /**
+   * How long a worker that is allowed to steal waits for requests in its own queue before looking at its peers again.
+   */
+  static final long IDLE_STEAL_INTERVAL_MS = 5;
+
   private final RequestResponseHandlerMetrics metrics;
   private final BlobStorageService blobStorageService;
-  private final LinkedBlockingQueue<AsyncRequestInfo> requests = new LinkedBlockingQueue<AsyncRequestInfo>();
+  private final int queueCapacity;
+  private final List<AsyncRequestWorker> peers;
+  private final ConcurrentLinkedQueue<AsyncRequestInfo> requests = new ConcurrentLinkedQueue<AsyncRequestInfo>();
+  // permits are released after requests are queued (and on shutdown) and acquired before requests are dequeued.
+  private final Semaphore requestsAvailable = new Semaphore(0);
   private final AtomicInteger queuedRequestCount = new AtomicInteger(0);
   private final CountDownLatch shutdownLatch = new CountDownLatch(1);
   private final AtomicBoolean running = new AtomicBoolean(true);
@@ -283,10 +331,17 @@ class AsyncRequestWorker implements Runnable {
   /**
    * Creates a worker that can process requests.
    * @param metrics the {@link RequestResponseHandlerMetrics} instance to use to track metrics.
+   * @param blobStorageService the {@link BlobStorageService} instance to be used to process requests.
+   * @param queueCapacity the maximum number of requests that can be queued at this worker.
+   * @param peers the workers (possibly including this one) from which this worker can take requests when it has none
+   *              of its own. {@code null} if this worker should only process requests submitted to it.
    */
-  protected AsyncRequestWorker(RequestResponseHandlerMetrics metrics, BlobStorageService blobStorageService) {
+  protected AsyncRequestWorker(RequestResponseHandlerMetrics metrics, BlobStorageService blobStorageService,
+      int queueCapacity, List<AsyncRequestWorker> peers) {
     this.metrics = metrics;
     this.blobStorageService = blobStorageService;
+    this.queueCapacity = queueCapacity;
+    this.peers = peers;
     metrics.registerRequestWorker(this);
     logger.trace("Instantiated AsyncRequestWorker");
   }
@@ -301,12 +356,10 @@ class AsyncRequestWorker implements Runnable {
     try {
       while (isRunning()) {
         try {
-          requestInfo = requests.take();
-          if (requestInfo.restRequest != null) {
+          requestInfo = takeRequest();
+          if (requestInfo != null) {
             processRequest(requestInfo);
             logger.trace("Request {} was processed successfully", requestInfo.restRequest.getUri());
-          } else {
-            break;
           }
         } catch (Exception e) {
           metrics.requestProcessingError.inc();
@@ -337,7 +390,8 @@ class AsyncRequestWorker implements Runnable {
   protected boolean shutdown(long timeout, TimeUnit timeUnit) throws InterruptedException {
     logger.trace("Shutting down AsyncRequestWorker");
     running.set(false);
-    requests.offer(new AsyncRequestInfo(null, null));
+    // wakes up the worker if it is waiting for requests.
+    requestsAvailable.release();
     return shutdownLatch.await(timeout, timeUnit);
   }
 
@@ -346,7 +400,8 @@ class AsyncRequestWorker implements Runnable {
    * @param restRequest the {@link RestRequest} that needs to be handled.
    * @param restResponseChannel the {@link RestResponseChannel} on which a response to the request may be sent.
    * @throws IllegalArgumentException if either of {@code restRequest} or {@code restResponseChannel} is null.
-   * @throws RestServiceException if the service is unavailable or if there is a problem queuing the request.
+   * @throws RestServiceException if the service is unavailable, if the request queue is full or if there is a problem
+   *                              queuing the request.
    */
   protected void submitRequest(RestRequest restRequest, RestResponseChannel restResponseChannel)
       throws RestServiceException {
@@ -358,6 +413,10 @@ class AsyncRequestWorker implements Runnable {
     metrics.requestArrivalRate.mark();
     try {
       logger.trace("Queuing request {}", restRequest.getUri());
+      if (!reserveQueueSlot()) {
+        metrics.requestRejectionCount.inc();
+        throw new RestServiceException("Request queue is full", RestServiceErrorCode.ServiceOverloaded);
+      }
       AsyncRequestInfo requestInfo = new AsyncRequestInfo(restRequest, restResponseChannel);
       boolean added = false;
       RestServiceException exception = null;
@@ -368,10 +427,11 @@ class AsyncRequestWorker implements Runnable {
             RestServiceErrorCode.RequestResponseQueuingFailure);
       }
       if (added) {
-        queuedRequestCount.incrementAndGet();
+        requestsAvailable.release();
         logger.trace("Queued request {}", restRequest.getUri());
         metrics.requestQueuingRate.mark();
       } else {
+        queuedRequestCount.decrementAndGet();
         metrics.requestQueueAddError.inc();
         if (exception == null) {
           exception = new RestServiceException("Attempt to add request failed",
@@ -403,6 +463,89 @@ class AsyncRequestWorker implements Runnable {
     return queuedRequestCount.get();
   }
 
+  /**
+   * Takes a request from the queue of this worker if there is one. Otherwise, if this worker has peers, takes a request
+   * from the queue of the busiest peer. Waits for a request to be queued at this worker if there is none to take.
+   * @return the {@link AsyncRequestInfo} that was taken. {@code null} if there was no request to take (e.g. the worker
+   *         was woken up for shutdown or there was nothing to steal).
+   * @throws InterruptedException if the wait for requests is interrupted.
+   */
+  private AsyncRequestInfo takeRequest() throws InterruptedException {
+    AsyncRequestInfo requestInfo = null;
+    if (peers == null) {
+      requestsAvailable.acquire();
+      requestInfo = dequeueRequest();
+    } else {
+      requestInfo = pollRequest();
+      if (requestInfo == null) {
+        requestInfo = stealRequest();
+      }
+      if (requestInfo == null && requestsAvailable.tryAcquire(IDLE_STEAL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+        requestInfo = dequeueRequest();
+      }
+    }
+    return requestInfo;
+  }
+
+  /**
+   * Takes a request from the queue of this worker without waiting. Can be called by any worker.
+   * @return the {@link AsyncRequestInfo} that was taken. {@code null} if there are no requests in the queue.
+   */
+  private AsyncRequestInfo pollRequest() {
+    return requestsAvailable.tryAcquire() ? dequeueRequest() : null;
+  }
+
+  /**
+   * Takes a request from the busiest peer that is still running.
+   * @return the {@link AsyncRequestInfo} that was taken. {@code null} if no peer had requests queued.
+   */
+  private AsyncRequestInfo stealRequest() {
+    AsyncRequestWorker victim = null;
+    int victimQueueSize = 0;
+    for (AsyncRequestWorker peer : peers) {
+      int peerQueueSize = peer.getRequestQueueSize();
+      if (peer != this && peerQueueSize > victimQueueSize && peer.isRunning()) {
+        victim = peer;
+        victimQueueSize = peerQueueSize;
+      }
+    }
+    AsyncRequestInfo requestInfo = victim != null ? victim.pollRequest() : null;
+    if (requestInfo != null) {
+      metrics.requestStealCount.inc();
+      logger.trace("Stole request {}", requestInfo.restRequest.getUri());
+    }
+    return requestInfo;
+  }
+
+  /**
+   * Removes the request at the head of the queue. Has to be called only after a permit has been acquired from
+   * {@link #requestsAvailable}.
+   * @return the {@link AsyncRequestInfo} at the head of the queue. {@code null} if the permit was released on shutdown
+   *         rather than for a request.
+   */
+  private AsyncRequestInfo dequeueRequest() {
+    AsyncRequestInfo requestInfo = requests.poll();
+    if (requestInfo != null) {
+      queuedRequestCount.decrementAndGet();
+    }
+    return requestInfo;
+  }
+
+  /**
+   * Reserves space in the queue for a request.
+   * @return {@code true} if space was reserved. {@code false} if the queue is full.
+   */
+  private boolean reserveQueueSlot() {
+    int count;
+    do {
+      count = queuedRequestCount.get();
+      if (count >= queueCapacity) {
+        return false;
+      }
+    } while (!queuedRequestCount.compareAndSet(count, count + 1));
+    return true;
+  }
+
   /**
    * Processes the {@code asyncRequestInfo}. Discerns the type of {@link RestMethod} in the request and calls the right
    * function of the {@link BlobStorageService}.
@@ -453,15 +596,14 @@ class AsyncRequestWorker implements Runnable {
   private void discardRequests() {
     logger.trace("Discarding requests on account of shutdown");
     RestServiceException e = new RestServiceException("Service shutdown", RestServiceErrorCode.ServiceUnavailable);
-    AsyncRequestInfo residualRequestInfo = requests.poll();
+    // permits are not required here since permits left over after shutdown are meaningless.
+    AsyncRequestInfo residualRequestInfo = dequeueRequest();
     int discardCount = 0;
     while (residualRequestInfo != null) {
-      if (residualRequestInfo.restRequest != null) {
-        discardCount++;
-        onRequestDequeue(residualRequestInfo);
-        onProcessingFailure(residualRequestInfo.restRequest, residualRequestInfo.restResponseChannel, e);
-      }
-      residualRequestInfo = requests.poll();
+      discardCount++;
+      onRequestDequeue(residualRequestInfo);
+      onProcessingFailure(residualRequestInfo.restRequest, residualRequestInfo.restResponseChannel, e);
+      residualRequestInfo = dequeueRequest();
     }
     if (discardCount > 0) {
       metrics.residualRequestQueueSize.inc(discardCount);
@@ -491,10 +633,12 @@ class AsyncRequestWorker implements Runnable {
    * @param requestInfo the {@link AsyncRequestInfo} that was just dequeued.
    */
   private void onRequestDequeue(AsyncRequestInfo requestInfo) {
-    queuedRequestCount.decrementAndGet();
     metrics.requestDequeuingRate.mark();
     long processingDelay = requestInfo.getProcessingDelay();
     requestInfo.restRequest.getMetricsTracker().scalingMetricsTracker.addToRequestProcessingWaitTime(processingDelay);
+    long dequeueTime = System.currentTimeMillis();
+    requestInfo.restRequest.getMetricsTracker().getTrace().addSpan("RequestQueue", dequeueTime - processingDelay,
+        dequeueTime);
   }
 
   /**
@@ -696,6 +840,7 @@ class AsyncResponseHandler implements Closeable {
           long callbackWaitTime = callbackReceiveTime - operationStartTime;
           metrics.responseCallbackWaitTimeInMs.update(callbackWaitTime);
           restRequest.getMetricsTracker().scalingMetricsTracker.addToResponseProcessingWaitTime(callbackWaitTime);
+          restRequest.getMetricsTracker().getTrace().addSpan("ResponseWrite", operationStartTime, callbackReceiveTime);
           inFlightResponsesCount.decrementAndGet();
           if (exception == null && (result == null || (response.getSize() != -1 && result != response.getSize()))) {
             exception = new IllegalStateException("Response write incomplete");
@@ -18,6 +18,7 @@ import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.config.RestServerConfig;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 import org.slf4j.Logger;
@@ -66,13 +67,42 @@ public class AsyncRequestResponseHandlerFactory implements RestRequestHandlerFac
    */
   public AsyncRequestResponseHandlerFactory(Integer handlerCount, MetricRegistry metricRegistry,
       BlobStorageService blobStorageService) {
+    this(handlerCount, metricRegistry, blobStorageService, Integer.MAX_VALUE, false);
+  }
+
+  /**
+   * Constructor for {@link RestRequestHandlerFactory} that also configures how requests are queued.
+   * @param handlerCount the number of request scaling units required.
+   * @param metricRegistry the {@link MetricRegistry} instance that should be used for metrics.
+   * @param blobStorageService the {@link BlobStorageService} to use for handling requests.
+   * @param restServerConfig the {@link RestServerConfig} that contains the request queue capacity and whether work
+   *                         stealing is enabled.
+   * @throws IllegalArgumentException if {@code handlerCount} <= 0 or if {@code metricRegistry},
+   * {@code blobStorageService} or {@code restServerConfig} is null.
+   */
+  public AsyncRequestResponseHandlerFactory(Integer handlerCount, MetricRegistry metricRegistry,
+      BlobStorageService blobStorageService, RestServerConfig restServerConfig) {
+    this(handlerCount, metricRegistry, blobStorageService, getQueueCapacity(restServerConfig),
+        restServerConfig.restServerRequestHandlerWorkStealingEnabled);
+  }
+
+  /**
+   * Constructor for {@link RestRequestHandlerFactory}.
+   * @param handlerCount the number of request scaling units required.
+   * @param metricRegistry the {@link MetricRegistry} instance that should be used for metrics.
+   * @param blobStorageService the {@link BlobStorageService} to use for handling requests.
+   * @param queueCapacity the maximum number of requests that can be queued at each request scaling unit.
+   * @param workStealingEnabled if {@code true}, idle request scaling units take requests queued at busy ones.
+   */
+  private AsyncRequestResponseHandlerFactory(Integer handlerCount, MetricRegistry metricRegistry,
+      BlobStorageService blobStorageService, int queueCapacity, boolean workStealingEnabled) {
     if (metricRegistry == null || blobStorageService == null) {
       throw new IllegalArgumentException("One or more arguments received is null");
     } else if (handlerCount <= 0) {
       throw new IllegalArgumentException("Request handler scaling unit count has to be > 0. Is " + handlerCount);
     } else {
       buildInstance(metricRegistry);
-      instance.setupRequestHandling(handlerCount, blobStorageService);
+      instance.setupRequestHandling(handlerCount, blobStorageService, queueCapacity, workStealingEnabled);
     }
     logger.trace("Instantiated AsyncRequestResponseHandlerFactory as RestRequestHandler");
   }
@@ -95,6 +125,18 @@ public class AsyncRequestResponseHandlerFactory implements RestRequestHandlerFac
     return instance;
   }
 
+  /**
+   * @param restServerConfig the {@link RestServerConfig} to read the request queue capacity from.
+   * @return the request queue capacity in {@code restServerConfig}.
+   * @throws IllegalArgumentException if {@code restServerConfig} is null.
+   */
+  private static int getQueueCapacity(RestServerConfig restServerConfig) {
+    if (restServerConfig == null) {
+      throw new IllegalArgumentException("RestServerConfig instance provided is null");
+    }
+    return restServerConfig.restServerRequestHandlerQueueCapacity;
+  }
+
   /**
    * Returns the singleton {@link AsyncRequestResponseHandler} instance being maintained. Creates it if it hasn't been
    * created already.
@@ -169,6 +211,9 @@ class RequestResponseHandlerMetrics {
   public final Histogram requestResponseHandlerStartTimeInMs;
   public final Counter residualRequestQueueSize;
   public final Counter residualResponseSetSize;
+  // AsyncRequestWorker
+  public final Counter requestRejectionCount;
+  public final Counter requestStealCount;
 
   /**
    * Creates an instance of RequestResponseHandlerMetrics using the given {@code metricRegistry}.
@@ -243,6 +288,9 @@ class RequestResponseHandlerMetrics {
         metricRegistry.counter(MetricRegistry.name(AsyncRequestWorker.class, "ResidualRequestQueueSize"));
     residualResponseSetSize =
         metricRegistry.counter(MetricRegistry.name(AsyncRequestWorker.class, "ResidualResponseSetSize"));
+    requestRejectionCount =
+        metricRegistry.counter(MetricRegistry.name(AsyncRequestWorker.class, "RequestRejectionCount"));
+    requestStealCount = metricRegistry.counter(MetricRegistry.name(AsyncRequestWorker.class, "RequestStealCount"));
   }
 
   /**
@@ -14,6 +14,8 @@
 package com.github.ambry.rest;
 
 import com.github.ambry.config.NettyConfig;
+import com.github.ambry.utils.RequestTrace;
+import com.github.ambry.utils.RequestTracer;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.HttpContent;
@@ -62,6 +64,7 @@ public class NettyMessageProcessor extends SimpleChannelInboundHandler<HttpObjec
   private final NettyMetrics nettyMetrics;
   private final NettyConfig nettyConfig;
   private final RestRequestHandler requestHandler;
+  private final RequestTracer requestTracer;
   private final Logger logger = LoggerFactory.getLogger(getClass());
 
   // variables that will live through the life of the channel.
@@ -84,9 +87,23 @@ public class NettyMessageProcessor extends SimpleChannelInboundHandler<HttpObjec
    * @param requestHandler the {@link RestRequestHandler} that can be used to submit requests that need to be handled.
    */
   public NettyMessageProcessor(NettyMetrics nettyMetrics, NettyConfig nettyConfig, RestRequestHandler requestHandler) {
+    this(nettyMetrics, nettyConfig, requestHandler, null);
+  }
+
+  /**
+   * Creates a new NettyMessageProcessor instance that traces a sample of the requests it receives.
+   * @param nettyMetrics the metrics object to use.
+   * @param nettyConfig the configuration object to use.
+   * @param requestHandler the {@link RestRequestHandler} that can be used to submit requests that need to be handled.
+   * @param requestTracer the {@link RequestTracer} to start the traces of requests with, or {@code null} if requests
+   *                      are not traced.
+   */
+  public NettyMessageProcessor(NettyMetrics nettyMetrics, NettyConfig nettyConfig, RestRequestHandler requestHandler,
+      RequestTracer requestTracer) {
     this.nettyMetrics = nettyMetrics;
     this.nettyConfig = nettyConfig;
     this.requestHandler = requestHandler;
+    this.requestTracer = requestTracer;
     logger.trace("Instantiated NettyMessageProcessor");
   }
 
@@ -100,9 +117,21 @@ public class NettyMessageProcessor extends SimpleChannelInboundHandler<HttpObjec
    */
   @Override
   public void channelActive(ChannelHandlerContext ctx) {
-    logger.trace("Channel {} active", ctx.channel());
-    this.ctx = ctx;
-    nettyMetrics.channelCreationRate.mark();
+    onChannelActive(ctx);
+  }
+
+  /**
+   * Netty calls this function when this handler is added to the pipeline of a channel.
+   * <p/>
+   * If the channel is already active (for e.g. if this handler was added after the HTTP version of the connection was
+   * detected), {@link #channelActive(ChannelHandlerContext)} will not be called and the state is initialized here.
+   * @param ctx The {@link ChannelHandlerContext} that can be used to perform operations on the channel.
+   */
+  @Override
+  public void handlerAdded(ChannelHandlerContext ctx) {
+    if (ctx.channel().isActive()) {
+      onChannelActive(ctx);
+    }
   }
 
   /**
@@ -287,6 +316,10 @@ public class NettyMessageProcessor extends SimpleChannelInboundHandler<HttpObjec
           } else {
             request = new NettyRequest(httpRequest, ctx.channel(), nettyMetrics);
           }
+          if (requestTracer != null) {
+            request.getMetricsTracker()
+                .setTrace(requestTracer.newTrace(request.getRestMethod() + " " + request.getUri()));
+          }
           responseChannel.setRequest(request);
           logger.trace("Channel {} now handling request {}", ctx.channel(), request.getUri());
           // We send POST that is not multipart for handling immediately since we expect valid content with it that will
@@ -350,6 +383,10 @@ public class NettyMessageProcessor extends SimpleChannelInboundHandler<HttpObjec
         nettyMetrics.requestChunkProcessingTimeInMs.update(chunkProcessingTime);
         request.getMetricsTracker().nioMetricsTracker.addToRequestProcessingTime(chunkProcessingTime);
       }
+      if (requestContentFullyReceived) {
+        RequestTrace trace = request.getMetricsTracker().getTrace();
+        trace.addSpan("NettyRequestRead", trace.getStartTimeInMs(), System.currentTimeMillis());
+      }
       if (success && (!request.getRestMethod().equals(RestMethod.POST) || (request.isMultipart()
           && requestContentFullyReceived))) {
         requestHandler.handleRequest(request, responseChannel);
@@ -365,6 +402,18 @@ public class NettyMessageProcessor extends SimpleChannelInboundHandler<HttpObjec
     return success;
   }
 
+  /**
+   * Initializes the state that lives through the life of the channel. Has no effect if already initialized.
+   * @param ctx The {@link ChannelHandlerContext} that can be used to perform operations on the channel.
+   */
+  private void onChannelActive(ChannelHandlerContext ctx) {
+    if (this.ctx == null) {
+      logger.trace("Channel {} active", ctx.channel());
+      this.ctx = ctx;
+      nettyMetrics.channelCreationRate.mark();
+    }
+  }
+
   /**
    * Resets the state of the processor in preparation for the next request.
    */
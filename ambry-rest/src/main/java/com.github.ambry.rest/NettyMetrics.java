@@ -18,6 +18,10 @@ import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.utils.RequestTrace;
+import com.github.ambry.utils.RequestTracer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 
@@ -48,6 +52,8 @@ public class NettyMetrics {
   // Latencies
   // NettyMessageProcessor
   public final Histogram requestChunkProcessingTimeInMs;
+  // NettyMultipartRequest
+  public final Histogram multipartRequestDecodeTimeInMs;
   // NettyResponseChannel
   public final Histogram channelWriteFailureProcessingTimeInMs;
   public final Histogram chunkDispenseTimeInMs;
@@ -91,6 +97,7 @@ public class NettyMetrics {
   public final Counter deadResponseAccessError;
   public final Counter responseCompleteTasksError;
   // NettyServer
+  public final Counter nativeTransportUnavailableError;
   public final Counter nettyServerShutdownError;
   public final Counter nettyServerStartError;
 
@@ -123,11 +130,14 @@ public class NettyMetrics {
   public final Counter forbiddenCount;
   public final Counter proxyAuthRequiredCount;
   public final Counter rangeNotSatisfiableCount;
+  public final Counter serviceUnavailableCount;
   public final Counter throwableCount;
   public final Counter unknownResponseStatusCount;
   // NettyServer
   public final Histogram nettyServerShutdownTimeInMs;
   public final Histogram nettyServerStartTimeInMs;
+  // NettyServerChannelInitializer
+  public final Counter http2ConnectionCount;
   // ConnectionStatsHandler
   public final Counter connectionsConnectedCount;
   public final Counter connectionsDisconnectedCount;
@@ -165,6 +175,9 @@ public class NettyMetrics {
     // NettyMessageProcessor
     requestChunkProcessingTimeInMs =
         metricRegistry.histogram(MetricRegistry.name(NettyMessageProcessor.class, "RequestChunkProcessingTimeInMs"));
+    // NettyMultipartRequest
+    multipartRequestDecodeTimeInMs =
+        metricRegistry.histogram(MetricRegistry.name(NettyMultipartRequest.class, "DecodeTimeInMs"));
     // NettyResponseChannel
     channelWriteFailureProcessingTimeInMs = metricRegistry.histogram(
         MetricRegistry.name(NettyResponseChannel.class, "ChannelWriteFailureProcessingTimeInMs"));
@@ -236,6 +249,8 @@ public class NettyMetrics {
     responseCompleteTasksError =
         metricRegistry.counter(MetricRegistry.name(NettyResponseChannel.class, "ResponseCompleteTasksError"));
     // NettyServer
+    nativeTransportUnavailableError =
+        metricRegistry.counter(MetricRegistry.name(NettyServer.class, "NativeTransportUnavailableError"));
     nettyServerShutdownError = metricRegistry.counter(MetricRegistry.name(NettyServer.class, "ShutdownError"));
     nettyServerStartError = metricRegistry.counter(MetricRegistry.name(NettyServer.class, "StartError"));
     // PublicAccessLogHandler
@@ -288,12 +303,17 @@ public class NettyMetrics {
         metricRegistry.counter(MetricRegistry.name(NettyResponseChannel.class, "ProxyAuthenticationRequiredCount"));
     rangeNotSatisfiableCount =
         metricRegistry.counter(MetricRegistry.name(NettyResponseChannel.class, "RangeNotSatisfiableCount"));
+    serviceUnavailableCount =
+        metricRegistry.counter(MetricRegistry.name(NettyResponseChannel.class, "ServiceUnavailableCount"));
     throwableCount = metricRegistry.counter(MetricRegistry.name(NettyResponseChannel.class, "ThrowableCount"));
     unknownResponseStatusCount =
         metricRegistry.counter(MetricRegistry.name(NettyResponseChannel.class, "UnknownResponseStatusCount"));
     // NettyServer
     nettyServerShutdownTimeInMs = metricRegistry.histogram(MetricRegistry.name(NettyServer.class, "ShutdownTimeInMs"));
     nettyServerStartTimeInMs = metricRegistry.histogram(MetricRegistry.name(NettyServer.class, "StartTimeInMs"));
+    // NettyServerChannelInitializer
+    http2ConnectionCount =
+        metricRegistry.counter(MetricRegistry.name(NettyServerChannelInitializer.class, "Http2ConnectionCount"));
     // ConnectionStatsHandler
     connectionsConnectedCount =
         metricRegistry.counter(MetricRegistry.name(ConnectionStatsHandler.class, "ConnectionsConnectedCount"));
@@ -314,4 +334,24 @@ public class NettyMetrics {
     };
     metricRegistry.register(MetricRegistry.name(ConnectionStatsHandler.class, "OpenConnections"), openConnections);
   }
+
+  /**
+   * Registers a gauge that exposes the most recent completed traces of a {@link RequestTracer} (through JMX, for e.g.)
+   * so that they can be inspected without going through the logs.
+   * @param requestTracer the {@link RequestTracer} whose traces have to be exposed.
+   */
+  void registerRequestTracer(final RequestTracer requestTracer) {
+    Gauge<List<String>> recentRequestTraces = new Gauge<List<String>>() {
+      @Override
+      public List<String> getValue() {
+        List<RequestTrace> traces = requestTracer.getRecentTraces();
+        List<String> traceStrings = new ArrayList<>(traces.size());
+        for (RequestTrace trace : traces) {
+          traceStrings.add(trace.toString());
+        }
+        return traceStrings;
+      }
+    };
+    metricRegistry.register(MetricRegistry.name(NettyServer.class, "RecentRequestTraces"), recentRequestTraces);
+  }
 }
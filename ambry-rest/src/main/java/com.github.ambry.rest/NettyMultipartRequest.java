@@ -147,6 +147,7 @@ class NettyMultipartRequest extends NettyRequest {
       nettyMetrics.multipartRequestAlreadyClosedError.inc();
       throw new RestServiceException("Request is closed", RestServiceErrorCode.RequestChannelClosed);
     } else if (!readyForRead) {
+      long decodeStartTime = System.currentTimeMillis();
       // make sure data is held in memory.
       HttpDataFactory httpDataFactory = new DefaultHttpDataFactory(false);
       HttpPostMultipartRequestDecoder postRequestDecoder =
@@ -177,6 +178,7 @@ class NettyMultipartRequest extends NettyRequest {
             RestServiceErrorCode.MalformedRequest);
       } finally {
         postRequestDecoder.destroy();
+        nettyMetrics.multipartRequestDecodeTimeInMs.update(System.currentTimeMillis() - decodeStartTime);
       }
     }
   }
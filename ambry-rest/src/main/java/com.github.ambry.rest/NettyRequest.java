@@ -125,6 +125,10 @@ class NettyRequest implements RestRequest {
     this.nettyMetrics = nettyMetrics;
 
     SslHandler sslHandler = channel.pipeline().get(SslHandler.class);
+    if (sslHandler == null && channel.parent() != null) {
+      // HTTP/2 streams are child channels of the connection that has the SslHandler.
+      sslHandler = channel.parent().pipeline().get(SslHandler.class);
+    }
     sslSession = sslHandler != null ? sslHandler.engine().getSession() : null;
 
     HttpMethod httpMethod = request.method();
@@ -264,6 +268,7 @@ class NettyRequest implements RestRequest {
         contentLock.unlock();
         restRequestMetricsTracker.nioMetricsTracker.markRequestCompleted();
         restRequestMetricsTracker.recordMetrics();
+        restRequestMetricsTracker.getTrace().complete();
         if (digestCalculationTimeInMs >= 0) {
           nettyMetrics.digestCalculationTimeInMs.update(digestCalculationTimeInMs);
         }
@@ -486,9 +491,32 @@ class NettyRequest implements RestRequest {
   protected void setAutoRead(boolean autoRead) {
     channel.config().setAutoRead(autoRead);
     channel.config().setRecvByteBufAllocator(autoRead ? savedAllocator : recvByteBufAllocator);
+    if (autoRead) {
+      // switching auto-read on triggers a read.
+      flushConnectionIfRequired();
+    }
     logger.trace("Setting auto-read to {} on channel {}", channel.config().isAutoRead(), channel);
   }
 
+  /**
+   * If the channel is an HTTP/2 stream, flushes the connection it belongs to once reads requested so far have been
+   * performed. When a read on a stream consumes frames that were held back, the stream writes flow control window
+   * updates to the connection without flushing them, and the client would stop sending content once its window for
+   * the stream is used up.
+   */
+  private void flushConnectionIfRequired() {
+    final Channel parent = channel.parent();
+    if (parent != null) {
+      // reads requested from outside the event loop are queued on it, so this runs after them.
+      channel.eventLoop().execute(new Runnable() {
+        @Override
+        public void run() {
+          parent.flush();
+        }
+      });
+    }
+  }
+
   /**
    * Converts the Set of {@link io.netty.handler.codec.http.cookie.Cookie}s to equivalent
    * {@link javax.servlet.http.Cookie}s
@@ -556,6 +584,7 @@ class NettyRequest implements RestRequest {
     if (!channel.config().isAutoRead()) {
       if (bytesBuffered.addAndGet(delta) < bufferWatermark) {
         channel.read();
+        flushConnectionIfRequired();
       } else {
         nettyMetrics.watermarkOverflowCount.inc();
       }
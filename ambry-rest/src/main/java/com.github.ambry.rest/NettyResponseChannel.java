@@ -463,6 +463,10 @@ class NettyResponseChannel implements RestResponseChannel {
         nettyMetrics.internalServerErrorCount.inc();
         status = HttpResponseStatus.INTERNAL_SERVER_ERROR;
         break;
+      case ServiceUnavailable:
+        nettyMetrics.serviceUnavailableCount.inc();
+        status = HttpResponseStatus.SERVICE_UNAVAILABLE;
+        break;
       default:
         nettyMetrics.unknownResponseStatusCount.inc();
         status = HttpResponseStatus.INTERNAL_SERVER_ERROR;
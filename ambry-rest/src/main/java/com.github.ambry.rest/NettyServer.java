@@ -18,11 +18,17 @@ import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
+import io.netty.util.concurrent.EventExecutorGroup;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
@@ -41,15 +47,21 @@ import org.slf4j.LoggerFactory;
  * This implementation creates a pipeline of handlers for every connection that it accepts and the last inbound handler,
  * {@link NettyMessageProcessor}, is responsible for processing the inbound requests and passing them to services that
  * can generate a response.
+ * <p/>
+ * If configured, the Linux native epoll transport is used instead of NIO when it is available. With the native
+ * transport, every boss thread can bind its own listening socket with SO_REUSEPORT so that connections are accepted
+ * in parallel.
  */
 public class NettyServer implements NioServer {
   private final NettyConfig nettyConfig;
   private final NettyMetrics nettyMetrics;
   private final Map<Integer, ChannelInitializer<SocketChannel>> channelInitializers;
+  private final EventExecutorGroup processorExecutorGroup;
   private final Logger logger = LoggerFactory.getLogger(getClass());
 
   private EventLoopGroup bossGroup;
   private EventLoopGroup workerGroup;
+  private boolean useNativeTransport = false;
 
   /**
    * Creates a new instance of NettyServer.
@@ -60,9 +72,25 @@ public class NettyServer implements NioServer {
    */
   public NettyServer(NettyConfig nettyConfig, NettyMetrics nettyMetrics,
       Map<Integer, ChannelInitializer<SocketChannel>> channelInitializers) {
+    this(nettyConfig, nettyMetrics, channelInitializers, null);
+  }
+
+  /**
+   * Creates a new instance of NettyServer.
+   * @param nettyConfig the {@link NettyConfig} instance that defines the configuration parameters for the NettyServer.
+   * @param nettyMetrics the {@link NettyMetrics} instance to use to record metrics.
+   * @param channelInitializers a {@link Map} from port number to the {@link ChannelInitializer} used to initialize
+   *                            a new channel on that port.
+   * @param processorExecutorGroup the {@link EventExecutorGroup} that the {@code channelInitializers} use for request
+   *                               processing, if any. It is shut down along with the server. Can be {@code null}.
+   */
+  public NettyServer(NettyConfig nettyConfig, NettyMetrics nettyMetrics,
+      Map<Integer, ChannelInitializer<SocketChannel>> channelInitializers,
+      EventExecutorGroup processorExecutorGroup) {
     this.nettyConfig = nettyConfig;
     this.nettyMetrics = nettyMetrics;
     this.channelInitializers = channelInitializers;
+    this.processorExecutorGroup = processorExecutorGroup;
     NettyRequest.bufferWatermark = nettyConfig.nettyServerRequestBufferWatermark;
     logger.trace("Instantiated NettyServer");
   }
@@ -72,8 +100,20 @@ public class NettyServer implements NioServer {
     long startupBeginTime = System.currentTimeMillis();
     try {
       logger.trace("Starting NettyServer deployment");
-      bossGroup = new NioEventLoopGroup(nettyConfig.nettyServerBossThreadCount);
-      workerGroup = new NioEventLoopGroup(nettyConfig.nettyServerWorkerThreadCount);
+      useNativeTransport = nettyConfig.nettyServerNativeTransportEnabled && Epoll.isAvailable();
+      if (useNativeTransport) {
+        logger.info("NettyServer is using the native epoll transport");
+        bossGroup = new EpollEventLoopGroup(nettyConfig.nettyServerBossThreadCount);
+        workerGroup = new EpollEventLoopGroup(nettyConfig.nettyServerWorkerThreadCount);
+      } else {
+        if (nettyConfig.nettyServerNativeTransportEnabled) {
+          logger.warn("Native epoll transport is not available. NettyServer is falling back to NIO",
+              Epoll.unavailabilityCause());
+          nettyMetrics.nativeTransportUnavailableError.inc();
+        }
+        bossGroup = new NioEventLoopGroup(nettyConfig.nettyServerBossThreadCount);
+        workerGroup = new NioEventLoopGroup(nettyConfig.nettyServerWorkerThreadCount);
+      }
       for (Map.Entry<Integer, ChannelInitializer<SocketChannel>> entry : channelInitializers.entrySet()) {
         bindServer(entry.getKey(), entry.getValue(), bossGroup, workerGroup);
       }
@@ -96,8 +136,12 @@ public class NettyServer implements NioServer {
       long shutdownBeginTime = System.currentTimeMillis();
       workerGroup.shutdownGracefully();
       bossGroup.shutdownGracefully();
+      if (processorExecutorGroup != null) {
+        processorExecutorGroup.shutdownGracefully();
+      }
       try {
-        if (!(workerGroup.awaitTermination(30, TimeUnit.SECONDS) && bossGroup.awaitTermination(30, TimeUnit.SECONDS))) {
+        if (!(workerGroup.awaitTermination(30, TimeUnit.SECONDS) && bossGroup.awaitTermination(30, TimeUnit.SECONDS)
+            && (processorExecutorGroup == null || processorExecutorGroup.awaitTermination(30, TimeUnit.SECONDS)))) {
           logger.error("NettyServer shutdown failed after waiting for 30 seconds");
           nettyMetrics.nettyServerShutdownError.inc();
         }
@@ -113,7 +157,8 @@ public class NettyServer implements NioServer {
   }
 
   /**
-   * Bootstrap a new server with a {@link ChannelInitializer} and bind it to a port.
+   * Bootstrap a new server with a {@link ChannelInitializer} and bind it to a port. If SO_REUSEPORT is in use, one
+   * listening socket is bound for every boss thread.
    * @param port the port number to bind this server to.
    * @param channelInitializer the {@link ChannelInitializer} for request handling on this server.
    * @param bossGroup the pool of boss threads that this server uses.
@@ -124,11 +169,31 @@ public class NettyServer implements NioServer {
       EventLoopGroup workerGroup) throws InterruptedException {
     ServerBootstrap b = new ServerBootstrap();
     b.group(bossGroup, workerGroup)
-        .channel(NioServerSocketChannel.class)
+        .channel(useNativeTransport ? EpollServerSocketChannel.class : NioServerSocketChannel.class)
         .option(ChannelOption.SO_BACKLOG, nettyConfig.nettyServerSoBacklog)
         .handler(new LoggingHandler(LogLevel.DEBUG))
-        .childHandler(channelInitializer);
-    b.bind(port).sync();
-    logger.info("NettyServer now listening on port {}", port);
+        .childHandler(channelInitializer)
+        .childOption(ChannelOption.TCP_NODELAY, nettyConfig.nettyServerTcpNodelay);
+    int listenerCount = 1;
+    if (useNativeTransport) {
+      EpollMode epollMode =
+          nettyConfig.nettyServerEpollEdgeTriggered ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED;
+      b.option(EpollChannelOption.EPOLL_MODE, epollMode).childOption(EpollChannelOption.EPOLL_MODE, epollMode);
+      if (nettyConfig.nettyServerSoReuseport) {
+        b.option(EpollChannelOption.SO_REUSEPORT, true);
+        listenerCount = nettyConfig.nettyServerBossThreadCount;
+      }
+      if (nettyConfig.nettyServerTcpFastopenQueueLength > 0) {
+        b.option(EpollChannelOption.TCP_FASTOPEN, nettyConfig.nettyServerTcpFastopenQueueLength);
+      }
+      if (nettyConfig.nettyServerTcpQuickack) {
+        b.childOption(EpollChannelOption.TCP_QUICKACK, true);
+      }
+    }
+    // each bind registers the listening socket with the next boss thread.
+    for (int i = 0; i < listenerCount; i++) {
+      b.bind(port).sync();
+    }
+    logger.info("NettyServer now listening on port {} with {} listening socket(s)", port, listenerCount);
   }
 }
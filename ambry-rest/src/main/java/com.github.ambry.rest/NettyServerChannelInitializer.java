@@ -16,21 +16,45 @@ package com.github.ambry.rest;
 
 import com.github.ambry.commons.SSLFactory;
 import com.github.ambry.config.NettyConfig;
+import com.github.ambry.utils.RequestTracer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
 import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http2.Http2Codec;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2ServerDowngrader;
+import io.netty.handler.ssl.ApplicationProtocolNames;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.EventExecutorGroup;
+import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
+import java.util.List;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
 
 
 /**
  * A {@link ChannelInitializer} to be used with {@link NettyServer}. Calling {@link #initChannel(SocketChannel)} adds
  * the necessary handlers to a channel's pipeline so that it may handle requests.
+ * <p/>
+ * If HTTP/2 is enabled, connections that start with the HTTP/2 connection preface are served over HTTP/2 and all other
+ * connections over HTTP/1.1. SSL connections advertise h2 through ALPN using the {@link SSLEngine} of the JDK, so
+ * HTTP/2 over SSL requires a JDK that supports ALPN (Java 9 and above, or Java 8u252 and above).
  */
 class NettyServerChannelInitializer extends ChannelInitializer<SocketChannel> {
+  // SSLParameters#setApplicationProtocols(String[]), or null if the JDK does not support ALPN. It is looked up
+  // reflectively so that this compiles and runs (without HTTP/2 over SSL) on JDKs that predate it.
+  private static final Method SET_APPLICATION_PROTOCOLS_METHOD = getSetApplicationProtocolsMethod();
   private final NettyConfig nettyConfig;
   private final NettyMetrics nettyMetrics;
   private final ConnectionStatsHandler connectionStatsHandler;
@@ -38,6 +62,8 @@ class NettyServerChannelInitializer extends ChannelInitializer<SocketChannel> {
   private final PublicAccessLogger publicAccessLogger;
   private final RestServerState restServerState;
   private final SSLFactory sslFactory;
+  private final EventExecutorGroup processorExecutorGroup;
+  private final RequestTracer requestTracer;
 
   /**
    * Construct a {@link NettyServerChannelInitializer}.
@@ -53,6 +79,58 @@ class NettyServerChannelInitializer extends ChannelInitializer<SocketChannel> {
   public NettyServerChannelInitializer(NettyConfig nettyConfig, NettyMetrics nettyMetrics,
       ConnectionStatsHandler connectionStatsHandler, RestRequestHandler requestHandler,
       PublicAccessLogger publicAccessLogger, RestServerState restServerState, SSLFactory sslFactory) {
+    this(nettyConfig, nettyMetrics, connectionStatsHandler, requestHandler, publicAccessLogger, restServerState,
+        sslFactory, null);
+  }
+
+  /**
+   * Construct a {@link NettyServerChannelInitializer} that runs the {@link NettyMessageProcessor} of every channel on
+   * {@code processorExecutorGroup} so that request processing (like digest computation over request content) does not
+   * hold up I/O on the channel's event loop.
+   * @param nettyConfig the config to use when instantiating certain handlers on this pipeline.
+   * @param nettyMetrics the {@link NettyMetrics} object to use.
+   * @param connectionStatsHandler the {@link ConnectionStatsHandler} to use.
+   * @param requestHandler the {@link RestRequestHandler} to handle requests on this pipeline.
+   * @param publicAccessLogger the {@link PublicAccessLogger} to use.
+   * @param restServerState the {@link RestServerState} object to use.
+   * @param sslFactory the {@link SSLFactory} to use for generating {@link javax.net.ssl.SSLEngine} instances,
+   *                   or {@code null} if SSL is not enabled in this pipeline.
+   * @param processorExecutorGroup the {@link EventExecutorGroup} to run {@link NettyMessageProcessor} on, or
+   *                               {@code null} if it has to run on the channel's event loop.
+   */
+  public NettyServerChannelInitializer(NettyConfig nettyConfig, NettyMetrics nettyMetrics,
+      ConnectionStatsHandler connectionStatsHandler, RestRequestHandler requestHandler,
+      PublicAccessLogger publicAccessLogger, RestServerState restServerState, SSLFactory sslFactory,
+      EventExecutorGroup processorExecutorGroup) {
+    this(nettyConfig, nettyMetrics, connectionStatsHandler, requestHandler, publicAccessLogger, restServerState,
+        sslFactory, processorExecutorGroup, null);
+  }
+
+  /**
+   * Construct a {@link NettyServerChannelInitializer} that traces a sample of the requests on its channels.
+   * @param nettyConfig the config to use when instantiating certain handlers on this pipeline.
+   * @param nettyMetrics the {@link NettyMetrics} object to use.
+   * @param connectionStatsHandler the {@link ConnectionStatsHandler} to use.
+   * @param requestHandler the {@link RestRequestHandler} to handle requests on this pipeline.
+   * @param publicAccessLogger the {@link PublicAccessLogger} to use.
+   * @param restServerState the {@link RestServerState} object to use.
+   * @param sslFactory the {@link SSLFactory} to use for generating {@link javax.net.ssl.SSLEngine} instances,
+   *                   or {@code null} if SSL is not enabled in this pipeline.
+   * @param processorExecutorGroup the {@link EventExecutorGroup} to run {@link NettyMessageProcessor} on, or
+   *                               {@code null} if it has to run on the channel's event loop.
+   * @param requestTracer the {@link RequestTracer} to start the traces of requests with, or {@code null} if requests
+   *                      are not traced.
+   * @throws IllegalStateException if HTTP/2 is enabled along with SSL and the JDK does not support ALPN.
+   */
+  public NettyServerChannelInitializer(NettyConfig nettyConfig, NettyMetrics nettyMetrics,
+      ConnectionStatsHandler connectionStatsHandler, RestRequestHandler requestHandler,
+      PublicAccessLogger publicAccessLogger, RestServerState restServerState, SSLFactory sslFactory,
+      EventExecutorGroup processorExecutorGroup, RequestTracer requestTracer) {
+    if (nettyConfig.nettyServerHttp2Enabled && sslFactory != null && SET_APPLICATION_PROTOCOLS_METHOD == null) {
+      throw new IllegalStateException(
+          "HTTP/2 over SSL requires a JDK that supports ALPN (Java 9 and above, or Java 8u252 and above). Running on "
+              + System.getProperty("java.version"));
+    }
     this.nettyConfig = nettyConfig;
     this.nettyMetrics = nettyMetrics;
     this.connectionStatsHandler = connectionStatsHandler;
@@ -60,6 +138,8 @@ class NettyServerChannelInitializer extends ChannelInitializer<SocketChannel> {
     this.publicAccessLogger = publicAccessLogger;
     this.restServerState = restServerState;
     this.sslFactory = sslFactory;
+    this.processorExecutorGroup = processorExecutorGroup;
+    this.requestTracer = requestTracer;
   }
 
   @Override
@@ -73,14 +153,89 @@ class NettyServerChannelInitializer extends ChannelInitializer<SocketChannel> {
     // if SSL is enabled, add an SslHandler before the HTTP codec
     if (sslFactory != null) {
       InetSocketAddress peerAddress = ch.remoteAddress();
-      pipeline.addLast("sslHandler", new SslHandler(
-          sslFactory.createSSLEngine(peerAddress.getHostName(), peerAddress.getPort(), SSLFactory.Mode.SERVER)));
+      SSLEngine sslEngine =
+          sslFactory.createSSLEngine(peerAddress.getHostName(), peerAddress.getPort(), SSLFactory.Mode.SERVER);
+      if (nettyConfig.nettyServerHttp2Enabled) {
+        // advertise h2 through ALPN so that clients can choose HTTP/2. The JDK supports ALPN, as checked on
+        // construction.
+        SSLParameters sslParameters = sslEngine.getSSLParameters();
+        SET_APPLICATION_PROTOCOLS_METHOD.invoke(sslParameters,
+            (Object) new String[]{ApplicationProtocolNames.HTTP_2, ApplicationProtocolNames.HTTP_1_1});
+        sslEngine.setSSLParameters(sslParameters);
+      }
+      pipeline.addLast("sslHandler", new SslHandler(sslEngine));
     }
+    if (nettyConfig.nettyServerHttp2Enabled) {
+      // the protocol is chosen once the first bytes from the client are seen.
+      pipeline.addLast("httpVersionDetector", new HttpVersionDetector());
+    } else {
+      addHttp1Handlers(pipeline);
+    }
+  }
+
+  /**
+   * The version of Netty in use supports ALPN on Java 8 only through a boot classpath agent, so the JDK's own support
+   * is relied on instead.
+   * @return {@code SSLParameters#setApplicationProtocols(String[])} if the {@link SSLEngine} of the JDK supports ALPN,
+   *         {@code null} otherwise.
+   */
+  private static Method getSetApplicationProtocolsMethod() {
+    try {
+      return SSLParameters.class.getMethod("setApplicationProtocols", String[].class);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Adds the handlers required to serve HTTP/1.1 on a connection.
+   * @param pipeline the {@link ChannelPipeline} of the connection.
+   */
+  private void addHttp1Handlers(ChannelPipeline pipeline) {
+    // for http encoding/decoding.
+    pipeline.addLast("codec",
+        new HttpServerCodec(nettyConfig.nettyServerMaxInitialLineLength, nettyConfig.nettyServerMaxHeaderSize,
+            nettyConfig.nettyServerMaxChunkSize));
+    addRequestHandlers(pipeline);
+  }
+
+  /**
+   * Adds the handlers required to serve HTTP/2 on a connection. Every stream gets its own child channel whose pipeline
+   * converts HTTP/2 frames to and from {@link io.netty.handler.codec.http.HttpObject}s so that streams are handled
+   * exactly like HTTP/1.1 requests. Flow control of the stream applies to the writes of {@link NettyResponseChannel}.
+   * @param pipeline the {@link ChannelPipeline} of the connection.
+   */
+  private void addHttp2Handlers(ChannelPipeline pipeline) {
+    pipeline
+        // for closing connections that have no active streams for too long.
+        .addLast("idleStateHandler", new IdleStateHandler(0, 0, nettyConfig.nettyServerIdleTimeSeconds))
+        .addLast("http2Codec", new Http2Codec(true, new ChannelInitializer<Channel>() {
+          @Override
+          protected void initChannel(Channel ch) {
+            ch.pipeline().addLast("http2Downgrader", new Http2ServerDowngrader());
+            addRequestHandlers(ch.pipeline());
+          }
+        }))
+        .addLast("idleConnectionCloser", new ChannelInboundHandlerAdapter() {
+          @Override
+          public void userEventTriggered(ChannelHandlerContext ctx, Object event) throws Exception {
+            if (event instanceof IdleStateEvent) {
+              nettyMetrics.idleConnectionCloseCount.inc();
+              ctx.close();
+            } else {
+              super.userEventTriggered(ctx, event);
+            }
+          }
+        });
+  }
+
+  /**
+   * Adds the handlers that process requests once they have been decoded into
+   * {@link io.netty.handler.codec.http.HttpObject}s.
+   * @param pipeline the {@link ChannelPipeline} of the connection (HTTP/1.1) or stream (HTTP/2).
+   */
+  private void addRequestHandlers(ChannelPipeline pipeline) {
     pipeline
-        // for http encoding/decoding.
-        .addLast("codec",
-            new HttpServerCodec(nettyConfig.nettyServerMaxInitialLineLength, nettyConfig.nettyServerMaxHeaderSize,
-                nettyConfig.nettyServerMaxChunkSize))
         // for health check request handling
         .addLast("healthCheckHandler", new HealthCheckHandler(restServerState, nettyMetrics))
         // for public access logging
@@ -89,7 +244,40 @@ class NettyServerChannelInitializer extends ChannelInitializer<SocketChannel> {
         .addLast("idleStateHandler", new IdleStateHandler(0, 0, nettyConfig.nettyServerIdleTimeSeconds))
         // for safe writing of chunks for responses
         .addLast("chunker", new ChunkedWriteHandler())
-        // custom processing class that interfaces with a BlobStorageService.
-        .addLast("processor", new NettyMessageProcessor(nettyMetrics, nettyConfig, requestHandler));
+        // custom processing class that interfaces with a BlobStorageService. Runs on the event loop if
+        // processorExecutorGroup is null. Otherwise, every channel is assigned one of the executors of the group in
+        // turn, which keeps the processing of the channel in order. Back-pressure is maintained through auto-read by
+        // NettyRequest.
+        .addLast(processorExecutorGroup, "processor",
+            new NettyMessageProcessor(nettyMetrics, nettyConfig, requestHandler, requestTracer));
+  }
+
+  /**
+   * Chooses between HTTP/1.1 and HTTP/2 for a connection by checking whether the client starts with the HTTP/2
+   * connection preface. This works for both cleartext (h2c with prior knowledge) and TLS (after ALPN has selected h2)
+   * connections. Once the choice is made, the corresponding handlers are added and this handler removes itself.
+   */
+  private class HttpVersionDetector extends ByteToMessageDecoder {
+    private final ByteBuf connectionPreface = Http2CodecUtil.connectionPrefaceBuf();
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+      int bytesToCompare = Math.min(in.readableBytes(), connectionPreface.readableBytes());
+      if (!ByteBufUtil.equals(connectionPreface, connectionPreface.readerIndex(), in, in.readerIndex(),
+          bytesToCompare)) {
+        addHttp1Handlers(ctx.pipeline());
+        ctx.pipeline().remove(this);
+      } else if (bytesToCompare == connectionPreface.readableBytes()) {
+        nettyMetrics.http2ConnectionCount.inc();
+        addHttp2Handlers(ctx.pipeline());
+        ctx.pipeline().remove(this);
+      }
+      // otherwise, wait for more bytes.
+    }
+
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) {
+      connectionPreface.release();
+    }
   }
 }
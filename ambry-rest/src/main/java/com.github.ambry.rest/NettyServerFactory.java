@@ -17,8 +17,11 @@ import com.codahale.metrics.MetricRegistry;
 import com.github.ambry.commons.SSLFactory;
 import com.github.ambry.config.NettyConfig;
 import com.github.ambry.config.VerifiableProperties;
+import com.github.ambry.utils.RequestTracer;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.socket.SocketChannel;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -34,6 +37,8 @@ public class NettyServerFactory implements NioServerFactory {
 
   private final NettyConfig nettyConfig;
   private final NettyMetrics nettyMetrics;
+  private final EventExecutorGroup processorExecutorGroup;
+  private final RequestTracer requestTracer;
   final Map<Integer, ChannelInitializer<SocketChannel>> channelInitializers;
 
   /**
@@ -61,15 +66,23 @@ public class NettyServerFactory implements NioServerFactory {
     }
     nettyMetrics = new NettyMetrics(metricRegistry);
     ConnectionStatsHandler connectionStatsHandler = new ConnectionStatsHandler(nettyMetrics);
+    processorExecutorGroup = nettyConfig.nettyServerProcessorThreadCount > 0 ? new DefaultEventExecutorGroup(
+        nettyConfig.nettyServerProcessorThreadCount) : null;
+    requestTracer = nettyConfig.nettyServerRequestTraceSampleRate > 0 ? new RequestTracer(
+        nettyConfig.nettyServerRequestTraceSampleRate, nettyConfig.nettyServerRequestTraceBufferSize,
+        nettyConfig.nettyServerRequestTraceLogThresholdMs) : null;
+    if (requestTracer != null) {
+      nettyMetrics.registerRequestTracer(requestTracer);
+    }
 
     Map<Integer, ChannelInitializer<SocketChannel>> initializers = new HashMap<>();
     initializers.put(nettyConfig.nettyServerPort,
         new NettyServerChannelInitializer(nettyConfig, nettyMetrics, connectionStatsHandler, requestHandler,
-            publicAccessLogger, restServerState, null));
+            publicAccessLogger, restServerState, null, processorExecutorGroup, requestTracer));
     if (nettyConfig.nettyServerSSLEnabled) {
       initializers.put(nettyConfig.nettyServerSSLPort,
           new NettyServerChannelInitializer(nettyConfig, nettyMetrics, connectionStatsHandler, requestHandler,
-              publicAccessLogger, restServerState, sslFactory));
+              publicAccessLogger, restServerState, sslFactory, processorExecutorGroup, requestTracer));
     }
     channelInitializers = Collections.unmodifiableMap(initializers);
   }
@@ -80,6 +93,6 @@ public class NettyServerFactory implements NioServerFactory {
    */
   @Override
   public NioServer getNioServer() {
-    return new NettyServer(nettyConfig, nettyMetrics, channelInitializers);
+    return new NettyServer(nettyConfig, nettyMetrics, channelInitializers, processorExecutorGroup);
   }
 }
@@ -17,7 +17,6 @@ import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.http.HttpContent;
-import io.netty.handler.codec.http.HttpMessage;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpUtil;
@@ -29,22 +28,22 @@ import org.slf4j.LoggerFactory;
 /**
  * Captures headers and other required info from request and responses, to make public access log entries
  * {@link PublicAccessLogger} assists in logging the required information
+ * <p/>
+ * The information is captured in a {@link PublicAccessLogRecord} and the log message is built from it only when the
+ * entry is written by the {@link PublicAccessLogger}.
  */
 public class PublicAccessLogHandler extends ChannelDuplexHandler {
   private final PublicAccessLogger publicAccessLogger;
   private final NettyMetrics nettyMetrics;
-  private long requestArrivalTimeInMs;
-  private long requestLastChunkArrivalTimeInMs;
-  private long responseFirstChunkStartTimeInMs;
-  private StringBuilder logMessage;
+  private final PublicAccessLogRecord record;
   private HttpRequest request;
 
-  private static final long INIT_TIME = -1;
   private final Logger logger = LoggerFactory.getLogger(getClass());
 
   public PublicAccessLogHandler(PublicAccessLogger publicAccessLogger, NettyMetrics nettyMetrics) {
     this.publicAccessLogger = publicAccessLogger;
     this.nettyMetrics = nettyMetrics;
+    record = new PublicAccessLogRecord(publicAccessLogger.getRequestHeaders(), publicAccessLogger.getResponseHeaders());
     reset();
   }
 
@@ -55,20 +54,14 @@ public class PublicAccessLogHandler extends ChannelDuplexHandler {
     if (obj instanceof HttpRequest) {
       nettyMetrics.publicAccessLogRequestRate.mark();
       if (request != null) {
-        logDurations();
-        logMessage.append(" : Received request while another request in progress. Resetting log message.");
-        logger.error(logMessage.toString());
+        record.onComplete(" : Received request while another request in progress. Resetting log message.");
+        logger.error(record.toString());
       }
       reset();
-      requestArrivalTimeInMs = System.currentTimeMillis();
       request = (HttpRequest) obj;
-      logMessage.append(ctx.channel().remoteAddress()).append(" ");
-      logMessage.append(request.method().toString()).append(" ");
-      logMessage.append(request.uri()).append(", ");
-      logHeaders("Request", request, publicAccessLogger.getRequestHeaders());
-      logMessage.append(", ");
+      record.onRequest(ctx.channel().remoteAddress(), request);
     } else if (obj instanceof LastHttpContent) {
-      requestLastChunkArrivalTimeInMs = System.currentTimeMillis();
+      record.onRequestComplete();
     } else if (!(obj instanceof HttpContent)) {
       logger.error("Receiving request (messageReceived) that is not of type HttpRequest or HttpContent. "
           + "Receiving request from " + ctx.channel().remoteAddress() + ". " + "Request is of type " + obj.getClass()
@@ -85,13 +78,8 @@ public class PublicAccessLogHandler extends ChannelDuplexHandler {
     if (request != null) {
       if (msg instanceof HttpResponse) {
         HttpResponse response = (HttpResponse) msg;
-        logHeaders("Response", response, publicAccessLogger.getResponseHeaders());
-        logMessage.append(", ");
-        logMessage.append("status=").append(response.status().code());
-        logMessage.append(", ");
-        if (HttpUtil.isTransferEncodingChunked(response)) {
-          responseFirstChunkStartTimeInMs = System.currentTimeMillis();
-        } else {
+        record.onResponse(response);
+        if (!HttpUtil.isTransferEncodingChunked(response)) {
           shouldReset = true;
         }
       } else if (!(msg instanceof HttpContent)) {
@@ -101,8 +89,8 @@ public class PublicAccessLogHandler extends ChannelDuplexHandler {
                 + ". No action being taken other than logging this unexpected state.");
       }
       if (shouldReset) {
-        logDurations();
-        publicAccessLogger.logInfo(logMessage.toString());
+        record.onComplete(null);
+        publicAccessLogger.log(record);
         reset();
       }
     }
@@ -126,49 +114,11 @@ public class PublicAccessLogHandler extends ChannelDuplexHandler {
     super.close(ctx, future);
   }
 
-  /**
-   * Appends specified headers to the log message if those headers are not null
-   * @param tag pretty name for set of headers to append
-   * @param message http message from which to log headers
-   * @param headers array of headers to log
-   */
-  private void logHeaders(String tag, HttpMessage message, String[] headers) {
-    logMessage.append(tag).append(" (");
-    for (String header : headers) {
-      if (message.headers().get(header) != null) {
-        logMessage.append("[").append(header).append("=").append(message.headers().get(header)).append("] ");
-      }
-    }
-    boolean isChunked = HttpUtil.isTransferEncodingChunked(message);
-    logMessage.append("[isChunked=").append(isChunked).append("]");
-    logMessage.append(")");
-  }
-
-  /**
-   * Appends duration of operation to the log message. Also appends duration of receive or send phases of
-   * operations if those phases used chunked encoding.
-   */
-  private void logDurations() {
-    long nowMs = System.currentTimeMillis();
-    logMessage.append("duration=").append(nowMs - requestArrivalTimeInMs).append("ms ");
-    if (requestLastChunkArrivalTimeInMs != INIT_TIME) {
-      logMessage.append("(chunked request receive=")
-          .append(requestLastChunkArrivalTimeInMs - requestArrivalTimeInMs)
-          .append("ms) ");
-    }
-    if (responseFirstChunkStartTimeInMs != INIT_TIME) {
-      logMessage.append("(chunked response send=").append(nowMs - responseFirstChunkStartTimeInMs).append("ms) ");
-    }
-  }
-
   /**
    * Resets some variables as part of logging a response
    */
   private void reset() {
-    responseFirstChunkStartTimeInMs = INIT_TIME;
-    requestLastChunkArrivalTimeInMs = INIT_TIME;
-    requestArrivalTimeInMs = INIT_TIME;
-    logMessage = new StringBuilder();
+    record.reset();
     request = null;
   }
 
@@ -177,8 +127,7 @@ public class PublicAccessLogHandler extends ChannelDuplexHandler {
    * @param msg the message to log
    */
   private void logError(String msg) {
-    logDurations();
-    logMessage.append(msg);
-    publicAccessLogger.logError(logMessage.toString());
+    record.onComplete(msg);
+    publicAccessLogger.log(record);
   }
 }
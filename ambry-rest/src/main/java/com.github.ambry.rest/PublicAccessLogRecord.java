@@ -0,0 +1,228 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.rest;
+
+import io.netty.handler.codec.http.HttpMessage;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpUtil;
+
+
+/**
+ * The information required to make a public access log entry for a request.
+ * <p/>
+ * Records are filled in by {@link PublicAccessLogHandler} without building any strings. The log message is built only
+ * in {@link #format(StringBuilder)} so that this can be done away from the Netty event loops if required. Records are
+ * reusable via {@link #reset()}.
+ */
+class PublicAccessLogRecord {
+  private static final long INIT_TIME = -1;
+
+  private final String[] requestHeaderNames;
+  private final String[] responseHeaderNames;
+  private final String[] requestHeaderValues;
+  private final String[] responseHeaderValues;
+
+  private Object remoteAddress;
+  private String method;
+  private String uri;
+  private boolean requestChunked;
+  private boolean hasResponse;
+  private boolean responseChunked;
+  private int status;
+  private long requestArrivalTimeInMs;
+  private long requestLastChunkArrivalTimeInMs;
+  private long responseFirstChunkStartTimeInMs;
+  private long endTimeInMs;
+  private String errorMessage;
+
+  /**
+   * Creates an empty record.
+   * @param requestHeaderNames the names of the request headers that have to be logged.
+   * @param responseHeaderNames the names of the response headers that have to be logged.
+   */
+  PublicAccessLogRecord(String[] requestHeaderNames, String[] responseHeaderNames) {
+    this.requestHeaderNames = requestHeaderNames;
+    this.responseHeaderNames = responseHeaderNames;
+    requestHeaderValues = new String[requestHeaderNames.length];
+    responseHeaderValues = new String[responseHeaderNames.length];
+    reset();
+  }
+
+  /**
+   * Records the details of a request that has just arrived.
+   * @param remoteAddress the address of the client.
+   * @param request the {@link HttpRequest} that arrived.
+   */
+  void onRequest(Object remoteAddress, HttpRequest request) {
+    requestArrivalTimeInMs = System.currentTimeMillis();
+    this.remoteAddress = remoteAddress;
+    method = request.method().name();
+    uri = request.uri();
+    requestChunked = captureHeaders(request, requestHeaderNames, requestHeaderValues);
+  }
+
+  /**
+   * Records the arrival of the last chunk of the request.
+   */
+  void onRequestComplete() {
+    requestLastChunkArrivalTimeInMs = System.currentTimeMillis();
+  }
+
+  /**
+   * Records the details of the response that is being sent.
+   * @param response the {@link HttpResponse} being sent.
+   */
+  void onResponse(HttpResponse response) {
+    hasResponse = true;
+    status = response.status().code();
+    responseChunked = captureHeaders(response, responseHeaderNames, responseHeaderValues);
+    if (responseChunked) {
+      responseFirstChunkStartTimeInMs = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * Marks the record as complete.
+   * @param errorMessage the message to be appended to the entry if the request did not complete normally. {@code null}
+   *                     otherwise.
+   */
+  void onComplete(String errorMessage) {
+    endTimeInMs = System.currentTimeMillis();
+    this.errorMessage = errorMessage;
+  }
+
+  /**
+   * @return {@code true} if the request did not complete normally and the entry has to be logged as an error.
+   */
+  boolean isError() {
+    return errorMessage != null;
+  }
+
+  /**
+   * Makes this record a copy of {@code other}. Both records must log the same headers.
+   * @param other the record to copy.
+   */
+  void copyFrom(PublicAccessLogRecord other) {
+    System.arraycopy(other.requestHeaderValues, 0, requestHeaderValues, 0, requestHeaderValues.length);
+    System.arraycopy(other.responseHeaderValues, 0, responseHeaderValues, 0, responseHeaderValues.length);
+    remoteAddress = other.remoteAddress;
+    method = other.method;
+    uri = other.uri;
+    requestChunked = other.requestChunked;
+    hasResponse = other.hasResponse;
+    responseChunked = other.responseChunked;
+    status = other.status;
+    requestArrivalTimeInMs = other.requestArrivalTimeInMs;
+    requestLastChunkArrivalTimeInMs = other.requestLastChunkArrivalTimeInMs;
+    responseFirstChunkStartTimeInMs = other.responseFirstChunkStartTimeInMs;
+    endTimeInMs = other.endTimeInMs;
+    errorMessage = other.errorMessage;
+  }
+
+  /**
+   * Clears the record so that it can be reused for another request.
+   */
+  void reset() {
+    for (int i = 0; i < requestHeaderValues.length; i++) {
+      requestHeaderValues[i] = null;
+    }
+    for (int i = 0; i < responseHeaderValues.length; i++) {
+      responseHeaderValues[i] = null;
+    }
+    remoteAddress = null;
+    method = null;
+    uri = null;
+    requestChunked = false;
+    hasResponse = false;
+    responseChunked = false;
+    status = 0;
+    requestArrivalTimeInMs = INIT_TIME;
+    requestLastChunkArrivalTimeInMs = INIT_TIME;
+    responseFirstChunkStartTimeInMs = INIT_TIME;
+    endTimeInMs = INIT_TIME;
+    errorMessage = null;
+  }
+
+  /**
+   * Appends the public access log entry for this record to {@code logMessage}.
+   * @param logMessage the {@link StringBuilder} to append the entry to.
+   * @return {@code logMessage}.
+   */
+  StringBuilder format(StringBuilder logMessage) {
+    logMessage.append(remoteAddress).append(" ");
+    logMessage.append(method).append(" ");
+    logMessage.append(uri).append(", ");
+    formatHeaders(logMessage, "Request", requestHeaderNames, requestHeaderValues, requestChunked);
+    logMessage.append(", ");
+    if (hasResponse) {
+      formatHeaders(logMessage, "Response", responseHeaderNames, responseHeaderValues, responseChunked);
+      logMessage.append(", ");
+      logMessage.append("status=").append(status);
+      logMessage.append(", ");
+    }
+    logMessage.append("duration=").append(endTimeInMs - requestArrivalTimeInMs).append("ms ");
+    if (requestLastChunkArrivalTimeInMs != INIT_TIME) {
+      logMessage.append("(chunked request receive=")
+          .append(requestLastChunkArrivalTimeInMs - requestArrivalTimeInMs)
+          .append("ms) ");
+    }
+    if (responseFirstChunkStartTimeInMs != INIT_TIME) {
+      logMessage.append("(chunked response send=").append(endTimeInMs - responseFirstChunkStartTimeInMs).append("ms) ");
+    }
+    if (errorMessage != null) {
+      logMessage.append(errorMessage);
+    }
+    return logMessage;
+  }
+
+  @Override
+  public String toString() {
+    return format(new StringBuilder()).toString();
+  }
+
+  /**
+   * Captures the values of the headers that have to be logged.
+   * @param message http message from which to capture headers.
+   * @param headerNames the names of the headers to capture.
+   * @param headerValues the array to capture the values in. Absent headers are recorded as {@code null}.
+   * @return {@code true} if the message uses chunked transfer encoding.
+   */
+  private static boolean captureHeaders(HttpMessage message, String[] headerNames, String[] headerValues) {
+    for (int i = 0; i < headerNames.length; i++) {
+      headerValues[i] = message.headers().get(headerNames[i]);
+    }
+    return HttpUtil.isTransferEncodingChunked(message);
+  }
+
+  /**
+   * Appends the captured headers to the log message.
+   * @param logMessage the {@link StringBuilder} to append to.
+   * @param tag pretty name for set of headers to append.
+   * @param headerNames the names of the headers.
+   * @param headerValues the captured values of the headers.
+   * @param isChunked whether the message used chunked transfer encoding.
+   */
+  private static void formatHeaders(StringBuilder logMessage, String tag, String[] headerNames, String[] headerValues,
+      boolean isChunked) {
+    logMessage.append(tag).append(" (");
+    for (int i = 0; i < headerNames.length; i++) {
+      if (headerValues[i] != null) {
+        logMessage.append("[").append(headerNames[i]).append("=").append(headerValues[i]).append("] ");
+      }
+    }
+    logMessage.append("[isChunked=").append(isChunked).append("]");
+    logMessage.append(")");
+  }
+}
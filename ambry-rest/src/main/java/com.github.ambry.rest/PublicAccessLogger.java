@@ -13,27 +13,116 @@
  */
 package com.github.ambry.rest;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
 /**
  * Logs requests and responses to public access log.
+ * <p/>
+ * If created with a non-zero async buffer size, records handed to {@link #log(PublicAccessLogRecord)} are copied into
+ * a preallocated ring of records and formatted and written in batches by a background writer thread (started by
+ * {@link #start()}). Otherwise entries are formatted and written on the calling thread.
  */
 public class PublicAccessLogger {
+  private static final int MAX_BATCH_SIZE = 256;
+  private static final long WRITER_POLL_TIMEOUT_MS = 100;
 
   private Logger publicAccessLogger = LoggerFactory.getLogger("PublicAccessLogger");
 
   private final String[] requestHeaders;
   private final String[] responseHeaders;
+  private final boolean async;
+  private final boolean dropWhenFull;
+  private final BlockingQueue<PublicAccessLogRecord> freeRecords;
+  private final BlockingQueue<PublicAccessLogRecord> pendingRecords;
+  private final Counter droppedRecordCount;
+  private final Counter inlineRecordCount;
+  private final Histogram batchSize;
   private final Logger logger = LoggerFactory.getLogger(getClass());
 
+  private volatile boolean running = false;
+  private Thread writerThread = null;
+
+  /**
+   * Creates a PublicAccessLogger that writes entries synchronously.
+   * @param requestHeaders the request headers that have to be logged.
+   * @param responseHeaders the response headers that have to be logged.
+   */
   public PublicAccessLogger(String[] requestHeaders, String[] responseHeaders) {
+    this(requestHeaders, responseHeaders, 0, false, new MetricRegistry());
+  }
+
+  /**
+   * Creates a PublicAccessLogger.
+   * @param requestHeaders the request headers that have to be logged.
+   * @param responseHeaders the response headers that have to be logged.
+   * @param asyncBufferSize the number of entries that can be pending write. If 0, entries are written synchronously.
+   * @param dropWhenFull if {@code true}, entries are dropped when {@code asyncBufferSize} entries are already pending.
+   *                     If {@code false}, such entries are written on the calling thread instead.
+   * @param metricRegistry the {@link MetricRegistry} to register metrics with.
+   */
+  public PublicAccessLogger(String[] requestHeaders, String[] responseHeaders, int asyncBufferSize,
+      boolean dropWhenFull, MetricRegistry metricRegistry) {
+    if (asyncBufferSize < 0) {
+      throw new IllegalArgumentException("Async buffer size cannot be negative: " + asyncBufferSize);
+    }
     this.requestHeaders = requestHeaders;
     this.responseHeaders = responseHeaders;
+    this.dropWhenFull = dropWhenFull;
+    async = asyncBufferSize > 0;
+    if (async) {
+      freeRecords = new ArrayBlockingQueue<PublicAccessLogRecord>(asyncBufferSize);
+      pendingRecords = new ArrayBlockingQueue<PublicAccessLogRecord>(asyncBufferSize);
+      for (int i = 0; i < asyncBufferSize; i++) {
+        freeRecords.add(new PublicAccessLogRecord(requestHeaders, responseHeaders));
+      }
+    } else {
+      freeRecords = null;
+      pendingRecords = null;
+    }
+    droppedRecordCount = metricRegistry.counter(MetricRegistry.name(PublicAccessLogger.class, "DroppedRecordCount"));
+    inlineRecordCount = metricRegistry.counter(MetricRegistry.name(PublicAccessLogger.class, "InlineRecordCount"));
+    batchSize = metricRegistry.histogram(MetricRegistry.name(PublicAccessLogger.class, "BatchSize"));
     logger.trace("Created PublicAccessLogger for log " + publicAccessLogger.getName());
   }
 
+  /**
+   * Starts the background writer if this logger writes entries asynchronously. No-op otherwise.
+   */
+  public void start() {
+    if (async && !running) {
+      running = true;
+      writerThread = new Thread(new Writer(), "PublicAccessLogWriter");
+      writerThread.setDaemon(true);
+      writerThread.start();
+    }
+  }
+
+  /**
+   * Stops the background writer (if any) after writing all the pending entries.
+   */
+  public void shutdown() {
+    if (writerThread != null) {
+      running = false;
+      try {
+        writerThread.join();
+      } catch (InterruptedException e) {
+        logger.error("Interrupted while waiting for the public access log writer to shut down", e);
+        Thread.currentThread().interrupt();
+      }
+      writerThread = null;
+    }
+  }
+
   public String[] getRequestHeaders() {
     return requestHeaders;
   }
@@ -49,4 +138,78 @@ public class PublicAccessLogger {
   public void logInfo(String message) {
     publicAccessLogger.info(message);
   }
+
+  /**
+   * Logs the entry for {@code record}. The record is not retained and can be reused once this function returns.
+   * @param record the {@link PublicAccessLogRecord} to log.
+   */
+  void log(PublicAccessLogRecord record) {
+    if (async) {
+      PublicAccessLogRecord slot = freeRecords.poll();
+      if (slot != null) {
+        slot.copyFrom(record);
+        pendingRecords.add(slot);
+        return;
+      } else if (dropWhenFull) {
+        droppedRecordCount.inc();
+        return;
+      }
+      inlineRecordCount.inc();
+    }
+    write(record, new StringBuilder());
+  }
+
+  /**
+   * Formats and writes the entry for {@code record}.
+   * @param record the {@link PublicAccessLogRecord} to write.
+   * @param logMessage the {@link StringBuilder} to use to format the entry.
+   */
+  private void write(PublicAccessLogRecord record, StringBuilder logMessage) {
+    logMessage.setLength(0);
+    record.format(logMessage);
+    if (record.isError()) {
+      logError(logMessage.toString());
+    } else {
+      logInfo(logMessage.toString());
+    }
+  }
+
+  /**
+   * Writes pending entries in batches until the logger is shut down and there are no more pending entries.
+   */
+  private class Writer implements Runnable {
+    private final List<PublicAccessLogRecord> batch = new ArrayList<PublicAccessLogRecord>(MAX_BATCH_SIZE);
+    private final StringBuilder logMessage = new StringBuilder();
+
+    @Override
+    public void run() {
+      while (true) {
+        try {
+          PublicAccessLogRecord record = pendingRecords.poll(WRITER_POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+          if (record == null) {
+            if (!running) {
+              break;
+            }
+            continue;
+          }
+          batch.add(record);
+          pendingRecords.drainTo(batch, MAX_BATCH_SIZE - 1);
+          batchSize.update(batch.size());
+          for (PublicAccessLogRecord pendingRecord : batch) {
+            try {
+              write(pendingRecord, logMessage);
+            } catch (Exception e) {
+              logger.error("Exception while writing public access log entry", e);
+            }
+            pendingRecord.reset();
+            freeRecords.add(pendingRecord);
+          }
+          batch.clear();
+        } catch (InterruptedException e) {
+          logger.error("Public access log writer interrupted", e);
+          break;
+        }
+      }
+    }
+  }
 }
@@ -176,10 +176,18 @@ public class RestServer {
     blobStorageService = blobStorageServiceFactory.getBlobStorageService();
 
     RestRequestHandlerFactory restRequestHandlerFactory = Utils.getObj(restServerConfig.restServerRequestHandlerFactory,
-        restServerConfig.restServerRequestHandlerScalingUnitCount, metricRegistry, blobStorageService);
+        restServerConfig.restServerRequestHandlerScalingUnitCount, metricRegistry, blobStorageService,
+        restServerConfig);
+    if (restRequestHandlerFactory == null) {
+      // factories that do not accept a RestServerConfig only have the three argument constructor.
+      restRequestHandlerFactory = Utils.getObj(restServerConfig.restServerRequestHandlerFactory,
+          restServerConfig.restServerRequestHandlerScalingUnitCount, metricRegistry, blobStorageService);
+    }
     restRequestHandler = restRequestHandlerFactory.getRestRequestHandler();
     publicAccessLogger = new PublicAccessLogger(restServerConfig.restServerPublicAccessLogRequestHeaders.split(","),
-        restServerConfig.restServerPublicAccessLogResponseHeaders.split(","));
+        restServerConfig.restServerPublicAccessLogResponseHeaders.split(","),
+        restServerConfig.restServerPublicAccessLogAsyncBufferSize,
+        restServerConfig.restServerPublicAccessLogDropWhenFull, metricRegistry);
 
     NioServerFactory nioServerFactory =
         Utils.getObj(restServerConfig.restServerNioServerFactory, verifiableProperties, metricRegistry,
@@ -226,6 +234,7 @@ public class RestServer {
       logger.info("Request handler start took {} ms", elapsedTime);
       restServerMetrics.restRequestHandlerStartTimeInMs.update(elapsedTime);
 
+      publicAccessLogger.start();
       nioServer.start();
       elapsedTime = System.currentTimeMillis() - restRequestHandlerStartTime;
       logger.info("NIO server start took {} ms", elapsedTime);
@@ -251,6 +260,7 @@ public class RestServer {
       restServerState.markServiceDown();
       logger.info("Service marked as down ");
       nioServer.shutdown();
+      publicAccessLogger.shutdown();
       long nioServerShutdownTime = System.currentTimeMillis();
       long elapsedTime = nioServerShutdownTime - shutdownBeginTime;
       logger.info("NIO server shutdown took {} ms", elapsedTime);
@@ -40,6 +40,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.net.ssl.SSLSession;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -437,6 +438,82 @@ public class AsyncRequestResponseHandlerTest {
     }
   }
 
+  /**
+   * Tests that requests are rejected with {@link RestServiceErrorCode#ServiceOverloaded} when the request queue is
+   * full.
+   * @throws Exception
+   */
+  @Test
+  public void requestQueueCapacityTest() throws Exception {
+    final int QUEUE_CAPACITY = 2;
+    RequestResponseHandlerMetrics metrics = new RequestResponseHandlerMetrics(new MetricRegistry());
+    AsyncRequestResponseHandler handler = new AsyncRequestResponseHandler(metrics);
+    SlowBlobStorageService slowBlobStorageService = new SlowBlobStorageService();
+    handler.setupRequestHandling(1, slowBlobStorageService, QUEUE_CAPACITY, false);
+    handler.start();
+    try {
+      handler.handleRequest(createRestRequest(RestMethod.GET, SlowBlobStorageService.SLOW_URI, null, null),
+          new MockRestResponseChannel());
+      assertTrue("Slow request was not processed",
+          slowBlobStorageService.slowRequestStarted.await(1, TimeUnit.SECONDS));
+      for (int i = 0; i < QUEUE_CAPACITY; i++) {
+        handler.handleRequest(createRestRequest(RestMethod.GET, "/", null, null), new MockRestResponseChannel());
+      }
+      assertEquals("Unexpected request queue size", QUEUE_CAPACITY, handler.getRequestQueueSize());
+      try {
+        handler.handleRequest(createRestRequest(RestMethod.GET, "/", null, null), new MockRestResponseChannel());
+        fail("Request should have been rejected because the queue is full");
+      } catch (RestServiceException e) {
+        assertEquals("Unexpected RestServiceErrorCode", RestServiceErrorCode.ServiceOverloaded, e.getErrorCode());
+        assertEquals("Unexpected ResponseStatus", ResponseStatus.ServiceUnavailable,
+            ResponseStatus.getResponseStatus(e.getErrorCode()));
+      }
+      assertEquals("Unexpected request rejection count", 1, metrics.requestRejectionCount.getCount());
+      slowBlobStorageService.releaseSlowRequest.countDown();
+      assertTrue("Queued requests were not processed",
+          slowBlobStorageService.awaitRequestsProcessed(QUEUE_CAPACITY, 1, TimeUnit.SECONDS));
+      // the queue has space again.
+      handler.handleRequest(createRestRequest(RestMethod.GET, "/", null, null), new MockRestResponseChannel());
+      assertTrue("Request was not processed",
+          slowBlobStorageService.awaitRequestsProcessed(QUEUE_CAPACITY + 1, 1, TimeUnit.SECONDS));
+    } finally {
+      slowBlobStorageService.releaseSlowRequest.countDown();
+      handler.shutdown();
+    }
+  }
+
+  /**
+   * Tests that requests queued behind a slow request are processed by other workers when work stealing is enabled.
+   * @throws Exception
+   */
+  @Test
+  public void workStealingTest() throws Exception {
+    final int REQUEST_COUNT = 6;
+    RequestResponseHandlerMetrics metrics = new RequestResponseHandlerMetrics(new MetricRegistry());
+    AsyncRequestResponseHandler handler = new AsyncRequestResponseHandler(metrics);
+    SlowBlobStorageService slowBlobStorageService = new SlowBlobStorageService();
+    handler.setupRequestHandling(2, slowBlobStorageService, Integer.MAX_VALUE, true);
+    handler.start();
+    try {
+      // requests are assigned round robin, so half of the requests after this one are queued behind it.
+      handler.handleRequest(createRestRequest(RestMethod.GET, SlowBlobStorageService.SLOW_URI, null, null),
+          new MockRestResponseChannel());
+      assertTrue("Slow request was not processed",
+          slowBlobStorageService.slowRequestStarted.await(1, TimeUnit.SECONDS));
+      for (int i = 0; i < REQUEST_COUNT; i++) {
+        handler.handleRequest(createRestRequest(RestMethod.GET, "/", null, null), new MockRestResponseChannel());
+      }
+      assertTrue("Requests queued behind the slow request were not stolen",
+          slowBlobStorageService.awaitRequestsProcessed(REQUEST_COUNT, 1, TimeUnit.SECONDS));
+      // the slow request itself may also have been stolen before its worker picked it up.
+      assertTrue("Requests should have been stolen", metrics.requestStealCount.getCount() >= REQUEST_COUNT / 2);
+      assertEquals("Request queue should be empty", 0, handler.getRequestQueueSize());
+    } finally {
+      slowBlobStorageService.releaseSlowRequest.countDown();
+      handler.shutdown();
+    }
+  }
+
   // helpers
   // general
 
@@ -928,3 +1005,69 @@ class BadRestRequest implements RestRequest {
     throw new IllegalStateException("Not implemented");
   }
 }
+
+/**
+ * A {@link BlobStorageService} that blocks while processing requests to {@link #SLOW_URI} until it is told to proceed
+ * and counts the other requests that it processes.
+ */
+class SlowBlobStorageService implements BlobStorageService {
+  static final String SLOW_URI = "/slow";
+
+  final CountDownLatch slowRequestStarted = new CountDownLatch(1);
+  final CountDownLatch releaseSlowRequest = new CountDownLatch(1);
+  private final AtomicInteger processedRequestCount = new AtomicInteger(0);
+
+  /**
+   * Waits until the given number of requests (other than slow requests) have been processed.
+   * @param count the number of requests to wait for.
+   * @param timeout the maximum time to wait.
+   * @param timeUnit the {@link TimeUnit} of {@code timeout}.
+   * @return {@code true} if the requests were processed within the {@code timeout}. {@code false} otherwise.
+   * @throws InterruptedException
+   */
+  boolean awaitRequestsProcessed(int count, long timeout, TimeUnit timeUnit) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeUnit.toMillis(timeout);
+    while (processedRequestCount.get() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    return processedRequestCount.get() >= count;
+  }
+
+  @Override
+  public void start() {
+  }
+
+  @Override
+  public void shutdown() {
+  }
+
+  @Override
+  public void handleGet(RestRequest restRequest, RestResponseChannel restResponseChannel) {
+    if (restRequest.getUri().equals(SLOW_URI)) {
+      slowRequestStarted.countDown();
+      try {
+        releaseSlowRequest.await();
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    } else {
+      processedRequestCount.incrementAndGet();
+    }
+    restResponseChannel.onResponseComplete(null);
+  }
+
+  @Override
+  public void handlePost(RestRequest restRequest, RestResponseChannel restResponseChannel) {
+    handleGet(restRequest, restResponseChannel);
+  }
+
+  @Override
+  public void handleDelete(RestRequest restRequest, RestResponseChannel restResponseChannel) {
+    handleGet(restRequest, restResponseChannel);
+  }
+
+  @Override
+  public void handleHead(RestRequest restRequest, RestResponseChannel restResponseChannel) {
+    handleGet(restRequest, restResponseChannel);
+  }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.rest;
+
+import com.github.ambry.commons.SSLFactory;
+import com.github.ambry.router.FutureResult;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http2.DefaultHttp2Connection;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.HttpConversionUtil;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandlerBuilder;
+import io.netty.handler.codec.http2.InboundHttp2ToHttpAdapterBuilder;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.util.ReferenceCountUtil;
+import java.io.Closeable;
+import java.nio.channels.ClosedChannelException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+
+
+/**
+ * HTTP/2 client to send requests and receive responses in tests. Uses a single connection (cleartext with prior
+ * knowledge or SSL with h2 advertised through ALPN) and can have multiple requests in flight on different streams.
+ */
+public class Http2Client implements Closeable {
+  private static final int MAX_CONTENT_LENGTH = 64 * 1024 * 1024;
+
+  private final EventLoopGroup group = new NioEventLoopGroup(1);
+  private final Map<Integer, FutureResult<FullHttpResponse>> responseFutures = new ConcurrentHashMap<>();
+  private final AtomicInteger nextStreamId = new AtomicInteger(1);
+  private final Channel channel;
+
+  /**
+   * Create a Http2Client and connect to the server.
+   * @param hostname the host to connect to.
+   * @param port the port to connect to.
+   * @param sslFactory the {@link SSLFactory} to use if SSL is enabled.
+   * @throws InterruptedException if the connect is interrupted.
+   */
+  public Http2Client(final String hostname, final int port, final SSLFactory sslFactory) throws InterruptedException {
+    Bootstrap b = new Bootstrap();
+    b.group(group).channel(NioSocketChannel.class).handler(new ChannelInitializer<SocketChannel>() {
+      @Override
+      public void initChannel(SocketChannel ch) throws Exception {
+        ChannelPipeline pipeline = ch.pipeline();
+        if (sslFactory != null) {
+          SSLEngine sslEngine = sslFactory.createSSLEngine(hostname, port, SSLFactory.Mode.CLIENT);
+          SSLParameters sslParameters = sslEngine.getSSLParameters();
+          // looked up reflectively so that the tests compile on JDKs that do not support ALPN.
+          SSLParameters.class.getMethod("setApplicationProtocols", String[].class)
+              .invoke(sslParameters, (Object) new String[]{ApplicationProtocolNames.HTTP_2});
+          sslEngine.setSSLParameters(sslParameters);
+          pipeline.addLast("sslHandler", new SslHandler(sslEngine));
+        }
+        Http2Connection connection = new DefaultHttp2Connection(false);
+        pipeline.addLast(new HttpToHttp2ConnectionHandlerBuilder().connection(connection)
+            .frameListener(new InboundHttp2ToHttpAdapterBuilder(connection).maxContentLength(MAX_CONTENT_LENGTH)
+                .propagateSettings(false)
+                .build())
+            .build()).addLast(new ResponseHandler());
+      }
+    });
+    channel = b.connect(hostname, port).sync().channel();
+  }
+
+  /**
+   * Sends the request on a new stream and returns a {@link Future} that tracks the arrival of the response.
+   * <p/>
+   * Be sure to release the received response once it has been processed.
+   * @param request the request that needs to be sent. Has to contain all the content.
+   * @return a {@link Future} that tracks the arrival of the response for this request.
+   */
+  public synchronized Future<FullHttpResponse> sendRequest(FullHttpRequest request) {
+    int streamId = nextStreamId.getAndAdd(2);
+    FutureResult<FullHttpResponse> responseFuture = new FutureResult<>();
+    responseFutures.put(streamId, responseFuture);
+    request.headers().setInt(HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text(), streamId);
+    request.headers()
+        .set(HttpConversionUtil.ExtensionHeaderNames.SCHEME.text(), channel.pipeline().get(SslHandler.class) != null
+            ? "https" : "http");
+    channel.writeAndFlush(request);
+    return responseFuture;
+  }
+
+  /**
+   * Closes the client.
+   * @throws IllegalStateException if the client did not close within a timeout or was interrupted while closing.
+   */
+  @Override
+  public void close() {
+    if (!group.isTerminated()) {
+      group.shutdownGracefully();
+      try {
+        if (!group.awaitTermination(30, TimeUnit.SECONDS)) {
+          throw new IllegalStateException("Client did not close within timeout");
+        }
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  /**
+   * Completes the {@link Future} of a request when its response arrives and fails all pending requests if the
+   * connection is closed.
+   */
+  private class ResponseHandler extends SimpleChannelInboundHandler<FullHttpResponse> {
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse response) {
+      Integer streamId = response.headers().getInt(HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text());
+      FutureResult<FullHttpResponse> responseFuture = streamId == null ? null : responseFutures.remove(streamId);
+      if (responseFuture != null) {
+        responseFuture.done(ReferenceCountUtil.retain(response), null);
+      }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+      for (FutureResult<FullHttpResponse> responseFuture : responseFutures.values()) {
+        responseFuture.done(null, new ClosedChannelException());
+      }
+      responseFutures.clear();
+      ctx.fireChannelInactive();
+    }
+  }
+}
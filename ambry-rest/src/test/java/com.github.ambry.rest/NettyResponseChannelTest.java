@@ -84,6 +84,7 @@ public class NettyResponseChannelTest {
         HttpResponseStatus.INTERNAL_SERVER_ERROR);
     REST_ERROR_CODE_TO_HTTP_STATUS.put(RestServiceErrorCode.RangeNotSatisfiable,
         HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+    REST_ERROR_CODE_TO_HTTP_STATUS.put(RestServiceErrorCode.ServiceOverloaded, HttpResponseStatus.SERVICE_UNAVAILABLE);
   }
 
   /**
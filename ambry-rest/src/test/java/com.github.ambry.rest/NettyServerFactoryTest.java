@@ -13,12 +13,14 @@
  */
 package com.github.ambry.rest;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.github.ambry.commons.SSLFactory;
 import com.github.ambry.config.NettyConfig;
 import com.github.ambry.config.VerifiableProperties;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.socket.SocketChannel;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Properties;
 import org.junit.Test;
@@ -73,6 +75,27 @@ public class NettyServerFactoryTest {
     assertNotNull("No ChannelInitializer for plaintext port", channelInitializers.get(nettyConfig.nettyServerPort));
   }
 
+  /**
+   * Tests that the recent traces of requests are exposed through a gauge when request tracing is enabled.
+   */
+  @Test
+  public void requestTraceGaugeTest() {
+    String gaugeName = MetricRegistry.name(NettyServer.class, "RecentRequestTraces");
+    MetricRegistry metricRegistry = new MetricRegistry();
+    new NettyServerFactory(new VerifiableProperties(new Properties()), metricRegistry, REST_REQUEST_HANDLER,
+        PUBLIC_ACCESS_LOGGER, REST_SERVER_STATE, SSL_FACTORY);
+    assertNull("Gauge should not be registered if tracing is disabled", metricRegistry.getGauges().get(gaugeName));
+
+    Properties properties = new Properties();
+    properties.setProperty("netty.server.request.trace.sample.rate", "1");
+    metricRegistry = new MetricRegistry();
+    new NettyServerFactory(new VerifiableProperties(properties), metricRegistry, REST_REQUEST_HANDLER,
+        PUBLIC_ACCESS_LOGGER, REST_SERVER_STATE, SSL_FACTORY);
+    Gauge gauge = metricRegistry.getGauges().get(gaugeName);
+    assertNotNull("Gauge should be registered if tracing is enabled", gauge);
+    assertEquals("There should be no traces yet", Collections.emptyList(), gauge.getValue());
+  }
+
   /**
    * Tests instantiation of {@link NettyServerFactory} with bad input.
    */
@@ -19,10 +19,19 @@ import com.github.ambry.config.NettyConfig;
 import com.github.ambry.config.VerifiableProperties;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.socket.SocketChannel;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -51,6 +60,101 @@ public class NettyServerTest {
     nioServer.shutdown();
   }
 
+  /**
+   * Tests {@link NettyServer#start()} and {@link NettyServer#shutdown()} with the native transport and SO_REUSEPORT
+   * enabled. If the native transport is not available on the platform, the server falls back to NIO.
+   * @throws InstantiationException
+   * @throws IOException
+   */
+  @Test
+  public void nativeTransportStartShutdownTest() throws InstantiationException, IOException {
+    Properties properties = new Properties();
+    properties.setProperty("netty.server.native.transport.enabled", "true");
+    properties.setProperty("netty.server.so.reuseport", "true");
+    properties.setProperty("netty.server.boss.thread.count", "2");
+    properties.setProperty("netty.server.tcp.fastopen.queue.length", "16");
+    properties.setProperty("netty.server.tcp.quickack", "true");
+    NioServer nioServer = getNettyServer(properties);
+    nioServer.start();
+    nioServer.shutdown();
+  }
+
+  /**
+   * Tests {@link NettyServer#start()} and {@link NettyServer#shutdown()} when request processing runs on a dedicated
+   * {@link EventExecutorGroup} and checks that the group is shut down along with the server.
+   * @throws InstantiationException
+   * @throws IOException
+   */
+  @Test
+  public void processorExecutorGroupStartShutdownTest() throws InstantiationException, IOException {
+    EventExecutorGroup processorExecutorGroup = new DefaultEventExecutorGroup(2);
+    NioServer nioServer = getNettyServer(null, processorExecutorGroup);
+    nioServer.start();
+    assertFalse("Processor group should be running", processorExecutorGroup.isShuttingDown());
+    nioServer.shutdown();
+    assertTrue("Processor group should have terminated", processorExecutorGroup.isTerminated());
+  }
+
+  /**
+   * Tests that a request on one connection is processed while a request on another connection is still being
+   * processed on the dedicated {@link EventExecutorGroup}.
+   * @throws Exception
+   */
+  @Test
+  public void processorExecutorGroupConcurrencyTest() throws Exception {
+    final CountDownLatch slowRequestReceived = new CountDownLatch(1);
+    final CountDownLatch releaseSlowRequest = new CountDownLatch(1);
+    final CountDownLatch fastRequestReceived = new CountDownLatch(1);
+    final AtomicReference<String> slowRequestThread = new AtomicReference<>();
+    final AtomicReference<String> fastRequestThread = new AtomicReference<>();
+    RestRequestHandler requestHandler = new RestRequestHandler() {
+      @Override
+      public void start() {
+      }
+
+      @Override
+      public void shutdown() {
+      }
+
+      @Override
+      public void handleRequest(RestRequest restRequest, RestResponseChannel restResponseChannel) {
+        if (restRequest.getUri().startsWith("/slow")) {
+          slowRequestThread.set(Thread.currentThread().getName());
+          slowRequestReceived.countDown();
+          try {
+            releaseSlowRequest.await(10, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        } else {
+          fastRequestThread.set(Thread.currentThread().getName());
+          fastRequestReceived.countDown();
+        }
+        restResponseChannel.onResponseComplete(null);
+      }
+    };
+    EventExecutorGroup processorExecutorGroup = new DefaultEventExecutorGroup(2);
+    NettyConfig nettyConfig = new NettyConfig(new VerifiableProperties(new Properties()));
+    NettyServer nettyServer = new NettyServer(nettyConfig, NETTY_METRICS,
+        Collections.<Integer, ChannelInitializer<SocketChannel>>singletonMap(nettyConfig.nettyServerPort,
+            new NettyServerChannelInitializer(nettyConfig, NETTY_METRICS, CONNECTION_STATS_HANDLER, requestHandler,
+                PUBLIC_ACCESS_LOGGER, REST_SERVER_STATE, null, processorExecutorGroup)), processorExecutorGroup);
+    nettyServer.start();
+    try (Socket slowConnection = new Socket("localhost", nettyConfig.nettyServerPort);
+        Socket fastConnection = new Socket("localhost", nettyConfig.nettyServerPort)) {
+      sendGetRequest(slowConnection, "/slow");
+      assertTrue("Slow request was not received", slowRequestReceived.await(10, TimeUnit.SECONDS));
+      sendGetRequest(fastConnection, "/fast");
+      assertTrue("Request on another connection should be processed while the slow request is being processed",
+          fastRequestReceived.await(10, TimeUnit.SECONDS));
+      assertFalse("Requests should have been processed on different threads",
+          slowRequestThread.get().equals(fastRequestThread.get()));
+    } finally {
+      releaseSlowRequest.countDown();
+      nettyServer.shutdown();
+    }
+  }
+
   /**
    * Tests for {@link NettyServer#shutdown()} when {@link NettyServer#start()} has not been called previously.
    * This test is for cases where {@link NettyServer#start()} has failed and {@link NettyServer#shutdown()} needs to be
@@ -94,6 +198,19 @@ public class NettyServerTest {
    * @throws IOException
    */
   private NettyServer getNettyServer(Properties properties) throws InstantiationException, IOException {
+    return getNettyServer(properties, null);
+  }
+
+  /**
+   * Gets an instance of {@link NettyServer} that runs request processing on the given {@link EventExecutorGroup}.
+   * @param properties the in-memory {@link Properties} to use.
+   * @param processorExecutorGroup the {@link EventExecutorGroup} to run request processing on. Can be {@code null}.
+   * @return an instance of {@link NettyServer}.
+   * @throws InstantiationException
+   * @throws IOException
+   */
+  private NettyServer getNettyServer(Properties properties, EventExecutorGroup processorExecutorGroup)
+      throws InstantiationException, IOException {
     if (properties == null) {
       // dud properties. should pick up defaults
       properties = new Properties();
@@ -104,11 +221,23 @@ public class NettyServerTest {
     Map<Integer, ChannelInitializer<SocketChannel>> channelInitializers = new HashMap<>();
     channelInitializers.put(nettyConfig.nettyServerPort,
         new NettyServerChannelInitializer(nettyConfig, NETTY_METRICS, CONNECTION_STATS_HANDLER, REQUEST_HANDLER,
-            PUBLIC_ACCESS_LOGGER, REST_SERVER_STATE, null));
+            PUBLIC_ACCESS_LOGGER, REST_SERVER_STATE, null, processorExecutorGroup));
     channelInitializers.put(nettyConfig.nettyServerSSLPort,
         new NettyServerChannelInitializer(nettyConfig, NETTY_METRICS, CONNECTION_STATS_HANDLER, REQUEST_HANDLER,
-            PUBLIC_ACCESS_LOGGER, REST_SERVER_STATE, SSL_FACTORY));
-    return new NettyServer(nettyConfig, NETTY_METRICS, channelInitializers);
+            PUBLIC_ACCESS_LOGGER, REST_SERVER_STATE, SSL_FACTORY, processorExecutorGroup));
+    return new NettyServer(nettyConfig, NETTY_METRICS, channelInitializers, processorExecutorGroup);
+  }
+
+  /**
+   * Sends a GET request with the given URI on the given connection.
+   * @param connection the {@link Socket} to send the request on.
+   * @param uri the URI of the request.
+   * @throws IOException if the request could not be sent.
+   */
+  private void sendGetRequest(Socket connection, String uri) throws IOException {
+    OutputStream outputStream = connection.getOutputStream();
+    outputStream.write(("GET " + uri + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+    outputStream.flush();
   }
 
   /**
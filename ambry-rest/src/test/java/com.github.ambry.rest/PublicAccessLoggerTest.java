@@ -13,7 +13,16 @@
  */
 package com.github.ambry.rest;
 
+import com.codahale.metrics.MetricRegistry;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpVersion;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import junit.framework.Assert;
 import org.junit.Test;
 
@@ -35,4 +44,118 @@ public class PublicAccessLoggerTest {
     Assert.assertTrue("Response Headers mismatch ",
         Arrays.deepEquals(publicAccessLogger.getResponseHeaders(), responseHeaders));
   }
+
+  /**
+   * Tests that entries are written by the background writer when the logger is asynchronous, that they are dropped or
+   * written inline when the buffer is full and that pending entries are written on shutdown.
+   * @throws InterruptedException
+   */
+  @Test
+  public void asyncLoggingTest() throws InterruptedException {
+    String[] requestHeaders = new String[]{REQUEST_HEADER_PREFIX + "1"};
+    String[] responseHeaders = new String[]{RESPONSE_HEADER_PREFIX + "1"};
+    int bufferSize = 2;
+    for (boolean dropWhenFull : new boolean[]{true, false}) {
+      MetricRegistry metricRegistry = new MetricRegistry();
+      CapturingPublicAccessLogger publicAccessLogger =
+          new CapturingPublicAccessLogger(requestHeaders, responseHeaders, bufferSize, dropWhenFull, metricRegistry);
+      PublicAccessLogRecord record = new PublicAccessLogRecord(requestHeaders, responseHeaders);
+      // writer not started, so the buffer fills up.
+      for (int i = 0; i < bufferSize + 1; i++) {
+        logRecord(publicAccessLogger, record, "/" + i, i == 0 ? "error" : null);
+      }
+      long droppedCount = metricRegistry.getCounters()
+          .get(MetricRegistry.name(PublicAccessLogger.class, "DroppedRecordCount"))
+          .getCount();
+      long inlineCount = metricRegistry.getCounters()
+          .get(MetricRegistry.name(PublicAccessLogger.class, "InlineRecordCount"))
+          .getCount();
+      Assert.assertEquals("Dropped record count not as expected", dropWhenFull ? 1 : 0, droppedCount);
+      Assert.assertEquals("Inline record count not as expected", dropWhenFull ? 0 : 1, inlineCount);
+      Assert.assertEquals("Entries written before writer started not as expected", dropWhenFull ? 0 : 1,
+          publicAccessLogger.messages.size());
+      // the record passed in is free for reuse after log() returns.
+      record.reset();
+
+      publicAccessLogger.start();
+      Assert.assertTrue("Pending entries not written",
+          publicAccessLogger.awaitMessages(bufferSize + (dropWhenFull ? 0 : 1), 5, TimeUnit.SECONDS));
+      logRecord(publicAccessLogger, record, "/afterStart", null);
+      publicAccessLogger.shutdown();
+      List<String> messages = publicAccessLogger.messages;
+      Assert.assertEquals("Number of entries written not as expected", bufferSize + (dropWhenFull ? 1 : 2),
+          messages.size());
+      Assert.assertTrue("Error entry not as expected: " + messages,
+          containsPrefix(messages, "Error:/0 GET /0, Request ([requestHeader1=value] [isChunked=false]), duration="));
+      Assert.assertTrue("Entry after start not written: " + messages, containsPrefix(messages, "Info:/afterStart"));
+    }
+  }
+
+  /**
+   * Fills {@code record} as a request to {@code uri} and logs it.
+   * @param publicAccessLogger the {@link PublicAccessLogger} to log with.
+   * @param record the {@link PublicAccessLogRecord} to fill and log.
+   * @param uri the uri of the request.
+   * @param errorMessage the error message of the entry. {@code null} if the entry is not an error.
+   */
+  private void logRecord(PublicAccessLogger publicAccessLogger, PublicAccessLogRecord record, String uri,
+      String errorMessage) {
+    HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+    request.headers().set(REQUEST_HEADER_PREFIX + "1", "value");
+    record.onRequest(uri, request);
+    record.onComplete(errorMessage);
+    publicAccessLogger.log(record);
+  }
+
+  /**
+   * @param messages the messages to search.
+   * @param prefix the prefix to search for.
+   * @return {@code true} if any of the {@code messages} starts with {@code prefix}.
+   */
+  private boolean containsPrefix(List<String> messages, String prefix) {
+    for (String message : messages) {
+      if (message.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A {@link PublicAccessLogger} that captures the entries written.
+   */
+  private static class CapturingPublicAccessLogger extends PublicAccessLogger {
+    final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+    CapturingPublicAccessLogger(String[] requestHeaders, String[] responseHeaders, int asyncBufferSize,
+        boolean dropWhenFull, MetricRegistry metricRegistry) {
+      super(requestHeaders, responseHeaders, asyncBufferSize, dropWhenFull, metricRegistry);
+    }
+
+    @Override
+    public void logError(String message) {
+      messages.add("Error:" + message);
+    }
+
+    @Override
+    public void logInfo(String message) {
+      messages.add("Info:" + message);
+    }
+
+    /**
+     * Waits until at least {@code count} entries have been written.
+     * @param count the number of entries to wait for.
+     * @param timeout the maximum time to wait.
+     * @param unit the unit of {@code timeout}.
+     * @return {@code true} if {@code count} entries were written within the timeout.
+     * @throws InterruptedException
+     */
+    boolean awaitMessages(int count, long timeout, TimeUnit unit) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+      while (messages.size() < count && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      return messages.size() >= count;
+    }
+  }
 }
@@ -0,0 +1,311 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.router;
+
+import com.github.ambry.clustermap.PartitionId;
+import com.github.ambry.clustermap.ReplicaId;
+import com.github.ambry.commons.BlobId;
+import com.github.ambry.commons.ServerErrorCode;
+import com.github.ambry.config.RouterConfig;
+import com.github.ambry.network.Port;
+import com.github.ambry.network.ResponseInfo;
+import com.github.ambry.notification.NotificationSystem;
+import com.github.ambry.protocol.BatchDeleteRequest;
+import com.github.ambry.protocol.BatchDeleteResponse;
+import com.github.ambry.utils.Time;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * BatchDeleteOperation deletes a group of blobs that belong to the same partition using a single
+ * {@link BatchDeleteRequest} per replica, and completes the delete of every blob in the group individually.
+ *
+ * A blob is deleted successfully once the configured success target of replicas have reported it as deleted. A blob
+ * that has not reached the success target by the time the operation completes (because the blob is missing or expired
+ * on some replicas, or because the batched requests failed, for instance against servers that do not support them) is
+ * handed back to the {@link DeleteManager} as a fallback, to be deleted through a regular {@link DeleteOperation} that
+ * resolves its exact result.
+ */
+class BatchDeleteOperation {
+  private final RouterConfig routerConfig;
+  private final NonBlockingRouterMetrics routerMetrics;
+  private final NotificationSystem notificationSystem;
+  private final PartitionId partitionId;
+  private final List<BlobId> blobIds;
+  private final Time time;
+  private final long submissionTimeMs;
+  private final SimpleOperationTracker operationTracker;
+  // blob id string to the state of the delete of that blob, for the blobs whose delete has not completed yet.
+  private final Map<String, BlobDeleteInfo> blobIdToDeleteInfo = new LinkedHashMap<>();
+  // map of correlation id to the request metadata for every request issued for this operation.
+  private final Map<Integer, DeleteRequestInfo> correlationIdToDeleteRequestInfo = new TreeMap<>();
+  // the blobs that could not be deleted by the batched requests and have to be deleted individually.
+  private final List<BlobDeleteInfo> fallbacks = new ArrayList<>();
+  private boolean operationCompleted = false;
+
+  private static final Logger logger = LoggerFactory.getLogger(BatchDeleteOperation.class);
+
+  /**
+   * Construct a BatchDeleteOperation.
+   * @param routerConfig the {@link RouterConfig} containing the configs for delete operations.
+   * @param routerMetrics The {@link NonBlockingRouterMetrics} to be used for reporting metrics.
+   * @param notificationSystem the {@link NotificationSystem} used for notifying blob deletions.
+   * @param blobIds the {@link BlobId}s to delete. All of them must belong to the same partition and be distinct.
+   * @param futureResults the {@link FutureResult}s to complete, one for every blob in {@code blobIds} and in the same
+   *                      order.
+   * @param callbacks the callbacks to call on completion, one for every blob in {@code blobIds} and in the same order.
+   * @param time the Time instance to use.
+   */
+  BatchDeleteOperation(RouterConfig routerConfig, NonBlockingRouterMetrics routerMetrics,
+      NotificationSystem notificationSystem, List<BlobId> blobIds, List<FutureResult<Void>> futureResults,
+      List<Callback<Void>> callbacks, Time time) {
+    if (blobIds.isEmpty() || blobIds.size() != futureResults.size() || blobIds.size() != callbacks.size()) {
+      throw new IllegalArgumentException(
+          "There must be exactly one future and one callback for each of one or more blob ids");
+    }
+    this.routerConfig = routerConfig;
+    this.routerMetrics = routerMetrics;
+    this.notificationSystem = notificationSystem;
+    this.blobIds = blobIds;
+    this.time = time;
+    submissionTimeMs = time.milliseconds();
+    partitionId = blobIds.get(0).getPartition();
+    for (int i = 0; i < blobIds.size(); i++) {
+      if (!blobIds.get(i).getPartition().equals(partitionId)) {
+        throw new IllegalArgumentException("All the blobs in a batch delete must belong to the same partition");
+      }
+      if (blobIdToDeleteInfo.put(blobIds.get(i).getID(),
+          new BlobDeleteInfo(blobIds.get(i), futureResults.get(i), callbacks.get(i))) != null) {
+        throw new IllegalArgumentException("A blob cannot appear more than once in a batch delete");
+      }
+    }
+    operationTracker = new SimpleOperationTracker(routerConfig.routerDatacenterName, partitionId, true,
+        routerConfig.routerDeleteSuccessTarget, routerConfig.routerDeleteRequestParallelism, false);
+  }
+
+  /**
+   * For this operation, create and populate batch delete requests to send out.
+   * @param requestRegistrationCallback the {@link RequestRegistrationCallback} to call for every request that gets
+   *                                    created as part of this poll operation.
+   */
+  void poll(RequestRegistrationCallback<BatchDeleteOperation> requestRegistrationCallback) {
+    cleanupExpiredInFlightRequests();
+    checkAndMaybeComplete();
+    if (!isOperationComplete()) {
+      fetchRequests(requestRegistrationCallback);
+    }
+  }
+
+  /**
+   * Clean up requests sent out by this operation that have now timed out.
+   */
+  private void cleanupExpiredInFlightRequests() {
+    Iterator<Map.Entry<Integer, DeleteRequestInfo>> inFlightRequestsIterator =
+        correlationIdToDeleteRequestInfo.entrySet().iterator();
+    while (inFlightRequestsIterator.hasNext()) {
+      Map.Entry<Integer, DeleteRequestInfo> entry = inFlightRequestsIterator.next();
+      if (time.milliseconds() - entry.getValue().startTimeMs > routerConfig.routerRequestTimeoutMs) {
+        // Do not notify this as a failure to the response handler, as this timeout could simply be due to
+        // connection unavailability.
+        onErrorResponse(entry.getValue().replicaId);
+        inFlightRequestsIterator.remove();
+      } else {
+        // the entries are ordered by correlation id and time. Break on the first request that has not timed out.
+        break;
+      }
+    }
+  }
+
+  /**
+   * Fetch {@link BatchDeleteRequest}s to send for the operation.
+   */
+  private void fetchRequests(RequestRegistrationCallback<BatchDeleteOperation> requestRegistrationCallback) {
+    Iterator<ReplicaId> replicaIterator = operationTracker.getReplicaIterator();
+    while (replicaIterator.hasNext()) {
+      ReplicaId replicaId = replicaIterator.next();
+      String hostname = replicaId.getDataNodeId().getHostname();
+      Port port = replicaId.getDataNodeId().getPortToConnectTo();
+      BatchDeleteRequest batchDeleteRequest =
+          new BatchDeleteRequest(NonBlockingRouter.correlationIdGenerator.incrementAndGet(),
+              routerConfig.routerHostname, blobIds);
+      RouterRequestInfo request = new RouterRequestInfo(hostname, port, batchDeleteRequest, replicaId);
+      correlationIdToDeleteRequestInfo.put(batchDeleteRequest.getCorrelationId(),
+          new DeleteRequestInfo(replicaId, time.milliseconds()));
+      requestRegistrationCallback.registerRequestToSend(this, request);
+      replicaIterator.remove();
+      if (RouterUtils.isRemoteReplica(routerConfig, replicaId)) {
+        logger.trace("Making request to a remote replica in", replicaId.getDataNodeId().getDatacenterName());
+        routerMetrics.crossColoRequestCount.inc();
+      }
+      routerMetrics.batchDeleteRequestCount.inc();
+      routerMetrics.getDataNodeBasedMetrics(replicaId.getDataNodeId()).deleteRequestRate.mark();
+    }
+  }
+
+  /**
+   * Handle the given {@link ResponseInfo} and update the status of the operation and of every blob in it.
+   * @param responseInfo the {@link ResponseInfo} to be handled.
+   * @param batchDeleteResponse The {@link BatchDeleteResponse} associated with this response.
+   */
+  void handleResponse(ResponseInfo responseInfo, BatchDeleteResponse batchDeleteResponse) {
+    if (isOperationComplete()) {
+      return;
+    }
+    int correlationId = ((BatchDeleteRequest) responseInfo.getRequestInfo().getRequest()).getCorrelationId();
+    DeleteRequestInfo deleteRequestInfo = correlationIdToDeleteRequestInfo.remove(correlationId);
+    if (deleteRequestInfo == null) {
+      // Ignore. The request must have timed out.
+      return;
+    }
+    ReplicaId replicaId = deleteRequestInfo.replicaId;
+    long requestLatencyMs = time.milliseconds() - deleteRequestInfo.startTimeMs;
+    routerMetrics.routerRequestLatencyMs.update(requestLatencyMs);
+    routerMetrics.getDataNodeBasedMetrics(replicaId.getDataNodeId()).deleteRequestLatencyMs.update(requestLatencyMs);
+    if (responseInfo.getError() != null || batchDeleteResponse == null) {
+      onErrorResponse(replicaId);
+    } else if (batchDeleteResponse.getCorrelationId() != correlationId) {
+      routerMetrics.unknownReplicaResponseError.inc();
+      logger.error("The correlation id in the BatchDeleteResponse {} is not the same as the correlation id in the "
+          + "associated BatchDeleteRequest: {}", batchDeleteResponse.getCorrelationId(), correlationId);
+      onErrorResponse(replicaId);
+    } else if (batchDeleteResponse.getError() != ServerErrorCode.No_Error
+        || batchDeleteResponse.getBlobErrors().size() != blobIds.size()) {
+      logger.trace("Server returned an error for a batched delete: ", batchDeleteResponse.getError());
+      onErrorResponse(replicaId);
+    } else {
+      operationTracker.onResponse(replicaId, true);
+      if (RouterUtils.isRemoteReplica(routerConfig, replicaId)) {
+        routerMetrics.crossColoSuccessCount.inc();
+      }
+      List<ServerErrorCode> blobErrors = batchDeleteResponse.getBlobErrors();
+      for (int i = 0; i < blobIds.size(); i++) {
+        ServerErrorCode blobError = blobErrors.get(i);
+        if (blobError == ServerErrorCode.No_Error || blobError == ServerErrorCode.Blob_Deleted) {
+          BlobDeleteInfo blobDeleteInfo = blobIdToDeleteInfo.get(blobIds.get(i).getID());
+          if (blobDeleteInfo != null && ++blobDeleteInfo.successCount >= routerConfig.routerDeleteSuccessTarget) {
+            blobIdToDeleteInfo.remove(blobIds.get(i).getID());
+            completeBlob(blobDeleteInfo);
+          }
+        } else {
+          logger.trace("Server returned an error for blob {} in a batched delete: {}", blobIds.get(i), blobError);
+        }
+      }
+    }
+    checkAndMaybeComplete();
+  }
+
+  /**
+   * Complete the delete of a blob that was deleted by this operation.
+   * @param blobDeleteInfo the {@link BlobDeleteInfo} of the blob.
+   */
+  private void completeBlob(BlobDeleteInfo blobDeleteInfo) {
+    notificationSystem.onBlobDeleted(blobDeleteInfo.blobId.getID());
+    routerMetrics.operationDequeuingRate.mark();
+    routerMetrics.deleteBlobOperationLatencyMs.update(time.milliseconds() - submissionTimeMs);
+    NonBlockingRouter.completeOperation(blobDeleteInfo.futureResult, blobDeleteInfo.callback, null, null);
+  }
+
+  /**
+   * Perform the necessary actions when a request to a replica fails.
+   * @param replicaId the {@link ReplicaId} associated with the failed response.
+   */
+  private void onErrorResponse(ReplicaId replicaId) {
+    operationTracker.onResponse(replicaId, false);
+    routerMetrics.routerRequestErrorCount.inc();
+    routerMetrics.getDataNodeBasedMetrics(replicaId.getDataNodeId()).deleteRequestErrorCount.inc();
+  }
+
+  /**
+   * Check whether the operation can be completed, if so complete it. Every blob whose delete has not completed by the
+   * time the operation completes is added to the fallback list.
+   */
+  private void checkAndMaybeComplete() {
+    if (blobIdToDeleteInfo.isEmpty() || operationTracker.isDone()) {
+      operationCompleted = true;
+    }
+    if (operationCompleted && !blobIdToDeleteInfo.isEmpty()) {
+      routerMetrics.batchDeleteFallbackCount.inc(blobIdToDeleteInfo.size());
+      fallbacks.addAll(blobIdToDeleteInfo.values());
+      blobIdToDeleteInfo.clear();
+    }
+  }
+
+  /**
+   * Abort the operation, completing the deletes of all the blobs that have not completed yet with the given exception.
+   * @param abortCause the exception that is the cause for the abort.
+   */
+  void abort(Exception abortCause) {
+    fallbacks.addAll(blobIdToDeleteInfo.values());
+    for (BlobDeleteInfo blobDeleteInfo : fallbacks) {
+      routerMetrics.operationDequeuingRate.mark();
+      routerMetrics.onDeleteBlobError(abortCause);
+      NonBlockingRouter.completeOperation(blobDeleteInfo.futureResult, blobDeleteInfo.callback, null, abortCause);
+    }
+    blobIdToDeleteInfo.clear();
+    fallbacks.clear();
+    operationCompleted = true;
+  }
+
+  /**
+   * @return whether the operation has completed.
+   */
+  boolean isOperationComplete() {
+    return operationCompleted;
+  }
+
+  /**
+   * @return the blobs that could not be deleted by this operation and have to be deleted individually. This is final
+   *         only once the operation is complete.
+   */
+  List<BlobDeleteInfo> getFallbacks() {
+    return fallbacks;
+  }
+
+  /**
+   * The state of the delete of a single blob within a {@link BatchDeleteOperation}.
+   */
+  static class BlobDeleteInfo {
+    final BlobId blobId;
+    final FutureResult<Void> futureResult;
+    final Callback<Void> callback;
+    // the number of replicas that have reported the blob as deleted.
+    int successCount = 0;
+
+    BlobDeleteInfo(BlobId blobId, FutureResult<Void> futureResult, Callback<Void> callback) {
+      this.blobId = blobId;
+      this.futureResult = futureResult;
+      this.callback = callback;
+    }
+  }
+
+  /**
+   * A class that holds information about the batch delete requests sent out.
+   */
+  private class DeleteRequestInfo {
+    final ReplicaId replicaId;
+    final long startTimeMs;
+
+    DeleteRequestInfo(ReplicaId replicaId, long startTimeMs) {
+      this.replicaId = replicaId;
+      this.startTimeMs = startTimeMs;
+    }
+  }
+}
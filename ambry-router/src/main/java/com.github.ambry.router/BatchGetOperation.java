@@ -0,0 +1,376 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.router;
+
+import com.github.ambry.clustermap.PartitionId;
+import com.github.ambry.clustermap.ReplicaId;
+import com.github.ambry.commons.BlobId;
+import com.github.ambry.commons.BlobIdFactory;
+import com.github.ambry.commons.ByteBufferReadableStreamChannel;
+import com.github.ambry.commons.ServerErrorCode;
+import com.github.ambry.config.RouterConfig;
+import com.github.ambry.messageformat.BlobAll;
+import com.github.ambry.messageformat.BlobData;
+import com.github.ambry.messageformat.BlobInfo;
+import com.github.ambry.messageformat.BlobType;
+import com.github.ambry.messageformat.MessageFormatException;
+import com.github.ambry.messageformat.MessageFormatFlags;
+import com.github.ambry.messageformat.MessageFormatRecord;
+import com.github.ambry.network.Port;
+import com.github.ambry.network.ResponseInfo;
+import com.github.ambry.protocol.GetRequest;
+import com.github.ambry.protocol.GetResponse;
+import com.github.ambry.protocol.PartitionRequestInfo;
+import com.github.ambry.protocol.PartitionResponseInfo;
+import com.github.ambry.store.MessageInfo;
+import com.github.ambry.utils.Time;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * BatchGetOperation fetches a group of blobs that belong to the same partition using a single {@link GetRequest} per
+ * replica, and completes the callback of every blob in the group individually.
+ *
+ * A batched {@link GetRequest} can only succeed or fail as a whole: a server returns a single error code for a
+ * partition even if only one of the blobs in it is missing, deleted or expired. A batched get therefore only serves the
+ * common case in which all the blobs are simple and readable. Whenever the result for a blob cannot be determined from
+ * a batched response (a partition level error, a composite blob, or a failure of the batched request on all replicas),
+ * that blob is handed back to the {@link GetManager} as a fallback, to be fetched through a regular
+ * {@link GetBlobOperation} or {@link GetBlobInfoOperation}.
+ */
+class BatchGetOperation {
+  private final RouterConfig routerConfig;
+  private final NonBlockingRouterMetrics routerMetrics;
+  private final BlobIdFactory blobIdFactory;
+  private final PartitionId partitionId;
+  private final GetBlobOptionsInternal options;
+  private final Time time;
+  private final long submissionTimeMs;
+  private final SimpleOperationTracker operationTracker;
+  // blob id string to the callback for that blob, in the order in which the blobs were submitted.
+  private final Map<String, Callback<GetBlobResultInternal>> blobIdToCallback;
+  private final List<BlobId> blobIds;
+  // map of correlation id to the request metadata for every request issued for this operation.
+  private final Map<Integer, GetRequestInfo> correlationIdToGetRequestInfo = new TreeMap<>();
+  // the blobs that could not be served by the batched request and have to be fetched individually.
+  private final Map<String, Callback<GetBlobResultInternal>> fallbackBlobIdToCallback = new LinkedHashMap<>();
+  private boolean operationCompleted = false;
+
+  private static final Logger logger = LoggerFactory.getLogger(BatchGetOperation.class);
+
+  /**
+   * Construct a BatchGetOperation.
+   * @param routerConfig the {@link RouterConfig} containing the configs for get operations.
+   * @param routerMetrics The {@link NonBlockingRouterMetrics} to be used for reporting metrics.
+   * @param blobIdFactory the factory to use to deserialize keys in a response.
+   * @param blobIds the {@link BlobId}s to fetch. All of them must belong to the same partition and be distinct.
+   * @param callbacks the callbacks to call on completion, one for every blob in {@code blobIds} and in the same order.
+   * @param options the {@link GetBlobOptionsInternal} associated with every blob in this operation.
+   * @param time the Time instance to use.
+   */
+  BatchGetOperation(RouterConfig routerConfig, NonBlockingRouterMetrics routerMetrics, BlobIdFactory blobIdFactory,
+      List<BlobId> blobIds, List<Callback<GetBlobResultInternal>> callbacks, GetBlobOptionsInternal options,
+      Time time) {
+    if (blobIds.isEmpty() || blobIds.size() != callbacks.size()) {
+      throw new IllegalArgumentException("There must be exactly one callback for each of one or more blob ids");
+    }
+    this.routerConfig = routerConfig;
+    this.routerMetrics = routerMetrics;
+    this.blobIdFactory = blobIdFactory;
+    this.blobIds = blobIds;
+    this.options = options;
+    this.time = time;
+    submissionTimeMs = time.milliseconds();
+    partitionId = blobIds.get(0).getPartition();
+    blobIdToCallback = new LinkedHashMap<>();
+    for (int i = 0; i < blobIds.size(); i++) {
+      if (!blobIds.get(i).getPartition().equals(partitionId)) {
+        throw new IllegalArgumentException("All the blobs in a batch get must belong to the same partition");
+      }
+      if (blobIdToCallback.put(blobIds.get(i).getID(), callbacks.get(i)) != null) {
+        throw new IllegalArgumentException("A blob cannot appear more than once in a batch get");
+      }
+    }
+    operationTracker = new SimpleOperationTracker(routerConfig.routerDatacenterName, partitionId,
+        routerConfig.routerGetCrossDcEnabled, routerConfig.routerGetSuccessTarget,
+        routerConfig.routerGetRequestParallelism);
+  }
+
+  /**
+   * For this operation, create and populate get requests to send out.
+   * @param requestRegistrationCallback the {@link RequestRegistrationCallback} to call for every request that gets
+   *                                    created as part of this poll operation.
+   */
+  void poll(RequestRegistrationCallback<BatchGetOperation> requestRegistrationCallback) {
+    cleanupExpiredInFlightRequests();
+    checkAndMaybeComplete();
+    if (!isOperationComplete()) {
+      fetchRequests(requestRegistrationCallback);
+    }
+  }
+
+  /**
+   * Clean up requests sent out by this operation that have now timed out.
+   */
+  private void cleanupExpiredInFlightRequests() {
+    Iterator<Map.Entry<Integer, GetRequestInfo>> inFlightRequestsIterator =
+        correlationIdToGetRequestInfo.entrySet().iterator();
+    while (inFlightRequestsIterator.hasNext()) {
+      Map.Entry<Integer, GetRequestInfo> entry = inFlightRequestsIterator.next();
+      if (time.milliseconds() - entry.getValue().startTimeMs > routerConfig.routerRequestTimeoutMs) {
+        // Do not notify this as a failure to the response handler, as this timeout could simply be due to
+        // connection unavailability.
+        onErrorResponse(entry.getValue().replicaId);
+        inFlightRequestsIterator.remove();
+      } else {
+        // the entries are ordered by correlation id and time. Break on the first request that has not timed out.
+        break;
+      }
+    }
+  }
+
+  /**
+   * Fetch {@link GetRequest}s to send for the operation.
+   */
+  private void fetchRequests(RequestRegistrationCallback<BatchGetOperation> requestRegistrationCallback) {
+    Iterator<ReplicaId> replicaIterator = operationTracker.getReplicaIterator();
+    while (replicaIterator.hasNext()) {
+      ReplicaId replicaId = replicaIterator.next();
+      String hostname = replicaId.getDataNodeId().getHostname();
+      Port port = replicaId.getDataNodeId().getPortToConnectTo();
+      GetRequest getRequest = createGetRequest();
+      RouterRequestInfo request = new RouterRequestInfo(hostname, port, getRequest, replicaId);
+      correlationIdToGetRequestInfo.put(getRequest.getCorrelationId(),
+          new GetRequestInfo(replicaId, time.milliseconds()));
+      requestRegistrationCallback.registerRequestToSend(this, request);
+      replicaIterator.remove();
+      if (RouterUtils.isRemoteReplica(routerConfig, replicaId)) {
+        logger.trace("Making request to a remote replica in", replicaId.getDataNodeId().getDatacenterName());
+        routerMetrics.crossColoRequestCount.inc();
+      }
+      routerMetrics.batchGetRequestCount.inc();
+      routerMetrics.getDataNodeBasedMetrics(replicaId.getDataNodeId()).getRequestRate.mark();
+    }
+  }
+
+  /**
+   * @return a {@link GetRequest} for all the blobs of this operation.
+   */
+  private GetRequest createGetRequest() {
+    List<PartitionRequestInfo> partitionRequestInfoList =
+        Collections.singletonList(new PartitionRequestInfo(partitionId, blobIds));
+    return new GetRequest(NonBlockingRouter.correlationIdGenerator.incrementAndGet(), routerConfig.routerHostname,
+        getOperationFlag(), partitionRequestInfoList, options.getBlobOptions.getGetOption());
+  }
+
+  /**
+   * @return the {@link MessageFormatFlags} to associate with the batched get requests.
+   */
+  private MessageFormatFlags getOperationFlag() {
+    switch (options.getBlobOptions.getOperationType()) {
+      case BlobInfo:
+        return MessageFormatFlags.BlobInfo;
+      case Data:
+        return MessageFormatFlags.Blob;
+      default:
+        return MessageFormatFlags.All;
+    }
+  }
+
+  /**
+   * Handle the given {@link ResponseInfo} and update the status of the operation.
+   * @param responseInfo the {@link ResponseInfo} to be handled.
+   * @param getResponse The {@link GetResponse} associated with this response.
+   */
+  void handleResponse(ResponseInfo responseInfo, GetResponse getResponse) {
+    if (isOperationComplete()) {
+      return;
+    }
+    int correlationId = ((GetRequest) responseInfo.getRequestInfo().getRequest()).getCorrelationId();
+    GetRequestInfo getRequestInfo = correlationIdToGetRequestInfo.remove(correlationId);
+    if (getRequestInfo == null) {
+      // Ignore. The request must have timed out.
+      return;
+    }
+    long requestLatencyMs = time.milliseconds() - getRequestInfo.startTimeMs;
+    routerMetrics.routerRequestLatencyMs.update(requestLatencyMs);
+    routerMetrics.getDataNodeBasedMetrics(getRequestInfo.replicaId.getDataNodeId()).getRequestLatencyMs.update(
+        requestLatencyMs);
+    if (responseInfo.getError() != null || getResponse == null) {
+      onErrorResponse(getRequestInfo.replicaId);
+    } else if (getResponse.getCorrelationId() != correlationId) {
+      routerMetrics.unknownReplicaResponseError.inc();
+      logger.error("The correlation id in the GetResponse {} is not the same as the correlation id in the associated "
+          + "GetRequest: {}", getResponse.getCorrelationId(), correlationId);
+      onErrorResponse(getRequestInfo.replicaId);
+    } else if (getResponse.getError() != ServerErrorCode.No_Error
+        || getResponse.getPartitionResponseInfoList().size() != 1) {
+      onErrorResponse(getRequestInfo.replicaId);
+    } else {
+      PartitionResponseInfo partitionResponseInfo = getResponse.getPartitionResponseInfoList().get(0);
+      if (partitionResponseInfo.getErrorCode() == ServerErrorCode.No_Error) {
+        try {
+          handleBody(partitionResponseInfo.getMessageInfoList(), getResponse.getInputStream());
+          operationTracker.onResponse(getRequestInfo.replicaId, true);
+          if (RouterUtils.isRemoteReplica(routerConfig, getRequestInfo.replicaId)) {
+            routerMetrics.crossColoSuccessCount.inc();
+          }
+        } catch (IOException | MessageFormatException e) {
+          routerMetrics.responseDeserializationErrorCount.inc();
+          logger.error("Response deserialization received an unexpected error", e);
+          onErrorResponse(getRequestInfo.replicaId);
+        }
+      } else {
+        // The error cannot be attributed to any one blob, so the whole batch has to be resolved blob by blob. This is
+        // done right away as other replicas would most likely return the same error.
+        logger.trace("Batched get failed with partition level error {}", partitionResponseInfo.getErrorCode());
+        operationCompleted = true;
+      }
+    }
+    checkAndMaybeComplete();
+  }
+
+  /**
+   * Deserialize the messages in the body of a successful response and complete the callback of every simple blob in
+   * it. Composite blobs are left to be fetched individually.
+   * @param messageInfoList the {@link MessageInfo}s of the messages in the body, in order.
+   * @param payload the body of the response.
+   * @throws IOException if there is an IOException while deserializing the body.
+   * @throws MessageFormatException if there is a MessageFormatException while deserializing the body.
+   */
+  private void handleBody(List<MessageInfo> messageInfoList, InputStream payload)
+      throws IOException, MessageFormatException {
+    // Deserialize all the messages first, so that a malformed response does not complete only some of the blobs.
+    Map<String, GetBlobResult> results = new LinkedHashMap<>();
+    for (MessageInfo messageInfo : messageInfoList) {
+      String blobIdStr = messageInfo.getStoreKey().getID();
+      GetBlobResult result;
+      if (getOperationFlag() == MessageFormatFlags.BlobInfo) {
+        result = new GetBlobResult(new BlobInfo(MessageFormatRecord.deserializeBlobProperties(payload),
+            MessageFormatRecord.deserializeUserMetadata(payload).array()), null);
+      } else {
+        BlobInfo blobInfo = null;
+        BlobData blobData;
+        if (getOperationFlag() == MessageFormatFlags.Blob) {
+          blobData = MessageFormatRecord.deserializeBlob(payload);
+        } else {
+          BlobAll blobAll = MessageFormatRecord.deserializeBlobAll(payload, blobIdFactory);
+          blobInfo = blobAll.getBlobInfo();
+          blobData = blobAll.getBlobData();
+        }
+        result = blobData.getBlobType() == BlobType.DataBlob ? new GetBlobResult(blobInfo,
+            new ByteBufferReadableStreamChannel(blobData.getStream().getByteBuffer())) : null;
+      }
+      results.put(blobIdStr, result);
+    }
+    for (Map.Entry<String, GetBlobResult> entry : results.entrySet()) {
+      Callback<GetBlobResultInternal> callback = blobIdToCallback.remove(entry.getKey());
+      if (callback != null && entry.getValue() != null) {
+        completeBlob(callback, entry.getValue());
+      } else if (callback != null) {
+        fallbackBlobIdToCallback.put(entry.getKey(), callback);
+        routerMetrics.batchGetFallbackCount.inc();
+      }
+    }
+  }
+
+  /**
+   * Complete the callback for a blob that was served by this operation.
+   * @param callback the {@link Callback} of the blob.
+   * @param result the {@link GetBlobResult} for the blob.
+   */
+  private void completeBlob(Callback<GetBlobResultInternal> callback, GetBlobResult result) {
+    routerMetrics.operationDequeuingRate.mark();
+    if (options.getBlobOptions.getOperationType() == GetBlobOptions.OperationType.BlobInfo) {
+      routerMetrics.getBlobInfoOperationLatencyMs.update(time.milliseconds() - submissionTimeMs);
+    } else {
+      routerMetrics.getBlobOperationLatencyMs.update(time.milliseconds() - submissionTimeMs);
+      routerMetrics.simpleBlobGetCount.inc();
+    }
+    NonBlockingRouter.completeOperation(null, callback, new GetBlobResultInternal(result, null), null);
+  }
+
+  /**
+   * Perform the necessary actions when a request to a replica fails.
+   * @param replicaId the {@link ReplicaId} associated with the failed response.
+   */
+  private void onErrorResponse(ReplicaId replicaId) {
+    operationTracker.onResponse(replicaId, false);
+    routerMetrics.routerRequestErrorCount.inc();
+    routerMetrics.getDataNodeBasedMetrics(replicaId.getDataNodeId()).getRequestErrorCount.inc();
+  }
+
+  /**
+   * Check whether the operation can be completed, if so complete it. Every blob that has not been served by the
+   * time the operation completes is added to the fallback list.
+   */
+  private void checkAndMaybeComplete() {
+    if (operationTracker.isDone()) {
+      operationCompleted = true;
+    }
+    if (operationCompleted && !blobIdToCallback.isEmpty()) {
+      routerMetrics.batchGetFallbackCount.inc(blobIdToCallback.size());
+      fallbackBlobIdToCallback.putAll(blobIdToCallback);
+      blobIdToCallback.clear();
+    }
+  }
+
+  /**
+   * Abort the operation, completing the callbacks of all the blobs that have not been served yet with the given
+   * exception.
+   * @param abortCause the exception that is the cause for the abort.
+   */
+  void abort(Exception abortCause) {
+    fallbackBlobIdToCallback.putAll(blobIdToCallback);
+    for (Callback<GetBlobResultInternal> callback : fallbackBlobIdToCallback.values()) {
+      routerMetrics.operationDequeuingRate.mark();
+      routerMetrics.onGetBlobError(abortCause, options);
+      NonBlockingRouter.completeOperation(null, callback, null, abortCause);
+    }
+    blobIdToCallback.clear();
+    fallbackBlobIdToCallback.clear();
+    operationCompleted = true;
+  }
+
+  /**
+   * @return whether the operation has completed.
+   */
+  boolean isOperationComplete() {
+    return operationCompleted;
+  }
+
+  /**
+   * @return the {@link GetBlobOptionsInternal} associated with this operation.
+   */
+  GetBlobOptionsInternal getOptions() {
+    return options;
+  }
+
+  /**
+   * @return the ids of the blobs that could not be served by this operation and have to be fetched individually,
+   *         mapped to their callbacks. This is final only once the operation is complete.
+   */
+  Map<String, Callback<GetBlobResultInternal>> getFallbacks() {
+    return fallbackBlobIdToCallback;
+  }
+}
@@ -14,6 +14,7 @@
 package com.github.ambry.router;
 
 import com.github.ambry.clustermap.ClusterMap;
+import com.github.ambry.clustermap.PartitionId;
 import com.github.ambry.clustermap.ReplicaId;
 import com.github.ambry.commons.BlobId;
 import com.github.ambry.commons.ResponseHandler;
@@ -22,15 +23,21 @@ import com.github.ambry.network.NetworkClientErrorCode;
 import com.github.ambry.network.RequestInfo;
 import com.github.ambry.network.ResponseInfo;
 import com.github.ambry.notification.NotificationSystem;
+import com.github.ambry.protocol.BatchDeleteRequest;
+import com.github.ambry.protocol.BatchDeleteResponse;
 import com.github.ambry.protocol.DeleteRequest;
 import com.github.ambry.protocol.DeleteResponse;
 import com.github.ambry.protocol.RequestOrResponse;
 import com.github.ambry.utils.ByteBufferInputStream;
 import com.github.ambry.utils.Time;
 import java.io.DataInputStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import org.slf4j.Logger;
@@ -38,12 +45,14 @@ import org.slf4j.LoggerFactory;
 
 
 /**
- * Handles {@link DeleteOperation}. A {@code DeleteManager} keeps track of all the delete
- * operations that are assigned to it, and manages their states and life cycles.
+ * Handles {@link DeleteOperation}s and {@link BatchDeleteOperation}s. A {@code DeleteManager} keeps track of all the
+ * delete operations that are assigned to it, and manages their states and life cycles.
  */
 class DeleteManager {
   private final Set<DeleteOperation> deleteOperations;
+  private final Set<BatchDeleteOperation> batchDeleteOperations;
   private final HashMap<Integer, DeleteOperation> correlationIdToDeleteOperation;
+  private final HashMap<Integer, BatchDeleteOperation> correlationIdToBatchDeleteOperation;
   private final NotificationSystem notificationSystem;
   private final Time time;
   private final ResponseHandler responseHandler;
@@ -71,6 +80,24 @@ class DeleteManager {
   private final DeleteRequestRegistrationCallbackImpl requestRegistrationCallback =
       new DeleteRequestRegistrationCallbackImpl();
 
+  /**
+   * Used by a {@link BatchDeleteOperation} to associate a {@code CorrelationId} to a {@link BatchDeleteOperation}.
+   */
+  private class BatchDeleteRequestRegistrationCallbackImpl
+      implements RequestRegistrationCallback<BatchDeleteOperation> {
+    private List<RequestInfo> requestListToFill;
+
+    @Override
+    public void registerRequestToSend(BatchDeleteOperation batchDeleteOperation, RequestInfo requestInfo) {
+      requestListToFill.add(requestInfo);
+      correlationIdToBatchDeleteOperation.put(((RequestOrResponse) requestInfo.getRequest()).getCorrelationId(),
+          batchDeleteOperation);
+    }
+  }
+
+  private final BatchDeleteRequestRegistrationCallbackImpl batchRequestRegistrationCallback =
+      new BatchDeleteRequestRegistrationCallbackImpl();
+
   /**
    * Creates a DeleteManager.
    * @param clusterMap The {@link ClusterMap} of the cluster.
@@ -92,6 +119,8 @@ class DeleteManager {
     this.time = time;
     deleteOperations = Collections.newSetFromMap(new ConcurrentHashMap<DeleteOperation, Boolean>());
     correlationIdToDeleteOperation = new HashMap<Integer, DeleteOperation>();
+    batchDeleteOperations = Collections.newSetFromMap(new ConcurrentHashMap<BatchDeleteOperation, Boolean>());
+    correlationIdToBatchDeleteOperation = new HashMap<Integer, BatchDeleteOperation>();
   }
 
   /**
@@ -113,6 +142,86 @@ class DeleteManager {
     }
   }
 
+  /**
+   * Submits deletes for multiple blobs to this {@code DeleteManager}. The blobs are grouped by partition, and every
+   * group of more than one blob is deleted through a {@link BatchDeleteOperation} that sends a single
+   * {@link BatchDeleteRequest} per replica. A group is limited to {@link RouterConfig#routerDeleteBatchMaxBlobCount}
+   * blobs. A blob id that appears more than once is batched only once, and every repetition of it is deleted through
+   * a regular {@link DeleteOperation}.
+   * @param blobIdStrings The blobId strings to be deleted.
+   * @param futureResults The {@link FutureResult}s that will contain the result of each delete eventually, in the same
+   *                      order as {@code blobIdStrings}.
+   * @param callbacks The {@link Callback}s that will be called on completion of each delete, in the same order as
+   *                  {@code blobIdStrings}.
+   */
+  void submitDeleteBlobsOperation(List<String> blobIdStrings, List<FutureResult<Void>> futureResults,
+      List<Callback<Void>> callbacks) {
+    Map<PartitionId, List<Integer>> partitionToIndices = new LinkedHashMap<>();
+    Map<Integer, BlobId> indexToBlobId = new HashMap<>();
+    Set<String> batchedBlobIds = new HashSet<>();
+    for (int i = 0; i < blobIdStrings.size(); i++) {
+      try {
+        BlobId blobId = RouterUtils.getBlobIdFromString(blobIdStrings.get(i), clusterMap);
+        if (!batchedBlobIds.add(blobId.getID())) {
+          deleteOperations.add(
+              new DeleteOperation(routerConfig, routerMetrics, responseHandler, blobId, futureResults.get(i),
+                  callbacks.get(i), time));
+          continue;
+        }
+        List<Integer> indices = partitionToIndices.get(blobId.getPartition());
+        if (indices == null) {
+          indices = new ArrayList<>();
+          partitionToIndices.put(blobId.getPartition(), indices);
+        }
+        indices.add(i);
+        indexToBlobId.put(i, blobId);
+        if (indices.size() == routerConfig.routerDeleteBatchMaxBlobCount) {
+          submitBatch(indices, indexToBlobId, futureResults, callbacks);
+          partitionToIndices.remove(blobId.getPartition());
+        }
+      } catch (RouterException e) {
+        routerMetrics.operationDequeuingRate.mark();
+        routerMetrics.onDeleteBlobError(e);
+        NonBlockingRouter.completeOperation(futureResults.get(i), callbacks.get(i), null, e);
+      }
+    }
+    for (List<Integer> indices : partitionToIndices.values()) {
+      submitBatch(indices, indexToBlobId, futureResults, callbacks);
+    }
+  }
+
+  /**
+   * Submits the deletes of a group of blobs of the same partition. A group of a single blob is submitted as a regular
+   * {@link DeleteOperation}.
+   * @param indices the indices of the blobs of the group in the submitted lists.
+   * @param indexToBlobId the map of the index of every valid blob id to the {@link BlobId}.
+   * @param futureResults the {@link FutureResult}s of all the submitted blobs.
+   * @param callbacks the {@link Callback}s of all the submitted blobs.
+   */
+  private void submitBatch(List<Integer> indices, Map<Integer, BlobId> indexToBlobId,
+      List<FutureResult<Void>> futureResults, List<Callback<Void>> callbacks) {
+    if (indices.size() == 1) {
+      int index = indices.get(0);
+      deleteOperations.add(
+          new DeleteOperation(routerConfig, routerMetrics, responseHandler, indexToBlobId.get(index),
+              futureResults.get(index), callbacks.get(index), time));
+    } else {
+      List<BlobId> blobIds = new ArrayList<>(indices.size());
+      List<FutureResult<Void>> batchFutureResults = new ArrayList<>(indices.size());
+      List<Callback<Void>> batchCallbacks = new ArrayList<>(indices.size());
+      for (int index : indices) {
+        blobIds.add(indexToBlobId.get(index));
+        batchFutureResults.add(futureResults.get(index));
+        batchCallbacks.add(callbacks.get(index));
+      }
+      routerMetrics.batchDeleteOperationRate.mark();
+      routerMetrics.batchDeleteBlobCount.update(blobIds.size());
+      batchDeleteOperations.add(
+          new BatchDeleteOperation(routerConfig, routerMetrics, notificationSystem, blobIds, batchFutureResults,
+              batchCallbacks, time));
+    }
+  }
+
   /**
    * Polls all delete operations and populates a list of {@link RequestInfo} to be sent to data nodes in order to
    * complete delete operations.
@@ -120,6 +229,20 @@ class DeleteManager {
    */
   public void poll(List<RequestInfo> requestListToFill) {
     long startTime = time.milliseconds();
+    batchRequestRegistrationCallback.requestListToFill = requestListToFill;
+    for (BatchDeleteOperation op : batchDeleteOperations) {
+      try {
+        op.poll(batchRequestRegistrationCallback);
+      } catch (Exception e) {
+        if (batchDeleteOperations.remove(op)) {
+          op.abort(new RouterException("Batch delete poll encountered unexpected error", e,
+              RouterErrorCode.UnexpectedInternalError));
+        }
+      }
+      if (op.isOperationComplete() && batchDeleteOperations.remove(op)) {
+        submitFallbacks(op);
+      }
+    }
     requestRegistrationCallback.requestListToFill = requestListToFill;
     for (DeleteOperation op : deleteOperations) {
       boolean exceptionEncountered = false;
@@ -146,6 +269,10 @@ class DeleteManager {
    * @param responseInfo the {@link ResponseInfo} containing the response.
    */
   void handleResponse(ResponseInfo responseInfo) {
+    if (responseInfo.getRequestInfo().getRequest() instanceof BatchDeleteRequest) {
+      handleBatchResponse(responseInfo);
+      return;
+    }
     long startTime = time.milliseconds();
     DeleteResponse deleteReponse = extractDeleteResponseAndNotifyResponseHandler(responseInfo);
     RouterRequestInfo routerRequestInfo = (RouterRequestInfo) responseInfo.getRequestInfo();
@@ -173,6 +300,62 @@ class DeleteManager {
     }
   }
 
+  /**
+   * Handles a response received for a {@link BatchDeleteOperation} within this delete manager.
+   * @param responseInfo the {@link ResponseInfo} containing the response.
+   */
+  private void handleBatchResponse(ResponseInfo responseInfo) {
+    long startTime = time.milliseconds();
+    BatchDeleteResponse batchDeleteResponse = null;
+    ReplicaId replicaId = ((RouterRequestInfo) responseInfo.getRequestInfo()).getReplicaId();
+    NetworkClientErrorCode networkClientErrorCode = responseInfo.getError();
+    if (networkClientErrorCode == null) {
+      try {
+        batchDeleteResponse =
+            BatchDeleteResponse.readFrom(new DataInputStream(new ByteBufferInputStream(responseInfo.getResponse())));
+        responseHandler.onEvent(replicaId, batchDeleteResponse.getError());
+      } catch (Exception e) {
+        // Ignore. There is no value in notifying the response handler.
+        logger.error("Response deserialization received unexpected error", e);
+        routerMetrics.responseDeserializationErrorCount.inc();
+      }
+    } else {
+      responseHandler.onEvent(replicaId, networkClientErrorCode);
+    }
+    int correlationId = ((BatchDeleteRequest) responseInfo.getRequestInfo().getRequest()).getCorrelationId();
+    BatchDeleteOperation batchDeleteOperation = correlationIdToBatchDeleteOperation.remove(correlationId);
+    // If it is still an active operation, hand over the response. Otherwise, ignore.
+    if (batchDeleteOperations.contains(batchDeleteOperation)) {
+      try {
+        batchDeleteOperation.handleResponse(responseInfo, batchDeleteResponse);
+      } catch (Exception e) {
+        if (batchDeleteOperations.remove(batchDeleteOperation)) {
+          batchDeleteOperation.abort(new RouterException("Batch delete handleResponse encountered unexpected error", e,
+              RouterErrorCode.UnexpectedInternalError));
+        }
+      }
+      if (batchDeleteOperation.isOperationComplete() && batchDeleteOperations.remove(batchDeleteOperation)) {
+        submitFallbacks(batchDeleteOperation);
+      }
+      routerMetrics.deleteManagerHandleResponseTimeMs.update(time.milliseconds() - startTime);
+    } else {
+      routerMetrics.ignoredResponseCount.inc();
+    }
+  }
+
+  /**
+   * Submit a regular {@link DeleteOperation} for every blob that the given completed {@link BatchDeleteOperation}
+   * could not delete.
+   * @param op the completed {@link BatchDeleteOperation}.
+   */
+  private void submitFallbacks(BatchDeleteOperation op) {
+    for (BatchDeleteOperation.BlobDeleteInfo blobDeleteInfo : op.getFallbacks()) {
+      deleteOperations.add(
+          new DeleteOperation(routerConfig, routerMetrics, responseHandler, blobDeleteInfo.blobId,
+              blobDeleteInfo.futureResult, blobDeleteInfo.callback, time));
+    }
+  }
+
   /**
    * Extract the {@link DeleteResponse} from the given {@link ResponseInfo}
    * @param responseInfo the {@link ResponseInfo} from which the {@link DeleteResponse} is to be extracted.
@@ -221,6 +404,12 @@ class DeleteManager {
    * will have no effect.
    */
   void close() {
+    for (BatchDeleteOperation op : batchDeleteOperations) {
+      if (batchDeleteOperations.remove(op)) {
+        routerMetrics.operationAbortCount.inc();
+        op.abort(new RouterException("Aborted operation because Router is closed.", RouterErrorCode.RouterClosed));
+      }
+    }
     for (DeleteOperation op : deleteOperations) {
       // There is a rare scenario where the operation gets removed from this set and gets completed concurrently by
       // the RequestResponseHandler thread when it is in poll() or handleResponse(). In order to avoid the completion
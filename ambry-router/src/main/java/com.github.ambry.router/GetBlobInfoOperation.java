@@ -107,7 +107,9 @@ class GetBlobInfoOperation extends GetOperation {
         correlationIdToGetRequestInfo.entrySet().iterator();
     while (inFlightRequestsIterator.hasNext()) {
       Map.Entry<Integer, GetRequestInfo> entry = inFlightRequestsIterator.next();
-      if (time.milliseconds() - entry.getValue().startTimeMs > routerConfig.routerRequestTimeoutMs) {
+      long currentTimeMs = time.milliseconds();
+      if (currentTimeMs - entry.getValue().startTimeMs > routerConfig.routerRequestTimeoutMs) {
+        traceReplicaRequest("GetBlobInfo", -1, entry.getValue(), currentTimeMs, true);
         onErrorResponse(entry.getValue().replicaId);
         // Do not notify this as a failure to the response handler, as this timeout could simply be due to
         // connection unavailability. If there is indeed a network error, the NetworkClient will provide an error
@@ -164,7 +166,9 @@ class GetBlobInfoOperation extends GetOperation {
       // Ignore. The request must have timed out.
       return;
     }
-    long requestLatencyMs = time.milliseconds() - getRequestInfo.startTimeMs;
+    long currentTimeMs = time.milliseconds();
+    long requestLatencyMs = currentTimeMs - getRequestInfo.startTimeMs;
+    traceReplicaRequest("GetBlobInfo", -1, getRequestInfo, currentTimeMs, false);
     routerMetrics.routerRequestLatencyMs.update(requestLatencyMs);
     routerMetrics.getDataNodeBasedMetrics(getRequestInfo.replicaId.getDataNodeId()).getBlobInfoRequestLatencyMs.update(
         requestLatencyMs);
@@ -543,7 +543,9 @@ class GetBlobOperation extends GetOperation {
           correlationIdToGetRequestInfo.entrySet().iterator();
       while (inFlightRequestsIterator.hasNext()) {
         Map.Entry<Integer, GetRequestInfo> entry = inFlightRequestsIterator.next();
-        if (time.milliseconds() - entry.getValue().startTimeMs > routerConfig.routerRequestTimeoutMs) {
+        long currentTimeMs = time.milliseconds();
+        if (currentTimeMs - entry.getValue().startTimeMs > routerConfig.routerRequestTimeoutMs) {
+          traceReplicaRequest("GetChunk", chunkIndex, entry.getValue(), currentTimeMs, true);
           onErrorResponse(entry.getValue().replicaId);
           // Do not notify this as a failure to the response handler, as this timeout could simply be due to
           // connection unavailability. If there is indeed a network error, the NetworkClient will provide an error
@@ -633,7 +635,9 @@ class GetBlobOperation extends GetOperation {
         // Ignore right away. This associated operation has completed.
         return;
       }
-      long requestLatencyMs = time.milliseconds() - getRequestInfo.startTimeMs;
+      long currentTimeMs = time.milliseconds();
+      long requestLatencyMs = currentTimeMs - getRequestInfo.startTimeMs;
+      traceReplicaRequest("GetChunk", chunkIndex, getRequestInfo, currentTimeMs, false);
       routerMetrics.routerRequestLatencyMs.update(requestLatencyMs);
       routerMetrics.getDataNodeBasedMetrics(getRequestInfo.replicaId.getDataNodeId()).getRequestLatencyMs.update(
           requestLatencyMs);
@@ -14,7 +14,9 @@
 package com.github.ambry.router;
 
 import com.github.ambry.clustermap.ClusterMap;
+import com.github.ambry.clustermap.PartitionId;
 import com.github.ambry.clustermap.ReplicaId;
+import com.github.ambry.commons.BlobId;
 import com.github.ambry.commons.BlobIdFactory;
 import com.github.ambry.commons.ResponseHandler;
 import com.github.ambry.commons.ServerErrorCode;
@@ -29,8 +31,11 @@ import com.github.ambry.store.StoreKey;
 import com.github.ambry.utils.ByteBufferInputStream;
 import com.github.ambry.utils.Time;
 import java.io.DataInputStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -53,6 +58,9 @@ class GetManager {
   // Because there is a guaranteed response from the NetworkClient for every request sent out, entries
   // get cleaned up periodically.
   private final Map<Integer, GetOperation> correlationIdToGetOperation = new HashMap<Integer, GetOperation>();
+  // Batched gets are tracked separately from the single blob get operations, as they serve more than one blob.
+  private final Set<BatchGetOperation> batchGetOperations;
+  private final Map<Integer, BatchGetOperation> correlationIdToBatchGetOperation = new HashMap<>();
 
   // shared by all GetOperations
   private final ClusterMap clusterMap;
@@ -72,10 +80,23 @@ class GetManager {
     }
   }
 
+  private class BatchGetRequestRegistrationCallbackImpl implements RequestRegistrationCallback<BatchGetOperation> {
+    private List<RequestInfo> requestListToFill;
+
+    @Override
+    public void registerRequestToSend(BatchGetOperation batchGetOperation, RequestInfo requestInfo) {
+      requestListToFill.add(requestInfo);
+      correlationIdToBatchGetOperation.put(((RequestOrResponse) requestInfo.getRequest()).getCorrelationId(),
+          batchGetOperation);
+    }
+  }
+
   // A single callback as this will never get called concurrently. The list of request to fill will be set as
   // appropriate before the callback is passed on to GetOperations, every time.
   private final GetRequestRegistrationCallbackImpl requestRegistrationCallback =
       new GetRequestRegistrationCallbackImpl();
+  private final BatchGetRequestRegistrationCallbackImpl batchRequestRegistrationCallback =
+      new BatchGetRequestRegistrationCallbackImpl();
 
   /**
    * Create a GetManager
@@ -96,6 +117,7 @@ class GetManager {
     this.routerCallback = routerCallback;
     this.time = time;
     getOperations = Collections.newSetFromMap(new ConcurrentHashMap<GetOperation, Boolean>());
+    batchGetOperations = Collections.newSetFromMap(new ConcurrentHashMap<BatchGetOperation, Boolean>());
   }
 
   /**
@@ -124,6 +146,77 @@ class GetManager {
     }
   }
 
+  /**
+   * Submit operations to get multiple blobs asynchronously. The blobs are grouped by partition and every group is
+   * fetched through a {@link BatchGetOperation} that issues a single request per replica for all the blobs in the
+   * group. Blobs that cannot be batched are fetched through individual get operations. A blob id that appears more
+   * than once is batched only once, and every repetition of it is fetched through an individual get operation, as
+   * the data channel of a result can only be read by a single caller.
+   * @param blobIds The blobIds of the blobs being requested, in string form.
+   * @param options The {@link GetBlobOptionsInternal} associated with every one of the blobs.
+   * @param callbacks The {@link Callback}s to be called on completion, one for every blob id and in the same order.
+   */
+  void submitGetBlobsOperation(List<String> blobIds, GetBlobOptionsInternal options,
+      List<Callback<GetBlobResultInternal>> callbacks) {
+    if (options.getChunkIdsOnly || options.getBlobOptions.getRange() != null) {
+      // Ranges are resolved against the size of the whole blob, which is only known once the blob has been fetched.
+      for (int i = 0; i < blobIds.size(); i++) {
+        submitGetBlobOperation(blobIds.get(i), options, callbacks.get(i));
+      }
+      return;
+    }
+    Map<PartitionId, List<BlobId>> partitionToBlobIds = new LinkedHashMap<>();
+    Map<PartitionId, List<Callback<GetBlobResultInternal>>> partitionToCallbacks = new HashMap<>();
+    Set<String> batchedBlobIds = new HashSet<>();
+    for (int i = 0; i < blobIds.size(); i++) {
+      try {
+        BlobId blobId = RouterUtils.getBlobIdFromString(blobIds.get(i), clusterMap);
+        if (!batchedBlobIds.add(blobId.getID())) {
+          submitGetBlobOperation(blobIds.get(i), options, callbacks.get(i));
+          continue;
+        }
+        PartitionId partitionId = blobId.getPartition();
+        List<BlobId> batch = partitionToBlobIds.get(partitionId);
+        if (batch == null || batch.size() == routerConfig.routerGetBatchMaxBlobCount) {
+          if (batch != null) {
+            submitBatch(batch, partitionToCallbacks.get(partitionId), options);
+          }
+          batch = new ArrayList<>();
+          partitionToBlobIds.put(partitionId, batch);
+          partitionToCallbacks.put(partitionId, new ArrayList<Callback<GetBlobResultInternal>>());
+        }
+        batch.add(blobId);
+        partitionToCallbacks.get(partitionId).add(callbacks.get(i));
+      } catch (RouterException e) {
+        routerMetrics.onGetBlobError(e, options);
+        routerMetrics.operationDequeuingRate.mark();
+        NonBlockingRouter.completeOperation(null, callbacks.get(i), null, e);
+      }
+    }
+    for (Map.Entry<PartitionId, List<BlobId>> entry : partitionToBlobIds.entrySet()) {
+      submitBatch(entry.getValue(), partitionToCallbacks.get(entry.getKey()), options);
+    }
+  }
+
+  /**
+   * Submit a group of blobs of the same partition, either as a {@link BatchGetOperation} or, if there is only a single
+   * blob in the group, as an individual get operation.
+   * @param blobIds the {@link BlobId}s in the group.
+   * @param callbacks the {@link Callback}s associated with the blobs, in the same order.
+   * @param options The {@link GetBlobOptionsInternal} associated with the blobs.
+   */
+  private void submitBatch(List<BlobId> blobIds, List<Callback<GetBlobResultInternal>> callbacks,
+      GetBlobOptionsInternal options) {
+    if (blobIds.size() == 1) {
+      submitGetBlobOperation(blobIds.get(0).getID(), options, callbacks.get(0));
+    } else {
+      batchGetOperations.add(
+          new BatchGetOperation(routerConfig, routerMetrics, blobIdFactory, blobIds, callbacks, options, time));
+      routerMetrics.batchGetOperationRate.mark();
+      routerMetrics.batchGetBlobCount.update(blobIds.size());
+    }
+  }
+
   /**
    * Remove the operation from the set of operations handled by the GetManager.
    * This can potentially be called concurrently for the same operation, which is fine.
@@ -150,6 +243,18 @@ class GetManager {
   void poll(List<RequestInfo> requestListToFill) {
     long startTime = time.milliseconds();
     requestRegistrationCallback.requestListToFill = requestListToFill;
+    batchRequestRegistrationCallback.requestListToFill = requestListToFill;
+    for (BatchGetOperation op : batchGetOperations) {
+      try {
+        op.poll(batchRequestRegistrationCallback);
+        if (op.isOperationComplete()) {
+          removeAndSubmitFallbacks(op);
+        }
+      } catch (Exception e) {
+        removeAndAbort(op, new RouterException("Batch get poll encountered unexpected error", e,
+            RouterErrorCode.UnexpectedInternalError));
+      }
+    }
     for (GetOperation op : getOperations) {
       try {
         op.poll(requestRegistrationCallback);
@@ -173,6 +278,12 @@ class GetManager {
     GetResponse getResponse = extractGetResponseAndNotifyResponseHandler(responseInfo);
     RouterRequestInfo routerRequestInfo = (RouterRequestInfo) responseInfo.getRequestInfo();
     GetRequest getRequest = (GetRequest) routerRequestInfo.getRequest();
+    BatchGetOperation batchGetOperation = correlationIdToBatchGetOperation.remove(getRequest.getCorrelationId());
+    if (batchGetOperation != null) {
+      handleBatchResponse(batchGetOperation, responseInfo, getResponse);
+      routerMetrics.getManagerHandleResponseTimeMs.update(time.milliseconds() - startTime);
+      return;
+    }
     GetOperation getOperation = correlationIdToGetOperation.remove(getRequest.getCorrelationId());
     if (getOperations.contains(getOperation)) {
       try {
@@ -190,6 +301,43 @@ class GetManager {
     }
   }
 
+  /**
+   * Hands over the response to the given {@link BatchGetOperation} that issued the request, if it is still active.
+   * @param batchGetOperation the {@link BatchGetOperation} that issued the request.
+   * @param responseInfo the {@link ResponseInfo} containing the response.
+   * @param getResponse the {@link GetResponse} extracted from the response, or null if there is none.
+   */
+  private void handleBatchResponse(BatchGetOperation batchGetOperation, ResponseInfo responseInfo,
+      GetResponse getResponse) {
+    if (batchGetOperations.contains(batchGetOperation)) {
+      try {
+        batchGetOperation.handleResponse(responseInfo, getResponse);
+        if (batchGetOperation.isOperationComplete()) {
+          removeAndSubmitFallbacks(batchGetOperation);
+        }
+      } catch (Exception e) {
+        removeAndAbort(batchGetOperation,
+            new RouterException("Batch get handleResponse encountered unexpected error", e,
+                RouterErrorCode.UnexpectedInternalError));
+      }
+    } else {
+      routerMetrics.ignoredResponseCount.inc();
+    }
+  }
+
+  /**
+   * Remove a completed {@link BatchGetOperation} and submit individual get operations for all the blobs that it could
+   * not serve.
+   * @param op the completed {@link BatchGetOperation}.
+   */
+  private void removeAndSubmitFallbacks(BatchGetOperation op) {
+    if (batchGetOperations.remove(op)) {
+      for (Map.Entry<String, Callback<GetBlobResultInternal>> entry : op.getFallbacks().entrySet()) {
+        submitGetBlobOperation(entry.getKey(), op.getOptions(), entry.getValue());
+      }
+    }
+  }
+
   /**
    * Extract the {@link GetResponse} from the given {@link ResponseInfo}
    * @param responseInfo the {@link ResponseInfo} from which the {@link GetResponse} is to be extracted.
@@ -224,6 +372,10 @@ class GetManager {
    * Complete all existing get operations.
    */
   void close() {
+    for (BatchGetOperation op : batchGetOperations) {
+      removeAndAbort(op,
+          new RouterException("Aborted operation because Router is closed", RouterErrorCode.RouterClosed));
+    }
     for (GetOperation op : getOperations) {
       removeAndAbort(op,
           new RouterException("Aborted operation because Router is closed", RouterErrorCode.RouterClosed));
@@ -245,6 +397,18 @@ class GetManager {
       routerMetrics.onGetBlobError(abortCause, op.getOptions());
     }
   }
+
+  /**
+   * Remove a {@link BatchGetOperation} from the set and abort all the blobs that it has not served yet.
+   * @param op the operation to abort
+   * @param abortCause the reason for aborting
+   */
+  private void removeAndAbort(BatchGetOperation op, Exception abortCause) {
+    if (batchGetOperations.remove(op)) {
+      op.abort(abortCause);
+      routerMetrics.operationAbortCount.inc();
+    }
+  }
 }
 
 /**
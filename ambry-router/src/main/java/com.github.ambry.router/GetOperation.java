@@ -25,6 +25,7 @@ import com.github.ambry.protocol.GetOption;
 import com.github.ambry.protocol.GetRequest;
 import com.github.ambry.protocol.GetResponse;
 import com.github.ambry.protocol.PartitionRequestInfo;
+import com.github.ambry.utils.RequestTrace;
 import com.github.ambry.utils.Time;
 import java.util.Collections;
 import java.util.List;
@@ -179,6 +180,34 @@ abstract class GetOperation {
     return new GetRequest(NonBlockingRouter.correlationIdGenerator.incrementAndGet(), routerConfig.routerHostname, flag,
         partitionRequestInfoList, getOption);
   }
+
+  /**
+   * Record the request described by {@code getRequestInfo} as a span on the {@link RequestTrace} of this operation,
+   * if the operation is being traced. The span name is only built for traced operations.
+   * @param requestType the type of the request (e.g. "GetChunk").
+   * @param chunkIndex the index of the chunk the request was for, or -1 if the request was not for a chunk.
+   * @param getRequestInfo the {@link GetRequestInfo} of the request that completed or timed out.
+   * @param endTimeMs the time at which the request completed or timed out.
+   * @param timedOut {@code true} if the request timed out before a response was received.
+   */
+  protected void traceReplicaRequest(String requestType, int chunkIndex, GetRequestInfo getRequestInfo,
+      long endTimeMs, boolean timedOut) {
+    RequestTrace trace = options == null ? RequestTrace.DISABLED : options.getBlobOptions.getTrace();
+    if (trace.isEnabled()) {
+      StringBuilder spanName = new StringBuilder(requestType);
+      if (chunkIndex >= 0) {
+        spanName.append(" ").append(chunkIndex);
+      }
+      spanName.append(" ")
+          .append(getRequestInfo.replicaId.getDataNodeId().getHostname())
+          .append(":")
+          .append(getRequestInfo.replicaId.getDataNodeId().getPort());
+      if (timedOut) {
+        spanName.append(" (timed out)");
+      }
+      trace.addSpan(spanName.toString(), getRequestInfo.startTimeMs, endTimeMs);
+    }
+  }
 }
 
 /**
@@ -14,6 +14,7 @@
 package com.github.ambry.router;
 
 import com.github.ambry.clustermap.ClusterMap;
+import com.github.ambry.clustermap.PartitionId;
 import com.github.ambry.commons.ResponseHandler;
 import com.github.ambry.config.RouterConfig;
 import com.github.ambry.messageformat.BlobInfo;
@@ -31,7 +32,9 @@ import com.github.ambry.utils.Time;
 import com.github.ambry.utils.Utils;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
@@ -105,6 +108,76 @@ class NonBlockingRouter implements Router {
     return ocList.get(ThreadLocalRandom.current().nextInt(ocCount));
   }
 
+  /**
+   * Returns the {@link OperationController} that should handle an operation on the given blob. If partition affinity
+   * is enabled, all operations on the blobs of a partition are handled by the same {@link OperationController}, so
+   * that each of them only maintains connections to the data nodes hosting its share of the partitions.
+   * <p/>
+   * The affinity is only by the partition of the blob the operation is submitted for. The data chunks of a composite
+   * blob may live on other partitions, but they are fetched by the {@link OperationController} that handles the get of
+   * the metadata blob, since the chunks are only known once that operation has read the metadata. Puts are not routed
+   * by partition either, because the partitions of the chunks are picked by the {@link OperationController} that
+   * handles the put.
+   * @param blobId the id string of the blob.
+   * @return the {@link OperationController} for the blob, or a randomly picked one if partition affinity is disabled
+   *         or the id is invalid.
+   */
+  private OperationController getOperationController(String blobId) {
+    if (routerConfig.routerScalingUnitPartitionAffinityEnabled) {
+      try {
+        PartitionId partitionId = RouterUtils.getBlobIdFromString(blobId, clusterMap).getPartition();
+        return ocList.get((partitionId.hashCode() & Integer.MAX_VALUE) % ocCount);
+      } catch (RouterException e) {
+        // the operation will be failed by the operation manager that picks it up.
+      }
+    }
+    return getOperationController();
+  }
+
+  /**
+   * Groups the positions of the given blob ids by the {@link OperationController} that should handle them.
+   * @param blobIds the id strings of the blobs.
+   * @return a map from {@link OperationController} to the positions in {@code blobIds} of the blobs it should handle.
+   */
+  private Map<OperationController, List<Integer>> groupByOperationController(List<String> blobIds) {
+    Map<OperationController, List<Integer>> groups = new LinkedHashMap<>();
+    if (!routerConfig.routerScalingUnitPartitionAffinityEnabled) {
+      List<Integer> positions = new ArrayList<>(blobIds.size());
+      for (int i = 0; i < blobIds.size(); i++) {
+        positions.add(i);
+      }
+      groups.put(getOperationController(), positions);
+      return groups;
+    }
+    for (int i = 0; i < blobIds.size(); i++) {
+      OperationController oc = getOperationController(blobIds.get(i));
+      List<Integer> positions = groups.get(oc);
+      if (positions == null) {
+        positions = new ArrayList<>();
+        groups.put(oc, positions);
+      }
+      positions.add(i);
+    }
+    return groups;
+  }
+
+  /**
+   * Returns the elements at the given positions of a list.
+   * @param list the list to select from.
+   * @param positions the positions of the elements to select.
+   * @return the selected elements, in the order of {@code positions}.
+   */
+  private static <T> List<T> select(List<T> list, List<Integer> positions) {
+    if (positions.size() == list.size()) {
+      return list;
+    }
+    List<T> selected = new ArrayList<>(positions.size());
+    for (int position : positions) {
+      selected.add(list.get(position));
+    }
+    return selected;
+  }
+
   /**
    * Requests for blob data asynchronously with user-set {@link GetBlobOptions} and returns a future that will
    * eventually contain a {@link GetBlobResult} that can contain either the {@link BlobInfo}, the
@@ -146,7 +219,7 @@ class NonBlockingRouter implements Router {
     final FutureResult<GetBlobResult> futureResult = new FutureResult<>();
     GetBlobOptionsInternal internalOptions = new GetBlobOptionsInternal(options, false);
     if (isOpen.get()) {
-      getOperationController().getBlob(blobId, internalOptions, new Callback<GetBlobResultInternal>() {
+      getOperationController(blobId).getBlob(blobId, internalOptions, new Callback<GetBlobResultInternal>() {
         @Override
         public void onCompletion(GetBlobResultInternal internalResult, Exception exception) {
           GetBlobResult getBlobResult = internalResult == null ? null : internalResult.getBlobResult;
@@ -166,6 +239,64 @@ class NonBlockingRouter implements Router {
     return futureResult;
   }
 
+  /**
+   * Requests for multiple blobs asynchronously with the same user-set {@link GetBlobOptions}. Blobs of the same
+   * partition are fetched together, with a single request per replica, and the result of every blob is delivered
+   * through its own future.
+   * @param blobIds The IDs of the blobs for which blob data is requested.
+   * @param options The options associated with the request. This cannot be null.
+   * @return A list of futures, one for each of the {@code blobIds} and in the same order.
+   */
+  @Override
+  public List<Future<GetBlobResult>> getBlobs(List<String> blobIds, GetBlobOptions options) {
+    if (blobIds == null || options == null) {
+      throw new IllegalArgumentException("blobIds or options must not be null");
+    }
+    List<Future<GetBlobResult>> futures = new ArrayList<>(blobIds.size());
+    List<Callback<GetBlobResultInternal>> callbacks = new ArrayList<>(blobIds.size());
+    GetBlobOptionsInternal internalOptions = new GetBlobOptionsInternal(options, false);
+    for (String blobId : blobIds) {
+      if (blobId == null) {
+        throw new IllegalArgumentException("blobIds must not contain null");
+      }
+    }
+    for (int i = 0; i < blobIds.size(); i++) {
+      currentOperationsCount.incrementAndGet();
+      if (options.getOperationType() == GetBlobOptions.OperationType.BlobInfo) {
+        routerMetrics.getBlobInfoOperationRate.mark();
+      } else {
+        routerMetrics.getBlobOperationRate.mark();
+      }
+      if (options.getRange() != null) {
+        routerMetrics.getBlobWithRangeOperationRate.mark();
+      }
+      routerMetrics.operationQueuingRate.mark();
+      final FutureResult<GetBlobResult> futureResult = new FutureResult<>();
+      futures.add(futureResult);
+      callbacks.add(new Callback<GetBlobResultInternal>() {
+        @Override
+        public void onCompletion(GetBlobResultInternal internalResult, Exception exception) {
+          futureResult.done(internalResult == null ? null : internalResult.getBlobResult, exception);
+        }
+      });
+    }
+    if (isOpen.get()) {
+      for (Map.Entry<OperationController, List<Integer>> entry : groupByOperationController(blobIds).entrySet()) {
+        List<Integer> positions = entry.getValue();
+        entry.getKey().getBlobs(select(blobIds, positions), internalOptions, select(callbacks, positions));
+      }
+    } else {
+      for (Callback<GetBlobResultInternal> callback : callbacks) {
+        RouterException routerException =
+            new RouterException("Cannot accept operation because Router is closed", RouterErrorCode.RouterClosed);
+        routerMetrics.operationDequeuingRate.mark();
+        routerMetrics.onGetBlobError(routerException, internalOptions);
+        completeOperation(null, callback, null, routerException);
+      }
+    }
+    return futures;
+  }
+
   /**
    * Requests for a new blob to be put asynchronously and returns a future that will eventually contain the BlobId of
    * the new blob on a successful response.
@@ -241,7 +372,7 @@ class NonBlockingRouter implements Router {
     routerMetrics.operationQueuingRate.mark();
     FutureResult<Void> futureResult = new FutureResult<Void>();
     if (isOpen.get()) {
-      getOperationController().deleteBlob(blobId, futureResult, callback);
+      getOperationController(blobId).deleteBlob(blobId, futureResult, callback);
     } else {
       RouterException routerException =
           new RouterException("Cannot accept operation because Router is closed", RouterErrorCode.RouterClosed);
@@ -253,23 +384,80 @@ class NonBlockingRouter implements Router {
   }
 
   /**
-   * Initiated deletes of the blobIds in the given list of ids via the {@link BackgroundDeleter}
+   * Requests for multiple blobs to be deleted asynchronously. The deletes are submitted to the same
+   * {@link OperationController} (or, with partition affinity, to the one owning each partition), so that the requests
+   * for all of them go out together.
+   * @param blobIds The IDs of the blobs that need to be deleted.
+   * @return A list of futures, one for each of the {@code blobIds} and in the same order.
+   */
+  @Override
+  public List<Future<Void>> deleteBlobs(List<String> blobIds) {
+    if (blobIds == null) {
+      throw new IllegalArgumentException("blobIds must not be null");
+    }
+    for (String blobId : blobIds) {
+      if (blobId == null) {
+        throw new IllegalArgumentException("blobIds must not contain null");
+      }
+    }
+    List<Future<Void>> futures = new ArrayList<>(blobIds.size());
+    List<FutureResult<Void>> futureResults = new ArrayList<>(blobIds.size());
+    for (int i = 0; i < blobIds.size(); i++) {
+      currentOperationsCount.incrementAndGet();
+      routerMetrics.deleteBlobOperationRate.mark();
+      routerMetrics.operationQueuingRate.mark();
+      FutureResult<Void> futureResult = new FutureResult<>();
+      futures.add(futureResult);
+      futureResults.add(futureResult);
+    }
+    if (isOpen.get()) {
+      for (Map.Entry<OperationController, List<Integer>> entry : groupByOperationController(blobIds).entrySet()) {
+        List<Integer> positions = entry.getValue();
+        entry.getKey().deleteBlobs(select(blobIds, positions), select(futureResults, positions));
+      }
+    } else {
+      for (FutureResult<Void> futureResult : futureResults) {
+        RouterException routerException =
+            new RouterException("Cannot accept operation because Router is closed", RouterErrorCode.RouterClosed);
+        routerMetrics.operationDequeuingRate.mark();
+        routerMetrics.onDeleteBlobError(routerException);
+        completeOperation(futureResult, null, null, routerException);
+      }
+    }
+    return futures;
+  }
+
+  /**
+   * Initiated deletes of the blobIds in the given list of ids via the {@link BackgroundDeleter}. The ids are those
+   * of data chunks, which are never composite themselves, so the deletes are submitted together without looking
+   * for further chunks to delete. The chunks of a partition are deleted through a single batched request per
+   * replica.
    * @param idsToDelete the list of blobId strings to delete.
    */
   private void initiateBackgroundDeletes(List<StoreKey> idsToDelete) {
+    if (idsToDelete.isEmpty()) {
+      return;
+    }
+    List<String> blobIds = new ArrayList<>(idsToDelete.size());
+    List<FutureResult<Void>> futureResults = new ArrayList<>(idsToDelete.size());
+    List<Callback<Void>> callbacks = new ArrayList<>(idsToDelete.size());
+    Callback<Void> callback = new Callback<Void>() {
+      @Override
+      public void onCompletion(Void result, Exception exception) {
+        if (exception != null) {
+          logger.error("Background delete operation failed with exception", exception);
+        }
+        currentBackgroundOperationsCount.decrementAndGet();
+      }
+    };
     for (StoreKey key : idsToDelete) {
       currentOperationsCount.incrementAndGet();
       currentBackgroundOperationsCount.incrementAndGet();
-      backgroundDeleter.deleteBlob(key.getID(), new FutureResult<Void>(), new Callback<Void>() {
-        @Override
-        public void onCompletion(Void result, Exception exception) {
-          if (exception != null) {
-            logger.error("Background delete operation failed with exception", exception);
-          }
-          currentBackgroundOperationsCount.decrementAndGet();
-        }
-      });
+      blobIds.add(key.getID());
+      futureResults.add(new FutureResult<Void>());
+      callbacks.add(callback);
     }
+    backgroundDeleter.deleteChunks(blobIds, futureResults, callbacks);
   }
 
   /**
@@ -442,6 +630,20 @@ class NonBlockingRouter implements Router {
       routerCallback.onPollReady();
     }
 
+    /**
+     * Requests for multiple blobs asynchronously and invokes the {@link Callback} of every blob when the request for
+     * that blob completes.
+     * @param blobIds The IDs of the blobs for which blob data is requested.
+     * @param options The {@link GetBlobOptionsInternal} associated with the request.
+     * @param callbacks The callbacks which will be invoked on the completion of the request for each blob, in the same
+     *                  order as {@code blobIds}.
+     */
+    protected void getBlobs(List<String> blobIds, GetBlobOptionsInternal options,
+        List<Callback<GetBlobResultInternal>> callbacks) {
+      getManager.submitGetBlobsOperation(blobIds, options, callbacks);
+      routerCallback.onPollReady();
+    }
+
     /**
      * Requests for a new blob to be put asynchronously and invokes the {@link Callback} when the request completes.
      * @param blobProperties The properties of the blob.
@@ -488,6 +690,42 @@ class NonBlockingRouter implements Router {
       routerCallback.onPollReady();
     }
 
+    /**
+     * Requests for multiple blobs to be deleted asynchronously. As with {@link #deleteBlob}, the chunks of any of
+     * these blobs that turn out to be composite are deleted in the background.
+     * @param blobIds The IDs of the blobs that need to be deleted.
+     * @param futureResults The futures that would contain information about whether the deletion of each blob
+     *                      succeeded or not, eventually, in the same order as {@code blobIds}.
+     */
+    protected void deleteBlobs(List<String> blobIds, List<FutureResult<Void>> futureResults) {
+      List<Callback<Void>> callbacks = new ArrayList<>(blobIds.size());
+      for (final String blobId : blobIds) {
+        callbacks.add(new Callback<Void>() {
+          @Override
+          public void onCompletion(Void result, Exception exception) {
+            if (exception == null) {
+              initiateChunkDeletesIfAny(blobId);
+            }
+          }
+        });
+      }
+      deleteManager.submitDeleteBlobsOperation(blobIds, futureResults, callbacks);
+      routerCallback.onPollReady();
+    }
+
+    /**
+     * Requests for the given data chunks to be deleted asynchronously. Unlike {@link #deleteBlobs}, no attempt is
+     * made to find and delete further chunks, as data chunks are never composite.
+     * @param chunkIds The IDs of the chunks that need to be deleted.
+     * @param futureResults The futures that would contain the result of the deletion of each chunk.
+     * @param callbacks The {@link Callback}s which will be invoked on the completion of the deletion of each chunk.
+     */
+    protected void deleteChunks(List<String> chunkIds, List<FutureResult<Void>> futureResults,
+        List<Callback<Void>> callbacks) {
+      deleteManager.submitDeleteBlobsOperation(chunkIds, futureResults, callbacks);
+      routerCallback.onPollReady();
+    }
+
     /**
      * Shuts down the OperationController and cleans up all the resources associated with it.
      */
@@ -542,6 +780,7 @@ class NonBlockingRouter implements Router {
               getManager.handleResponse(responseInfo);
               break;
             case DeleteRequest:
+            case BatchDeleteRequest:
               deleteManager.handleResponse(responseInfo);
               break;
             default:
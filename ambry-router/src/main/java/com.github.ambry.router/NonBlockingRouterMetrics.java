@@ -102,9 +102,22 @@ public class NonBlockingRouterMetrics {
   public final Meter operationErrorRate;
   public final Counter slippedPutAttemptCount;
   public final Counter slippedPutSuccessCount;
+  public final Counter speculativePutAttemptCount;
+  public final Counter speculativePutSuccessCount;
+  public final Counter speculativePutCleanupCount;
   public final Counter ignoredResponseCount;
   public final Counter crossColoRequestCount;
   public final Counter crossColoSuccessCount;
+
+  // Batched operation metrics.
+  public final Meter batchGetOperationRate;
+  public final Histogram batchGetBlobCount;
+  public final Counter batchGetRequestCount;
+  public final Counter batchGetFallbackCount;
+  public final Meter batchDeleteOperationRate;
+  public final Histogram batchDeleteBlobCount;
+  public final Counter batchDeleteRequestCount;
+  public final Counter batchDeleteFallbackCount;
   public Gauge<Long> chunkFillerThreadRunning;
   public Gauge<Long> requestResponseHandlerThreadRunning;
 
@@ -235,11 +248,34 @@ public class NonBlockingRouterMetrics {
     ignoredResponseCount = metricRegistry.counter(MetricRegistry.name(NonBlockingRouter.class, "IgnoredRequestCount"));
     slippedPutAttemptCount = metricRegistry.counter(MetricRegistry.name(PutOperation.class, "SlippedPutAttemptCount"));
     slippedPutSuccessCount = metricRegistry.counter(MetricRegistry.name(PutOperation.class, "SlippedPutSuccessCount"));
+    speculativePutAttemptCount =
+        metricRegistry.counter(MetricRegistry.name(PutOperation.class, "SpeculativePutAttemptCount"));
+    speculativePutSuccessCount =
+        metricRegistry.counter(MetricRegistry.name(PutOperation.class, "SpeculativePutSuccessCount"));
+    speculativePutCleanupCount =
+        metricRegistry.counter(MetricRegistry.name(PutOperation.class, "SpeculativePutCleanupCount"));
     crossColoRequestCount =
         metricRegistry.counter(MetricRegistry.name(NonBlockingRouter.class, "CrossColoRequestCount"));
     crossColoSuccessCount =
         metricRegistry.counter(MetricRegistry.name(NonBlockingRouter.class, "CrossColoSuccessCount"));
 
+    // Batched operation metrics.
+    batchGetOperationRate =
+        metricRegistry.meter(MetricRegistry.name(BatchGetOperation.class, "BatchGetOperationRate"));
+    batchGetBlobCount = metricRegistry.histogram(MetricRegistry.name(BatchGetOperation.class, "BatchGetBlobCount"));
+    batchGetRequestCount =
+        metricRegistry.counter(MetricRegistry.name(BatchGetOperation.class, "BatchGetRequestCount"));
+    batchGetFallbackCount =
+        metricRegistry.counter(MetricRegistry.name(BatchGetOperation.class, "BatchGetFallbackCount"));
+    batchDeleteOperationRate =
+        metricRegistry.meter(MetricRegistry.name(BatchDeleteOperation.class, "BatchDeleteOperationRate"));
+    batchDeleteBlobCount =
+        metricRegistry.histogram(MetricRegistry.name(BatchDeleteOperation.class, "BatchDeleteBlobCount"));
+    batchDeleteRequestCount =
+        metricRegistry.counter(MetricRegistry.name(BatchDeleteOperation.class, "BatchDeleteRequestCount"));
+    batchDeleteFallbackCount =
+        metricRegistry.counter(MetricRegistry.name(BatchDeleteOperation.class, "BatchDeleteFallbackCount"));
+
     // metrics to track blob sizes and chunking.
     putBlobSizeBytes = metricRegistry.histogram(MetricRegistry.name(PutManager.class, "PutBlobSizeBytes"));
     putBlobChunkCount = metricRegistry.histogram(MetricRegistry.name(PutManager.class, "PutBlobChunkCount"));
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.router;
+
+import com.github.ambry.store.StoreKey;
+import com.github.ambry.utils.Time;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Deletes the blobs of put attempts that were abandoned while some of their requests were still outstanding, like the
+ * losing attempt of a speculative slipped put. Deleting such a blob right away could let a delete reach a replica
+ * before the put does, and the put that arrives later would then leave an orphaned blob behind. The delete of the blob
+ * of an abandoned attempt is therefore only scheduled once every outstanding request of the attempt has been answered,
+ * or once the attempt has been waiting for longer than the request timeout.
+ *
+ * This class is not thread safe. It is only used from the RequestResponseHandler thread of the {@link PutManager}.
+ */
+class PutAttemptCleaner {
+  private final RouterCallback routerCallback;
+  private final long expiryMs;
+  private final Time time;
+  private final Map<Integer, AbandonedAttempt> correlationIdToAbandonedAttempt = new HashMap<>();
+  // ordered by abandonment time, and therefore by expiry time.
+  private final List<AbandonedAttempt> abandonedAttempts = new LinkedList<>();
+
+  /**
+   * Create a PutAttemptCleaner.
+   * @param routerCallback the {@link RouterCallback} to use to schedule deletes.
+   * @param expiryMs the time after which the delete of the blob of an abandoned attempt is scheduled even if some of
+   *                 its requests are still outstanding.
+   * @param time the {@link Time} instance to use.
+   */
+  PutAttemptCleaner(RouterCallback routerCallback, long expiryMs, Time time) {
+    this.routerCallback = routerCallback;
+    this.expiryMs = expiryMs;
+    this.time = time;
+  }
+
+  /**
+   * Called when a put attempt is abandoned. The delete of its blob is scheduled right away if none of its requests
+   * are outstanding, and otherwise once they are all answered or expire.
+   * @param blobId the id of the blob of the abandoned attempt.
+   * @param outstandingCorrelationIds the correlation ids of the requests of the attempt that have not been answered.
+   */
+  void onAttemptAbandoned(StoreKey blobId, Collection<Integer> outstandingCorrelationIds) {
+    if (outstandingCorrelationIds.isEmpty()) {
+      routerCallback.scheduleDeletes(Collections.singletonList(blobId));
+    } else {
+      AbandonedAttempt abandonedAttempt =
+          new AbandonedAttempt(blobId, outstandingCorrelationIds, time.milliseconds() + expiryMs);
+      for (Integer correlationId : outstandingCorrelationIds) {
+        correlationIdToAbandonedAttempt.put(correlationId, abandonedAttempt);
+      }
+      abandonedAttempts.add(abandonedAttempt);
+    }
+  }
+
+  /**
+   * Called when a response to a put request is received.
+   * @param correlationId the correlation id of the request.
+   * @return {@code true} if the request belongs to an abandoned attempt, in which case the response needs no further
+   *         handling.
+   */
+  boolean onResponse(int correlationId) {
+    AbandonedAttempt abandonedAttempt = correlationIdToAbandonedAttempt.remove(correlationId);
+    if (abandonedAttempt == null) {
+      return false;
+    }
+    abandonedAttempt.outstandingCorrelationIds.remove(correlationId);
+    if (abandonedAttempt.outstandingCorrelationIds.isEmpty()) {
+      abandonedAttempts.remove(abandonedAttempt);
+      routerCallback.scheduleDeletes(Collections.singletonList(abandonedAttempt.blobId));
+    }
+    return true;
+  }
+
+  /**
+   * Schedule the deletes of the blobs of the abandoned attempts that have expired.
+   */
+  void cleanupExpiredAttempts() {
+    Iterator<AbandonedAttempt> iterator = abandonedAttempts.iterator();
+    while (iterator.hasNext()) {
+      AbandonedAttempt abandonedAttempt = iterator.next();
+      if (time.milliseconds() < abandonedAttempt.expiryTimeMs) {
+        break;
+      }
+      iterator.remove();
+      for (Integer correlationId : abandonedAttempt.outstandingCorrelationIds) {
+        correlationIdToAbandonedAttempt.remove(correlationId);
+      }
+      routerCallback.scheduleDeletes(Collections.singletonList(abandonedAttempt.blobId));
+    }
+  }
+
+  /**
+   * @return the number of abandoned attempts whose blobs have not been scheduled for deletion yet.
+   */
+  int getPendingAttemptCount() {
+    return abandonedAttempts.size();
+  }
+
+  /**
+   * An abandoned put attempt that still has outstanding requests.
+   */
+  private static class AbandonedAttempt {
+    final StoreKey blobId;
+    final Set<Integer> outstandingCorrelationIds;
+    final long expiryTimeMs;
+
+    AbandonedAttempt(StoreKey blobId, Collection<Integer> outstandingCorrelationIds, long expiryTimeMs) {
+      this.blobId = blobId;
+      this.outstandingCorrelationIds = new HashSet<>(outstandingCorrelationIds);
+      this.expiryTimeMs = expiryTimeMs;
+    }
+  }
+}
@@ -62,6 +62,7 @@ class PutManager {
   private final Map<Integer, PutOperation> correlationIdToPutOperation;
   private final AtomicBoolean isOpen = new AtomicBoolean(true);
   private final RouterCallback routerCallback;
+  private final PutAttemptCleaner putAttemptCleaner;
   private final ByteBufferAsyncWritableChannel.ChannelEventListener chunkArrivalListener;
 
   // shared by all PutOperations
@@ -105,6 +106,7 @@ class PutManager {
     this.routerConfig = routerConfig;
     this.routerMetrics = routerMetrics;
     this.routerCallback = routerCallback;
+    putAttemptCleaner = new PutAttemptCleaner(routerCallback, routerConfig.routerRequestTimeoutMs, time);
     this.chunkArrivalListener = new ByteBufferAsyncWritableChannel.ChannelEventListener() {
       @Override
       public void onEvent(ByteBufferAsyncWritableChannel.EventType e) {
@@ -139,7 +141,7 @@ class PutManager {
     try {
       PutOperation putOperation =
           new PutOperation(routerConfig, routerMetrics, clusterMap, responseHandler, blobProperties, userMetaData,
-              channel, futureResult, callback, routerCallback, chunkArrivalListener, time);
+              channel, futureResult, callback, routerCallback, putAttemptCleaner, chunkArrivalListener, time);
       putOperations.add(putOperation);
       putOperation.startReadingFromChannel();
     } catch (RouterException e) {
@@ -173,6 +175,7 @@ class PutManager {
         onComplete(op);
       }
     }
+    putAttemptCleaner.cleanupExpiredAttempts();
     routerMetrics.putManagerPollTimeMs.update(time.milliseconds() - startTime);
   }
 
@@ -187,6 +190,10 @@ class PutManager {
     int correlationId = ((PutRequest) routerRequestInfo.getRequest()).getCorrelationId();
     // Get the PutOperation that generated the request.
     PutOperation putOperation = correlationIdToPutOperation.remove(correlationId);
+    if (putAttemptCleaner.onResponse(correlationId)) {
+      // the response is for an attempt that its operation has abandoned.
+      return;
+    }
     // If it is still an active operation, hand over the response. Otherwise, ignore.
     if (putOperations.contains(putOperation)) {
       try {
@@ -35,9 +35,11 @@ import com.github.ambry.utils.Time;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ThreadLocalRandom;
@@ -65,6 +67,10 @@ import org.slf4j.LoggerFactory;
  * the chunks are put successfully. If all the chunks are put successfully, the MetadataPutChunk is created to put
  * the metadata chunk consisting of the blob ids of all the data chunks, and the successful put of the metadata
  * chunk successfully completes the operation.
+ *
+ * A chunk is put to a single partition at a time. If that attempt fails, the chunk is slipped to another partition.
+ * If speculative slipped puts are enabled, a chunk is also slipped to another partition when the first attempt is slow
+ * to complete; the two attempts then race, the first one to succeed is used, and the blob of the other is deleted.
  */
 class PutOperation {
   // Operation arguments.
@@ -79,6 +85,7 @@ class PutOperation {
   private final FutureResult<String> futureResult;
   private final Callback<String> callback;
   private final RouterCallback routerCallback;
+  private final PutAttemptCleaner putAttemptCleaner;
   private final Time time;
   private BlobProperties finalBlobProperties;
 
@@ -143,14 +150,16 @@ class PutOperation {
    * @param futureResult the future that will contain the result of the operation.
    * @param callback the callback that is to be called when the operation completes.
    * @param routerCallback The {@link RouterCallback} to use for callbacks to the router.
+   * @param putAttemptCleaner the {@link PutAttemptCleaner} to hand the put attempts that this operation abandons to.
    * @param time the Time instance to use.
    * @throws RouterException if there is an error in constructing the PutOperation with the given parameters.
    */
   PutOperation(RouterConfig routerConfig, NonBlockingRouterMetrics routerMetrics, ClusterMap clusterMap,
       ResponseHandler responseHandler, BlobProperties blobProperties, byte[] userMetadata,
       ReadableStreamChannel channel, FutureResult<String> futureResult, Callback<String> callback,
-      RouterCallback routerCallback, ByteBufferAsyncWritableChannel.ChannelEventListener writableChannelEventListener,
-      Time time) throws RouterException {
+      RouterCallback routerCallback, PutAttemptCleaner putAttemptCleaner,
+      ByteBufferAsyncWritableChannel.ChannelEventListener writableChannelEventListener, Time time)
+      throws RouterException {
     submissionTimeMs = time.milliseconds();
     this.routerConfig = routerConfig;
     this.routerMetrics = routerMetrics;
@@ -162,6 +171,7 @@ class PutOperation {
     this.futureResult = futureResult;
     this.callback = callback;
     this.routerCallback = routerCallback;
+    this.putAttemptCleaner = putAttemptCleaner;
     this.time = time;
     bytesFilledSoFar = 0;
     chunkCounter = -1;
@@ -433,7 +443,7 @@ class PutOperation {
         break;
       }
     }
-    if (chunkToReturn == null && putChunks.size() < NonBlockingRouter.MAX_IN_MEM_CHUNKS) {
+    if (chunkToReturn == null && putChunks.size() < routerConfig.routerPutMaxInMemChunks) {
       chunkToReturn = new PutChunk();
       putChunks.add(chunkToReturn);
     }
@@ -577,12 +587,11 @@ class PutOperation {
     protected volatile ChunkState state;
     // the ByteBuffer that has the data for the current chunk.
     protected ByteBuffer buf;
-    // the OperationTracker used to track the status of requests for the current chunk.
-    protected OperationTracker operationTracker;
+    // the attempts at putting the current chunk that are in progress. There is more than one only if a speculative
+    // slipped put was started, and the first of them is the one that was started earliest.
+    private final List<PutAttempt> attempts = new ArrayList<>();
     // the number of times a put was attempted for the current chunk.
     private int failedAttempts;
-    // the partitionId chosen for the current chunk.
-    private PartitionId partitionId;
     // the list of partitions already attempted for this chunk.
     private List<PartitionId> attemptedPartitionIds = new ArrayList<PartitionId>();
     // map of correlation id to the request metadata for every request issued for the current chunk.
@@ -607,7 +616,7 @@ class PutOperation {
       chunkBlobId = null;
       chunkException = null;
       failedAttempts = 0;
-      partitionId = null;
+      attempts.clear();
       attemptedPartitionIds.clear();
       maybeUpdateDefunctBufferInfos();
       correlationIdToChunkPutRequestInfo.clear();
@@ -739,18 +748,14 @@ class PutOperation {
      */
     private void prepareForSending() {
       try {
-        // if this is part of a retry, make sure no previously attempted partitions are retried.
-        if (partitionId != null) {
-          attemptedPartitionIds.add(partitionId);
-        }
-        partitionId = getPartitionForPut(attemptedPartitionIds);
-        chunkBlobId = new BlobId(partitionId);
+        // if this is part of a retry, the attempts so far have all failed. No previously attempted partitions are
+        // retried.
+        attempts.clear();
+        chunkBlobId = startAttempt().blobId;
         chunkBlobProperties = new BlobProperties(buf.remaining(), passedInBlobProperties.getServiceId(),
             passedInBlobProperties.getOwnerId(), passedInBlobProperties.getContentType(),
             passedInBlobProperties.isPrivate(), passedInBlobProperties.getTimeToLiveInSeconds(),
             passedInBlobProperties.getCreationTimeInMs());
-        operationTracker = new SimpleOperationTracker(routerConfig.routerDatacenterName, partitionId, false,
-            routerConfig.routerPutSuccessTarget, routerConfig.routerPutRequestParallelism);
         correlationIdToChunkPutRequestInfo.clear();
         state = ChunkState.Ready;
       } catch (RouterException e) {
@@ -761,6 +766,42 @@ class PutOperation {
       }
     }
 
+    /**
+     * Start a new attempt at putting the current chunk, to a partition that has not been attempted for it yet.
+     * @return the started {@link PutAttempt}.
+     * @throws RouterException if there is no partition left to attempt.
+     */
+    private PutAttempt startAttempt() throws RouterException {
+      PartitionId partitionId = getPartitionForPut(attemptedPartitionIds);
+      attemptedPartitionIds.add(partitionId);
+      PutAttempt attempt = new PutAttempt(partitionId,
+          new SimpleOperationTracker(routerConfig.routerDatacenterName, partitionId, false,
+              routerConfig.routerPutSuccessTarget, routerConfig.routerPutRequestParallelism));
+      attempts.add(attempt);
+      return attempt;
+    }
+
+    /**
+     * Start a speculative slipped put if enabled, the only attempt in progress has been running for longer than the
+     * configured threshold, and the slipped put attempts for this chunk are not exhausted.
+     */
+    private void maybeStartSpeculativeAttempt() {
+      if (routerConfig.routerPutSpeculativeSlippedPutEnabled && attempts.size() == 1
+          && failedAttempts + attempts.size() <= routerConfig.routerMaxSlippedPutAttempts
+          && time.milliseconds() - attempts.get(0).startTimeMs
+          >= routerConfig.routerPutSpeculativeSlippedPutThresholdMs) {
+        try {
+          PutAttempt attempt = startAttempt();
+          logger.trace("Put of chunk with id: " + chunkBlobId + " is slow, attempting speculative put with id: "
+              + attempt.blobId);
+          routerMetrics.speculativePutAttemptCount.inc();
+        } catch (RouterException e) {
+          // there are no other partitions to put to, so continue with the attempt in progress.
+          logger.trace("Could not start a speculative put for chunk with id: " + chunkBlobId, e);
+        }
+      }
+    }
+
     /**
      * Do the actions required when the chunk has been completely built.
      * @param updateMetric whether chunk fill completion metrics should be updated.
@@ -801,22 +842,30 @@ class PutOperation {
      */
     void checkAndMaybeComplete() {
       boolean done = false;
-      // Now, check if this chunk is done.
-      if (operationTracker.isDone()) {
-        if (!operationTracker.hasSucceeded()) {
-          failedAttempts++;
-          if (failedAttempts <= routerConfig.routerMaxSlippedPutAttempts) {
-            logger.trace("Attempt to put chunk with id: " + chunkBlobId + " failed, attempting slipped put");
-            routerMetrics.slippedPutAttemptCount.inc();
-            prepareForSending();
-          } else {
-            // this chunk could not be successfully put. The whole operation has to fail.
-            chunkBlobId = null;
-            setOperationExceptionAndComplete(chunkException);
-            done = true;
-          }
+      // Now, check if this chunk is done: either any of the attempts has succeeded or all of them have failed.
+      PutAttempt succeededAttempt = null;
+      boolean allAttemptsDone = true;
+      for (PutAttempt attempt : attempts) {
+        if (attempt.operationTracker.hasSucceeded()) {
+          succeededAttempt = attempt;
+          break;
+        }
+        allAttemptsDone &= attempt.operationTracker.isDone();
+      }
+      if (succeededAttempt != null) {
+        onAttemptSucceeded(succeededAttempt);
+        chunkException = null;
+        done = true;
+      } else if (allAttemptsDone) {
+        failedAttempts += attempts.size();
+        if (failedAttempts <= routerConfig.routerMaxSlippedPutAttempts) {
+          logger.trace("Attempt to put chunk with id: " + chunkBlobId + " failed, attempting slipped put");
+          routerMetrics.slippedPutAttemptCount.inc();
+          prepareForSending();
         } else {
-          chunkException = null;
+          // this chunk could not be successfully put. The whole operation has to fail.
+          chunkBlobId = null;
+          setOperationExceptionAndComplete(chunkException);
           done = true;
         }
       }
@@ -825,6 +874,31 @@ class PutOperation {
       }
     }
 
+    /**
+     * Called when one of the attempts at putting the current chunk succeeds. The blob id of that attempt becomes the
+     * blob id of the chunk. The other attempts in progress (if any requests were sent out for them) are handed to the
+     * {@link PutAttemptCleaner}, as their blobs may have been put to some of the replicas and have to be deleted once
+     * their outstanding requests have been answered.
+     * @param succeededAttempt the {@link PutAttempt} that succeeded.
+     */
+    private void onAttemptSucceeded(PutAttempt succeededAttempt) {
+      chunkBlobId = succeededAttempt.blobId;
+      if (succeededAttempt != attempts.get(0)) {
+        logger.trace("Speculative put succeeded for chunk: " + chunkBlobId);
+        routerMetrics.speculativePutSuccessCount.inc();
+      }
+      for (PutAttempt attempt : attempts) {
+        if (attempt != succeededAttempt && attempt.requestsSent) {
+          // the responses to the outstanding requests of the abandoned attempt are handled by the PutAttemptCleaner.
+          for (Integer correlationId : attempt.unansweredCorrelationIds) {
+            correlationIdToPutChunk.remove(correlationId);
+          }
+          putAttemptCleaner.onAttemptAbandoned(attempt.blobId, attempt.unansweredCorrelationIds);
+          routerMetrics.speculativePutCleanupCount.inc();
+        }
+      }
+    }
+
     /**
      * This is one of two main entry points to this class, the other being
      * {@link #handleResponse(ResponseInfo, PutResponse)}.
@@ -840,6 +914,7 @@ class PutOperation {
       cleanupExpiredInFlightRequests();
       checkAndMaybeComplete();
       if (!isComplete()) {
+        maybeStartSpeculativeAttempt();
         fetchRequests(requestRegistrationCallback);
       }
     }
@@ -853,7 +928,7 @@ class PutOperation {
       while (inFlightRequestsIterator.hasNext()) {
         Map.Entry<Integer, ChunkPutRequestInfo> entry = inFlightRequestsIterator.next();
         if (time.milliseconds() - entry.getValue().startTimeMs > routerConfig.routerRequestTimeoutMs) {
-          onErrorResponse(entry.getValue().replicaId);
+          onErrorResponse(entry.getValue());
           // Do not notify this as a failure to the response handler, as this timeout could simply be due to
           // connection unavailability. If there is indeed a network error, the NetworkClient will provide an error
           // response and the response handler will be notified accordingly.
@@ -870,35 +945,43 @@ class PutOperation {
      * Fetch {@link PutRequest}s to send for the current data chunk.
      */
     private void fetchRequests(RequestRegistrationCallback<PutOperation> requestRegistrationCallback) {
-      Iterator<ReplicaId> replicaIterator = operationTracker.getReplicaIterator();
-      while (replicaIterator.hasNext()) {
-        ReplicaId replicaId = replicaIterator.next();
-        String hostname = replicaId.getDataNodeId().getHostname();
-        Port port = replicaId.getDataNodeId().getPortToConnectTo();
-        PutRequest putRequest = createPutRequest();
-        RouterRequestInfo request = new RouterRequestInfo(hostname, port, putRequest, replicaId);
-        int correlationId = putRequest.getCorrelationId();
-        correlationIdToChunkPutRequestInfo.put(correlationId,
-            new ChunkPutRequestInfo(replicaId, putRequest, time.milliseconds()));
-        correlationIdToPutChunk.put(correlationId, this);
-        requestRegistrationCallback.registerRequestToSend(PutOperation.this, request);
-        replicaIterator.remove();
-        if (RouterUtils.isRemoteReplica(routerConfig, replicaId)) {
-          logger.trace("Making request to a remote replica in", replicaId.getDataNodeId().getDatacenterName());
-          routerMetrics.crossColoRequestCount.inc();
+      for (PutAttempt attempt : attempts) {
+        if (attempt.operationTracker.isDone()) {
+          continue;
+        }
+        Iterator<ReplicaId> replicaIterator = attempt.operationTracker.getReplicaIterator();
+        while (replicaIterator.hasNext()) {
+          ReplicaId replicaId = replicaIterator.next();
+          String hostname = replicaId.getDataNodeId().getHostname();
+          Port port = replicaId.getDataNodeId().getPortToConnectTo();
+          PutRequest putRequest = createPutRequest(attempt.blobId);
+          RouterRequestInfo request = new RouterRequestInfo(hostname, port, putRequest, replicaId);
+          int correlationId = putRequest.getCorrelationId();
+          correlationIdToChunkPutRequestInfo.put(correlationId,
+              new ChunkPutRequestInfo(attempt, replicaId, putRequest, time.milliseconds()));
+          correlationIdToPutChunk.put(correlationId, this);
+          requestRegistrationCallback.registerRequestToSend(PutOperation.this, request);
+          replicaIterator.remove();
+          attempt.requestsSent = true;
+          attempt.unansweredCorrelationIds.add(correlationId);
+          if (RouterUtils.isRemoteReplica(routerConfig, replicaId)) {
+            logger.trace("Making request to a remote replica in", replicaId.getDataNodeId().getDatacenterName());
+            routerMetrics.crossColoRequestCount.inc();
+          }
+          routerMetrics.getDataNodeBasedMetrics(replicaId.getDataNodeId()).putRequestRate.mark();
         }
-        routerMetrics.getDataNodeBasedMetrics(replicaId.getDataNodeId()).putRequestRate.mark();
       }
     }
 
     /**
      * Create and return the {@link PutRequest} associated with the current chunk. This method should only be called
      * when the chunk is in ready state.
+     * @param blobId the {@link BlobId} to put the chunk as, which is that of the attempt making the request.
      * @return the crated {@link PutRequest}.
      */
-    protected PutRequest createPutRequest() {
+    protected PutRequest createPutRequest(BlobId blobId) {
       return new PutRequest(NonBlockingRouter.correlationIdGenerator.incrementAndGet(), routerConfig.routerHostname,
-          chunkBlobId, chunkBlobProperties, ByteBuffer.wrap(userMetadata), buf.duplicate(), buf.remaining(),
+          blobId, chunkBlobProperties, ByteBuffer.wrap(userMetadata), buf.duplicate(), buf.remaining(),
           BlobType.DataBlob);
     }
 
@@ -929,6 +1012,9 @@ class PutOperation {
      */
     void handleResponse(ResponseInfo responseInfo, PutResponse putResponse) {
       int correlationId = ((PutRequest) responseInfo.getRequestInfo().getRequest()).getCorrelationId();
+      for (PutAttempt attempt : attempts) {
+        attempt.unansweredCorrelationIds.remove(correlationId);
+      }
       ChunkPutRequestInfo chunkPutRequestInfo = correlationIdToChunkPutRequestInfo.remove(correlationId);
       if (chunkPutRequestInfo == null) {
         // Ignore right away. This could mean:
@@ -978,24 +1064,25 @@ class PutOperation {
         }
       }
       if (isSuccessful) {
-        operationTracker.onResponse(chunkPutRequestInfo.replicaId, true);
+        chunkPutRequestInfo.attempt.operationTracker.onResponse(chunkPutRequestInfo.replicaId, true);
         if (RouterUtils.isRemoteReplica(routerConfig, chunkPutRequestInfo.replicaId)) {
           logger.trace("Cross colo request successful for remote replica in ",
               chunkPutRequestInfo.replicaId.getDataNodeId().getDatacenterName());
           routerMetrics.crossColoSuccessCount.inc();
         }
       } else {
-        onErrorResponse(chunkPutRequestInfo.replicaId);
+        onErrorResponse(chunkPutRequestInfo);
       }
       checkAndMaybeComplete();
     }
 
     /**
      * Perform the necessary actions when a request to a replica fails.
-     * @param replicaId the {@link ReplicaId} associated with the failed response.
+     * @param chunkPutRequestInfo the {@link ChunkPutRequestInfo} associated with the failed response.
      */
-    void onErrorResponse(ReplicaId replicaId) {
-      operationTracker.onResponse(replicaId, false);
+    private void onErrorResponse(ChunkPutRequestInfo chunkPutRequestInfo) {
+      ReplicaId replicaId = chunkPutRequestInfo.replicaId;
+      chunkPutRequestInfo.attempt.operationTracker.onResponse(replicaId, false);
       routerMetrics.routerRequestErrorCount.inc();
       routerMetrics.getDataNodeBasedMetrics(replicaId.getDataNodeId()).putRequestErrorCount.inc();
     }
@@ -1029,22 +1116,51 @@ class PutOperation {
      * A class that holds information about requests sent out by this PutChunk.
      */
     private class ChunkPutRequestInfo {
+      final PutAttempt attempt;
       final ReplicaId replicaId;
       final PutRequest putRequest;
       final long startTimeMs;
 
       /**
        * Construct a ChunkPutRequestInfo
+       * @param attempt the {@link PutAttempt} on behalf of which this request is being sent.
        * @param replicaId the replica to which this request is being sent.
        * @param startTimeMs the time at which this request was created.
        */
-      ChunkPutRequestInfo(ReplicaId replicaId, PutRequest putRequest, long startTimeMs) {
+      ChunkPutRequestInfo(PutAttempt attempt, ReplicaId replicaId, PutRequest putRequest, long startTimeMs) {
+        this.attempt = attempt;
         this.replicaId = replicaId;
         this.putRequest = putRequest;
         this.startTimeMs = startTimeMs;
       }
     }
 
+    /**
+     * An attempt at putting the current chunk to a partition, under a blob id of that partition.
+     */
+    private class PutAttempt {
+      final BlobId blobId;
+      // the OperationTracker used to track the status of requests for this attempt.
+      final OperationTracker operationTracker;
+      final long startTimeMs;
+      // whether any request has been sent out for this attempt.
+      boolean requestsSent = false;
+      // the correlation ids of the requests of this attempt for which no response has been received, including the
+      // ones that have timed out.
+      final Set<Integer> unansweredCorrelationIds = new HashSet<>();
+
+      /**
+       * Construct a PutAttempt
+       * @param partitionId the partition to which the chunk is put in this attempt.
+       * @param operationTracker the {@link OperationTracker} to use to track the requests of this attempt.
+       */
+      PutAttempt(PartitionId partitionId, OperationTracker operationTracker) {
+        this.operationTracker = operationTracker;
+        blobId = new BlobId(partitionId);
+        startTimeMs = time.milliseconds();
+      }
+    }
+
     /**
      * Class that holds the buffer of a chunk that will no longer be used and is kept around only because the
      * associated requests are not yet completely sent out.
@@ -1146,9 +1262,9 @@ class PutOperation {
      * @return the created {@link PutRequest}.
      */
     @Override
-    protected PutRequest createPutRequest() {
+    protected PutRequest createPutRequest(BlobId blobId) {
       return new PutRequest(NonBlockingRouter.correlationIdGenerator.incrementAndGet(), routerConfig.routerHostname,
-          chunkBlobId, finalBlobProperties, ByteBuffer.wrap(userMetadata), buf.duplicate(), buf.remaining(),
+          blobId, finalBlobProperties, ByteBuffer.wrap(userMetadata), buf.duplicate(), buf.remaining(),
           BlobType.MetadataBlob);
     }
   }
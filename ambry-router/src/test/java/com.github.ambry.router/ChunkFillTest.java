@@ -113,7 +113,8 @@ public class ChunkFillTest {
     MockNetworkClientFactory networkClientFactory = new MockNetworkClientFactory(vProps, null, 0, 0, 0, null, time);
     PutOperation op = new PutOperation(routerConfig, routerMetrics, mockClusterMap, responseHandler, putBlobProperties,
         putUserMetadata, putChannel, futureResult, null,
-        new RouterCallback(networkClientFactory.getNetworkClient(), new ArrayList<StoreKey>()), null, new MockTime());
+        new RouterCallback(networkClientFactory.getNetworkClient(), new ArrayList<StoreKey>()), null, null,
+        new MockTime());
     op.startReadingFromChannel();
     numChunks = RouterUtils.getNumChunksForBlobAndChunkSize(blobSize, chunkSize);
     // largeBlobSize is not a multiple of chunkSize
@@ -210,7 +211,7 @@ public class ChunkFillTest {
     MockNetworkClientFactory networkClientFactory = new MockNetworkClientFactory(vProps, null, 0, 0, 0, null, time);
     PutOperation op = new PutOperation(routerConfig, routerMetrics, mockClusterMap, responseHandler, putBlobProperties,
         putUserMetadata, putChannel, futureResult, null,
-        new RouterCallback(networkClientFactory.getNetworkClient(), new ArrayList<StoreKey>()), null, time);
+        new RouterCallback(networkClientFactory.getNetworkClient(), new ArrayList<StoreKey>()), null, null, time);
     op.startReadingFromChannel();
     numChunks = RouterUtils.getNumChunksForBlobAndChunkSize(blobSize, chunkSize);
     compositeBuffers = new ByteBuffer[numChunks];
@@ -16,16 +16,21 @@ package com.github.ambry.router;
 import com.github.ambry.clustermap.DataNodeId;
 import com.github.ambry.clustermap.MockClusterMap;
 import com.github.ambry.clustermap.PartitionId;
+import com.github.ambry.clustermap.ReplicaId;
 import com.github.ambry.commons.BlobId;
 import com.github.ambry.commons.LoggingNotificationSystem;
 import com.github.ambry.commons.ServerErrorCode;
 import com.github.ambry.config.RouterConfig;
 import com.github.ambry.config.VerifiableProperties;
+import com.github.ambry.messageformat.BlobProperties;
+import com.github.ambry.messageformat.BlobType;
+import com.github.ambry.protocol.PutRequest;
 import com.github.ambry.router.RouterTestHelpers.*;
 import com.github.ambry.utils.MockTime;
 import com.github.ambry.utils.SystemTime;
 import com.github.ambry.utils.TestUtils;
 import com.github.ambry.utils.Time;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -58,6 +63,7 @@ public class DeleteManagerTest {
   private MockClusterMap clusterMap;
   private MockServerLayout serverLayout;
   private NonBlockingRouter router;
+  private NonBlockingRouterMetrics routerMetrics;
   private BlobId blobId;
   private String blobIdString;
   private PartitionId partition;
@@ -95,7 +101,8 @@ public class DeleteManagerTest {
     mockSelectorState = new AtomicReference<MockSelectorState>(MockSelectorState.Good);
     clusterMap = new MockClusterMap();
     serverLayout = new MockServerLayout(clusterMap);
-    router = new NonBlockingRouter(new RouterConfig(vProps), new NonBlockingRouterMetrics(clusterMap),
+    routerMetrics = new NonBlockingRouterMetrics(clusterMap);
+    router = new NonBlockingRouter(new RouterConfig(vProps), routerMetrics,
         new MockNetworkClientFactory(vProps, mockSelectorState, MAX_PORTS_PLAIN_TEXT, MAX_PORTS_SSL,
             CHECKOUT_TIMEOUT_MS, serverLayout, mockTime), new LoggingNotificationSystem(), clusterMap, mockTime);
     List<PartitionId> mockPartitions = clusterMap.getWritablePartitionIds();
@@ -380,6 +387,108 @@ public class DeleteManagerTest {
         });
   }
 
+  /**
+   * Test the deletes of multiple blobs of the same partition through {@link NonBlockingRouter#deleteBlobs(List)}. The
+   * blobs are deleted through a {@link BatchDeleteOperation}, and the blobs that the batched requests could not delete
+   * are then deleted individually.
+   */
+  @Test
+  public void testBatchDelete() throws Exception {
+    final int BLOBS_PRESENT = 3;
+    final int BLOBS_NOT_PRESENT = 2;
+    final List<String> blobIdStrings = new ArrayList<>();
+    for (int i = 0; i < BLOBS_PRESENT + BLOBS_NOT_PRESENT; i++) {
+      BlobId id = new BlobId(partition);
+      if (i < BLOBS_PRESENT) {
+        BlobProperties blobProperties = new BlobProperties(10, "serviceId");
+        for (ReplicaId replica : partition.getReplicaIds()) {
+          PutRequest putRequest = new PutRequest(1, "clientId", id, blobProperties, ByteBuffer.allocate(10),
+              ByteBuffer.allocate(10), 10, BlobType.DataBlob);
+          serverLayout.getMockServer(replica.getDataNodeId().getHostname(), replica.getDataNodeId().getPort())
+              .send(putRequest);
+        }
+      }
+      blobIdStrings.add(id.getID());
+    }
+    List<Future<Void>> futures = router.deleteBlobs(blobIdStrings);
+    for (Future<Void> deleteFuture : futures) {
+      deleteFuture.get(AWAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+    assertEquals("There should have been one batched delete", 1, routerMetrics.batchDeleteOperationRate.getCount());
+    assertTrue("Batched requests should have been sent", routerMetrics.batchDeleteRequestCount.getCount() > 0);
+    // the servers report the blobs that are not present as not found, so only those are deleted individually.
+    assertEquals("Unexpected number of fallbacks", BLOBS_NOT_PRESENT,
+        routerMetrics.batchDeleteFallbackCount.getCount());
+    for (int i = 0; i < BLOBS_PRESENT; i++) {
+      int deletedCount = 0;
+      for (ReplicaId replica : partition.getReplicaIds()) {
+        MockServer server =
+            serverLayout.getMockServer(replica.getDataNodeId().getHostname(), replica.getDataNodeId().getPort());
+        if (server.getBlobs().get(blobIdStrings.get(i)).isDeleted()) {
+          deletedCount++;
+        }
+      }
+      assertTrue("Blob should have been deleted on at least as many replicas as the default success target",
+          deletedCount >= 2);
+    }
+
+    // a server level error from every server fails the batched requests, and then the individual deletes.
+    testWithErrorCodes(Collections.singletonMap(ServerErrorCode.Disk_Unavailable, 9), serverLayout,
+        RouterErrorCode.AmbryUnavailable, new ErrorCodeChecker() {
+          @Override
+          public void testAndAssert(RouterErrorCode expectedError) throws Exception {
+            for (Future<Void> deleteFuture : router.deleteBlobs(blobIdStrings)) {
+              assertFailureAndCheckErrorCode(deleteFuture, expectedError);
+            }
+          }
+        });
+  }
+
+  /**
+   * Test {@link NonBlockingRouter#deleteBlobs(List)} with a list in which the same blob id appears more than once, and
+   * ensure that the delete of every occurrence completes and that every blob is batched only once.
+   */
+  @Test
+  public void testBatchDeleteWithDuplicateIds() throws Exception {
+    List<String> uniqueBlobIdStrings = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      BlobId id = new BlobId(partition);
+      BlobProperties blobProperties = new BlobProperties(10, "serviceId");
+      for (ReplicaId replica : partition.getReplicaIds()) {
+        PutRequest putRequest = new PutRequest(1, "clientId", id, blobProperties, ByteBuffer.allocate(10),
+            ByteBuffer.allocate(10), 10, BlobType.DataBlob);
+        serverLayout.getMockServer(replica.getDataNodeId().getHostname(), replica.getDataNodeId().getPort())
+            .send(putRequest);
+      }
+      uniqueBlobIdStrings.add(id.getID());
+    }
+    List<String> blobIdStrings = new ArrayList<>();
+    for (int i : new int[]{0, 0, 1, 0, 1}) {
+      blobIdStrings.add(uniqueBlobIdStrings.get(i));
+    }
+    List<Future<Void>> futures = router.deleteBlobs(blobIdStrings);
+    assertEquals("There should be one future per blob", blobIdStrings.size(), futures.size());
+    for (Future<Void> deleteFuture : futures) {
+      deleteFuture.get(AWAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+    assertEquals("There should have been one batched delete", 1, routerMetrics.batchDeleteOperationRate.getCount());
+    assertEquals("Every blob should have been batched only once", uniqueBlobIdStrings.size(),
+        routerMetrics.batchDeleteBlobCount.getSnapshot().getMax());
+    assertEquals("There should have been no fallbacks", 0, routerMetrics.batchDeleteFallbackCount.getCount());
+    for (String blobIdString : uniqueBlobIdStrings) {
+      int deletedCount = 0;
+      for (ReplicaId replica : partition.getReplicaIds()) {
+        MockServer server =
+            serverLayout.getMockServer(replica.getDataNodeId().getHostname(), replica.getDataNodeId().getPort());
+        if (server.getBlobs().get(blobIdString).isDeleted()) {
+          deletedCount++;
+        }
+      }
+      assertTrue("Blob should have been deleted on at least as many replicas as the default success target",
+          deletedCount >= 2);
+    }
+  }
+
   /**
    * User callback that is called when the {@link DeleteOperation} is completed.
    */
@@ -14,6 +14,7 @@
 package com.github.ambry.router;
 
 import com.github.ambry.clustermap.ClusterMap;
+import com.github.ambry.commons.BlobId;
 import com.github.ambry.commons.ServerErrorCode;
 import com.github.ambry.messageformat.BlobProperties;
 import com.github.ambry.messageformat.BlobType;
@@ -22,6 +23,8 @@ import com.github.ambry.messageformat.MessageFormatRecord;
 import com.github.ambry.network.BoundedByteBufferReceive;
 import com.github.ambry.network.ByteBufferSend;
 import com.github.ambry.network.Send;
+import com.github.ambry.protocol.BatchDeleteRequest;
+import com.github.ambry.protocol.BatchDeleteResponse;
 import com.github.ambry.protocol.DeleteRequest;
 import com.github.ambry.protocol.DeleteResponse;
 import com.github.ambry.protocol.GetOption;
@@ -94,6 +97,9 @@ class MockServer {
       case DeleteRequest:
         response = makeDeleteResponse((DeleteRequest) send, serverError);
         break;
+      case BatchDeleteRequest:
+        response = makeBatchDeleteResponse((BatchDeleteRequest) send, serverError);
+        break;
       default:
         throw new IOException("Unknown request type received");
     }
@@ -123,8 +129,9 @@ class MockServer {
 
   /**
    * Make a {@link GetResponse} for the given {@link GetRequest} for which the given {@link ServerErrorCode} was
-   * encountered. The request could be for BlobInfo or for Blob (the only two options that the router would request
-   * for).
+   * encountered. The request could be for BlobInfo, for Blob or for All, and for one or more blobs of a single
+   * partition. As with a real server, if any of the blobs in the partition cannot be returned, the error is returned
+   * for the partition as a whole.
    * @param getRequest the {@link GetRequest} for which the response is being constructed.
    * @param getError the {@link ServerErrorCode} that was encountered.
    * @return the constructed {@link GetResponse}
@@ -134,7 +141,7 @@ class MockServer {
     GetResponse getResponse;
     if (getError == ServerErrorCode.No_Error) {
       List<PartitionRequestInfo> infos = getRequest.getPartitionInfoList();
-      if (infos.size() != 1 || infos.get(0).getBlobIds().size() != 1) {
+      if (infos.size() != 1 || infos.get(0).getBlobIds().size() == 0) {
         getError = ServerErrorCode.Unknown_Error;
       }
     }
@@ -166,135 +173,32 @@ class MockServer {
     }
 
     if (serverError == ServerErrorCode.No_Error) {
-      int byteBufferSize;
-      ByteBuffer byteBuffer;
-      StoreKey key = getRequest.getPartitionInfoList().get(0).getBlobIds().get(0);
-      StoredBlob blob = blobs.get(key.getID());
-      ServerErrorCode processedError = errorForGet(blob, getRequest);
-      if (processedError == ServerErrorCode.No_Error) {
-        ByteBuffer buf = blobs.get(key.getID()).serializedSentPutRequest.duplicate();
-        // read off the size
-        buf.getLong();
-        // read off the type.
-        buf.getShort();
-        PutRequest.ReceivedPutRequest originalBlobPutReq =
-            PutRequest.readFrom(new DataInputStream(new ByteBufferInputStream(buf)), clusterMap);
-        switch (getRequest.getMessageFormatFlag()) {
-          case BlobInfo:
-            BlobProperties blobProperties = originalBlobPutReq.getBlobProperties();
-            ByteBuffer userMetadata = originalBlobPutReq.getUsermetadata();
-            byteBufferSize = MessageFormatRecord.BlobProperties_Format_V1.getBlobPropertiesRecordSize(blobProperties)
-                + MessageFormatRecord.UserMetadata_Format_V1.getUserMetadataSize(userMetadata);
-            byteBuffer = ByteBuffer.allocate(byteBufferSize);
-            MessageFormatRecord.BlobProperties_Format_V1.serializeBlobPropertiesRecord(byteBuffer, blobProperties);
-            MessageFormatRecord.UserMetadata_Format_V1.serializeUserMetadataRecord(byteBuffer, userMetadata);
-            break;
-          case Blob:
-            switch (blobFormatVersion) {
-              case MessageFormatRecord.Blob_Version_V2:
-                byteBufferSize =
-                    (int) MessageFormatRecord.Blob_Format_V2.getBlobRecordSize((int) originalBlobPutReq.getBlobSize());
-                byteBuffer = ByteBuffer.allocate(byteBufferSize);
-                MessageFormatRecord.Blob_Format_V2.serializePartialBlobRecord(byteBuffer,
-                    (int) originalBlobPutReq.getBlobSize(), originalBlobPutReq.getBlobType());
-                break;
-              case MessageFormatRecord.Blob_Version_V1:
-                byteBufferSize =
-                    (int) MessageFormatRecord.Blob_Format_V1.getBlobRecordSize((int) originalBlobPutReq.getBlobSize());
-                byteBuffer = ByteBuffer.allocate(byteBufferSize);
-                MessageFormatRecord.Blob_Format_V1.serializePartialBlobRecord(byteBuffer,
-                    (int) originalBlobPutReq.getBlobSize());
-                break;
-              default:
-                throw new IllegalStateException("Blob format version " + blobFormatVersion + " not supported.");
-            }
-            byteBuffer.put(
-                Utils.readBytesFromStream(originalBlobPutReq.getBlobStream(), (int) originalBlobPutReq.getBlobSize()));
-            Crc32 crc = new Crc32();
-            crc.update(byteBuffer.array(), 0, byteBuffer.position());
-            byteBuffer.putLong(crc.getValue());
-            break;
-          case All:
-            blobProperties = originalBlobPutReq.getBlobProperties();
-            userMetadata = originalBlobPutReq.getUsermetadata();
-            int blobHeaderSize = MessageFormatRecord.MessageHeader_Format_V1.getHeaderSize();
-            int blobPropertiesSize =
-                MessageFormatRecord.BlobProperties_Format_V1.getBlobPropertiesRecordSize(blobProperties);
-            int userMetadataSize = MessageFormatRecord.UserMetadata_Format_V1.getUserMetadataSize(userMetadata);
-            int blobInfoSize = blobPropertiesSize + userMetadataSize;
-            int blobRecordSize;
-            switch (blobFormatVersion) {
-              case MessageFormatRecord.Blob_Version_V2:
-                blobRecordSize =
-                    (int) MessageFormatRecord.Blob_Format_V2.getBlobRecordSize((int) originalBlobPutReq.getBlobSize());
-                break;
-              case MessageFormatRecord.Blob_Version_V1:
-                blobRecordSize =
-                    (int) MessageFormatRecord.Blob_Format_V1.getBlobRecordSize((int) originalBlobPutReq.getBlobSize());
-                break;
-              default:
-                throw new IllegalStateException("Blob format version " + blobFormatVersion + " not supported.");
-            }
-            byteBufferSize = blobHeaderSize + key.sizeInBytes() + blobInfoSize + blobRecordSize;
-            byteBuffer = ByteBuffer.allocate(byteBufferSize);
-            try {
-              MessageFormatRecord.MessageHeader_Format_V1.serializeHeader(byteBuffer, blobInfoSize + blobRecordSize,
-                  blobHeaderSize + key.sizeInBytes(), MessageFormatRecord.Message_Header_Invalid_Relative_Offset,
-                  blobHeaderSize + key.sizeInBytes() + blobPropertiesSize,
-                  blobHeaderSize + key.sizeInBytes() + blobInfoSize);
-            } catch (MessageFormatException e) {
-              e.printStackTrace();
-            }
-            byteBuffer.put(key.toBytes());
-            MessageFormatRecord.BlobProperties_Format_V1.serializeBlobPropertiesRecord(byteBuffer, blobProperties);
-            MessageFormatRecord.UserMetadata_Format_V1.serializeUserMetadataRecord(byteBuffer, userMetadata);
-            int blobRecordStart = byteBuffer.position();
-            switch (blobFormatVersion) {
-              case MessageFormatRecord.Blob_Version_V2:
-                MessageFormatRecord.Blob_Format_V2.serializePartialBlobRecord(byteBuffer,
-                    (int) originalBlobPutReq.getBlobSize(), originalBlobPutReq.getBlobType());
-                break;
-              case MessageFormatRecord.Blob_Version_V1:
-                MessageFormatRecord.Blob_Format_V1.serializePartialBlobRecord(byteBuffer,
-                    (int) originalBlobPutReq.getBlobSize());
-                break;
-              default:
-                throw new IllegalStateException("Blob format version " + blobFormatVersion + " not supported.");
-            }
-            byteBuffer.put(
-                Utils.readBytesFromStream(originalBlobPutReq.getBlobStream(), (int) originalBlobPutReq.getBlobSize()));
-            crc = new Crc32();
-            crc.update(byteBuffer.array(), blobRecordStart, blobRecordSize - MessageFormatRecord.Crc_Size);
-            byteBuffer.putLong(crc.getValue());
-            break;
-          default:
-            throw new IOException("GetRequest flag is not supported: " + getRequest.getMessageFormatFlag());
-        }
-      } else if (processedError == ServerErrorCode.Blob_Deleted) {
-        if (partitionError == ServerErrorCode.No_Error) {
-          partitionError = ServerErrorCode.Blob_Deleted;
-        }
-        byteBuffer = ByteBuffer.allocate(0);
-        byteBufferSize = 0;
-      } else if (processedError == ServerErrorCode.Blob_Expired) {
-        if (partitionError == ServerErrorCode.No_Error) {
-          partitionError = ServerErrorCode.Blob_Expired;
+      List<MessageInfo> messageInfoList = new ArrayList<MessageInfo>();
+      List<ByteBuffer> byteBuffers = new ArrayList<ByteBuffer>();
+      int totalSize = 0;
+      for (StoreKey key : getRequest.getPartitionInfoList().get(0).getBlobIds()) {
+        ServerErrorCode processedError = errorForGet(blobs.get(key.getID()), getRequest);
+        if (processedError != ServerErrorCode.No_Error) {
+          if (partitionError == ServerErrorCode.No_Error) {
+            partitionError = processedError;
+          }
+          break;
         }
-        byteBuffer = ByteBuffer.allocate(0);
-        byteBufferSize = 0;
-      } else {
-        if (partitionError == ServerErrorCode.No_Error) {
-          partitionError = ServerErrorCode.Blob_Not_Found;
+        ByteBuffer byteBuffer = serializeBlobForGet(key, getRequest);
+        byteBuffer.flip();
+        byteBuffers.add(byteBuffer);
+        totalSize += byteBuffer.remaining();
+        messageInfoList.add(new MessageInfo(key, byteBuffer.remaining()));
+      }
+      ByteBuffer payload = ByteBuffer.allocate(partitionError == ServerErrorCode.No_Error ? totalSize : 0);
+      if (partitionError == ServerErrorCode.No_Error) {
+        for (ByteBuffer byteBuffer : byteBuffers) {
+          payload.put(byteBuffer);
         }
-        byteBuffer = ByteBuffer.allocate(0);
-        byteBufferSize = 0;
       }
-
-      byteBuffer.flip();
-      ByteBufferSend responseSend = new ByteBufferSend(byteBuffer);
-      List<MessageInfo> messageInfoList = new ArrayList<MessageInfo>(1);
+      payload.flip();
+      ByteBufferSend responseSend = new ByteBufferSend(payload);
       List<PartitionResponseInfo> partitionResponseInfoList = new ArrayList<PartitionResponseInfo>();
-      messageInfoList.add(new MessageInfo(key, byteBufferSize));
       PartitionResponseInfo partitionResponseInfo =
           partitionError == ServerErrorCode.No_Error ? new PartitionResponseInfo(
               getRequest.getPartitionInfoList().get(0).getPartition(), messageInfoList)
@@ -309,6 +213,117 @@ class MockServer {
     return getResponse;
   }
 
+  /**
+   * Serialize the stored blob with the given key in the format requested by the given {@link GetRequest}.
+   * @param key the {@link StoreKey} of the blob.
+   * @param getRequest the {@link GetRequest} that is being served.
+   * @return the serialized blob. The buffer is not flipped.
+   * @throws IOException if there was an error serializing the blob.
+   */
+  private ByteBuffer serializeBlobForGet(StoreKey key, GetRequest getRequest) throws IOException {
+    int byteBufferSize;
+    ByteBuffer byteBuffer;
+    ByteBuffer buf = blobs.get(key.getID()).serializedSentPutRequest.duplicate();
+    // read off the size
+    buf.getLong();
+    // read off the type.
+    buf.getShort();
+    PutRequest.ReceivedPutRequest originalBlobPutReq =
+        PutRequest.readFrom(new DataInputStream(new ByteBufferInputStream(buf)), clusterMap);
+    switch (getRequest.getMessageFormatFlag()) {
+      case BlobInfo:
+        BlobProperties blobProperties = originalBlobPutReq.getBlobProperties();
+        ByteBuffer userMetadata = originalBlobPutReq.getUsermetadata();
+        byteBufferSize = MessageFormatRecord.BlobProperties_Format_V1.getBlobPropertiesRecordSize(blobProperties)
+            + MessageFormatRecord.UserMetadata_Format_V1.getUserMetadataSize(userMetadata);
+        byteBuffer = ByteBuffer.allocate(byteBufferSize);
+        MessageFormatRecord.BlobProperties_Format_V1.serializeBlobPropertiesRecord(byteBuffer, blobProperties);
+        MessageFormatRecord.UserMetadata_Format_V1.serializeUserMetadataRecord(byteBuffer, userMetadata);
+        break;
+      case Blob:
+        switch (blobFormatVersion) {
+          case MessageFormatRecord.Blob_Version_V2:
+            byteBufferSize =
+                (int) MessageFormatRecord.Blob_Format_V2.getBlobRecordSize((int) originalBlobPutReq.getBlobSize());
+            byteBuffer = ByteBuffer.allocate(byteBufferSize);
+            MessageFormatRecord.Blob_Format_V2.serializePartialBlobRecord(byteBuffer,
+                (int) originalBlobPutReq.getBlobSize(), originalBlobPutReq.getBlobType());
+            break;
+          case MessageFormatRecord.Blob_Version_V1:
+            byteBufferSize =
+                (int) MessageFormatRecord.Blob_Format_V1.getBlobRecordSize((int) originalBlobPutReq.getBlobSize());
+            byteBuffer = ByteBuffer.allocate(byteBufferSize);
+            MessageFormatRecord.Blob_Format_V1.serializePartialBlobRecord(byteBuffer,
+                (int) originalBlobPutReq.getBlobSize());
+            break;
+          default:
+            throw new IllegalStateException("Blob format version " + blobFormatVersion + " not supported.");
+        }
+        byteBuffer.put(
+            Utils.readBytesFromStream(originalBlobPutReq.getBlobStream(), (int) originalBlobPutReq.getBlobSize()));
+        Crc32 crc = new Crc32();
+        crc.update(byteBuffer.array(), 0, byteBuffer.position());
+        byteBuffer.putLong(crc.getValue());
+        break;
+      case All:
+        blobProperties = originalBlobPutReq.getBlobProperties();
+        userMetadata = originalBlobPutReq.getUsermetadata();
+        int blobHeaderSize = MessageFormatRecord.MessageHeader_Format_V1.getHeaderSize();
+        int blobPropertiesSize =
+            MessageFormatRecord.BlobProperties_Format_V1.getBlobPropertiesRecordSize(blobProperties);
+        int userMetadataSize = MessageFormatRecord.UserMetadata_Format_V1.getUserMetadataSize(userMetadata);
+        int blobInfoSize = blobPropertiesSize + userMetadataSize;
+        int blobRecordSize;
+        switch (blobFormatVersion) {
+          case MessageFormatRecord.Blob_Version_V2:
+            blobRecordSize =
+                (int) MessageFormatRecord.Blob_Format_V2.getBlobRecordSize((int) originalBlobPutReq.getBlobSize());
+            break;
+          case MessageFormatRecord.Blob_Version_V1:
+            blobRecordSize =
+                (int) MessageFormatRecord.Blob_Format_V1.getBlobRecordSize((int) originalBlobPutReq.getBlobSize());
+            break;
+          default:
+            throw new IllegalStateException("Blob format version " + blobFormatVersion + " not supported.");
+        }
+        byteBufferSize = blobHeaderSize + key.sizeInBytes() + blobInfoSize + blobRecordSize;
+        byteBuffer = ByteBuffer.allocate(byteBufferSize);
+        try {
+          MessageFormatRecord.MessageHeader_Format_V1.serializeHeader(byteBuffer, blobInfoSize + blobRecordSize,
+              blobHeaderSize + key.sizeInBytes(), MessageFormatRecord.Message_Header_Invalid_Relative_Offset,
+              blobHeaderSize + key.sizeInBytes() + blobPropertiesSize,
+              blobHeaderSize + key.sizeInBytes() + blobInfoSize);
+        } catch (MessageFormatException e) {
+          e.printStackTrace();
+        }
+        byteBuffer.put(key.toBytes());
+        MessageFormatRecord.BlobProperties_Format_V1.serializeBlobPropertiesRecord(byteBuffer, blobProperties);
+        MessageFormatRecord.UserMetadata_Format_V1.serializeUserMetadataRecord(byteBuffer, userMetadata);
+        int blobRecordStart = byteBuffer.position();
+        switch (blobFormatVersion) {
+          case MessageFormatRecord.Blob_Version_V2:
+            MessageFormatRecord.Blob_Format_V2.serializePartialBlobRecord(byteBuffer,
+                (int) originalBlobPutReq.getBlobSize(), originalBlobPutReq.getBlobType());
+            break;
+          case MessageFormatRecord.Blob_Version_V1:
+            MessageFormatRecord.Blob_Format_V1.serializePartialBlobRecord(byteBuffer,
+                (int) originalBlobPutReq.getBlobSize());
+            break;
+          default:
+            throw new IllegalStateException("Blob format version " + blobFormatVersion + " not supported.");
+        }
+        byteBuffer.put(
+            Utils.readBytesFromStream(originalBlobPutReq.getBlobStream(), (int) originalBlobPutReq.getBlobSize()));
+        crc = new Crc32();
+        crc.update(byteBuffer.array(), blobRecordStart, blobRecordSize - MessageFormatRecord.Crc_Size);
+        byteBuffer.putLong(crc.getValue());
+        break;
+      default:
+        throw new IOException("GetRequest flag is not supported: " + getRequest.getMessageFormatFlag());
+    }
+    return byteBuffer;
+  }
+
   ServerErrorCode errorForGet(StoredBlob blob, GetRequest getRequest) {
     ServerErrorCode retCode = ServerErrorCode.No_Error;
     if (blob == null) {
@@ -339,6 +354,35 @@ class MockServer {
     return new DeleteResponse(deleteRequest.getCorrelationId(), deleteRequest.getClientId(), deleteError);
   }
 
+  /**
+   * Make a {@link BatchDeleteResponse} for the given {@link BatchDeleteRequest} for which the given
+   * {@link ServerErrorCode} was encountered. If there was no error, every blob in the request that is present is
+   * marked as deleted, and the response carries {@link ServerErrorCode#Blob_Not_Found} for the blobs that are not.
+   * @param batchDeleteRequest the {@link BatchDeleteRequest} for which the response is being constructed.
+   * @param deleteError the {@link ServerErrorCode} that was encountered.
+   * @return the constructed {@link BatchDeleteResponse}
+   */
+  BatchDeleteResponse makeBatchDeleteResponse(BatchDeleteRequest batchDeleteRequest, ServerErrorCode deleteError) {
+    if (deleteError != ServerErrorCode.No_Error) {
+      return new BatchDeleteResponse(batchDeleteRequest.getCorrelationId(), batchDeleteRequest.getClientId(),
+          deleteError);
+    }
+    List<ServerErrorCode> blobErrors = new ArrayList<>();
+    for (BlobId blobId : batchDeleteRequest.getBlobIds()) {
+      StoredBlob blob = blobs.get(blobId.getID());
+      if (blob == null) {
+        blobErrors.add(ServerErrorCode.Blob_Not_Found);
+      } else if (blob.isDeleted()) {
+        blobErrors.add(ServerErrorCode.Blob_Deleted);
+      } else {
+        blob.markAsDeleted();
+        blobErrors.add(ServerErrorCode.No_Error);
+      }
+    }
+    return new BatchDeleteResponse(batchDeleteRequest.getCorrelationId(), batchDeleteRequest.getClientId(),
+        ServerErrorCode.No_Error, blobErrors);
+  }
+
   /**
    * Serialize contents of the PutRequest and update the blob map with the serialized content.
    * @param putRequest the PutRequest
@@ -15,7 +15,10 @@ package com.github.ambry.router;
 
 import com.github.ambry.clustermap.DataNodeId;
 import com.github.ambry.clustermap.MockClusterMap;
+import com.github.ambry.clustermap.PartitionId;
 import com.github.ambry.clustermap.ReplicaId;
+import com.github.ambry.commons.BlobId;
+import com.github.ambry.commons.ByteBufferAsyncWritableChannel;
 import com.github.ambry.commons.ByteBufferReadableStreamChannel;
 import com.github.ambry.commons.LoggingNotificationSystem;
 import com.github.ambry.commons.ResponseHandler;
@@ -35,8 +38,10 @@ import com.github.ambry.utils.Utils;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
 import java.util.Set;
@@ -518,6 +523,135 @@ public class NonBlockingRouterTest {
     Assert.assertEquals("All operations should have completed", 0, router.getOperationsCount());
   }
 
+  /**
+   * Test {@link NonBlockingRouter#getBlobs(List, GetBlobOptions)} and {@link NonBlockingRouter#deleteBlobs(List)} with
+   * a mix of simple and composite blobs, and ensure that a failure for one blob does not fail the others.
+   */
+  @Test
+  public void testBatchedGetAndDelete() throws Exception {
+    final int SIMPLE_BLOB_COUNT = 10;
+    maxPutChunkSize = PUT_CONTENT_SIZE / 2;
+    setRouter();
+    List<String> blobIds = new ArrayList<>();
+    List<byte[]> contents = new ArrayList<>();
+    for (int i = 0; i < SIMPLE_BLOB_COUNT; i++) {
+      setOperationParams();
+      byte[] content = new byte[maxPutChunkSize];
+      random.nextBytes(content);
+      blobIds.add(router.putBlob(putBlobProperties, putUserMetadata,
+          new ByteBufferReadableStreamChannel(ByteBuffer.wrap(content))).get());
+      contents.add(content);
+    }
+    // a composite blob.
+    setOperationParams();
+    blobIds.add(router.putBlob(putBlobProperties, putUserMetadata, putChannel).get());
+    contents.add(putContent);
+
+    List<Future<GetBlobResult>> getFutures = router.getBlobs(blobIds, new GetBlobOptionsBuilder().build());
+    Assert.assertEquals("There should be one future per blob", blobIds.size(), getFutures.size());
+    for (int i = 0; i < blobIds.size(); i++) {
+      assertContentEquals(contents.get(i), getFutures.get(i).get(AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+    getFutures = router.getBlobs(blobIds,
+        new GetBlobOptionsBuilder().operationType(GetBlobOptions.OperationType.BlobInfo).build());
+    for (int i = 0; i < blobIds.size(); i++) {
+      GetBlobResult result = getFutures.get(i).get(AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      Assert.assertNull("There should be no data channel for a BlobInfo get", result.getBlobDataChannel());
+      Assert.assertEquals("Blob size does not match", contents.get(i).length,
+          result.getBlobInfo().getBlobProperties().getBlobSize());
+    }
+
+    // delete one of the blobs and ensure the rest can still be fetched.
+    String deletedBlobId = blobIds.get(0);
+    router.deleteBlob(deletedBlobId).get();
+    getFutures = router.getBlobs(blobIds, new GetBlobOptionsBuilder().build());
+    try {
+      getFutures.get(0).get(AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      Assert.fail("Get of a deleted blob should have failed");
+    } catch (ExecutionException e) {
+      Assert.assertEquals("Unexpected error", RouterErrorCode.BlobDeleted,
+          ((RouterException) e.getCause()).getErrorCode());
+    }
+    for (int i = 1; i < blobIds.size(); i++) {
+      assertContentEquals(contents.get(i), getFutures.get(i).get(AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    List<Future<Void>> deleteFutures = router.deleteBlobs(blobIds);
+    Assert.assertEquals("There should be one future per blob", blobIds.size(), deleteFutures.size());
+    for (Future<Void> deleteFuture : deleteFutures) {
+      deleteFuture.get(AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+    getFutures = router.getBlobs(blobIds, new GetBlobOptionsBuilder().build());
+    for (Future<GetBlobResult> getFuture : getFutures) {
+      try {
+        getFuture.get(AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        Assert.fail("Get of a deleted blob should have failed");
+      } catch (ExecutionException e) {
+        Assert.assertEquals("Unexpected error", RouterErrorCode.BlobDeleted,
+            ((RouterException) e.getCause()).getErrorCode());
+      }
+    }
+    router.close();
+    assertClosed();
+    Assert.assertEquals("All operations should have completed", 0, router.getOperationsCount());
+  }
+
+  /**
+   * Test {@link NonBlockingRouter#getBlobs(List, GetBlobOptions)} with a list in which the same blob id appears more
+   * than once, and ensure that every occurrence gets its own, complete result.
+   */
+  @Test
+  public void testBatchedGetWithDuplicateIds() throws Exception {
+    setRouter();
+    List<String> uniqueBlobIds = new ArrayList<>();
+    List<byte[]> uniqueContents = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      setOperationParams();
+      uniqueBlobIds.add(router.putBlob(putBlobProperties, putUserMetadata, putChannel).get());
+      uniqueContents.add(putContent);
+    }
+    List<String> blobIds = new ArrayList<>();
+    List<byte[]> contents = new ArrayList<>();
+    for (int i : new int[]{0, 0, 1, 0, 1}) {
+      blobIds.add(uniqueBlobIds.get(i));
+      contents.add(uniqueContents.get(i));
+    }
+    List<Future<GetBlobResult>> getFutures = router.getBlobs(blobIds, new GetBlobOptionsBuilder().build());
+    Assert.assertEquals("There should be one future per blob", blobIds.size(), getFutures.size());
+    for (int i = 0; i < blobIds.size(); i++) {
+      assertContentEquals(contents.get(i), getFutures.get(i).get(AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+    getFutures = router.getBlobs(blobIds,
+        new GetBlobOptionsBuilder().operationType(GetBlobOptions.OperationType.BlobInfo).build());
+    for (int i = 0; i < blobIds.size(); i++) {
+      GetBlobResult result = getFutures.get(i).get(AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      Assert.assertEquals("Blob size does not match", contents.get(i).length,
+          result.getBlobInfo().getBlobProperties().getBlobSize());
+    }
+    router.close();
+    assertClosed();
+    Assert.assertEquals("All operations should have completed", 0, router.getOperationsCount());
+  }
+
+  /**
+   * Read the content of the blob in the given {@link GetBlobResult} and compare it with the expected content.
+   * @param expected the expected content.
+   * @param result the {@link GetBlobResult} returned by the router.
+   * @throws Exception
+   */
+  private void assertContentEquals(byte[] expected, GetBlobResult result) throws Exception {
+    ByteBufferAsyncWritableChannel channel = new ByteBufferAsyncWritableChannel();
+    Future<Long> readIntoFuture = result.getBlobDataChannel().readInto(channel, null);
+    ByteBuffer content = ByteBuffer.allocate(expected.length);
+    while (content.hasRemaining()) {
+      ByteBuffer buf = channel.getNextChunk();
+      content.put(buf);
+      channel.resolveOldestChunk(null);
+    }
+    Assert.assertEquals("Unexpected number of bytes read", expected.length, (long) readIntoFuture.get());
+    Assert.assertArrayEquals("Get and Put blob content should match", expected, content.array());
+  }
+
   /**
    * Test that multiple scaling units can be instantiated, exercised and closed.
    */
@@ -542,6 +676,90 @@ public class NonBlockingRouterTest {
     assertClosed();
   }
 
+  /**
+   * Test that operations complete when they are routed to scaling units by the partitions of their blobs, including
+   * multi-blob operations that span scaling units and operations on invalid blob ids.
+   */
+  @Test
+  public void testMultipleScalingUnitWithPartitionAffinity() throws Exception {
+    final int SCALING_UNITS = 3;
+    Properties props = getNonBlockingRouterProperties("DC1");
+    props.setProperty("router.scaling.unit.count", Integer.toString(SCALING_UNITS));
+    props.setProperty("router.scaling.unit.partition.affinity.enabled", "true");
+    setRouter(props, new MockServerLayout(mockClusterMap));
+    assertExpectedThreadCounts(SCALING_UNITS + 1, SCALING_UNITS);
+
+    List<String> blobIds = new ArrayList<>();
+    List<byte[]> contents = new ArrayList<>();
+    for (int i = 0; i < SCALING_UNITS * 10; i++) {
+      setOperationParams();
+      String blobId = router.putBlob(putBlobProperties, putUserMetadata, putChannel).get();
+      assertContentEquals(putContent, router.getBlob(blobId, new GetBlobOptionsBuilder().build())
+          .get(AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+      blobIds.add(blobId);
+      contents.add(putContent);
+    }
+    // The callbacks of an operation are invoked by the thread of the scaling unit that handles it, so every submission
+    // on the blobs of a partition should complete on the same thread, and the partitions should be spread across the
+    // scaling units.
+    Map<PartitionId, String> partitionToThreadName = new HashMap<>();
+    for (String blobId : blobIds) {
+      PartitionId partitionId = new BlobId(blobId, mockClusterMap).getPartition();
+      for (int i = 0; i < 2; i++) {
+        String threadName = getHandlingThreadName(blobId);
+        Assert.assertTrue("Operation should have been handled by a scaling unit: " + threadName,
+            threadName.startsWith("RequestResponseHandlerThread-"));
+        String expectedThreadName = partitionToThreadName.get(partitionId);
+        if (expectedThreadName == null) {
+          partitionToThreadName.put(partitionId, threadName);
+        } else {
+          Assert.assertEquals("Operations on the blobs of partition " + partitionId
+              + " should be handled by the same scaling unit", expectedThreadName, threadName);
+        }
+      }
+    }
+    Assert.assertTrue("Partitions should be spread across scaling units",
+        new HashSet<>(partitionToThreadName.values()).size() > 1);
+    List<Future<GetBlobResult>> getFutures = router.getBlobs(blobIds, new GetBlobOptionsBuilder().build());
+    for (int i = 0; i < blobIds.size(); i++) {
+      assertContentEquals(contents.get(i), getFutures.get(i).get(AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+    router.deleteBlob(blobIds.remove(0)).get(AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    for (Future<Void> deleteFuture : router.deleteBlobs(blobIds)) {
+      deleteFuture.get(AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+    try {
+      router.getBlob("invalidBlobId", new GetBlobOptionsBuilder().build()).get(AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      Assert.fail("Get of an invalid blob id should have failed");
+    } catch (ExecutionException e) {
+      Assert.assertEquals("Unexpected error", RouterErrorCode.InvalidBlobId,
+          ((RouterException) e.getCause()).getErrorCode());
+    }
+    router.close();
+    assertExpectedThreadCounts(0, 0);
+  }
+
+  /**
+   * Gets the info of the given blob and returns the name of the thread that invoked the callback of the operation.
+   * @param blobId the id of the blob.
+   * @return the name of the thread that completed the operation.
+   * @throws Exception
+   */
+  private String getHandlingThreadName(String blobId) throws Exception {
+    final AtomicReference<String> threadName = new AtomicReference<>();
+    final CountDownLatch callbackCalled = new CountDownLatch(1);
+    router.getBlob(blobId, new GetBlobOptionsBuilder().operationType(GetBlobOptions.OperationType.BlobInfo).build(),
+        new Callback<GetBlobResult>() {
+          @Override
+          public void onCompletion(GetBlobResult result, Exception exception) {
+            threadName.set(Thread.currentThread().getName());
+            callbackCalled.countDown();
+          }
+        });
+    Assert.assertTrue("Callback was not invoked", callbackCalled.await(AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    return threadName.get();
+  }
+
   /**
    * Response handling related tests for all operation managers.
    */
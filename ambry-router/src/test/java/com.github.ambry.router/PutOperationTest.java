@@ -101,7 +101,7 @@ public class PutOperationTest {
     MockNetworkClient mockNetworkClient = new MockNetworkClient();
     PutOperation op =
         new PutOperation(routerConfig, routerMetrics, mockClusterMap, responseHandler, blobProperties, userMetadata,
-            channel, future, null, new RouterCallback(mockNetworkClient, new ArrayList<StoreKey>()), null, time);
+            channel, future, null, new RouterCallback(mockNetworkClient, new ArrayList<StoreKey>()), null, null, time);
     op.startReadingFromChannel();
     List<RequestInfo> requestInfos = new ArrayList<>();
     requestRegistrationCallback.requestListToFill = requestInfos;
@@ -188,6 +188,125 @@ public class PutOperationTest {
     Assert.assertTrue("Operation should be complete at this time", op.isOperationComplete());
   }
 
+  /**
+   * Test that a speculative slipped put is started for a chunk whose put is slow to complete, that the operation
+   * completes with the blob id of whichever attempt succeeds first and that the blob of the other attempt is scheduled
+   * for deletion only once all the outstanding requests of that attempt have been answered.
+   */
+  @Test
+  public void testSpeculativeSlippedPut() throws Exception {
+    List<StoreKey> idsToDelete = new ArrayList<>();
+    PutAttemptCleaner putAttemptCleaner =
+        new PutAttemptCleaner(new RouterCallback(new MockNetworkClient(), idsToDelete), Long.MAX_VALUE, time);
+    List<RequestInfo> firstAttemptRequestInfos = new ArrayList<>();
+    PutOperation op = startSpeculativeSlippedPut(putAttemptCleaner, idsToDelete, firstAttemptRequestInfos);
+
+    // the put requests of the first attempt are still outstanding, so its blob cannot be deleted yet.
+    Assert.assertEquals("The blob of the first attempt should not be scheduled for deletion yet", 0,
+        idsToDelete.size());
+    Assert.assertEquals("The first attempt should be pending cleanup", 1, putAttemptCleaner.getPendingAttemptCount());
+    // the responses of the first attempt arrive after the speculative attempt has succeeded.
+    for (int i = 0; i < firstAttemptRequestInfos.size(); i++) {
+      RequestInfo requestInfo = firstAttemptRequestInfos.get(i);
+      Assert.assertTrue("The response should be handled by the cleaner",
+          putAttemptCleaner.onResponse(((RequestOrResponse) requestInfo.getRequest()).getCorrelationId()));
+      Assert.assertEquals("The blob should only be scheduled for deletion after the last response",
+          i == firstAttemptRequestInfos.size() - 1 ? 1 : 0, idsToDelete.size());
+    }
+    Assert.assertEquals("No attempt should be pending cleanup", 0, putAttemptCleaner.getPendingAttemptCount());
+    Assert.assertFalse("The blob of the first attempt should not be the result",
+        idsToDelete.get(0).getID().equals(op.getBlobIdString()));
+    Assert.assertEquals("Speculative put success should be counted", 1,
+        routerMetrics.speculativePutSuccessCount.getCount());
+  }
+
+  /**
+   * Test that the blob of an abandoned speculative put attempt is scheduled for deletion once the attempt expires, even
+   * if some of its requests are never answered.
+   */
+  @Test
+  public void testAbandonedPutAttemptExpiry() throws Exception {
+    final long expiryMs = 1000;
+    List<StoreKey> idsToDelete = new ArrayList<>();
+    PutAttemptCleaner putAttemptCleaner =
+        new PutAttemptCleaner(new RouterCallback(new MockNetworkClient(), idsToDelete), expiryMs, time);
+    List<RequestInfo> firstAttemptRequestInfos = new ArrayList<>();
+    startSpeculativeSlippedPut(putAttemptCleaner, idsToDelete, firstAttemptRequestInfos);
+    Assert.assertTrue("The response should be handled by the cleaner", putAttemptCleaner.onResponse(
+        ((RequestOrResponse) firstAttemptRequestInfos.get(0).getRequest()).getCorrelationId()));
+    time.sleep(expiryMs - 1);
+    putAttemptCleaner.cleanupExpiredAttempts();
+    Assert.assertEquals("The blob should not be scheduled for deletion before expiry", 0, idsToDelete.size());
+    time.sleep(1);
+    putAttemptCleaner.cleanupExpiredAttempts();
+    Assert.assertEquals("The blob should be scheduled for deletion on expiry", 1, idsToDelete.size());
+    Assert.assertEquals("No attempt should be pending cleanup", 0, putAttemptCleaner.getPendingAttemptCount());
+    Assert.assertFalse("A late response should not be handled by the cleaner", putAttemptCleaner.onResponse(
+        ((RequestOrResponse) firstAttemptRequestInfos.get(1).getRequest()).getCorrelationId()));
+    Assert.assertEquals("The blob should be scheduled for deletion only once", 1, idsToDelete.size());
+  }
+
+  /**
+   * Start the put of a single chunk blob, let a speculative slipped put be started for it and succeed the speculative
+   * attempt while the requests of the first attempt are still outstanding.
+   * @param putAttemptCleaner the {@link PutAttemptCleaner} to use.
+   * @param idsToDelete the list to which the router callback of the operation adds the ids to delete.
+   * @param firstAttemptRequestInfos the list to fill with the requests sent out for the first attempt.
+   * @return the {@link PutOperation}, which has completed successfully.
+   * @throws Exception
+   */
+  private PutOperation startSpeculativeSlippedPut(PutAttemptCleaner putAttemptCleaner, List<StoreKey> idsToDelete,
+      List<RequestInfo> firstAttemptRequestInfos) throws Exception {
+    final int thresholdMs = 100;
+    Properties properties = new Properties();
+    properties.setProperty("router.hostname", "localhost");
+    properties.setProperty("router.datacenter.name", "DC1");
+    properties.setProperty("router.max.put.chunk.size.bytes", Integer.toString(chunkSize));
+    properties.setProperty("router.put.request.parallelism", Integer.toString(requestParallelism));
+    properties.setProperty("router.put.success.target", Integer.toString(successTarget));
+    properties.setProperty("router.put.speculative.slipped.put.enabled", "true");
+    properties.setProperty("router.put.speculative.slipped.put.threshold.ms", Integer.toString(thresholdMs));
+    RouterConfig speculativeRouterConfig = new RouterConfig(new VerifiableProperties(properties));
+    BlobProperties blobProperties =
+        new BlobProperties(-1, "serviceId", "memberId", "contentType", false, Utils.Infinite_Time);
+    byte[] content = new byte[chunkSize];
+    random.nextBytes(content);
+    ReadableStreamChannel channel = new ByteBufferReadableStreamChannel(ByteBuffer.wrap(content));
+    PutOperation op =
+        new PutOperation(speculativeRouterConfig, routerMetrics, mockClusterMap, responseHandler, blobProperties,
+            new byte[10], channel, new FutureResult<String>(), null,
+            new RouterCallback(new MockNetworkClient(), idsToDelete), putAttemptCleaner, null, time);
+    op.startReadingFromChannel();
+    op.fillChunks();
+    requestRegistrationCallback.requestListToFill = firstAttemptRequestInfos;
+    op.poll(requestRegistrationCallback);
+    Assert.assertEquals("Requests should have been sent for the first attempt", requestParallelism,
+        firstAttemptRequestInfos.size());
+
+    // no speculative put before the threshold.
+    List<RequestInfo> requestInfos = new ArrayList<>();
+    requestRegistrationCallback.requestListToFill = requestInfos;
+    time.sleep(thresholdMs - 1);
+    op.poll(requestRegistrationCallback);
+    Assert.assertEquals("No speculative put should have been started yet", 0, requestInfos.size());
+    time.sleep(1);
+    op.poll(requestRegistrationCallback);
+    Assert.assertEquals("Requests should have been sent for the speculative attempt", requestParallelism,
+        requestInfos.size());
+    op.poll(requestRegistrationCallback);
+    Assert.assertEquals("Only one speculative put should be started", requestParallelism, requestInfos.size());
+
+    // succeed the speculative attempt.
+    ResponseInfo responseInfo = getResponseInfo(requestInfos.get(0));
+    PutResponse putResponse =
+        PutResponse.readFrom(new DataInputStream(new ByteBufferInputStream(responseInfo.getResponse())));
+    op.handleResponse(responseInfo, putResponse);
+    op.poll(requestRegistrationCallback);
+    Assert.assertTrue("Operation should be complete", op.isOperationComplete());
+    Assert.assertNull("Operation should have succeeded", op.getOperationException());
+    return op;
+  }
+
   /**
    *  Reset the correlation id field of a {@link PutRequest} to 0.
    */
@@ -40,6 +40,8 @@ import com.github.ambry.network.ConnectionPool;
 import com.github.ambry.network.Port;
 import com.github.ambry.network.PortType;
 import com.github.ambry.network.SSLBlockingChannel;
+import com.github.ambry.protocol.BatchDeleteRequest;
+import com.github.ambry.protocol.BatchDeleteResponse;
 import com.github.ambry.protocol.DeleteRequest;
 import com.github.ambry.protocol.DeleteResponse;
 import com.github.ambry.protocol.GetOption;
@@ -276,6 +278,38 @@ public final class ServerTestUtil {
       stream = channel.receive().getInputStream();
       GetResponse resp4 = GetResponse.readFrom(new DataInputStream(stream), clusterMap);
       assertEquals(ServerErrorCode.Blob_Not_Found, resp4.getPartitionResponseInfoList().get(0).getErrorCode());
+
+      // batch delete blob 2, blob 3 and a blob that does not exist
+      List<BlobId> idsToDelete = new ArrayList<BlobId>();
+      idsToDelete.add(blobId2);
+      idsToDelete.add(blobId3);
+      idsToDelete.add(new BlobId(partitionIds.get(0)));
+      BatchDeleteRequest batchDeleteRequest = new BatchDeleteRequest(1, "clientid2", idsToDelete);
+      channel.send(batchDeleteRequest);
+      stream = channel.receive().getInputStream();
+      BatchDeleteResponse batchDeleteResponse = BatchDeleteResponse.readFrom(new DataInputStream(stream));
+      assertEquals(ServerErrorCode.No_Error, batchDeleteResponse.getError());
+      assertEquals(Arrays.asList(ServerErrorCode.No_Error, ServerErrorCode.No_Error, ServerErrorCode.Blob_Not_Found),
+          batchDeleteResponse.getBlobErrors());
+      // deleting again reports the blobs as already deleted
+      batchDeleteRequest = new BatchDeleteRequest(2, "clientid2", idsToDelete);
+      channel.send(batchDeleteRequest);
+      stream = channel.receive().getInputStream();
+      batchDeleteResponse = BatchDeleteResponse.readFrom(new DataInputStream(stream));
+      assertEquals(ServerErrorCode.No_Error, batchDeleteResponse.getError());
+      assertEquals(
+          Arrays.asList(ServerErrorCode.Blob_Deleted, ServerErrorCode.Blob_Deleted, ServerErrorCode.Blob_Not_Found),
+          batchDeleteResponse.getBlobErrors());
+      ids.clear();
+      ids.add(blobId3);
+      partitionRequestInfoList.clear();
+      partitionRequestInfoList.add(new PartitionRequestInfo(partition, ids));
+      GetRequest getRequest5 =
+          new GetRequest(1, "clientid2", MessageFormatFlags.BlobProperties, partitionRequestInfoList, GetOption.None);
+      channel.send(getRequest5);
+      stream = channel.receive().getInputStream();
+      GetResponse resp5 = GetResponse.readFrom(new DataInputStream(stream), clusterMap);
+      assertEquals(ServerErrorCode.Blob_Deleted, resp5.getPartitionResponseInfoList().get(0).getErrorCode());
       channel.disconnect();
     } catch (Exception e) {
       e.printStackTrace();
@@ -21,6 +21,7 @@ import com.github.ambry.clustermap.HardwareState;
 import com.github.ambry.clustermap.PartitionId;
 import com.github.ambry.clustermap.PartitionState;
 import com.github.ambry.clustermap.ReplicaId;
+import com.github.ambry.commons.BlobId;
 import com.github.ambry.commons.ServerErrorCode;
 import com.github.ambry.messageformat.DeleteMessageFormatInputStream;
 import com.github.ambry.messageformat.MessageFormatErrorCodes;
@@ -38,6 +39,8 @@ import com.github.ambry.network.Send;
 import com.github.ambry.network.ServerNetworkResponseMetrics;
 import com.github.ambry.notification.BlobReplicaSourceType;
 import com.github.ambry.notification.NotificationSystem;
+import com.github.ambry.protocol.BatchDeleteRequest;
+import com.github.ambry.protocol.BatchDeleteResponse;
 import com.github.ambry.protocol.DeleteRequest;
 import com.github.ambry.protocol.DeleteResponse;
 import com.github.ambry.protocol.GetOption;
@@ -47,10 +50,14 @@ import com.github.ambry.protocol.PartitionRequestInfo;
 import com.github.ambry.protocol.PartitionResponseInfo;
 import com.github.ambry.protocol.PutRequest;
 import com.github.ambry.protocol.PutResponse;
+import com.github.ambry.protocol.ReplicaFileChunkRequest;
+import com.github.ambry.protocol.ReplicaFileChunkResponse;
 import com.github.ambry.protocol.ReplicaMetadataRequest;
 import com.github.ambry.protocol.ReplicaMetadataRequestInfo;
 import com.github.ambry.protocol.ReplicaMetadataResponse;
 import com.github.ambry.protocol.ReplicaMetadataResponseInfo;
+import com.github.ambry.protocol.ReplicaSnapshotRequest;
+import com.github.ambry.protocol.ReplicaSnapshotResponse;
 import com.github.ambry.protocol.RequestOrResponseType;
 import com.github.ambry.replication.ReplicationManager;
 import com.github.ambry.store.FindInfo;
@@ -63,14 +70,22 @@ import com.github.ambry.store.StoreErrorCodes;
 import com.github.ambry.store.StoreException;
 import com.github.ambry.store.StoreGetOptions;
 import com.github.ambry.store.StoreInfo;
+import com.github.ambry.store.StoreKey;
 import com.github.ambry.store.StoreKeyFactory;
+import com.github.ambry.store.StoreSnapshot;
 import com.github.ambry.utils.SystemTime;
 import com.github.ambry.utils.Utils;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -125,9 +140,18 @@ public class AmbryRequests implements RequestAPI {
         case DeleteRequest:
           handleDeleteRequest(request);
           break;
+        case BatchDeleteRequest:
+          handleBatchDeleteRequest(request);
+          break;
         case ReplicaMetadataRequest:
           handleReplicaMetadataRequest(request);
           break;
+        case ReplicaSnapshotRequest:
+          handleReplicaSnapshotRequest(request);
+          break;
+        case ReplicaFileChunkRequest:
+          handleReplicaFileChunkRequest(request);
+          break;
         default:
           throw new UnsupportedOperationException("Request type not supported");
       }
@@ -313,7 +337,8 @@ public class AmbryRequests implements RequestAPI {
       }
       CompositeSend compositeSend = new CompositeSend(messagesToSendList);
       response = new GetResponse(getRequest.getCorrelationId(), getRequest.getClientId(), partitionResponseInfoList,
-          compositeSend, ServerErrorCode.No_Error);
+          compositeSend, ServerErrorCode.No_Error, getRequest.getAcceptedCompressionCodec());
+      metrics.updateResponseCompressionMetrics(response.getCompressedPayload());
     } catch (Exception e) {
       logger.error("Unknown exception for request " + getRequest, e);
       response =
@@ -402,6 +427,144 @@ public class AmbryRequests implements RequestAPI {
             metrics.deleteBlobTotalTimeInMs, null, null, totalTimeSpent));
   }
 
+  public void handleBatchDeleteRequest(Request request) throws IOException, InterruptedException {
+    BatchDeleteRequest batchDeleteRequest =
+        BatchDeleteRequest.readFrom(new DataInputStream(request.getInputStream()), clusterMap);
+    long requestQueueTime = SystemTime.getInstance().milliseconds() - request.getStartTimeInMs();
+    long totalTimeSpent = requestQueueTime;
+    metrics.batchDeleteBlobRequestQueueTimeInMs.update(requestQueueTime);
+    metrics.batchDeleteBlobRequestRate.mark();
+    metrics.batchDeleteBlobCount.update(batchDeleteRequest.getBlobIds().size());
+    long startTime = SystemTime.getInstance().milliseconds();
+    BatchDeleteResponse response = null;
+    try {
+      ServerErrorCode error = validateRequest(batchDeleteRequest.getPartitionId(), false);
+      if (error != ServerErrorCode.No_Error) {
+        logger.error("Validating batch delete request failed with error {} for request {}", error,
+            batchDeleteRequest);
+        response = new BatchDeleteResponse(batchDeleteRequest.getCorrelationId(), batchDeleteRequest.getClientId(),
+            error);
+      } else {
+        Store storeToDelete = storageManager.getStore(batchDeleteRequest.getPartitionId());
+        Map<BlobId, ServerErrorCode> blobIdToError = deleteBlobs(storeToDelete, batchDeleteRequest);
+        List<ServerErrorCode> blobErrors = new ArrayList<ServerErrorCode>(batchDeleteRequest.getBlobIds().size());
+        for (BlobId blobId : batchDeleteRequest.getBlobIds()) {
+          blobErrors.add(blobIdToError.get(blobId));
+        }
+        response = new BatchDeleteResponse(batchDeleteRequest.getCorrelationId(), batchDeleteRequest.getClientId(),
+            ServerErrorCode.No_Error, blobErrors);
+      }
+    } catch (StoreException e) {
+      logger.error(
+          "Store exception on a batch delete with error code " + e.getErrorCode() + " for request "
+              + batchDeleteRequest, e);
+      metrics.unExpectedStoreDeleteError.inc();
+      response = new BatchDeleteResponse(batchDeleteRequest.getCorrelationId(), batchDeleteRequest.getClientId(),
+          ErrorMapping.getStoreErrorMapping(e.getErrorCode()));
+    } catch (Exception e) {
+      logger.error("Unknown exception for batch delete request " + batchDeleteRequest, e);
+      response = new BatchDeleteResponse(batchDeleteRequest.getCorrelationId(), batchDeleteRequest.getClientId(),
+          ServerErrorCode.Unknown_Error);
+      metrics.unExpectedStoreDeleteError.inc();
+    } finally {
+      long processingTime = SystemTime.getInstance().milliseconds() - startTime;
+      totalTimeSpent += processingTime;
+      publicAccessLogger.info("{} {} processingTime {}", batchDeleteRequest, response, processingTime);
+      metrics.batchDeleteBlobProcessingTimeInMs.update(processingTime);
+    }
+    requestResponseChannel.sendResponse(response, request,
+        new ServerNetworkResponseMetrics(metrics.batchDeleteBlobResponseQueueTimeInMs,
+            metrics.batchDeleteBlobSendTimeInMs, metrics.batchDeleteBlobTotalTimeInMs, null, null, totalTimeSpent));
+  }
+
+  /**
+   * Deletes the blobs in the given {@link BatchDeleteRequest} from the given store. Blobs that are not present or are
+   * already deleted are filtered out first, and the rest are written to the store as a single
+   * {@link MessageFormatWriteSet}. If that write fails because the state of a blob changed in the meantime, the blobs
+   * are deleted one at a time so that every blob gets its own result.
+   * @param store the {@link Store} to delete the blobs from.
+   * @param batchDeleteRequest the {@link BatchDeleteRequest} being served.
+   * @return the {@link ServerErrorCode} for every distinct {@link BlobId} in the request.
+   * @throws StoreException if the presence of the blobs in the store could not be determined.
+   * @throws IOException if the delete records could not be created.
+   * @throws MessageFormatException if the delete records could not be created.
+   */
+  private Map<BlobId, ServerErrorCode> deleteBlobs(Store store, BatchDeleteRequest batchDeleteRequest)
+      throws StoreException, IOException, MessageFormatException {
+    Map<BlobId, ServerErrorCode> blobIdToError = new LinkedHashMap<BlobId, ServerErrorCode>();
+    Set<StoreKey> missingKeys = store.findMissingKeys(new ArrayList<StoreKey>(batchDeleteRequest.getBlobIds()));
+    List<BlobId> blobIdsToDelete = new ArrayList<BlobId>();
+    for (BlobId blobId : batchDeleteRequest.getBlobIds()) {
+      if (blobIdToError.containsKey(blobId)) {
+        continue;
+      }
+      if (missingKeys.contains(blobId)) {
+        metrics.idNotFoundError.inc();
+        blobIdToError.put(blobId, ServerErrorCode.Blob_Not_Found);
+      } else if (store.isKeyDeleted(blobId)) {
+        metrics.idDeletedError.inc();
+        blobIdToError.put(blobId, ServerErrorCode.Blob_Deleted);
+      } else {
+        blobIdToError.put(blobId, ServerErrorCode.No_Error);
+        blobIdsToDelete.add(blobId);
+      }
+    }
+    if (blobIdsToDelete.size() > 0) {
+      try {
+        store.delete(createDeleteWriteSet(blobIdsToDelete));
+      } catch (StoreException e) {
+        logger.trace("Store exception on a batch delete with error code " + e.getErrorCode() + " for request "
+            + batchDeleteRequest + ", deleting blobs individually", e);
+        for (BlobId blobId : blobIdsToDelete) {
+          try {
+            store.delete(createDeleteWriteSet(Collections.singletonList(blobId)));
+          } catch (StoreException se) {
+            if (se.getErrorCode() == StoreErrorCodes.ID_Not_Found) {
+              metrics.idNotFoundError.inc();
+            } else if (se.getErrorCode() == StoreErrorCodes.TTL_Expired) {
+              metrics.ttlExpiredError.inc();
+            } else if (se.getErrorCode() == StoreErrorCodes.ID_Deleted) {
+              metrics.idDeletedError.inc();
+            } else {
+              logger.error("Store exception on a delete with error code " + se.getErrorCode() + " for blob " + blobId,
+                  se);
+              metrics.unExpectedStoreDeleteError.inc();
+            }
+            blobIdToError.put(blobId, ErrorMapping.getStoreErrorMapping(se.getErrorCode()));
+          }
+        }
+      }
+      if (notification != null) {
+        for (BlobId blobId : blobIdsToDelete) {
+          if (blobIdToError.get(blobId) == ServerErrorCode.No_Error) {
+            notification.onBlobReplicaDeleted(currentNode.getHostname(), currentNode.getPort(), blobId.getID(),
+                BlobReplicaSourceType.PRIMARY);
+          }
+        }
+      }
+    }
+    return blobIdToError;
+  }
+
+  /**
+   * Creates a {@link MessageFormatWriteSet} containing a delete record for each of the given blobs.
+   * @param blobIds the {@link BlobId}s to create delete records for.
+   * @return the {@link MessageFormatWriteSet} with the delete records.
+   * @throws IOException if the delete records could not be created.
+   * @throws MessageFormatException if the delete records could not be created.
+   */
+  private MessageFormatWriteSet createDeleteWriteSet(List<BlobId> blobIds)
+      throws IOException, MessageFormatException {
+    List<InputStream> streams = new ArrayList<InputStream>(blobIds.size());
+    List<MessageInfo> infoList = new ArrayList<MessageInfo>(blobIds.size());
+    for (BlobId blobId : blobIds) {
+      MessageFormatInputStream stream = new DeleteMessageFormatInputStream(blobId);
+      streams.add(stream);
+      infoList.add(new MessageInfo(blobId, stream.getSize()));
+    }
+    return new MessageFormatWriteSet(new SequenceInputStream(Collections.enumeration(streams)), infoList, false);
+  }
+
   public void handleReplicaMetadataRequest(Request request) throws IOException, InterruptedException {
     ReplicaMetadataRequest replicaMetadataRequest =
         ReplicaMetadataRequest.readFrom(new DataInputStream(request.getInputStream()), clusterMap, findTokenFactory);
@@ -414,6 +577,7 @@ public class AmbryRequests implements RequestAPI {
         replicaMetadataRequest.getReplicaMetadataRequestInfoList();
     int partitionCnt = replicaMetadataRequestInfoList.size();
     long startTimeInMs = SystemTime.getInstance().milliseconds();
+    short responseVersion = ReplicaMetadataResponse.getResponseVersion(replicaMetadataRequest);
     ReplicaMetadataResponse response = null;
     try {
       List<ReplicaMetadataResponseInfo> replicaMetadataResponseList =
@@ -456,7 +620,7 @@ public class AmbryRequests implements RequestAPI {
 
             ReplicaMetadataResponseInfo replicaMetadataResponseInfo =
                 new ReplicaMetadataResponseInfo(partitionId, findInfo.getFindToken(), findInfo.getMessageEntries(),
-                    remoteReplicaLagInBytes);
+                    remoteReplicaLagInBytes, responseVersion);
             replicaMetadataResponseList.add(replicaMetadataResponseInfo);
           } catch (StoreException e) {
             logger.error(
@@ -475,7 +639,9 @@ public class AmbryRequests implements RequestAPI {
       }
       response =
           new ReplicaMetadataResponse(replicaMetadataRequest.getCorrelationId(), replicaMetadataRequest.getClientId(),
-              ServerErrorCode.No_Error, replicaMetadataResponseList);
+              ServerErrorCode.No_Error, replicaMetadataResponseList,
+              replicaMetadataRequest.getAcceptedCompressionCodec(), responseVersion);
+      metrics.updateResponseCompressionMetrics(response.getCompressedPayload());
     } catch (Exception e) {
       logger.error("Unknown exception for request " + replicaMetadataRequest, e);
       response =
@@ -494,6 +660,102 @@ public class AmbryRequests implements RequestAPI {
             metrics.replicaMetadataSendTimeInMs, metrics.replicaMetadataTotalTimeInMs, null, null, totalTimeSpent));
   }
 
+  public void handleReplicaSnapshotRequest(Request request) throws IOException, InterruptedException {
+    ReplicaSnapshotRequest replicaSnapshotRequest =
+        ReplicaSnapshotRequest.readFrom(new DataInputStream(request.getInputStream()), clusterMap);
+    long requestQueueTime = SystemTime.getInstance().milliseconds() - request.getStartTimeInMs();
+    long totalTimeSpent = requestQueueTime;
+    metrics.replicaSnapshotRequestQueueTimeInMs.update(requestQueueTime);
+    metrics.replicaSnapshotRequestRate.mark();
+    long startTimeInMs = SystemTime.getInstance().milliseconds();
+    ReplicaSnapshotResponse response = null;
+    try {
+      PartitionId partitionId = replicaSnapshotRequest.getPartitionId();
+      ServerErrorCode error = validateRequest(partitionId, false);
+      if (error != ServerErrorCode.No_Error) {
+        logger.error("Validating replica snapshot request failed with error {} for request {}", error,
+            replicaSnapshotRequest);
+        response = new ReplicaSnapshotResponse(replicaSnapshotRequest.getCorrelationId(),
+            replicaSnapshotRequest.getClientId(), error);
+      } else {
+        StoreSnapshot snapshot = storageManager.getStoreSnapshot(partitionId);
+        response = new ReplicaSnapshotResponse(replicaSnapshotRequest.getCorrelationId(),
+            replicaSnapshotRequest.getClientId(), ServerErrorCode.No_Error, snapshot.getFiles(),
+            snapshot.getFindToken());
+      }
+    } catch (StoreException e) {
+      logger.error("Store exception on a replica snapshot request with error code " + e.getErrorCode()
+          + " for request " + replicaSnapshotRequest, e);
+      if (e.getErrorCode() == StoreErrorCodes.IOError) {
+        metrics.storeIOError.inc();
+      }
+      response =
+          new ReplicaSnapshotResponse(replicaSnapshotRequest.getCorrelationId(), replicaSnapshotRequest.getClientId(),
+              ErrorMapping.getStoreErrorMapping(e.getErrorCode()));
+    } catch (Exception e) {
+      logger.error("Unknown exception for request " + replicaSnapshotRequest, e);
+      response =
+          new ReplicaSnapshotResponse(replicaSnapshotRequest.getCorrelationId(), replicaSnapshotRequest.getClientId(),
+              ServerErrorCode.Unknown_Error);
+    } finally {
+      long processingTime = SystemTime.getInstance().milliseconds() - startTimeInMs;
+      totalTimeSpent += processingTime;
+      publicAccessLogger.info("{} {} processingTime {}", replicaSnapshotRequest, response, processingTime);
+      metrics.replicaSnapshotRequestProcessingTimeInMs.update(processingTime);
+    }
+    requestResponseChannel.sendResponse(response, request,
+        new ServerNetworkResponseMetrics(metrics.replicaSnapshotResponseQueueTimeInMs,
+            metrics.replicaSnapshotSendTimeInMs, metrics.replicaSnapshotTotalTimeInMs, null, null, totalTimeSpent));
+  }
+
+  public void handleReplicaFileChunkRequest(Request request) throws IOException, InterruptedException {
+    ReplicaFileChunkRequest replicaFileChunkRequest =
+        ReplicaFileChunkRequest.readFrom(new DataInputStream(request.getInputStream()), clusterMap);
+    long requestQueueTime = SystemTime.getInstance().milliseconds() - request.getStartTimeInMs();
+    long totalTimeSpent = requestQueueTime;
+    metrics.replicaFileChunkRequestQueueTimeInMs.update(requestQueueTime);
+    metrics.replicaFileChunkRequestRate.mark();
+    long startTimeInMs = SystemTime.getInstance().milliseconds();
+    ReplicaFileChunkResponse response = null;
+    try {
+      PartitionId partitionId = replicaFileChunkRequest.getPartitionId();
+      ServerErrorCode error = validateRequest(partitionId, false);
+      if (error != ServerErrorCode.No_Error) {
+        logger.error("Validating replica file chunk request failed with error {} for request {}", error,
+            replicaFileChunkRequest);
+        response = new ReplicaFileChunkResponse(replicaFileChunkRequest.getCorrelationId(),
+            replicaFileChunkRequest.getClientId(), error);
+      } else {
+        // the chunk is transferred to the network directly from the file when the response is sent.
+        Send chunk = storageManager.getStoreSnapshotFileChunk(partitionId, replicaFileChunkRequest.getFileName(),
+            replicaFileChunkRequest.getOffset(), replicaFileChunkRequest.getChunkSizeInBytes());
+        metrics.replicaFileChunkBytesRate.mark(chunk.sizeInBytes());
+        response = new ReplicaFileChunkResponse(replicaFileChunkRequest.getCorrelationId(),
+            replicaFileChunkRequest.getClientId(), ServerErrorCode.No_Error, chunk);
+      }
+    } catch (StoreException e) {
+      logger.error("Store exception on a replica file chunk request with error code " + e.getErrorCode()
+          + " for request " + replicaFileChunkRequest, e);
+      if (e.getErrorCode() == StoreErrorCodes.IOError) {
+        metrics.storeIOError.inc();
+      }
+      response = new ReplicaFileChunkResponse(replicaFileChunkRequest.getCorrelationId(),
+          replicaFileChunkRequest.getClientId(), ErrorMapping.getStoreErrorMapping(e.getErrorCode()));
+    } catch (Exception e) {
+      logger.error("Unknown exception for request " + replicaFileChunkRequest, e);
+      response = new ReplicaFileChunkResponse(replicaFileChunkRequest.getCorrelationId(),
+          replicaFileChunkRequest.getClientId(), ServerErrorCode.Unknown_Error);
+    } finally {
+      long processingTime = SystemTime.getInstance().milliseconds() - startTimeInMs;
+      totalTimeSpent += processingTime;
+      publicAccessLogger.info("{} {} processingTime {}", replicaFileChunkRequest, response, processingTime);
+      metrics.replicaFileChunkRequestProcessingTimeInMs.update(processingTime);
+    }
+    requestResponseChannel.sendResponse(response, request,
+        new ServerNetworkResponseMetrics(metrics.replicaFileChunkResponseQueueTimeInMs,
+            metrics.replicaFileChunkSendTimeInMs, metrics.replicaFileChunkTotalTimeInMs, null, null, totalTimeSpent));
+  }
+
   private void sendPutResponse(RequestResponseChannel requestResponseChannel, PutResponse response, Request request,
       Histogram responseQueueTime, Histogram responseSendTime, Histogram requestTotalTime, long totalTimeSpent,
       long blobSize, ServerMetrics metrics) throws InterruptedException {
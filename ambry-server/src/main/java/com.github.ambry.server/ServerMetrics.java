@@ -17,6 +17,7 @@ import com.codahale.metrics.Counter;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.protocol.CompressedPayload;
 
 
 /**
@@ -94,6 +95,13 @@ public class ServerMetrics {
   public final Histogram deleteBlobSendTimeInMs;
   public final Histogram deleteBlobTotalTimeInMs;
 
+  public final Histogram batchDeleteBlobRequestQueueTimeInMs;
+  public final Histogram batchDeleteBlobProcessingTimeInMs;
+  public final Histogram batchDeleteBlobResponseQueueTimeInMs;
+  public final Histogram batchDeleteBlobSendTimeInMs;
+  public final Histogram batchDeleteBlobTotalTimeInMs;
+  public final Histogram batchDeleteBlobCount;
+
   public final Histogram ttlBlobRequestQueueTimeInMs;
   public final Histogram ttlBlobProcessingTimeInMs;
   public final Histogram ttlBlobResponseQueueTimeInMs;
@@ -106,6 +114,23 @@ public class ServerMetrics {
   public final Histogram replicaMetadataSendTimeInMs;
   public final Histogram replicaMetadataTotalTimeInMs;
 
+  public final Histogram replicaSnapshotRequestQueueTimeInMs;
+  public final Histogram replicaSnapshotRequestProcessingTimeInMs;
+  public final Histogram replicaSnapshotResponseQueueTimeInMs;
+  public final Histogram replicaSnapshotSendTimeInMs;
+  public final Histogram replicaSnapshotTotalTimeInMs;
+
+  public final Histogram replicaFileChunkRequestQueueTimeInMs;
+  public final Histogram replicaFileChunkRequestProcessingTimeInMs;
+  public final Histogram replicaFileChunkResponseQueueTimeInMs;
+  public final Histogram replicaFileChunkSendTimeInMs;
+  public final Histogram replicaFileChunkTotalTimeInMs;
+
+  public final Histogram responseCompressionTimeInUs;
+  public final Histogram responseCompressionRatioInPercent;
+  public final Counter responseUncompressedBytes;
+  public final Counter responseCompressedBytes;
+
   public final Histogram blobSizeInBytes;
   public final Histogram blobUserMetadataSizeInBytes;
 
@@ -119,8 +144,12 @@ public class ServerMetrics {
   public final Meter getBlobAllRequestRate;
   public final Meter getBlobInfoRequestRate;
   public final Meter deleteBlobRequestRate;
+  public final Meter batchDeleteBlobRequestRate;
   public final Meter ttlBlobRequestRate;
   public final Meter replicaMetadataRequestRate;
+  public final Meter replicaSnapshotRequestRate;
+  public final Meter replicaFileChunkRequestRate;
+  public final Meter replicaFileChunkBytesRate;
 
   public final Meter putSmallBlobRequestRate;
   public final Meter getSmallBlobRequestRate;
@@ -243,6 +272,18 @@ public class ServerMetrics {
     deleteBlobSendTimeInMs = registry.histogram(MetricRegistry.name(AmbryRequests.class, "DeleteBlobSendTime"));
     deleteBlobTotalTimeInMs = registry.histogram(MetricRegistry.name(AmbryRequests.class, "DeleteBlobTotalTime"));
 
+    batchDeleteBlobRequestQueueTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "BatchDeleteBlobRequestQueueTime"));
+    batchDeleteBlobProcessingTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "BatchDeleteBlobProcessingTime"));
+    batchDeleteBlobResponseQueueTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "BatchDeleteBlobResponseQueueTime"));
+    batchDeleteBlobSendTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "BatchDeleteBlobSendTime"));
+    batchDeleteBlobTotalTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "BatchDeleteBlobTotalTime"));
+    batchDeleteBlobCount = registry.histogram(MetricRegistry.name(AmbryRequests.class, "BatchDeleteBlobCount"));
+
     ttlBlobRequestQueueTimeInMs =
         registry.histogram(MetricRegistry.name(AmbryRequests.class, "TTLBlobRequestQueueTime"));
     ttlBlobProcessingTimeInMs = registry.histogram(MetricRegistry.name(AmbryRequests.class, "TTLBlobProcessingTime"));
@@ -262,6 +303,35 @@ public class ServerMetrics {
     replicaMetadataTotalTimeInMs =
         registry.histogram(MetricRegistry.name(AmbryRequests.class, "ReplicaMetadataTotalTime"));
 
+    replicaSnapshotRequestQueueTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "ReplicaSnapshotRequestQueueTime"));
+    replicaSnapshotRequestProcessingTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "ReplicaSnapshotRequestProcessingTime"));
+    replicaSnapshotResponseQueueTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "ReplicaSnapshotResponseQueueTime"));
+    replicaSnapshotSendTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "ReplicaSnapshotSendTime"));
+    replicaSnapshotTotalTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "ReplicaSnapshotTotalTime"));
+
+    replicaFileChunkRequestQueueTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "ReplicaFileChunkRequestQueueTime"));
+    replicaFileChunkRequestProcessingTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "ReplicaFileChunkRequestProcessingTime"));
+    replicaFileChunkResponseQueueTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "ReplicaFileChunkResponseQueueTime"));
+    replicaFileChunkSendTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "ReplicaFileChunkSendTime"));
+    replicaFileChunkTotalTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "ReplicaFileChunkTotalTime"));
+
+    responseCompressionTimeInUs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "ResponseCompressionTimeInUs"));
+    responseCompressionRatioInPercent =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "ResponseCompressionRatioInPercent"));
+    responseUncompressedBytes = registry.counter(MetricRegistry.name(AmbryRequests.class, "ResponseUncompressedBytes"));
+    responseCompressedBytes = registry.counter(MetricRegistry.name(AmbryRequests.class, "ResponseCompressedBytes"));
+
     blobSizeInBytes = registry.histogram(MetricRegistry.name(AmbryRequests.class, "BlobSize"));
     blobUserMetadataSizeInBytes = registry.histogram(MetricRegistry.name(AmbryRequests.class, "BlobUserMetadataSize"));
 
@@ -277,8 +347,14 @@ public class ServerMetrics {
     getBlobAllRequestRate = registry.meter(MetricRegistry.name(AmbryRequests.class, "GetBlobAllRequestRate"));
     getBlobInfoRequestRate = registry.meter(MetricRegistry.name(AmbryRequests.class, "GetBlobInfoRequestRate"));
     deleteBlobRequestRate = registry.meter(MetricRegistry.name(AmbryRequests.class, "DeleteBlobRequestRate"));
+    batchDeleteBlobRequestRate =
+        registry.meter(MetricRegistry.name(AmbryRequests.class, "BatchDeleteBlobRequestRate"));
     ttlBlobRequestRate = registry.meter(MetricRegistry.name(AmbryRequests.class, "TTLBlobRequestRate"));
     replicaMetadataRequestRate = registry.meter(MetricRegistry.name(AmbryRequests.class, "ReplicaMetadataRequestRate"));
+    replicaSnapshotRequestRate = registry.meter(MetricRegistry.name(AmbryRequests.class, "ReplicaSnapshotRequestRate"));
+    replicaFileChunkRequestRate =
+        registry.meter(MetricRegistry.name(AmbryRequests.class, "ReplicaFileChunkRequestRate"));
+    replicaFileChunkBytesRate = registry.meter(MetricRegistry.name(AmbryRequests.class, "ReplicaFileChunkBytesRate"));
 
     putSmallBlobRequestRate = registry.meter(MetricRegistry.name(AmbryRequests.class, "PutSmallBlobRequestRate"));
     getSmallBlobRequestRate = registry.meter(MetricRegistry.name(AmbryRequests.class, "GetSmallBlobRequestRate"));
@@ -318,6 +394,23 @@ public class ServerMetrics {
     }
   }
 
+  /**
+   * Updates the compression metrics with a compressed response payload.
+   * @param compressedPayload the {@link CompressedPayload} of the response. Can be {@code null} if the response is not
+   *                          compressed, in which case nothing is updated.
+   */
+  public void updateResponseCompressionMetrics(CompressedPayload compressedPayload) {
+    if (compressedPayload != null) {
+      responseCompressionTimeInUs.update(compressedPayload.getProcessingTimeInNanos() / 1000);
+      if (compressedPayload.getUncompressedSizeInBytes() > 0) {
+        responseCompressionRatioInPercent.update(
+            100L * compressedPayload.getCompressedSizeInBytes() / compressedPayload.getUncompressedSizeInBytes());
+      }
+      responseUncompressedBytes.inc(compressedPayload.getUncompressedSizeInBytes());
+      responseCompressedBytes.inc(compressedPayload.getCompressedSizeInBytes());
+    }
+  }
+
   public void markGetBlobRequestRateBySize(long blobSize) {
     if (blobSize <= smallBlob) {
       getSmallBlobRequestRate.mark();
@@ -15,9 +15,13 @@ package com.github.ambry.store;
 
 import com.codahale.metrics.Timer;
 import com.github.ambry.config.StoreConfig;
+import com.github.ambry.network.Send;
+import com.github.ambry.utils.CrcInputStream;
 import com.github.ambry.utils.FileLock;
 import com.github.ambry.utils.Time;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.EnumSet;
@@ -37,6 +41,8 @@ import org.slf4j.LoggerFactory;
 class BlobStore implements Store {
   static final String SEPARATOR = "_";
   private final static String LockFile = ".lock";
+  private final static int CRC_SIZE = 8;
+  private final static int CRC_CHECK_BUFFER_SIZE = 64 * 1024;
 
   private final String dataDir;
   private final ScheduledExecutorService taskScheduler;
@@ -219,19 +225,22 @@ class BlobStore implements Store {
             Offset endOffsetOfLastMessage = log.getEndOffset();
             messageSetToWrite.writeTo(log);
             logger.trace("Store : {} message set written to log", dataDir);
+            // the message set info is fetched again as a write set may skip messages (e.g. invalid ones) while writing.
             List<MessageInfo> messageInfo = messageSetToWrite.getMessageSetInfo();
-            ArrayList<IndexEntry> indexEntries = new ArrayList<>(messageInfo.size());
-            for (MessageInfo info : messageInfo) {
-              FileSpan fileSpan = log.getFileSpanForMessage(endOffsetOfLastMessage, info.getSize());
-              IndexValue value =
-                  new IndexValue(info.getSize(), fileSpan.getStartOffset(), info.getExpirationTimeInMs());
-              IndexEntry entry = new IndexEntry(info.getStoreKey(), value, info.getCrc());
-              indexEntries.add(entry);
-              endOffsetOfLastMessage = fileSpan.getEndOffset();
+            if (!messageInfo.isEmpty()) {
+              ArrayList<IndexEntry> indexEntries = new ArrayList<>(messageInfo.size());
+              for (MessageInfo info : messageInfo) {
+                FileSpan fileSpan = log.getFileSpanForMessage(endOffsetOfLastMessage, info.getSize());
+                IndexValue value =
+                    new IndexValue(info.getSize(), fileSpan.getStartOffset(), info.getExpirationTimeInMs());
+                IndexEntry entry = new IndexEntry(info.getStoreKey(), value, info.getCrc());
+                indexEntries.add(entry);
+                endOffsetOfLastMessage = fileSpan.getEndOffset();
+              }
+              FileSpan fileSpan = new FileSpan(indexEntries.get(0).getValue().getOffset(), endOffsetOfLastMessage);
+              index.addToIndex(indexEntries, fileSpan);
+              logger.trace("Store : {} message set written to index ", dataDir);
             }
-            FileSpan fileSpan = new FileSpan(indexEntries.get(0).getValue().getOffset(), endOffsetOfLastMessage);
-            index.addToIndex(indexEntries, fileSpan);
-            logger.trace("Store : {} message set written to index ", dataDir);
           }
         }
       }
@@ -388,6 +397,180 @@ class BlobStore implements Store {
     return started;
   }
 
+  /**
+   * @return {@code true} if the store has no messages in it.
+   * @throws StoreException if the store is not started.
+   */
+  boolean isEmpty() throws StoreException {
+    checkStarted();
+    return index.getCurrentEndOffset().equals(index.getStartOffset());
+  }
+
+  /**
+   * @return the {@link StoreSnapshot} of the part of the store that is not going to change anymore.
+   * @throws StoreException if the store is not started or if the snapshot could not be taken.
+   */
+  StoreSnapshot getSnapshot() throws StoreException {
+    checkStarted();
+    return index.getSnapshot();
+  }
+
+  /**
+   * Gets a range of bytes of one of the files in a {@link StoreSnapshot} of the store. The files are looked up in the
+   * snapshots that were already taken, so that a new snapshot is not taken for every chunk that is downloaded.
+   * @param fileName the name of the file.
+   * @param offset the offset in the file of the first byte of the range.
+   * @param size the number of bytes in the range.
+   * @return a {@link Send} that transfers the range of bytes directly from the file.
+   * @throws IllegalArgumentException if the range is not within the part of the file that is in the snapshot.
+   * @throws StoreException if the store is not started, if the file is not in the snapshot or does not exist.
+   */
+  Send getSnapshotFileChunk(String fileName, long offset, long size) throws StoreException {
+    checkStarted();
+    StoreFileInfo fileInfo = index.getSnapshotFileInfo(fileName);
+    if (fileInfo == null) {
+      getSnapshot();
+      fileInfo = index.getSnapshotFileInfo(fileName);
+      if (fileInfo == null) {
+        throw new StoreException("Store : " + dataDir + " has no file named " + fileName + " in its snapshot",
+            StoreErrorCodes.ID_Not_Found);
+      }
+    }
+    if (offset < 0 || size <= 0 || offset + size > fileInfo.getSizeInBytes()) {
+      throw new IllegalArgumentException(
+          "Invalid offset [" + offset + "] and size [" + size + "] for file " + fileInfo + " in store " + dataDir);
+    }
+    try {
+      return new StoreFileChunk(new File(dataDir, fileName), offset, size);
+    } catch (IOException e) {
+      throw new StoreException("Store : " + dataDir + " could not find file " + fileName, e, StoreErrorCodes.IOError);
+    }
+  }
+
+  /**
+   * Bootstraps the store, which has to be empty, with the files of a {@link StoreSnapshot} of another replica of it.
+   * The files are verified and moved into the directory of the store, and the store is restarted with them. If the
+   * files cannot be moved or the store cannot be restarted with them, the store is restarted empty.
+   * @param snapshotDir the directory with the files of the snapshot. It has to be on the same disk as the store.
+   * @param files the {@link StoreFileInfo}s of the files of the snapshot.
+   * @throws StoreException if the store is not started or not empty, if the files are not valid, or if the store could
+   * not be restarted with them.
+   */
+  void bootstrap(File snapshotDir, List<StoreFileInfo> files) throws StoreException {
+    synchronized (lock) {
+      if (!isEmpty()) {
+        throw new StoreException("Store : " + dataDir + " is not empty and cannot be bootstrapped",
+            StoreErrorCodes.Initialization_Error);
+      }
+      verifySnapshotFiles(snapshotDir, files);
+      logger.info("Store : {} bootstrapping from {} files in {}", dataDir, files.size(), snapshotDir);
+      shutdown();
+      List<File> movedFiles = new ArrayList<>();
+      StoreException exception = null;
+      boolean restartAttempted = false;
+      try {
+        // the files of the empty log and index are replaced by those of the snapshot.
+        deleteFiles(new File(dataDir).listFiles(LogSegmentNameHelper.LOG_FILE_FILTER));
+        deleteFiles(new File(dataDir).listFiles(PersistentIndex.INDEX_SEGMENT_FILE_FILTER));
+        for (StoreFileInfo fileInfo : files) {
+          File file = new File(dataDir, fileInfo.getFileName());
+          if (!new File(snapshotDir, fileInfo.getFileName()).renameTo(file)) {
+            throw new IOException("Could not move " + fileInfo.getFileName() + " from " + snapshotDir);
+          }
+          movedFiles.add(file);
+        }
+        restartAttempted = true;
+        start();
+      } catch (Exception e) {
+        exception = e instanceof StoreException ? (StoreException) e
+            : new StoreException("Store : " + dataDir + " could not be bootstrapped", e, StoreErrorCodes.IOError);
+      }
+      if (exception != null) {
+        logger.error("Store : {} bootstrap failed, restarting it empty", dataDir, exception);
+        try {
+          deleteFiles(movedFiles.toArray(new File[movedFiles.size()]));
+        } catch (IOException e) {
+          logger.error("Store : {} could not clean up the files of the snapshot", dataDir, e);
+        }
+        if (restartAttempted) {
+          try {
+            // a failed start can leave the directory locked.
+            fileLock.destroy();
+          } catch (IOException e) {
+            logger.error("Store : {} could not release the lock on the directory", dataDir, e);
+          }
+        }
+        start();
+        throw exception;
+      }
+    }
+  }
+
+  /**
+   * Verifies that the files of a {@link StoreSnapshot} have the sizes and the crcs that they are listed with. The
+   * checksums that the index segment and bloom filter files end with are verified as well.
+   * @param snapshotDir the directory with the files of the snapshot.
+   * @param files the {@link StoreFileInfo}s of the files of the snapshot.
+   * @throws StoreException if any of the files is missing or not valid.
+   */
+  private void verifySnapshotFiles(File snapshotDir, List<StoreFileInfo> files) throws StoreException {
+    for (StoreFileInfo fileInfo : files) {
+      File file = new File(snapshotDir, fileInfo.getFileName());
+      if (file.length() != fileInfo.getSizeInBytes()) {
+        throw new StoreException(
+            "Store : " + dataDir + " snapshot file " + file + " has size " + file.length() + ", expected "
+                + fileInfo.getSizeInBytes(), StoreErrorCodes.Initialization_Error);
+      }
+      try {
+        if (PersistentIndex.computeCrc(file, fileInfo.getSizeInBytes()) != fileInfo.getCrc()) {
+          throw new StoreException("Store : " + dataDir + " snapshot file " + file + " does not have the crc "
+              + fileInfo.getCrc() + " that it was listed with", StoreErrorCodes.Initialization_Error);
+        }
+      } catch (IOException e) {
+        throw new StoreException("Store : " + dataDir + " could not read snapshot file " + file, e,
+            StoreErrorCodes.Initialization_Error);
+      }
+      String fileName = fileInfo.getFileName();
+      if (fileName.endsWith(IndexSegment.INDEX_SEGMENT_FILE_NAME_SUFFIX) || fileName.endsWith(
+          IndexSegment.BLOOM_FILE_NAME_SUFFIX)) {
+        try (CrcInputStream crcStream = new CrcInputStream(new FileInputStream(file))) {
+          DataInputStream stream = new DataInputStream(crcStream);
+          long sizeToCheck = file.length() - CRC_SIZE;
+          byte[] buffer = new byte[(int) Math.min(CRC_CHECK_BUFFER_SIZE, Math.max(sizeToCheck, 0))];
+          while (sizeToCheck > 0) {
+            int sizeToRead = (int) Math.min(buffer.length, sizeToCheck);
+            stream.readFully(buffer, 0, sizeToRead);
+            sizeToCheck -= sizeToRead;
+          }
+          long crc = crcStream.getValue();
+          if (crc != stream.readLong()) {
+            throw new StoreException("Store : " + dataDir + " crc check failed for snapshot file " + file,
+                StoreErrorCodes.Initialization_Error);
+          }
+        } catch (IOException e) {
+          throw new StoreException("Store : " + dataDir + " could not read snapshot file " + file, e,
+              StoreErrorCodes.Initialization_Error);
+        }
+      }
+    }
+  }
+
+  /**
+   * Deletes the given files.
+   * @param files the files to delete.
+   * @throws IOException if the files could not be listed or any of them could not be deleted.
+   */
+  private void deleteFiles(File[] files) throws IOException {
+    if (files == null) {
+      throw new IOException("Could not list the files of " + dataDir);
+    }
+    for (File file : files) {
+      if (file.exists() && !file.delete()) {
+        throw new IOException("Could not delete file " + file);
+      }
+    }
+  }
+
   private void checkStarted() throws StoreException {
     if (!started) {
       throw new StoreException("Store not started", StoreErrorCodes.Store_Not_Started);
@@ -0,0 +1,186 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * An in memory changelog of the most recent puts and deletes in a store, sorted by their offset in the log.
+ * <p/>
+ * Unlike the {@link Journal}, which only needs to cover the latest index segment, the changelog is sized on its own
+ * and can span many index segments. It also holds the size, expiration time and delete state of every entry, and
+ * tracks the deletes of the keys whose puts it holds, so the entries since an offset in it are returned without any
+ * lookups in the index segments.
+ * <p/>
+ * Entries are only added as the index takes them, so the changelog starts out empty when a store starts up.
+ */
+class Changelog {
+
+  private final ConcurrentSkipListMap<Offset, MessageInfo> changelog = new ConcurrentSkipListMap<>();
+  // the offset of the latest delete of every key that has been deleted within the changelog
+  private final ConcurrentHashMap<StoreKey, Offset> deleteOffsets = new ConcurrentHashMap<>();
+  private final int maxEntriesInChangelog;
+  private final int maxEntriesToReturn;
+  private final AtomicInteger currentNumberOfEntries = new AtomicInteger(0);
+  private final String dataDir;
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  /**
+   * @param dataDir the directory of the store.
+   * @param maxEntriesInChangelog The max number of entries in the changelog. The oldest entry is removed from the
+   *                              changelog after the size is reached. If 0, the changelog holds no entries.
+   * @param maxEntriesToReturn The max number of entries to return from the changelog when queried for entries.
+   */
+  Changelog(String dataDir, int maxEntriesInChangelog, int maxEntriesToReturn) {
+    this.dataDir = dataDir;
+    this.maxEntriesInChangelog = maxEntriesInChangelog;
+    this.maxEntriesToReturn = maxEntriesToReturn;
+  }
+
+  /**
+   * Adds an entry to the changelog. Entries have to be added in the order of their offsets.
+   * @param offset The {@link Offset} of the entry.
+   * @param messageInfo The {@link MessageInfo} of the entry, as it is in the index entry.
+   */
+  void addEntry(Offset offset, MessageInfo messageInfo) {
+    if (offset == null || messageInfo == null) {
+      throw new IllegalArgumentException("Invalid arguments passed to add to the changelog");
+    }
+    if (maxEntriesInChangelog > 0) {
+      while (currentNumberOfEntries.get() >= maxEntriesInChangelog) {
+        Map.Entry<Offset, MessageInfo> earliestEntry = changelog.firstEntry();
+        if (earliestEntry == null) {
+          break;
+        }
+        removeEntry(earliestEntry);
+      }
+      changelog.put(offset, messageInfo);
+      if (messageInfo.isDeleted()) {
+        deleteOffsets.put(messageInfo.getStoreKey(), offset);
+      }
+      currentNumberOfEntries.incrementAndGet();
+      logger.trace("Changelog : {} offset {} key {}", dataDir, offset, messageInfo.getStoreKey());
+    }
+  }
+
+  /**
+   * Gets the entries in the changelog starting at the provided offset and till the maxEntriesToReturn or the end of
+   * the changelog is reached. Every returned entry has its {@link MessageInfo}, which has the size, expiration time
+   * and delete state of the latest delete of the key if the key has been deleted since.
+   * @param offset The {@link Offset} from where the changelog needs to return entries.
+   * @param inclusive if {@code true}, the returned entries (if not {@code null}), contain the entry at {@code offset}.
+   * @return The entries in the changelog starting from offset. If the offset is not in the changelog, returns null.
+   */
+  List<JournalEntry> getEntriesSince(Offset offset, boolean inclusive) {
+    // as in the Journal, the entries are collected first and the offset is then checked to still be in the changelog.
+    if (!changelog.containsKey(offset)) {
+      return null;
+    }
+    ConcurrentNavigableMap<Offset, MessageInfo> subsetMap = changelog.tailMap(offset, inclusive);
+    List<JournalEntry> entries = new ArrayList<JournalEntry>();
+    for (Map.Entry<Offset, MessageInfo> entry : subsetMap.entrySet()) {
+      MessageInfo messageInfo = entry.getValue();
+      if (!messageInfo.isDeleted()) {
+        Offset deleteOffset = deleteOffsets.get(messageInfo.getStoreKey());
+        if (deleteOffset != null && deleteOffset.compareTo(entry.getKey()) > 0) {
+          // the index would return the delete entry for the key, so return that.
+          MessageInfo deleteInfo = changelog.get(deleteOffset);
+          if (deleteInfo != null) {
+            messageInfo = deleteInfo;
+          }
+        }
+      }
+      entries.add(new JournalEntry(entry.getKey(), messageInfo.getStoreKey(), messageInfo));
+      if (entries.size() == maxEntriesToReturn) {
+        break;
+      }
+    }
+
+    // Ensure that the offset was not pushed out of the changelog.
+    Offset first = getFirstOffset();
+    if (first == null || offset.compareTo(first) < 0) {
+      return null;
+    }
+    logger.trace("Changelog : {} entries returned {}", dataDir, entries.size());
+    return entries;
+  }
+
+  /**
+   * Removes all the entries with offsets lower than the given offset.
+   * @param offset the {@link Offset} below which entries are removed.
+   */
+  void removeEntriesBefore(Offset offset) {
+    Map.Entry<Offset, MessageInfo> earliestEntry = changelog.firstEntry();
+    while (earliestEntry != null && earliestEntry.getKey().compareTo(offset) < 0) {
+      removeEntry(earliestEntry);
+      earliestEntry = changelog.firstEntry();
+    }
+  }
+
+  /**
+   * Removes all the entries in the changelog.
+   */
+  void clear() {
+    Map.Entry<Offset, MessageInfo> earliestEntry = changelog.firstEntry();
+    while (earliestEntry != null) {
+      removeEntry(earliestEntry);
+      earliestEntry = changelog.firstEntry();
+    }
+  }
+
+  /**
+   * @return the first/smallest offset in the changelog or {@code null} if no such entry exists.
+   */
+  Offset getFirstOffset() {
+    Map.Entry<Offset, MessageInfo> first = changelog.firstEntry();
+    return first == null ? null : first.getKey();
+  }
+
+  /**
+   * @return the last/greatest offset in the changelog or {@code null} if no such entry exists.
+   */
+  Offset getLastOffset() {
+    Map.Entry<Offset, MessageInfo> last = changelog.lastEntry();
+    return last == null ? null : last.getKey();
+  }
+
+  /**
+   * @return the number of entries in the changelog.
+   */
+  int getNumberOfEntries() {
+    return currentNumberOfEntries.get();
+  }
+
+  /**
+   * Removes an entry from the changelog if it is still there.
+   * @param entry the entry to remove.
+   */
+  private void removeEntry(Map.Entry<Offset, MessageInfo> entry) {
+    if (changelog.remove(entry.getKey(), entry.getValue())) {
+      currentNumberOfEntries.decrementAndGet();
+      if (entry.getValue().isDeleted()) {
+        deleteOffsets.remove(entry.getValue().getStoreKey(), entry.getKey());
+      }
+    }
+  }
+}
@@ -131,10 +131,10 @@ class DiskManager {
 
   /**
    * @param id the {@link PartitionId} to find the store for.
-   * @return the associated {@link Store}, or {@code null} if the partition is not on this disk, or the store is not
-   *         started.
+   * @return the associated {@link BlobStore}, or {@code null} if the partition is not on this disk, or the store is
+   *         not started.
    */
-  Store getStore(PartitionId id) {
+  BlobStore getStore(PartitionId id) {
     BlobStore store = stores.get(id);
     return (store != null && store.isStarted()) ? store : null;
   }
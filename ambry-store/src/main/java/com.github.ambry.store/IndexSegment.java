@@ -242,6 +242,33 @@ class IndexSegment {
     return indexFile;
   }
 
+  /**
+   * The file that the bloom filter of this segment is persisted in. The file exists only once the segment is mapped.
+   * @return The file that the bloom filter of this segment is persisted in
+   */
+  File getBloomFile() {
+    return bloomFile;
+  }
+
+  /**
+   * The largest key in this segment
+   * @return The largest key in this segment or {@code null} if the segment has no entries
+   * @throws IOException
+   */
+  StoreKey getLastKey() throws IOException {
+    try {
+      rwLock.readLock().lock();
+      if (mapped.get()) {
+        ByteBuffer duplicate = mmap.duplicate();
+        int entries = numberOfEntries(duplicate);
+        return entries > 0 ? getKeyAt(duplicate, entries - 1) : null;
+      }
+      return index.isEmpty() ? null : index.lastKey();
+    } finally {
+      rwLock.readLock().unlock();
+    }
+  }
+
   /**
    * The key size in this segment
    * @return The key size in this segment
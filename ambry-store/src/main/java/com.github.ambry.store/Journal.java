@@ -27,10 +27,22 @@ import org.slf4j.LoggerFactory;
 class JournalEntry {
   private final Offset offset;
   private final StoreKey key;
+  private final MessageInfo messageInfo;
 
   JournalEntry(Offset offset, StoreKey key) {
+    this(offset, key, null);
+  }
+
+  /**
+   * @param offset the {@link Offset} of the entry.
+   * @param key the key of the entry.
+   * @param messageInfo the {@link MessageInfo} of the key as of the time the entry was returned. {@code null} if it is
+   *                    not known and has to be looked up in the index.
+   */
+  JournalEntry(Offset offset, StoreKey key, MessageInfo messageInfo) {
     this.offset = offset;
     this.key = key;
+    this.messageInfo = messageInfo;
   }
 
   Offset getOffset() {
@@ -40,6 +52,10 @@ class JournalEntry {
   StoreKey getKey() {
     return key;
   }
+
+  MessageInfo getMessageInfo() {
+    return messageInfo;
+  }
 }
 
 /**
@@ -15,9 +15,12 @@ package com.github.ambry.store;
 
 import com.codahale.metrics.Timer;
 import com.github.ambry.config.StoreConfig;
+import com.github.ambry.utils.CrcInputStream;
 import com.github.ambry.utils.Time;
 import com.github.ambry.utils.Utils;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -33,6 +36,7 @@ import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ScheduledExecutorService;
@@ -59,6 +63,7 @@ class PersistentIndex {
   static final short VERSION_1 = 1;
   static final short CURRENT_VERSION = VERSION_1;
   static final String CLEAN_SHUTDOWN_FILENAME = "cleanshutdown";
+  private static final int CRC_BUFFER_SIZE = 64 * 1024;
 
   static final FilenameFilter INDEX_SEGMENT_FILE_FILTER = new FilenameFilter() {
     @Override
@@ -86,6 +91,7 @@ class PersistentIndex {
 
   final ScheduledExecutorService scheduler;
   final Journal journal;
+  final Changelog changelog;
   final HardDeleter hardDeleter;
   final Thread hardDeleteThread;
 
@@ -111,6 +117,9 @@ class PersistentIndex {
   private volatile ConcurrentSkipListMap<Offset, IndexSegment> inFluxIndexSegments = validIndexSegments;
   private final Logger logger = LoggerFactory.getLogger(getClass());
   private final IndexPersistor persistor = new IndexPersistor();
+  // the files of the snapshots taken so far, by name. The part of a file that is in a snapshot does not change anymore,
+  // so its crc is computed only once, and the chunks of the files can be served without taking a new snapshot.
+  private final ConcurrentHashMap<String, StoreFileInfo> snapshotFiles = new ConcurrentHashMap<>();
 
   /**
    * Creates a new persistent index
@@ -172,6 +181,8 @@ class PersistentIndex {
     this.config = config;
     this.hardDelete = hardDelete;
     this.journal = journal;
+    this.changelog = new Changelog(datadir, config.storeChangelogMaxNumberOfEntries,
+        config.storeMaxNumberOfEntriesToReturnFromJournal);
     this.sessionId = sessionId;
     this.incarnationId = incarnationId;
     this.maxInMemoryIndexSizeInBytes = config.storeIndexMaxMemorySizeBytes;
@@ -345,6 +356,113 @@ class PersistentIndex {
     return validIndexSegments;
   }
 
+  /**
+   * Gets the {@link StoreSnapshot} of the log segments that have been rolled over from and whose index segments have
+   * all been mapped, along with the files of those index segments. The log segments are included only up to their end
+   * offsets, so the snapshot can be taken while the store is taking writes. The crcs of the files are computed only
+   * the first time that they are in a snapshot.
+   * @return the {@link StoreSnapshot} of the sealed part of the store.
+   * @throws StoreException if the last key of an index segment could not be read or if a file could not be read.
+   */
+  StoreSnapshot getSnapshot() throws StoreException {
+    List<IndexSegment> sealedSegments = new ArrayList<>();
+    // the bloom filter of a segment is persisted by the persistor right after it maps the segment.
+    synchronized (persistor) {
+      List<IndexSegment> segmentsOfLogSegment = new ArrayList<>();
+      for (IndexSegment indexSegment : validIndexSegments.values()) {
+        if (segmentsOfLogSegment.size() > 0 && !segmentsOfLogSegment.get(0)
+            .getLogSegmentName()
+            .equals(indexSegment.getLogSegmentName())) {
+          // the index has rolled over to the next log segment, so no more entries can be added to this log segment.
+          sealedSegments.addAll(segmentsOfLogSegment);
+          segmentsOfLogSegment.clear();
+        }
+        if (!indexSegment.isMapped()) {
+          break;
+        }
+        segmentsOfLogSegment.add(indexSegment);
+      }
+    }
+    List<StoreFileInfo> files = new ArrayList<>();
+    StoreFindToken findToken = null;
+    for (int i = 0; i < sealedSegments.size(); i++) {
+      IndexSegment indexSegment = sealedSegments.get(i);
+      boolean isLastOfLogSegment = i == sealedSegments.size() - 1 || !indexSegment.getLogSegmentName()
+          .equals(sealedSegments.get(i + 1).getLogSegmentName());
+      files.add(getSnapshotFileInfo(indexSegment.getFile().getName(), indexSegment.getFile().length()));
+      files.add(getSnapshotFileInfo(indexSegment.getBloomFile().getName(), indexSegment.getBloomFile().length()));
+      if (isLastOfLogSegment) {
+        // the log segment is listed after its index segments, only up to the end offset of the last of them.
+        files.add(getSnapshotFileInfo(LogSegmentNameHelper.nameToFilename(indexSegment.getLogSegmentName()),
+            indexSegment.getEndOffset().getOffset()));
+      }
+    }
+    if (sealedSegments.size() > 0) {
+      IndexSegment lastSegment = sealedSegments.get(sealedSegments.size() - 1);
+      try {
+        // the token is past the last key of the last sealed segment, so entries are found from the next segment on.
+        findToken = new StoreFindToken(lastSegment.getLastKey(), lastSegment.getStartOffset(), sessionId, incarnationId);
+      } catch (IOException e) {
+        throw new StoreException("Index : " + dataDir + " IO error while reading the last key of the index segment "
+            + lastSegment.getFile(), e, StoreErrorCodes.IOError);
+      }
+      findToken.setBytesRead(getAbsolutePositionInLogForOffset(lastSegment.getEndOffset(), validIndexSegments));
+    }
+    return new StoreSnapshot(files, findToken);
+  }
+
+  /**
+   * @param fileName the name of a file.
+   * @return the {@link StoreFileInfo} that the file was listed with in the last {@link StoreSnapshot} that it was in,
+   * or {@code null} if it has not been in any snapshot.
+   */
+  StoreFileInfo getSnapshotFileInfo(String fileName) {
+    return snapshotFiles.get(fileName);
+  }
+
+  /**
+   * Gets the {@link StoreFileInfo} of a file in a {@link StoreSnapshot}, computing the crc of the file only if it has
+   * not been in a snapshot with the same size before.
+   * @param fileName the name of the file.
+   * @param sizeInBytes the number of bytes of the file that are in the snapshot.
+   * @return the {@link StoreFileInfo} of the file.
+   * @throws StoreException if the file could not be read.
+   */
+  private StoreFileInfo getSnapshotFileInfo(String fileName, long sizeInBytes) throws StoreException {
+    StoreFileInfo fileInfo = snapshotFiles.get(fileName);
+    if (fileInfo == null || fileInfo.getSizeInBytes() != sizeInBytes) {
+      try {
+        fileInfo = new StoreFileInfo(fileName, sizeInBytes, computeCrc(new File(dataDir, fileName), sizeInBytes));
+      } catch (IOException e) {
+        throw new StoreException("Index : " + dataDir + " IO error while computing the crc of " + fileName, e,
+            StoreErrorCodes.IOError);
+      }
+      snapshotFiles.put(fileName, fileInfo);
+    }
+    return fileInfo;
+  }
+
+  /**
+   * Computes the crc of the first bytes of a file.
+   * @param file the file.
+   * @param sizeInBytes the number of bytes from the start of the file to compute the crc of.
+   * @return the crc of the first {@code sizeInBytes} bytes of the file.
+   * @throws IOException if the file could not be read or has fewer bytes.
+   */
+  static long computeCrc(File file, long sizeInBytes) throws IOException {
+    try (CrcInputStream crcStream = new CrcInputStream(new FileInputStream(file))) {
+      DataInputStream stream = new DataInputStream(crcStream);
+      byte[] buffer = new byte[(int) Math.min(CRC_BUFFER_SIZE, Math.max(sizeInBytes, 0))];
+      long sizeToRead = sizeInBytes;
+      while (sizeToRead > 0) {
+        int size = (int) Math.min(buffer.length, sizeToRead);
+        stream.readFully(buffer, 0, size);
+        sizeToRead -= size;
+      }
+      return crcStream.getValue();
+    }
+  }
+
   /**
    * Atomically adds {@code segmentFilesToAdd} to and removes {@code segmentsToRemove} from the map of {@link Offset} to
    * {@link IndexSegment} instances.
@@ -376,6 +494,12 @@ class PersistentIndex {
       }
     }
 
+    // the offsets in the changelog that are not in the journal may be in the segments being changed.
+    if (journalFirstOffset != null) {
+      changelog.removeEntriesBefore(journalFirstOffset);
+    } else {
+      changelog.clear();
+    }
     // first update the influx index segments reference
     inFluxIndexSegments = new ConcurrentSkipListMap<>();
     // now copy over all valid segments to the influx reference, remove ones that need removing and add the new ones.
@@ -406,6 +530,10 @@ class PersistentIndex {
       validIndexSegments.lastEntry().getValue().addEntry(entry, fileSpan.getEndOffset());
     }
     journal.addEntry(entry.getValue().getOffset(), entry.getKey(), entry.getCrc());
+    IndexValue value = entry.getValue();
+    changelog.addEntry(value.getOffset(),
+        new MessageInfo(entry.getKey(), value.getSize(), value.isFlagSet(IndexValue.Flags.Delete_Index),
+            value.getExpiresAtMs()));
   }
 
   /**
@@ -708,8 +836,8 @@ class PersistentIndex {
           offsetToStart = getStartOffset();
         }
         logger.trace("Index : " + dataDir + " getting entries since " + offsetToStart);
-        // check journal
-        List<JournalEntry> entries = journal.getEntriesSince(offsetToStart, storeToken.getInclusive());
+        // check changelog and journal
+        List<JournalEntry> entries = getJournalEntriesSince(offsetToStart, storeToken.getInclusive());
         logger.trace("Journal based token, Time used to get entries: {}", (time.milliseconds() - startTimeInMs));
         // we deliberately obtain a snapshot of the index segments AFTER fetching from the journal. This ensures that
         // any and all entries returned from the journal are guaranteed to be in the obtained snapshot of indexSegments.
@@ -723,13 +851,9 @@ class PersistentIndex {
           Offset offsetEnd = offsetToStart;
           long currentTotalSizeOfEntries = 0;
           for (JournalEntry entry : entries) {
-            IndexValue value =
-                findKey(entry.getKey(), new FileSpan(entry.getOffset(), getCurrentEndOffset(indexSegments)),
-                    IndexEntryType.ANY, indexSegments);
-            messageEntries.add(
-                new MessageInfo(entry.getKey(), value.getSize(), value.isFlagSet(IndexValue.Flags.Delete_Index),
-                    value.getExpiresAtMs()));
-            currentTotalSizeOfEntries += value.getSize();
+            MessageInfo messageInfo = getMessageInfo(entry, getCurrentEndOffset(indexSegments), indexSegments);
+            messageEntries.add(messageInfo);
+            currentTotalSizeOfEntries += messageInfo.getSize();
             offsetEnd = entry.getOffset();
             if (currentTotalSizeOfEntries >= maxTotalSizeOfEntries) {
               break;
@@ -977,7 +1101,7 @@ class PersistentIndex {
       // Check in the journal to see if we are already at an offset in the journal, if so get entries from it.
       Offset journalFirstOffsetBeforeCheck = journal.getFirstOffset();
       Offset journalLastOffsetBeforeCheck = journal.getLastOffset();
-      List<JournalEntry> entries = journal.getEntriesSince(segmentStartOffset, true);
+      List<JournalEntry> entries = getJournalEntriesSince(segmentStartOffset, true);
       Offset endOffsetOfSnapshot = getCurrentEndOffset(indexSegments);
       if (entries != null) {
         logger.trace("Index : " + dataDir + " findEntriesFromOffset journal offset " + segmentStartOffset
@@ -1003,13 +1127,9 @@ class PersistentIndex {
             }
           }
           newTokenOffsetInJournal = entry.getOffset();
-          IndexValue value =
-              findKey(entry.getKey(), new FileSpan(entry.getOffset(), endOffsetOfSnapshot), IndexEntryType.ANY,
-                  indexSegments);
-          messageEntries.add(
-              new MessageInfo(entry.getKey(), value.getSize(), value.isFlagSet(IndexValue.Flags.Delete_Index),
-                  value.getExpiresAtMs()));
-          currentTotalSizeOfEntries.addAndGet(value.getSize());
+          MessageInfo messageInfo = getMessageInfo(entry, endOffsetOfSnapshot, indexSegments);
+          messageEntries.add(messageInfo);
+          currentTotalSizeOfEntries.addAndGet(messageInfo.getSize());
           if (!findEntriesCondition.proceed(currentTotalSizeOfEntries.get(),
               currentSegment.getLastModifiedTimeSecs())) {
             break;
@@ -1063,6 +1183,45 @@ class PersistentIndex {
     }
   }
 
+  /**
+   * Gets the entries since the given offset from the {@link Changelog} if it has the offset, and from the
+   * {@link Journal} otherwise.
+   * @param offset The {@link Offset} from where entries need to be returned.
+   * @param inclusive if {@code true}, the returned entries (if not {@code null}), contain the entry at {@code offset}.
+   * @return The entries starting from offset, or {@code null} if the offset is neither in the changelog nor in the
+   * journal.
+   */
+  private List<JournalEntry> getJournalEntriesSince(Offset offset, boolean inclusive) {
+    List<JournalEntry> entries = changelog.getEntriesSince(offset, inclusive);
+    if (entries != null) {
+      metrics.changelogHitCount.inc();
+    } else {
+      entries = journal.getEntriesSince(offset, inclusive);
+    }
+    return entries;
+  }
+
+  /**
+   * Gets the {@link MessageInfo} of an entry returned by {@link #getJournalEntriesSince(Offset, boolean)}. The info
+   * is looked up in the index unless the entry came with it.
+   * @param entry the {@link JournalEntry} whose info is required.
+   * @param endOffset the end {@link Offset} of the index segments snapshot.
+   * @param indexSegments the map of index segment start {@link Offset} to {@link IndexSegment} instances
+   * @return the {@link MessageInfo} of the latest value of the key at or after the offset of the entry.
+   * @throws StoreException
+   */
+  private MessageInfo getMessageInfo(JournalEntry entry, Offset endOffset,
+      ConcurrentSkipListMap<Offset, IndexSegment> indexSegments) throws StoreException {
+    MessageInfo messageInfo = entry.getMessageInfo();
+    if (messageInfo == null) {
+      IndexValue value =
+          findKey(entry.getKey(), new FileSpan(entry.getOffset(), endOffset), IndexEntryType.ANY, indexSegments);
+      messageInfo = new MessageInfo(entry.getKey(), value.getSize(), value.isFlagSet(IndexValue.Flags.Delete_Index),
+          value.getExpiresAtMs());
+    }
+    return messageInfo;
+  }
+
   /**
    * We can have duplicate entries in the message entries since updates can happen to the same key. For example,
    * insert a key followed by a delete. This would create two entries in the journal or the index. A single findInfo
@@ -1232,7 +1391,7 @@ class PersistentIndex {
           offsetToStart = getStartOffset();
           inclusive = true;
         }
-        List<JournalEntry> entries = journal.getEntriesSince(offsetToStart, inclusive);
+        List<JournalEntry> entries = getJournalEntriesSince(offsetToStart, inclusive);
         // we deliberately obtain a snapshot of the index segments AFTER fetching from the journal. This ensures that
         // any and all entries returned from the journal are guaranteed to be in the obtained snapshot of indexSegments.
         ConcurrentSkipListMap<Offset, IndexSegment> indexSegments = validIndexSegments;
@@ -1251,14 +1410,12 @@ class PersistentIndex {
               break;
             }
 
-            IndexValue value =
-                findKey(entry.getKey(), new FileSpan(entry.getOffset(), getCurrentEndOffset(indexSegments)),
-                    IndexEntryType.ANY, indexSegments);
-            if (value.isFlagSet(IndexValue.Flags.Delete_Index)) {
-              messageEntries.add(new MessageInfo(entry.getKey(), value.getSize(), true, value.getExpiresAtMs()));
+            MessageInfo messageInfo = getMessageInfo(entry, getCurrentEndOffset(indexSegments), indexSegments);
+            if (messageInfo.isDeleted()) {
+              messageEntries.add(messageInfo);
             }
             offsetEnd = entry.getOffset();
-            currentTotalSizeOfEntries += value.getSize();
+            currentTotalSizeOfEntries += messageInfo.getSize();
             if (currentTotalSizeOfEntries >= maxTotalSizeOfEntries) {
               break;
             }
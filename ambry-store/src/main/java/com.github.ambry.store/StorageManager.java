@@ -19,12 +19,17 @@ import com.github.ambry.clustermap.DiskId;
 import com.github.ambry.clustermap.PartitionId;
 import com.github.ambry.clustermap.ReplicaId;
 import com.github.ambry.config.StoreConfig;
+import com.github.ambry.network.Send;
 import com.github.ambry.utils.Time;
 import com.github.ambry.utils.Utils;
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +42,9 @@ import org.slf4j.LoggerFactory;
 public class StorageManager {
   private final Map<PartitionId, DiskManager> partitionToDiskManager = new HashMap<>();
   private final List<DiskManager> diskManagers = new ArrayList<>();
+  // the partitions whose stores are being bootstrapped from a peer, and are not served until that completes.
+  private final Set<PartitionId> partitionsBeingBootstrapped =
+      Collections.newSetFromMap(new ConcurrentHashMap<PartitionId, Boolean>());
   private final StorageManagerMetrics metrics;
   private static final Logger logger = LoggerFactory.getLogger(StorageManager.class);
 
@@ -124,13 +132,93 @@ public class StorageManager {
   /**
    * @param id the {@link PartitionId} to find the store for.
    * @return the {@link Store} corresponding to the given {@link PartitionId}, or {@code null} if no store was found for
-   *         that partition, or that store was not started.
+   *         that partition, that store was not started, or it is being bootstrapped.
    */
   public Store getStore(PartitionId id) {
+    if (partitionsBeingBootstrapped.contains(id)) {
+      return null;
+    }
     DiskManager diskManager = partitionToDiskManager.get(id);
     return diskManager != null ? diskManager.getStore(id) : null;
   }
 
+  /**
+   * @param id the {@link PartitionId} of the store.
+   * @return the {@link StoreSnapshot} of the part of the store of the given {@link PartitionId} that is not going to
+   *         change anymore.
+   * @throws StoreException if no started store was found for the partition or the snapshot could not be taken.
+   */
+  public StoreSnapshot getStoreSnapshot(PartitionId id) throws StoreException {
+    return getStartedStore(id).getSnapshot();
+  }
+
+  /**
+   * Gets a range of bytes of one of the files in the current {@link StoreSnapshot} of the store of the given
+   * {@link PartitionId}.
+   * @param id the {@link PartitionId} of the store.
+   * @param fileName the name of the file.
+   * @param offset the offset in the file of the first byte of the range.
+   * @param size the number of bytes in the range.
+   * @return a {@link Send} that transfers the range of bytes directly from the file.
+   * @throws IllegalArgumentException if the range is not within the part of the file that is in the snapshot.
+   * @throws StoreException if no started store was found for the partition, or if the file is not in its snapshot.
+   */
+  public Send getStoreSnapshotFileChunk(PartitionId id, String fileName, long offset, long size)
+      throws StoreException {
+    return getStartedStore(id).getSnapshotFileChunk(fileName, offset, size);
+  }
+
+  /**
+   * Bootstraps the empty store of the given {@link PartitionId} with the files of a {@link StoreSnapshot} of another
+   * replica of the partition. The store is not available while it is being restarted with the files.
+   * @param id the {@link PartitionId} of the store.
+   * @param snapshotDir the directory with the files of the snapshot. It has to be on the same disk as the store.
+   * @param files the {@link StoreFileInfo}s of the files of the snapshot.
+   * @throws StoreException if no started store was found for the partition, if it is not empty, or if it could not be
+   *         bootstrapped with the files.
+   */
+  public void bootstrapStore(PartitionId id, File snapshotDir, List<StoreFileInfo> files) throws StoreException {
+    getStartedStore(id).bootstrap(snapshotDir, files);
+  }
+
+  /**
+   * Takes the store of the given {@link PartitionId} out of serving if it is empty, so that it can be bootstrapped
+   * from a peer. {@link #getStore(PartitionId)} returns {@code null} for it until {@link #endBootstrap(PartitionId)}
+   * is called.
+   * @param id the {@link PartitionId} of the store.
+   * @return {@code true} if the store was empty and is now taken out of serving.
+   * @throws StoreException if no started store was found for the partition.
+   */
+  public boolean startBootstrapIfEmpty(PartitionId id) throws StoreException {
+    if (!getStartedStore(id).isEmpty()) {
+      return false;
+    }
+    partitionsBeingBootstrapped.add(id);
+    return true;
+  }
+
+  /**
+   * Puts the store of the given {@link PartitionId} back into serving once its bootstrap has completed (or failed).
+   * @param id the {@link PartitionId} of the store.
+   */
+  public void endBootstrap(PartitionId id) {
+    partitionsBeingBootstrapped.remove(id);
+  }
+
+  /**
+   * @param id the {@link PartitionId} to find the store for.
+   * @return the started {@link BlobStore} of the given {@link PartitionId}.
+   * @throws StoreException if no started store was found for the partition.
+   */
+  private BlobStore getStartedStore(PartitionId id) throws StoreException {
+    DiskManager diskManager = partitionToDiskManager.get(id);
+    BlobStore store = diskManager != null ? diskManager.getStore(id) : null;
+    if (store == null) {
+      throw new StoreException("No started store found for partition " + id, StoreErrorCodes.Store_Not_Started);
+    }
+    return store;
+  }
+
   /**
    * Shutdown the {@link DiskManager}s for the disks on this node.
    * @throws StoreException
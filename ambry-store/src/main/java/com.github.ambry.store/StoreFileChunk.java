@@ -0,0 +1,74 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.store;
+
+import com.github.ambry.network.Send;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+
+/**
+ * A {@link Send} of a range of bytes of a file of a store. The bytes are transferred directly from the file to the
+ * channel they are written to, without being copied into memory.
+ * <p/>
+ * The file is opened afresh for every {@link #writeTo(WritableByteChannel)} and closed before it returns, so a send
+ * that is abandoned before it completes (for e.g. because the connection was closed) does not leak a file descriptor.
+ */
+class StoreFileChunk implements Send {
+  private final File file;
+  private final long startOffset;
+  private final long size;
+  private long sizeWritten = 0;
+
+  /**
+   * @param file the file to send the bytes of.
+   * @param startOffset the offset in the file of the first byte to send.
+   * @param size the number of bytes to send.
+   * @throws IOException if the file does not exist.
+   */
+  StoreFileChunk(File file, long startOffset, long size) throws IOException {
+    if (!file.isFile()) {
+      throw new FileNotFoundException(file + " does not exist or is not a file");
+    }
+    this.file = file;
+    this.startOffset = startOffset;
+    this.size = size;
+  }
+
+  @Override
+  public long writeTo(WritableByteChannel channel) throws IOException {
+    long written = 0;
+    if (!isSendComplete()) {
+      try (FileChannel fileChannel = new RandomAccessFile(file, "r").getChannel()) {
+        written = fileChannel.transferTo(startOffset + sizeWritten, size - sizeWritten, channel);
+      }
+      sizeWritten += written;
+    }
+    return written;
+  }
+
+  @Override
+  public boolean isSendComplete() {
+    return sizeWritten == size;
+  }
+
+  @Override
+  public long sizeInBytes() {
+    return size;
+  }
+}
@@ -54,6 +54,7 @@ public class StoreMetrics {
   public final Histogram segmentSizeForExists;
   public final Histogram segmentsAccessedPerBlobCount;
   public final Counter identicalPutAttemptCount;
+  public final Counter changelogHitCount;
 
   private final MetricRegistry registry;
   private final String name;
@@ -61,7 +62,7 @@ public class StoreMetrics {
   public StoreMetrics(String storeId, MetricRegistry registry) {
     this.registry = registry;
     name = storeId + ".";
-    getResponse = registry.timer(MetricRegistry.name(BlobStore.class, name + "StoreGetResponse"));
+    getResponse = registry.timer(getGetResponseMetricName(storeId));
     putResponse = registry.timer(MetricRegistry.name(BlobStore.class, name + "StorePutResponse"));
     deleteResponse = registry.timer(MetricRegistry.name(BlobStore.class, name + "StoreDeleteResponse"));
     findEntriesSinceResponse =
@@ -101,6 +102,15 @@ public class StoreMetrics {
         registry.histogram(MetricRegistry.name(IndexSegment.class, name + "SegmentsAccessedPerBlobCount"));
     identicalPutAttemptCount =
         registry.counter(MetricRegistry.name(PersistentIndex.class, name + "IdenticalPutAttemptCount"));
+    changelogHitCount = registry.counter(MetricRegistry.name(PersistentIndex.class, name + "ChangelogHitCount"));
+  }
+
+  /**
+   * @param storeId the name of the store.
+   * @return the name of the {@link Timer} that tracks the time taken to serve the gets of the store.
+   */
+  public static String getGetResponseMetricName(String storeId) {
+    return MetricRegistry.name(BlobStore.class, storeId + ".StoreGetResponse");
   }
 
   void initializeIndexGauges(final PersistentIndex index, final long capacityInBytes) {
@@ -110,21 +120,21 @@ public class StoreMetrics {
         return index.getLogUsedCapacity();
       }
     };
-    registry.register(MetricRegistry.name(Log.class, name + "CurrentCapacityUsed"), currentCapacityUsed);
+    registerGauge(MetricRegistry.name(Log.class, name + "CurrentCapacityUsed"), currentCapacityUsed);
     Gauge<Double> percentageUsedCapacity = new Gauge<Double>() {
       @Override
       public Double getValue() {
         return ((double) index.getLogUsedCapacity() / capacityInBytes) * 100;
       }
     };
-    registry.register(MetricRegistry.name(Log.class, name + "PercentageUsedCapacity"), percentageUsedCapacity);
+    registerGauge(MetricRegistry.name(Log.class, name + "PercentageUsedCapacity"), percentageUsedCapacity);
     Gauge<Long> currentSegmentCount = new Gauge<Long>() {
       @Override
       public Long getValue() {
         return index.getLogSegmentCount();
       }
     };
-    registry.register(MetricRegistry.name(Log.class, name + "CurrentSegmentCount"), currentSegmentCount);
+    registerGauge(MetricRegistry.name(Log.class, name + "CurrentSegmentCount"), currentSegmentCount);
   }
 
   void initializeHardDeleteMetric(final HardDeleter hardDeleter, final PersistentIndex index) {
@@ -134,7 +144,7 @@ public class StoreMetrics {
         return hardDeleter.getProgress();
       }
     };
-    registry.register(MetricRegistry.name(PersistentIndex.class, name + "CurrentHardDeleteProgress"),
+    registerGauge(MetricRegistry.name(PersistentIndex.class, name + "CurrentHardDeleteProgress"),
         currentHardDeleteProgress);
 
     Gauge<Double> percentageHardDeleteCompleted = new Gauge<Double>() {
@@ -143,7 +153,7 @@ public class StoreMetrics {
         return ((double) hardDeleter.getProgress() / index.getLogUsedCapacity()) * 100;
       }
     };
-    registry.register(MetricRegistry.name(Log.class, name + "PercentageHardDeleteCompleted"),
+    registerGauge(MetricRegistry.name(Log.class, name + "PercentageHardDeleteCompleted"),
         percentageHardDeleteCompleted);
 
     Gauge<Long> hardDeleteThreadRunning = new Gauge<Long>() {
@@ -152,7 +162,7 @@ public class StoreMetrics {
         return hardDeleter.isRunning() ? 1L : 0L;
       }
     };
-    registry.register(MetricRegistry.name(PersistentIndex.class, name + "HardDeleteThreadRunning"),
+    registerGauge(MetricRegistry.name(PersistentIndex.class, name + "HardDeleteThreadRunning"),
         hardDeleteThreadRunning);
 
     Gauge<Long> hardDeleteCaughtUp = new Gauge<Long>() {
@@ -161,6 +171,17 @@ public class StoreMetrics {
         return hardDeleter.isCaughtUp() ? 1L : 0L;
       }
     };
-    registry.register(MetricRegistry.name(PersistentIndex.class, name + "HardDeleteCaughtUp"), hardDeleteCaughtUp);
+    registerGauge(MetricRegistry.name(PersistentIndex.class, name + "HardDeleteCaughtUp"), hardDeleteCaughtUp);
+  }
+
+  /**
+   * Registers a gauge, replacing any gauge registered with the same name before. The gauges refer to the index of the
+   * store, so they are registered again whenever the store is restarted.
+   * @param metricName the name of the gauge.
+   * @param gauge the {@link Gauge} to register.
+   */
+  private void registerGauge(String metricName, Gauge<?> gauge) {
+    registry.remove(metricName);
+    registry.register(metricName, gauge);
   }
 }
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.store;
+
+import java.util.List;
+
+
+/**
+ * The files of the part of a store that is not going to change anymore i.e. the log segments that have been rolled
+ * over from and the index segments that refer to them. A new replica of the store can be bootstrapped by copying these
+ * files and then replicating from the peer they were copied from starting at {@link #getFindToken()}.
+ */
+public class StoreSnapshot {
+  private final List<StoreFileInfo> files;
+  private final FindToken findToken;
+
+  /**
+   * @param files the {@link StoreFileInfo}s of the files in this snapshot.
+   * @param findToken the {@link FindToken} that refers to the end of the snapshot.
+   */
+  StoreSnapshot(List<StoreFileInfo> files, FindToken findToken) {
+    this.files = files;
+    this.findToken = findToken;
+  }
+
+  /**
+   * @return the {@link StoreFileInfo}s of the files in this snapshot. Every log segment is listed right after the
+   * index segments that refer to it.
+   */
+  public List<StoreFileInfo> getFiles() {
+    return files;
+  }
+
+  /**
+   * @return the {@link FindToken} from which the entries that are not in this snapshot can be found, or {@code null}
+   * if the snapshot has no files.
+   */
+  public FindToken getFindToken() {
+    return findToken;
+  }
+}
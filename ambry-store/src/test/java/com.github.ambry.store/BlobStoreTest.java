@@ -16,6 +16,7 @@ package com.github.ambry.store;
 import com.codahale.metrics.MetricRegistry;
 import com.github.ambry.config.StoreConfig;
 import com.github.ambry.config.VerifiableProperties;
+import com.github.ambry.network.Send;
 import com.github.ambry.utils.ByteBufferInputStream;
 import com.github.ambry.utils.ByteBufferOutputStream;
 import com.github.ambry.utils.MockTime;
@@ -25,6 +26,7 @@ import com.github.ambry.utils.Time;
 import com.github.ambry.utils.Utils;
 import com.github.ambry.utils.UtilsTest;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
@@ -655,6 +657,140 @@ public class BlobStoreTest {
     }
   }
 
+  /**
+   * Tests {@link BlobStore#getSnapshot()}, {@link BlobStore#getSnapshotFileChunk(String, long, long)} and
+   * {@link BlobStore#bootstrap(File, List)} by bootstrapping an empty store with the snapshot of this one.
+   * @throws Exception
+   */
+  @Test
+  public void snapshotAndBootstrapTest() throws Exception {
+    StoreSnapshot snapshot = store.getSnapshot();
+    if (!isLogSegmented) {
+      // the only log segment is still being written to.
+      assertEquals("Snapshot should have no files", 0, snapshot.getFiles().size());
+      assertNull("Snapshot should have no token", snapshot.getFindToken());
+      return;
+    }
+    assertTrue("Snapshot should have files", snapshot.getFiles().size() > 0);
+    assertNotNull("Snapshot should have a token", snapshot.getFindToken());
+    // the crcs of the files are computed only the first time that they are in a snapshot.
+    List<StoreFileInfo> filesOfNextSnapshot = store.getSnapshot().getFiles();
+    assertEquals("Snapshots should have the same files", snapshot.getFiles().size(), filesOfNextSnapshot.size());
+    for (int i = 0; i < filesOfNextSnapshot.size(); i++) {
+      assertSame("File of the snapshot should not have been listed again", snapshot.getFiles().get(i),
+          filesOfNextSnapshot.get(i));
+    }
+    try {
+      store.getSnapshotFileChunk("non_existent_file", 0, 1);
+      fail("Getting a chunk of a file that is not in the snapshot should have failed");
+    } catch (StoreException e) {
+      assertEquals("Unexpected StoreErrorCode", StoreErrorCodes.ID_Not_Found, e.getErrorCode());
+    }
+    StoreFileInfo firstFile = snapshot.getFiles().get(0);
+    try {
+      store.getSnapshotFileChunk(firstFile.getFileName(), 1, firstFile.getSizeInBytes());
+      fail("Getting a chunk beyond the end of a file should have failed");
+    } catch (IllegalArgumentException e) {
+      // expected. Nothing to do.
+    }
+
+    File targetDir = StoreTestUtils.createTempDirectory("targetStoreDir-" + UtilsTest.getRandomString(10));
+    File snapshotDir = StoreTestUtils.createTempDirectory("snapshotDir-" + UtilsTest.getRandomString(10));
+    StorageManagerMetrics metrics = new StorageManagerMetrics(new MetricRegistry());
+    StoreConfig config = new StoreConfig(new VerifiableProperties(properties));
+    BlobStore targetStore =
+        new BlobStore(storeId, config, scheduler, diskIOScheduler, metrics, targetDir.getAbsolutePath(), LOG_CAPACITY,
+            STORE_KEY_FACTORY, recovery, hardDelete, time);
+    targetStore.start();
+    try {
+      assertTrue("Store should be empty", targetStore.isEmpty());
+      for (StoreFileInfo fileInfo : snapshot.getFiles()) {
+        copySnapshotFile(fileInfo, snapshotDir, SEGMENT_CAPACITY / 3);
+      }
+
+      // a file that does not have the size it is listed with fails the bootstrap and leaves the store empty.
+      List<StoreFileInfo> invalidFiles = new ArrayList<>(snapshot.getFiles());
+      invalidFiles.set(0,
+          new StoreFileInfo(firstFile.getFileName(), firstFile.getSizeInBytes() + 1, firstFile.getCrc()));
+      try {
+        targetStore.bootstrap(snapshotDir, invalidFiles);
+        fail("Bootstrap with invalid files should have failed");
+      } catch (StoreException e) {
+        assertEquals("Unexpected StoreErrorCode", StoreErrorCodes.Initialization_Error, e.getErrorCode());
+      }
+      assertTrue("Store should be started", targetStore.isStarted());
+      assertTrue("Store should be empty", targetStore.isEmpty());
+
+      // so does a log segment that does not have the crc it is listed with.
+      invalidFiles = new ArrayList<>(snapshot.getFiles());
+      for (int i = 0; i < invalidFiles.size(); i++) {
+        StoreFileInfo fileInfo = invalidFiles.get(i);
+        if (fileInfo.getFileName().endsWith(LogSegmentNameHelper.SUFFIX)) {
+          invalidFiles.set(i,
+              new StoreFileInfo(fileInfo.getFileName(), fileInfo.getSizeInBytes(), fileInfo.getCrc() + 1));
+          break;
+        }
+      }
+      try {
+        targetStore.bootstrap(snapshotDir, invalidFiles);
+        fail("Bootstrap with a log segment with an invalid crc should have failed");
+      } catch (StoreException e) {
+        assertEquals("Unexpected StoreErrorCode", StoreErrorCodes.Initialization_Error, e.getErrorCode());
+      }
+      assertTrue("Store should be started", targetStore.isStarted());
+      assertTrue("Store should be empty", targetStore.isEmpty());
+
+      targetStore.bootstrap(snapshotDir, snapshot.getFiles());
+      assertTrue("Store should be started", targetStore.isStarted());
+      assertFalse("Store should not be empty", targetStore.isEmpty());
+      Set<StoreKey> bootstrappedKeys = new HashSet<>();
+      bootstrappedKeys.addAll(idsByLogSegment.get(0));
+      bootstrappedKeys.addAll(idsByLogSegment.get(1));
+      assertEquals("Keys of the sealed log segments should be present", Collections.EMPTY_SET,
+          targetStore.findMissingKeys(new ArrayList<>(bootstrappedKeys)));
+      MockId keyOfActiveSegment = null;
+      for (MockId id : idsByLogSegment.get(2)) {
+        if (!bootstrappedKeys.contains(id)) {
+          keyOfActiveSegment = id;
+          break;
+        }
+      }
+      assertEquals("Keys of the active log segment should not be present",
+          Collections.singleton(keyOfActiveSegment),
+          targetStore.findMissingKeys(Collections.<StoreKey>singletonList(keyOfActiveSegment)));
+      // replicating from the source store with the token of the snapshot returns only the entries after the
+      // bootstrapped segments.
+      FindInfo findInfo = store.findEntriesSince(snapshot.getFindToken(), Long.MAX_VALUE);
+      assertTrue("There should be entries after the token of the snapshot", findInfo.getMessageEntries().size() > 0);
+      for (MessageInfo messageInfo : findInfo.getMessageEntries()) {
+        assertTrue("Entry after the token of the snapshot should be in the active log segment",
+            idsByLogSegment.get(2).contains(messageInfo.getStoreKey()));
+      }
+
+      // the bootstrapped store can be written to and restarted.
+      MockId id = getUniqueId();
+      MessageInfo info = new MessageInfo(id, PUT_RECORD_SIZE, false, Utils.Infinite_Time, random.nextLong());
+      targetStore.put(new MockMessageWriteSet(Collections.singletonList(info),
+          Collections.singletonList(ByteBuffer.wrap(TestUtils.getRandomBytes(PUT_RECORD_SIZE)))));
+      targetStore.shutdown();
+      targetStore.start();
+      assertEquals("Keys should be present after restart", Collections.EMPTY_SET,
+          targetStore.findMissingKeys(new ArrayList<StoreKey>(Collections.singletonList(id))));
+
+      // a store that is not empty cannot be bootstrapped.
+      try {
+        targetStore.bootstrap(snapshotDir, snapshot.getFiles());
+        fail("Bootstrap of a store that is not empty should have failed");
+      } catch (StoreException e) {
+        assertEquals("Unexpected StoreErrorCode", StoreErrorCodes.Initialization_Error, e.getErrorCode());
+      }
+    } finally {
+      targetStore.shutdown();
+      assertTrue(targetDir + " could not be deleted", StoreTestUtils.cleanDirectory(targetDir, true));
+      assertTrue(snapshotDir + " could not be deleted", StoreTestUtils.cleanDirectory(snapshotDir, true));
+    }
+  }
+
   /**
    * Tests store shutdown and the ability to do operations when a store is shutdown or has not been started yet.
    * @throws StoreException
@@ -976,6 +1112,31 @@ public class BlobStoreTest {
     assertTrue("Store should be started", store.isStarted());
   }
 
+  // snapshotAndBootstrapTest() helpers
+
+  /**
+   * Copies a file of the {@link StoreSnapshot} of {@link #store} to the given directory, in chunks.
+   * @param fileInfo the {@link StoreFileInfo} of the file to copy.
+   * @param dir the directory to copy the file to.
+   * @param chunkSize the size of the chunks to copy the file in.
+   * @throws IOException
+   * @throws StoreException
+   */
+  private void copySnapshotFile(StoreFileInfo fileInfo, File dir, long chunkSize) throws IOException, StoreException {
+    try (FileOutputStream outputStream = new FileOutputStream(new File(dir, fileInfo.getFileName()))) {
+      long offset = 0;
+      while (offset < fileInfo.getSizeInBytes()) {
+        long size = Math.min(chunkSize, fileInfo.getSizeInBytes() - offset);
+        Send chunk = store.getSnapshotFileChunk(fileInfo.getFileName(), offset, size);
+        assertEquals("Chunk size not as expected", size, chunk.sizeInBytes());
+        while (!chunk.isSendComplete()) {
+          chunk.writeTo(outputStream.getChannel());
+        }
+        offset += size;
+      }
+    }
+  }
+
   // storeStartupTests() helpers
 
   /**
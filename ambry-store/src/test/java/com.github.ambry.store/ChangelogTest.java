@@ -0,0 +1,139 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.store;
+
+import com.github.ambry.utils.TestUtils;
+import com.github.ambry.utils.Utils;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * Tests for {@link Changelog}.
+ */
+public class ChangelogTest {
+  private final String firstLogSegmentName;
+  private final String secondLogSegmentName;
+
+  public ChangelogTest() {
+    long pos = Utils.getRandomLong(TestUtils.RANDOM, 1000);
+    long gen = Utils.getRandomLong(TestUtils.RANDOM, 1000);
+    firstLogSegmentName = LogSegmentNameHelper.getName(pos, gen);
+    secondLogSegmentName = LogSegmentNameHelper.getNextPositionName(firstLogSegmentName);
+  }
+
+  /**
+   * Tests adding and getting entries, including the limits on the number of entries held and returned.
+   */
+  @Test
+  public void addAndGetEntriesTest() {
+    Changelog changelog = new Changelog("test", 6, 3);
+    Assert.assertNull("First offset should be null", changelog.getFirstOffset());
+    Assert.assertNull("Last offset should be null", changelog.getLastOffset());
+    Assert.assertNull("Should not be able to get entries because there are none",
+        changelog.getEntriesSince(new Offset(firstLogSegmentName, 0), true));
+    for (int i = 0; i < 4; i++) {
+      changelog.addEntry(new Offset(firstLogSegmentName, i * 1000), new MessageInfo(new MockId("id" + i), 1000));
+    }
+    changelog.addEntry(new Offset(secondLogSegmentName, 0), new MessageInfo(new MockId("id4"), 1000));
+    Assert.assertEquals("Unexpected number of entries", 5, changelog.getNumberOfEntries());
+
+    List<JournalEntry> entries = changelog.getEntriesSince(new Offset(firstLogSegmentName, 0), true);
+    Assert.assertEquals("Unexpected number of entries returned", 3, entries.size());
+    for (int i = 0; i < entries.size(); i++) {
+      verifyEntry(entries.get(i), new Offset(firstLogSegmentName, i * 1000), "id" + i, 1000, false);
+    }
+    entries = changelog.getEntriesSince(new Offset(firstLogSegmentName, 2000), false);
+    Assert.assertEquals("Unexpected number of entries returned", 2, entries.size());
+    verifyEntry(entries.get(0), new Offset(firstLogSegmentName, 3000), "id3", 1000, false);
+    verifyEntry(entries.get(1), new Offset(secondLogSegmentName, 0), "id4", 1000, false);
+    Assert.assertEquals("There should be no entries after the last one", 0,
+        changelog.getEntriesSince(new Offset(secondLogSegmentName, 0), false).size());
+    Assert.assertNull("Should not be able to get entries for an offset that is not in the changelog",
+        changelog.getEntriesSince(new Offset(firstLogSegmentName, 1), true));
+
+    // the oldest entries are pushed out once the changelog is full.
+    changelog.addEntry(new Offset(secondLogSegmentName, 1000), new MessageInfo(new MockId("id5"), 1000));
+    changelog.addEntry(new Offset(secondLogSegmentName, 2000), new MessageInfo(new MockId("id6"), 1000));
+    Assert.assertEquals("Unexpected number of entries", 6, changelog.getNumberOfEntries());
+    Assert.assertEquals("First offset not as expected", new Offset(firstLogSegmentName, 1000),
+        changelog.getFirstOffset());
+    Assert.assertEquals("Last offset not as expected", new Offset(secondLogSegmentName, 2000),
+        changelog.getLastOffset());
+    Assert.assertNull("Should not be able to get entries for an offset that was pushed out",
+        changelog.getEntriesSince(new Offset(firstLogSegmentName, 0), false));
+
+    // a changelog with no entries holds nothing.
+    changelog = new Changelog("test", 0, 3);
+    changelog.addEntry(new Offset(firstLogSegmentName, 0), new MessageInfo(new MockId("id0"), 1000));
+    Assert.assertEquals("Unexpected number of entries", 0, changelog.getNumberOfEntries());
+    Assert.assertNull("Should not be able to get entries because there are none",
+        changelog.getEntriesSince(new Offset(firstLogSegmentName, 0), true));
+  }
+
+  /**
+   * Tests that a put is returned with the info of the delete of its key once the key is deleted, and is returned as is
+   * once the delete is out of the changelog.
+   */
+  @Test
+  public void deleteStateTest() {
+    Changelog changelog = new Changelog("test", 10, 10);
+    MockId deletedId = new MockId("id0");
+    long expiresAtMs = 12345;
+    changelog.addEntry(new Offset(firstLogSegmentName, 0), new MessageInfo(deletedId, 1000, false, expiresAtMs));
+    changelog.addEntry(new Offset(firstLogSegmentName, 1000), new MessageInfo(new MockId("id1"), 1000));
+    List<JournalEntry> entries = changelog.getEntriesSince(new Offset(firstLogSegmentName, 0), true);
+    verifyEntry(entries.get(0), new Offset(firstLogSegmentName, 0), "id0", 1000, false);
+
+    changelog.addEntry(new Offset(firstLogSegmentName, 2000), new MessageInfo(deletedId, 100, true, expiresAtMs));
+    entries = changelog.getEntriesSince(new Offset(firstLogSegmentName, 0), true);
+    Assert.assertEquals("Unexpected number of entries returned", 3, entries.size());
+    verifyEntry(entries.get(0), new Offset(firstLogSegmentName, 0), "id0", 100, true);
+    Assert.assertEquals("Unexpected expiration time", expiresAtMs,
+        entries.get(0).getMessageInfo().getExpirationTimeInMs());
+    verifyEntry(entries.get(1), new Offset(firstLogSegmentName, 1000), "id1", 1000, false);
+    verifyEntry(entries.get(2), new Offset(firstLogSegmentName, 2000), "id0", 100, true);
+
+    // entries before the delete are removed, and the delete along with them.
+    changelog.removeEntriesBefore(new Offset(firstLogSegmentName, 1000));
+    Assert.assertEquals("First offset not as expected", new Offset(firstLogSegmentName, 1000),
+        changelog.getFirstOffset());
+    changelog.removeEntriesBefore(new Offset(secondLogSegmentName, 0));
+    Assert.assertEquals("Unexpected number of entries", 0, changelog.getNumberOfEntries());
+    changelog.addEntry(new Offset(secondLogSegmentName, 0), new MessageInfo(deletedId, 1000, false, expiresAtMs));
+    entries = changelog.getEntriesSince(new Offset(secondLogSegmentName, 0), true);
+    verifyEntry(entries.get(0), new Offset(secondLogSegmentName, 0), "id0", 1000, false);
+
+    changelog.clear();
+    Assert.assertEquals("Unexpected number of entries", 0, changelog.getNumberOfEntries());
+    Assert.assertNull("First offset should be null", changelog.getFirstOffset());
+  }
+
+  /**
+   * Verifies that a {@link JournalEntry} returned by the changelog is as expected.
+   * @param entry the {@link JournalEntry} to verify.
+   * @param offset the expected {@link Offset}.
+   * @param id the expected id.
+   * @param size the expected size.
+   * @param deleted the expected delete state.
+   */
+  private void verifyEntry(JournalEntry entry, Offset offset, String id, long size, boolean deleted) {
+    Assert.assertEquals("Offset not as expected", offset, entry.getOffset());
+    Assert.assertEquals("Key not as expected", new MockId(id), entry.getKey());
+    Assert.assertEquals("Key of the info not as expected", new MockId(id), entry.getMessageInfo().getStoreKey());
+    Assert.assertEquals("Size not as expected", size, entry.getMessageInfo().getSize());
+    Assert.assertEquals("Delete state not as expected", deleted, entry.getMessageInfo().isDeleted());
+  }
+}
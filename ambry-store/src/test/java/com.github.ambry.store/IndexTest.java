@@ -923,6 +923,45 @@ public class IndexTest {
     findEntriesSinceInEmptyIndexTest(true);
   }
 
+  /**
+   * Tests {@link PersistentIndex#findEntriesSince(FindToken, long)} and
+   * {@link PersistentIndex#findDeletedEntriesSince(FindToken, long, long)} for a token whose offset is no longer in the
+   * {@link Journal} but is in the {@link Changelog}. The entries should be served from the changelog with the right
+   * delete states and a journal based token.
+   * @throws InterruptedException
+   * @throws IOException
+   * @throws StoreException
+   */
+  @Test
+  public void findEntriesSinceFromChangelogTest() throws InterruptedException, IOException, StoreException {
+    state.properties.put("store.changelog.max.number.of.entries", "100");
+    state.reloadIndex(true, false);
+    List<IndexEntry> putEntries = state.addPutEntries(3, PUT_RECORD_SIZE, Utils.Infinite_Time);
+    MockId firstId = (MockId) putEntries.get(0).getKey();
+    MockId secondId = (MockId) putEntries.get(1).getKey();
+    state.addDeleteEntry(secondId);
+    state.addPutEntries(4 * MAX_IN_MEM_ELEMENTS, PUT_RECORD_SIZE, Utils.Infinite_Time);
+    FileSpan lastDeleteFileSpan = state.addDeleteEntry(firstId);
+    Offset firstOffset = putEntries.get(0).getValue().getOffset();
+    assertNull("Offset should not be in the journal", state.index.journal.getEntriesSince(firstOffset, false));
+
+    StoreFindToken startToken = new StoreFindToken(firstOffset, state.sessionId, state.incarnationId, false);
+    StoreFindToken expectedEndToken =
+        new StoreFindToken(lastDeleteFileSpan.getStartOffset(), state.sessionId, state.incarnationId, false);
+    expectedEndToken.setBytesRead(state.index.getAbsolutePositionInLogForOffset(lastDeleteFileSpan.getEndOffset()));
+    Set<MockId> expectedKeys = new HashSet<>();
+    for (Pair<MockId, LogEntry> logEntry : state.logOrder.tailMap(firstOffset, false).values()) {
+      expectedKeys.add(logEntry.getFirst());
+    }
+    doFindEntriesSinceTest(startToken, Long.MAX_VALUE, expectedKeys, expectedEndToken);
+    Set<MockId> expectedDeletedKeys = new HashSet<>(Arrays.asList(firstId, secondId));
+    doFindDeletedEntriesSinceTest(startToken, Long.MAX_VALUE, expectedDeletedKeys, expectedEndToken);
+    long changelogHitCount = state.metricRegistry.getCounters()
+        .get(MetricRegistry.name(PersistentIndex.class, tempDir.getAbsolutePath() + ".ChangelogHitCount"))
+        .getCount();
+    assertEquals("Both finds should have been served from the changelog", 2, changelogHitCount);
+  }
+
   /**
    * Tests the index segment roll over when there is a change in IndexValue size. With introduction of
    * {@link PersistentIndex#VERSION_1} there is a change in IndexValue
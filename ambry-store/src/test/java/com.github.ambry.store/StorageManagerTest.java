@@ -18,6 +18,7 @@ import com.codahale.metrics.MetricRegistry;
 import com.github.ambry.clustermap.MockClusterMap;
 import com.github.ambry.clustermap.MockDataNodeId;
 import com.github.ambry.clustermap.MockPartitionId;
+import com.github.ambry.clustermap.PartitionId;
 import com.github.ambry.clustermap.ReplicaId;
 import com.github.ambry.config.StoreConfig;
 import com.github.ambry.config.VerifiableProperties;
@@ -157,6 +158,25 @@ public class StorageManagerTest {
     shutdownAndAssertStoresInaccessible(storageManager, replicas);
   }
 
+  /**
+   * Test that an empty store is not served while it is being bootstrapped, and is served again once that is done.
+   * @throws Exception
+   */
+  @Test
+  public void bootstrapHidesStoreTest() throws Exception {
+    MockDataNodeId dataNode = clusterMap.getDataNodes().get(0);
+    List<ReplicaId> replicas = clusterMap.getReplicaIds(dataNode);
+    StorageManager storageManager = createAndStartStoreManager(replicas);
+    PartitionId partitionId = replicas.get(0).getPartitionId();
+    Store store = storageManager.getStore(partitionId);
+    assertTrue("Store should have been taken out of serving", storageManager.startBootstrapIfEmpty(partitionId));
+    assertNull("Store should not be served while it is being bootstrapped", storageManager.getStore(partitionId));
+    assertNotNull("Other stores should still be served", storageManager.getStore(replicas.get(1).getPartitionId()));
+    storageManager.endBootstrap(partitionId);
+    assertSame("Store should be served once it is bootstrapped", store, storageManager.getStore(partitionId));
+    shutdownAndAssertStoresInaccessible(storageManager, replicas);
+  }
+
   /**
    * Create a {@link StorageManager} and start stores for the passed in set of replicas.
    * @param replicas the list of replicas for the {@link StorageManager} to use.
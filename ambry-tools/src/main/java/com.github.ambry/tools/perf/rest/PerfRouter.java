@@ -23,6 +23,8 @@ import com.github.ambry.router.ReadableStreamChannel;
 import com.github.ambry.router.Router;
 import com.github.ambry.router.RouterErrorCode;
 import com.github.ambry.router.RouterException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Future;
 import org.slf4j.Logger;
@@ -103,6 +105,21 @@ class PerfRouter implements Router {
     return futureResult;
   }
 
+  /**
+   * Returns, for each of the {@code blobIds}, what {@link #getBlob(String, GetBlobOptions)} would return.
+   * @param blobIds The IDs of the blobs for which blob data is requested.
+   * @param options The options associated with the request. This cannot be null.
+   * @return a {@link Future} for each of the {@code blobIds} that will eventually contain a {@link GetBlobResult}.
+   */
+  @Override
+  public List<Future<GetBlobResult>> getBlobs(List<String> blobIds, GetBlobOptions options) {
+    List<Future<GetBlobResult>> futures = new ArrayList<>(blobIds.size());
+    for (String blobId : blobIds) {
+      futures.add(getBlob(blobId, options));
+    }
+    return futures;
+  }
+
   /**
    * Consumes the data in {@code channel} and simply throws it away. {@code blobProperties} and {@code usermetadata} are
    * ignored.
@@ -181,6 +198,20 @@ class PerfRouter implements Router {
     return futureResult;
   }
 
+  /**
+   * Does nothing for each of the {@code blobIds}, as {@link #deleteBlob(String)} does.
+   * @param blobIds The IDs of the blobs that need to be deleted.
+   * @return a {@link Future} for each of the {@code blobIds} that will eventually contain the result of the operation.
+   */
+  @Override
+  public List<Future<Void>> deleteBlobs(List<String> blobIds) {
+    List<Future<Void>> futures = new ArrayList<>(blobIds.size());
+    for (String blobId : blobIds) {
+      futures.add(deleteBlob(blobId));
+    }
+    return futures;
+  }
+
   @Override
   public void close() {
     routerOpen = false;
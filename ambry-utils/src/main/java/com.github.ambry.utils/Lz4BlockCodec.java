@@ -0,0 +1,223 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.utils;
+
+import java.util.Arrays;
+
+
+/**
+ * A pure Java implementation of the LZ4 block format. Compression is a fast, single pass, greedy match search over a
+ * hash table of the last seen positions of every 4 byte sequence, which trades compression ratio for speed. The
+ * output can be decompressed by any LZ4 block decompressor and vice versa.
+ * <p/>
+ * The compressor keeps a hash table per instance, so an instance is not thread safe. Decompression is stateless.
+ */
+public class Lz4BlockCodec {
+  private static final int MIN_MATCH = 4;
+  // the last 5 bytes of a block are always literals.
+  private static final int LAST_LITERALS = 5;
+  // the last match has to start at least 12 bytes before the end of a block.
+  private static final int MF_LIMIT = 12;
+  private static final int MAX_DISTANCE = 65535;
+  private static final int HASH_LOG = 16;
+  private static final int RUN_MASK = 15;
+  private static final int ML_MASK = 15;
+
+  private final int[] hashTable = new int[1 << HASH_LOG];
+
+  /**
+   * @param length the length of the data to compress.
+   * @return the maximum length of the compressed form of {@code length} bytes.
+   */
+  public static int maxCompressedLength(int length) {
+    if (length < 0) {
+      throw new IllegalArgumentException("Length cannot be negative: " + length);
+    }
+    return length + length / 255 + 16;
+  }
+
+  /**
+   * Compresses {@code srcLength} bytes of {@code src} starting at {@code srcOffset} into {@code dest} starting at
+   * {@code destOffset}.
+   * @param src the array that contains the data to compress.
+   * @param srcOffset the offset in {@code src} at which the data starts.
+   * @param srcLength the length of the data to compress.
+   * @param dest the array to write the compressed data to. It needs to have at least
+   *             {@link #maxCompressedLength(int)} bytes after {@code destOffset}.
+   * @param destOffset the offset in {@code dest} at which the compressed data has to be written.
+   * @return the length of the compressed data.
+   */
+  public int compress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset) {
+    if (dest.length - destOffset < maxCompressedLength(srcLength)) {
+      throw new IllegalArgumentException("Destination has less than the maximum compressed length available");
+    }
+    int srcEnd = srcOffset + srcLength;
+    int matchLimit = srcEnd - LAST_LITERALS;
+    int mfLimit = srcEnd - MF_LIMIT;
+    int anchor = srcOffset;
+    int op = destOffset;
+    if (srcLength > MF_LIMIT) {
+      Arrays.fill(hashTable, -1);
+      int ip = srcOffset;
+      while (ip < mfLimit) {
+        int sequence = readInt(src, ip);
+        int hash = hash(sequence);
+        int ref = hashTable[hash];
+        hashTable[hash] = ip;
+        if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+          ip++;
+          continue;
+        }
+        // extend the match backwards into the pending literals.
+        while (ip > anchor && ref > srcOffset && src[ip - 1] == src[ref - 1]) {
+          ip--;
+          ref--;
+        }
+        int matchLength = MIN_MATCH;
+        while (ip + matchLength < matchLimit && src[ref + matchLength] == src[ip + matchLength]) {
+          matchLength++;
+        }
+        op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLength, dest, op);
+        ip += matchLength;
+        anchor = ip;
+      }
+    }
+    return writeLastLiterals(src, anchor, srcEnd - anchor, dest, op) - destOffset;
+  }
+
+  /**
+   * Decompresses the LZ4 block of {@code srcLength} bytes in {@code src} starting at {@code srcOffset} into
+   * {@code dest} starting at {@code destOffset}.
+   * @param src the array that contains the compressed block.
+   * @param srcOffset the offset in {@code src} at which the block starts.
+   * @param srcLength the length of the compressed block.
+   * @param dest the array to write the decompressed data to.
+   * @param destOffset the offset in {@code dest} at which the decompressed data has to be written.
+   * @param destLength the maximum number of bytes that can be written to {@code dest}.
+   * @return the length of the decompressed data.
+   * @throws IllegalArgumentException if the block is malformed or decompresses to more than {@code destLength} bytes.
+   */
+  public static int decompress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset,
+      int destLength) {
+    int ip = srcOffset;
+    int srcEnd = srcOffset + srcLength;
+    int op = destOffset;
+    int destEnd = destOffset + destLength;
+    while (ip < srcEnd) {
+      int token = src[ip++] & 0xFF;
+      int literalLength = token >>> 4;
+      if (literalLength == RUN_MASK) {
+        int lengthByte;
+        do {
+          checkBounds(ip < srcEnd, "literal length", ip);
+          lengthByte = src[ip++] & 0xFF;
+          literalLength += lengthByte;
+        } while (lengthByte == 255);
+      }
+      checkBounds(literalLength <= srcEnd - ip && literalLength <= destEnd - op, "literals", ip);
+      System.arraycopy(src, ip, dest, op, literalLength);
+      ip += literalLength;
+      op += literalLength;
+      if (ip == srcEnd) {
+        // the last sequence of a block has only literals.
+        break;
+      }
+      checkBounds(srcEnd - ip >= 2, "match offset", ip);
+      int offset = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+      ip += 2;
+      checkBounds(offset > 0 && offset <= op - destOffset, "match offset", ip);
+      int matchLength = token & ML_MASK;
+      if (matchLength == ML_MASK) {
+        int lengthByte;
+        do {
+          checkBounds(ip < srcEnd, "match length", ip);
+          lengthByte = src[ip++] & 0xFF;
+          matchLength += lengthByte;
+        } while (lengthByte == 255);
+      }
+      matchLength += MIN_MATCH;
+      checkBounds(matchLength <= destEnd - op, "match", ip);
+      int ref = op - offset;
+      if (offset >= matchLength) {
+        System.arraycopy(dest, ref, dest, op, matchLength);
+        op += matchLength;
+      } else {
+        // the match overlaps with the bytes it produces, so it has to be copied byte by byte.
+        for (int i = 0; i < matchLength; i++) {
+          dest[op++] = dest[ref++];
+        }
+      }
+    }
+    return op - destOffset;
+  }
+
+  /**
+   * Writes a sequence of literals followed by a match.
+   * @return the offset in {@code dest} after the sequence.
+   */
+  private static int writeSequence(byte[] src, int literalOffset, int literalLength, int matchOffset,
+      int matchLength, byte[] dest, int op) {
+    int tokenOffset = op++;
+    int token = (Math.min(literalLength, RUN_MASK) << 4) | Math.min(matchLength - MIN_MATCH, ML_MASK);
+    dest[tokenOffset] = (byte) token;
+    op = writeLength(literalLength, RUN_MASK, dest, op);
+    System.arraycopy(src, literalOffset, dest, op, literalLength);
+    op += literalLength;
+    dest[op++] = (byte) matchOffset;
+    dest[op++] = (byte) (matchOffset >>> 8);
+    return writeLength(matchLength - MIN_MATCH, ML_MASK, dest, op);
+  }
+
+  /**
+   * Writes the final sequence of a block, which has only literals.
+   * @return the offset in {@code dest} after the sequence.
+   */
+  private static int writeLastLiterals(byte[] src, int literalOffset, int literalLength, byte[] dest, int op) {
+    dest[op++] = (byte) (Math.min(literalLength, RUN_MASK) << 4);
+    op = writeLength(literalLength, RUN_MASK, dest, op);
+    System.arraycopy(src, literalOffset, dest, op, literalLength);
+    return op + literalLength;
+  }
+
+  /**
+   * Writes the part of a length that does not fit in its 4 bits of the token as a run of bytes.
+   * @return the offset in {@code dest} after the length.
+   */
+  private static int writeLength(int length, int mask, byte[] dest, int op) {
+    if (length >= mask) {
+      int remaining = length - mask;
+      while (remaining >= 255) {
+        dest[op++] = (byte) 255;
+        remaining -= 255;
+      }
+      dest[op++] = (byte) remaining;
+    }
+    return op;
+  }
+
+  private static int readInt(byte[] buf, int offset) {
+    return (buf[offset] & 0xFF) | ((buf[offset + 1] & 0xFF) << 8) | ((buf[offset + 2] & 0xFF) << 16) | (
+        (buf[offset + 3] & 0xFF) << 24);
+  }
+
+  private static int hash(int sequence) {
+    return (sequence * -1640531535) >>> (32 - HASH_LOG);
+  }
+
+  private static void checkBounds(boolean condition, String part, int offset) {
+    if (!condition) {
+      throw new IllegalArgumentException("Malformed LZ4 block: invalid " + part + " at offset " + offset);
+    }
+  }
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+
+/**
+ * A record of how the time taken to serve a single request was spent. A trace is a set of named spans, each of which
+ * covers a stage of the request (like waiting in a queue or a call to a remote server) and can be recorded from any
+ * thread.
+ * <p/>
+ * Traces are created by a {@link RequestTracer} for a sample of the requests. Requests that are not sampled get
+ * {@link #DISABLED}, on which recording is a no-op, so callers need not check whether a request is traced. Callers
+ * that have to do work to describe a span (like building its name) can check {@link #isEnabled()} first.
+ */
+public class RequestTrace {
+  /**
+   * The trace of requests that are not traced.
+   */
+  public static final RequestTrace DISABLED = new RequestTrace(null, 0, null, 0);
+
+  // bounds the memory used by the trace of a request with many stages (like the GET of a blob with many chunks).
+  static final int MAX_SPAN_COUNT = 1000;
+
+  private final RequestTracer tracer;
+  private final long id;
+  private final String name;
+  private final long startTimeInMs;
+  private final List<Span> spans = new ArrayList<>();
+  private long endTimeInMs = -1;
+  private int droppedSpanCount = 0;
+
+  /**
+   * @param tracer the {@link RequestTracer} to hand the trace to once it is complete. {@code null} if disabled.
+   * @param id the ID of the trace.
+   * @param name the name of the trace (usually the method and URI of the request).
+   * @param startTimeInMs the time at which the request started.
+   */
+  RequestTrace(RequestTracer tracer, long id, String name, long startTimeInMs) {
+    this.tracer = tracer;
+    this.id = id;
+    this.name = name;
+    this.startTimeInMs = startTimeInMs;
+  }
+
+  /**
+   * @return {@code true} if spans recorded on this trace are kept.
+   */
+  public boolean isEnabled() {
+    return tracer != null;
+  }
+
+  /**
+   * @return the ID of this trace.
+   */
+  public long getId() {
+    return id;
+  }
+
+  /**
+   * @return the name of this trace.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the time at which the request started.
+   */
+  public long getStartTimeInMs() {
+    return startTimeInMs;
+  }
+
+  /**
+   * @return the time taken by the request, or -1 if it has not completed.
+   */
+  public synchronized long getDurationInMs() {
+    return endTimeInMs == -1 ? -1 : endTimeInMs - startTimeInMs;
+  }
+
+  /**
+   * Records a span.
+   * @param name the name of the span.
+   * @param startTimeInMs the time at which the stage started.
+   * @param endTimeInMs the time at which the stage ended.
+   */
+  public void addSpan(String name, long startTimeInMs, long endTimeInMs) {
+    if (isEnabled()) {
+      synchronized (this) {
+        if (spans.size() < MAX_SPAN_COUNT) {
+          spans.add(new Span(name, startTimeInMs, endTimeInMs));
+        } else {
+          droppedSpanCount++;
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the spans recorded so far, ordered by start time.
+   */
+  public List<Span> getSpans() {
+    List<Span> spansCopy;
+    synchronized (this) {
+      spansCopy = new ArrayList<>(spans);
+    }
+    Collections.sort(spansCopy, new Comparator<Span>() {
+      @Override
+      public int compare(Span span1, Span span2) {
+        return Long.compare(span1.startTimeInMs, span2.startTimeInMs);
+      }
+    });
+    return spansCopy;
+  }
+
+  /**
+   * Marks the request as complete and hands the trace to the {@link RequestTracer} that created it. Only the first
+   * call has any effect.
+   */
+  public void complete() {
+    if (isEnabled()) {
+      synchronized (this) {
+        if (endTimeInMs != -1) {
+          return;
+        }
+        endTimeInMs = System.currentTimeMillis();
+      }
+      tracer.onComplete(this);
+    }
+  }
+
+  /**
+   * @return the trace in the form
+   *         {@code Trace <id> [<name>] duration=<d>ms: <span>@<offset>ms+<duration>ms, ...}, where the offset of a span
+   *         is from the start of the request.
+   */
+  @Override
+  public String toString() {
+    List<Span> sortedSpans = getSpans();
+    StringBuilder sb = new StringBuilder("Trace ").append(id).append(" [").append(name).append("] duration=");
+    sb.append(getDurationInMs()).append("ms:");
+    for (Span span : sortedSpans) {
+      sb.append(' ').append(span.name).append('@').append(span.startTimeInMs - startTimeInMs).append("ms+");
+      sb.append(span.endTimeInMs - span.startTimeInMs).append("ms,");
+    }
+    synchronized (this) {
+      if (droppedSpanCount > 0) {
+        sb.append(' ').append(droppedSpanCount).append(" spans dropped,");
+      }
+    }
+    if (!sortedSpans.isEmpty()) {
+      sb.setLength(sb.length() - 1);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * A stage of a request.
+   */
+  public static class Span {
+    public final String name;
+    public final long startTimeInMs;
+    public final long endTimeInMs;
+
+    Span(String name, long startTimeInMs, long endTimeInMs) {
+      this.name = name;
+      this.startTimeInMs = startTimeInMs;
+      this.endTimeInMs = endTimeInMs;
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Creates {@link RequestTrace}s for a sample of requests and keeps the most recent completed ones in a ring buffer,
+ * which can be read through {@link #getRecentTraces()} (and is exposed as a metrics gauge by the servers that trace
+ * requests). Completed traces that took at least a configured time are also written to the "RequestTraceLogger" log.
+ */
+public class RequestTracer {
+  private final double sampleRate;
+  private final long logThresholdInMs;
+  private final RequestTrace[] recentTraces;
+  private final AtomicLong traceIdGenerator = new AtomicLong(0);
+  private final Logger traceLogger = LoggerFactory.getLogger("RequestTraceLogger");
+  private int nextTraceIndex = 0;
+
+  /**
+   * @param sampleRate the fraction of the requests to trace, between 0 and 1.
+   * @param bufferSize the number of completed traces to keep.
+   * @param logThresholdInMs the minimum time taken by a traced request for its trace to be logged.
+   */
+  public RequestTracer(double sampleRate, int bufferSize, long logThresholdInMs) {
+    if (sampleRate < 0 || sampleRate > 1 || bufferSize < 0) {
+      throw new IllegalArgumentException(
+          "Invalid sample rate [" + sampleRate + "] or buffer size [" + bufferSize + "] for RequestTracer");
+    }
+    this.sampleRate = sampleRate;
+    this.logThresholdInMs = logThresholdInMs;
+    recentTraces = new RequestTrace[bufferSize];
+  }
+
+  /**
+   * Starts the trace of a request, if the request is sampled.
+   * @param name the name of the trace (usually the method and URI of the request).
+   * @return the {@link RequestTrace} of the request, or {@link RequestTrace#DISABLED} if the request is not sampled.
+   */
+  public RequestTrace newTrace(String name) {
+    if (sampleRate == 0 || (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+      return RequestTrace.DISABLED;
+    }
+    return new RequestTrace(this, traceIdGenerator.incrementAndGet(), name, System.currentTimeMillis());
+  }
+
+  /**
+   * @return the most recent completed traces, oldest first.
+   */
+  public synchronized List<RequestTrace> getRecentTraces() {
+    List<RequestTrace> traces = new ArrayList<>(recentTraces.length);
+    for (int i = 0; i < recentTraces.length; i++) {
+      RequestTrace trace = recentTraces[(nextTraceIndex + i) % recentTraces.length];
+      if (trace != null) {
+        traces.add(trace);
+      }
+    }
+    return traces;
+  }
+
+  /**
+   * Keeps a completed trace and logs it if the request took long enough.
+   * @param trace the {@link RequestTrace} that completed.
+   */
+  void onComplete(RequestTrace trace) {
+    if (recentTraces.length > 0) {
+      synchronized (this) {
+        recentTraces[nextTraceIndex] = trace;
+        nextTraceIndex = (nextTraceIndex + 1) % recentTraces.length;
+      }
+    }
+    if (trace.getDurationInMs() >= logThresholdInMs && traceLogger.isInfoEnabled()) {
+      traceLogger.info(trace.toString());
+    }
+  }
+}
@@ -24,7 +24,7 @@ import org.slf4j.LoggerFactory;
  */
 public class Throttler {
 
-  private double desiredRatePerSec;
+  private volatile double desiredRatePerSec;
   private long checkIntervalMs;
   private boolean throttleDown;
   private Object lock = new Object();
@@ -87,6 +87,21 @@ public class Throttler {
     }
   }
 
+  /**
+   * Changes the rate that the throttler tries to attain. Takes effect from the next check of the rate.
+   * @param desiredRatePerSec the rate we want to hit in units/sec.
+   */
+  public void setDesiredRatePerSec(double desiredRatePerSec) {
+    this.desiredRatePerSec = desiredRatePerSec;
+  }
+
+  /**
+   * @return the rate that the throttler tries to attain in units/sec.
+   */
+  public double getDesiredRatePerSec() {
+    return desiredRatePerSec;
+  }
+
   /**
    * Disable the throttler for good.
    */
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.utils;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * Tests for {@link Lz4BlockCodec}.
+ */
+public class Lz4BlockCodecTest {
+  private final Random random = new Random();
+
+  /**
+   * Tests that data of different sizes and compressibility decompresses to what was compressed.
+   */
+  @Test
+  public void roundTripTest() {
+    Lz4BlockCodec codec = new Lz4BlockCodec();
+    int[] sizes = {0, 1, 12, 13, 100, 4096, 70000, 1048576};
+    for (int size : sizes) {
+      byte[] randomData = new byte[size];
+      random.nextBytes(randomData);
+      doRoundTripTest(codec, randomData);
+
+      byte[] repetitiveData = new byte[size];
+      for (int i = 0; i < size; i++) {
+        repetitiveData[i] = (byte) (i % 251 < 128 ? 'a' : i % 7);
+      }
+      int compressedLength = doRoundTripTest(codec, repetitiveData);
+      if (size > 100) {
+        Assert.assertTrue("Repetitive data of size " + size + " should compress", compressedLength < size / 2);
+      }
+
+      byte[] mixedData = new byte[size];
+      for (int i = 0; i < size; i += 64) {
+        byte[] chunk = new byte[Math.min(64, size - i)];
+        if (random.nextBoolean()) {
+          random.nextBytes(chunk);
+        }
+        System.arraycopy(chunk, 0, mixedData, i, chunk.length);
+      }
+      doRoundTripTest(codec, mixedData);
+    }
+  }
+
+  /**
+   * Tests that the data can be compressed from and decompressed to arbitrary offsets in arrays.
+   */
+  @Test
+  public void offsetTest() {
+    Lz4BlockCodec codec = new Lz4BlockCodec();
+    byte[] src = new byte[10000];
+    for (int i = 0; i < src.length; i++) {
+      src[i] = (byte) (i % 13);
+    }
+    int srcOffset = 100;
+    int srcLength = 5000;
+    byte[] compressed = new byte[17 + Lz4BlockCodec.maxCompressedLength(srcLength)];
+    int compressedLength = codec.compress(src, srcOffset, srcLength, compressed, 17);
+    byte[] decompressed = new byte[srcLength + 23];
+    Assert.assertEquals(srcLength, Lz4BlockCodec.decompress(compressed, 17, compressedLength, decompressed, 23,
+        srcLength));
+    Assert.assertArrayEquals(Arrays.copyOfRange(src, srcOffset, srcOffset + srcLength),
+        Arrays.copyOfRange(decompressed, 23, decompressed.length));
+  }
+
+  /**
+   * Tests the decompression of a hand crafted LZ4 block with an overlapping match, to check the compatibility with the
+   * LZ4 block format.
+   */
+  @Test
+  public void formatTest() {
+    // a literal "a", a match of length 8 at offset 1 and 5 literal "a"s.
+    byte[] block = {0x14, 'a', 0x01, 0x00, 0x50, 'a', 'a', 'a', 'a', 'a'};
+    byte[] decompressed = new byte[14];
+    Assert.assertEquals(14, Lz4BlockCodec.decompress(block, 0, block.length, decompressed, 0, decompressed.length));
+    byte[] expected = new byte[14];
+    Arrays.fill(expected, (byte) 'a');
+    Assert.assertArrayEquals(expected, decompressed);
+  }
+
+  /**
+   * Tests that malformed blocks and blocks that decompress to more than the space available are rejected.
+   */
+  @Test
+  public void malformedBlockTest() {
+    byte[] data = new byte[1000];
+    Arrays.fill(data, (byte) 'x');
+    byte[] compressed = new byte[Lz4BlockCodec.maxCompressedLength(data.length)];
+    int compressedLength = new Lz4BlockCodec().compress(data, 0, data.length, compressed, 0);
+    // not enough space to decompress into.
+    try {
+      Lz4BlockCodec.decompress(compressed, 0, compressedLength, new byte[data.length - 1], 0, data.length - 1);
+      Assert.fail("Decompression should have failed");
+    } catch (IllegalArgumentException e) {
+      // expected. Nothing to do.
+    }
+    // truncated block.
+    try {
+      Lz4BlockCodec.decompress(compressed, 0, 3, new byte[data.length], 0, data.length);
+      Assert.fail("Decompression should have failed");
+    } catch (IllegalArgumentException e) {
+      // expected. Nothing to do.
+    }
+    // a match that refers to before the start of the output.
+    byte[] block = {0x10, 'a', 0x02, 0x00, 0x50, 'a', 'a', 'a', 'a', 'a'};
+    try {
+      Lz4BlockCodec.decompress(block, 0, block.length, new byte[100], 0, 100);
+      Assert.fail("Decompression should have failed");
+    } catch (IllegalArgumentException e) {
+      // expected. Nothing to do.
+    }
+  }
+
+  /**
+   * Compresses and decompresses the given data and verifies that the result is the same as the data.
+   * @param codec the {@link Lz4BlockCodec} to compress with.
+   * @param data the data to compress.
+   * @return the length of the compressed data.
+   */
+  private int doRoundTripTest(Lz4BlockCodec codec, byte[] data) {
+    byte[] compressed = new byte[Lz4BlockCodec.maxCompressedLength(data.length)];
+    int compressedLength = codec.compress(data, 0, data.length, compressed, 0);
+    Assert.assertTrue("Compressed length exceeds the maximum",
+        compressedLength <= Lz4BlockCodec.maxCompressedLength(data.length));
+    byte[] decompressed = new byte[data.length];
+    Assert.assertEquals("Unexpected decompressed length", data.length,
+        Lz4BlockCodec.decompress(compressed, 0, compressedLength, decompressed, 0, decompressed.length));
+    Assert.assertArrayEquals("Decompressed data does not match for size " + data.length, data, decompressed);
+    return compressedLength;
+  }
+}
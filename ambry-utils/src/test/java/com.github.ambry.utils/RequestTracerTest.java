@@ -0,0 +1,120 @@
+/**
+ * Copyright 2016 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.utils;
+
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for {@link RequestTracer} and {@link RequestTrace}.
+ */
+public class RequestTracerTest {
+
+  /**
+   * Tests that requests are traced only when sampled and that recording on {@link RequestTrace#DISABLED} is a no-op.
+   */
+  @Test
+  public void samplingTest() {
+    RequestTracer tracer = new RequestTracer(0, 10, 0);
+    RequestTrace trace = tracer.newTrace("GET /blob");
+    assertSame("Trace should be disabled", RequestTrace.DISABLED, trace);
+    assertFalse("Trace should be disabled", trace.isEnabled());
+    trace.addSpan("span", 0, 1);
+    trace.complete();
+    assertEquals("Disabled trace should not keep spans", 0, trace.getSpans().size());
+    assertEquals("Disabled trace should not be kept", 0, tracer.getRecentTraces().size());
+
+    tracer = new RequestTracer(1, 10, 0);
+    RequestTrace trace1 = tracer.newTrace("GET /blob1");
+    RequestTrace trace2 = tracer.newTrace("GET /blob2");
+    assertTrue("Trace should be enabled", trace1.isEnabled());
+    assertTrue("Trace should be enabled", trace2.isEnabled());
+    assertTrue("Trace IDs should be unique", trace1.getId() != trace2.getId());
+    assertEquals("Unexpected trace name", "GET /blob1", trace1.getName());
+
+    for (double sampleRate : new double[]{-0.1, 1.1}) {
+      try {
+        new RequestTracer(sampleRate, 10, 0);
+        fail("RequestTracer creation should have failed for sample rate " + sampleRate);
+      } catch (IllegalArgumentException e) {
+        // expected. Nothing to do.
+      }
+    }
+  }
+
+  /**
+   * Tests recording of spans and completion of a {@link RequestTrace}.
+   */
+  @Test
+  public void spansAndCompletionTest() {
+    RequestTracer tracer = new RequestTracer(1, 10, 0);
+    RequestTrace trace = tracer.newTrace("GET /blob");
+    long startTime = trace.getStartTimeInMs();
+    assertEquals("Duration should not be known before completion", -1, trace.getDurationInMs());
+    trace.addSpan("Second", startTime + 5, startTime + 8);
+    trace.addSpan("First", startTime + 1, startTime + 3);
+    List<RequestTrace.Span> spans = trace.getSpans();
+    assertEquals("Unexpected number of spans", 2, spans.size());
+    assertEquals("Spans should be ordered by start time", "First", spans.get(0).name);
+    assertEquals("Spans should be ordered by start time", "Second", spans.get(1).name);
+    assertEquals("Trace should not be kept before completion", 0, tracer.getRecentTraces().size());
+
+    trace.complete();
+    long duration = trace.getDurationInMs();
+    assertTrue("Duration should be known after completion", duration >= 0);
+    trace.complete();
+    assertEquals("Duration should not change on second completion", duration, trace.getDurationInMs());
+    List<RequestTrace> recentTraces = tracer.getRecentTraces();
+    assertEquals("Trace should be kept exactly once", 1, recentTraces.size());
+    assertSame("Unexpected trace kept", trace, recentTraces.get(0));
+    String traceString = trace.toString();
+    assertTrue("Unexpected trace string: " + traceString,
+        traceString.startsWith("Trace " + trace.getId() + " [GET /blob] duration=" + duration + "ms:"));
+    assertTrue("Unexpected trace string: " + traceString, traceString.endsWith(" First@1ms+2ms, Second@5ms+3ms"));
+
+    RequestTrace largeTrace = tracer.newTrace("GET /composite");
+    for (int i = 0; i < RequestTrace.MAX_SPAN_COUNT + 5; i++) {
+      largeTrace.addSpan("GetChunk " + i, startTime, startTime);
+    }
+    assertEquals("Spans beyond the limit should be dropped", RequestTrace.MAX_SPAN_COUNT,
+        largeTrace.getSpans().size());
+    assertTrue("Dropped spans should be reported", largeTrace.toString().contains("5 spans dropped"));
+  }
+
+  /**
+   * Tests that only the most recent completed traces are kept.
+   */
+  @Test
+  public void recentTracesTest() {
+    int bufferSize = 3;
+    RequestTracer tracer = new RequestTracer(1, bufferSize, Long.MAX_VALUE);
+    RequestTrace[] traces = new RequestTrace[bufferSize + 2];
+    for (int i = 0; i < traces.length; i++) {
+      traces[i] = tracer.newTrace("GET /blob" + i);
+      traces[i].complete();
+    }
+    List<RequestTrace> recentTraces = tracer.getRecentTraces();
+    assertEquals("Unexpected number of recent traces", bufferSize, recentTraces.size());
+    for (int i = 0; i < bufferSize; i++) {
+      assertSame("Recent traces should be oldest first", traces[traces.length - bufferSize + i], recentTraces.get(i));
+    }
+
+    tracer = new RequestTracer(1, 0, 0);
+    tracer.newTrace("GET /blob").complete();
+    assertEquals("No traces should be kept", 0, tracer.getRecentTraces().size());
+  }
+}